@@ -49,7 +49,8 @@ public final class AssessmentTestExample {
         final TestProcessingMap testProcessingMap = simpleJqtiFacade.buildTestProcessingMap(testValidationResult);
         System.out.println("Test processing map: " + ObjectDumper.dumpObject(testProcessingMap, DumpMode.DEEP));
 
-        final TestPlanner testPlanner = simpleJqtiFacade.createTestPlanner(testProcessingMap);
+        final TestSessionControllerSettings testSessionControllerSettings = new TestSessionControllerSettings();
+        final TestPlanner testPlanner = simpleJqtiFacade.createTestPlanner(testSessionControllerSettings, testProcessingMap);
         final NotificationLogListener notificationLogListener = new NotificationLogListener();
         testPlanner.addNotificationListener(notificationLogListener);
         final TestPlan testPlan = testPlanner.generateTestPlan();
@@ -57,7 +58,6 @@ public final class AssessmentTestExample {
         System.out.println("Test plan structure:\n" + testPlan.debugStructure());
 
         final TestSessionState testSessionState = new TestSessionState(testPlan);
-        final TestSessionControllerSettings testSessionControllerSettings = new TestSessionControllerSettings();
         final TestSessionController testSessionController = simpleJqtiFacade.createTestSessionController(testSessionControllerSettings, testProcessingMap, testSessionState);
         testSessionController.addNotificationListener(notificationLogListener);
 
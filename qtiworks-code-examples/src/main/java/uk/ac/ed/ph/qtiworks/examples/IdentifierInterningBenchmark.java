@@ -0,0 +1,156 @@
+/* Copyright (c) 2012-2013, The University of Edinburgh.
+ * All Rights Reserved
+ */
+package uk.ac.ed.ph.qtiworks.examples;
+
+import uk.ac.ed.ph.jqtiplus.state.EffectiveItemSessionControl;
+import uk.ac.ed.ph.jqtiplus.state.ItemSessionState;
+import uk.ac.ed.ph.jqtiplus.state.TestPlan;
+import uk.ac.ed.ph.jqtiplus.state.TestPlanNode;
+import uk.ac.ed.ph.jqtiplus.state.TestPlanNode.TestNodeType;
+import uk.ac.ed.ph.jqtiplus.state.TestPlanNodeKey;
+import uk.ac.ed.ph.jqtiplus.state.TestSessionState;
+import uk.ac.ed.ph.jqtiplus.state.marshalling.TestSessionStateXmlMarshaller;
+import uk.ac.ed.ph.jqtiplus.types.Identifier;
+import uk.ac.ed.ph.jqtiplus.value.FloatValue;
+import uk.ac.ed.ph.jqtiplus.value.IdentifierValue;
+import uk.ac.ed.ph.jqtiplus.value.IntegerValue;
+
+import java.io.StringWriter;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.xml.transform.TransformerFactory;
+import javax.xml.transform.dom.DOMSource;
+import javax.xml.transform.stream.StreamResult;
+
+/**
+ * Simple benchmark measuring the heap used by unmarshalled {@link TestSessionState}s for a
+ * synthetic 100-item test, and the time taken to look up item variables using freshly
+ * parsed {@link Identifier}s and {@link TestPlanNodeKey}s.
+ * <p>
+ * Run this against revisions with and without {@link Identifier} interning to compare.
+ *
+ * <h3>How to run</h3>
+ *
+ * You can run this via Maven as follows:
+ * <pre>
+ * mvn exec:java -Dexec.mainClass=uk.ac.ed.ph.qtiworks.examples.IdentifierInterningBenchmark [-Dexec.args="sessions lookups"]
+ * </pre>
+ *
+ * @author David McKain
+ */
+public final class IdentifierInterningBenchmark {
+
+    private static final int ITEM_COUNT = 100;
+    private static final String[] OUTCOME_NAMES = { "SCORE", "MAXSCORE", "FEEDBACK", "PASSED", "ATTEMPTED" };
+
+    public static void main(final String[] args) throws Exception {
+        final int sessionCount = args.length > 0 ? Integer.parseInt(args[0]) : 200;
+        final int lookupIterations = args.length > 1 ? Integer.parseInt(args[1]) : 200;
+        final String stateXml = serialize(createTestSessionState());
+
+        /* Warm up */
+        for (int i=0; i<20; i++) {
+            TestSessionStateXmlMarshaller.unmarshal(stateXml);
+        }
+
+        /* Measure heap retained by unmarshalled states */
+        final long heapBefore = usedHeap();
+        final List<TestSessionState> sessions = new ArrayList<TestSessionState>(sessionCount);
+        final long unmarshalStart = System.nanoTime();
+        for (int i=0; i<sessionCount; i++) {
+            sessions.add(TestSessionStateXmlMarshaller.unmarshal(stateXml));
+        }
+        final long unmarshalTime = System.nanoTime() - unmarshalStart;
+        final long heapAfter = usedHeap();
+
+        /* Count Identifier instances reachable from the item states */
+        final Map<Identifier, Boolean> distinctIdentifiers = new IdentityHashMap<Identifier, Boolean>();
+        int identifierReferences = 0;
+        for (final TestSessionState session : sessions) {
+            for (final ItemSessionState itemSessionState : session.getItemSessionStates().values()) {
+                for (final Identifier identifier : itemSessionState.getOutcomeValues().keySet()) {
+                    distinctIdentifiers.put(identifier, Boolean.TRUE);
+                    identifierReferences++;
+                }
+            }
+        }
+
+        /* Time lookups using freshly parsed keys, as happens when handling requests */
+        final List<String> keyStrings = new ArrayList<String>();
+        for (final TestPlanNodeKey key : sessions.get(0).getItemSessionStates().keySet()) {
+            keyStrings.add(key.toString());
+        }
+        double checksum = 0.0;
+        final long lookupStart = System.nanoTime();
+        long lookupCount = 0;
+        for (int i=0; i<lookupIterations; i++) {
+            final TestSessionState session = sessions.get(i % sessionCount);
+            for (final String keyString : keyStrings) {
+                final ItemSessionState itemSessionState = session.getItemSessionStates().get(TestPlanNodeKey.fromString(keyString));
+                for (final String outcomeName : OUTCOME_NAMES) {
+                    final Object value = itemSessionState.getOutcomeValue(Identifier.parseString(outcomeName));
+                    if (value instanceof FloatValue) {
+                        checksum += ((FloatValue) value).doubleValue();
+                    }
+                    lookupCount++;
+                }
+            }
+        }
+        final long lookupTime = System.nanoTime() - lookupStart;
+
+        System.out.printf("sessions=%d items/session=%d%n", Integer.valueOf(sessionCount), Integer.valueOf(ITEM_COUNT));
+        System.out.printf("retained heap:       %.1f KB/session%n", Double.valueOf((heapAfter - heapBefore) / 1024.0 / sessionCount));
+        System.out.printf("unmarshal time:      %.2f ms/session%n", Double.valueOf(unmarshalTime / 1.0E6 / sessionCount));
+        System.out.printf("outcome identifiers: %d references, %d distinct instances%n",
+                Integer.valueOf(identifierReferences), Integer.valueOf(distinctIdentifiers.size()));
+        System.out.printf("lookups:             %.0f ns/lookup (checksum %.1f)%n",
+                Double.valueOf((double) lookupTime / lookupCount), Double.valueOf(checksum));
+    }
+
+    private static TestSessionState createTestSessionState() {
+        final TestPlanNode rootNode = TestPlanNode.createRoot();
+        final EffectiveItemSessionControl effectiveItemSessionControl = EffectiveItemSessionControl.createDefault();
+        final TestPlanNode part = new TestPlanNode(TestNodeType.TEST_PART, new TestPlanNodeKey(Identifier.assumedLegal("P"), 0, 1), effectiveItemSessionControl);
+        rootNode.addChild(part);
+        final TestPlanNode section = new TestPlanNode(TestNodeType.ASSESSMENT_SECTION, new TestPlanNodeKey(Identifier.assumedLegal("S"), 1, 1), effectiveItemSessionControl);
+        part.addChild(section);
+        for (int i=0; i<ITEM_COUNT; i++) {
+            section.addChild(new TestPlanNode(TestNodeType.ASSESSMENT_ITEM_REF, new TestPlanNodeKey(Identifier.assumedLegal("ITEM" + i), i + 2, 1),
+                    effectiveItemSessionControl, "Item " + i, URI.create("urn:item" + i)));
+        }
+
+        final TestSessionState testSessionState = new TestSessionState(new TestPlan(rootNode));
+        for (final TestPlanNode itemRefNode : testSessionState.getTestPlan().searchNodes(TestNodeType.ASSESSMENT_ITEM_REF)) {
+            final ItemSessionState itemSessionState = new ItemSessionState();
+            itemSessionState.setOutcomeValue(Identifier.assumedLegal("SCORE"), new FloatValue(1.0));
+            itemSessionState.setOutcomeValue(Identifier.assumedLegal("MAXSCORE"), new FloatValue(1.0));
+            itemSessionState.setOutcomeValue(Identifier.assumedLegal("FEEDBACK"), new IdentifierValue(Identifier.assumedLegal("CORRECT")));
+            itemSessionState.setOutcomeValue(Identifier.assumedLegal("PASSED"), new IntegerValue(1));
+            itemSessionState.setOutcomeValue(Identifier.assumedLegal("ATTEMPTED"), new IntegerValue(1));
+            itemSessionState.setResponseValue(Identifier.assumedLegal("RESPONSE"), new IdentifierValue(Identifier.assumedLegal("ChoiceA")));
+            testSessionState.getItemSessionStates().put(itemRefNode.getKey(), itemSessionState);
+        }
+        return testSessionState;
+    }
+
+    private static String serialize(final TestSessionState testSessionState) throws Exception {
+        final StringWriter result = new StringWriter();
+        TransformerFactory.newInstance().newTransformer().transform(
+                new DOMSource(TestSessionStateXmlMarshaller.marshal(testSessionState)), new StreamResult(result));
+        return result.toString();
+    }
+
+    private static long usedHeap() throws InterruptedException {
+        final Runtime runtime = Runtime.getRuntime();
+        for (int i=0; i<3; i++) {
+            System.gc();
+            Thread.sleep(50);
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
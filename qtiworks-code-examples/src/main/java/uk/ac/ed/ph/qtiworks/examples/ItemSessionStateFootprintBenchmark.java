@@ -0,0 +1,108 @@
+/* Copyright (c) 2012-2013, The University of Edinburgh.
+ * All Rights Reserved
+ */
+package uk.ac.ed.ph.qtiworks.examples;
+
+import uk.ac.ed.ph.jqtiplus.SimpleJqtiFacade;
+import uk.ac.ed.ph.jqtiplus.running.ItemSessionController;
+import uk.ac.ed.ph.jqtiplus.running.ItemSessionControllerSettings;
+import uk.ac.ed.ph.jqtiplus.state.ItemProcessingMap;
+import uk.ac.ed.ph.jqtiplus.state.ItemSessionState;
+import uk.ac.ed.ph.jqtiplus.state.marshalling.ItemSessionStateXmlMarshaller;
+import uk.ac.ed.ph.jqtiplus.validation.ItemValidationResult;
+import uk.ac.ed.ph.jqtiplus.xmlutils.locators.ClassPathResourceLocator;
+import uk.ac.ed.ph.jqtiplus.xmlutils.locators.ResourceLocator;
+
+import java.io.StringWriter;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import javax.xml.transform.TransformerFactory;
+import javax.xml.transform.dom.DOMSource;
+import javax.xml.transform.stream.StreamResult;
+
+/**
+ * Measures the heap used by a large number of resident {@link ItemSessionState}s for some of
+ * the standard IMS examples, comparing states using the compact slot-based variable storage
+ * (i.e. attached to an {@link ItemSessionController}) with states that have just been
+ * unmarshalled, which still use plain {@link java.util.HashMap}s.
+ *
+ * <h3>How to run</h3>
+ *
+ * You can run this via Maven as follows:
+ * <pre>
+ * mvn exec:java -Dexec.mainClass=uk.ac.ed.ph.qtiworks.examples.ItemSessionStateFootprintBenchmark [-Dexec.args=sessions]
+ * </pre>
+ *
+ * @author David McKain
+ */
+public final class ItemSessionStateFootprintBenchmark {
+
+    private static final String[] SAMPLE_NAMES = {
+        "choice.xml",
+        "template.xml",
+        "adaptive.xml",
+        "feedback.xml"
+    };
+
+    public static void main(final String[] args) throws Exception {
+        final int sessionCount = args.length > 0 ? Integer.parseInt(args[0]) : 10000;
+        final ResourceLocator inputResourceLocator = new ClassPathResourceLocator();
+        final SimpleJqtiFacade simpleJqtiFacade = new SimpleJqtiFacade();
+
+        for (final String sampleName : SAMPLE_NAMES) {
+            final URI inputUri = URI.create("classpath:/uk/ac/ed/ph/qtiworks/samples/ims/" + sampleName);
+            final ItemValidationResult itemValidationResult = simpleJqtiFacade.loadResolveAndValidateItem(inputResourceLocator, inputUri);
+            final ItemProcessingMap itemProcessingMap = simpleJqtiFacade.buildItemProcessingMap(itemValidationResult);
+
+            /* Create one initialized state, and marshal it */
+            final ItemSessionState templateState = new ItemSessionState();
+            final ItemSessionController itemSessionController = simpleJqtiFacade.createItemSessionController(new ItemSessionControllerSettings(),
+                    itemProcessingMap, templateState);
+            final Date timestamp = new Date();
+            itemSessionController.initialize(timestamp);
+            itemSessionController.performTemplateProcessing(timestamp);
+            itemSessionController.enterItem(timestamp);
+            final String stateXml = serialize(templateState);
+
+            /* Unmarshalled states use HashMaps... */
+            final List<ItemSessionState> states = new ArrayList<ItemSessionState>(sessionCount);
+            final long heapBefore = usedHeap();
+            for (int i=0; i<sessionCount; i++) {
+                states.add(ItemSessionStateXmlMarshaller.unmarshal(stateXml));
+            }
+            final long hashMapHeap = usedHeap() - heapBefore;
+
+            /* ...until they are attached to a controller */
+            for (final ItemSessionState state : states) {
+                state.bindVariableSlotLayouts(itemProcessingMap);
+            }
+            final long slotHeap = usedHeap() - heapBefore;
+
+            System.out.printf("%-16s variables=%-3d hashMaps=%6.1f KB  slots=%6.1f KB  per %d sessions (%.0f%%)%n",
+                    sampleName,
+                    Integer.valueOf(templateState.getTemplateValues().size() + templateState.getResponseValues().size() + templateState.getOutcomeValues().size()),
+                    Double.valueOf(hashMapHeap / 1024.0), Double.valueOf(slotHeap / 1024.0), Integer.valueOf(sessionCount),
+                    Double.valueOf(100.0 * slotHeap / hashMapHeap));
+            states.clear();
+        }
+    }
+
+    private static String serialize(final ItemSessionState itemSessionState) throws Exception {
+        final StringWriter result = new StringWriter();
+        TransformerFactory.newInstance().newTransformer().transform(
+                new DOMSource(ItemSessionStateXmlMarshaller.marshal(itemSessionState)), new StreamResult(result));
+        return result.toString();
+    }
+
+    private static long usedHeap() throws InterruptedException {
+        final Runtime runtime = Runtime.getRuntime();
+        for (int i=0; i<3; i++) {
+            System.gc();
+            Thread.sleep(50);
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
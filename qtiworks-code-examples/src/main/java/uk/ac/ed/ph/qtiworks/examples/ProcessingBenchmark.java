@@ -0,0 +1,96 @@
+/* Copyright (c) 2012-2013, The University of Edinburgh.
+ * All Rights Reserved
+ */
+package uk.ac.ed.ph.qtiworks.examples;
+
+import uk.ac.ed.ph.jqtiplus.SimpleJqtiFacade;
+import uk.ac.ed.ph.jqtiplus.node.item.response.processing.ResponseProcessing;
+import uk.ac.ed.ph.jqtiplus.running.ItemSessionController;
+import uk.ac.ed.ph.jqtiplus.running.ItemSessionControllerSettings;
+import uk.ac.ed.ph.jqtiplus.running.compiled.CompiledProcessing;
+import uk.ac.ed.ph.jqtiplus.state.ItemProcessingMap;
+import uk.ac.ed.ph.jqtiplus.state.ItemSessionState;
+import uk.ac.ed.ph.jqtiplus.validation.ItemValidationResult;
+import uk.ac.ed.ph.jqtiplus.xmlutils.locators.ClassPathResourceLocator;
+import uk.ac.ed.ph.jqtiplus.xmlutils.locators.ResourceLocator;
+
+import java.net.URI;
+import java.util.Date;
+
+/**
+ * Crude micro-benchmark comparing interpreted response processing (walking the
+ * {@link ResponseProcessing} node tree) with the pre-resolved {@link CompiledProcessing}
+ * plan built when an item is initialised, using some of the standard IMS examples.
+ *
+ * <h3>How to run</h3>
+ *
+ * You can run this via Maven as follows:
+ * <pre>
+ * mvn exec:java -Dexec.mainClass=uk.ac.ed.ph.qtiworks.examples.ProcessingBenchmark [-Dexec.args=iterations]
+ * </pre>
+ *
+ * @author David McKain
+ */
+public final class ProcessingBenchmark {
+
+    private static final String[] SAMPLE_NAMES = {
+        "choice.xml",
+        "choice_multiple.xml",
+        "order_partial_scoring.xml",
+        "match.xml",
+        "text_entry.xml",
+        "feedback.xml",
+        "adaptive.xml",
+        "template.xml"
+    };
+
+    public static void main(final String[] args) {
+        final int iterations = args.length > 0 ? Integer.parseInt(args[0]) : 100000;
+        final ResourceLocator inputResourceLocator = new ClassPathResourceLocator();
+        final SimpleJqtiFacade simpleJqtiFacade = new SimpleJqtiFacade();
+
+        for (final String sampleName : SAMPLE_NAMES) {
+            final URI inputUri = URI.create("classpath:/uk/ac/ed/ph/qtiworks/samples/ims/" + sampleName);
+            final ItemValidationResult itemValidationResult = simpleJqtiFacade.loadResolveAndValidateItem(inputResourceLocator, inputUri);
+            final ItemProcessingMap itemProcessingMap = simpleJqtiFacade.buildItemProcessingMap(itemValidationResult);
+            final CompiledProcessing compiledResponseProcessing = itemProcessingMap.getCompiledResponseProcessing();
+            if (compiledResponseProcessing==null) {
+                System.out.println(sampleName + ": no compiled responseProcessing, skipping");
+                continue;
+            }
+            final ResponseProcessing responseProcessing = (ResponseProcessing) compiledResponseProcessing.getSource();
+
+            /* Set up a session with default (i.e. unanswered) responses */
+            final ItemSessionState itemSessionState = new ItemSessionState();
+            final ItemSessionController itemSessionController = simpleJqtiFacade.createItemSessionController(new ItemSessionControllerSettings(),
+                    itemProcessingMap, itemSessionState);
+            final Date timestamp = new Date();
+            itemSessionController.initialize(timestamp);
+            itemSessionController.performTemplateProcessing(timestamp);
+            itemSessionController.enterItem(timestamp);
+
+            /* Warm up both paths, then time them */
+            for (int i=0; i<iterations; i++) {
+                responseProcessing.evaluate(itemSessionController);
+                compiledResponseProcessing.execute(itemSessionController);
+            }
+            final long interpretedStart = System.nanoTime();
+            for (int i=0; i<iterations; i++) {
+                responseProcessing.evaluate(itemSessionController);
+            }
+            final long interpretedTime = System.nanoTime() - interpretedStart;
+
+            final long compiledStart = System.nanoTime();
+            for (int i=0; i<iterations; i++) {
+                compiledResponseProcessing.execute(itemSessionController);
+            }
+            final long compiledTime = System.nanoTime() - compiledStart;
+
+            System.out.printf("%-28s rules=%-3d interpreted=%8.0f ops/s  compiled=%8.0f ops/s  speedup=%.2fx%n",
+                    sampleName, Integer.valueOf(compiledResponseProcessing.getRuleCount()),
+                    Double.valueOf(iterations * 1.0E9 / interpretedTime),
+                    Double.valueOf(iterations * 1.0E9 / compiledTime),
+                    Double.valueOf((double) interpretedTime / compiledTime));
+        }
+    }
+}
@@ -0,0 +1,87 @@
+/* Copyright (c) 2012-2013, The University of Edinburgh.
+ * All Rights Reserved
+ */
+package uk.ac.ed.ph.qtiworks.examples;
+
+import uk.ac.ed.ph.jqtiplus.SimpleJqtiFacade;
+import uk.ac.ed.ph.jqtiplus.node.item.template.processing.TemplateConstraint;
+import uk.ac.ed.ph.jqtiplus.running.ItemSessionController;
+import uk.ac.ed.ph.jqtiplus.running.ItemSessionControllerSettings;
+import uk.ac.ed.ph.jqtiplus.state.ItemProcessingMap;
+import uk.ac.ed.ph.jqtiplus.state.ItemSessionState;
+import uk.ac.ed.ph.jqtiplus.validation.ItemValidationResult;
+import uk.ac.ed.ph.jqtiplus.xmlutils.locators.ClassPathResourceLocator;
+import uk.ac.ed.ph.jqtiplus.xmlutils.locators.ResourceLocator;
+
+import java.net.URI;
+import java.util.Date;
+
+/**
+ * Crude micro-benchmark measuring the throughput of template processing on an item
+ * whose {@link TemplateConstraint} fails most of the time, so that template processing
+ * is typically retried many times per session. Both interpreted and compiled template
+ * processing are measured.
+ * <p>
+ * Processing is run beneath a configurable number of extra stack frames, to mimic the
+ * (typically deep) call stack found when running inside a web container.
+ *
+ * <h3>How to run</h3>
+ *
+ * You can run this via Maven as follows:
+ * <pre>
+ * mvn exec:java -Dexec.mainClass=uk.ac.ed.ph.qtiworks.examples.TemplateConstraintBenchmark [-Dexec.args="sessions stackDepth"]
+ * </pre>
+ *
+ * @author David McKain
+ */
+public final class TemplateConstraintBenchmark {
+
+    public static void main(final String[] args) {
+        final int sessions = args.length > 0 ? Integer.parseInt(args[0]) : 20000;
+        final int stackDepth = args.length > 1 ? Integer.parseInt(args[1]) : 150;
+        final ResourceLocator inputResourceLocator = new ClassPathResourceLocator();
+        final URI inputUri = URI.create("classpath:/template-constraint-benchmark.xml");
+
+        final SimpleJqtiFacade simpleJqtiFacade = new SimpleJqtiFacade();
+        final ItemValidationResult itemValidationResult = simpleJqtiFacade.loadResolveAndValidateItem(inputResourceLocator, inputUri);
+        final ItemProcessingMap itemProcessingMap = simpleJqtiFacade.buildItemProcessingMap(itemValidationResult);
+
+        for (int round=1; round<=2; round++) {
+            System.out.println("Round " + round + (round==1 ? " (warm-up)" : ""));
+            runAtDepth(stackDepth, simpleJqtiFacade, itemProcessingMap, false, sessions);
+            runAtDepth(stackDepth, simpleJqtiFacade, itemProcessingMap, true, sessions);
+        }
+    }
+
+    private static void runAtDepth(final int stackDepth, final SimpleJqtiFacade simpleJqtiFacade,
+            final ItemProcessingMap itemProcessingMap, final boolean compiled, final int sessions) {
+        if (stackDepth > 0) {
+            runAtDepth(stackDepth - 1, simpleJqtiFacade, itemProcessingMap, compiled, sessions);
+        }
+        else {
+            run(simpleJqtiFacade, itemProcessingMap, compiled, sessions);
+        }
+    }
+
+    private static void run(final SimpleJqtiFacade simpleJqtiFacade, final ItemProcessingMap itemProcessingMap,
+            final boolean compiled, final int sessions) {
+        final ItemSessionControllerSettings itemSessionControllerSettings = new ItemSessionControllerSettings();
+        itemSessionControllerSettings.setTemplateProcessingLimit(Integer.MAX_VALUE);
+        itemSessionControllerSettings.setCompiledProcessingEnabled(compiled);
+        final Date timestamp = new Date();
+
+        final long startTime = System.nanoTime();
+        for (int i=0; i<sessions; i++) {
+            final ItemSessionController itemSessionController = simpleJqtiFacade.createItemSessionController(itemSessionControllerSettings,
+                    itemProcessingMap, new ItemSessionState());
+            itemSessionController.initialize(timestamp);
+            itemSessionController.performTemplateProcessing(timestamp);
+        }
+        final long duration = System.nanoTime() - startTime;
+
+        System.out.printf("  %-11s %8.0f sessions/s (%.1f us per session)%n",
+                compiled ? "compiled" : "interpreted",
+                Double.valueOf(sessions * 1.0E9 / duration),
+                Double.valueOf(duration / 1000.0 / sessions));
+    }
+}
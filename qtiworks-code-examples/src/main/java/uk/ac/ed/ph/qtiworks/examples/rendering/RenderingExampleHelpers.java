@@ -99,11 +99,11 @@ public final class RenderingExampleHelpers {
         final ResolvedAssessmentTest resolvedAssessmentTest = simpleJqtiFacade.loadAndResolveAssessmentTest(assessmentResourceLocator, testUri);
         final TestProcessingMap testProcessingMap = new TestProcessingInitializer(resolvedAssessmentTest, true).initialize();
 
-        final TestPlanner testPlanner = simpleJqtiFacade.createTestPlanner(testProcessingMap);
+        final TestSessionControllerSettings testSessionControllerSettings = new TestSessionControllerSettings();
+        final TestPlanner testPlanner = simpleJqtiFacade.createTestPlanner(testSessionControllerSettings, testProcessingMap);
         final TestPlan testPlan = testPlanner.generateTestPlan();
 
         final TestSessionState testSessionState = new TestSessionState(testPlan);
-        final TestSessionControllerSettings testSessionControllerSettings = new TestSessionControllerSettings();
         final TestSessionController testSessionController = simpleJqtiFacade.createTestSessionController(testSessionControllerSettings, testProcessingMap, testSessionState);
         return testSessionController;
     }
@@ -36,6 +36,7 @@ package uk.ac.ed.ph.qtiworks.manager;
 import uk.ac.ed.ph.qtiworks.domain.entities.CandidateSession;
 import uk.ac.ed.ph.qtiworks.domain.entities.Delivery;
 import uk.ac.ed.ph.qtiworks.manager.services.ManagerServices;
+import uk.ac.ed.ph.qtiworks.services.domain.CandidateSessionPurgeReport;
 
 import java.util.List;
 
@@ -75,13 +76,29 @@ public final class DeleteCandidateSessionsAction extends ManagerAction {
     public void run(final ApplicationContext applicationContext, final List<String> parameters) throws Exception {
         final ManagerServices managerServices = applicationContext.getBean(ManagerServices.class);
         int deletedCount = 0;
+        int chunkCount = 0;
+        int filesystemFailureCount = 0;
+        long databaseDuration = 0L;
+        long totalDuration = 0L;
         for (final String parameter : parameters) {
             final Long did = Long.valueOf(parameter);
-            final int deleted = managerServices.deleteCandidateSessions(did);
-            if (deleted > 0) {
-                deletedCount += deleted;
+            final CandidateSessionPurgeReport purgeReport = managerServices.deleteCandidateSessions(did);
+            if (purgeReport!=null) {
+                logger.info("Deleted {} CandidateSession(s) from Delivery {} in {}ms", new Object[] {
+                        purgeReport.getSessionCount(), did, purgeReport.getTotalDuration() });
+                deletedCount += purgeReport.getSessionCount();
+                chunkCount += purgeReport.getChunkCount();
+                filesystemFailureCount += purgeReport.getFilesystemFailureCount();
+                databaseDuration += purgeReport.getDatabaseDuration();
+                totalDuration += purgeReport.getTotalDuration();
             }
         }
-        logger.info("Deleted {} CandidateSession(s) from the system", deletedCount);
+        final double sessionsPerSecond = totalDuration > 0 ? 1000.0 * deletedCount / totalDuration : 0.0;
+        logger.info("Deleted {} CandidateSession(s) from the system in {} chunk(s) taking {}ms ({}ms in database, {} sessions/s)",
+                new Object[] { deletedCount, chunkCount, totalDuration, databaseDuration,
+                    String.format("%.1f", sessionsPerSecond) });
+        if (filesystemFailureCount > 0) {
+            logger.warn("Failed to delete filesystem data for {} CandidateSession(s)", filesystemFailureCount);
+        }
     }
 }
@@ -35,6 +35,7 @@ package uk.ac.ed.ph.qtiworks.manager;
 
 import uk.ac.ed.ph.qtiworks.domain.entities.LtiContext;
 import uk.ac.ed.ph.qtiworks.manager.services.ManagerServices;
+import uk.ac.ed.ph.qtiworks.services.domain.CandidateSessionPurgeReport;
 
 import java.util.List;
 
@@ -75,6 +76,13 @@ public final class DeleteLtiContextAction extends ManagerAction {
         int deletedCount = 0;
         for (final String parameter : parameters) {
             final Long lcid = Long.valueOf(parameter);
+
+            /* Purge candidate data in bulk first, as this is much faster than doing it during deletion */
+            final CandidateSessionPurgeReport purgeReport = managerServices.purgeLtiContextCandidateSessions(lcid);
+            if (purgeReport!=null) {
+                logger.info("Purged {} CandidateSession(s) from LtiContext {} in {}ms", new Object[] {
+                        purgeReport.getSessionCount(), lcid, purgeReport.getTotalDuration() });
+            }
             if (managerServices.deleteLtiContext(lcid)) {
                 ++deletedCount;
             }
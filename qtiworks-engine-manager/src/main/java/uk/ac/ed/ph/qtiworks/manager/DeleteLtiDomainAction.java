@@ -35,6 +35,7 @@ package uk.ac.ed.ph.qtiworks.manager;
 
 import uk.ac.ed.ph.qtiworks.domain.entities.LtiDomain;
 import uk.ac.ed.ph.qtiworks.manager.services.ManagerServices;
+import uk.ac.ed.ph.qtiworks.services.domain.CandidateSessionPurgeReport;
 
 import java.util.List;
 
@@ -75,6 +76,13 @@ public final class DeleteLtiDomainAction extends ManagerAction {
         int deletedCount = 0;
         for (final String parameter : parameters) {
             final Long ldid = Long.valueOf(parameter);
+
+            /* Purge candidate data in bulk first, as this is much faster than doing it during deletion */
+            final CandidateSessionPurgeReport purgeReport = managerServices.purgeLtiDomainCandidateSessions(ldid);
+            if (purgeReport!=null) {
+                logger.info("Purged {} CandidateSession(s) from LtiDomain {} in {}ms", new Object[] {
+                        purgeReport.getSessionCount(), ldid, purgeReport.getTotalDuration() });
+            }
             if (managerServices.deleteLtiDomain(ldid)) {
                 ++deletedCount;
             }
@@ -45,6 +45,7 @@ import uk.ac.ed.ph.qtiworks.domain.entities.SystemUser;
 import uk.ac.ed.ph.qtiworks.domain.entities.User;
 import uk.ac.ed.ph.qtiworks.domain.entities.UserRole;
 import uk.ac.ed.ph.qtiworks.services.AssessmentDataService;
+import uk.ac.ed.ph.qtiworks.services.CandidateSessionPurgeService;
 import uk.ac.ed.ph.qtiworks.services.DataDeletionService;
 import uk.ac.ed.ph.qtiworks.services.ServiceUtilities;
 import uk.ac.ed.ph.qtiworks.services.dao.AssessmentDao;
@@ -55,6 +56,7 @@ import uk.ac.ed.ph.qtiworks.services.dao.LtiDomainDao;
 import uk.ac.ed.ph.qtiworks.services.dao.LtiResourceDao;
 import uk.ac.ed.ph.qtiworks.services.dao.SystemUserDao;
 import uk.ac.ed.ph.qtiworks.services.dao.UserDao;
+import uk.ac.ed.ph.qtiworks.services.domain.CandidateSessionPurgeReport;
 
 import uk.ac.ed.ph.jqtiplus.internal.util.Assert;
 
@@ -88,6 +90,9 @@ public class ManagerServices {
     @Resource
     private DataDeletionService dataDeletionService;
 
+    @Resource
+    private CandidateSessionPurgeService candidateSessionPurgeService;
+
     @Resource
     private AssessmentDataService assessmentDataService;
 
@@ -308,13 +313,21 @@ public class ManagerServices {
         return true;
     }
 
-    public int deleteCandidateSessions(final Long did) {
+    /**
+     * Purges all {@link CandidateSession}s launched on the {@link Delivery} having the given did,
+     * using the {@link CandidateSessionPurgeService}.
+     *
+     * @return {@link CandidateSessionPurgeReport} describing the purge, or null if no such
+     *   {@link Delivery} was found
+     */
+    @Transactional(propagation=Propagation.NOT_SUPPORTED)
+    public CandidateSessionPurgeReport deleteCandidateSessions(final Long did) {
         final Delivery delivery = deliveryDao.findById(did);
         if (delivery==null) {
             logger.warn("Could not find Delivery with ID {}", did);
-            return -1;
+            return null;
         }
-        return dataDeletionService.deleteCandidateSessions(delivery);
+        return candidateSessionPurgeService.purgeCandidateSessions(delivery);
     }
 
     public boolean deleteAssessment(final Long aid) {
@@ -337,6 +350,24 @@ public class ManagerServices {
         return true;
     }
 
+    /**
+     * Purges all {@link CandidateSession}s launched within the {@link LtiContext} having the given lcid,
+     * using the {@link CandidateSessionPurgeService}. This is useful to do before calling
+     * {@link #deleteLtiContext(Long)}.
+     *
+     * @return {@link CandidateSessionPurgeReport} describing the purge, or null if no such
+     *   {@link LtiContext} was found
+     */
+    @Transactional(propagation=Propagation.NOT_SUPPORTED)
+    public CandidateSessionPurgeReport purgeLtiContextCandidateSessions(final Long lcid) {
+        final LtiContext ltiContext = ltiContextDao.findById(lcid);
+        if (ltiContext==null) {
+            logger.warn("Could not find LtiContext with ID {}", lcid);
+            return null;
+        }
+        return candidateSessionPurgeService.purgeCandidateSessions(ltiContext);
+    }
+
     public boolean deleteLtiContext(final Long lcid) {
         final LtiContext ltiContext = ltiContextDao.findById(lcid);
         if (ltiContext==null) {
@@ -347,6 +378,24 @@ public class ManagerServices {
         return true;
     }
 
+    /**
+     * Purges all {@link CandidateSession}s run by users within the {@link LtiDomain} having the given ldid,
+     * using the {@link CandidateSessionPurgeService}. This is useful to do before calling
+     * {@link #deleteLtiDomain(Long)}.
+     *
+     * @return {@link CandidateSessionPurgeReport} describing the purge, or null if no such
+     *   {@link LtiDomain} was found
+     */
+    @Transactional(propagation=Propagation.NOT_SUPPORTED)
+    public CandidateSessionPurgeReport purgeLtiDomainCandidateSessions(final Long ldid) {
+        final LtiDomain ltiDomain = ltiDomainDao.findById(ldid);
+        if (ltiDomain==null) {
+            logger.warn("Could not find LtiDomain with ID {}", ldid);
+            return null;
+        }
+        return candidateSessionPurgeService.purgeCandidateSessions(ltiDomain);
+    }
+
     public boolean deleteLtiDomain(final Long ldid) {
         final LtiDomain ltiDomain = ltiDomainDao.findById(ldid);
         if (ltiDomain==null) {
@@ -35,10 +35,19 @@ package uk.ac.ed.ph.qtiworks.config;
 
 import uk.ac.ed.ph.qtiworks.config.beans.QtiWorksDeploymentSettings;
 import uk.ac.ed.ph.qtiworks.mathassess.MathAssessExtensionPackage;
+import uk.ac.ed.ph.qtiworks.rendering.AssessmentSourceCache;
 import uk.ac.ed.ph.qtiworks.services.RequestTimestampContext;
+import uk.ac.ed.ph.qtiworks.services.audit.AuditRecordDispatcher;
+import uk.ac.ed.ph.qtiworks.services.audit.AuditRecordDispatcher.OverflowPolicy;
+import uk.ac.ed.ph.qtiworks.services.metrics.CasCallMetricsListener;
+import uk.ac.ed.ph.qtiworks.services.metrics.Gauge;
+import uk.ac.ed.ph.qtiworks.services.metrics.MaximaProcessGauge;
+import uk.ac.ed.ph.qtiworks.services.metrics.MetricsRegistry;
+import uk.ac.ed.ph.qtiworks.services.metrics.ProcessingMetricsListener;
 
 import uk.ac.ed.ph.jqtiplus.JqtiExtensionManager;
 import uk.ac.ed.ph.jqtiplus.JqtiExtensionPackage;
+import uk.ac.ed.ph.jqtiplus.JqtiLifecycleListener;
 import uk.ac.ed.ph.jqtiplus.reading.QtiXmlReader;
 import uk.ac.ed.ph.jqtiplus.serialization.QtiSerializer;
 import uk.ac.ed.ph.jqtiplus.xmlutils.SchemaCache;
@@ -48,6 +57,7 @@ import uk.ac.ed.ph.jqtiplus.xmlutils.xslt.XsltStylesheetCache;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Locale;
 import java.util.Properties;
 
 import javax.activation.FileTypeMap;
@@ -84,11 +94,38 @@ public class ServicesConfiguration {
     @Resource
     private QtiWorksDeploymentSettings qtiWorksDeploymentSettings;
 
+    @Resource
+    private MetricsRegistry metricsRegistry;
+
     @Bean
     RequestTimestampContext requestTimestampContext() {
         return new RequestTimestampContext();
     }
 
+    /**
+     * Writes audit records asynchronously. This is shut down after the services that use it,
+     * flushing any records still waiting to be written.
+     */
+    @Bean(initMethod="start", destroyMethod="shutdown")
+    public AuditRecordDispatcher auditRecordDispatcher() {
+        final OverflowPolicy overflowPolicy = OverflowPolicy.valueOf(qtiWorksDeploymentSettings.getAuditOverflowPolicy().trim().toUpperCase(Locale.ROOT));
+        final AuditRecordDispatcher auditRecordDispatcher = new AuditRecordDispatcher(qtiWorksDeploymentSettings.getAuditBufferSize(),
+                qtiWorksDeploymentSettings.getAuditBatchSize(), overflowPolicy, AuditRecordDispatcher.SLF4J_SINK);
+        metricsRegistry.registerGauge("audit.pendingRecords", new Gauge() {
+            @Override
+            public Number getValue() {
+                return Integer.valueOf(auditRecordDispatcher.getPendingCount());
+            }
+        });
+        metricsRegistry.registerGauge("audit.droppedRecords", new Gauge() {
+            @Override
+            public Number getValue() {
+                return Long.valueOf(auditRecordDispatcher.getDroppedCount());
+            }
+        });
+        return auditRecordDispatcher;
+    }
+
     @Bean
     public LocalValidatorFactoryBean jsr303Validator() {
         return new LocalValidatorFactoryBean();
@@ -112,6 +149,10 @@ public class ServicesConfiguration {
         final Properties jpaProperties = new Properties();
         jpaProperties.put("hibernate.dialect", qtiWorksDeploymentSettings.getHibernateDialect());
         jpaProperties.put("hibernate.id.new_generator_mappings", Boolean.TRUE);
+        if (qtiWorksDeploymentSettings.getJdbcBatchSize() > 1) {
+            /* Send runs of INSERTs (e.g. CandidateEventNotifications) to the DB in JDBC batches */
+            jpaProperties.put("hibernate.jdbc.batch_size", Integer.toString(qtiWorksDeploymentSettings.getJdbcBatchSize()));
+        }
         jpaProperties.putAll(extraJpaProperties);
         return jpaProperties;
     }
@@ -156,6 +197,11 @@ public class ServicesConfiguration {
         return new SimpleXsltStylesheetCache();
     }
 
+    @Bean
+    public AssessmentSourceCache assessmentSourceCache() {
+        return new AssessmentSourceCache(qtiWorksDeploymentSettings.getRenderingSourceCacheSize());
+    }
+
     @Bean(initMethod="init", destroyMethod="destroy")
     public JqtiExtensionManager jqtiExtensionManager() {
         final List<JqtiExtensionPackage<?>> extensionPackages = new ArrayList<JqtiExtensionPackage<?>>();
@@ -163,10 +209,21 @@ public class ServicesConfiguration {
         /* Enable MathAssess extensions if requested */
         if (qtiWorksDeploymentSettings.isEnableMathAssessExtension()) {
             logger.info("Enabling the MathAssess extensions");
-            extensionPackages.add(new MathAssessExtensionPackage(xsltStylesheetCache()));
+            final MathAssessExtensionPackage mathAssessExtensionPackage = new MathAssessExtensionPackage(xsltStylesheetCache(),
+                    qtiWorksDeploymentSettings.getMathAssessCasResultCacheSize());
+            mathAssessExtensionPackage.setMaximaPoolMaxSize(qtiWorksDeploymentSettings.getMathAssessPoolMaxSize());
+            mathAssessExtensionPackage.setMaximaPoolMinIdle(qtiWorksDeploymentSettings.getMathAssessPoolMinIdle());
+            mathAssessExtensionPackage.setMaximaPoolMaxWaitMillis(qtiWorksDeploymentSettings.getMathAssessPoolMaxWaitMillis());
+            mathAssessExtensionPackage.setCasCallListener(new CasCallMetricsListener(metricsRegistry));
+            extensionPackages.add(mathAssessExtensionPackage);
+            MaximaProcessGauge.registerAll(metricsRegistry, mathAssessExtensionPackage);
         }
 
-        return new JqtiExtensionManager(extensionPackages);
+        /* Time the JQTI+ processing phases */
+        final List<JqtiLifecycleListener> lifecycleListeners = new ArrayList<JqtiLifecycleListener>();
+        lifecycleListeners.add(new ProcessingMetricsListener(metricsRegistry));
+
+        return new JqtiExtensionManager(extensionPackages, lifecycleListeners);
     }
 
     @Bean
@@ -35,7 +35,9 @@ package uk.ac.ed.ph.qtiworks.config.beans;
 
 import uk.ac.ed.ph.qtiworks.web.QtiWorksWebApplicationContextInitializer;
 
+import uk.ac.ed.ph.jqtiplus.internal.util.BeanToStringOptions;
 import uk.ac.ed.ph.jqtiplus.internal.util.ObjectUtilities;
+import uk.ac.ed.ph.jqtiplus.internal.util.PropertyOptions;
 
 import java.io.Serializable;
 
@@ -60,7 +62,12 @@ public final class QtiWorksDeploymentSettings implements Serializable {
     private @Value("${qtiworks.jdbc.password}") String jdbcPassword;
     private @Value("${qtiworks.filesystem.base}") String filesystemBase;
     private @Value("${qtiworks.extensions.mathassess:false}") boolean enableMathAssessExtension;
+    private @Value("${qtiworks.extensions.mathassess.casresultcache.size:10000}") int mathAssessCasResultCacheSize; /* (Optional - default 10000 results) */
+    private @Value("${qtiworks.extensions.mathassess.pool.maxsize:8}") int mathAssessPoolMaxSize; /* (Optional - default 8 processes) */
+    private @Value("${qtiworks.extensions.mathassess.pool.minidle:1}") int mathAssessPoolMinIdle; /* (Optional - default 1 process) */
+    private @Value("${qtiworks.extensions.mathassess.pool.maxwait:30000}") long mathAssessPoolMaxWaitMillis; /* (Optional - default 30s) */
     private @Value("${qtiworks.hibernate.dialect}") String hibernateDialect;
+    private @Value("${qtiworks.jdbc.batch.size:50}") int jdbcBatchSize; /* (Optional - default 50 statements) */
     private @Value("${qtiworks.admin.name}") String adminName;
     private @Value("${qtiworks.admin.email}") String adminEmailAddress;
     private @Value("${qtiworks.base.url}") String baseUrl;
@@ -69,6 +76,20 @@ public final class QtiWorksDeploymentSettings implements Serializable {
     private @Value("${qtiworks.features.publicdemos:false}") boolean publicDemosEnabled; /* (Optional - default false) */
     private @Value("${qtiworks.features.rest:false}") boolean restEnabled; /* (Optional - default false) */
     private @Value("${qtiworks.retention.max.candidatesession.age:180}") int maxCandidateSessionAge; /* (Optional - default 180 days) */
+    private @Value("${qtiworks.purge.chunk.size:500}") int purgeChunkSize; /* (Optional - default 500 sessions) */
+    private @Value("${qtiworks.purge.filesystem.threads:4}") int purgeFilesystemThreads; /* (Optional - default 4 threads) */
+    private @Value("${qtiworks.validation.threads:4}") int validationThreads; /* (Optional - default 4 threads) */
+    private @Value("${qtiworks.templatepool.size:0}") int templatePoolSize; /* (Optional - default 0, i.e. disabled) */
+    private @Value("${qtiworks.templatepool.threads:2}") int templatePoolThreads; /* (Optional - default 2 threads) */
+    private @Value("${qtiworks.rendering.sourcecache.size:200}") int renderingSourceCacheSize; /* (Optional - default 200 documents) */
+    private @Value("${qtiworks.rendering.resultcache.size:32768}") int renderingResultCacheSize; /* (Optional - default 32MB) */
+    private @Value("${qtiworks.snapshots.enabled:true}") boolean snapshotsEnabled; /* (Optional - default true) */
+    private @Value("${qtiworks.snapshots.preload:false}") boolean snapshotPreloadEnabled; /* (Optional - default false) */
+    private @Value("${qtiworks.candidate.tickets.secret:}") String candidateTicketSecret; /* (Optional - default null, i.e. disabled) */
+    private @Value("${qtiworks.candidate.tickets.lifetime:1440}") int candidateTicketLifetime; /* (Optional - default 1440 minutes) */
+    private @Value("${qtiworks.audit.buffer.size:8192}") int auditBufferSize; /* (Optional - default 8192 records) */
+    private @Value("${qtiworks.audit.batch.size:256}") int auditBatchSize; /* (Optional - default 256 records) */
+    private @Value("${qtiworks.audit.overflow:BLOCK}") String auditOverflowPolicy; /* (Optional - default BLOCK) */
 
 
     public String getJdbcDriverClassName() {
@@ -91,6 +112,10 @@ public final class QtiWorksDeploymentSettings implements Serializable {
         return hibernateDialect;
     }
 
+    public int getJdbcBatchSize() {
+        return jdbcBatchSize;
+    }
+
     public String getAdminName() {
         return adminName;
     }
@@ -115,6 +140,22 @@ public final class QtiWorksDeploymentSettings implements Serializable {
         return enableMathAssessExtension;
     }
 
+    public int getMathAssessCasResultCacheSize() {
+        return mathAssessCasResultCacheSize;
+    }
+
+    public int getMathAssessPoolMaxSize() {
+        return mathAssessPoolMaxSize;
+    }
+
+    public int getMathAssessPoolMinIdle() {
+        return mathAssessPoolMinIdle;
+    }
+
+    public long getMathAssessPoolMaxWaitMillis() {
+        return mathAssessPoolMaxWaitMillis;
+    }
+
     public String getFakeLoginName() {
         return fakeLoginName;
     }
@@ -131,6 +172,63 @@ public final class QtiWorksDeploymentSettings implements Serializable {
         return maxCandidateSessionAge;
     }
 
+    public int getPurgeChunkSize() {
+        return purgeChunkSize;
+    }
+
+    public int getPurgeFilesystemThreads() {
+        return purgeFilesystemThreads;
+    }
+
+    public int getValidationThreads() {
+        return validationThreads;
+    }
+
+    public int getTemplatePoolSize() {
+        return templatePoolSize;
+    }
+
+    public int getTemplatePoolThreads() {
+        return templatePoolThreads;
+    }
+
+    public int getRenderingSourceCacheSize() {
+        return renderingSourceCacheSize;
+    }
+
+    public int getRenderingResultCacheSize() {
+        return renderingResultCacheSize;
+    }
+
+    public boolean isSnapshotsEnabled() {
+        return snapshotsEnabled;
+    }
+
+    public boolean isSnapshotPreloadEnabled() {
+        return snapshotPreloadEnabled;
+    }
+
+    @BeanToStringOptions(PropertyOptions.HIDE_VALUE)
+    public String getCandidateTicketSecret() {
+        return candidateTicketSecret;
+    }
+
+    public int getCandidateTicketLifetime() {
+        return candidateTicketLifetime;
+    }
+
+    public int getAuditBufferSize() {
+        return auditBufferSize;
+    }
+
+    public int getAuditBatchSize() {
+        return auditBatchSize;
+    }
+
+    public String getAuditOverflowPolicy() {
+        return auditOverflowPolicy;
+    }
+
     @Override
     public String toString() {
         return ObjectUtilities.beanToString(this);
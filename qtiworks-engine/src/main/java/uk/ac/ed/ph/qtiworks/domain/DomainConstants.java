@@ -59,6 +59,7 @@ public final class DomainConstants {
     public static final int USER_NAME_COMPONENT_MAX_LENGTH = 256;
     public static final int USER_PASSWORD_SALT_LENGTH = 16;
     public static final int SHA1_DIGEST_LENGTH = 40;
+    public static final int SHA256_DIGEST_LENGTH = 64;
 
     public static final int ASSESSMENT_NAME_MAX_LENGTH = 64;
     public static final int ASSESSMENT_TITLE_MAX_LENGTH = 256;
@@ -52,6 +52,7 @@ import javax.persistence.Enumerated;
 import javax.persistence.FetchType;
 import javax.persistence.GeneratedValue;
 import javax.persistence.Id;
+import javax.persistence.Index;
 import javax.persistence.JoinColumn;
 import javax.persistence.Lob;
 import javax.persistence.ManyToOne;
@@ -78,7 +79,9 @@ import org.hibernate.annotations.Type;
  * @author David McKain
  */
 @Entity
-@Table(name="assessment_packages")
+@Table(name="assessment_packages",
+    indexes={@Index(name="assessment_package_content_digests", columnList="content_digest")}
+)
 @SequenceGenerator(name="assessmentPackageSequence", sequenceName="assessment_package_sequence", initialValue=1, allocationSize=1)
 @NamedQueries({
     @NamedQuery(name="AssessmentPackage.getUnusedForAssessment",
@@ -95,7 +98,12 @@ import org.hibernate.annotations.Type;
     @NamedQuery(name="AssessmentPackage.getAll",
             query="SELECT ap"
                 + "  FROM AssessmentPackage ap"
-                + "  LEFT JOIN FETCH ap.assessment a")
+                + "  LEFT JOIN FETCH ap.assessment a"),
+    @NamedQuery(name="AssessmentPackage.getForContentDigest",
+            query="SELECT ap"
+                + "  FROM AssessmentPackage ap"
+                + "  WHERE ap.contentDigest = :contentDigest"
+                + "  ORDER BY ap.apid DESC")
 })
 public class AssessmentPackage implements BaseEntity, TimestampedOnCreation {
 
@@ -155,6 +163,20 @@ public class AssessmentPackage implements BaseEntity, TimestampedOnCreation {
     @Column(name="sandbox_path")
     private String sandboxPath;
 
+    /**
+     * Hex-encoded SHA-256 digest of the data uploaded to create this package.
+     * <p>
+     * When not null, the sandbox is a content-addressed one that is shared between all
+     * {@link AssessmentPackage}s imported from identical data. It must therefore only be
+     * deleted once the last of these packages has been deleted.
+     * <p>
+     * This will be null for bundled packages, and for packages imported before content
+     * addressing was introduced, which have their own private sandbox.
+     */
+    @Basic(optional=true)
+    @Column(name="content_digest", length=DomainConstants.SHA256_DIGEST_LENGTH, updatable=false)
+    private String contentDigest;
+
     /** Href of the assessment item/test within this package */
     @Lob
     @Type(type="org.hibernate.type.TextType")
@@ -297,6 +319,15 @@ public class AssessmentPackage implements BaseEntity, TimestampedOnCreation {
     }
 
 
+    public String getContentDigest() {
+        return contentDigest;
+    }
+
+    public void setContentDigest(final String contentDigest) {
+        this.contentDigest = contentDigest;
+    }
+
+
     public String getAssessmentHref() {
         return assessmentHref;
     }
@@ -49,6 +49,7 @@ import javax.persistence.Enumerated;
 import javax.persistence.FetchType;
 import javax.persistence.GeneratedValue;
 import javax.persistence.Id;
+import javax.persistence.Index;
 import javax.persistence.JoinColumn;
 import javax.persistence.Lob;
 import javax.persistence.ManyToOne;
@@ -73,7 +74,9 @@ import org.hibernate.annotations.Type;
  * @author David McKain
  */
 @Entity
-@Table(name="candidate_events")
+@Table(name="candidate_events",
+    indexes={@Index(name="candidate_event_sessions", columnList="xid,xeid")}
+)
 @SequenceGenerator(name="candidateEventSequence", sequenceName="candidate_event_sequence", initialValue=1, allocationSize=1)
 @NamedQueries({
     @NamedQuery(name="CandidateEvent.getForSession",
@@ -97,6 +100,13 @@ import org.hibernate.annotations.Type;
                 + "    SELECT x FROM CandidateSession x"
                 + "    WHERE x.delivery = :delivery"
                 + "  )"),
+    /* NB: This one needs to be called after CandidateEventNotification.deleteForSessionXids and CandidateResponse.deleteForSessionXids */
+    @NamedQuery(name="CandidateEvent.deleteForSessionXids",
+            query="DELETE FROM CandidateEvent xe"
+                + "  WHERE xe.candidateSession IN ("
+                + "    SELECT x FROM CandidateSession x"
+                + "    WHERE x.xid IN (:xids)"
+                + "  )"),
 })
 public class CandidateEvent implements BaseEntity {
 
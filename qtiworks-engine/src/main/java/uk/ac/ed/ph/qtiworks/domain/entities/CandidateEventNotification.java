@@ -90,6 +90,15 @@ import org.hibernate.annotations.Type;
                 + "      WHERE x.delivery = :delivery"
                 + "    )"
                 + "  )"),
+    @NamedQuery(name="CandidateEventNotification.deleteForSessionXids",
+            query="DELETE FROM CandidateEventNotification xn"
+                + "  WHERE xn.candidateEvent IN ("
+                + "    SELECT xe FROM CandidateEvent xe"
+                + "    WHERE xe.candidateSession IN ("
+                + "      SELECT x FROM CandidateSession x"
+                + "      WHERE x.xid IN (:xids)"
+                + "    )"
+                + "  )"),
 })
 public class CandidateEventNotification implements BaseEntity {
 
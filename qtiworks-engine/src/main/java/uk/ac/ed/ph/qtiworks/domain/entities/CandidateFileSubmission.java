@@ -44,6 +44,7 @@ import javax.persistence.Column;
 import javax.persistence.Entity;
 import javax.persistence.GeneratedValue;
 import javax.persistence.Id;
+import javax.persistence.Index;
 import javax.persistence.JoinColumn;
 import javax.persistence.Lob;
 import javax.persistence.ManyToOne;
@@ -66,7 +67,9 @@ import org.hibernate.annotations.Type;
  * @author David McKain
  */
 @Entity
-@Table(name="candidate_file_submissions")
+@Table(name="candidate_file_submissions",
+    indexes={@Index(name="candidate_file_submission_content_digests", columnList="content_digest")}
+)
 @SequenceGenerator(name="candidateFileSubmissionSequence", sequenceName="candidate_file_submission_sequence", initialValue=1, allocationSize=1)
 @NamedQueries({
     @NamedQuery(name="CandidateFileSubmission.deleteForSession",
@@ -78,6 +81,31 @@ import org.hibernate.annotations.Type;
                 + "    SELECT x FROM CandidateSession x"
                 + "    WHERE x.delivery = :delivery"
                 + "  )"),
+    @NamedQuery(name="CandidateFileSubmission.deleteForSessionXids",
+            query="DELETE FROM CandidateFileSubmission f"
+                + "  WHERE f.candidateSession IN ("
+                + "    SELECT x FROM CandidateSession x"
+                + "    WHERE x.xid IN (:xids)"
+                + "  )"),
+    @NamedQuery(name="CandidateFileSubmission.getContentDigestsForSession",
+            query="SELECT DISTINCT f.contentDigest"
+                + "  FROM CandidateFileSubmission f"
+                + "  WHERE f.candidateSession = :candidateSession"
+                + "    AND f.contentDigest IS NOT NULL"),
+    @NamedQuery(name="CandidateFileSubmission.getContentDigestsForDelivery",
+            query="SELECT DISTINCT f.contentDigest"
+                + "  FROM CandidateFileSubmission f"
+                + "  WHERE f.candidateSession.delivery = :delivery"
+                + "    AND f.contentDigest IS NOT NULL"),
+    @NamedQuery(name="CandidateFileSubmission.getContentDigestsForSessionXids",
+            query="SELECT DISTINCT f.contentDigest"
+                + "  FROM CandidateFileSubmission f"
+                + "  WHERE f.candidateSession.xid IN (:xids)"
+                + "    AND f.contentDigest IS NOT NULL"),
+    @NamedQuery(name="CandidateFileSubmission.getForContentDigest",
+            query="SELECT f"
+                + "  FROM CandidateFileSubmission f"
+                + "  WHERE f.contentDigest = :contentDigest"),
 })
 public class CandidateFileSubmission implements BaseEntity, TimestampedOnCreation {
 
@@ -124,6 +152,18 @@ public class CandidateFileSubmission implements BaseEntity, TimestampedOnCreatio
     @Column(name="stored_file_path", updatable=false)
     private String storedFilePath;
 
+    /**
+     * Hex-encoded SHA-256 digest of the submitted file.
+     * <p>
+     * When not null, the stored file is a content-addressed one shared between all
+     * submissions of identical data, so must only be deleted once the last of these
+     * has been deleted. (This will be null for submissions stored before content
+     * addressing was introduced.)
+     */
+    @Basic(optional=true)
+    @Column(name="content_digest", length=DomainConstants.SHA256_DIGEST_LENGTH, updatable=false)
+    private String contentDigest;
+
     //------------------------------------------------------------
 
     @Override
@@ -183,6 +223,15 @@ public class CandidateFileSubmission implements BaseEntity, TimestampedOnCreatio
         this.storedFilePath = storedFilePath;
     }
 
+
+    public String getContentDigest() {
+        return contentDigest;
+    }
+
+    public void setContentDigest(final String contentDigest) {
+        this.contentDigest = contentDigest;
+    }
+
     //------------------------------------------------------------
 
     @Override
@@ -92,6 +92,15 @@ import org.hibernate.annotations.Type;
                 + "      WHERE x.delivery = :delivery"
                 + "    )"
                 + "  )"),
+    @NamedQuery(name="CandidateResponse.deleteForSessionXids",
+            query="DELETE FROM CandidateResponse xr"
+                + "  WHERE xr.candidateEvent IN ("
+                + "    SELECT xe FROM CandidateEvent xe"
+                + "    WHERE xe.candidateSession IN ("
+                + "      SELECT x FROM CandidateSession x"
+                + "      WHERE x.xid IN (:xids)"
+                + "    )"
+                + "  )"),
 })
 public class CandidateResponse implements BaseEntity {
 
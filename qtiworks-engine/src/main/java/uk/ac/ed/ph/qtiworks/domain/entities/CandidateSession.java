@@ -49,6 +49,7 @@ import javax.persistence.Enumerated;
 import javax.persistence.FetchType;
 import javax.persistence.GeneratedValue;
 import javax.persistence.Id;
+import javax.persistence.Index;
 import javax.persistence.JoinColumn;
 import javax.persistence.Lob;
 import javax.persistence.ManyToOne;
@@ -73,7 +74,13 @@ import org.hibernate.annotations.Type;
  * @author David McKain
  */
 @Entity
-@Table(name="candidate_sessions")
+@Table(name="candidate_sessions",
+    indexes={
+        @Index(name="candidate_session_deliveries", columnList="did,candidate_uid,termination_time"),
+        @Index(name="candidate_session_candidates", columnList="candidate_uid"),
+        @Index(name="candidate_session_creation_times", columnList="creation_time")
+    }
+)
 @SequenceGenerator(name="candidateSessionSequence", sequenceName="candidate_session_sequence", initialValue=1, allocationSize=1)
 @NamedQueries({
     @NamedQuery(name="CandidateSession.getForCandidate",
@@ -139,6 +146,64 @@ import org.hibernate.annotations.Type;
     @NamedQuery(name="CandidateSession.deleteForDelivery",
             query="DELETE FROM CandidateSession x"
                 + "  WHERE x.delivery = :delivery"),
+    /* (This only touches the one column, so won't overwrite changes made by other transactions) */
+    @NamedQuery(name="CandidateSession.updateLatestXeid",
+            query="UPDATE CandidateSession x"
+                + "  SET x.latestXeid = :xeid"
+                + "  WHERE x.xid = :xid"),
+    /* The following "purge chunk" queries are used for bulk deletion. They page through matching
+     * sessions in xid order, starting after the given xid. The Delivery and candidate are fetched
+     * at the same time as they are needed to locate the filesystem data for each session.
+     */
+    @NamedQuery(name="CandidateSession.getPurgeChunkCreatedBefore",
+            query="SELECT x"
+                + "  FROM CandidateSession x"
+                + "  JOIN FETCH x.delivery d"
+                + "  LEFT JOIN FETCH d.assessment"
+                + "  JOIN FETCH x.candidate"
+                + "  WHERE x.creationTime < :creationTime"
+                + "    AND x.xid > :afterXid"
+                + "  ORDER BY x.xid"),
+    @NamedQuery(name="CandidateSession.getPurgeChunkForDelivery",
+            query="SELECT x"
+                + "  FROM CandidateSession x"
+                + "  JOIN FETCH x.delivery d"
+                + "  LEFT JOIN FETCH d.assessment"
+                + "  JOIN FETCH x.candidate"
+                + "  WHERE x.delivery = :delivery"
+                + "    AND x.xid > :afterXid"
+                + "  ORDER BY x.xid"),
+    @NamedQuery(name="CandidateSession.getPurgeChunkForLtiContext",
+            query="SELECT x"
+                + "  FROM CandidateSession x"
+                + "  JOIN FETCH x.delivery d"
+                + "  LEFT JOIN FETCH d.assessment"
+                + "  JOIN FETCH x.candidate"
+                + "  WHERE (d IN ("
+                + "      SELECT lr.delivery FROM LtiResource lr"
+                + "      WHERE lr.ltiContext = :ltiContext"
+                + "    ) OR d IN ("
+                + "      SELECT d2 FROM Delivery d2"
+                + "      WHERE d2.assessment.ownerLtiContext = :ltiContext"
+                + "    ))"
+                + "    AND x.xid > :afterXid"
+                + "  ORDER BY x.xid"),
+    @NamedQuery(name="CandidateSession.getPurgeChunkForLtiDomain",
+            query="SELECT x"
+                + "  FROM CandidateSession x"
+                + "  JOIN FETCH x.delivery d"
+                + "  LEFT JOIN FETCH d.assessment"
+                + "  JOIN FETCH x.candidate c"
+                + "  WHERE c IN ("
+                + "      SELECT u FROM LtiUser u"
+                + "      WHERE u.ltiDomain = :ltiDomain"
+                + "    )"
+                + "    AND x.xid > :afterXid"
+                + "  ORDER BY x.xid"),
+    /* NB: This one needs to be called after all of the other *.deleteForSessionXids queries */
+    @NamedQuery(name="CandidateSession.deleteForXids",
+            query="DELETE FROM CandidateSession x"
+                + "  WHERE x.xid IN (:xids)"),
 })
 public class CandidateSession implements BaseEntity, TimestampedOnCreation {
 
@@ -214,6 +279,17 @@ public class CandidateSession implements BaseEntity, TimestampedOnCreation {
     @Column(name="exploded")
     private boolean exploded;
 
+    /**
+     * ID of the most recent {@link CandidateEvent} recorded for this session, kept here so
+     * that the current state of the session can be looked up by primary key.
+     * <p>
+     * This is deliberately a plain column rather than an association, so that events can
+     * still be deleted before their sessions. It will be null if no events have been recorded.
+     */
+    @Basic(optional=true)
+    @Column(name="latest_xeid")
+    private Long latestXeid;
+
     /**
      * If this session was started by an LTI launch supporting the return of outcomes, then
      * this will be the URL of the outcome service endpoint to call, specified by the
@@ -365,6 +441,15 @@ public class CandidateSession implements BaseEntity, TimestampedOnCreation {
     }
 
 
+    public Long getLatestXeid() {
+        return latestXeid;
+    }
+
+    public void setLatestXeid(final Long latestXeid) {
+        this.latestXeid = latestXeid;
+    }
+
+
     public String getLisOutcomeServiceUrl() {
         return lisOutcomeServiceUrl;
     }
@@ -411,6 +496,7 @@ public class CandidateSession implements BaseEntity, TimestampedOnCreation {
                 + ",finishTime=" + finishTime
                 + ",terminationTime=" + terminationTime
                 + ",exploded=" + exploded
+                + ",latestXeid=" + latestXeid
                 + ",lisOutcomeServiceUrl=" + lisOutcomeServiceUrl
                 + ",lisResultSourcedid=" + lisResultSourcedid
                 + ",lisScore=" + lisScore
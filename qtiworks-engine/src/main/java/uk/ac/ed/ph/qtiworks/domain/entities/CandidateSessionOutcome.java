@@ -43,6 +43,7 @@ import javax.persistence.EnumType;
 import javax.persistence.Enumerated;
 import javax.persistence.GeneratedValue;
 import javax.persistence.Id;
+import javax.persistence.Index;
 import javax.persistence.JoinColumn;
 import javax.persistence.Lob;
 import javax.persistence.ManyToOne;
@@ -64,7 +65,9 @@ import org.hibernate.annotations.Type;
  * @author David McKain
  */
 @Entity
-@Table(name="candidate_session_outcomes")
+@Table(name="candidate_session_outcomes",
+    indexes={@Index(name="candidate_session_outcome_sessions", columnList="xid,xoid")}
+)
 @SequenceGenerator(name="candidateSessionOutcomeSequence", sequenceName="candidate_session_outcome_sequence", initialValue=1, allocationSize=10)
 @NamedQueries({
     @NamedQuery(name="CandidateSessionOutcome.getForSession",
@@ -86,6 +89,12 @@ import org.hibernate.annotations.Type;
                 + "    SELECT x FROM CandidateSession x"
                 + "    WHERE x.delivery = :delivery"
                 + "  )"),
+    @NamedQuery(name="CandidateSessionOutcome.deleteForSessionXids",
+            query="DELETE FROM CandidateSessionOutcome xo"
+                + "  WHERE xo.candidateSession IN ("
+                + "    SELECT x FROM CandidateSession x"
+                + "    WHERE x.xid IN (:xids)"
+                + "  )"),
 })
 public class CandidateSessionOutcome implements BaseEntity {
 
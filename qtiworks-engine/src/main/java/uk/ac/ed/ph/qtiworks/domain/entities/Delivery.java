@@ -105,6 +105,11 @@ import org.hibernate.annotations.Type;
             query="SELECT COUNT(*)"
                 + "  FROM Delivery d"
                 + "  WHERE d.deliverySettings = :deliverySettings"),
+    @NamedQuery(name="Delivery.getOpen",
+            query="SELECT d"
+                + "  FROM Delivery d"
+                + "  WHERE d.open = TRUE"
+                + "  ORDER BY d.id"),
     @NamedQuery(name="Delivery.getForTypeCreatedBefore",
             query="SELECT d"
                 + "  FROM Delivery d"
@@ -36,6 +36,7 @@ package uk.ac.ed.ph.qtiworks.domain.entities;
 import uk.ac.ed.ph.jqtiplus.JqtiPlus;
 import uk.ac.ed.ph.jqtiplus.internal.util.ObjectUtilities;
 import uk.ac.ed.ph.jqtiplus.node.AssessmentObjectType;
+import uk.ac.ed.ph.jqtiplus.notification.NotificationLevel;
 import uk.ac.ed.ph.jqtiplus.node.item.AssessmentItem;
 import uk.ac.ed.ph.jqtiplus.node.test.AssessmentTest;
 
@@ -175,6 +176,18 @@ public class DeliverySettings implements BaseEntity, TimestampedOnCreation {
     @Column(name="template_processing_limit")
     private Integer templateProcessingLimit;
 
+    /**
+     * If specified, only runtime notifications at or above this level will be recorded
+     * for candidate events. (E.g. setting this to {@link NotificationLevel#WARNING} keeps
+     * INFO notifications out of the database.)
+     * <p>
+     * If null then all notifications are recorded.
+     */
+    @Basic(optional=true)
+    @Column(name="notification_level", length=16)
+    @Enumerated(EnumType.STRING)
+    private NotificationLevel notificationLevel;
+
     //------------------------------------------------------------
 
     public DeliverySettings() {
@@ -265,6 +278,15 @@ public class DeliverySettings implements BaseEntity, TimestampedOnCreation {
         this.templateProcessingLimit = templateProcessingLimit;
     }
 
+
+    public NotificationLevel getNotificationLevel() {
+        return notificationLevel;
+    }
+
+    public void setNotificationLevel(final NotificationLevel notificationLevel) {
+        this.notificationLevel = notificationLevel;
+    }
+
     //------------------------------------------------------------
 
     @Override
@@ -275,6 +297,7 @@ public class DeliverySettings implements BaseEntity, TimestampedOnCreation {
                 + ",assessmentType=" + assessmentType
                 + ",title=" + title
                 + ",templateProcessingLimit=" + templateProcessingLimit
+                + ",notificationLevel=" + notificationLevel
                 + ")";
     }
 }
@@ -112,6 +112,17 @@ public class ItemDeliverySettings extends DeliverySettings implements BaseEntity
     @Column(name="allow_candidate_comment")
     private boolean allowCandidateComment;
 
+    /**
+     * Allow new sessions to use pre-computed template instances, when template instance
+     * pooling has been enabled for this QTIWorks instance. Set this to false to have each
+     * session run template processing itself.
+     * <p>
+     * If null then pooling is allowed.
+     */
+    @Basic(optional=true)
+    @Column(name="allow_template_pooling")
+    private Boolean allowTemplatePooling;
+
     //------------------------------------------------------------
 
     public ItemDeliverySettings() {
@@ -208,4 +219,13 @@ public class ItemDeliverySettings extends DeliverySettings implements BaseEntity
     public void setAllowCandidateComment(final boolean allowCandidateComment) {
         this.allowCandidateComment = allowCandidateComment;
     }
+
+
+    public Boolean getAllowTemplatePooling() {
+        return allowTemplatePooling;
+    }
+
+    public void setAllowTemplatePooling(final Boolean allowTemplatePooling) {
+        this.allowTemplatePooling = allowTemplatePooling;
+    }
 }
@@ -92,7 +92,12 @@ import org.hibernate.annotations.Type;
             query="DELETE"
                 + "  FROM LtiUser u"
                 + "  WHERE u.userRole = 'CANDIDATE'"
-                + "    AND u.candidateSessions IS EMPTY")
+                + "    AND u.candidateSessions IS EMPTY"),
+    /* NB: This must only be called once all data owned by these users has been deleted */
+    @NamedQuery(name="LtiUser.deleteForLtiDomain",
+            query="DELETE"
+                + "  FROM LtiUser u"
+                + "  WHERE u.ltiDomain = :ltiDomain")
 })
 public class LtiUser extends User implements BaseEntity, Comparable<LtiUser> {
 
@@ -86,6 +86,12 @@ import javax.persistence.TemporalType;
                 + "    SELECT x FROM CandidateSession x"
                 + "    WHERE x.delivery = :delivery"
                 + "  )"),
+    @NamedQuery(name="QueuedLtiOutcome.deleteForSessionXids",
+            query="DELETE FROM QueuedLtiOutcome q"
+                + "  WHERE q.candidateSession IN ("
+                + "    SELECT x FROM CandidateSession x"
+                + "    WHERE x.xid IN (:xids)"
+                + "  )"),
 })
 public class QueuedLtiOutcome implements BaseEntity, TimestampedOnCreation {
 
@@ -61,6 +61,14 @@ public abstract class AbstractRenderingRequest<P extends AbstractRenderingOption
     @NotNull
     private URI assessmentResourceUri;
 
+    /**
+     * Optional key identifying the (unchanging) set of resources accessed by the
+     * {@link #assessmentResourceLocator}, such as the ID of an assessment package. If set,
+     * the {@link AssessmentRenderer} may use its {@link AssessmentSourceCache} to avoid
+     * re-parsing these resources.
+     */
+    private String assessmentSourceCacheKey;
+
     private boolean authorMode;
 
     /* Validation information copied from AssessmentPackage */
@@ -99,6 +107,15 @@ public abstract class AbstractRenderingRequest<P extends AbstractRenderingOption
     }
 
 
+    public String getAssessmentSourceCacheKey() {
+        return assessmentSourceCacheKey;
+    }
+
+    public void setAssessmentSourceCacheKey(final String assessmentSourceCacheKey) {
+        this.assessmentSourceCacheKey = assessmentSourceCacheKey;
+    }
+
+
     public boolean isValidated() {
         return validated;
     }
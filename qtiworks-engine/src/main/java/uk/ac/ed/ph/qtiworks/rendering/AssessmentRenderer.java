@@ -35,6 +35,8 @@ package uk.ac.ed.ph.qtiworks.rendering;
 
 import uk.ac.ed.ph.qtiworks.config.beans.QtiWorksProperties;
 import uk.ac.ed.ph.qtiworks.domain.entities.CandidateEventNotification;
+import uk.ac.ed.ph.qtiworks.services.metrics.MetricsRegistry;
+import uk.ac.ed.ph.qtiworks.services.metrics.Timer;
 import uk.ac.ed.ph.qtiworks.utils.XmlUtilities;
 
 import uk.ac.ed.ph.jqtiplus.internal.util.Assert;
@@ -69,7 +71,9 @@ import javax.annotation.PostConstruct;
 import javax.annotation.Resource;
 import javax.xml.transform.OutputKeys;
 import javax.xml.transform.Result;
+import javax.xml.transform.Source;
 import javax.xml.transform.Transformer;
+import javax.xml.transform.TransformerFactory;
 import javax.xml.transform.sax.SAXResult;
 import javax.xml.transform.sax.TransformerHandler;
 import javax.xml.transform.stream.StreamResult;
@@ -96,6 +100,8 @@ import org.xml.sax.XMLReader;
  * <ul>
  *   <li>An instance of this class is safe to use concurrently by multiple threads.</li>
  *   <li>If using outside QTIWorks engine, remember to set the necessary properties then call {@link #init()}</li>
+ *   <li>Setting an {@link AssessmentSourceCache} is optional, but avoids re-parsing assessment XML
+ *     for requests that specify an {@link AbstractRenderingRequest#getAssessmentSourceCacheKey()}</li>
  * </ul>
  *
  * @author David McKain
@@ -124,15 +130,27 @@ public class AssessmentRenderer {
     @Resource
     private XsltStylesheetCache xsltStylesheetCache;
 
+    @Resource
+    private AssessmentSourceCache assessmentSourceCache;
+
     @Resource
     private Validator jsr303Validator;
 
     @Resource
     private String webappContextPath;
 
+    @Resource
+    private MetricsRegistry metricsRegistry;
+
     /** Manager for the XSLT stylesheets, created during init. */
     private XsltStylesheetManager stylesheetManager;
 
+    /** Times preparation of the rendering pipeline, created during init. */
+    private Timer prepareTimer;
+
+    /** Times running the rendering pipeline, created during init. */
+    private Timer transformTimer;
+
     //----------------------------------------------------
 
     public QtiWorksProperties getQtiWorksProperties() {
@@ -153,6 +171,19 @@ public class AssessmentRenderer {
     }
 
 
+    public AssessmentSourceCache getAssessmentSourceCache() {
+        return assessmentSourceCache;
+    }
+
+    /**
+     * Sets the (optional) {@link AssessmentSourceCache} to use. This must be done before
+     * calling {@link #init()}.
+     */
+    public void setAssessmentSourceCache(final AssessmentSourceCache assessmentSourceCache) {
+        this.assessmentSourceCache = assessmentSourceCache;
+    }
+
+
     public Validator getJsr303Validator() {
         return jsr303Validator;
     }
@@ -170,11 +201,31 @@ public class AssessmentRenderer {
         this.webappContextPath = webappContextPath;
     }
 
+
+    public MetricsRegistry getMetricsRegistry() {
+        return metricsRegistry;
+    }
+
+    /**
+     * Sets the (optional) {@link MetricsRegistry} used to record rendering timings. This must
+     * be done before calling {@link #init()}.
+     */
+    public void setMetricsRegistry(final MetricsRegistry metricsRegistry) {
+        this.metricsRegistry = metricsRegistry;
+    }
+
     //----------------------------------------------------
 
     @PostConstruct
     public void init() {
-        this.stylesheetManager = new XsltStylesheetManager(new ClassPathResourceLocator(), xsltStylesheetCache);
+        /* (If we're caching source trees, then our stylesheets must be compiled by the cache's TransformerFactory) */
+        final TransformerFactory transformerFactory = assessmentSourceCache!=null && assessmentSourceCache.isEnabled()
+                ? assessmentSourceCache.getTransformerFactory() : null;
+        this.stylesheetManager = new XsltStylesheetManager(new ClassPathResourceLocator(), xsltStylesheetCache, transformerFactory);
+
+        /* (Timings are simply discarded if there's no registry) */
+        this.prepareTimer = metricsRegistry!=null ? metricsRegistry.timer("rendering.prepare") : new Timer();
+        this.transformTimer = metricsRegistry!=null ? metricsRegistry.timer("rendering.transform") : new Timer();
     }
 
     //----------------------------------------------------
@@ -621,7 +672,9 @@ public class AssessmentRenderer {
          * be passed through the pipeline. If that becomes important, change the code below to
          * support that.
          */
-         /* First obtain the required compiled stylesheets. */
+        final long prepareStartTime = prepareTimer.start();
+
+        /* First obtain the required compiled stylesheets. */
         final TransformerHandler rendererTransformerHandler = stylesheetManager.getCompiledStylesheetHandler(rendererStylesheetUri, renderingRequest.getAssessmentResourceLocator());
         final TransformerHandler mathmlTransformerHandler = stylesheetManager.getCompiledStylesheetHandler(ctopXsltUri, null);
         final TransformerHandler serializerTransformerHandler = stylesheetManager.getCompiledStylesheetHandler(serializeXsltUri, null);
@@ -676,10 +729,24 @@ public class AssessmentRenderer {
             }
         }
 
-        /* Set up the XML source */
+        /* Set up the XML source. We use a cached source tree if possible, falling back to parsing
+         * the XML afresh. */
+        final ResourceLocator assessmentResourceLocator = renderingRequest.getAssessmentResourceLocator();
+        final String assessmentSourceCacheKey = renderingRequest.getAssessmentSourceCacheKey();
+        Source assessmentSourceTree = null;
+        if (assessmentSourceCacheKey!=null && assessmentSourceCache!=null && assessmentSourceCache.isCompatible(rendererTransformer)) {
+            /* Also serve document() calls (e.g. for the test XML when rendering test items) from the cache */
+            rendererTransformer.setURIResolver(assessmentSourceCache.createUriResolver(assessmentSourceCacheKey,
+                    assessmentResourceLocator, rendererTransformer.getURIResolver()));
+            if (inputUri!=null) {
+                assessmentSourceTree = assessmentSourceCache.getSourceTree(assessmentSourceCacheKey, inputUri, assessmentResourceLocator);
+            }
+        }
         final InputSource assessmentSaxSource;
-        if (inputUri!=null) {
-            final ResourceLocator assessmentResourceLocator = renderingRequest.getAssessmentResourceLocator();
+        if (assessmentSourceTree!=null) {
+            assessmentSaxSource = null;
+        }
+        else if (inputUri!=null) {
             final InputStream assessmentStream = assessmentResourceLocator.findResource(inputUri);
             assessmentSaxSource = new InputSource(assessmentStream);
             assessmentSaxSource.setSystemId(inputUri.toString());
@@ -689,7 +756,6 @@ public class AssessmentRenderer {
             assessmentSaxSource = new InputSource(new StringReader("<null/>"));
         }
 
-
         /* Now join the pipeline together (it's clearest to work backwards here)
          *
          * NB: I'm not bothering to set up LexicalHandlers, so comments and things like that won't
@@ -701,16 +767,26 @@ public class AssessmentRenderer {
         mathmlTransformerHandler.setResult(mathmlResult);
         final SAXResult rendererResult = new SAXResult(mathmlTransformerHandler);
         rendererTransformerHandler.setResult(rendererResult);
-        final XMLReader xmlReader = XmlUtilities.createNsAwareSaxReader(false);
-        xmlReader.setContentHandler(rendererTransformerHandler);
+        prepareTimer.stop(prepareStartTime);
 
         /* Finally we run the pipeline */
+        final long transformStartTime = transformTimer.start();
         try {
-            xmlReader.parse(assessmentSaxSource);
+            if (assessmentSourceTree!=null) {
+                rendererTransformer.transform(assessmentSourceTree, rendererResult);
+            }
+            else {
+                final XMLReader xmlReader = XmlUtilities.createNsAwareSaxReader(false);
+                xmlReader.setContentHandler(rendererTransformerHandler);
+                xmlReader.parse(assessmentSaxSource);
+            }
         }
         catch (final Exception e) {
             logger.error("Rendering XSLT pipeline failed for request {}", renderingRequest, e);
             throw new QtiWorksRenderingException("Unexpected Exception running rendering XML pipeline", e);
         }
+        finally {
+            transformTimer.stop(transformStartTime);
+        }
     }
 }
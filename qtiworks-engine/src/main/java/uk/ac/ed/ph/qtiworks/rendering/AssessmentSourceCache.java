@@ -0,0 +1,289 @@
+/* Copyright (c) 2012-2013, University of Edinburgh.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice, this
+ *   list of conditions and the following disclaimer in the documentation and/or
+ *   other materials provided with the distribution.
+ *
+ * * Neither the name of the University of Edinburgh nor the names of its
+ *   contributors may be used to endorse or promote products derived from this
+ *   software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ *
+ * This software is derived from (and contains code from) QTItools and MathAssessEngine.
+ * QTItools is (c) 2008, University of Southampton.
+ * MathAssessEngine is (c) 2010, University of Edinburgh.
+ */
+package uk.ac.ed.ph.qtiworks.rendering;
+
+import uk.ac.ed.ph.qtiworks.services.ServiceUtilities;
+import uk.ac.ed.ph.qtiworks.utils.LruHashMap;
+import uk.ac.ed.ph.qtiworks.utils.XmlUtilities;
+
+import uk.ac.ed.ph.jqtiplus.internal.util.Assert;
+import uk.ac.ed.ph.jqtiplus.xmlutils.locators.ResourceLocator;
+
+import java.io.InputStream;
+import java.net.URI;
+import java.net.URISyntaxException;
+
+import javax.xml.transform.Source;
+import javax.xml.transform.Transformer;
+import javax.xml.transform.TransformerException;
+import javax.xml.transform.TransformerFactory;
+import javax.xml.transform.URIResolver;
+import javax.xml.transform.sax.SAXSource;
+
+import net.sf.saxon.Configuration;
+import net.sf.saxon.Controller;
+import net.sf.saxon.TransformerFactoryImpl;
+import net.sf.saxon.om.DocumentInfo;
+import net.sf.saxon.trans.XPathException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXNotRecognizedException;
+import org.xml.sax.SAXNotSupportedException;
+import org.xml.sax.XMLReader;
+import org.xml.sax.helpers.XMLFilterImpl;
+
+/**
+ * Read-only, size-bounded cache of pre-built (Saxon) source trees for assessment XML resources,
+ * used by the {@link AssessmentRenderer} so that items and tests are not re-parsed on each
+ * rendering.
+ * <p>
+ * Entries are keyed on a caller-supplied namespace (e.g. the ID of an assessment package) plus
+ * the URI of the resource within it. The cache therefore assumes that the resources in each
+ * namespace never change once they have been cached, which is true of imported packages.
+ * <p>
+ * Saxon only accepts trees built using the same configuration as the stylesheet being run,
+ * so stylesheets using this cache must be compiled using {@link #getTransformerFactory()}.
+ *
+ * <h2>Usage</h2>
+ * <ul>
+ *   <li>An instance of this class is safe to use concurrently by multiple threads.</li>
+ *   <li>Setting a maximum size of zero (or less) disables caching altogether.</li>
+ * </ul>
+ *
+ * @author David McKain
+ */
+public final class AssessmentSourceCache {
+
+    private static final Logger logger = LoggerFactory.getLogger(AssessmentSourceCache.class);
+
+    private static final String LEXICAL_HANDLER_PROPERTY = "http://xml.org/sax/properties/lexical-handler";
+
+    private final int maxSize;
+    private final TransformerFactoryImpl transformerFactory;
+    private final Configuration configuration;
+    private final LruHashMap<String, DocumentInfo> sourceTreeMap;
+    private long hitCount;
+    private long missCount;
+
+    public AssessmentSourceCache(final int maxSize) {
+        this.maxSize = maxSize;
+        this.transformerFactory = new TransformerFactoryImpl();
+        this.configuration = transformerFactory.getConfiguration();
+        this.sourceTreeMap = new LruHashMap<String, DocumentInfo>();
+        sourceTreeMap.setMaxSize(maxSize);
+    }
+
+    //----------------------------------------------------
+
+    public boolean isEnabled() {
+        return maxSize > 0;
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    /**
+     * Returns the {@link TransformerFactory} that must be used to compile any stylesheets
+     * that are run against trees obtained from this cache.
+     */
+    public TransformerFactory getTransformerFactory() {
+        return transformerFactory;
+    }
+
+    /**
+     * Returns whether trees obtained from this cache can be passed to the given {@link Transformer}.
+     */
+    public boolean isCompatible(final Transformer transformer) {
+        return isEnabled()
+                && transformer instanceof Controller
+                && ((Controller) transformer).getConfiguration().isCompatible(configuration);
+    }
+
+    public synchronized int size() {
+        return sourceTreeMap.size();
+    }
+
+    public synchronized long getHitCount() {
+        return hitCount;
+    }
+
+    public synchronized long getMissCount() {
+        return missCount;
+    }
+
+    public synchronized void clear() {
+        sourceTreeMap.clear();
+    }
+
+    //----------------------------------------------------
+
+    /**
+     * Obtains the source tree for the XML resource at the given systemId, loaded using the given
+     * {@link ResourceLocator} and cached under the given namespace.
+     *
+     * @param namespace namespace for the resource, which must not be null
+     * @param systemId URI of the resource, which must not be null
+     * @param resourceLocator {@link ResourceLocator} used to load the resource if required,
+     *   which must not be null
+     *
+     * @return resulting source tree, or null if this cache is disabled or if the resource
+     *   could not be found.
+     *
+     * @throws QtiWorksRenderingException if the resource was found but could not be parsed
+     */
+    public Source getSourceTree(final String namespace, final URI systemId, final ResourceLocator resourceLocator) {
+        Assert.notNull(namespace, "namespace");
+        Assert.notNull(systemId, "systemId");
+        Assert.notNull(resourceLocator, "resourceLocator");
+        if (!isEnabled()) {
+            return null;
+        }
+        final String cacheKey = namespace + " " + systemId;
+        synchronized (this) {
+            final DocumentInfo cached = sourceTreeMap.get(cacheKey);
+            if (cached!=null) {
+                hitCount++;
+                return cached;
+            }
+            missCount++;
+        }
+
+        /* Build tree outside the lock. (Concurrent misses on the same resource will build
+         * identical trees, which is harmless.) */
+        final InputStream inputStream = resourceLocator.findResource(systemId);
+        if (inputStream==null) {
+            return null;
+        }
+        final DocumentInfo sourceTree;
+        try {
+            final InputSource inputSource = new InputSource(inputStream);
+            inputSource.setSystemId(systemId.toString());
+            sourceTree = configuration.buildDocument(new SAXSource(new NonLexicalXmlFilter(XmlUtilities.createNsAwareSaxReader(false)), inputSource));
+        }
+        catch (final XPathException e) {
+            throw new QtiWorksRenderingException("Could not build source tree for " + systemId, e);
+        }
+        finally {
+            ServiceUtilities.ensureClose(inputStream);
+        }
+        logger.debug("Built source tree for {} in namespace {}", systemId, namespace);
+
+        synchronized (this) {
+            sourceTreeMap.put(cacheKey, sourceTree);
+        }
+        return sourceTree;
+    }
+
+    /**
+     * Creates a {@link URIResolver} that serves resources found by the given {@link ResourceLocator}
+     * from this cache (e.g. for the XSLT <code>document()</code> function), delegating to the given
+     * {@link URIResolver} for anything else.
+     */
+    public URIResolver createUriResolver(final String namespace, final ResourceLocator resourceLocator,
+            final URIResolver delegate) {
+        Assert.notNull(namespace, "namespace");
+        Assert.notNull(resourceLocator, "resourceLocator");
+        return new CachingUriResolver(namespace, resourceLocator, delegate);
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + "@" + Integer.toHexString(System.identityHashCode(this))
+                + "(maxSize=" + maxSize
+                + ",size=" + size()
+                + ",hitCount=" + getHitCount()
+                + ",missCount=" + getMissCount()
+                + ")";
+    }
+
+    //----------------------------------------------------
+
+    private final class CachingUriResolver implements URIResolver {
+
+        private final String namespace;
+        private final ResourceLocator resourceLocator;
+        private final URIResolver delegate;
+
+        public CachingUriResolver(final String namespace, final ResourceLocator resourceLocator, final URIResolver delegate) {
+            this.namespace = namespace;
+            this.resourceLocator = resourceLocator;
+            this.delegate = delegate;
+        }
+
+        @Override
+        public Source resolve(final String href, final String base) throws TransformerException {
+            /* (The special document('') case is left to the delegate) */
+            if (href.length()>0 && base!=null) {
+                URI resolvedUri = null;
+                try {
+                    resolvedUri = new URI(base).resolve(href);
+                }
+                catch (final URISyntaxException e) {
+                    logger.trace("base URI {} is not a valid URI - passing to delegate", base);
+                }
+                if (resolvedUri!=null) {
+                    final Source result = getSourceTree(namespace, resolvedUri, resourceLocator);
+                    if (result!=null) {
+                        return result;
+                    }
+                }
+            }
+            return delegate!=null ? delegate.resolve(href, base) : null;
+        }
+    }
+
+    /**
+     * Refuses to register a LexicalHandler, so that comments are omitted from the cached trees.
+     * (This keeps the trees consistent with the SAX pipeline used by the {@link AssessmentRenderer}
+     * when not using this cache.)
+     */
+    private static final class NonLexicalXmlFilter extends XMLFilterImpl {
+
+        public NonLexicalXmlFilter(final XMLReader parent) {
+            super(parent);
+        }
+
+        @Override
+        public void setProperty(final String name, final Object value)
+                throws SAXNotRecognizedException, SAXNotSupportedException {
+            if (LEXICAL_HANDLER_PROPERTY.equals(name)) {
+                throw new SAXNotSupportedException(name);
+            }
+            super.setProperty(name, value);
+        }
+    }
+}
@@ -64,6 +64,7 @@ import uk.ac.ed.ph.jqtiplus.node.AssessmentObjectType;
 import uk.ac.ed.ph.jqtiplus.node.item.AssessmentItem;
 import uk.ac.ed.ph.jqtiplus.node.outcome.declaration.OutcomeDeclaration;
 import uk.ac.ed.ph.jqtiplus.node.test.AssessmentTest;
+import uk.ac.ed.ph.jqtiplus.notification.NotificationLevel;
 import uk.ac.ed.ph.jqtiplus.resolution.ResolvedAssessmentItem;
 import uk.ac.ed.ph.jqtiplus.resolution.ResolvedAssessmentTest;
 import uk.ac.ed.ph.jqtiplus.validation.AssessmentObjectValidationResult;
@@ -299,14 +300,17 @@ public class AssessmentDataService {
         template.setAllowSoftResetWhenOpen(true);
         template.setAllowSolutionWhenEnded(true);
         template.setAllowSolutionWhenOpen(true);
+        template.setAllowTemplatePooling(true);
         template.setMaxAttempts(0);
         template.setPrompt(null);
+        template.setNotificationLevel(NotificationLevel.INFO);
         return template;
     }
 
     public TestDeliverySettingsTemplate createTestDeliverySettingsTemplate() {
         final TestDeliverySettingsTemplate template = new TestDeliverySettingsTemplate();
         template.setTitle("Test Delivery Settings");
+        template.setNotificationLevel(NotificationLevel.INFO);
         return template;
     }
 
@@ -346,6 +350,7 @@ public class AssessmentDataService {
     public void mergeItemDeliverySettings(final ItemDeliverySettingsTemplate template, final ItemDeliverySettings target) {
         target.setTitle(template.getTitle().trim());
         target.setTemplateProcessingLimit(template.getTemplateProcessingLimit());
+        target.setNotificationLevel(template.getNotificationLevel());
         target.setAllowEnd(template.isAllowEnd());
         target.setAllowHardResetWhenEnded(template.isAllowHardResetWhenEnded());
         target.setAllowHardResetWhenOpen(template.isAllowHardResetWhenOpen());
@@ -354,6 +359,7 @@ public class AssessmentDataService {
         target.setAllowSolutionWhenEnded(template.isAllowSolutionWhenEnded());
         target.setAllowSolutionWhenOpen(template.isAllowSolutionWhenOpen());
         target.setAllowCandidateComment(template.isAllowCandidateComment());
+        target.setAllowTemplatePooling(Boolean.valueOf(template.isAllowTemplatePooling()));
         target.setMaxAttempts(template.getMaxAttempts());
         target.setPrompt(StringUtilities.nullIfEmpty(template.getPrompt()));
     }
@@ -361,6 +367,7 @@ public class AssessmentDataService {
     public void mergeItemDeliverySettings(final ItemDeliverySettings template, final ItemDeliverySettingsTemplate target) {
         target.setTitle(template.getTitle());
         target.setTemplateProcessingLimit(template.getTemplateProcessingLimit());
+        target.setNotificationLevel(getEffectiveNotificationLevel(template));
         target.setAllowEnd(template.isAllowEnd());
         target.setAllowHardResetWhenEnded(template.isAllowHardResetWhenEnded());
         target.setAllowHardResetWhenOpen(template.isAllowHardResetWhenOpen());
@@ -369,20 +376,32 @@ public class AssessmentDataService {
         target.setAllowSolutionWhenEnded(template.isAllowSolutionWhenEnded());
         target.setAllowSolutionWhenOpen(template.isAllowSolutionWhenOpen());
         target.setAllowCandidateComment(template.isAllowCandidateComment());
+        target.setAllowTemplatePooling(!Boolean.FALSE.equals(template.getAllowTemplatePooling())); /* (Unset means allowed) */
         target.setMaxAttempts(template.getMaxAttempts());
         target.setPrompt(StringUtilities.nullIfEmpty(template.getPrompt()));
     }
 
     public void mergeTestDeliverySettings(final TestDeliverySettingsTemplate template, final TestDeliverySettings target) {
         target.setTemplateProcessingLimit(template.getTemplateProcessingLimit());
+        target.setNotificationLevel(template.getNotificationLevel());
         target.setTitle(template.getTitle().trim());
     }
 
     public void mergeTestDeliverySettings(final TestDeliverySettings template, final TestDeliverySettingsTemplate target) {
         target.setTemplateProcessingLimit(template.getTemplateProcessingLimit());
+        target.setNotificationLevel(getEffectiveNotificationLevel(template));
         target.setTitle(template.getTitle());
     }
 
+    /**
+     * Settings saved before the notification level was added have a null level, which
+     * records every notification. This is shown in templates as {@link NotificationLevel#INFO}.
+     */
+    private NotificationLevel getEffectiveNotificationLevel(final DeliverySettings deliverySettings) {
+        final NotificationLevel notificationLevel = deliverySettings.getNotificationLevel();
+        return notificationLevel!=null ? notificationLevel : NotificationLevel.INFO;
+    }
+
     public DeliverySettings getEffectiveDeliverySettings(final User candidate, final Delivery delivery) {
         Assert.notNull(candidate, "candidate");
         Assert.notNull(delivery, "delivery");
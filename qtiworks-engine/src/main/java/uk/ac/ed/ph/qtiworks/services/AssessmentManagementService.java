@@ -60,6 +60,7 @@ import uk.ac.ed.ph.qtiworks.services.domain.AssessmentPackageDataImportException
 import uk.ac.ed.ph.qtiworks.services.domain.DeliveryTemplate;
 import uk.ac.ed.ph.qtiworks.services.domain.IllegalManagementOperationException;
 import uk.ac.ed.ph.qtiworks.services.domain.IllegalManagementOperationException.OperationFailureReason;
+import uk.ac.ed.ph.qtiworks.services.domain.ImportedAssessmentPackage;
 import uk.ac.ed.ph.qtiworks.services.domain.ItemDeliverySettingsTemplate;
 import uk.ac.ed.ph.qtiworks.services.domain.Privilege;
 import uk.ac.ed.ph.qtiworks.services.domain.PrivilegeException;
@@ -121,6 +122,9 @@ public class AssessmentManagementService {
     @Resource
     private AssessmentPackageFileService assessmentPackageFileService;
 
+    @Resource
+    private AssessmentObjectManagementService assessmentObjectManagementService;
+
     @Resource
     private AssessmentDao assessmentDao;
 
@@ -203,7 +207,8 @@ public class AssessmentManagementService {
         final User caller = assertCallerMayCreateAssessment();
 
         /* First, upload the data into a sandbox */
-        final AssessmentPackage assessmentPackage = importPackageFiles(multipartFile, validate);
+        final ImportedAssessmentPackage importedAssessmentPackage = importPackageFiles(multipartFile, validate);
+        final AssessmentPackage assessmentPackage = importedAssessmentPackage.getAssessmentPackage();
         final Assessment assessment;
         try {
             /* Persist new AssessmentPackage (before linking to Assessment) */
@@ -236,6 +241,12 @@ public class AssessmentManagementService {
             throw new QtiWorksRuntimeException("Failed to persist Assessment/AssessmentPackage {}", e);
         }
 
+        /* Reuse the QTI we've just read in (if applicable) for when the assessment is first launched */
+        if (importedAssessmentPackage.getResolvedAssessmentObject()!=null) {
+            assessmentObjectManagementService.cacheResolvedAssessmentObject(assessmentPackage,
+                    importedAssessmentPackage.getResolvedAssessmentObject());
+        }
+
         logger.debug("Created new Assessment #{} with package #{}", assessment.getId(), assessmentPackage.getId());
         auditLogger.recordEvent("Created Assessment #" + assessment.getId() + " and AssessmentPackage #" + assessmentPackage.getId());
         return assessment;
@@ -356,10 +367,12 @@ public class AssessmentManagementService {
         final AssessmentPackage oldPackage = assessment.getSelectedAssessmentPackage();
 
         /* Upload data into a new sandbox */
-        final AssessmentPackage newAssessmentPackage = importPackageFiles(multipartFile, validate);
+        final ImportedAssessmentPackage importedAssessmentPackage = importPackageFiles(multipartFile, validate);
+        final AssessmentPackage newAssessmentPackage = importedAssessmentPackage.getAssessmentPackage();
 
         /* Make sure we haven't gone item->test or test->item */
         if (newAssessmentPackage.getAssessmentType()!=assessment.getAssessmentType()) {
+            deleteAssessmentPackageSandbox(newAssessmentPackage);
             throw new IllegalManagementOperationException(OperationFailureReason.CANNOT_CHANGE_ASSESSMENT_TYPE,
                     assessment, newAssessmentPackage.getAssessmentType());
         }
@@ -392,6 +405,12 @@ public class AssessmentManagementService {
             dataDeletionService.deleteAssessmentPackage(oldPackage);
         }
 
+        /* Reuse the QTI we've just read in (if applicable) for when the assessment is next launched */
+        if (importedAssessmentPackage.getResolvedAssessmentObject()!=null) {
+            assessmentObjectManagementService.cacheResolvedAssessmentObject(newAssessmentPackage,
+                    importedAssessmentPackage.getResolvedAssessmentObject());
+        }
+
         logger.debug("Updated Assessment #{} to have package #{}, terminating {} CandidateSession(s)",
                 new Object[] { assessment.getId(), newAssessmentPackage.getId(), terminatedSessions });
         auditLogger.recordEvent("Updated Assessment #" + assessment.getId()
@@ -933,12 +952,32 @@ public class AssessmentManagementService {
         }
     }
 
+    /**
+     * Tidies up the sandbox of a newly imported {@link AssessmentPackage} that could not be
+     * saved. Content-addressed sandboxes may be shared with other packages, so are only
+     * deleted if nothing else is using them.
+     */
     private void deleteAssessmentPackageSandbox(final AssessmentPackage assessmentPackage) {
-        filespaceManager.deleteAssessmentPackageSandbox(assessmentPackage);
+        final String contentDigest = assessmentPackage.getContentDigest();
+        if (contentDigest!=null) {
+            try {
+                /* (The import has already locked this data for the rest of our transaction) */
+                filespaceManager.lockContentDigest(contentDigest);
+                if (!assessmentPackageDao.isContentDigestUsedElsewhere(assessmentPackage)) {
+                    filespaceManager.deleteAssessmentPackageBlob(contentDigest);
+                }
+            }
+            catch (final RuntimeException e) {
+                logger.warn("Could not check whether shared sandbox for digest {} is still used, so leaving it", contentDigest, e);
+            }
+        }
+        else {
+            filespaceManager.deleteAssessmentPackageSandbox(assessmentPackage);
+        }
         assessmentPackage.setSandboxPath(null);
     }
 
-    private AssessmentPackage importPackageFiles(final MultipartFile multipartFile, final boolean validate)
+    private ImportedAssessmentPackage importPackageFiles(final MultipartFile multipartFile, final boolean validate)
             throws AssessmentPackageDataImportException {
         final User owner = identityService.assertCurrentThreadUser();
         return assessmentPackageFileService.importAssessmentPackage(owner, multipartFile, validate);
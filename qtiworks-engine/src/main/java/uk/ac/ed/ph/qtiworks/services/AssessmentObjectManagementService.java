@@ -33,31 +33,57 @@
  */
 package uk.ac.ed.ph.qtiworks.services;
 
+import uk.ac.ed.ph.qtiworks.QtiWorksLogicException;
+import uk.ac.ed.ph.qtiworks.config.beans.QtiWorksDeploymentSettings;
 import uk.ac.ed.ph.qtiworks.domain.entities.AssessmentPackage;
+import uk.ac.ed.ph.qtiworks.domain.entities.Delivery;
+import uk.ac.ed.ph.qtiworks.services.dao.DeliveryDao;
+import uk.ac.ed.ph.qtiworks.services.metrics.Counter;
+import uk.ac.ed.ph.qtiworks.services.metrics.MetricsRegistry;
 import uk.ac.ed.ph.qtiworks.utils.LruHashMap;
 
+import uk.ac.ed.ph.jqtiplus.JqtiPlus;
 import uk.ac.ed.ph.jqtiplus.internal.util.Assert;
 import uk.ac.ed.ph.jqtiplus.internal.util.ObjectUtilities;
 import uk.ac.ed.ph.jqtiplus.resolution.ResolvedAssessmentItem;
+import uk.ac.ed.ph.jqtiplus.resolution.ResolvedAssessmentObject;
 import uk.ac.ed.ph.jqtiplus.resolution.ResolvedAssessmentTest;
 import uk.ac.ed.ph.jqtiplus.running.ItemProcessingInitializer;
 import uk.ac.ed.ph.jqtiplus.running.TestProcessingInitializer;
 import uk.ac.ed.ph.jqtiplus.state.ItemProcessingMap;
 import uk.ac.ed.ph.jqtiplus.state.TestProcessingMap;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
 import java.util.Collections;
+import java.util.HashSet;
 import java.util.Map;
+import java.util.Set;
 
+import javax.annotation.PostConstruct;
 import javax.annotation.Resource;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
 
 /**
  * Middle layer service responsible for instantiating and caching {@link ItemProcessingMap}
  * and {@link TestProcessingMap} Objects.
  * <p>
+ * These are also saved as serialized snapshots within the {@link FilespaceManager}'s store,
+ * which are used in preference to reading in the original QTI XML again after a restart
+ * or cache eviction.
+ * <p>
  * This is NO authorisation at this level.
  *
  * FIXME: For the time being, we'll use an {@link LruHashMap}, though this is probably not the best choice.
@@ -69,18 +95,33 @@ public class AssessmentObjectManagementService {
 
     private static final Logger logger = LoggerFactory.getLogger(AssessmentObjectManagementService.class);
 
-    private int cacheMissCount;
-    private int cacheHitCount;
+    @Resource
+    private QtiWorksDeploymentSettings qtiWorksDeploymentSettings;
 
     @Resource
     private AssessmentPackageFileService assessmentPackageFileService;
 
+    @Resource
+    private FilespaceManager filespaceManager;
+
+    @Resource
+    private DeliveryDao deliveryDao;
+
+    @Resource
+    private MetricsRegistry metricsRegistry;
+
     private final LruHashMap<Long, Object> cache;
+    private Counter cacheHitCounter;
+    private Counter cacheMissCounter;
 
     public AssessmentObjectManagementService() {
         this.cache = new LruHashMap<Long, Object>();
-        this.cacheMissCount = 0;
-        this.cacheHitCount = 0;
+    }
+
+    @PostConstruct
+    public void init() {
+        cacheHitCounter = metricsRegistry.counter("assessmentObject.cache.hit");
+        cacheMissCounter = metricsRegistry.counter("assessmentObject.cache.miss");
     }
 
     /**
@@ -95,17 +136,21 @@ public class AssessmentObjectManagementService {
             if (cache.containsKey(apid)) {
                 logger.debug("Cache HIT for package #{}", apid);
                 result = (ItemProcessingMap) cache.get(apid);
-                cacheHitCount++;
+                cacheHitCounter.increment();
             }
             else {
                 logger.debug("Cache MISS for package #{}. Reading and resolving XML", apid);
-                cacheMissCount++;
-                try {
-                    final ResolvedAssessmentItem resolvedAssessmentItem = assessmentPackageFileService.loadAndResolveAssessmentObject(assessmentPackage);
-                    result = new ItemProcessingInitializer(resolvedAssessmentItem, assessmentPackage.isValid()).initialize();
-                }
-                catch (final RuntimeException e) {
-                    logger.info("Failed to create ItemProcessingMap for package #{}", apid);
+                cacheMissCounter.increment();
+                result = (ItemProcessingMap) readSnapshot(assessmentPackage);
+                if (result==null) {
+                    try {
+                        final ResolvedAssessmentItem resolvedAssessmentItem = assessmentPackageFileService.loadAndResolveAssessmentObject(assessmentPackage);
+                        result = createItemProcessingMap(assessmentPackage, resolvedAssessmentItem);
+                        writeSnapshot(assessmentPackage, result);
+                    }
+                    catch (final RuntimeException e) {
+                        logger.info("Failed to create ItemProcessingMap for package #{}", apid);
+                    }
                 }
                 cache.put(apid, result);
             }
@@ -125,17 +170,21 @@ public class AssessmentObjectManagementService {
             if (cache.containsKey(apid)) {
                 logger.debug("Cache HIT for package #{}", apid);
                 result = (TestProcessingMap) cache.get(apid);
-                cacheHitCount++;
+                cacheHitCounter.increment();
             }
             else {
                 logger.debug("Cache MISS for package #{}. Reading and resolving XML", apid);
-                cacheMissCount++;
-                try {
-                    final ResolvedAssessmentTest resolvedAssessmentTest = assessmentPackageFileService.loadAndResolveAssessmentObject(assessmentPackage);
-                    result = new TestProcessingInitializer(resolvedAssessmentTest, assessmentPackage.isValid()).initialize();
-                }
-                catch (final RuntimeException e) {
-                    logger.info("Failed to create TestProcessingMap for package #{}", apid);
+                cacheMissCounter.increment();
+                result = (TestProcessingMap) readSnapshot(assessmentPackage);
+                if (result==null) {
+                    try {
+                        final ResolvedAssessmentTest resolvedAssessmentTest = assessmentPackageFileService.loadAndResolveAssessmentObject(assessmentPackage);
+                        result = createTestProcessingMap(assessmentPackage, resolvedAssessmentTest);
+                        writeSnapshot(assessmentPackage, result);
+                    }
+                    catch (final RuntimeException e) {
+                        logger.info("Failed to create TestProcessingMap for package #{}", apid);
+                    }
                 }
                 cache.put(apid, result);
             }
@@ -143,6 +192,85 @@ public class AssessmentObjectManagementService {
         return result;
     }
 
+    /**
+     * Creates and caches the {@link ItemProcessingMap} or {@link TestProcessingMap} for the given
+     * (persisted) {@link AssessmentPackage} using a {@link ResolvedAssessmentObject} that has
+     * already been read in, e.g. when the package was imported. This saves reading and resolving
+     * the package again when it is first launched.
+     */
+    public void cacheResolvedAssessmentObject(final AssessmentPackage assessmentPackage,
+            final ResolvedAssessmentObject<?> resolvedAssessmentObject) {
+        Assert.notNull(assessmentPackage, "assessmentPackage");
+        Assert.notNull(resolvedAssessmentObject, "resolvedAssessmentObject");
+        final Long apid = assessmentPackage.getId();
+        Assert.notNull(apid, "assessmentPackage.id");
+        Object result = null;
+        try {
+            if (resolvedAssessmentObject instanceof ResolvedAssessmentItem) {
+                result = createItemProcessingMap(assessmentPackage, (ResolvedAssessmentItem) resolvedAssessmentObject);
+            }
+            else {
+                result = createTestProcessingMap(assessmentPackage, (ResolvedAssessmentTest) resolvedAssessmentObject);
+            }
+        }
+        catch (final RuntimeException e) {
+            logger.info("Failed to create processing map for newly imported package #{}", apid);
+        }
+        if (result!=null) {
+            writeSnapshot(assessmentPackage, (Serializable) result);
+        }
+        synchronized (cache) {
+            cache.put(apid, result);
+        }
+        logger.debug("Cached processing map for newly imported package #{}", apid);
+    }
+
+    private ItemProcessingMap createItemProcessingMap(final AssessmentPackage assessmentPackage,
+            final ResolvedAssessmentItem resolvedAssessmentItem) {
+        return new ItemProcessingInitializer(resolvedAssessmentItem, assessmentPackage.isValid()).initialize();
+    }
+
+    private TestProcessingMap createTestProcessingMap(final AssessmentPackage assessmentPackage,
+            final ResolvedAssessmentTest resolvedAssessmentTest) {
+        return new TestProcessingInitializer(resolvedAssessmentTest, assessmentPackage.isValid()).initialize();
+    }
+
+    /**
+     * Loads the {@link ItemProcessingMap}s and {@link TestProcessingMap}s for all currently open
+     * {@link Delivery Deliveries} into the cache (up to its maximum size), so that these are ready
+     * for candidates when the engine starts up. These will come from snapshots where possible.
+     *
+     * @return number of {@link AssessmentPackage}s loaded
+     */
+    @Transactional(readOnly=true, propagation=Propagation.REQUIRED)
+    public int preloadOpenDeliveries() {
+        final Set<Long> preloadedPackageIds = new HashSet<Long>();
+        for (final Delivery delivery : deliveryDao.getOpen()) {
+            final AssessmentPackage assessmentPackage = delivery.getAssessment().getSelectedAssessmentPackage();
+            if (assessmentPackage==null || preloadedPackageIds.contains(assessmentPackage.getId())) {
+                continue;
+            }
+            if (cache.getMaxSize() > 0 && preloadedPackageIds.size() >= cache.getMaxSize()) {
+                logger.info("Stopped preloading open deliveries as cache is now full");
+                break;
+            }
+            switch (assessmentPackage.getAssessmentType()) {
+                case ASSESSMENT_ITEM:
+                    getItemProcessingMap(assessmentPackage);
+                    break;
+
+                case ASSESSMENT_TEST:
+                    getTestProcessingMap(assessmentPackage);
+                    break;
+
+                default:
+                    throw new QtiWorksLogicException("Unexpected switch case " + assessmentPackage.getAssessmentType());
+            }
+            preloadedPackageIds.add(assessmentPackage.getId());
+        }
+        return preloadedPackageIds.size();
+    }
+
     public void purge(final AssessmentPackage assessmentPackage) {
         Assert.notNull(assessmentPackage, "assessmentPackage");
         final Long apid = assessmentPackage.getId();
@@ -152,6 +280,89 @@ public class AssessmentObjectManagementService {
                 logger.debug("Actively purged package #{}", assessmentPackage);
             }
         }
+        if (!filespaceManager.deleteAssessmentPackageSnapshot(assessmentPackage)) {
+            logger.warn("Failed to delete snapshot for package #{}", apid);
+        }
+    }
+
+    //--------------------------------------------------------------------------
+    // Snapshots
+
+    /**
+     * Reads in the snapshot of the {@link ItemProcessingMap} or {@link TestProcessingMap}
+     * previously saved for the given {@link AssessmentPackage}, returning null if there is
+     * no usable snapshot (or if snapshots are disabled).
+     * <p>
+     * Snapshots written by a different version of the JQTI+ object model, or for a different
+     * validity state of the package, are deleted and ignored.
+     */
+    private Object readSnapshot(final AssessmentPackage assessmentPackage) {
+        if (!qtiWorksDeploymentSettings.isSnapshotsEnabled()) {
+            return null;
+        }
+        final File snapshotFile = filespaceManager.getAssessmentPackageSnapshotFile(assessmentPackage);
+        if (!snapshotFile.exists()) {
+            return null;
+        }
+        Object result = null;
+        ObjectInputStream objectInputStream = null;
+        try {
+            objectInputStream = new ObjectInputStream(new BufferedInputStream(new FileInputStream(snapshotFile)));
+            final String modelVersion = objectInputStream.readUTF();
+            final boolean isValid = objectInputStream.readBoolean();
+            if (JqtiPlus.MODEL_VERSION.equals(modelVersion) && isValid==assessmentPackage.isValid()) {
+                result = objectInputStream.readObject();
+                logger.debug("Loaded snapshot for package #{}", assessmentPackage.getId());
+            }
+            else {
+                logger.info("Ignoring outdated snapshot for package #{}", assessmentPackage.getId());
+            }
+        }
+        catch (final Exception e) {
+            logger.warn("Failed to read snapshot for package #{}", assessmentPackage.getId(), e);
+        }
+        finally {
+            ServiceUtilities.ensureClose(objectInputStream);
+        }
+        if (result==null && !snapshotFile.delete()) {
+            logger.warn("Failed to delete unusable snapshot {}", snapshotFile);
+        }
+        return result;
+    }
+
+    /**
+     * Saves a snapshot of the given {@link ItemProcessingMap} or {@link TestProcessingMap}
+     * for the given {@link AssessmentPackage} (if snapshots are enabled).
+     * <p>
+     * The snapshot is written to a temporary file first so that readers never see a partially
+     * written snapshot.
+     */
+    private void writeSnapshot(final AssessmentPackage assessmentPackage, final Serializable processingMap) {
+        if (!qtiWorksDeploymentSettings.isSnapshotsEnabled()) {
+            return;
+        }
+        final File snapshotFile = filespaceManager.getAssessmentPackageSnapshotFile(assessmentPackage);
+        final File tempFile = new File(snapshotFile.getPath() + ".tmp");
+        ObjectOutputStream objectOutputStream = null;
+        try {
+            objectOutputStream = new ObjectOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)));
+            objectOutputStream.writeUTF(JqtiPlus.MODEL_VERSION);
+            objectOutputStream.writeBoolean(assessmentPackage.isValid());
+            objectOutputStream.writeObject(processingMap);
+            objectOutputStream.close();
+            objectOutputStream = null;
+            if (!tempFile.renameTo(snapshotFile)) {
+                throw new IOException("Could not rename " + tempFile + " to " + snapshotFile);
+            }
+            logger.debug("Saved snapshot for package #{}", assessmentPackage.getId());
+        }
+        catch (final IOException e) {
+            logger.warn("Failed to save snapshot for package #{}", assessmentPackage.getId(), e);
+            tempFile.delete();
+        }
+        finally {
+            ServiceUtilities.ensureClose(objectOutputStream);
+        }
     }
 
     //--------------------------------------------------------------------------
@@ -165,12 +376,12 @@ public class AssessmentObjectManagementService {
         return cache.getMaxSize();
     }
 
-    public int getCacheMissCount() {
-        return cacheMissCount;
+    public long getCacheMissCount() {
+        return cacheMissCounter.getCount();
     }
 
-    public int getCacheHitCount() {
-        return cacheHitCount;
+    public long getCacheHitCount() {
+        return cacheHitCounter.getCount();
     }
 
     public int getCachePurgeCount() {
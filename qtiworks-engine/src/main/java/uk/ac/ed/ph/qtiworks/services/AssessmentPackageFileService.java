@@ -35,13 +35,18 @@ package uk.ac.ed.ph.qtiworks.services;
 
 import uk.ac.ed.ph.qtiworks.QtiWorksLogicException;
 import uk.ac.ed.ph.qtiworks.QtiWorksRuntimeException;
+import uk.ac.ed.ph.qtiworks.config.beans.QtiWorksDeploymentSettings;
 import uk.ac.ed.ph.qtiworks.domain.DomainConstants;
 import uk.ac.ed.ph.qtiworks.domain.entities.AssessmentPackage;
 import uk.ac.ed.ph.qtiworks.domain.entities.AssessmentPackageImportType;
 import uk.ac.ed.ph.qtiworks.domain.entities.User;
 import uk.ac.ed.ph.qtiworks.samples.QtiSampleAssessment;
+import uk.ac.ed.ph.qtiworks.services.dao.AssessmentPackageDao;
 import uk.ac.ed.ph.qtiworks.services.domain.AssessmentPackageDataImportException;
+import uk.ac.ed.ph.qtiworks.services.domain.ImportedAssessmentPackage;
 import uk.ac.ed.ph.qtiworks.services.domain.OutputStreamer;
+import uk.ac.ed.ph.qtiworks.services.metrics.MetricsRegistry;
+import uk.ac.ed.ph.qtiworks.services.metrics.Timer;
 
 import uk.ac.ed.ph.jqtiplus.internal.util.StringUtilities;
 import uk.ac.ed.ph.jqtiplus.node.AssessmentObject;
@@ -67,9 +72,20 @@ import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.URI;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.net.URLConnection;
 import java.util.Date;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.activation.FileTypeMap;
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 import javax.annotation.Resource;
 
 import org.slf4j.Logger;
@@ -100,6 +116,9 @@ public class AssessmentPackageFileService {
     /** Default title for assessment if it can't be extracted from the XML */
     private static final String DEFAULT_IMPORT_TITLE = "Assessment";
 
+    @Resource
+    private QtiWorksDeploymentSettings qtiWorksDeploymentSettings;
+
     @Resource
     private AssessmentPackageFileImporter assessmentPackageFileImporter;
 
@@ -109,9 +128,15 @@ public class AssessmentPackageFileService {
     @Resource
     private FilespaceManager filespaceManager;
 
+    @Resource
+    private AssessmentPackageDao assessmentPackageDao;
+
     @Resource
     private FileTypeMap fileTypeMap;
 
+    @Resource
+    private MetricsRegistry metricsRegistry;
+
     /**
      * {@link ResourceLocator} for reading in sample assessment resources. These are bundled
      * within the ClassPath in a fixed way.
@@ -124,6 +149,12 @@ public class AssessmentPackageFileService {
      */
     private final ResourceLocator sampleResolvingResourceLocator;
 
+    /**
+     * Used for reading in and validating the items within a test in parallel. This will be null
+     * if this has been disabled.
+     */
+    private ExecutorService validationExecutor;
+
     public AssessmentPackageFileService() {
         this.classPathResourceLocator = new ClassPathResourceLocator();
         this.sampleResolvingResourceLocator = new ChainedResourceLocator(
@@ -133,56 +164,143 @@ public class AssessmentPackageFileService {
         );
     }
 
+    @PostConstruct
+    public void init() {
+        final int threadCount = qtiWorksDeploymentSettings.getValidationThreads();
+        if (threadCount > 0) {
+            final AtomicInteger threadCounter = new AtomicInteger();
+            validationExecutor = Executors.newFixedThreadPool(threadCount, new ThreadFactory() {
+                @Override
+                public Thread newThread(final Runnable runnable) {
+                    final Thread thread = new Thread(runnable, "AssessmentValidation-" + threadCounter.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+    }
+
+    @PreDestroy
+    public void destroy() {
+        if (validationExecutor!=null) {
+            validationExecutor.shutdownNow();
+        }
+    }
+
     //-------------------------------------------------
 
     /**
      * Wraps around {@link AssessmentPackageFileImporter#importAssessmentPackageData(File, MultipartFile)}
-     * Imports the assessment data from the given {@link MultipartFile} into the given
-     * sandbox directory, which the caller must have created.
+     * Imports the assessment data from the given {@link MultipartFile} into content-addressed
+     * storage, keyed on the SHA-256 digest of the data.
+     * <p>
+     * If an {@link AssessmentPackage} has already been imported from identical data (and
+     * validated, if validation is requested here) then its files and details are reused,
+     * skipping unpacking, reading and validation entirely. Otherwise the data is unpacked,
+     * read in and resolved (and validated, if requested) exactly once, with the resulting
+     * sandbox then being moved into the content-addressed store.
+     * <p>
+     * Returns an {@link ImportedAssessmentPackage} containing a partially-filled unpersisted
+     * {@link AssessmentPackage} object representing the results of this, as well as the
+     * {@link ResolvedAssessmentObject} so that callers can make further use of it. (This will
+     * be null if existing data was reused.)
+     * <p>
+     * The resulting sandbox may be shared with other {@link AssessmentPackage}s, so callers
+     * must not delete it directly. This must be called within the transaction that persists
+     * the resulting {@link AssessmentPackage}.
+     *
+     * @throws AssessmentPackageDataImportException
+     * @throws IllegalArgumentException if any of the provided arguments are null
+     * @throws QtiWorksRuntimeException if something unexpected happens, such as experiencing
+     *   an {@link IOException}
+     */
+    public ImportedAssessmentPackage importAssessmentPackage(final User owner,
+            final MultipartFile multipartFile, final boolean validate)
+            throws AssessmentPackageDataImportException {
+        Assert.notNull(owner, "owner");
+        Assert.notNull(multipartFile, "multipartFile");
+        final String contentDigest = ServiceUtilities.computeSha256Digest(multipartFile);
+
+        /* Lock this data until the caller's transaction completes, so that the sandbox we
+         * return can't be deleted before the new package referring to it has been committed */
+        filespaceManager.lockContentDigest(contentDigest);
+
+        /* See if we can reuse an existing import of the same data */
+        final AssessmentPackage existingPackage = assessmentPackageDao.getNewestForContentDigest(contentDigest);
+        if (existingPackage!=null && (existingPackage.isValidated() || !validate)
+                && filespaceManager.getAssessmentPackageBlobDirectory(contentDigest).isDirectory()) {
+            logger.debug("Import data has digest {} matching existing {}, so reusing this", contentDigest, existingPackage);
+            final AssessmentPackage assessmentPackage = copyImportedAssessmentPackage(existingPackage);
+            assessmentPackage.setImporter(owner);
+            assessmentPackage.setFileName(createAssessmentPackageFileName(assessmentPackage, multipartFile));
+            return new ImportedAssessmentPackage(assessmentPackage, null, null);
+        }
+
+        /* Otherwise do a full import, then move the result into the content-addressed store */
+        final ImportedAssessmentPackage importedAssessmentPackage = importTransientAssessmentPackage(owner, multipartFile, validate);
+        final AssessmentPackage assessmentPackage = importedAssessmentPackage.getAssessmentPackage();
+        final File packageSandbox = new File(assessmentPackage.getSandboxPath());
+        final File blobDirectory;
+        try {
+            blobDirectory = filespaceManager.storeAssessmentPackageBlob(packageSandbox, contentDigest);
+        }
+        catch (final RuntimeException e) {
+            filespaceManager.deleteAssessmentPackageSandbox(packageSandbox);
+            throw e;
+        }
+        assessmentPackage.setSandboxPath(blobDirectory.getAbsolutePath());
+        assessmentPackage.setContentDigest(contentDigest);
+        return importedAssessmentPackage;
+    }
+
+    /**
+     * Imports the assessment data from the given {@link MultipartFile} into a new private
+     * sandbox directory, bypassing the content-addressed store.
+     * <p>
+     * The resulting QTI is then read in and resolved (and validated, if requested) exactly once,
+     * with the title and validation summary being derived from the result.
      * <p>
-     * Returns a partially-filled unpersisted {@link AssessmentPackage} object representing the
-     * results of this.
+     * Returns an {@link ImportedAssessmentPackage} containing a partially-filled unpersisted
+     * {@link AssessmentPackage} object representing the results of this, as well as the
+     * {@link ResolvedAssessmentObject} so that callers can make further use of it.
+     * The caller is responsible for deleting the resulting sandbox once finished with.
      *
      * @throws AssessmentPackageDataImportException
      * @throws IllegalArgumentException if any of the provided arguments are null
      * @throws QtiWorksRuntimeException if something unexpected happens, such as experiencing
      *   an {@link IOException}
      */
-    public AssessmentPackage importAssessmentPackage(final User owner,
+    public ImportedAssessmentPackage importTransientAssessmentPackage(final User owner,
             final MultipartFile multipartFile, final boolean validate)
             throws AssessmentPackageDataImportException {
         Assert.notNull(owner, "owner");
         Assert.notNull(multipartFile, "multipartFile");
         final File packageSandbox = filespaceManager.createAssessmentPackageSandbox(owner);
         final AssessmentPackage assessmentPackage;
+        final ResolvedAssessmentObject<?> resolvedAssessmentObject;
+        AssessmentObjectValidationResult<?> validationResult = null;
         try {
             assessmentPackage = assessmentPackageFileImporter.importAssessmentPackageData(packageSandbox, multipartFile);
 
             /* Record importer */
             assessmentPackage.setImporter(owner);
 
-            /* Create name for package, using original fileName if available.
-             * If not supplied, use name of QTI assessment XML resource */
-            String fileName = multipartFile.getOriginalFilename();
-            if (fileName==null || fileName.isEmpty()) {
-                fileName = assessmentPackage.getAssessmentHref().replaceFirst("^.+/", "");
+            /* Create name for package */
+            assessmentPackage.setFileName(createAssessmentPackageFileName(assessmentPackage, multipartFile));
+
+            /* Read & resolve the QTI (validating if asked, which records the summary result) */
+            if (validate) {
+                validationResult = loadAndValidateAssessment(assessmentPackage);
+                resolvedAssessmentObject = validationResult.getResolvedAssessmentObject();
+            }
+            else {
+                resolvedAssessmentObject = loadAndResolveAssessmentObject(assessmentPackage);
             }
-            assessmentPackage.setFileName(ServiceUtilities.trimSentence(fileName, DomainConstants.ASSESSMENT_NAME_MAX_LENGTH));
 
-            /* Try to extract the title from the QTI XML */
-            final String guessedTitle = extractAssessmentTitle(assessmentPackage);
+            /* Use title of the resulting AssessmentObject, if available */
+            final String guessedTitle = extractAssessmentTitle(resolvedAssessmentObject);
             final String resultingTitle = !StringUtilities.isNullOrEmpty(guessedTitle) ? guessedTitle : DEFAULT_IMPORT_TITLE;
             assessmentPackage.setTitle(ServiceUtilities.trimSentence(resultingTitle, DomainConstants.ASSESSMENT_TITLE_MAX_LENGTH));
-
-            /* Validate (if asked) and record summary result */
-            if (validate) {
-                final AssessmentObjectValidationResult<?> validationResult = loadAndValidateAssessment(assessmentPackage);
-                assessmentPackage.setValidated(true);
-                assessmentPackage.setLaunchable(validationResult.getResolvedAssessmentObject().getRootNodeLookup().wasSuccessful());
-                assessmentPackage.setErrorCount(validationResult.getModelValidationErrors().size());
-                assessmentPackage.setWarningCount(validationResult.getModelValidationWarnings().size());
-                assessmentPackage.setValid(validationResult.isValid());
-            }
         }
         catch (final AssessmentPackageDataImportException e) {
             filespaceManager.deleteAssessmentPackageSandbox(packageSandbox);
@@ -192,7 +310,51 @@ public class AssessmentPackageFileService {
             filespaceManager.deleteAssessmentPackageSandbox(packageSandbox);
             throw e;
         }
-        return assessmentPackage;
+        return new ImportedAssessmentPackage(assessmentPackage, resolvedAssessmentObject, validationResult);
+    }
+
+    /**
+     * Creates name for package, using original fileName if available.
+     * If not supplied, use name of QTI assessment XML resource
+     */
+    private static String createAssessmentPackageFileName(final AssessmentPackage assessmentPackage,
+            final MultipartFile multipartFile) {
+        String fileName = multipartFile.getOriginalFilename();
+        if (fileName==null || fileName.isEmpty()) {
+            fileName = assessmentPackage.getAssessmentHref().replaceFirst("^.+/", "");
+        }
+        return ServiceUtilities.trimSentence(fileName, DomainConstants.ASSESSMENT_NAME_MAX_LENGTH);
+    }
+
+    /**
+     * Creates a new unpersisted {@link AssessmentPackage} sharing the files and import details
+     * of the given one, which was imported from identical data.
+     */
+    private static AssessmentPackage copyImportedAssessmentPackage(final AssessmentPackage existingPackage) {
+        final AssessmentPackage result = new AssessmentPackage();
+        result.setAssessmentType(existingPackage.getAssessmentType());
+        result.setImportType(existingPackage.getImportType());
+        result.setSandboxPath(existingPackage.getSandboxPath());
+        result.setContentDigest(existingPackage.getContentDigest());
+        result.setAssessmentHref(existingPackage.getAssessmentHref());
+        result.setTitle(existingPackage.getTitle());
+        result.setValidated(existingPackage.isValidated());
+        result.setLaunchable(existingPackage.isLaunchable());
+        result.setErrorCount(existingPackage.getErrorCount());
+        result.setWarningCount(existingPackage.getWarningCount());
+        result.setValid(existingPackage.isValid());
+        result.setQtiFileHrefs(copyHrefs(existingPackage.getQtiFileHrefs()));
+        result.setSafeFileHrefs(copyHrefs(existingPackage.getSafeFileHrefs()));
+        return result;
+    }
+
+    private static Set<String> copyHrefs(final Set<String> hrefs) {
+        return hrefs!=null ? new HashSet<String>(hrefs) : null;
+    }
+
+    private static String extractAssessmentTitle(final ResolvedAssessmentObject<?> resolvedAssessmentObject) {
+        final AssessmentObject assessmentObject = resolvedAssessmentObject.getRootNodeLookup().extractIfSuccessful();
+        return assessmentObject!=null ? assessmentObject.getTitle() : null;
     }
 
     /**
@@ -327,21 +489,28 @@ public class AssessmentPackageFileService {
     @SuppressWarnings("unchecked")
     public <E extends ResolvedAssessmentObject<?>>
     E loadAndResolveAssessmentObject(final AssessmentPackage assessmentPackage) {
-        final ResourceLocator inputResourceLocator = createResolvingResourceLocator(assessmentPackage);
-        final URI assessmentObjectSystemId = createAssessmentObjectUri(assessmentPackage);
-        final AssessmentObjectXmlLoader assessmentObjectXmlLoader = new AssessmentObjectXmlLoader(qtiXmlReader, inputResourceLocator);
-        final AssessmentObjectType assessmentObjectType = assessmentPackage.getAssessmentType();
-        E result;
-        if (assessmentObjectType==AssessmentObjectType.ASSESSMENT_ITEM) {
-            result = (E) assessmentObjectXmlLoader.loadAndResolveAssessmentItem(assessmentObjectSystemId);
-        }
-        else if (assessmentObjectType==AssessmentObjectType.ASSESSMENT_TEST) {
-            result = (E) assessmentObjectXmlLoader.loadAndResolveAssessmentTest(assessmentObjectSystemId);
+        final Timer timer = metricsRegistry.timer("assessment.loadAndResolve");
+        final long startTime = timer.start();
+        try {
+            final ResourceLocator inputResourceLocator = createResolvingResourceLocator(assessmentPackage);
+            final URI assessmentObjectSystemId = createAssessmentObjectUri(assessmentPackage);
+            final AssessmentObjectXmlLoader assessmentObjectXmlLoader = new AssessmentObjectXmlLoader(qtiXmlReader, inputResourceLocator, validationExecutor);
+            final AssessmentObjectType assessmentObjectType = assessmentPackage.getAssessmentType();
+            E result;
+            if (assessmentObjectType==AssessmentObjectType.ASSESSMENT_ITEM) {
+                result = (E) assessmentObjectXmlLoader.loadAndResolveAssessmentItem(assessmentObjectSystemId);
+            }
+            else if (assessmentObjectType==AssessmentObjectType.ASSESSMENT_TEST) {
+                result = (E) assessmentObjectXmlLoader.loadAndResolveAssessmentTest(assessmentObjectSystemId);
+            }
+            else {
+                throw new QtiWorksLogicException("Unexpected branch " + assessmentObjectType);
+            }
+            return result;
         }
-        else {
-            throw new QtiWorksLogicException("Unexpected branch " + assessmentObjectType);
+        finally {
+            timer.stop(startTime);
         }
-        return result;
     }
 
     /**
@@ -355,7 +524,7 @@ public class AssessmentPackageFileService {
         Assert.notNull(assessmentPackage, "assessmentPackage");
         final ResourceLocator inputResourceLocator = createResolvingResourceLocator(assessmentPackage);
         final URI assessmentObjectSystemId = createAssessmentObjectUri(assessmentPackage);
-        final AssessmentObjectXmlLoader assessmentObjectXmlLoader = new AssessmentObjectXmlLoader(qtiXmlReader, inputResourceLocator);
+        final AssessmentObjectXmlLoader assessmentObjectXmlLoader = new AssessmentObjectXmlLoader(qtiXmlReader, inputResourceLocator, validationExecutor);
         final AssessmentObjectType assessmentObjectType = assessmentPackage.getAssessmentType();
         E result;
         if (assessmentObjectType==AssessmentObjectType.ASSESSMENT_ITEM) {
@@ -409,36 +578,45 @@ public class AssessmentPackageFileService {
     private void streamAssessmentPackageFile(final AssessmentPackage assessmentPackage, final String fileHref,
             final String contentType, final OutputStreamer outputStreamer)
             throws IOException {
-        /* Compute a suitable entity tag */
-        final Date lastModifiedTime = assessmentPackage.getCreationTime(); /* (Safe since packages never change - they get replaced) */
+        /* Package files never change (packages get replaced rather than modified), so we
+         * can let the recipient cache these and request parts of them */
+        final Date lastModifiedTime = assessmentPackage.getCreationTime();
+        final String fingerprint = "package/" + assessmentPackage.getId()
+                + "/" + lastModifiedTime.getTime()
+                + "/file/" + fileHref;
+        if (outputStreamer.offerImmutableFingerprint(fingerprint)) {
+            return;
+        }
         if (assessmentPackage.getImportType()==AssessmentPackageImportType.BUNDLED_SAMPLE) {
-            /* Bundled sample lives in the ClassPath.
-             * We'll copy it to a temp File for serving
-             */
-            final File tempFile = filespaceManager.createTempFile();
-            try {
-                final URI fileClassPathSystemId = QtiSampleAssessment.toClassPathUri(fileHref);
-                final InputStream sampleFileStream = classPathResourceLocator.findResource(fileClassPathSystemId);
-                if (sampleFileStream==null) {
-                    throw new QtiWorksRuntimeException("Sample AssessmentPackage file with href " + fileHref
-                            + " yielded null lookup. The sample bootstrap process may need to be redone.");
-                }
+            /* Bundled sample lives in the ClassPath, so stream it directly from there */
+            final URI fileClassPathSystemId = QtiSampleAssessment.toClassPathUri(fileHref);
+            final URL sampleFileUrl = classPathResourceLocator.findResourceUrl(fileClassPathSystemId);
+            if (sampleFileUrl==null) {
+                throw new QtiWorksRuntimeException("Sample AssessmentPackage file with href " + fileHref
+                        + " yielded null lookup. The sample bootstrap process may need to be redone.");
+            }
+            if ("file".equals(sampleFileUrl.getProtocol())) {
+                /* (Exploded ClassPath, so we can serve the File directly) */
+                final File sampleFile;
                 try {
-                    ServiceUtilities.copyInputStreamToFile(sampleFileStream, tempFile);
+                    sampleFile = new File(sampleFileUrl.toURI());
                 }
-                catch (final IOException e) {
-                    throw new QtiWorksRuntimeException("Sample AssessmentPackage file with href " + fileHref
-                            + " yielded null lookup. The sample bootstrap process may need to be redone.");
+                catch (final URISyntaxException e) {
+                    throw new QtiWorksRuntimeException("Unexpected sample file URL " + sampleFileUrl, e);
+                }
+                ServiceUtilities.streamFile(sampleFile, contentType, lastModifiedTime, outputStreamer);
+            }
+            else {
+                /* (Probably within a JAR) */
+                final URLConnection sampleFileConnection = sampleFileUrl.openConnection();
+                final long contentLength = sampleFileConnection.getContentLength();
+                final InputStream sampleFileStream = sampleFileConnection.getInputStream();
+                try {
+                    outputStreamer.stream(contentType, contentLength, lastModifiedTime, sampleFileStream);
                 }
                 finally {
                     ServiceUtilities.ensureClose(sampleFileStream);
                 }
-                ServiceUtilities.streamFile(tempFile, contentType, lastModifiedTime, outputStreamer);
-            }
-            finally {
-                if (!tempFile.delete()) {
-                    logger.warn("Could not delete temp file {}", tempFile);
-                }
             }
         }
         else {
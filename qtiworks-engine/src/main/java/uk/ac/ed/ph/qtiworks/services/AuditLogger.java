@@ -34,15 +34,18 @@
 package uk.ac.ed.ph.qtiworks.services;
 
 import uk.ac.ed.ph.qtiworks.domain.entities.User;
+import uk.ac.ed.ph.qtiworks.services.audit.AuditRecord;
+import uk.ac.ed.ph.qtiworks.services.audit.AuditRecordDispatcher;
 
 import javax.annotation.Resource;
 
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Service;
 
 /**
  * Special logging wrapper for recording events that need to logged for auditing purposes.
+ * <p>
+ * Events are written asynchronously as structured <code>user=... message=...</code>
+ * records via the {@link AuditRecordDispatcher}.
  *
  * @author David McKain
  */
@@ -53,22 +56,23 @@ public final class AuditLogger {
      * NOTE: This uses a special logger name so that this can be handled
      * easily in your logback configuration.
      */
-    private static final Logger logger = LoggerFactory.getLogger("AuditLogger");
+    public static final String LOGGER_NAME = "AuditLogger";
 
     @Resource
     private IdentityService identityService;
 
+    @Resource
+    private AuditRecordDispatcher auditRecordDispatcher;
+
     public void recordEvent(final String message) {
         final User currentThreadUser = identityService.getCurrentThreadUser();
-        logger.info(createEventLogEntry(currentThreadUser, message));
+        recordEvent(currentThreadUser, message);
     }
 
     public void recordEvent(final User user, final String message) {
-        logger.info(createEventLogEntry(user, message));
-    }
-
-    private String createEventLogEntry(final User user, final String message) {
         final String userKey = user!=null ? user.getBusinessKey() : "<unknown>";
-        return userKey + ": " + message;
+        auditRecordDispatcher.dispatch(new AuditRecord(LOGGER_NAME)
+            .add("user", userKey)
+            .add("message", message));
     }
 }
@@ -38,117 +38,125 @@ import uk.ac.ed.ph.qtiworks.domain.entities.CandidateEvent;
 import uk.ac.ed.ph.qtiworks.domain.entities.CandidateSession;
 import uk.ac.ed.ph.qtiworks.domain.entities.Delivery;
 import uk.ac.ed.ph.qtiworks.domain.entities.User;
+import uk.ac.ed.ph.qtiworks.services.audit.AuditRecord;
+import uk.ac.ed.ph.qtiworks.services.audit.AuditRecordDispatcher;
 import uk.ac.ed.ph.qtiworks.services.candidate.CandidateException;
 import uk.ac.ed.ph.qtiworks.services.candidate.CandidateExceptionReason;
 
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
+import javax.annotation.Resource;
+
 import org.springframework.stereotype.Service;
 
 /**
  * Helper to audit candidate events and {@link CandidateException}s.
+ * <p>
+ * These are written asynchronously as structured <code>key=value</code> records via the
+ * {@link AuditRecordDispatcher}. Only the raw values are captured on the calling thread.
  *
  * @author David McKain
  */
 @Service
 public class CandidateAuditLogger {
 
-    /** Special logger for auditing candidate actions */
-    private static final Logger candidateLogger = LoggerFactory.getLogger("CandidateAuditLogger");
+    /** Name of special logger for auditing candidate actions */
+    public static final String LOGGER_NAME = "CandidateAuditLogger";
+
+    @Resource
+    private AuditRecordDispatcher auditRecordDispatcher;
 
 
     public void logAction(final CandidateSession candidateSession, final String actionName) {
-        logSessionAction(candidateSession, "action=" + actionName);
+        logSessionAction(candidateSession, "action", actionName);
     }
 
     public void logItemRendering(final CandidateEvent candidateEvent) {
-        logSessionAction(candidateEvent.getCandidateSession(), "action=RENDER_ITEM");
+        logSessionAction(candidateEvent.getCandidateSession(), "action", "RENDER_ITEM");
     }
 
     public void logItemAuthorViewRendering(final CandidateEvent candidateEvent) {
-        logSessionAction(candidateEvent.getCandidateSession(), "action=RENDER_ITEM_AUTHOR_VIEW");
+        logSessionAction(candidateEvent.getCandidateSession(), "action", "RENDER_ITEM_AUTHOR_VIEW");
     }
 
     public void logTestRendering(final CandidateEvent candidateEvent) {
-        logSessionAction(candidateEvent.getCandidateSession(), "action=RENDER_TEST");
+        logSessionAction(candidateEvent.getCandidateSession(), "action", "RENDER_TEST");
     }
 
     public void logTestAuthorViewRendering(final CandidateEvent candidateEvent) {
-        logSessionAction(candidateEvent.getCandidateSession(), "action=RENDER_TEST_AUTHOR_VIEW");
+        logSessionAction(candidateEvent.getCandidateSession(), "action", "RENDER_TEST_AUTHOR_VIEW");
     }
 
     public void logCandidateEvent(final CandidateEvent candidateEvent) {
-        final StringBuilder messageBuilder = new StringBuilder("action=CANDIDATE_EVENT xeid=")
-            .append(candidateEvent.getId());
+        final AuditRecord record = createSessionRecord(candidateEvent.getCandidateSession())
+            .add("action", "CANDIDATE_EVENT")
+            .add("xeid", candidateEvent.getId());
         if (candidateEvent.getTestEventType()!=null) {
-            messageBuilder.append(" testEvent=").append(candidateEvent.getTestEventType());
+            record.add("testEvent", candidateEvent.getTestEventType());
         }
         if (candidateEvent.getItemEventType()!=null) {
-            messageBuilder.append(" itemEvent=").append(candidateEvent.getItemEventType());
+            record.add("itemEvent", candidateEvent.getItemEventType());
         }
         if (candidateEvent.getTestItemKey()!=null) {
-            messageBuilder.append(" testItemKey=").append(candidateEvent.getTestItemKey());
+            record.add("testItemKey", candidateEvent.getTestItemKey());
         }
-        messageBuilder.append(" notifications=").append(candidateEvent.getNotifications().size());
-        logSessionAction(candidateEvent.getCandidateSession(), messageBuilder.toString());
+        record.add("notifications", Integer.valueOf(candidateEvent.getNotifications().size()));
+        auditRecordDispatcher.dispatch(record);
     }
 
     public void logAndThrowCandidateException(final CandidateSession candidateSession, final CandidateExceptionReason reason)
             throws CandidateException {
-        logSessionAction(candidateSession, "error=" + reason);
+        logSessionAction(candidateSession, "error", reason);
         throw new CandidateException(candidateSession, reason);
     }
 
     public void logAndThrowCandidateException(final User candidate, final Delivery delivery, final CandidateExceptionReason reason)
             throws CandidateException {
-        logPreSessionAction(candidate, delivery, "error=" + reason);
+        logPreSessionAction(candidate, delivery, "error", reason);
         throw new CandidateException(candidate, delivery, reason);
     }
 
     public void logAndThrowCandidateException(final User candidate, final Assessment assessment, final CandidateExceptionReason reason)
             throws CandidateException {
-        logPreSessionAction(candidate, assessment, "error=" + reason);
+        logPreSessionAction(candidate, assessment, "error", reason);
         throw new CandidateException(candidate, assessment, reason);
     }
 
     public void logExplosion(final CandidateSession candidateSession) {
-        logSessionAction(candidateSession, "explosion");
+        logSessionAction(candidateSession, "event", "explosion");
+    }
+
+    private void logSessionAction(final CandidateSession candidateSession, final String key, final Object value) {
+        auditRecordDispatcher.dispatch(createSessionRecord(candidateSession).add(key, value));
     }
 
-    private void logSessionAction(final CandidateSession candidateSession, final String message) {
-        logMessage(candidateSession.getCandidate(),
+    private AuditRecord createSessionRecord(final CandidateSession candidateSession) {
+        return createRecord(candidateSession.getCandidate(),
                 candidateSession.getId(),
                 candidateSession.getDelivery().getId(),
-                candidateSession.getDelivery().getAssessment().getId(),
-                message);
+                candidateSession.getDelivery().getAssessment().getId());
     }
 
-    private void logPreSessionAction(final User candidateUser, final Delivery delivery, final String message) {
+    private void logPreSessionAction(final User candidateUser, final Delivery delivery, final String key, final Object value) {
         final Assessment assessment = delivery.getAssessment();
-        logMessage(candidateUser,
+        auditRecordDispatcher.dispatch(createRecord(candidateUser,
                 null,
                 delivery.getId(),
-                assessment!=null ? assessment.getId() : null, /* (Might be null for incomplete LTI domain launch) */
-                message);
+                assessment!=null ? assessment.getId() : null /* (Might be null for incomplete LTI domain launch) */
+                ).add(key, value));
     }
 
-    private void logPreSessionAction(final User candidateUser, final Assessment assessment, final String message) {
-        logMessage(candidateUser,
+    private void logPreSessionAction(final User candidateUser, final Assessment assessment, final String key, final Object value) {
+        auditRecordDispatcher.dispatch(createRecord(candidateUser,
                 null,
                 null,
-                assessment.getId(),
-                message);
+                assessment.getId()
+                ).add(key, value));
     }
 
-    private void logMessage(final User candidateUser, final Long xid, final Long did,
-            final Long aid, final String message) {
-        candidateLogger.info("user={} xid={} did={} aid={} {}",
-                new Object[] {
-                    candidateUser.getBusinessKey(),
-                    xid,
-                    did,
-                    aid,
-                    message
-        });
+    private AuditRecord createRecord(final User candidateUser, final Long xid, final Long did, final Long aid) {
+        return new AuditRecord(LOGGER_NAME)
+            .add("user", candidateUser.getBusinessKey())
+            .add("xid", xid)
+            .add("did", did)
+            .add("aid", aid);
     }
 }
@@ -52,7 +52,10 @@ import uk.ac.ed.ph.qtiworks.mathassess.GlueValueBinder;
 import uk.ac.ed.ph.qtiworks.mathassess.MathAssessConstants;
 import uk.ac.ed.ph.qtiworks.services.dao.CandidateEventDao;
 import uk.ac.ed.ph.qtiworks.services.dao.CandidateEventNotificationDao;
+import uk.ac.ed.ph.qtiworks.services.dao.CandidateSessionDao;
 import uk.ac.ed.ph.qtiworks.services.dao.CandidateSessionOutcomeDao;
+import uk.ac.ed.ph.qtiworks.services.metrics.MetricsRegistry;
+import uk.ac.ed.ph.qtiworks.services.metrics.Timer;
 import uk.ac.ed.ph.qtiworks.utils.XmlUtilities;
 
 import uk.ac.ed.ph.jqtiplus.JqtiExtensionManager;
@@ -67,6 +70,7 @@ import uk.ac.ed.ph.jqtiplus.node.result.AssessmentResult;
 import uk.ac.ed.ph.jqtiplus.node.result.ItemVariable;
 import uk.ac.ed.ph.jqtiplus.node.result.OutcomeVariable;
 import uk.ac.ed.ph.jqtiplus.notification.Notification;
+import uk.ac.ed.ph.jqtiplus.notification.NotificationLevel;
 import uk.ac.ed.ph.jqtiplus.notification.NotificationRecorder;
 import uk.ac.ed.ph.jqtiplus.running.ItemSessionController;
 import uk.ac.ed.ph.jqtiplus.running.ItemSessionControllerSettings;
@@ -95,6 +99,11 @@ import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.net.URI;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
 
 import javax.annotation.Resource;
 import javax.xml.parsers.DocumentBuilder;
@@ -136,6 +145,9 @@ public class CandidateDataService {
     @Resource
     private AssessmentObjectManagementService assessmentObjectManagementService;
 
+    @Resource
+    private CandidateSessionDao candidateSessionDao;
+
     @Resource
     private CandidateSessionOutcomeDao candidateSessionOutcomeDao;
 
@@ -151,10 +163,63 @@ public class CandidateDataService {
     @Resource
     private JqtiExtensionManager jqtiExtensionManager;
 
+    @Resource
+    private MetricsRegistry metricsRegistry;
+
     //----------------------------------------------------
     // Notification recording
 
     public CandidateEventNotification recordNotification(final CandidateEvent candidateEvent, final Notification notification) {
+        final CandidateEventNotification record = createNotificationRecord(candidateEvent, notification);
+        candidateEvent.getNotifications().add(record);
+        candidateEventNotificationDao.persist(record);
+        return record;
+    }
+
+    /**
+     * Records the {@link Notification}s gathered by the given {@link NotificationRecorder}
+     * while performing the given {@link CandidateEvent}.
+     * <p>
+     * Notifications below the {@link DeliverySettings#getNotificationLevel()} of the
+     * {@link Delivery} are ignored, as are exact repeats of an earlier notification.
+     * The remaining notifications are persisted together, so that Hibernate sends them to
+     * the DB as a JDBC batch when the event is flushed.
+     */
+    public List<CandidateEventNotification> recordNotifications(final CandidateEvent candidateEvent,
+            final NotificationRecorder notificationRecorder) {
+        final List<Notification> notifications = notificationRecorder.getNotifications();
+        final List<CandidateEventNotification> result = new ArrayList<CandidateEventNotification>(notifications.size());
+        if (notifications.isEmpty()) {
+            return result;
+        }
+
+        /* Filter and de-duplicate notifications */
+        final NotificationLevel notificationLevel = getNotificationLevel(candidateEvent.getCandidateSession().getDelivery());
+        final Set<List<Object>> notificationKeys = new HashSet<List<Object>>();
+        for (final Notification notification : notifications) {
+            if (notificationLevel!=null && notification.getNotificationLevel().compareTo(notificationLevel) < 0) {
+                continue;
+            }
+            final CandidateEventNotification record = createNotificationRecord(candidateEvent, notification);
+            if (notificationKeys.add(createNotificationKey(record))) {
+                result.add(record);
+            }
+        }
+
+        /* Then persist the survivors as a single run of INSERTs */
+        for (final CandidateEventNotification record : result) {
+            candidateEvent.getNotifications().add(record);
+            candidateEventNotificationDao.persist(record);
+        }
+        return result;
+    }
+
+    private NotificationLevel getNotificationLevel(final Delivery delivery) {
+        final DeliverySettings deliverySettings = delivery.getDeliverySettings();
+        return deliverySettings!=null ? deliverySettings.getNotificationLevel() : null;
+    }
+
+    private CandidateEventNotification createNotificationRecord(final CandidateEvent candidateEvent, final Notification notification) {
         final CandidateEventNotification record = new CandidateEventNotification();
         record.setCandidateEvent(candidateEvent);
 
@@ -177,12 +242,17 @@ public class CandidateDataService {
             record.setAttributeLocalName(attribute.getLocalName());
             record.setAttributeNamespaceUri(attribute.getNamespaceUri());
         }
-
-        candidateEvent.getNotifications().add(record);
-        candidateEventNotificationDao.persist(record);
         return record;
     }
 
+    /** Creates a key identifying repeats of the same notification */
+    private static List<Object> createNotificationKey(final CandidateEventNotification record) {
+        return Arrays.<Object>asList(record.getNotificationLevel(), record.getNotificationType(),
+                record.getMessage(), record.getNodeQtiClassName(),
+                record.getSystemId(), record.getLineNumber(), record.getColumnNumber(),
+                record.getAttributeLocalName(), record.getAttributeNamespaceUri());
+    }
+
     //----------------------------------------------------
     // Item or Test methods
 
@@ -226,13 +296,27 @@ public class CandidateDataService {
     // Item methods
 
     public void storeItemSessionState(final CandidateEvent candidateEvent, final ItemSessionState itemSessionState) {
-        final Document stateDocument = ItemSessionStateXmlMarshaller.marshal(itemSessionState);
-        storeStateDocument(candidateEvent, stateDocument);
+        final Timer timer = metricsRegistry.timer("state.item.store");
+        final long startTime = timer.start();
+        try {
+            final Document stateDocument = ItemSessionStateXmlMarshaller.marshal(itemSessionState);
+            storeStateDocument(candidateEvent, stateDocument);
+        }
+        finally {
+            timer.stop(startTime);
+        }
     }
 
     public ItemSessionState loadItemSessionState(final CandidateEvent candidateEvent) {
-        final Document document = loadStateDocument(candidateEvent);
-        return ItemSessionStateXmlMarshaller.unmarshal(document.getDocumentElement());
+        final Timer timer = metricsRegistry.timer("state.item.load");
+        final long startTime = timer.start();
+        try {
+            final Document document = loadStateDocument(candidateEvent);
+            return ItemSessionStateXmlMarshaller.unmarshal(document.getDocumentElement());
+        }
+        finally {
+            timer.stop(startTime);
+        }
     }
 
     public CandidateEvent recordCandidateItemEvent(final CandidateSession candidateSession,
@@ -250,16 +334,14 @@ public class CandidateDataService {
         event.setTimestamp(requestTimestampContext.getCurrentRequestTimestamp());
 
         /* Store event */
-        candidateEventDao.persist(event);
+        persistCandidateEvent(event);
 
         /* Save current ItemSessionState */
         storeItemSessionState(event, itemSessionState);
 
         /* Now store processing notifications */
         if (notificationRecorder!=null) {
-            for (final Notification notification : notificationRecorder.getNotifications()) {
-                recordNotification(event, notification);
-            }
+            recordNotifications(event, notificationRecorder);
         }
 
         return event;
@@ -392,13 +474,27 @@ public class CandidateDataService {
     // Test methods
 
     public void storeTestSessionState(final CandidateEvent candidateEvent, final TestSessionState testSessionState) {
-        final Document stateDocument = TestSessionStateXmlMarshaller.marshal(testSessionState);
-        storeStateDocument(candidateEvent, stateDocument);
+        final Timer timer = metricsRegistry.timer("state.test.store");
+        final long startTime = timer.start();
+        try {
+            final Document stateDocument = TestSessionStateXmlMarshaller.marshal(testSessionState);
+            storeStateDocument(candidateEvent, stateDocument);
+        }
+        finally {
+            timer.stop(startTime);
+        }
     }
 
     public TestSessionState loadTestSessionState(final CandidateEvent candidateEvent) {
-        final Document document = loadStateDocument(candidateEvent);
-        return TestSessionStateXmlMarshaller.unmarshal(document.getDocumentElement());
+        final Timer timer = metricsRegistry.timer("state.test.load");
+        final long startTime = timer.start();
+        try {
+            final Document document = loadStateDocument(candidateEvent);
+            return TestSessionStateXmlMarshaller.unmarshal(document.getDocumentElement());
+        }
+        finally {
+            timer.stop(startTime);
+        }
     }
 
     /**
@@ -418,8 +514,14 @@ public class CandidateDataService {
             return null;
         }
 
-        /* Generate a test plan for this session */
-        final TestPlanner testPlanner = new TestPlanner(testProcessingMap);
+        /* Create config for TestSessionController */
+        final DeliverySettings testDeliverySettings = assessmentDataService.getEffectiveDeliverySettings(candidate, delivery);
+        final TestSessionControllerSettings testSessionControllerSettings = new TestSessionControllerSettings();
+        testSessionControllerSettings.setTemplateProcessingLimit(computeTemplateProcessingLimit(testDeliverySettings));
+
+        /* Generate a test plan for this session, seeded from the settings */
+        final TestPlanner testPlanner = new TestPlanner(testProcessingMap,
+                testSessionControllerSettings.getRandomSeedSource().nextSeed());
         if (notificationRecorder!=null) {
             testPlanner.addNotificationListener(notificationRecorder);
         }
@@ -428,11 +530,6 @@ public class CandidateDataService {
         /* Create fresh state for session */
         final TestSessionState testSessionState = new TestSessionState(testPlan);
 
-        /* Create config for TestSessionController */
-        final DeliverySettings testDeliverySettings = assessmentDataService.getEffectiveDeliverySettings(candidate, delivery);
-        final TestSessionControllerSettings testSessionControllerSettings = new TestSessionControllerSettings();
-        testSessionControllerSettings.setTemplateProcessingLimit(computeTemplateProcessingLimit(testDeliverySettings));
-
         /* Create controller and wire up notification recorder */
         final TestSessionController result = new TestSessionController(jqtiExtensionManager,
                 testSessionControllerSettings, testProcessingMap, testSessionState);
@@ -526,16 +623,14 @@ public class CandidateDataService {
         event.setTimestamp(requestTimestampContext.getCurrentRequestTimestamp());
 
         /* Store event */
-        candidateEventDao.persist(event);
+        persistCandidateEvent(event);
 
         /* Store test session state */
         storeTestSessionState(event, testSessionState);
 
         /* Now store processing notifications */
         if (notificationRecorder!=null) {
-            for (final Notification notification : notificationRecorder.getNotifications()) {
-                recordNotification(event, notification);
-            }
+            recordNotifications(event, notificationRecorder);
         }
 
         return event;
@@ -674,9 +769,31 @@ public class CandidateDataService {
      * yet entered.
      */
     public CandidateEvent getMostRecentEvent(final CandidateSession candidateSession)  {
+        final Long latestXeid = candidateSession.getLatestXeid();
+        if (latestXeid!=null) {
+            final CandidateEvent latestEvent = candidateEventDao.findById(latestXeid);
+            if (latestEvent!=null) {
+                return latestEvent;
+            }
+        }
+        /* Session has no recorded latest event, so search its events instead */
         return candidateEventDao.getNewestEventInSession(candidateSession);
     }
 
+    /**
+     * Persists a newly-created {@link CandidateEvent}, recording it as the latest event within its
+     * {@link CandidateSession}.
+     * <p>
+     * The {@link CandidateSession} may be detached here, so we update just its latest event
+     * column rather than merging the whole entity (which could overwrite newer changes).
+     */
+    private void persistCandidateEvent(final CandidateEvent candidateEvent) {
+        candidateEventDao.persist(candidateEvent);
+        final CandidateSession candidateSession = candidateEvent.getCandidateSession();
+        candidateSessionDao.updateLatestXeid(candidateSession, candidateEvent.getId());
+        candidateSession.setLatestXeid(candidateEvent.getId());
+    }
+
     private void recordOutcomeVariables(final CandidateSession candidateSession, final AbstractResult resultNode) {
         candidateSessionOutcomeDao.deleteForCandidateSession(candidateSession);
         for (final ItemVariable itemVariable : resultNode.getItemVariables()) {
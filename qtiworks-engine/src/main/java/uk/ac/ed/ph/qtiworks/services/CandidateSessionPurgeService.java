@@ -0,0 +1,302 @@
+/* Copyright (c) 2012-2013, University of Edinburgh.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice, this
+ *   list of conditions and the following disclaimer in the documentation and/or
+ *   other materials provided with the distribution.
+ *
+ * * Neither the name of the University of Edinburgh nor the names of its
+ *   contributors may be used to endorse or promote products derived from this
+ *   software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ *
+ * This software is derived from (and contains code from) QTITools and MathAssessEngine.
+ * QTITools is (c) 2008, University of Southampton.
+ * MathAssessEngine is (c) 2010, University of Edinburgh.
+ */
+package uk.ac.ed.ph.qtiworks.services;
+
+import uk.ac.ed.ph.qtiworks.config.beans.QtiWorksDeploymentSettings;
+import uk.ac.ed.ph.qtiworks.domain.entities.CandidateSession;
+import uk.ac.ed.ph.qtiworks.domain.entities.Delivery;
+import uk.ac.ed.ph.qtiworks.domain.entities.LtiContext;
+import uk.ac.ed.ph.qtiworks.domain.entities.LtiDomain;
+import uk.ac.ed.ph.qtiworks.services.dao.CandidateSessionDao;
+import uk.ac.ed.ph.qtiworks.services.domain.CandidateSessionPurgeReport;
+
+import uk.ac.ed.ph.jqtiplus.internal.util.Assert;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.annotation.Resource;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+/**
+ * Bulk purge engine for {@link CandidateSession}s.
+ * <p>
+ * Matching sessions are paged through in xid order in chunks of
+ * {@link QtiWorksDeploymentSettings#getPurgeChunkSize()} sessions. The database data for each chunk
+ * is removed using a small number of set-based deletions, performed in a new transaction
+ * via {@link DataDeletionService#deleteCandidateSessionData(List)}. This avoids holding a
+ * single long-running transaction when purging large numbers of sessions.
+ * <p>
+ * Filesystem data for each purged session is deleted in the background by a pool of
+ * {@link QtiWorksDeploymentSettings#getPurgeFilesystemThreads()} threads. Each purge waits for
+ * its filesystem deletions to complete before returning its {@link CandidateSessionPurgeReport}.
+ * (As in {@link DataDeletionService}, failure to delete filesystem data is logged rather than
+ * treated as an error.)
+ * <p>
+ * These methods MUST NOT be called within an existing transaction, as the chunk transactions
+ * need to commit independently.
+ * <p>
+ * This is NO authorisation at this level.
+ *
+ * @see DataDeletionService
+ *
+ * @author David McKain
+ */
+@Service
+@Transactional(propagation=Propagation.NEVER)
+public class CandidateSessionPurgeService {
+
+    private static final Logger logger = LoggerFactory.getLogger(CandidateSessionPurgeService.class);
+
+    @Resource
+    private QtiWorksDeploymentSettings qtiWorksDeploymentSettings;
+
+    @Resource
+    private DataDeletionService dataDeletionService;
+
+    @Resource
+    private FilespaceManager filespaceManager;
+
+    @Resource
+    private CandidateSessionDao candidateSessionDao;
+
+    private ExecutorService filesystemDeletionExecutor;
+
+    @PostConstruct
+    public void init() {
+        final int threadCount = Math.max(1, qtiWorksDeploymentSettings.getPurgeFilesystemThreads());
+        final AtomicInteger threadCounter = new AtomicInteger();
+        filesystemDeletionExecutor = Executors.newFixedThreadPool(threadCount, new ThreadFactory() {
+            @Override
+            public Thread newThread(final Runnable runnable) {
+                final Thread thread = new Thread(runnable, "CandidateSessionPurge-" + threadCounter.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    @PreDestroy
+    public void destroy() {
+        filesystemDeletionExecutor.shutdown();
+    }
+
+    //-------------------------------------------------
+
+    /**
+     * Purges all {@link CandidateSession}s created before the given time.
+     */
+    public CandidateSessionPurgeReport purgeCandidateSessionsCreatedBefore(final Date creationTime) {
+        Assert.notNull(creationTime, "creationTime");
+        logger.info("Purging CandidateSessions created before {}", creationTime);
+        return purge(new PurgeChunkSource() {
+            @Override
+            public List<CandidateSession> getNextChunk(final long afterXid, final int chunkSize) {
+                return candidateSessionDao.getPurgeChunkCreatedBefore(creationTime, afterXid, chunkSize);
+            }
+        });
+    }
+
+    /**
+     * Purges all {@link CandidateSession}s launched on the given {@link Delivery}.
+     */
+    public CandidateSessionPurgeReport purgeCandidateSessions(final Delivery delivery) {
+        Assert.notNull(delivery, "delivery");
+        logger.info("Purging CandidateSessions for Delivery {}", delivery.getId());
+        return purge(new PurgeChunkSource() {
+            @Override
+            public List<CandidateSession> getNextChunk(final long afterXid, final int chunkSize) {
+                return candidateSessionDao.getPurgeChunkForDelivery(delivery, afterXid, chunkSize);
+            }
+        });
+    }
+
+    /**
+     * Purges all {@link CandidateSession}s launched on Deliveries belonging to the given
+     * {@link LtiContext}, i.e. on its LTI resources or on Assessments it owns.
+     * <p>
+     * This is useful to call before {@link DataDeletionService#deleteLtiContext(LtiContext)}.
+     */
+    public CandidateSessionPurgeReport purgeCandidateSessions(final LtiContext ltiContext) {
+        Assert.notNull(ltiContext, "ltiContext");
+        logger.info("Purging CandidateSessions for LtiContext {}", ltiContext.getId());
+        return purge(new PurgeChunkSource() {
+            @Override
+            public List<CandidateSession> getNextChunk(final long afterXid, final int chunkSize) {
+                return candidateSessionDao.getPurgeChunkForLtiContext(ltiContext, afterXid, chunkSize);
+            }
+        });
+    }
+
+    /**
+     * Purges all {@link CandidateSession}s run by users within the given {@link LtiDomain}.
+     * <p>
+     * This is useful to call before {@link DataDeletionService#deleteLtiDomain(LtiDomain)}.
+     */
+    public CandidateSessionPurgeReport purgeCandidateSessions(final LtiDomain ltiDomain) {
+        Assert.notNull(ltiDomain, "ltiDomain");
+        logger.info("Purging CandidateSessions for LtiDomain {}", ltiDomain.getId());
+        return purge(new PurgeChunkSource() {
+            @Override
+            public List<CandidateSession> getNextChunk(final long afterXid, final int chunkSize) {
+                return candidateSessionDao.getPurgeChunkForLtiDomain(ltiDomain, afterXid, chunkSize);
+            }
+        });
+    }
+
+    //-------------------------------------------------
+
+    /**
+     * Callback used to select the next chunk of {@link CandidateSession}s to purge.
+     * Implementations should return sessions having xids greater than the given value,
+     * in ascending xid order.
+     */
+    private static interface PurgeChunkSource {
+
+        List<CandidateSession> getNextChunk(long afterXid, int chunkSize);
+
+    }
+
+    private CandidateSessionPurgeReport purge(final PurgeChunkSource purgeChunkSource) {
+        final long startTimestamp = System.currentTimeMillis();
+        final int chunkSize = Math.max(1, qtiWorksDeploymentSettings.getPurgeChunkSize());
+        final List<Future<Boolean>> filesystemDeletions = new ArrayList<Future<Boolean>>();
+        long databaseDuration = 0L;
+        int sessionCount = 0;
+        int chunkCount = 0;
+        long afterXid = 0L;
+        while (true) {
+            /* Select next chunk of sessions */
+            final long chunkStartTimestamp = System.currentTimeMillis();
+            final List<CandidateSession> chunk = purgeChunkSource.getNextChunk(afterXid, chunkSize);
+            if (chunk.isEmpty()) {
+                databaseDuration += System.currentTimeMillis() - chunkStartTimestamp;
+                break;
+            }
+
+            /* Delete database data for this chunk within a new transaction */
+            final List<Long> xids = new ArrayList<Long>(chunk.size());
+            for (final CandidateSession candidateSession : chunk) {
+                xids.add(candidateSession.getId());
+            }
+            dataDeletionService.deleteCandidateSessionData(xids);
+            final long chunkDuration = System.currentTimeMillis() - chunkStartTimestamp;
+            databaseDuration += chunkDuration;
+
+            /* Schedule deletion of filesystem data for each session in this chunk */
+            for (final CandidateSession candidateSession : chunk) {
+                filesystemDeletions.add(filesystemDeletionExecutor.submit(new CandidateSessionFilesDeleter(candidateSession)));
+            }
+
+            afterXid = xids.get(xids.size() - 1).longValue();
+            sessionCount += chunk.size();
+            ++chunkCount;
+            logger.debug("Purged chunk of {} CandidateSession(s) ending at xid {} in {}ms",
+                    new Object[] { chunk.size(), afterXid, chunkDuration });
+        }
+
+        /* Wait for filesystem deletions to complete */
+        final int filesystemFailureCount = awaitFilesystemDeletions(filesystemDeletions);
+
+        final long totalDuration = System.currentTimeMillis() - startTimestamp;
+        return new CandidateSessionPurgeReport(sessionCount, chunkCount, filesystemFailureCount,
+                databaseDuration, totalDuration);
+    }
+
+    private int awaitFilesystemDeletions(final List<Future<Boolean>> filesystemDeletions) {
+        int failureCount = 0;
+        for (final Future<Boolean> filesystemDeletion : filesystemDeletions) {
+            try {
+                if (!filesystemDeletion.get().booleanValue()) {
+                    ++failureCount;
+                }
+            }
+            catch (final ExecutionException e) {
+                logger.error("Unexpected Exception deleting CandidateSession filesystem data", e.getCause());
+                ++failureCount;
+            }
+            catch (final InterruptedException e) {
+                logger.warn("Interrupted while waiting for CandidateSession filesystem data to be deleted");
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        return failureCount;
+    }
+
+    /**
+     * Deletes the candidate uploads and stored state for a purged {@link CandidateSession}.
+     */
+    private final class CandidateSessionFilesDeleter implements Callable<Boolean> {
+
+        private final CandidateSession candidateSession;
+
+        public CandidateSessionFilesDeleter(final CandidateSession candidateSession) {
+            this.candidateSession = candidateSession;
+        }
+
+        @Override
+        public Boolean call() {
+            if (candidateSession.getDelivery().getAssessment()==null) {
+                /* (No filesystem data will have been created for this session) */
+                return Boolean.TRUE;
+            }
+            boolean success = true;
+            if (!filespaceManager.deleteCandidateUploads(candidateSession)) {
+                logger.error("Failed to delete upload folder for CandidateSession {}", candidateSession.getId());
+                success = false;
+            }
+            if (!filespaceManager.deleteCandidateSessionStore(candidateSession)) {
+                logger.error("Failed to delete stored session data for CandidateSession {}", candidateSession.getId());
+                success = false;
+            }
+            return Boolean.valueOf(success);
+        }
+    }
+}
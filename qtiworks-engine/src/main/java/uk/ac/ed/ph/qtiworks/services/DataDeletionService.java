@@ -36,6 +36,7 @@ package uk.ac.ed.ph.qtiworks.services;
 import uk.ac.ed.ph.qtiworks.domain.entities.AnonymousUser;
 import uk.ac.ed.ph.qtiworks.domain.entities.Assessment;
 import uk.ac.ed.ph.qtiworks.domain.entities.AssessmentPackage;
+import uk.ac.ed.ph.qtiworks.domain.entities.CandidateFileSubmission;
 import uk.ac.ed.ph.qtiworks.domain.entities.CandidateSession;
 import uk.ac.ed.ph.qtiworks.domain.entities.Delivery;
 import uk.ac.ed.ph.qtiworks.domain.entities.DeliverySettings;
@@ -67,6 +68,7 @@ import uk.ac.ed.ph.qtiworks.services.domain.AssessmentAndPackage;
 
 import uk.ac.ed.ph.jqtiplus.internal.util.Assert;
 
+import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
 
@@ -102,12 +104,18 @@ public class DataDeletionService {
 
     private static final Logger logger = LoggerFactory.getLogger(DataDeletionService.class);
 
+    /** Maximum number of CandidateSessions to delete at once when tidying up within other deletions */
+    private static final int CANDIDATE_SESSION_CHUNK_SIZE = 500;
+
     @Resource
     private FilespaceManager filespaceManager;
 
     @Resource
     private AssessmentObjectManagementService assessmentObjectManagementService;
 
+    @Resource
+    private TemplateInstancePoolService templateInstancePoolService;
+
     @Resource
     private AssessmentDao assessmentDao;
 
@@ -170,16 +178,13 @@ public class DataDeletionService {
         logger.info("Deleting candidate session {}", candidateSession.getId());
 
         /* Delete candidate file uploads & stored state information */
-        if (!filespaceManager.deleteCandidateUploads(candidateSession)) {
-            logger.error("Failed to delete upload folder for CandidateSession {}", candidateSession.getId());
-        }
-        if (!filespaceManager.deleteCandidateSessionStore(candidateSession)) {
-            logger.error("Failed to delete stored session data for CandidateSession {}", candidateSession.getId());
-        }
+        deleteCandidateSessionFiles(candidateSession);
 
         /* Delete entities, taking care to do things in the right order.
          * This does not use cascading as it's rather slow.
          */
+        final List<String> uploadDigests = candidateFileSubmissionDao.getContentDigestsForCandidateSession(candidateSession);
+        filespaceManager.lockContentDigests(uploadDigests);
         queuedLtiOutcomeDao.deleteForCandidateSession(candidateSession);
         candidateSessionOutcomeDao.deleteForCandidateSession(candidateSession);
         candidateResponseDao.deleteForCandidateSession(candidateSession);
@@ -187,17 +192,72 @@ public class DataDeletionService {
         candidateEventNotificationDao.deleteForCandidateSession(candidateSession);
         candidateEventDao.deleteForCandidateSession(candidateSession);
         candidateSessionDao.remove(candidateSession);
+
+        /* Delete any shared file uploads that are no longer used */
+        deleteUnusedCandidateUploadBlobs(uploadDigests);
     }
 
-    public int deleteCandidateSessionsCreatedBefore(final Date creationTime) {
-        Assert.notNull(creationTime, "creationTime");
-        logger.info("Deleting CandidateSession created before {}", creationTime);
+    /**
+     * Deletes the database data for the {@link CandidateSession}s having the given xids using
+     * a small number of bulk deletions, performed in a new transaction.
+     * <p>
+     * This does NOT delete any filesystem data for these sessions. This is used by the
+     * {@link CandidateSessionPurgeService}, which handles filesystem deletion itself.
+     *
+     * @return number of {@link CandidateSession}s deleted
+     */
+    @Transactional(propagation=Propagation.REQUIRES_NEW)
+    public int deleteCandidateSessionData(final List<Long> xids) {
+        Assert.notNull(xids, "xids");
+        if (xids.isEmpty()) {
+            return 0;
+        }
+        return doDeleteCandidateSessionData(xids);
+    }
 
-        final List<CandidateSession> toDelete = candidateSessionDao.getCreatedBefore(creationTime);
-        for (final CandidateSession candidateSession: toDelete) {
-            deleteCandidateSession(candidateSession);
+    private int doDeleteCandidateSessionData(final List<Long> xids) {
+        /* Delete entities, taking care to do things in the right order. */
+        final List<String> uploadDigests = candidateFileSubmissionDao.getContentDigestsForCandidateSessionXids(xids);
+        filespaceManager.lockContentDigests(uploadDigests);
+        queuedLtiOutcomeDao.deleteForCandidateSessionXids(xids);
+        candidateSessionOutcomeDao.deleteForCandidateSessionXids(xids);
+        candidateResponseDao.deleteForCandidateSessionXids(xids);
+        candidateFileSubmissionDao.deleteForCandidateSessionXids(xids);
+        candidateEventNotificationDao.deleteForCandidateSessionXids(xids);
+        candidateEventDao.deleteForCandidateSessionXids(xids);
+        final int deletedCount = candidateSessionDao.deleteForXids(xids);
+
+        /* Delete any shared file uploads that are no longer used */
+        deleteUnusedCandidateUploadBlobs(uploadDigests);
+        return deletedCount;
+    }
+
+    /**
+     * Deletes the content-addressed candidate uploads having the given digests that are
+     * no longer referenced by any {@link CandidateFileSubmission}. Callers must have
+     * locked these digests before deleting their own submissions.
+     */
+    private void deleteUnusedCandidateUploadBlobs(final List<String> contentDigests) {
+        for (final String contentDigest : contentDigests) {
+            if (!candidateFileSubmissionDao.isContentDigestUsed(contentDigest)) {
+                if (!filespaceManager.deleteCandidateUploadBlob(contentDigest)) {
+                    logger.error("Failed to delete candidate upload with digest {}", contentDigest);
+                }
+            }
+        }
+    }
+
+    private void deleteCandidateSessionFiles(final CandidateSession candidateSession) {
+        if (candidateSession.getDelivery().getAssessment()==null) {
+            /* (No filesystem data will have been created for this session) */
+            return;
+        }
+        if (!filespaceManager.deleteCandidateUploads(candidateSession)) {
+            logger.error("Failed to delete upload folder for CandidateSession {}", candidateSession.getId());
+        }
+        if (!filespaceManager.deleteCandidateSessionStore(candidateSession)) {
+            logger.error("Failed to delete stored session data for CandidateSession {}", candidateSession.getId());
         }
-        return toDelete.size();
     }
 
     /**
@@ -221,13 +281,19 @@ public class DataDeletionService {
          * This does not use cascading as it was *very* slow here.
          * Instead, we perform a number of bulk deletions.
          */
+        final List<String> uploadDigests = candidateFileSubmissionDao.getContentDigestsForDelivery(delivery);
+        filespaceManager.lockContentDigests(uploadDigests);
         queuedLtiOutcomeDao.deleteForDelivery(delivery);
         candidateSessionOutcomeDao.deleteForDelivery(delivery);
         candidateResponseDao.deleteForDelivery(delivery);
         candidateFileSubmissionDao.deleteForDelivery(delivery);
         candidateEventNotificationDao.deleteForDelivery(delivery);
         candidateEventDao.deleteForDelivery(delivery);
-        return candidateSessionDao.deleteForDelivery(delivery);
+        final int deletedCount = candidateSessionDao.deleteForDelivery(delivery);
+
+        /* Delete any shared file uploads that are no longer used */
+        deleteUnusedCandidateUploadBlobs(uploadDigests);
+        return deletedCount;
     }
 
     /**
@@ -243,6 +309,9 @@ public class DataDeletionService {
         /* Delete any LTI link candidate users created when launching this Delivery */
         deleteLtiLinkCandidateUsers(delivery);
 
+        /* Discard any pooled template instances for this Delivery */
+        templateInstancePoolService.purge(delivery);
+
         /* Delete entities, taking advantage of cascading */
         deliveryDao.remove(delivery);
     }
@@ -251,8 +320,23 @@ public class DataDeletionService {
         Assert.notNull(assessmentPackage, "assessmentPackage");
         logger.info("Deleting AssessmentPackage {}", assessmentPackage.getId());
 
-        /* Delete package sandbox in filesystem (if appropriate) */
-        if (assessmentPackage.getSandboxPath()!=null) {
+        /* Delete package sandbox in filesystem (if appropriate). Content-addressed sandboxes
+         * are shared by all packages imported from identical data, so are only deleted
+         * along with the last of these packages.
+         */
+        final String contentDigest = assessmentPackage.getContentDigest();
+        if (contentDigest!=null) {
+            filespaceManager.lockContentDigest(contentDigest);
+            if (!assessmentPackageDao.isContentDigestUsedElsewhere(assessmentPackage)) {
+                if (!filespaceManager.deleteAssessmentPackageBlob(contentDigest)) {
+                    logger.error("Failed to delete shared sandbox for AssessmentPackage {}", assessmentPackage.getId());
+                }
+            }
+            else {
+                logger.debug("Sandbox for AssessmentPackage {} is still used by other packages, so keeping it", assessmentPackage.getId());
+            }
+        }
+        else if (assessmentPackage.getSandboxPath()!=null) {
             if (!filespaceManager.deleteAssessmentPackageSandbox(assessmentPackage)) {
                 logger.error("Failed to delete sandbox for AssessmentPackage {}", assessmentPackage.getId());
             }
@@ -358,13 +442,30 @@ public class DataDeletionService {
             deleteLtiContext(ltiContext);
         }
 
-        /* Delete all users created under this domain */
-        final List<LtiUser> ltiUsers = ltiUserDao.getForLtiDomain(ltiDomain);
-        for (final LtiUser ltiUser : ltiUsers) {
-            logger.info("Deleting user {}", ltiUser.getId());
-            ltiUserDao.remove(ltiUser);
+        /* Delete any remaining CandidateSessions run by users in this domain. (These will normally
+         * have been purged already by the CandidateSessionPurgeService, so there should be few or
+         * none left here.)
+         */
+        long afterXid = 0L;
+        while (true) {
+            final List<CandidateSession> candidateSessions = candidateSessionDao.getPurgeChunkForLtiDomain(ltiDomain,
+                    afterXid, CANDIDATE_SESSION_CHUNK_SIZE);
+            if (candidateSessions.isEmpty()) {
+                break;
+            }
+            final List<Long> xids = new ArrayList<Long>(candidateSessions.size());
+            for (final CandidateSession candidateSession : candidateSessions) {
+                deleteCandidateSessionFiles(candidateSession);
+                xids.add(candidateSession.getId());
+            }
+            doDeleteCandidateSessionData(xids);
+            afterXid = xids.get(xids.size() - 1).longValue();
         }
 
+        /* Delete all users created under this domain with a single bulk deletion */
+        final int usersDeletedCount = ltiUserDao.deleteForLtiDomain(ltiDomain);
+        logger.info("Deleted {} users in LtiDomain {}", usersDeletedCount, ltiDomain.getId());
+
         /* Finally delete the entity itself */
         ltiDomainDao.remove(ltiDomain);
     }
@@ -47,7 +47,14 @@ import uk.ac.ed.ph.jqtiplus.internal.util.Assert;
 import java.io.File;
 import java.net.URI;
 import java.text.SimpleDateFormat;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.Date;
+import java.util.SortedSet;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.regex.Pattern;
 
 import javax.annotation.PostConstruct;
 import javax.annotation.Resource;
@@ -55,6 +62,8 @@ import javax.annotation.Resource;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
 /**
  * Service to manage the creation and deletion of filespaces/sandboxes
@@ -69,6 +78,15 @@ public final class FilespaceManager {
 
     private static final Logger logger = LoggerFactory.getLogger(FilespaceManager.class);
 
+    /** Hex-encoded SHA-256 digests, used as the keys for content-addressed storage */
+    private static final Pattern CONTENT_DIGEST_PATTERN = Pattern.compile("[0-9a-f]{64}");
+
+    /** Number of locks that content digests are spread over */
+    private static final int CONTENT_DIGEST_LOCK_COUNT = 64;
+
+    /** Maximum time to wait for a content digest lock, in milliseconds */
+    private static final long CONTENT_DIGEST_LOCK_TIMEOUT_MILLIS = 30000L;
+
     @Resource
     private QtiWorksDeploymentSettings qtiWorksDeploymentSettings;
 
@@ -77,6 +95,16 @@ public final class FilespaceManager {
 
     private String filesystemBaseUri;
 
+    /** Striped locks guarding content-addressed data (see {@link #lockContentDigests(Collection)}) */
+    private final ReentrantLock[] contentDigestLocks;
+
+    public FilespaceManager() {
+        this.contentDigestLocks = new ReentrantLock[CONTENT_DIGEST_LOCK_COUNT];
+        for (int i=0; i<CONTENT_DIGEST_LOCK_COUNT; i++) {
+            contentDigestLocks[i] = new ReentrantLock();
+        }
+    }
+
     @PostConstruct
     public void init() {
         final String filesystemBaseString = qtiWorksDeploymentSettings.getFilesystemBase();
@@ -108,6 +136,9 @@ public final class FilespaceManager {
         if (assessmentPackage.getSandboxPath()==null) {
             throw new IllegalStateException("Built-in AssessmentPackages may not be deleted");
         }
+        if (assessmentPackage.getContentDigest()!=null) {
+            throw new IllegalStateException("Content-addressed AssessmentPackage sandboxes must be deleted via deleteAssessmentPackageBlob()");
+        }
         return deleteAssessmentPackageSandbox(new File(assessmentPackage.getSandboxPath()));
     }
 
@@ -137,6 +168,32 @@ public final class FilespaceManager {
 
     //-------------------------------------------------
 
+    /**
+     * Returns the File used to store the processing snapshot of the given (persisted)
+     * {@link AssessmentPackage}. This will not exist if no snapshot has been saved.
+     */
+    public File getAssessmentPackageSnapshotFile(final AssessmentPackage assessmentPackage) {
+        Assert.notNull(assessmentPackage, "assessmentPackage");
+        Assert.notNull(assessmentPackage.getId(), "assessmentPackage.id");
+        final File snapshotFolder = ensureCreateDirectory(getAssessmentPackageSnapshotBaseUri());
+        return new File(snapshotFolder, "package" + assessmentPackage.getId());
+    }
+
+    public boolean deleteAssessmentPackageSnapshot(final AssessmentPackage assessmentPackage) {
+        final File snapshotFile = getAssessmentPackageSnapshotFile(assessmentPackage);
+        return !snapshotFile.exists() || snapshotFile.delete();
+    }
+
+    public boolean deleteAllAssessmentPackageSnapshots() {
+        return recursivelyDeleteDirectory(getAssessmentPackageSnapshotBaseUri());
+    }
+
+    private String getAssessmentPackageSnapshotBaseUri() {
+        return filesystemBaseUri + "/snapshots";
+    }
+
+    //-------------------------------------------------
+
     public File createCandidateUploadFile(final CandidateSession candidateSession) {
         Assert.notNull(candidateSession, "candidateSession");
         final String uploadBaseUri = getCandidateSessionUploadBaseUri(candidateSession);
@@ -180,6 +237,176 @@ public final class FilespaceManager {
                 + "/session" + candidateSession.getId();
     }
 
+    //-------------------------------------------------
+    // Content-addressed storage
+
+    /**
+     * Locks the content-addressed data having the given hex-encoded SHA-256 digest until the
+     * current transaction completes.
+     *
+     * @see #lockContentDigests(Collection)
+     */
+    public void lockContentDigest(final String contentDigest) {
+        Assert.notNull(contentDigest, "contentDigest");
+        lockContentDigests(Collections.singleton(contentDigest));
+    }
+
+    /**
+     * Locks the content-addressed data having the given hex-encoded SHA-256 digests until the
+     * current transaction completes, which must be called from within a transaction.
+     * <p>
+     * Callers must do this before deciding whether to reuse a blob and then recording a new
+     * reference to it, and before deciding whether a blob is unused and then deleting it. As
+     * the lock is only released once the new reference has been committed, this stops a
+     * blob from being deleted just as somebody else starts using it.
+     * <p>
+     * Digests are mapped onto a fixed number of (striped) locks, so unrelated digests will
+     * occasionally wait for each other. The locks needed by each call are acquired in a fixed
+     * order, and we give up after a timeout rather than waiting forever.
+     *
+     * @throws QtiWorksRuntimeException if the locks could not be acquired within a reasonable time
+     */
+    public void lockContentDigests(final Collection<String> contentDigests) {
+        Assert.notNull(contentDigests, "contentDigests");
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            throw new QtiWorksLogicException("Content-addressed data must be locked within a transaction");
+        }
+        final SortedSet<Integer> lockIndices = new TreeSet<Integer>();
+        for (final String contentDigest : contentDigests) {
+            lockIndices.add(Integer.valueOf((contentDigest.hashCode() & Integer.MAX_VALUE) % contentDigestLocks.length));
+        }
+        final long deadline = System.currentTimeMillis() + CONTENT_DIGEST_LOCK_TIMEOUT_MILLIS;
+        for (final Integer lockIndex : lockIndices) {
+            final ReentrantLock lock = contentDigestLocks[lockIndex.intValue()];
+            boolean locked = false;
+            try {
+                locked = lock.tryLock(Math.max(0L, deadline - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+            }
+            catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            if (!locked) {
+                /* (Any locks we have already acquired will be released with the transaction) */
+                throw new QtiWorksRuntimeException("Timed out waiting for lock on content-addressed data");
+            }
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+                @Override
+                public void afterCompletion(final int status) {
+                    lock.unlock();
+                }
+            });
+        }
+    }
+
+    /**
+     * Moves the given (successfully imported) {@link AssessmentPackage} sandbox into the
+     * content-addressed store, under the given hex-encoded SHA-256 digest of the data it was
+     * imported from, returning the resulting shared sandbox directory.
+     * <p>
+     * If the store already contains a sandbox for this digest then the given sandbox is
+     * deleted and the existing one is returned instead.
+     */
+    public File storeAssessmentPackageBlob(final File sandboxDirectory, final String contentDigest) {
+        Assert.notNull(sandboxDirectory, "sandboxDirectory");
+        final File blobDirectory = getAssessmentPackageBlobDirectory(contentDigest);
+        if (!blobDirectory.exists()) {
+            ServiceUtilities.ensureDirectoryCreated(blobDirectory.getParentFile());
+            if (sandboxDirectory.renameTo(blobDirectory)) {
+                logger.debug("Stored new AssessmentPackage blob {}", blobDirectory);
+                return blobDirectory;
+            }
+            if (!blobDirectory.isDirectory()) {
+                throw new QtiWorksRuntimeException("Could not move AssessmentPackage sandbox " + sandboxDirectory
+                        + " to " + blobDirectory);
+            }
+            /* (Otherwise somebody else stored identical data at the same time) */
+        }
+        logger.debug("AssessmentPackage blob {} already exists, so discarding sandbox {}", blobDirectory, sandboxDirectory);
+        recursivelyDeleteDirectory(sandboxDirectory);
+        return blobDirectory;
+    }
+
+    /**
+     * Returns the shared sandbox directory for {@link AssessmentPackage}s imported from data
+     * having the given hex-encoded SHA-256 digest. This will not exist if no such data
+     * has been stored.
+     */
+    public File getAssessmentPackageBlobDirectory(final String contentDigest) {
+        return fileUriToFile(getBlobUri(getAssessmentPackageBlobBaseUri(), contentDigest));
+    }
+
+    public boolean deleteAssessmentPackageBlob(final String contentDigest) {
+        return recursivelyDeleteDirectory(getAssessmentPackageBlobDirectory(contentDigest));
+    }
+
+    /**
+     * Moves the given file containing submitted candidate data into the content-addressed
+     * store, under the given hex-encoded SHA-256 digest of its contents, returning the
+     * resulting shared file.
+     * <p>
+     * If the store already contains a file for this digest then the given file is deleted
+     * and the existing one is returned instead.
+     */
+    public File storeCandidateUploadBlob(final File uploadFile, final String contentDigest) {
+        Assert.notNull(uploadFile, "uploadFile");
+        final File blobFile = getCandidateUploadBlobFile(contentDigest);
+        if (!blobFile.exists()) {
+            ServiceUtilities.ensureDirectoryCreated(blobFile.getParentFile());
+            if (uploadFile.renameTo(blobFile)) {
+                return blobFile;
+            }
+            if (!blobFile.isFile()) {
+                throw new QtiWorksRuntimeException("Could not move candidate upload " + uploadFile
+                        + " to " + blobFile);
+            }
+        }
+        if (!uploadFile.delete()) {
+            logger.warn("Could not delete duplicate candidate upload {}", uploadFile);
+        }
+        return blobFile;
+    }
+
+    /**
+     * Returns the shared file used to store submitted candidate data having the given
+     * hex-encoded SHA-256 digest. This will not exist if no such data has been stored.
+     */
+    public File getCandidateUploadBlobFile(final String contentDigest) {
+        return fileUriToFile(getBlobUri(getCandidateUploadBlobBaseUri(), contentDigest));
+    }
+
+    public boolean deleteCandidateUploadBlob(final String contentDigest) {
+        final File blobFile = getCandidateUploadBlobFile(contentDigest);
+        return !blobFile.exists() || blobFile.delete();
+    }
+
+    public boolean deleteAllBlobs() {
+        return recursivelyDeleteDirectory(getBlobBaseUri());
+    }
+
+    private String getBlobBaseUri() {
+        return filesystemBaseUri + "/blobs";
+    }
+
+    private String getAssessmentPackageBlobBaseUri() {
+        return getBlobBaseUri() + "/assessments";
+    }
+
+    private String getCandidateUploadBlobBaseUri() {
+        return getBlobBaseUri() + "/responses";
+    }
+
+    /**
+     * Blobs are spread over subdirectories named after the first 2 characters of their
+     * digests, to keep the size of each directory manageable.
+     */
+    private String getBlobUri(final String blobBaseUri, final String contentDigest) {
+        Assert.notNull(contentDigest, "contentDigest");
+        if (!CONTENT_DIGEST_PATTERN.matcher(contentDigest).matches()) {
+            throw new QtiWorksLogicException("Content digest " + contentDigest + " is not a hex-encoded SHA-256 digest");
+        }
+        return blobBaseUri + "/" + contentDigest.substring(0, 2) + "/" + contentDigest;
+    }
+
     //-------------------------------------------------
 
     public File obtainCandidateSessionStateStore(final CandidateSession candidateSession) {
@@ -232,8 +459,10 @@ public final class FilespaceManager {
      */
     public void deleteAllUserData() {
         deleteAllAssessmentPackages();
+        deleteAllAssessmentPackageSnapshots();
         deleteAllCandidateSessionData();
         deleteAllCandidateUploads();
+        deleteAllBlobs();
     }
 
     //-------------------------------------------------
@@ -248,6 +477,7 @@ public final class FilespaceManager {
         deletedCount = purgeStoreDirectoryIfEmpty(fileUriToFile(getCandidateSessionStoreBaseUri()));
         deletedCount += purgeStoreDirectoryIfEmpty(fileUriToFile(getCandidateUploadBaseUri()));
         deletedCount += purgeStoreDirectoryIfEmpty(fileUriToFile(getAssessmentPackageSandboxBaseUri()));
+        deletedCount += purgeStoreDirectoryIfEmpty(fileUriToFile(getBlobBaseUri()));
         return deletedCount;
     }
 
@@ -45,6 +45,8 @@ import uk.ac.ed.ph.qtiworks.domain.entities.User;
 import uk.ac.ed.ph.qtiworks.domain.entities.UserType;
 import uk.ac.ed.ph.qtiworks.services.dao.CandidateSessionDao;
 import uk.ac.ed.ph.qtiworks.services.dao.QueuedLtiOutcomeDao;
+import uk.ac.ed.ph.qtiworks.services.metrics.MetricsRegistry;
+import uk.ac.ed.ph.qtiworks.services.metrics.Timer;
 
 import uk.ac.ed.ph.jqtiplus.internal.util.Assert;
 import uk.ac.ed.ph.jqtiplus.internal.util.Pair;
@@ -90,6 +92,9 @@ public class LtiOutcomeService {
     @Resource
     private QueuedLtiOutcomeDao queuedLtiOutcomeDao;
 
+    @Resource
+    private MetricsRegistry metricsRegistry;
+
     /**
      * Delays (in minutes) to wait until next retry. We try often to start with, then
      * less frequently. Then we give up.
@@ -197,6 +202,7 @@ public class LtiOutcomeService {
         final CandidateSession candidateSession = queuedLtiOutcome.getCandidateSession();
         final User candidate = candidateSession.getCandidate();
         final boolean successful = trySendQueuedLtiOutcome(queuedLtiOutcome);
+        metricsRegistry.counter(successful ? "lti.outcome.success" : "lti.outcome.failure").increment();
         if (successful) {
             /* Outcome sent successfully, so remove from queue */
             candidateSession.setLisOutcomeReportingStatus(LisOutcomeReportingStatus.TC_RETURN_SUCCESS);
@@ -273,7 +279,14 @@ public class LtiOutcomeService {
         }
 
         /* Now send the result */
-        return LtiOauthUtilities.sendLisResult(lisOutcomeServiceUrl, lisResultSourcedid,
-                ltiConsumerKey, ltiConsumerSecret, normalizedScore);
+        final Timer timer = metricsRegistry.timer("lti.outcome.send");
+        final long startTime = timer.start();
+        try {
+            return LtiOauthUtilities.sendLisResult(lisOutcomeServiceUrl, lisResultSourcedid,
+                    ltiConsumerKey, ltiConsumerSecret, normalizedScore);
+        }
+        finally {
+            timer.stop(startTime);
+        }
     }
 }
@@ -35,6 +35,7 @@ package uk.ac.ed.ph.qtiworks.services;
 
 import uk.ac.ed.ph.qtiworks.config.beans.QtiWorksDeploymentSettings;
 import uk.ac.ed.ph.qtiworks.domain.DomainConstants;
+import uk.ac.ed.ph.qtiworks.services.domain.CandidateSessionPurgeReport;
 
 import java.util.Date;
 
@@ -65,6 +66,9 @@ public class MaintenanceJobService {
     @Resource
     private DataDeletionService dataDeletionService;
 
+    @Resource
+    private CandidateSessionPurgeService candidateSessionPurgeService;
+
     @Resource
     private FilespaceManager filespaceManager;
 
@@ -95,9 +99,15 @@ public class MaintenanceJobService {
             return;
         }
         final Date creationTimeThreshold = new Date(currentTimestamp - DomainConstants.ONE_DAY * maxCandidateSessionAge);
-        final int deletedCount = dataDeletionService.deleteCandidateSessionsCreatedBefore(creationTimeThreshold);
-        if (deletedCount > 0) {
-            logger.info("Purged {} candidate sessions older than {} days", deletedCount, maxCandidateSessionAge);
+        final CandidateSessionPurgeReport purgeReport = candidateSessionPurgeService.purgeCandidateSessionsCreatedBefore(creationTimeThreshold);
+        if (purgeReport.getSessionCount() > 0) {
+            logger.info("Purged {} candidate sessions older than {} days in {} chunk(s) taking {}ms ({}ms in database, {} sessions/s)",
+                    new Object[] { purgeReport.getSessionCount(), maxCandidateSessionAge, purgeReport.getChunkCount(),
+                        purgeReport.getTotalDuration(), purgeReport.getDatabaseDuration(),
+                        String.format("%.1f", purgeReport.getSessionsPerSecond()) });
+        }
+        if (purgeReport.getFilesystemFailureCount() > 0) {
+            logger.warn("Failed to delete filesystem data for {} purged candidate sessions", purgeReport.getFilesystemFailureCount());
         }
     }
 
@@ -0,0 +1,195 @@
+/* Copyright (c) 2012-2013, University of Edinburgh.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice, this
+ *   list of conditions and the following disclaimer in the documentation and/or
+ *   other materials provided with the distribution.
+ *
+ * * Neither the name of the University of Edinburgh nor the names of its
+ *   contributors may be used to endorse or promote products derived from this
+ *   software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ *
+ * This software is derived from (and contains code from) QTITools and MathAssessEngine.
+ * QTITools is (c) 2008, University of Southampton.
+ * MathAssessEngine is (c) 2010, University of Edinburgh.
+ */
+package uk.ac.ed.ph.qtiworks.services;
+
+import uk.ac.ed.ph.qtiworks.config.beans.QtiWorksDeploymentSettings;
+import uk.ac.ed.ph.qtiworks.services.candidate.CandidateRenderingService;
+
+import uk.ac.ed.ph.jqtiplus.internal.util.Assert;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map.Entry;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.Resource;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+
+/**
+ * Middle layer service caching the results of rendering candidate views that can never
+ * change once produced (e.g. feedback for ended items, solutions, item review, terminated
+ * sessions). These are keyed on a fingerprint computed by the {@link CandidateRenderingService},
+ * which identifies the underlying candidate event, rendering mode and rendering options.
+ * <p>
+ * The cache is bounded by the total size of the cached data, set by
+ * {@link QtiWorksDeploymentSettings#getRenderingResultCacheSize()} (in KB), with least
+ * recently used results being evicted first. A size of 0 disables caching.
+ * <p>
+ * This is NO authorisation at this level.
+ *
+ * @author David McKain
+ */
+@Service
+public class RenderingResultCache {
+
+    private static final Logger logger = LoggerFactory.getLogger(RenderingResultCache.class);
+
+    @Resource
+    private QtiWorksDeploymentSettings qtiWorksDeploymentSettings;
+
+    /** Cached results, in access order */
+    private final LinkedHashMap<String, CachedRendering> resultMap;
+    private long maxBytes;
+    private long currentBytes;
+    private int hitCount;
+    private int missCount;
+    private int evictionCount;
+
+    public RenderingResultCache() {
+        this.resultMap = new LinkedHashMap<String, CachedRendering>(16, 0.75f, true);
+    }
+
+    @PostConstruct
+    public void init() {
+        maxBytes = 1024L * qtiWorksDeploymentSettings.getRenderingResultCacheSize();
+        if (maxBytes > 0) {
+            logger.info("Caching results of immutable renderings, up to {} bytes", maxBytes);
+        }
+    }
+
+    public boolean isEnabled() {
+        return maxBytes > 0;
+    }
+
+    //-------------------------------------------------
+
+    /**
+     * Returns the cached rendering having the given key, or null if there is no such rendering
+     * or if caching is disabled.
+     */
+    public synchronized CachedRendering getRendering(final String key) {
+        Assert.notNull(key, "key");
+        final CachedRendering result = resultMap.get(key);
+        if (result!=null) {
+            hitCount++;
+        }
+        else {
+            missCount++;
+        }
+        return result;
+    }
+
+    /**
+     * Stores the given rendering in the cache (if enabled), evicting the least recently
+     * used results as required to keep within the configured size. Renderings that are
+     * larger than the whole cache are not stored.
+     */
+    public synchronized void putRendering(final String key, final CachedRendering rendering) {
+        Assert.notNull(key, "key");
+        Assert.notNull(rendering, "rendering");
+        final long size = rendering.getData().length;
+        if (!isEnabled() || size > maxBytes) {
+            return;
+        }
+        final CachedRendering previous = resultMap.put(key, rendering);
+        if (previous!=null) {
+            currentBytes -= previous.getData().length;
+        }
+        currentBytes += size;
+        final Iterator<Entry<String, CachedRendering>> iterator = resultMap.entrySet().iterator();
+        while (currentBytes > maxBytes && iterator.hasNext()) {
+            final Entry<String, CachedRendering> eldest = iterator.next();
+            currentBytes -= eldest.getValue().getData().length;
+            iterator.remove();
+            evictionCount++;
+        }
+    }
+
+    public synchronized void clear() {
+        resultMap.clear();
+        currentBytes = 0;
+    }
+
+    public synchronized int size() {
+        return resultMap.size();
+    }
+
+    public synchronized long getCurrentBytes() {
+        return currentBytes;
+    }
+
+    public synchronized int getHitCount() {
+        return hitCount;
+    }
+
+    public synchronized int getMissCount() {
+        return missCount;
+    }
+
+    public synchronized int getEvictionCount() {
+        return evictionCount;
+    }
+
+    //-------------------------------------------------
+
+    /**
+     * Encapsulates a cached rendering result.
+     */
+    public static final class CachedRendering {
+
+        private final String contentType;
+        private final byte[] data;
+
+        public CachedRendering(final String contentType, final byte[] data) {
+            Assert.notNull(contentType, "contentType");
+            Assert.notNull(data, "data");
+            this.contentType = contentType;
+            this.data = data;
+        }
+
+        public String getContentType() {
+            return contentType;
+        }
+
+        /**
+         * Returns the rendered data. Callers must not modify this.
+         */
+        public byte[] getData() {
+            return data;
+        }
+    }
+}
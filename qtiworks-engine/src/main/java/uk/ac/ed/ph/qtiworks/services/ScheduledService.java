@@ -34,15 +34,24 @@
 package uk.ac.ed.ph.qtiworks.services;
 
 import uk.ac.ed.ph.qtiworks.config.QtiWorksProfiles;
+import uk.ac.ed.ph.qtiworks.config.beans.QtiWorksDeploymentSettings;
 import uk.ac.ed.ph.qtiworks.domain.DomainConstants;
 
 import uk.ac.ed.ph.jqtiplus.internal.util.Pair;
 
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+import javax.annotation.PreDestroy;
 import javax.annotation.Resource;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.context.ApplicationContext;
+import org.springframework.context.ApplicationListener;
 import org.springframework.context.annotation.Profile;
+import org.springframework.context.event.ContextRefreshedEvent;
 import org.springframework.scheduling.annotation.EnableScheduling;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
@@ -50,6 +59,9 @@ import org.springframework.stereotype.Service;
 /**
  * Houses all scheduled tasks performed within the QTIWorks engine.
  * <p>
+ * This also kicks off the one-off preloading of open deliveries once the application
+ * context has started, if enabled.
+ * <p>
  * This is NO authorisation at this level.
  *
  * @author David McKain
@@ -57,7 +69,7 @@ import org.springframework.stereotype.Service;
 @Service
 @EnableScheduling
 @Profile(QtiWorksProfiles.WEBAPP)
-public class ScheduledService {
+public class ScheduledService implements ApplicationListener<ContextRefreshedEvent> {
 
     private static final Logger logger = LoggerFactory.getLogger(ScheduledService.class);
 
@@ -70,8 +82,72 @@ public class ScheduledService {
     @Resource
     private LtiOutcomeService ltiOutcomeService;
 
+    @Resource
+    private AssessmentObjectManagementService assessmentObjectManagementService;
+
+    @Resource
+    private QtiWorksDeploymentSettings qtiWorksDeploymentSettings;
+
+    @Resource
+    private ApplicationContext applicationContext;
+
+    /** Runs the preload, if enabled. Created when our context has been refreshed */
+    private ExecutorService preloadExecutor;
+
+    @PreDestroy
+    public void destroy() {
+        if (preloadExecutor!=null) {
+            preloadExecutor.shutdownNow();
+        }
+    }
+
     //-------------------------------------------------
 
+    /**
+     * Hands off preloading of the assessments used by open deliveries to a background thread
+     * once our application context has been refreshed, if enabled. (This runs only once.)
+     */
+    @Override
+    public synchronized void onApplicationEvent(final ContextRefreshedEvent event) {
+        /* (Ignore events from child contexts, e.g. the dispatcher servlets) */
+        if (event.getApplicationContext()!=applicationContext
+                || !qtiWorksDeploymentSettings.isSnapshotPreloadEnabled()
+                || preloadExecutor!=null) {
+            return;
+        }
+        preloadExecutor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(final Runnable runnable) {
+                final Thread thread = new Thread(runnable, "OpenDeliveryPreloader");
+                thread.setDaemon(true);
+                thread.setPriority(Thread.MIN_PRIORITY);
+                return thread;
+            }
+        });
+        preloadExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                preloadOpenDeliveries();
+            }
+        });
+        preloadExecutor.shutdown();
+    }
+
+    /**
+     * Preloads the assessments used by open deliveries.
+     */
+    public void preloadOpenDeliveries() {
+        final long beforeTimestamp = System.currentTimeMillis();
+        try {
+            final int preloadCount = assessmentObjectManagementService.preloadOpenDeliveries();
+            final long duration = System.currentTimeMillis() - beforeTimestamp;
+            logger.info("Preloaded {} assessment(s) used by open deliveries in {}ms", preloadCount, duration);
+        }
+        catch (final RuntimeException e) {
+            logger.warn("Failed to preload assessments used by open deliveries", e);
+        }
+    }
+
     /**
      * Invoke routine maintenance jobs
      */
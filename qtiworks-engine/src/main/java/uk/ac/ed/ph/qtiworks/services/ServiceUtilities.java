@@ -41,7 +41,6 @@ import uk.ac.ed.ph.jqtiplus.internal.util.Assert;
 
 import java.io.Closeable;
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
@@ -57,6 +56,7 @@ import org.springframework.web.multipart.MultipartFile;
 
 import com.google.common.base.Charsets;
 import com.google.common.hash.Hashing;
+import com.google.common.io.ByteSource;
 import com.google.common.io.ByteStreams;
 
 /**
@@ -128,6 +128,24 @@ public final class ServiceUtilities {
         return Hashing.sha1().hashString(string, Charsets.UTF_8).toString();
     }
 
+    /**
+     * Computes a hex-encoded SHA-256 digest of the data within the given {@link MultipartFile}
+     */
+    public static String computeSha256Digest(final MultipartFile multipartFile) {
+        final ByteSource byteSource = new ByteSource() {
+            @Override
+            public InputStream openStream() throws IOException {
+                return multipartFile.getInputStream();
+            }
+        };
+        try {
+            return byteSource.hash(Hashing.sha256()).toString();
+        }
+        catch (final IOException e) {
+            throw new QtiWorksRuntimeException("Unexpected Exception computing digest of MultipartFile", e);
+        }
+    }
+
     public static String createSalt() {
         final char[] saltBuilder = new char[DomainConstants.USER_PASSWORD_SALT_LENGTH];
         final Random random = new Random(System.currentTimeMillis());
@@ -296,14 +314,6 @@ public final class ServiceUtilities {
     public static void streamFile(final File file, final String contentType,
             final Date lastModifiedTime, final OutputStreamer outputStreamer)
             throws IOException {
-        final long contentLength = file.length();
-        FileInputStream fileInputStream = null;
-        try {
-            fileInputStream = new FileInputStream(file);
-            outputStreamer.stream(contentType, contentLength, lastModifiedTime, fileInputStream);
-        }
-        finally {
-            ensureClose(fileInputStream);
-        }
+        outputStreamer.streamFile(contentType, file, lastModifiedTime);
     }
 }
@@ -33,9 +33,9 @@
  */
 package uk.ac.ed.ph.qtiworks.services;
 
-import uk.ac.ed.ph.qtiworks.domain.entities.AssessmentPackage;
 import uk.ac.ed.ph.qtiworks.domain.entities.User;
 import uk.ac.ed.ph.qtiworks.services.domain.AssessmentPackageDataImportException;
+import uk.ac.ed.ph.qtiworks.services.domain.ImportedAssessmentPackage;
 
 import uk.ac.ed.ph.jqtiplus.internal.util.Assert;
 import uk.ac.ed.ph.jqtiplus.validation.AssessmentObjectValidationResult;
@@ -69,12 +69,8 @@ public class StandaloneValidationService {
             throws AssessmentPackageDataImportException {
         Assert.notNull(multipartFile, "multipartFile");
         final User caller = identityService.assertCurrentThreadUser();
-        final AssessmentPackage temporaryPackage = assessmentPackageFileService.importAssessmentPackage(caller, multipartFile, false);
-        try {
-            return assessmentPackageFileService.loadAndValidateAssessment(temporaryPackage);
-        }
-        finally {
-            filespaceManager.deleteAssessmentPackageSandbox(temporaryPackage);
-        }
+        final ImportedAssessmentPackage importedAssessmentPackage = assessmentPackageFileService.importTransientAssessmentPackage(caller, multipartFile, true);
+        filespaceManager.deleteAssessmentPackageSandbox(importedAssessmentPackage.getAssessmentPackage());
+        return importedAssessmentPackage.getValidationResult();
     }
 }
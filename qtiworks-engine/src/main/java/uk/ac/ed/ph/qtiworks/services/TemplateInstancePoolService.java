@@ -0,0 +1,310 @@
+/* Copyright (c) 2012-2013, University of Edinburgh.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice, this
+ *   list of conditions and the following disclaimer in the documentation and/or
+ *   other materials provided with the distribution.
+ *
+ * * Neither the name of the University of Edinburgh nor the names of its
+ *   contributors may be used to endorse or promote products derived from this
+ *   software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ *
+ * This software is derived from (and contains code from) QTITools and MathAssessEngine.
+ * QTITools is (c) 2008, University of Southampton.
+ * MathAssessEngine is (c) 2010, University of Edinburgh.
+ */
+package uk.ac.ed.ph.qtiworks.services;
+
+import uk.ac.ed.ph.qtiworks.config.beans.QtiWorksDeploymentSettings;
+import uk.ac.ed.ph.qtiworks.domain.entities.Delivery;
+import uk.ac.ed.ph.qtiworks.domain.entities.DeliverySettings;
+import uk.ac.ed.ph.qtiworks.domain.entities.ItemDeliverySettings;
+import uk.ac.ed.ph.qtiworks.utils.LruHashMap;
+
+import uk.ac.ed.ph.jqtiplus.JqtiExtensionManager;
+import uk.ac.ed.ph.jqtiplus.internal.util.Assert;
+import uk.ac.ed.ph.jqtiplus.internal.util.ObjectUtilities;
+import uk.ac.ed.ph.jqtiplus.running.ItemSessionController;
+import uk.ac.ed.ph.jqtiplus.running.ItemSessionControllerSettings;
+import uk.ac.ed.ph.jqtiplus.state.ItemProcessingMap;
+import uk.ac.ed.ph.jqtiplus.state.ItemSessionState;
+import uk.ac.ed.ph.jqtiplus.state.TemplateInstance;
+
+import java.util.Date;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.annotation.Resource;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+
+/**
+ * Middle layer service maintaining per-{@link Delivery} pools of pre-computed
+ * {@link TemplateInstance}s for standalone item deliveries, so that new candidate sessions
+ * can be started without running template processing inline.
+ * <p>
+ * Each pool holds up to {@link QtiWorksDeploymentSettings#getTemplatePoolSize()} instances and is
+ * topped up in the background by {@link QtiWorksDeploymentSettings#getTemplatePoolThreads()}
+ * threads whenever an instance is drawn from it. Pools are tied to the {@link ItemProcessingMap}
+ * and template processing limit used to fill them, so are discarded automatically if either
+ * changes (e.g. when a new package is uploaded or the delivery settings are edited).
+ * <p>
+ * Pooling is disabled when the pool size is 0 (the default), in which case
+ * {@link #drawTemplateInstance(Delivery, ItemSessionController)} always returns null and callers
+ * should perform template processing as normal. Individual deliveries can also opt out of
+ * pooling via {@link ItemDeliverySettings#getAllowTemplatePooling()}.
+ * <p>
+ * This is NO authorisation at this level.
+ *
+ * @author David McKain
+ */
+@Service
+public class TemplateInstancePoolService {
+
+    private static final Logger logger = LoggerFactory.getLogger(TemplateInstancePoolService.class);
+
+    /** Maximum number of {@link Delivery} pools to keep */
+    private static final int MAX_POOLS = 100;
+
+    @Resource
+    private QtiWorksDeploymentSettings qtiWorksDeploymentSettings;
+
+    @Resource
+    private JqtiExtensionManager jqtiExtensionManager;
+
+    private final LruHashMap<Long, TemplateInstancePool> poolMap;
+    private ExecutorService poolFillerExecutor;
+    private int poolSize;
+    private int hitCount;
+    private int missCount;
+
+    public TemplateInstancePoolService() {
+        this.poolMap = new LruHashMap<Long, TemplateInstancePool>();
+        this.poolMap.setMaxSize(MAX_POOLS);
+    }
+
+    @PostConstruct
+    public void init() {
+        poolSize = qtiWorksDeploymentSettings.getTemplatePoolSize();
+        if (poolSize > 0) {
+            final int threadCount = Math.max(1, qtiWorksDeploymentSettings.getTemplatePoolThreads());
+            final AtomicInteger threadCounter = new AtomicInteger();
+            poolFillerExecutor = Executors.newFixedThreadPool(threadCount, new ThreadFactory() {
+                @Override
+                public Thread newThread(final Runnable runnable) {
+                    final Thread thread = new Thread(runnable, "TemplateInstancePool-" + threadCounter.incrementAndGet());
+                    thread.setDaemon(true);
+                    thread.setPriority(Thread.MIN_PRIORITY);
+                    return thread;
+                }
+            });
+            logger.info("Template instance pooling enabled with pool size {} and {} filler threads", poolSize, threadCount);
+        }
+    }
+
+    @PreDestroy
+    public void destroy() {
+        if (poolFillerExecutor!=null) {
+            poolFillerExecutor.shutdownNow();
+        }
+    }
+
+    public boolean isEnabled() {
+        return poolSize > 0;
+    }
+
+    //-------------------------------------------------
+
+    /**
+     * Draws a pre-computed {@link TemplateInstance} for a new session on the given {@link Delivery},
+     * to be used by the given (freshly created) {@link ItemSessionController}, scheduling the
+     * pool to be topped up.
+     * <p>
+     * Returns null if pooling is disabled (globally or for this {@link Delivery}), if the item does
+     * not perform template processing, or if no instance is currently ready. Callers should then
+     * perform template processing as normal.
+     */
+    public TemplateInstance drawTemplateInstance(final Delivery delivery, final ItemSessionController itemSessionController) {
+        Assert.notNull(delivery, "delivery");
+        Assert.notNull(itemSessionController, "itemSessionController");
+        if (!isEnabled() || itemSessionController.getSubjectItem().getTemplateProcessing()==null) {
+            return null;
+        }
+        if (!isPoolingAllowed(delivery)) {
+            /* Drop any pool filled before pooling was turned off for this delivery */
+            purge(delivery);
+            return null;
+        }
+        final ItemProcessingMap itemProcessingMap = itemSessionController.getItemProcessingMap();
+        final ItemSessionControllerSettings itemSessionControllerSettings = itemSessionController.getItemSessionControllerSettings();
+        final Long did = delivery.getId();
+        TemplateInstancePool pool;
+        synchronized (poolMap) {
+            pool = poolMap.get(did);
+            if (pool==null || !pool.isCompatibleWith(itemProcessingMap, itemSessionControllerSettings)) {
+                logger.debug("Creating new template instance pool for delivery #{}", did);
+                pool = new TemplateInstancePool(did, itemProcessingMap, itemSessionControllerSettings);
+                poolMap.put(did, pool);
+            }
+        }
+        final TemplateInstance result = pool.instances.poll();
+        synchronized (poolMap) {
+            if (result!=null) {
+                hitCount++;
+            }
+            else {
+                missCount++;
+            }
+        }
+        scheduleTopUp(pool);
+        return result;
+    }
+
+    /**
+     * Discards any pool held for the given {@link Delivery}.
+     */
+    public void purge(final Delivery delivery) {
+        Assert.notNull(delivery, "delivery");
+        synchronized (poolMap) {
+            if (poolMap.remove(delivery.getId())!=null) {
+                logger.debug("Purged template instance pool for delivery #{}", delivery.getId());
+            }
+        }
+    }
+
+    private static boolean isPoolingAllowed(final Delivery delivery) {
+        final DeliverySettings deliverySettings = delivery.getDeliverySettings();
+        return !(deliverySettings instanceof ItemDeliverySettings
+                && Boolean.FALSE.equals(((ItemDeliverySettings) deliverySettings).getAllowTemplatePooling()));
+    }
+
+    private void scheduleTopUp(final TemplateInstancePool pool) {
+        if (!pool.failed && pool.instances.size() < poolSize && pool.filling.compareAndSet(false, true)) {
+            poolFillerExecutor.execute(new TemplateInstancePoolFiller(pool));
+        }
+    }
+
+    private TemplateInstance generateTemplateInstance(final TemplateInstancePool pool) {
+        final ItemSessionController itemSessionController = new ItemSessionController(jqtiExtensionManager,
+                pool.itemSessionControllerSettings, pool.itemProcessingMap, new ItemSessionState());
+        final Date timestamp = new Date();
+        itemSessionController.initialize(timestamp);
+        itemSessionController.performTemplateProcessing(timestamp);
+        return itemSessionController.captureTemplateInstance();
+    }
+
+    //-------------------------------------------------
+
+    /**
+     * Pool of {@link TemplateInstance}s for a particular {@link Delivery}
+     */
+    private static final class TemplateInstancePool {
+
+        private final Long did;
+        private final ItemProcessingMap itemProcessingMap;
+        private final ItemSessionControllerSettings itemSessionControllerSettings;
+        private final Queue<TemplateInstance> instances;
+        private final AtomicBoolean filling;
+        private volatile boolean failed;
+
+        public TemplateInstancePool(final Long did, final ItemProcessingMap itemProcessingMap,
+                final ItemSessionControllerSettings itemSessionControllerSettings) {
+            this.did = did;
+            this.itemProcessingMap = itemProcessingMap;
+            this.itemSessionControllerSettings = new ItemSessionControllerSettings(itemSessionControllerSettings);
+            this.instances = new ConcurrentLinkedQueue<TemplateInstance>();
+            this.filling = new AtomicBoolean(false);
+            this.failed = false;
+        }
+
+        public boolean isCompatibleWith(final ItemProcessingMap otherItemProcessingMap,
+                final ItemSessionControllerSettings otherItemSessionControllerSettings) {
+            return itemProcessingMap==otherItemProcessingMap
+                    && itemSessionControllerSettings.getTemplateProcessingLimit()==otherItemSessionControllerSettings.getTemplateProcessingLimit();
+        }
+    }
+
+    /**
+     * Background task that fills up a {@link TemplateInstancePool}
+     */
+    private final class TemplateInstancePoolFiller implements Runnable {
+
+        private final TemplateInstancePool pool;
+
+        public TemplateInstancePoolFiller(final TemplateInstancePool pool) {
+            this.pool = pool;
+        }
+
+        @Override
+        public void run() {
+            try {
+                while (pool.instances.size() < poolSize && !Thread.currentThread().isInterrupted()) {
+                    pool.instances.add(generateTemplateInstance(pool));
+                }
+                logger.debug("Topped up template instance pool for delivery #{}", pool.did);
+            }
+            catch (final RuntimeException e) {
+                /* Stop using this pool. Sessions will continue to do template processing themselves,
+                 * and will report any problems in the usual way */
+                logger.warn("Failed to generate template instance for delivery #" + pool.did + ". Pooling disabled for this delivery", e);
+                pool.failed = true;
+            }
+            finally {
+                pool.filling.set(false);
+            }
+        }
+    }
+
+    //-------------------------------------------------
+    // Reporting
+
+    public int getPoolCount() {
+        synchronized (poolMap) {
+            return poolMap.size();
+        }
+    }
+
+    public int getHitCount() {
+        synchronized (poolMap) {
+            return hitCount;
+        }
+    }
+
+    public int getMissCount() {
+        synchronized (poolMap) {
+            return missCount;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return ObjectUtilities.beanToString(this);
+    }
+}
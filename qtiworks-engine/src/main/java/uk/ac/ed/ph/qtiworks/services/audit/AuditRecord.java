@@ -0,0 +1,169 @@
+/* Copyright (c) 2012-2013, University of Edinburgh.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice, this
+ *   list of conditions and the following disclaimer in the documentation and/or
+ *   other materials provided with the distribution.
+ *
+ * * Neither the name of the University of Edinburgh nor the names of its
+ *   contributors may be used to endorse or promote products derived from this
+ *   software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ *
+ * This software is derived from (and contains code from) QTItools and MathAssessEngine.
+ * QTItools is (c) 2008, University of Southampton.
+ * MathAssessEngine is (c) 2010, University of Edinburgh.
+ */
+package uk.ac.ed.ph.qtiworks.services.audit;
+
+import uk.ac.ed.ph.jqtiplus.internal.util.Assert;
+
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.TimeZone;
+
+/**
+ * Encapsulates a single structured audit record, consisting of an ordered list of
+ * key/value fields, destined for the logger having the given name.
+ * <p>
+ * Records are built up on the request thread using {@link #add(String, Object)}, but only
+ * formatted (by {@link #formatMessage()}) when they are written out, which will normally
+ * happen on the {@link AuditRecordDispatcher}'s writer thread. Values should therefore be
+ * immutable (e.g. Strings, numbers or enums), and a record must not be changed once it has
+ * been dispatched.
+ *
+ * @author David McKain
+ */
+public class AuditRecord {
+
+    /** Format used for the <code>time</code> field, which is always recorded in UTC */
+    private static final ThreadLocal<SimpleDateFormat> timeFormat = new ThreadLocal<SimpleDateFormat>() {
+        @Override
+        protected SimpleDateFormat initialValue() {
+            final SimpleDateFormat result = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSS'Z'");
+            result.setTimeZone(TimeZone.getTimeZone("UTC"));
+            return result;
+        }
+    };
+
+    private final String loggerName;
+    private final long timestamp;
+    private final List<String> keys;
+    private final List<Object> values;
+
+    public AuditRecord(final String loggerName) {
+        Assert.notNull(loggerName, "loggerName");
+        this.loggerName = loggerName;
+        this.timestamp = System.currentTimeMillis();
+        this.keys = new ArrayList<String>(8);
+        this.values = new ArrayList<Object>(8);
+    }
+
+    public String getLoggerName() {
+        return loggerName;
+    }
+
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    /**
+     * Appends a field to this record, returning this record for chaining calls.
+     * The value may be null.
+     */
+    public AuditRecord add(final String key, final Object value) {
+        Assert.notNull(key, "key");
+        keys.add(key);
+        values.add(value);
+        return this;
+    }
+
+    public int getFieldCount() {
+        return keys.size();
+    }
+
+    public String getKey(final int index) {
+        return keys.get(index);
+    }
+
+    public Object getValue(final int index) {
+        return values.get(index);
+    }
+
+    /**
+     * Formats this record as a single line of space-separated <code>key=value</code> pairs,
+     * starting with the time the record was created. Values containing whitespace, quotes
+     * or <code>=</code> are double-quoted, with any quotes and backslashes escaped and line
+     * breaks written as <code>\n</code> and <code>\r</code>.
+     */
+    public String formatMessage() {
+        final StringBuilder messageBuilder = new StringBuilder(32 + 24 * keys.size());
+        messageBuilder.append("time=").append(timeFormat.get().format(new Date(timestamp)));
+        for (int i=0, size=keys.size(); i<size; i++) {
+            messageBuilder.append(' ').append(keys.get(i)).append('=');
+            appendValue(messageBuilder, String.valueOf(values.get(i)));
+        }
+        return messageBuilder.toString();
+    }
+
+    private static void appendValue(final StringBuilder messageBuilder, final String value) {
+        if (value.length()>0 && !requiresQuoting(value)) {
+            messageBuilder.append(value);
+            return;
+        }
+        messageBuilder.append('"');
+        for (int i=0, length=value.length(); i<length; i++) {
+            final char c = value.charAt(i);
+            if (c=='\n') {
+                messageBuilder.append("\\n");
+            }
+            else if (c=='\r') {
+                messageBuilder.append("\\r");
+            }
+            else {
+                if (c=='"' || c=='\\') {
+                    messageBuilder.append('\\');
+                }
+                messageBuilder.append(c);
+            }
+        }
+        messageBuilder.append('"');
+    }
+
+    private static boolean requiresQuoting(final String value) {
+        for (int i=0, length=value.length(); i<length; i++) {
+            final char c = value.charAt(i);
+            if (Character.isWhitespace(c) || c=='"' || c=='=' || c=='\\') {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + "@" + Integer.toHexString(System.identityHashCode(this))
+                + "(loggerName=" + loggerName
+                + ",message=" + formatMessage()
+                + ")";
+    }
+}
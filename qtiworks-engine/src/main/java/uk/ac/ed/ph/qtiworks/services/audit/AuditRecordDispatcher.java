@@ -0,0 +1,437 @@
+/* Copyright (c) 2012-2013, University of Edinburgh.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice, this
+ *   list of conditions and the following disclaimer in the documentation and/or
+ *   other materials provided with the distribution.
+ *
+ * * Neither the name of the University of Edinburgh nor the names of its
+ *   contributors may be used to endorse or promote products derived from this
+ *   software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ *
+ * This software is derived from (and contains code from) QTItools and MathAssessEngine.
+ * QTItools is (c) 2008, University of Southampton.
+ * MathAssessEngine is (c) 2010, University of Edinburgh.
+ */
+package uk.ac.ed.ph.qtiworks.services.audit;
+
+import uk.ac.ed.ph.jqtiplus.internal.util.Assert;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Writes {@link AuditRecord}s asynchronously, so that request threads don't contend
+ * with each other for the audit log appender.
+ * <p>
+ * Dispatched records are placed in a bounded ring buffer, which is drained by a single
+ * writer thread that passes them to the {@link AuditRecordSink} in batches. As there is
+ * only one buffer and one writer, records are written in exactly the order they were
+ * dispatched, so records for a given candidate session (whose actions are performed
+ * one at a time) are always written in order.
+ * <p>
+ * When the buffer is full, the {@link OverflowPolicy} decides whether the caller waits for
+ * space or the record is dropped. Dropped records are counted, and noted within the audit
+ * log itself once space is available.
+ * <p>
+ * {@link #shutdown()} writes out everything still in the buffer, and any records dispatched
+ * after this are written synchronously, so nothing is lost when the application stops.
+ * Setting a buffer size of 0 disables the asynchronous behaviour entirely.
+ * <p>
+ * An instance of this class is safe to use concurrently by multiple threads.
+ *
+ * @author David McKain
+ */
+public class AuditRecordDispatcher {
+
+    private static final Logger logger = LoggerFactory.getLogger(AuditRecordDispatcher.class);
+
+    /** Name of the logger used to note dropped records */
+    public static final String DROPPED_RECORDS_LOGGER_NAME = "AuditLogger";
+
+    /** Maximum time to wait for the writer thread to finish when shutting down */
+    private static final long SHUTDOWN_TIMEOUT_MILLIS = 10000L;
+
+    /** How often an interrupted caller re-checks whether the writer is still running */
+    private static final long INTERRUPTED_POLL_MILLIS = 100L;
+
+    /** Decides what happens to a record dispatched when the buffer is full */
+    public static enum OverflowPolicy {
+
+        /** Caller waits until there is space in the buffer, so no records are lost */
+        BLOCK,
+
+        /** Record is dropped (and counted) so that the caller never waits */
+        DISCARD,
+        ;
+    }
+
+    /** Callback used to write out batches of records */
+    public static interface AuditRecordSink {
+
+        /**
+         * Writes out the given batch of records, in order. This is only ever called by one
+         * thread at a time.
+         */
+        void write(List<AuditRecord> batch);
+
+    }
+
+    /** {@link AuditRecordSink} that writes each record to its named SLF4J logger at INFO level */
+    public static final AuditRecordSink SLF4J_SINK = new AuditRecordSink() {
+        @Override
+        public void write(final List<AuditRecord> batch) {
+            for (final AuditRecord record : batch) {
+                final Logger recordLogger = LoggerFactory.getLogger(record.getLoggerName());
+                if (recordLogger.isInfoEnabled()) {
+                    recordLogger.info(record.formatMessage());
+                }
+            }
+        }
+    };
+
+    private final BlockingQueue<AuditRecord> buffer;
+    private final int bufferSize;
+    private final int batchSize;
+    private final OverflowPolicy overflowPolicy;
+    private final AuditRecordSink sink;
+    private final AtomicLong writtenCount;
+    private final AtomicLong droppedCount;
+
+    /** Held while passing records to the sink, so that only one thread ever writes */
+    private final Object writeLock;
+
+    /** Number of dropped records that have been noted in the log so far (guarded by writeLock) */
+    private long reportedDroppedCount;
+
+    private volatile boolean running;
+    private Thread writerThread;
+
+    /**
+     * Creates a new dispatcher, which must be started with {@link #start()}.
+     *
+     * @param bufferSize maximum number of records held in the buffer. A value of 0 or less
+     *   writes records synchronously instead.
+     * @param batchSize maximum number of records passed to the sink at once
+     * @param overflowPolicy what to do when the buffer is full, not null
+     * @param sink where records get written, not null
+     */
+    public AuditRecordDispatcher(final int bufferSize, final int batchSize,
+            final OverflowPolicy overflowPolicy, final AuditRecordSink sink) {
+        Assert.notNull(overflowPolicy, "overflowPolicy");
+        Assert.notNull(sink, "sink");
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("batchSize must be positive");
+        }
+        this.buffer = bufferSize > 0 ? new ArrayBlockingQueue<AuditRecord>(bufferSize) : null;
+        this.bufferSize = Math.max(bufferSize, 0);
+        this.batchSize = batchSize;
+        this.overflowPolicy = overflowPolicy;
+        this.sink = sink;
+        this.writtenCount = new AtomicLong();
+        this.droppedCount = new AtomicLong();
+        this.writeLock = new Object();
+    }
+
+    public boolean isAsynchronous() {
+        return buffer!=null;
+    }
+
+    public int getBufferSize() {
+        return bufferSize;
+    }
+
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    public OverflowPolicy getOverflowPolicy() {
+        return overflowPolicy;
+    }
+
+    /** Returns the number of records currently waiting in the buffer */
+    public int getPendingCount() {
+        return buffer!=null ? buffer.size() : 0;
+    }
+
+    /** Returns the total number of records written so far */
+    public long getWrittenCount() {
+        return writtenCount.get();
+    }
+
+    /** Returns the total number of records dropped so far because the buffer was full */
+    public long getDroppedCount() {
+        return droppedCount.get();
+    }
+
+    //-------------------------------------------------
+
+    public synchronized void start() {
+        if (buffer==null || running) {
+            return;
+        }
+        running = true;
+        writerThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                runWriter();
+            }
+        }, "AuditRecordWriter");
+        writerThread.setDaemon(true);
+        writerThread.start();
+        logger.info("Started asynchronous audit logging with buffer size {}, batch size {} and overflow policy {}",
+                new Object[] { bufferSize, batchSize, overflowPolicy });
+    }
+
+    /**
+     * Stops the writer thread, once it has written out all of the records in the buffer.
+     * Any records dispatched after this will be written synchronously.
+     */
+    public synchronized void shutdown() {
+        if (writerThread==null) {
+            return;
+        }
+        running = false;
+        try {
+            /* Wake writer (which exits once the buffer is empty) and wait for it to finish */
+            if (writerThread.isAlive()) {
+                buffer.offer(new FlushMarker(), SHUTDOWN_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+                writerThread.join(SHUTDOWN_TIMEOUT_MILLIS);
+            }
+        }
+        catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (writerThread.isAlive()) {
+            logger.warn("Audit writer thread did not finish within {}ms", SHUTDOWN_TIMEOUT_MILLIS);
+        }
+        writerThread = null;
+
+        /* Write out anything still left over */
+        writeSynchronously(null);
+        logger.info("Stopped asynchronous audit logging after writing {} record(s), dropping {}",
+                writtenCount.get(), droppedCount.get());
+    }
+
+    //-------------------------------------------------
+
+    /**
+     * Dispatches the given record for writing. This normally returns immediately, but may wait
+     * for space in the buffer if it is full and the {@link OverflowPolicy} is
+     * {@link OverflowPolicy#BLOCK}.
+     */
+    public void dispatch(final AuditRecord record) {
+        Assert.notNull(record, "record");
+        if (!running) {
+            writeSynchronously(record);
+            return;
+        }
+        if (!buffer.offer(record)) {
+            switch (overflowPolicy) {
+                case BLOCK:
+                    try {
+                        buffer.put(record);
+                    }
+                    catch (final InterruptedException e) {
+                        /* Write the record ourselves rather than losing it */
+                        writeAfterPending(record);
+                        Thread.currentThread().interrupt();
+                        return;
+                    }
+                    break;
+
+                case DISCARD:
+                    droppedCount.incrementAndGet();
+                    return;
+
+                default:
+                    throw new IllegalStateException("Unexpected switch case " + overflowPolicy);
+            }
+        }
+        if (!running) {
+            /* We were shut down in the meantime, so make sure the record doesn't get stranded */
+            writeSynchronously(null);
+        }
+    }
+
+    /**
+     * Waits until all records dispatched before this call have been written, or the given
+     * timeout expires.
+     *
+     * @return true if all records were written, false if the timeout expired first
+     */
+    public boolean flush(final long timeout, final TimeUnit unit) throws InterruptedException {
+        if (!running) {
+            return true;
+        }
+        final FlushMarker marker = new FlushMarker();
+        buffer.put(marker); /* (Markers are never dropped) */
+        return marker.latch.await(timeout, unit);
+    }
+
+    /**
+     * Writes the given record (if not null) on the calling thread. If the writer thread has
+     * stopped then anything left over in the buffer is written first. This waits for any
+     * shutdown in progress to complete first, so that records are still written in order.
+     */
+    private synchronized void writeSynchronously(final AuditRecord record) {
+        synchronized (writeLock) {
+            final List<AuditRecord> batch = new ArrayList<AuditRecord>();
+            if (buffer!=null && !running) {
+                buffer.drainTo(batch);
+            }
+            if (record!=null) {
+                batch.add(record);
+            }
+            writeBatch(batch);
+        }
+    }
+
+    /**
+     * Writes the given record on the calling thread once the writer has got through everything
+     * already in the buffer. This is used when a caller waiting for space in the buffer is
+     * interrupted, so that the record still gets written in order without touching the buffer
+     * while the writer is working on it. The caller is responsible for restoring the interrupt.
+     */
+    private void writeAfterPending(final AuditRecord record) {
+        final FlushMarker marker = new FlushMarker();
+        boolean markerQueued = false;
+        while (running) {
+            try {
+                if (!markerQueued) {
+                    markerQueued = buffer.offer(marker, INTERRUPTED_POLL_MILLIS, TimeUnit.MILLISECONDS);
+                }
+                else if (marker.latch.await(INTERRUPTED_POLL_MILLIS, TimeUnit.MILLISECONDS)) {
+                    break;
+                }
+            }
+            catch (final InterruptedException e) {
+                /* Already going to restore the interrupt, so keep waiting */
+            }
+        }
+        writeSynchronously(record);
+    }
+
+    //-------------------------------------------------
+
+    private void runWriter() {
+        final List<AuditRecord> batch = new ArrayList<AuditRecord>(batchSize);
+        while (running || !buffer.isEmpty()) {
+            try {
+                batch.add(buffer.take());
+            }
+            catch (final InterruptedException e) {
+                /* Make dispatch() fall back to synchronous writes, then write out what's left */
+                logger.warn("Audit writer thread interrupted, so stopping");
+                running = false;
+                synchronized (writeLock) {
+                    buffer.drainTo(batch);
+                    writeBatch(batch);
+                }
+                return;
+            }
+            synchronized (writeLock) {
+                buffer.drainTo(batch, batchSize - 1);
+                writeBatch(batch);
+            }
+            batch.clear();
+        }
+    }
+
+    /**
+     * Writes out the given batch, which may contain {@link FlushMarker}s. Records before
+     * each marker are written before the marker is released.
+     * <p>
+     * This is the only route to the sink, and must be called while holding writeLock.
+     */
+    private void writeBatch(final List<AuditRecord> batch) {
+        writeDroppedRecordsNote();
+        final List<AuditRecord> records = new ArrayList<AuditRecord>(batch.size());
+        for (final AuditRecord record : batch) {
+            if (record instanceof FlushMarker) {
+                writeRecords(records);
+                records.clear();
+                ((FlushMarker) record).latch.countDown();
+            }
+            else {
+                records.add(record);
+            }
+        }
+        writeRecords(records);
+    }
+
+    private void writeRecords(final List<AuditRecord> records) {
+        if (records.isEmpty()) {
+            return;
+        }
+        try {
+            sink.write(records);
+            writtenCount.addAndGet(records.size());
+        }
+        catch (final RuntimeException e) {
+            logger.error("Failed to write " + records.size() + " audit record(s)", e);
+        }
+    }
+
+    /**
+     * Notes any records dropped since we last checked within the audit log itself.
+     * (This note doesn't count towards {@link #getWrittenCount()}.)
+     */
+    private void writeDroppedRecordsNote() {
+        final long dropped = droppedCount.get();
+        if (dropped > reportedDroppedCount) {
+            final AuditRecord note = new AuditRecord(DROPPED_RECORDS_LOGGER_NAME)
+                .add("event", "AUDIT_RECORDS_DROPPED")
+                .add("count", Long.valueOf(dropped - reportedDroppedCount))
+                .add("total", Long.valueOf(dropped));
+            reportedDroppedCount = dropped;
+            try {
+                sink.write(Collections.singletonList(note));
+            }
+            catch (final RuntimeException e) {
+                logger.error("Failed to write note about dropped audit records", e);
+            }
+        }
+    }
+
+    /**
+     * Special "record" placed in the buffer to find out when everything before it
+     * has been written.
+     */
+    private static final class FlushMarker extends AuditRecord {
+
+        private final CountDownLatch latch;
+
+        public FlushMarker() {
+            super(FlushMarker.class.getName());
+            this.latch = new CountDownLatch(1);
+        }
+    }
+}
@@ -100,6 +100,12 @@ public enum CandidateExceptionReason {
      */
     SESSION_IS_TERMINATED,
 
+    /**
+     * Another action on the {@link CandidateSession} took too long to complete, so the caller's
+     * action was not performed.
+     */
+    SESSION_BUSY,
+
     /**
      * Caller made API call for a {@link CandidateSession} started on an item when in fact the session is for a test,
      * or vice versa
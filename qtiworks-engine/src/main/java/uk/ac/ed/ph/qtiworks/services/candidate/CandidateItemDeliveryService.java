@@ -46,6 +46,7 @@ import uk.ac.ed.ph.qtiworks.domain.entities.User;
 import uk.ac.ed.ph.qtiworks.services.AssessmentDataService;
 import uk.ac.ed.ph.qtiworks.services.CandidateSessionFinisher;
 import uk.ac.ed.ph.qtiworks.services.IdentityService;
+import uk.ac.ed.ph.qtiworks.services.TemplateInstancePoolService;
 import uk.ac.ed.ph.qtiworks.services.dao.CandidateResponseDao;
 import uk.ac.ed.ph.qtiworks.web.candidate.CandidateSessionLaunchService;
 
@@ -58,6 +59,7 @@ import uk.ac.ed.ph.jqtiplus.notification.NotificationLevel;
 import uk.ac.ed.ph.jqtiplus.notification.NotificationRecorder;
 import uk.ac.ed.ph.jqtiplus.running.ItemSessionController;
 import uk.ac.ed.ph.jqtiplus.state.ItemSessionState;
+import uk.ac.ed.ph.jqtiplus.state.TemplateInstance;
 import uk.ac.ed.ph.jqtiplus.types.FileResponseData;
 import uk.ac.ed.ph.jqtiplus.types.Identifier;
 import uk.ac.ed.ph.jqtiplus.types.ResponseData;
@@ -105,12 +107,19 @@ public class CandidateItemDeliveryService extends CandidateServiceBase {
     @Resource
     private AssessmentDataService assessmentDataService;
 
+    @Resource
+    private TemplateInstancePoolService templateInstancePoolService;
+
     //----------------------------------------------------
     // Session entry
 
-    public CandidateSession enterOrReenterCandidateSession(final CandidateSession candidateSession)
+    public CandidateSession enterOrReenterCandidateSession(final CandidateSession requestedSession)
             throws CandidateException {
-        Assert.notNull(candidateSession, "candidateSession");
+        Assert.notNull(requestedSession, "requestedSession");
+        final CandidateSession candidateSession = beginSessionAction(requestedSession, "enter");
+        if (candidateSession==null) {
+            return reloadCandidateSession(requestedSession);
+        }
         assertSessionType(candidateSession, AssessmentObjectType.ASSESSMENT_ITEM);
         assertSessionNotTerminated(candidateSession);
 
@@ -139,7 +148,13 @@ public class CandidateItemDeliveryService extends CandidateServiceBase {
         try {
             final Date timestamp = requestTimestampContext.getCurrentRequestTimestamp();
             itemSessionController.initialize(timestamp);
-            itemSessionController.performTemplateProcessing(timestamp);
+            final TemplateInstance templateInstance = templateInstancePoolService.drawTemplateInstance(delivery, itemSessionController);
+            if (templateInstance!=null) {
+                itemSessionController.applyTemplateInstance(timestamp, templateInstance);
+            }
+            else {
+                itemSessionController.performTemplateProcessing(timestamp);
+            }
             itemSessionController.enterItem(timestamp);
         }
         catch (final RuntimeException e) {
@@ -164,12 +179,16 @@ public class CandidateItemDeliveryService extends CandidateServiceBase {
     //----------------------------------------------------
     // Response handling
 
-    public CandidateSession handleResponses(final CandidateSession candidateSession,
+    public CandidateSession handleResponses(final CandidateSession requestedSession,
             final Map<Identifier, StringResponseData> stringResponseMap,
             final Map<Identifier, MultipartFile> fileResponseMap,
             final String candidateComment)
             throws CandidateException {
-        Assert.notNull(candidateSession, "candidateSession");
+        Assert.notNull(requestedSession, "requestedSession");
+        final CandidateSession candidateSession = beginSessionAction(requestedSession, "responses", computeResponsesFingerprint(stringResponseMap, fileResponseMap, candidateComment));
+        if (candidateSession==null) {
+            return reloadCandidateSession(requestedSession);
+        }
         assertSessionType(candidateSession, AssessmentObjectType.ASSESSMENT_ITEM);
         assertSessionNotTerminated(candidateSession);
 
@@ -346,9 +365,13 @@ public class CandidateItemDeliveryService extends CandidateServiceBase {
      * Ends/closes the {@link CandidateSession} encapsulated in the given {@link CandidateSession},
      * moving it into ended state.
      */
-    public CandidateSession endCandidateSession(final CandidateSession candidateSession)
+    public CandidateSession endCandidateSession(final CandidateSession requestedSession)
             throws CandidateException {
-        Assert.notNull(candidateSession, "candidateSession");
+        Assert.notNull(requestedSession, "requestedSession");
+        final CandidateSession candidateSession = beginSessionAction(requestedSession, "end");
+        if (candidateSession==null) {
+            return reloadCandidateSession(requestedSession);
+        }
         assertSessionType(candidateSession, AssessmentObjectType.ASSESSMENT_ITEM);
         assertSessionNotTerminated(candidateSession);
 
@@ -407,9 +430,13 @@ public class CandidateItemDeliveryService extends CandidateServiceBase {
      *
      * @see ItemSessionController#resetItemSessionHard(Date, boolean)
      */
-    public CandidateSession resetCandidateSessionHard(final CandidateSession candidateSession)
+    public CandidateSession resetCandidateSessionHard(final CandidateSession requestedSession)
             throws CandidateException {
-        Assert.notNull(candidateSession, "candidateSession");
+        Assert.notNull(requestedSession, "requestedSession");
+        final CandidateSession candidateSession = beginSessionAction(requestedSession, "resetHard");
+        if (candidateSession==null) {
+            return reloadCandidateSession(requestedSession);
+        }
         assertSessionType(candidateSession, AssessmentObjectType.ASSESSMENT_ITEM);
         assertSessionNotTerminated(candidateSession);
 
@@ -463,9 +490,13 @@ public class CandidateItemDeliveryService extends CandidateServiceBase {
      *
      * @see ItemSessionController#resetItemSessionSoft(Date, boolean)
      */
-    public CandidateSession resetCandidateSessionSoft(final CandidateSession candidateSession)
+    public CandidateSession resetCandidateSessionSoft(final CandidateSession requestedSession)
             throws CandidateException {
-        Assert.notNull(candidateSession, "candidateSession");
+        Assert.notNull(requestedSession, "requestedSession");
+        final CandidateSession candidateSession = beginSessionAction(requestedSession, "resetSoft");
+        if (candidateSession==null) {
+            return reloadCandidateSession(requestedSession);
+        }
         assertSessionType(candidateSession, AssessmentObjectType.ASSESSMENT_ITEM);
         assertSessionNotTerminated(candidateSession);
 
@@ -516,9 +547,13 @@ public class CandidateItemDeliveryService extends CandidateServiceBase {
      * Logs a {@link CandidateItemEventType#SOLUTION} event, closing the item session if it hasn't
      * already been closed (and if this is allowed).
      */
-    public CandidateSession requestSolution(final CandidateSession candidateSession)
+    public CandidateSession requestSolution(final CandidateSession requestedSession)
             throws CandidateException {
-        Assert.notNull(candidateSession, "candidateSession");
+        Assert.notNull(requestedSession, "requestedSession");
+        final CandidateSession candidateSession = beginSessionAction(requestedSession, "solution");
+        if (candidateSession==null) {
+            return reloadCandidateSession(requestedSession);
+        }
         assertSessionType(candidateSession, AssessmentObjectType.ASSESSMENT_ITEM);
         assertSessionNotTerminated(candidateSession);
 
@@ -580,9 +615,13 @@ public class CandidateItemDeliveryService extends CandidateServiceBase {
      * Currently we're always allowing this action to be made when in
      * interacting or closed states.
      */
-    public CandidateSession exitCandidateSession(final CandidateSession candidateSession)
+    public CandidateSession exitCandidateSession(final CandidateSession requestedSession)
             throws CandidateException {
-        Assert.notNull(candidateSession, "candidateSession");
+        Assert.notNull(requestedSession, "requestedSession");
+        final CandidateSession candidateSession = beginSessionAction(requestedSession, "exit");
+        if (candidateSession==null) {
+            return reloadCandidateSession(requestedSession);
+        }
         assertSessionType(candidateSession, AssessmentObjectType.ASSESSMENT_ITEM);
         assertSessionNotTerminated(candidateSession);
 
@@ -42,6 +42,7 @@ import uk.ac.ed.ph.qtiworks.domain.entities.CandidateItemEventType;
 import uk.ac.ed.ph.qtiworks.domain.entities.CandidateSession;
 import uk.ac.ed.ph.qtiworks.domain.entities.CandidateTestEventType;
 import uk.ac.ed.ph.qtiworks.domain.entities.Delivery;
+import uk.ac.ed.ph.qtiworks.domain.entities.DeliverySettings;
 import uk.ac.ed.ph.qtiworks.domain.entities.ItemDeliverySettings;
 import uk.ac.ed.ph.qtiworks.domain.entities.User;
 import uk.ac.ed.ph.qtiworks.rendering.AbstractRenderingOptions;
@@ -59,6 +60,8 @@ import uk.ac.ed.ph.qtiworks.rendering.TestRenderingRequest;
 import uk.ac.ed.ph.qtiworks.services.AssessmentDataService;
 import uk.ac.ed.ph.qtiworks.services.AssessmentPackageFileService;
 import uk.ac.ed.ph.qtiworks.services.FilespaceManager;
+import uk.ac.ed.ph.qtiworks.services.RenderingResultCache;
+import uk.ac.ed.ph.qtiworks.services.RenderingResultCache.CachedRendering;
 import uk.ac.ed.ph.qtiworks.services.ServiceUtilities;
 import uk.ac.ed.ph.qtiworks.services.dao.CandidateSessionDao;
 import uk.ac.ed.ph.qtiworks.services.domain.OutputStreamer;
@@ -74,11 +77,14 @@ import uk.ac.ed.ph.jqtiplus.state.TestPlanNodeKey;
 import uk.ac.ed.ph.jqtiplus.state.TestSessionState;
 import uk.ac.ed.ph.jqtiplus.validation.AssessmentObjectValidationResult;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.ObjectOutputStream;
 import java.net.URI;
 import java.util.Date;
 import java.util.List;
@@ -90,6 +96,9 @@ import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
 
+import com.google.common.hash.Hashing;
+import com.google.common.io.Files;
+
 /**
  * Service for rendering the candidate state of assessments, connecting the domain
  * layer with the low-level {@link AssessmentRenderer}
@@ -123,6 +132,9 @@ public class CandidateRenderingService extends CandidateServiceBase {
     @Resource
     private CandidateSessionDao candidateSessionDao;
 
+    @Resource
+    private RenderingResultCache renderingResultCache;
+
     //----------------------------------------------------
     // Item rendering
 
@@ -140,58 +152,39 @@ public class CandidateRenderingService extends CandidateServiceBase {
         /* Make sure this session is for an item */
         assertSessionType(candidateSession, AssessmentObjectType.ASSESSMENT_ITEM);
 
-        /* Create temporary file to hold the output before it gets streamed */
-        final File resultFile = filespaceManager.createTempFile();
-        try {
-            /* Render to temp file */
-            FileOutputStream resultOutputStream = null;
-            try {
-                resultOutputStream = new FileOutputStream(resultFile);
-                final StreamResult streamResult = new StreamResult(resultOutputStream);
-                renderCurrentCandidateItemSessionState(candidateSession, renderingOptions, streamResult);
-            }
-            catch (final IOException e) {
-                throw new QtiWorksRuntimeException("Unexpected IOException", e);
-            }
-            finally {
-                ServiceUtilities.ensureClose(resultOutputStream);
-            }
-
-            /* Finally stream to caller */
-            streamRenderingResultFile(resultFile, outputStreamer, renderingOptions);
-        }
-        finally {
-            if (!resultFile.delete()) {
-                throw new QtiWorksRuntimeException("Could not delete result file " + resultFile.getPath());
-            }
+        if (candidateSession.isExploded() || candidateSession.isTerminated()) {
+            renderInactiveSession(candidateSession, renderingOptions, outputStreamer);
+            return;
         }
-    }
 
-    private void renderCurrentCandidateItemSessionState(final CandidateSession candidateSession,
-            final ItemRenderingOptions renderingOptions, final StreamResult result)
-            throws CandidateException {
-        if (candidateSession.isExploded()) {
-            renderExploded(candidateSession, renderingOptions, result);
-        }
-        else if (candidateSession.isTerminated()) {
-            renderTerminated(candidateSession, renderingOptions, result);
+        /* Look up most recent event */
+        final CandidateEvent latestEvent = assertSessionEntered(candidateSession);
+
+        /* Load the ItemSessionState */
+        final ItemSessionState itemSessionState = candidateDataService.loadItemSessionState(latestEvent);
+
+        /* Touch the session's duration state if appropriate */
+        if (itemSessionState.isEntered() && !itemSessionState.isEnded() && !itemSessionState.isSuspended()) {
+            final Date timestamp = requestTimestampContext.getCurrentRequestTimestamp();
+            final ItemSessionController itemSessionController = createItemSessionController(candidateSession, itemSessionState);
+            itemSessionController.touchDuration(timestamp);
         }
-        else {
-            /* Look up most recent event */
-            final CandidateEvent latestEvent = assertSessionEntered(candidateSession);
 
-            /* Load the ItemSessionState */
-            final ItemSessionState itemSessionState = candidateDataService.loadItemSessionState(latestEvent);
+        /* The rendering can't change once the item has ended, or when showing the model solution */
+        String renderingKey = null;
+        if (latestEvent.getItemEventType()==CandidateItemEventType.SOLUTION || itemSessionState.isEnded()) {
+            renderingKey = computeRenderingKey(candidateSession, latestEvent, "item", renderingOptions);
+        }
 
-            /* Touch the session's duration state if appropriate */
-            if (itemSessionState.isEntered() && !itemSessionState.isEnded() && !itemSessionState.isSuspended()) {
-                final Date timestamp = requestTimestampContext.getCurrentRequestTimestamp();
-                final ItemSessionController itemSessionController = createItemSessionController(candidateSession, itemSessionState);
-                itemSessionController.touchDuration(timestamp);
+        /* Render event */
+        final boolean rendered = renderAndStream(candidateSession, renderingKey, renderingOptions, outputStreamer, new RenderingTask() {
+            @Override
+            public void render(final StreamResult result) {
+                renderItemEvent(candidateSession, latestEvent, itemSessionState, renderingOptions, result);
             }
-
-            /* Render event */
-            renderItemEvent(candidateSession, latestEvent, itemSessionState, renderingOptions, result);
+        });
+        if (!rendered) {
+            candidateAuditLogger.logItemRendering(latestEvent);
         }
     }
 
@@ -270,35 +263,28 @@ public class CandidateRenderingService extends CandidateServiceBase {
         Assert.notNull(renderingOptions, "renderingOptions");
         Assert.notNull(outputStreamer, "outputStreamer");
 
+        /* Make sure this session is for an item */
+        assertSessionType(candidateSession, AssessmentObjectType.ASSESSMENT_ITEM);
+
         /* Look up most recent event */
         final CandidateEvent latestEvent = assertSessionEntered(candidateSession);
 
         /* Load the ItemSessionState */
         final ItemSessionState itemSessionState = candidateDataService.loadItemSessionState(latestEvent);
 
-        /* Create temporary file to hold the output before it gets streamed */
-        final File resultFile = filespaceManager.createTempFile();
-        try {
-            /* Render to temp file */
-            FileOutputStream resultOutputStream = null;
-            try {
-                resultOutputStream = new FileOutputStream(resultFile);
-                renderItemEventAuthorView(candidateSession, latestEvent, itemSessionState, renderingOptions, new StreamResult(resultOutputStream));
-            }
-            catch (final IOException e) {
-                throw new QtiWorksRuntimeException("Unexpected IOException", e);
-            }
-            finally {
-                ServiceUtilities.ensureClose(resultOutputStream);
-            }
+        /* (The author view shows durations, so can only be reused once the item has ended) */
+        final String renderingKey = itemSessionState.isEnded()
+                ? computeRenderingKey(candidateSession, latestEvent, "itemAuthorView", renderingOptions)
+                : null;
 
-            /* Finally stream to caller */
-            streamRenderingResultFile(resultFile, outputStreamer, renderingOptions);
-        }
-        finally {
-            if (!resultFile.delete()) {
-                throw new QtiWorksRuntimeException("Could not delete result file " + resultFile.getPath());
+        final boolean rendered = renderAndStream(candidateSession, renderingKey, renderingOptions, outputStreamer, new RenderingTask() {
+            @Override
+            public void render(final StreamResult result) throws CandidateException {
+                renderItemEventAuthorView(candidateSession, latestEvent, itemSessionState, renderingOptions, result);
             }
+        });
+        if (!rendered) {
+            candidateAuditLogger.logItemAuthorViewRendering(latestEvent);
         }
     }
 
@@ -309,9 +295,6 @@ public class CandidateRenderingService extends CandidateServiceBase {
         initRenderingRequest(candidateSession, renderingRequest, renderingOptions);
         renderingRequest.setItemSessionState(itemSessionState);
 
-        /* Make sure this session is for an item */
-        assertSessionType(candidateSession, AssessmentObjectType.ASSESSMENT_ITEM);
-
         candidateAuditLogger.logItemAuthorViewRendering(candidateEvent);
         final List<CandidateEventNotification> notifications = candidateEvent.getNotifications();
         assessmentRenderer.renderItemAuthorView(renderingRequest, notifications, result);
@@ -334,60 +317,57 @@ public class CandidateRenderingService extends CandidateServiceBase {
         /* Make sure this session is for an item */
         assertSessionType(candidateSession, AssessmentObjectType.ASSESSMENT_TEST);
 
-        /* Create temporary file to hold the output before it gets streamed */
-        final File resultFile = filespaceManager.createTempFile();
-        try {
-            /* Render to temp file */
-            FileOutputStream resultOutputStream = null;
-            try {
-                resultOutputStream = new FileOutputStream(resultFile);
-                final StreamResult streamResult = new StreamResult(resultOutputStream);
-                renderCurrentCandidateTestSessionState(candidateSession, renderingOptions, streamResult);
-            }
-            catch (final IOException e) {
-                throw new QtiWorksRuntimeException("Unexpected IOException", e);
-            }
-            finally {
-                ServiceUtilities.ensureClose(resultOutputStream);
-            }
-
-            /* Finally stream to caller */
-            streamRenderingResultFile(resultFile, outputStreamer, renderingOptions);
-        }
-        finally {
-            if (!resultFile.delete()) {
-                throw new QtiWorksRuntimeException("Could not delete result file " + resultFile.getPath());
-            }
+        if (candidateSession.isExploded() || candidateSession.isTerminated()) {
+            renderInactiveSession(candidateSession, renderingOptions, outputStreamer);
+            return;
         }
-    }
 
+        /* Look up most recent event */
+        final CandidateEvent latestEvent = assertSessionEntered(candidateSession);
+
+        /* Load the TestSessionState and create a TestSessionController */
+        final TestSessionState testSessionState = candidateDataService.loadTestSessionState(latestEvent);
+        final TestSessionController testSessionController = createTestSessionController(candidateSession, testSessionState);
 
+        /* Touch the session's duration state if appropriate */
+        if (testSessionState.isEntered() && !testSessionState.isEnded()) {
+            final Date timestamp = requestTimestampContext.getCurrentRequestTimestamp();
+            testSessionController.touchDurations(timestamp);
+        }
 
-    private void renderCurrentCandidateTestSessionState(final CandidateSession candidateSession,
-            final TestRenderingOptions renderingOptions, final StreamResult result)
-            throws CandidateException {
-        if (candidateSession.isExploded()) {
-            renderExploded(candidateSession, renderingOptions, result);
+        /* Decide whether this rendering can change. The following can't: item review and
+         * solutions, testPart feedback and test feedback. */
+        final CandidateTestEventType testEventType = latestEvent.getTestEventType();
+        String renderingMode = null;
+        if (testEventType==CandidateTestEventType.REVIEW_ITEM) {
+            renderingMode = TestRenderingMode.ITEM_REVIEW.toString();
+        }
+        else if (testEventType==CandidateTestEventType.SOLUTION_ITEM) {
+            renderingMode = TestRenderingMode.ITEM_SOLUTION.toString();
         }
-        else if (candidateSession.isTerminated()) {
-            renderTerminated(candidateSession, renderingOptions, result);
+        else if (testSessionState.isEnded() || testSessionState.isExited()) {
+            renderingMode = "testFeedback";
         }
         else {
-            /* Look up most recent event */
-            final CandidateEvent latestEvent = assertSessionEntered(candidateSession);
-
-            /* Load the TestSessionState and create a TestSessionController */
-            final TestSessionState testSessionState = candidateDataService.loadTestSessionState(latestEvent);
-            final TestSessionController testSessionController = createTestSessionController(candidateSession, testSessionState);
-
-            /* Touch the session's duration state if appropriate */
-            if (testSessionState.isEntered() && !testSessionState.isEnded()) {
-                final Date timestamp = requestTimestampContext.getCurrentRequestTimestamp();
-                testSessionController.touchDurations(timestamp);
+            final TestPlanNodeKey currentTestPartKey = testSessionState.getCurrentTestPartKey();
+            if (currentTestPartKey!=null && testSessionState.getCurrentItemKey()==null
+                    && testSessionState.getTestPartSessionStates().get(currentTestPartKey).isEnded()) {
+                renderingMode = "testPartFeedback";
             }
+        }
+        final String renderingKey = renderingMode!=null
+                ? computeRenderingKey(candidateSession, latestEvent, renderingMode, renderingOptions)
+                : null;
 
-            /* Render event */
-            renderTestEvent(candidateSession, latestEvent, testSessionController, renderingOptions, result);
+        /* Render event */
+        final boolean rendered = renderAndStream(candidateSession, renderingKey, renderingOptions, outputStreamer, new RenderingTask() {
+            @Override
+            public void render(final StreamResult result) {
+                renderTestEvent(candidateSession, latestEvent, testSessionController, renderingOptions, result);
+            }
+        });
+        if (!rendered) {
+            candidateAuditLogger.logTestRendering(latestEvent);
         }
     }
 
@@ -467,29 +447,19 @@ public class CandidateRenderingService extends CandidateServiceBase {
         final TestSessionState testSessionState = candidateDataService.loadTestSessionState(latestEvent);
         final TestSessionController testSessionController = createTestSessionController(candidateSession, testSessionState);
 
-        /* Create temporary file to hold the output before it gets streamed */
-        final File resultFile = filespaceManager.createTempFile();
-        try {
-            /* Render to temp file */
-            FileOutputStream resultOutputStream = null;
-            try {
-                resultOutputStream = new FileOutputStream(resultFile);
-                renderTestEventAuthorView(candidateSession, latestEvent, testSessionController, renderingOptions, new StreamResult(resultOutputStream));
-            }
-            catch (final IOException e) {
-                throw new QtiWorksRuntimeException("Unexpected IOException", e);
-            }
-            finally {
-                ServiceUtilities.ensureClose(resultOutputStream);
-            }
+        /* (The author view shows durations, so can only be reused once the test has ended) */
+        final String renderingKey = testSessionState.isEnded()
+                ? computeRenderingKey(candidateSession, latestEvent, "testAuthorView", renderingOptions)
+                : null;
 
-            /* Finally stream to caller */
-            streamRenderingResultFile(resultFile, outputStreamer, renderingOptions);
-        }
-        finally {
-            if (!resultFile.delete()) {
-                throw new QtiWorksRuntimeException("Could not delete result file " + resultFile.getPath());
+        final boolean rendered = renderAndStream(candidateSession, renderingKey, renderingOptions, outputStreamer, new RenderingTask() {
+            @Override
+            public void render(final StreamResult result) {
+                renderTestEventAuthorView(candidateSession, latestEvent, testSessionController, renderingOptions, result);
             }
+        });
+        if (!rendered) {
+            candidateAuditLogger.logTestAuthorViewRendering(latestEvent);
         }
     }
 
@@ -637,6 +607,29 @@ public class CandidateRenderingService extends CandidateServiceBase {
                 testSessionState, notificationRecorder);
     }
 
+    /**
+     * Renders a session that has been exploded or terminated. These renderings never change
+     * so are always eligible for caching.
+     */
+    private void renderInactiveSession(final CandidateSession candidateSession,
+            final AbstractRenderingOptions renderingOptions, final OutputStreamer outputStreamer)
+            throws CandidateException, IOException {
+        final boolean exploded = candidateSession.isExploded();
+        final String renderingKey = computeRenderingKey(candidateSession, null,
+                exploded ? "exploded" : "terminated", renderingOptions);
+        renderAndStream(candidateSession, renderingKey, renderingOptions, outputStreamer, new RenderingTask() {
+            @Override
+            public void render(final StreamResult result) {
+                if (exploded) {
+                    renderExploded(candidateSession, renderingOptions, result);
+                }
+                else {
+                    renderTerminated(candidateSession, renderingOptions, result);
+                }
+            }
+        });
+    }
+
     private void renderExploded(final CandidateSession candidateSession, final AbstractRenderingOptions renderingOptions, final StreamResult result) {
         assessmentRenderer.renderExploded(createTerminatedRenderingRequest(candidateSession, renderingOptions), result);
     }
@@ -661,6 +654,7 @@ public class CandidateRenderingService extends CandidateServiceBase {
         renderingRequest.setRenderingOptions(renderingOptions);
         renderingRequest.setAssessmentResourceLocator(assessmentPackageFileService.createResolvingResourceLocator(assessmentPackage));
         renderingRequest.setAssessmentResourceUri(assessmentPackageFileService.createAssessmentObjectUri(assessmentPackage));
+        renderingRequest.setAssessmentSourceCacheKey("assessmentPackage-" + assessmentPackage.getId());
         renderingRequest.setAuthorMode(candidateSession.isAuthorMode());
         renderingRequest.setValidated(assessmentPackage.isValidated());
         renderingRequest.setLaunchable(assessmentPackage.isLaunchable());
@@ -670,7 +664,130 @@ public class CandidateRenderingService extends CandidateServiceBase {
     }
 
     //----------------------------------------------------
-    // Result streaming
+    // Result caching & streaming
+
+    /** Callback used by {@link #renderAndStream} to perform the actual rendering */
+    private interface RenderingTask {
+
+        void render(StreamResult result) throws CandidateException;
+
+    }
+
+    /**
+     * Computes a key uniquely identifying the rendering of the given {@link CandidateEvent}
+     * (which may be null for exploded/terminated sessions). This should only be called for
+     * renderings which can no longer change.
+     * <p>
+     * The key incorporates everything else that the rendering depends on, namely the
+     * {@link AssessmentPackage}, the version of the {@link DeliverySettings} and the
+     * {@link AbstractRenderingOptions} (which include the action URLs and serialization method).
+     */
+    private String computeRenderingKey(final CandidateSession candidateSession, final CandidateEvent candidateEvent,
+            final String renderingMode, final AbstractRenderingOptions renderingOptions) {
+        final Delivery delivery = candidateSession.getDelivery();
+        final AssessmentPackage assessmentPackage = assessmentDataService.ensureSelectedAssessmentPackage(delivery);
+        final DeliverySettings deliverySettings = assessmentDataService.getEffectiveDeliverySettings(candidateSession.getCandidate(), delivery);
+        final StringBuilder keyBuilder = new StringBuilder("session/")
+            .append(candidateSession.getId())
+            .append('/').append(renderingMode);
+        if (candidateEvent!=null) {
+            keyBuilder.append("/event/").append(candidateEvent.getId())
+                .append("/item/").append(candidateEvent.getTestItemKey());
+        }
+        keyBuilder.append("/package/").append(assessmentPackage.getId())
+            .append("/settings/").append(deliverySettings.getId())
+            .append('/').append(deliverySettings.getVersion())
+            .append("/options/").append(computeRenderingOptionsDigest(renderingOptions));
+        return keyBuilder.toString();
+    }
+
+    /**
+     * Computes a digest of the given {@link AbstractRenderingOptions}. This uses their serialized
+     * form, as their {@link Object#toString()} includes their identity hash code so differs for
+     * each request.
+     */
+    private static String computeRenderingOptionsDigest(final AbstractRenderingOptions renderingOptions) {
+        final ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream();
+        try {
+            final ObjectOutputStream objectOutputStream = new ObjectOutputStream(byteArrayOutputStream);
+            objectOutputStream.writeObject(renderingOptions);
+            objectOutputStream.close();
+        }
+        catch (final IOException e) {
+            throw QtiWorksRuntimeException.unexpectedException(e);
+        }
+        return Hashing.sha1().hashBytes(byteArrayOutputStream.toByteArray()).toString();
+    }
+
+    /**
+     * Performs the given {@link RenderingTask} and streams the result to the given {@link OutputStreamer}.
+     * <p>
+     * If a non-null renderingKey is provided then the rendering is assumed to be immutable, so
+     * we first allow the {@link OutputStreamer} to short-circuit the request if the caller already
+     * has a copy, and then look in the {@link RenderingResultCache}. Fresh renderings are added to
+     * the cache, unless something went wrong while rendering and the session got exploded.
+     *
+     * @return true if the rendering was actually performed, false if it was satisfied
+     *   by the caller's copy or the cache.
+     */
+    private boolean renderAndStream(final CandidateSession candidateSession, final String renderingKey,
+            final AbstractRenderingOptions renderingOptions, final OutputStreamer outputStreamer,
+            final RenderingTask renderingTask)
+            throws CandidateException, IOException {
+        if (renderingKey!=null) {
+            if (outputStreamer.offerFingerprint(renderingKey)) {
+                return false;
+            }
+            final CachedRendering cachedRendering = renderingResultCache.getRendering(renderingKey);
+            if (cachedRendering!=null) {
+                streamCachedRendering(cachedRendering, outputStreamer);
+                return false;
+            }
+        }
+
+        /* Create temporary file to hold the output before it gets streamed */
+        final boolean wasExploded = candidateSession.isExploded();
+        final File resultFile = filespaceManager.createTempFile();
+        try {
+            /* Render to temp file */
+            FileOutputStream resultOutputStream = null;
+            try {
+                resultOutputStream = new FileOutputStream(resultFile);
+                renderingTask.render(new StreamResult(resultOutputStream));
+            }
+            catch (final IOException e) {
+                throw new QtiWorksRuntimeException("Unexpected IOException", e);
+            }
+            finally {
+                ServiceUtilities.ensureClose(resultOutputStream);
+            }
+
+            /* Finally stream to caller, caching if appropriate */
+            if (renderingKey!=null && renderingResultCache.isEnabled() && candidateSession.isExploded()==wasExploded) {
+                final CachedRendering cachedRendering = new CachedRendering(renderingOptions.getSerializationMethod().getContentType(),
+                        Files.toByteArray(resultFile));
+                renderingResultCache.putRendering(renderingKey, cachedRendering);
+                streamCachedRendering(cachedRendering, outputStreamer);
+            }
+            else {
+                streamRenderingResultFile(resultFile, outputStreamer, renderingOptions);
+            }
+        }
+        finally {
+            if (!resultFile.delete()) {
+                throw new QtiWorksRuntimeException("Could not delete result file " + resultFile.getPath());
+            }
+        }
+        return true;
+    }
+
+    private void streamCachedRendering(final CachedRendering cachedRendering, final OutputStreamer outputStreamer)
+            throws IOException {
+        final byte[] data = cachedRendering.getData();
+        outputStreamer.stream(cachedRendering.getContentType(), data.length,
+                requestTimestampContext.getCurrentRequestTimestamp(),
+                new ByteArrayInputStream(data));
+    }
 
     private void streamRenderingResultFile(final File resultFile, final OutputStreamer outputStreamer,
             final AbstractRenderingOptions renderingOptions)
@@ -38,11 +38,18 @@ import uk.ac.ed.ph.qtiworks.domain.entities.CandidateSession;
 import uk.ac.ed.ph.qtiworks.services.CandidateAuditLogger;
 import uk.ac.ed.ph.qtiworks.services.CandidateDataService;
 import uk.ac.ed.ph.qtiworks.services.RequestTimestampContext;
+import uk.ac.ed.ph.qtiworks.services.ServiceUtilities;
 import uk.ac.ed.ph.qtiworks.services.dao.CandidateSessionDao;
 
 import uk.ac.ed.ph.jqtiplus.node.AssessmentObjectType;
+import uk.ac.ed.ph.jqtiplus.types.Identifier;
+import uk.ac.ed.ph.jqtiplus.types.StringResponseData;
 
 import java.util.Date;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.TreeMap;
+import java.util.concurrent.TimeoutException;
 
 import javax.annotation.Resource;
 
@@ -51,6 +58,7 @@ import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.web.multipart.MultipartFile;
 
 /**
  * Base class for {@link CandidateRenderingService}, {@link CandidateItemDeliveryService}
@@ -76,6 +84,9 @@ public abstract class CandidateServiceBase {
     @Resource
     protected RequestTimestampContext requestTimestampContext;
 
+    @Resource
+    protected CandidateSessionActionCoordinator candidateSessionActionCoordinator;
+
     //----------------------------------------------------
     // Access controls
 
@@ -109,6 +120,78 @@ public abstract class CandidateServiceBase {
         }
     }
 
+    //----------------------------------------------------
+    // Serialisation of actions on a session
+
+    /**
+     * Begins the action having the given name and parameters on the given {@link CandidateSession},
+     * waiting until no other action is being performed on the session.
+     * <p>
+     * As the given {@link CandidateSession} may have been loaded before any wait, the action must be
+     * performed on the freshly loaded {@link CandidateSession} returned here.
+     *
+     * @return freshly loaded {@link CandidateSession} if the caller should perform the action, or null
+     *   if an identical action has just been performed so the caller should simply return the
+     *   (reloaded) {@link CandidateSession} unchanged.
+     *
+     * @see CandidateSessionActionCoordinator
+     */
+    protected CandidateSession beginSessionAction(final CandidateSession candidateSession, final String action,
+            final Object... parameters)
+            throws CandidateException {
+        final StringBuilder fingerprintBuilder = new StringBuilder(action);
+        for (final Object parameter : parameters) {
+            fingerprintBuilder.append('|').append(parameter);
+        }
+        final boolean performAction;
+        try {
+            performAction = candidateSessionActionCoordinator.beginAction(candidateSession.getId().longValue(),
+                    fingerprintBuilder.toString());
+        }
+        catch (final TimeoutException e) {
+            logger.warn("Gave up waiting to perform {} on busy CandidateSession {}", action, candidateSession.getId());
+            candidateAuditLogger.logAndThrowCandidateException(candidateSession, CandidateExceptionReason.SESSION_BUSY);
+            return null; /* (Unreachable) */
+        }
+        return performAction ? reloadCandidateSession(candidateSession) : null;
+    }
+
+    /**
+     * Reloads the given {@link CandidateSession} so that any changes committed by other
+     * actions are seen.
+     */
+    protected CandidateSession reloadCandidateSession(final CandidateSession candidateSession)
+            throws CandidateException {
+        final CandidateSession result = candidateSessionDao.findById(candidateSession.getId());
+        if (result==null) {
+            /* (Session has been deleted in the meantime) */
+            candidateAuditLogger.logAndThrowCandidateException(candidateSession, CandidateExceptionReason.SESSION_IS_TERMINATED);
+        }
+        return result;
+    }
+
+    /**
+     * Computes a digest of submitted responses and comment, used to decide whether
+     * two response submissions are identical.
+     */
+    protected static String computeResponsesFingerprint(final Map<Identifier, StringResponseData> stringResponseMap,
+            final Map<Identifier, MultipartFile> fileResponseMap, final String candidateComment) {
+        final Map<String, String> sortedResponseMap = new TreeMap<String, String>();
+        if (stringResponseMap!=null) {
+            for (final Entry<Identifier, StringResponseData> entry : stringResponseMap.entrySet()) {
+                sortedResponseMap.put(entry.getKey().toString(), "s" + entry.getValue().getResponseData());
+            }
+        }
+        if (fileResponseMap!=null) {
+            for (final Entry<Identifier, MultipartFile> entry : fileResponseMap.entrySet()) {
+                final MultipartFile multipartFile = entry.getValue();
+                sortedResponseMap.put(entry.getKey().toString(),
+                        "f" + multipartFile.getOriginalFilename() + "/" + multipartFile.getSize());
+            }
+        }
+        return ServiceUtilities.computeSha1Digest(sortedResponseMap.toString() + "|" + candidateComment);
+    }
+
     //----------------------------------------------------
 
     protected CandidateSession handleExplosion(final RuntimeException e, final CandidateSession candidateSession) {
@@ -0,0 +1,216 @@
+/* Copyright (c) 2012-2013, University of Edinburgh.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice, this
+ *   list of conditions and the following disclaimer in the documentation and/or
+ *   other materials provided with the distribution.
+ *
+ * * Neither the name of the University of Edinburgh nor the names of its
+ *   contributors may be used to endorse or promote products derived from this
+ *   software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ *
+ * This software is derived from (and contains code from) QTItools and MathAssessEngine.
+ * QTItools is (c) 2008, University of Southampton.
+ * MathAssessEngine is (c) 2010, University of Edinburgh.
+ */
+package uk.ac.ed.ph.qtiworks.services.candidate;
+
+import uk.ac.ed.ph.qtiworks.QtiWorksLogicException;
+import uk.ac.ed.ph.qtiworks.domain.entities.CandidateSession;
+
+import uk.ac.ed.ph.jqtiplus.internal.util.Assert;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * Coordinates actions performed on {@link CandidateSession}s by the candidate delivery services,
+ * so that only one action runs on a given session at a time, and so that identical actions
+ * (e.g. caused by a double-clicked submit button or impatient reload) are only performed once.
+ * <p>
+ * Actions must be performed within a transaction. Calling {@link #beginAction(long, String)}
+ * locks the session until the transaction completes, so that the next action on the session
+ * sees the committed results of this one. Sessions are mapped onto a fixed number of
+ * (striped) locks, so unrelated sessions will occasionally wait for each other.
+ * <p>
+ * If an identical action on the same session is already in flight, the caller waits for it
+ * to complete instead of acquiring the lock. If that action committed successfully then the
+ * caller should skip its own work and simply return the (now updated) session, which is then
+ * rendered exactly as it would have been for the original caller. If it failed then the
+ * caller goes ahead and performs the action itself.
+ * <p>
+ * An instance of this class is safe to use concurrently by multiple threads.
+ *
+ * @see CandidateServiceBase
+ *
+ * @author David McKain
+ */
+@Service
+public class CandidateSessionActionCoordinator {
+
+    private static final Logger logger = LoggerFactory.getLogger(CandidateSessionActionCoordinator.class);
+
+    /** Default number of locks to spread sessions over */
+    public static final int DEFAULT_STRIPE_COUNT = 64;
+
+    /** Default time to wait for a session to become free, in milliseconds */
+    public static final long DEFAULT_TIMEOUT_MILLIS = 30000L;
+
+    private final ReentrantLock[] stripes;
+    private final ConcurrentMap<String, InFlightAction> inFlightActionMap;
+    private final long timeoutMillis;
+
+    public CandidateSessionActionCoordinator() {
+        this(DEFAULT_STRIPE_COUNT, DEFAULT_TIMEOUT_MILLIS);
+    }
+
+    public CandidateSessionActionCoordinator(final int stripeCount, final long timeoutMillis) {
+        if (stripeCount < 1) {
+            throw new IllegalArgumentException("stripeCount must be positive");
+        }
+        this.stripes = new ReentrantLock[stripeCount];
+        for (int i=0; i<stripeCount; i++) {
+            stripes[i] = new ReentrantLock();
+        }
+        this.inFlightActionMap = new ConcurrentHashMap<String, InFlightAction>();
+        this.timeoutMillis = timeoutMillis;
+    }
+
+    public long getTimeoutMillis() {
+        return timeoutMillis;
+    }
+
+    /**
+     * Begins an action on the {@link CandidateSession} having the given ID (xid), which must
+     * be called from within a transaction.
+     *
+     * @param xid ID of the {@link CandidateSession}
+     * @param actionFingerprint String identifying the action and its parameters. Actions having
+     *   equal fingerprints are considered identical.
+     *
+     * @return true if the caller should go ahead and perform the action, false if an identical
+     *   action has just been performed successfully and so the caller should do nothing.
+     *
+     * @throws TimeoutException if the session did not become free within {@link #getTimeoutMillis()}
+     */
+    public boolean beginAction(final long xid, final String actionFingerprint)
+            throws TimeoutException {
+        Assert.notNull(actionFingerprint, "actionFingerprint");
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            throw new QtiWorksLogicException("Actions on CandidateSessions must be performed within a transaction");
+        }
+        final String actionKey = xid + ":" + actionFingerprint;
+        final long deadline = System.currentTimeMillis() + timeoutMillis;
+
+        /* See if an identical action is already in flight */
+        final InFlightAction newAction = new InFlightAction();
+        InFlightAction existingAction;
+        while ((existingAction = inFlightActionMap.putIfAbsent(actionKey, newAction))!=null) {
+            if (existingAction.owner==Thread.currentThread()) {
+                /* (Nested call within the same transaction, so just carry on) */
+                return true;
+            }
+            logger.debug("Waiting for identical in-flight action {}", actionKey);
+            if (!existingAction.await(deadline)) {
+                throw new TimeoutException("Timed out waiting for identical action " + actionKey);
+            }
+            if (existingAction.committed) {
+                logger.debug("Coalesced action {} with identical action that has just committed", actionKey);
+                return false;
+            }
+            /* Identical action failed, so we'll try it ourselves */
+        }
+
+        /* Lock session. This will be released when the transaction completes. */
+        final ReentrantLock lock = stripes[(int) ((xid & Long.MAX_VALUE) % stripes.length)];
+        boolean locked = false;
+        try {
+            locked = lock.tryLock(Math.max(0L, deadline - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+        }
+        catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (!locked) {
+            inFlightActionMap.remove(actionKey, newAction);
+            newAction.complete(false);
+            throw new TimeoutException("Timed out waiting for lock on CandidateSession " + xid);
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+            @Override
+            public void afterCompletion(final int status) {
+                inFlightActionMap.remove(actionKey, newAction);
+                newAction.complete(status==TransactionSynchronization.STATUS_COMMITTED);
+                lock.unlock();
+            }
+        });
+        return true;
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + "@" + Integer.toHexString(System.identityHashCode(this))
+                + "(stripeCount=" + stripes.length
+                + ",timeoutMillis=" + timeoutMillis
+                + ",inFlightActions=" + inFlightActionMap.size()
+                + ")";
+    }
+
+    //----------------------------------------------------
+
+    /** Tracks an action that is currently being performed */
+    private static final class InFlightAction {
+
+        private final Thread owner;
+        private final CountDownLatch completionLatch;
+        private volatile boolean committed;
+
+        public InFlightAction() {
+            this.owner = Thread.currentThread();
+            this.completionLatch = new CountDownLatch(1);
+        }
+
+        public void complete(final boolean success) {
+            this.committed = success;
+            completionLatch.countDown();
+        }
+
+        public boolean await(final long deadline) {
+            try {
+                return completionLatch.await(Math.max(0L, deadline - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+            }
+            catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        }
+    }
+}
@@ -107,9 +107,13 @@ public class CandidateTestDeliveryService extends CandidateServiceBase {
     //----------------------------------------------------
     // Session entry
 
-    public CandidateSession enterOrReenterCandidateSession(final CandidateSession candidateSession)
+    public CandidateSession enterOrReenterCandidateSession(final CandidateSession requestedSession)
             throws CandidateException {
-        Assert.notNull(candidateSession, "candidateSession");
+        Assert.notNull(requestedSession, "requestedSession");
+        final CandidateSession candidateSession = beginSessionAction(requestedSession, "enter");
+        if (candidateSession==null) {
+            return reloadCandidateSession(requestedSession);
+        }
         assertSessionType(candidateSession, AssessmentObjectType.ASSESSMENT_TEST);
 
         final CandidateEvent mostRecentEvent = candidateDataService.getMostRecentEvent(candidateSession);
@@ -174,12 +178,16 @@ public class CandidateTestDeliveryService extends CandidateServiceBase {
     //----------------------------------------------------
     // Response handling
 
-    public CandidateSession handleResponses(final CandidateSession candidateSession,
+    public CandidateSession handleResponses(final CandidateSession requestedSession,
             final Map<Identifier, StringResponseData> stringResponseMap,
             final Map<Identifier, MultipartFile> fileResponseMap,
             final String candidateComment)
             throws CandidateException {
-        Assert.notNull(candidateSession, "candidateSession");
+        Assert.notNull(requestedSession, "requestedSession");
+        final CandidateSession candidateSession = beginSessionAction(requestedSession, "responses", computeResponsesFingerprint(stringResponseMap, fileResponseMap, candidateComment));
+        if (candidateSession==null) {
+            return reloadCandidateSession(requestedSession);
+        }
         assertSessionType(candidateSession, AssessmentObjectType.ASSESSMENT_TEST);
         assertSessionNotTerminated(candidateSession);
 
@@ -317,9 +325,13 @@ public class CandidateTestDeliveryService extends CandidateServiceBase {
     //----------------------------------------------------
     // Navigation
 
-    public CandidateSession selectNavigationMenu(final CandidateSession candidateSession)
+    public CandidateSession selectNavigationMenu(final CandidateSession requestedSession)
             throws CandidateException {
-        Assert.notNull(candidateSession, "candidateSession");
+        Assert.notNull(requestedSession, "requestedSession");
+        final CandidateSession candidateSession = beginSessionAction(requestedSession, "navigationMenu");
+        if (candidateSession==null) {
+            return reloadCandidateSession(requestedSession);
+        }
         assertSessionType(candidateSession, AssessmentObjectType.ASSESSMENT_TEST);
         assertSessionNotTerminated(candidateSession);
 
@@ -353,9 +365,13 @@ public class CandidateTestDeliveryService extends CandidateServiceBase {
         return candidateSession;
     }
 
-    public CandidateSession selectNonlinearItem(final CandidateSession candidateSession, final TestPlanNodeKey itemKey)
+    public CandidateSession selectNonlinearItem(final CandidateSession requestedSession, final TestPlanNodeKey itemKey)
             throws CandidateException {
-        Assert.notNull(candidateSession, "candidateSession");
+        Assert.notNull(requestedSession, "requestedSession");
+        final CandidateSession candidateSession = beginSessionAction(requestedSession, "selectItem", itemKey);
+        if (candidateSession==null) {
+            return reloadCandidateSession(requestedSession);
+        }
         assertSessionType(candidateSession, AssessmentObjectType.ASSESSMENT_TEST);
         assertSessionNotTerminated(candidateSession);
 
@@ -389,9 +405,13 @@ public class CandidateTestDeliveryService extends CandidateServiceBase {
         return candidateSession;
     }
 
-    public CandidateSession finishLinearItem(final CandidateSession candidateSession)
+    public CandidateSession finishLinearItem(final CandidateSession requestedSession)
             throws CandidateException {
-        Assert.notNull(candidateSession, "candidateSession");
+        Assert.notNull(requestedSession, "requestedSession");
+        final CandidateSession candidateSession = beginSessionAction(requestedSession, "finishItem");
+        if (candidateSession==null) {
+            return reloadCandidateSession(requestedSession);
+        }
         assertSessionType(candidateSession, AssessmentObjectType.ASSESSMENT_TEST);
 
         /* Get current JQTI state and create JQTI controller */
@@ -437,9 +457,13 @@ public class CandidateTestDeliveryService extends CandidateServiceBase {
         return candidateSession;
     }
 
-    public CandidateSession endCurrentTestPart(final CandidateSession candidateSession)
+    public CandidateSession endCurrentTestPart(final CandidateSession requestedSession)
             throws CandidateException {
-        Assert.notNull(candidateSession, "candidateSession");
+        Assert.notNull(requestedSession, "requestedSession");
+        final CandidateSession candidateSession = beginSessionAction(requestedSession, "endTestPart");
+        if (candidateSession==null) {
+            return reloadCandidateSession(requestedSession);
+        }
         assertSessionType(candidateSession, AssessmentObjectType.ASSESSMENT_TEST);
 
         /* Get current JQTI state and create JQTI controller */
@@ -487,9 +511,13 @@ public class CandidateTestDeliveryService extends CandidateServiceBase {
     //----------------------------------------------------
     // Review
 
-    public CandidateSession reviewTestPart(final CandidateSession candidateSession)
+    public CandidateSession reviewTestPart(final CandidateSession requestedSession)
             throws CandidateException {
-        Assert.notNull(candidateSession, "candidateSession");
+        Assert.notNull(requestedSession, "requestedSession");
+        final CandidateSession candidateSession = beginSessionAction(requestedSession, "reviewTestPart");
+        if (candidateSession==null) {
+            return reloadCandidateSession(requestedSession);
+        }
         assertSessionType(candidateSession, AssessmentObjectType.ASSESSMENT_TEST);
 
         /* Get current JQTI state and create JQTI controller */
@@ -513,9 +541,13 @@ public class CandidateTestDeliveryService extends CandidateServiceBase {
         return candidateSession;
     }
 
-    public CandidateSession reviewItem(final CandidateSession candidateSession, final TestPlanNodeKey itemKey)
+    public CandidateSession reviewItem(final CandidateSession requestedSession, final TestPlanNodeKey itemKey)
             throws CandidateException {
-        Assert.notNull(candidateSession, "candidateSession");
+        Assert.notNull(requestedSession, "requestedSession");
+        final CandidateSession candidateSession = beginSessionAction(requestedSession, "reviewItem", itemKey);
+        if (candidateSession==null) {
+            return reloadCandidateSession(requestedSession);
+        }
         Assert.notNull(itemKey, "itemKey");
         assertSessionType(candidateSession, AssessmentObjectType.ASSESSMENT_TEST);
 
@@ -555,9 +587,13 @@ public class CandidateTestDeliveryService extends CandidateServiceBase {
     //----------------------------------------------------
     // Solution request
 
-    public CandidateSession requestSolution(final CandidateSession candidateSession, final TestPlanNodeKey itemKey)
+    public CandidateSession requestSolution(final CandidateSession requestedSession, final TestPlanNodeKey itemKey)
             throws CandidateException {
-        Assert.notNull(candidateSession, "candidateSession");
+        Assert.notNull(requestedSession, "requestedSession");
+        final CandidateSession candidateSession = beginSessionAction(requestedSession, "solution", itemKey);
+        if (candidateSession==null) {
+            return reloadCandidateSession(requestedSession);
+        }
         assertSessionType(candidateSession, AssessmentObjectType.ASSESSMENT_TEST);
         Assert.notNull(itemKey, "itemKey");
 
@@ -597,9 +633,13 @@ public class CandidateTestDeliveryService extends CandidateServiceBase {
     //----------------------------------------------------
     // Advance TestPart
 
-    public CandidateSession advanceTestPart(final CandidateSession candidateSession)
+    public CandidateSession advanceTestPart(final CandidateSession requestedSession)
             throws CandidateException {
-        Assert.notNull(candidateSession, "candidateSession");
+        Assert.notNull(requestedSession, "requestedSession");
+        final CandidateSession candidateSession = beginSessionAction(requestedSession, "advanceTestPart");
+        if (candidateSession==null) {
+            return reloadCandidateSession(requestedSession);
+        }
         assertSessionType(candidateSession, AssessmentObjectType.ASSESSMENT_TEST);
 
         /* Get current JQTI state and create JQTI controller */
@@ -658,9 +698,13 @@ public class CandidateTestDeliveryService extends CandidateServiceBase {
     //----------------------------------------------------
     // Exit (multi-part) test
 
-    public CandidateSession exitTest(final CandidateSession candidateSession)
+    public CandidateSession exitTest(final CandidateSession requestedSession)
             throws CandidateException {
-        Assert.notNull(candidateSession, "candidateSession");
+        Assert.notNull(requestedSession, "requestedSession");
+        final CandidateSession candidateSession = beginSessionAction(requestedSession, "exit");
+        if (candidateSession==null) {
+            return reloadCandidateSession(requestedSession);
+        }
         assertSessionType(candidateSession, AssessmentObjectType.ASSESSMENT_TEST);
 
         /* Get current JQTI state and create JQTI controller */
@@ -72,13 +72,20 @@ public class CandidateUploadService {
         Assert.notNull(candidateSession, "candidateSession");
         Assert.notNull(multipartFile, "multipartFile");
 
-        /* Save file into filesystem */
-        final File uploadFile = filespaceManager.createCandidateUploadFile(candidateSession);
-        try {
-            multipartFile.transferTo(uploadFile);
-        }
-        catch (final Exception e) {
-            throw new QtiWorksRuntimeException("Unexpected Exception uploading file submission", e);
+        /* Save file into content-addressed storage, unless identical data has already been stored.
+         * (The lock stops the stored file being deleted before our submission is committed.) */
+        final String contentDigest = ServiceUtilities.computeSha256Digest(multipartFile);
+        filespaceManager.lockContentDigest(contentDigest);
+        File uploadFile = filespaceManager.getCandidateUploadBlobFile(contentDigest);
+        if (!uploadFile.isFile()) {
+            final File tempFile = filespaceManager.createTempFile();
+            try {
+                multipartFile.transferTo(tempFile);
+            }
+            catch (final Exception e) {
+                throw new QtiWorksRuntimeException("Unexpected Exception uploading file submission", e);
+            }
+            uploadFile = filespaceManager.storeCandidateUploadBlob(tempFile, contentDigest);
         }
 
         /* Create and persist submission */
@@ -87,6 +94,7 @@ public class CandidateUploadService {
         result.setContentType(ServiceUtilities.computeContentType(multipartFile));
         result.setFileName(multipartFile.getOriginalFilename());
         result.setStoredFilePath(uploadFile.getAbsolutePath());
+        result.setContentDigest(contentDigest);
         candidateFileSubmissionDao.persist(result);
         return result;
     }
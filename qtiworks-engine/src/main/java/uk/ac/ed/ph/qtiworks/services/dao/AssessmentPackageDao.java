@@ -39,6 +39,7 @@ import uk.ac.ed.ph.qtiworks.domain.entities.AssessmentPackage;
 import java.util.List;
 
 import javax.persistence.EntityManager;
+import javax.persistence.LockModeType;
 import javax.persistence.PersistenceContext;
 import javax.persistence.TypedQuery;
 
@@ -73,6 +74,35 @@ public class AssessmentPackageDao extends GenericDao<AssessmentPackage> {
         return query.getResultList();
     }
 
+    /**
+     * Returns the most recently created {@link AssessmentPackage} imported from data having
+     * the given content digest, or null if there is no such package.
+     */
+    public AssessmentPackage getNewestForContentDigest(final String contentDigest) {
+        final TypedQuery<AssessmentPackage> query = em.createNamedQuery("AssessmentPackage.getForContentDigest", AssessmentPackage.class);
+        query.setParameter("contentDigest", contentDigest);
+        query.setMaxResults(1);
+        return extractNullableFindResult(query);
+    }
+
+    /**
+     * Returns whether any {@link AssessmentPackage} other than the given one was imported
+     * from the same content-addressed data. This reads (and locks) the latest committed rows,
+     * rather than those in any snapshot held by the current transaction.
+     */
+    public boolean isContentDigestUsedElsewhere(final AssessmentPackage assessmentPackage) {
+        final TypedQuery<AssessmentPackage> query = em.createNamedQuery("AssessmentPackage.getForContentDigest", AssessmentPackage.class);
+        query.setParameter("contentDigest", assessmentPackage.getContentDigest());
+        query.setLockMode(LockModeType.PESSIMISTIC_READ);
+        query.setMaxResults(2);
+        for (final AssessmentPackage otherPackage : query.getResultList()) {
+            if (!otherPackage.getId().equals(assessmentPackage.getId())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     public List<AssessmentPackage> getAll() {
         final TypedQuery<AssessmentPackage> query = em.createNamedQuery("AssessmentPackage.getAll", AssessmentPackage.class);
         return query.getResultList();
@@ -37,6 +37,7 @@ import uk.ac.ed.ph.qtiworks.domain.entities.CandidateEvent;
 import uk.ac.ed.ph.qtiworks.domain.entities.CandidateSession;
 import uk.ac.ed.ph.qtiworks.domain.entities.Delivery;
 
+import java.util.Collection;
 import java.util.List;
 
 import javax.persistence.EntityManager;
@@ -94,4 +95,10 @@ public class CandidateEventDao extends GenericDao<CandidateEvent> {
         query.setParameter("delivery", delivery);
         return query.executeUpdate();
     }
+
+    public int deleteForCandidateSessionXids(final Collection<Long> xids) {
+        final Query query = em.createNamedQuery("CandidateEvent.deleteForSessionXids");
+        query.setParameter("xids", xids);
+        return query.executeUpdate();
+    }
 }
@@ -38,6 +38,7 @@ import uk.ac.ed.ph.qtiworks.domain.entities.CandidateEventNotification;
 import uk.ac.ed.ph.qtiworks.domain.entities.CandidateSession;
 import uk.ac.ed.ph.qtiworks.domain.entities.Delivery;
 
+import java.util.Collection;
 import java.util.List;
 
 import javax.persistence.EntityManager;
@@ -82,4 +83,10 @@ public class CandidateEventNotificationDao extends GenericDao<CandidateEventNoti
         query.setParameter("delivery", delivery);
         return query.executeUpdate();
     }
+
+    public int deleteForCandidateSessionXids(final Collection<Long> xids) {
+        final Query query = em.createNamedQuery("CandidateEventNotification.deleteForSessionXids");
+        query.setParameter("xids", xids);
+        return query.executeUpdate();
+    }
 }
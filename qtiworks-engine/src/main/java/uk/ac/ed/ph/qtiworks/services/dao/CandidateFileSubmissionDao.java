@@ -37,9 +37,14 @@ import uk.ac.ed.ph.qtiworks.domain.entities.CandidateFileSubmission;
 import uk.ac.ed.ph.qtiworks.domain.entities.CandidateSession;
 import uk.ac.ed.ph.qtiworks.domain.entities.Delivery;
 
+import java.util.Collection;
+import java.util.List;
+
 import javax.persistence.EntityManager;
+import javax.persistence.LockModeType;
 import javax.persistence.PersistenceContext;
 import javax.persistence.Query;
+import javax.persistence.TypedQuery;
 
 import org.springframework.stereotype.Repository;
 import org.springframework.transaction.annotation.Propagation;
@@ -61,6 +66,37 @@ public class CandidateFileSubmissionDao extends GenericDao<CandidateFileSubmissi
         super(CandidateFileSubmission.class);
     }
 
+    public List<String> getContentDigestsForCandidateSession(final CandidateSession candidateSession) {
+        final TypedQuery<String> query = em.createNamedQuery("CandidateFileSubmission.getContentDigestsForSession", String.class);
+        query.setParameter("candidateSession", candidateSession);
+        return query.getResultList();
+    }
+
+    public List<String> getContentDigestsForDelivery(final Delivery delivery) {
+        final TypedQuery<String> query = em.createNamedQuery("CandidateFileSubmission.getContentDigestsForDelivery", String.class);
+        query.setParameter("delivery", delivery);
+        return query.getResultList();
+    }
+
+    public List<String> getContentDigestsForCandidateSessionXids(final Collection<Long> xids) {
+        final TypedQuery<String> query = em.createNamedQuery("CandidateFileSubmission.getContentDigestsForSessionXids", String.class);
+        query.setParameter("xids", xids);
+        return query.getResultList();
+    }
+
+    /**
+     * Returns whether any {@link CandidateFileSubmission} refers to the content-addressed data
+     * having the given digest. This reads (and locks) the latest committed rows, rather than
+     * those in any snapshot held by the current transaction.
+     */
+    public boolean isContentDigestUsed(final String contentDigest) {
+        final TypedQuery<CandidateFileSubmission> query = em.createNamedQuery("CandidateFileSubmission.getForContentDigest", CandidateFileSubmission.class);
+        query.setParameter("contentDigest", contentDigest);
+        query.setLockMode(LockModeType.PESSIMISTIC_READ);
+        query.setMaxResults(1);
+        return !query.getResultList().isEmpty();
+    }
+
     public int deleteForCandidateSession(final CandidateSession candidateSession) {
         final Query query = em.createNamedQuery("CandidateFileSubmission.deleteForSession");
         query.setParameter("candidateSession", candidateSession);
@@ -72,4 +108,10 @@ public class CandidateFileSubmissionDao extends GenericDao<CandidateFileSubmissi
         query.setParameter("delivery", delivery);
         return query.executeUpdate();
     }
+
+    public int deleteForCandidateSessionXids(final Collection<Long> xids) {
+        final Query query = em.createNamedQuery("CandidateFileSubmission.deleteForSessionXids");
+        query.setParameter("xids", xids);
+        return query.executeUpdate();
+    }
 }
@@ -37,6 +37,8 @@ import uk.ac.ed.ph.qtiworks.domain.entities.CandidateResponse;
 import uk.ac.ed.ph.qtiworks.domain.entities.CandidateSession;
 import uk.ac.ed.ph.qtiworks.domain.entities.Delivery;
 
+import java.util.Collection;
+
 import javax.persistence.EntityManager;
 import javax.persistence.PersistenceContext;
 import javax.persistence.Query;
@@ -103,4 +105,24 @@ public class CandidateResponseDao extends GenericDao<CandidateResponse> {
         query.setParameter("delivery", delivery);
         return query.executeUpdate();
     }
+
+    public int deleteForCandidateSessionXids(final Collection<Long> xids) {
+        /* Need to first delete @CollectionTable data manually */
+        Query query = em.createNativeQuery(
+                "DELETE FROM candidate_string_response_items"
+                + "  WHERE xrid IN ("
+                + "    SELECT xrid FROM candidate_responses"
+                + "    WHERE xeid IN ("
+                + "      SELECT xeid FROM candidate_events"
+                + "      WHERE xid IN (:xids)"
+                + "    )"
+                + "  )");
+        query.setParameter("xids", xids);
+        query.executeUpdate();
+
+        /* Then we can safely delete the main table */
+        query = em.createNamedQuery("CandidateResponse.deleteForSessionXids");
+        query.setParameter("xids", xids);
+        return query.executeUpdate();
+    }
 }
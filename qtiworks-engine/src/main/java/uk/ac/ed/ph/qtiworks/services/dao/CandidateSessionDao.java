@@ -36,8 +36,11 @@ package uk.ac.ed.ph.qtiworks.services.dao;
 import uk.ac.ed.ph.qtiworks.domain.entities.Assessment;
 import uk.ac.ed.ph.qtiworks.domain.entities.CandidateSession;
 import uk.ac.ed.ph.qtiworks.domain.entities.Delivery;
+import uk.ac.ed.ph.qtiworks.domain.entities.LtiContext;
+import uk.ac.ed.ph.qtiworks.domain.entities.LtiDomain;
 import uk.ac.ed.ph.qtiworks.domain.entities.User;
 
+import java.util.Collection;
 import java.util.Date;
 import java.util.List;
 
@@ -138,10 +141,54 @@ public class CandidateSessionDao extends GenericDao<CandidateSession> {
         return query.getResultList();
     }
 
+    public int updateLatestXeid(final CandidateSession candidateSession, final Long xeid) {
+        final Query query = em.createNamedQuery("CandidateSession.updateLatestXeid");
+        query.setParameter("xid", candidateSession.getId());
+        query.setParameter("xeid", xeid);
+        return query.executeUpdate();
+    }
+
     public int deleteForDelivery(final Delivery delivery) {
         final Query query = em.createNamedQuery("CandidateSession.deleteForDelivery");
         query.setParameter("delivery", delivery);
         return query.executeUpdate();
     }
 
+    public List<CandidateSession> getPurgeChunkCreatedBefore(final Date creationTime, final long afterXid, final int maxResults) {
+        final TypedQuery<CandidateSession> query = em.createNamedQuery("CandidateSession.getPurgeChunkCreatedBefore", CandidateSession.class);
+        query.setParameter("creationTime", creationTime);
+        query.setParameter("afterXid", Long.valueOf(afterXid));
+        query.setMaxResults(maxResults);
+        return query.getResultList();
+    }
+
+    public List<CandidateSession> getPurgeChunkForDelivery(final Delivery delivery, final long afterXid, final int maxResults) {
+        final TypedQuery<CandidateSession> query = em.createNamedQuery("CandidateSession.getPurgeChunkForDelivery", CandidateSession.class);
+        query.setParameter("delivery", delivery);
+        query.setParameter("afterXid", Long.valueOf(afterXid));
+        query.setMaxResults(maxResults);
+        return query.getResultList();
+    }
+
+    public List<CandidateSession> getPurgeChunkForLtiContext(final LtiContext ltiContext, final long afterXid, final int maxResults) {
+        final TypedQuery<CandidateSession> query = em.createNamedQuery("CandidateSession.getPurgeChunkForLtiContext", CandidateSession.class);
+        query.setParameter("ltiContext", ltiContext);
+        query.setParameter("afterXid", Long.valueOf(afterXid));
+        query.setMaxResults(maxResults);
+        return query.getResultList();
+    }
+
+    public List<CandidateSession> getPurgeChunkForLtiDomain(final LtiDomain ltiDomain, final long afterXid, final int maxResults) {
+        final TypedQuery<CandidateSession> query = em.createNamedQuery("CandidateSession.getPurgeChunkForLtiDomain", CandidateSession.class);
+        query.setParameter("ltiDomain", ltiDomain);
+        query.setParameter("afterXid", Long.valueOf(afterXid));
+        query.setMaxResults(maxResults);
+        return query.getResultList();
+    }
+
+    public int deleteForXids(final Collection<Long> xids) {
+        final Query query = em.createNamedQuery("CandidateSession.deleteForXids");
+        query.setParameter("xids", xids);
+        return query.executeUpdate();
+    }
 }
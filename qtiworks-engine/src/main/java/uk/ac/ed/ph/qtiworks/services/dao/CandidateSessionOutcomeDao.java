@@ -37,6 +37,7 @@ import uk.ac.ed.ph.qtiworks.domain.entities.CandidateSession;
 import uk.ac.ed.ph.qtiworks.domain.entities.CandidateSessionOutcome;
 import uk.ac.ed.ph.qtiworks.domain.entities.Delivery;
 
+import java.util.Collection;
 import java.util.List;
 
 import javax.persistence.EntityManager;
@@ -87,4 +88,10 @@ public class CandidateSessionOutcomeDao extends GenericDao<CandidateSessionOutco
         query.setParameter("delivery", delivery);
         return query.executeUpdate();
     }
+
+    public int deleteForCandidateSessionXids(final Collection<Long> xids) {
+        final Query query = em.createNamedQuery("CandidateSessionOutcome.deleteForSessionXids");
+        query.setParameter("xids", xids);
+        return query.executeUpdate();
+    }
 }
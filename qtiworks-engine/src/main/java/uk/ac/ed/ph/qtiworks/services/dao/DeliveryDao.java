@@ -99,6 +99,11 @@ public class DeliveryDao extends GenericDao<Delivery> {
         return extractCountResult(query);
     }
 
+    public List<Delivery> getOpen() {
+        final TypedQuery<Delivery> query = em.createNamedQuery("Delivery.getOpen", Delivery.class);
+        return query.getResultList();
+    }
+
     public List<Delivery> getForTypeCreatedBefore(final DeliveryType deliveryType, final Date creationTime) {
         final TypedQuery<Delivery> query = em.createNamedQuery("Delivery.getForTypeCreatedBefore", Delivery.class);
         query.setParameter("deliveryType", deliveryType);
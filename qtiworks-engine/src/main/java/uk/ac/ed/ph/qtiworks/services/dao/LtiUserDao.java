@@ -108,4 +108,10 @@ public class LtiUserDao extends GenericDao<LtiUser> {
         final Query query = em.createNamedQuery("LtiUser.deleteCandidatesWithNoSessions");
         return query.executeUpdate();
     }
+
+    public int deleteForLtiDomain(final LtiDomain ltiDomain) {
+        final Query query = em.createNamedQuery("LtiUser.deleteForLtiDomain");
+        query.setParameter("ltiDomain", ltiDomain);
+        return query.executeUpdate();
+    }
 }
@@ -37,6 +37,7 @@ import uk.ac.ed.ph.qtiworks.domain.entities.CandidateSession;
 import uk.ac.ed.ph.qtiworks.domain.entities.Delivery;
 import uk.ac.ed.ph.qtiworks.domain.entities.QueuedLtiOutcome;
 
+import java.util.Collection;
 import java.util.List;
 
 import javax.persistence.EntityManager;
@@ -80,4 +81,10 @@ public class QueuedLtiOutcomeDao extends GenericDao<QueuedLtiOutcome> {
         query.setParameter("delivery", delivery);
         return query.executeUpdate();
     }
-}
\ No newline at end of file
+
+    public int deleteForCandidateSessionXids(final Collection<Long> xids) {
+        final Query query = em.createNamedQuery("QueuedLtiOutcome.deleteForSessionXids");
+        query.setParameter("xids", xids);
+        return query.executeUpdate();
+    }
+}
@@ -0,0 +1,98 @@
+/* Copyright (c) 2012-2013, University of Edinburgh.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice, this
+ *   list of conditions and the following disclaimer in the documentation and/or
+ *   other materials provided with the distribution.
+ *
+ * * Neither the name of the University of Edinburgh nor the names of its
+ *   contributors may be used to endorse or promote products derived from this
+ *   software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ *
+ * This software is derived from (and contains code from) QTITools and MathAssessEngine.
+ * QTITools is (c) 2008, University of Southampton.
+ * MathAssessEngine is (c) 2010, University of Edinburgh.
+ */
+package uk.ac.ed.ph.qtiworks.services.domain;
+
+import uk.ac.ed.ph.qtiworks.domain.entities.CandidateSession;
+import uk.ac.ed.ph.qtiworks.services.CandidateSessionPurgeService;
+
+import uk.ac.ed.ph.jqtiplus.internal.util.ObjectUtilities;
+
+/**
+ * Summarises the results of a bulk purge of {@link CandidateSession}s performed by the
+ * {@link CandidateSessionPurgeService}, including some simple throughput metrics.
+ *
+ * @author David McKain
+ */
+public final class CandidateSessionPurgeReport {
+
+    private final int sessionCount;
+    private final int chunkCount;
+    private final int filesystemFailureCount;
+    private final long databaseDuration;
+    private final long totalDuration;
+
+    public CandidateSessionPurgeReport(final int sessionCount, final int chunkCount,
+            final int filesystemFailureCount, final long databaseDuration, final long totalDuration) {
+        this.sessionCount = sessionCount;
+        this.chunkCount = chunkCount;
+        this.filesystemFailureCount = filesystemFailureCount;
+        this.databaseDuration = databaseDuration;
+        this.totalDuration = totalDuration;
+    }
+
+    /** Returns the number of {@link CandidateSession}s purged */
+    public int getSessionCount() {
+        return sessionCount;
+    }
+
+    /** Returns the number of chunks (and hence database transactions) used */
+    public int getChunkCount() {
+        return chunkCount;
+    }
+
+    /** Returns the number of sessions whose filesystem data could not be deleted */
+    public int getFilesystemFailureCount() {
+        return filesystemFailureCount;
+    }
+
+    /** Returns the total time spent selecting and deleting database data, in ms */
+    public long getDatabaseDuration() {
+        return databaseDuration;
+    }
+
+    /** Returns the total time taken by the purge, including filesystem deletion, in ms */
+    public long getTotalDuration() {
+        return totalDuration;
+    }
+
+    /** Returns the overall throughput of the purge, in sessions per second */
+    public double getSessionsPerSecond() {
+        return totalDuration > 0 ? 1000.0 * sessionCount / totalDuration : 0.0;
+    }
+
+    @Override
+    public String toString() {
+        return ObjectUtilities.beanToString(this);
+    }
+}
@@ -35,6 +35,7 @@ package uk.ac.ed.ph.qtiworks.services.domain;
 
 import uk.ac.ed.ph.jqtiplus.internal.util.ObjectUtilities;
 import uk.ac.ed.ph.jqtiplus.node.AssessmentObjectType;
+import uk.ac.ed.ph.jqtiplus.notification.NotificationLevel;
 
 import javax.validation.constraints.NotNull;
 import javax.validation.constraints.Size;
@@ -57,6 +58,14 @@ public abstract class DeliverySettingsTemplate {
 
     private Integer templateProcessingLimit;
 
+    /**
+     * Lowest level of runtime notification to record. This is always required here so
+     * that a submitted template that leaves it out can't silently reset the level stored
+     * in the existing settings. ({@link NotificationLevel#INFO} records everything.)
+     */
+    @NotNull
+    private NotificationLevel notificationLevel;
+
     //------------------------------------------------------------
 
     protected DeliverySettingsTemplate(final AssessmentObjectType assessmentType) {
@@ -88,6 +97,15 @@ public abstract class DeliverySettingsTemplate {
         this.templateProcessingLimit = templateProcessingLimit;
     }
 
+
+    public NotificationLevel getNotificationLevel() {
+        return notificationLevel;
+    }
+
+    public void setNotificationLevel(final NotificationLevel notificationLevel) {
+        this.notificationLevel = notificationLevel;
+    }
+
     //------------------------------------------------------------
 
     @Override
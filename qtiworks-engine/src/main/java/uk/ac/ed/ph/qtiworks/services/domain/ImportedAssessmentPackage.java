@@ -0,0 +1,88 @@
+/* Copyright (c) 2012-2013, University of Edinburgh.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice, this
+ *   list of conditions and the following disclaimer in the documentation and/or
+ *   other materials provided with the distribution.
+ *
+ * * Neither the name of the University of Edinburgh nor the names of its
+ *   contributors may be used to endorse or promote products derived from this
+ *   software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ *
+ * This software is derived from (and contains code from) QTITools and MathAssessEngine.
+ * QTITools is (c) 2008, University of Southampton.
+ * MathAssessEngine is (c) 2010, University of Edinburgh.
+ */
+package uk.ac.ed.ph.qtiworks.services.domain;
+
+import uk.ac.ed.ph.qtiworks.domain.entities.AssessmentPackage;
+import uk.ac.ed.ph.qtiworks.services.AssessmentPackageFileService;
+
+import uk.ac.ed.ph.jqtiplus.internal.util.ObjectUtilities;
+import uk.ac.ed.ph.jqtiplus.resolution.ResolvedAssessmentObject;
+import uk.ac.ed.ph.jqtiplus.validation.AssessmentObjectValidationResult;
+
+/**
+ * Encapsulates the result of importing an {@link AssessmentPackage}, which includes
+ * the {@link ResolvedAssessmentObject} read in during the import process so that
+ * this can be reused rather than read in again.
+ *
+ * @see AssessmentPackageFileService#importAssessmentPackage(uk.ac.ed.ph.qtiworks.domain.entities.User, org.springframework.web.multipart.MultipartFile, boolean)
+ *
+ * @author David McKain
+ */
+public final class ImportedAssessmentPackage {
+
+    private final AssessmentPackage assessmentPackage;
+    private final ResolvedAssessmentObject<?> resolvedAssessmentObject;
+    private final AssessmentObjectValidationResult<?> validationResult;
+
+    public ImportedAssessmentPackage(final AssessmentPackage assessmentPackage,
+            final ResolvedAssessmentObject<?> resolvedAssessmentObject,
+            final AssessmentObjectValidationResult<?> validationResult) {
+        this.assessmentPackage = assessmentPackage;
+        this.resolvedAssessmentObject = resolvedAssessmentObject;
+        this.validationResult = validationResult;
+    }
+
+    /** Returns the resulting partially-filled unpersisted {@link AssessmentPackage} */
+    public AssessmentPackage getAssessmentPackage() {
+        return assessmentPackage;
+    }
+
+    /**
+     * Returns the {@link ResolvedAssessmentObject} read in during the import, or null if
+     * the import reused an existing {@link AssessmentPackage} imported from identical data
+     */
+    public ResolvedAssessmentObject<?> getResolvedAssessmentObject() {
+        return resolvedAssessmentObject;
+    }
+
+    /** Returns the result of validation, or null if validation was not requested */
+    public AssessmentObjectValidationResult<?> getValidationResult() {
+        return validationResult;
+    }
+
+    @Override
+    public String toString() {
+        return ObjectUtilities.beanToString(this);
+    }
+}
@@ -61,6 +61,7 @@ public final class ItemDeliverySettingsTemplate extends DeliverySettingsTemplate
     private boolean allowSolutionWhenOpen;
     private boolean allowSolutionWhenEnded;
     private boolean allowCandidateComment;
+    private boolean allowTemplatePooling;
 
     //------------------------------------------------------------
 
@@ -159,4 +160,13 @@ public final class ItemDeliverySettingsTemplate extends DeliverySettingsTemplate
     public void setAllowCandidateComment(final boolean allowCandidateComment) {
         this.allowCandidateComment = allowCandidateComment;
     }
+
+
+    public boolean isAllowTemplatePooling() {
+        return allowTemplatePooling;
+    }
+
+    public void setAllowTemplatePooling(final boolean allowTemplatePooling) {
+        this.allowTemplatePooling = allowTemplatePooling;
+    }
 }
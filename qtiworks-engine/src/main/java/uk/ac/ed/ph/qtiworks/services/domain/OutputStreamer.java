@@ -33,6 +33,7 @@
  */
 package uk.ac.ed.ph.qtiworks.services.domain;
 
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.Date;
@@ -61,4 +62,50 @@ public interface OutputStreamer {
     void stream(String contentType, long contentLength, Date lastModifiedTime, InputStream resultStream)
         throws IOException;
 
+    /**
+     * Called before {@link #stream(String, long, Date, InputStream)} when the data to be streamed
+     * is known never to change, and is uniquely identified by the given fingerprint.
+     * <p>
+     * If the recipient already has this data, the implementor may deal with this (e.g. by sending
+     * an HTTP 304 response) and return true, in which case nothing further will be streamed.
+     * Otherwise the implementor should return false, and may use the fingerprint (e.g. to generate
+     * an HTTP entity tag) when the data is subsequently streamed.
+     *
+     * @param fingerprint fingerprint for the data, which will not be null
+     *
+     * @throws IOException if the implementor fails to respond successfully
+     */
+    boolean offerFingerprint(String fingerprint)
+        throws IOException;
+
+    /**
+     * Like {@link #offerFingerprint(String)}, but additionally guarantees that the data
+     * having this fingerprint will always be byte-for-byte identical. The implementor may
+     * therefore use a strong entity tag and honour requests for parts of the data
+     * (e.g. HTTP <code>Range</code> requests).
+     *
+     * @param fingerprint fingerprint for the data, which will not be null
+     *
+     * @throws IOException if the implementor fails to respond successfully
+     */
+    boolean offerImmutableFingerprint(String fingerprint)
+        throws IOException;
+
+    /**
+     * Callback should do whatever is required with the data in the given {@link File}.
+     * This allows the implementor to transfer the data more efficiently than
+     * {@link #stream(String, long, Date, InputStream)} would.
+     * <p>
+     * The {@link File} may be deleted once this returns, so the implementor must have
+     * finished with it by then.
+     *
+     * @param contentType
+     * @param file
+     * @param lastModifiedTime
+     *
+     * @throws IOException if the implementor fails to stream the data successfully
+     */
+    void streamFile(String contentType, File file, Date lastModifiedTime)
+        throws IOException;
+
 }
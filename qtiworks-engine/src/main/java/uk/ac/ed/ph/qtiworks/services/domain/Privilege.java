@@ -53,6 +53,8 @@ public enum Privilege {
 
     PROCTOR_SESSION,
 
+    VIEW_METRICS,
+
     ;
 
 }
@@ -0,0 +1,76 @@
+/* Copyright (c) 2012-2013, University of Edinburgh.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice, this
+ *   list of conditions and the following disclaimer in the documentation and/or
+ *   other materials provided with the distribution.
+ *
+ * * Neither the name of the University of Edinburgh nor the names of its
+ *   contributors may be used to endorse or promote products derived from this
+ *   software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ *
+ * This software is derived from (and contains code from) QTItools and MathAssessEngine.
+ * QTItools is (c) 2008, University of Southampton.
+ * MathAssessEngine is (c) 2010, University of Edinburgh.
+ */
+package uk.ac.ed.ph.qtiworks.services.metrics;
+
+import uk.ac.ed.ph.qtiworks.mathassess.MathAssessExtensionPackage;
+import uk.ac.ed.ph.qtiworks.mathassess.glue.maxima.CasCallListener;
+
+import uk.ac.ed.ph.jqtiplus.internal.util.Assert;
+
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * {@link CasCallListener} that times the CAS work done for each of the MathAssess operators
+ * using {@link Timer}s from a {@link MetricsRegistry}, named <code>maxima.cas.casCompare</code> etc.
+ * <p>
+ * This should be set on the {@link MathAssessExtensionPackage} before it is started.
+ * <p>
+ * An instance of this class is safe to use concurrently by multiple threads.
+ *
+ * @author David McKain
+ */
+public final class CasCallMetricsListener implements CasCallListener {
+
+    private final Map<CasCallType, Timer> timerMap;
+
+    public CasCallMetricsListener(final MetricsRegistry metricsRegistry) {
+        Assert.notNull(metricsRegistry, "metricsRegistry");
+        this.timerMap = new EnumMap<CasCallType, Timer>(CasCallType.class);
+        timerMap.put(CasCallType.CAS_COMPARE, metricsRegistry.timer("maxima.cas.casCompare"));
+        timerMap.put(CasCallType.CAS_CONDITION, metricsRegistry.timer("maxima.cas.casCondition"));
+        timerMap.put(CasCallType.CAS_PROCESS, metricsRegistry.timer("maxima.cas.casProcess"));
+        timerMap.put(CasCallType.SCRIPT_RULE, metricsRegistry.timer("maxima.cas.scriptRule"));
+    }
+
+    @Override
+    public void casCallCompleted(final CasCallType casCallType, final long durationNanos) {
+        timerMap.get(casCallType).recordNanos(durationNanos);
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + "@" + Integer.toHexString(System.identityHashCode(this));
+    }
+}
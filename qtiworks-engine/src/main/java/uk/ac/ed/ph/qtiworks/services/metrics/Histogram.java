@@ -0,0 +1,137 @@
+/* Copyright (c) 2012-2013, University of Edinburgh.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice, this
+ *   list of conditions and the following disclaimer in the documentation and/or
+ *   other materials provided with the distribution.
+ *
+ * * Neither the name of the University of Edinburgh nor the names of its
+ *   contributors may be used to endorse or promote products derived from this
+ *   software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ *
+ * This software is derived from (and contains code from) QTItools and MathAssessEngine.
+ * QTItools is (c) 2008, University of Southampton.
+ * MathAssessEngine is (c) 2010, University of Edinburgh.
+ */
+package uk.ac.ed.ph.qtiworks.services.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free histogram of non-negative long values, used for recording things like timings.
+ * <p>
+ * Values are counted in power-of-2 buckets, so percentiles reported by this class are
+ * approximate (to within a factor of 2), while the count, mean and maximum are exact.
+ * Recording a value is just a few atomic increments, so this is cheap enough to use on
+ * hot paths.
+ * <p>
+ * An instance of this class is safe to use concurrently by multiple threads.
+ *
+ * @author David McKain
+ */
+public final class Histogram {
+
+    /** Bucket i holds values v with 2^(i-1) <= v < 2^i, with bucket 0 holding zero */
+    private static final int BUCKET_COUNT = 64;
+
+    private final AtomicLongArray buckets;
+    private final AtomicLong count;
+    private final AtomicLong total;
+    private final AtomicLong max;
+
+    public Histogram() {
+        this.buckets = new AtomicLongArray(BUCKET_COUNT);
+        this.count = new AtomicLong();
+        this.total = new AtomicLong();
+        this.max = new AtomicLong();
+    }
+
+    public void record(final long value) {
+        final long safeValue = value > 0 ? value : 0L;
+        buckets.incrementAndGet(bucketIndex(safeValue));
+        count.incrementAndGet();
+        total.addAndGet(safeValue);
+        long currentMax;
+        do {
+            currentMax = max.get();
+        } while (safeValue > currentMax && !max.compareAndSet(currentMax, safeValue));
+    }
+
+    static int bucketIndex(final long value) {
+        return Math.min(BUCKET_COUNT - 1, 64 - Long.numberOfLeadingZeros(value));
+    }
+
+    public long getCount() {
+        return count.get();
+    }
+
+    public long getTotal() {
+        return total.get();
+    }
+
+    public long getMax() {
+        return max.get();
+    }
+
+    public double getMean() {
+        final long currentCount = count.get();
+        return currentCount > 0 ? (double) total.get() / currentCount : 0.0;
+    }
+
+    /**
+     * Returns an upper bound for the given percentile of recorded values, which will be
+     * at most twice the true value. Returns 0 if nothing has been recorded yet.
+     *
+     * @param percentile required percentile, between 0 and 100
+     */
+    public long getPercentile(final double percentile) {
+        final long[] snapshot = new long[BUCKET_COUNT];
+        long snapshotCount = 0;
+        for (int i=0; i<BUCKET_COUNT; i++) {
+            snapshot[i] = buckets.get(i);
+            snapshotCount += snapshot[i];
+        }
+        if (snapshotCount==0) {
+            return 0L;
+        }
+        final long threshold = (long) Math.ceil(snapshotCount * Math.max(0.0, Math.min(100.0, percentile)) / 100.0);
+        long seen = 0;
+        for (int i=0; i<BUCKET_COUNT; i++) {
+            seen += snapshot[i];
+            if (seen >= threshold && seen > 0) {
+                /* Report the bucket's upper bound, capped by the exact maximum */
+                final long upperBound = i < BUCKET_COUNT - 1 ? (1L << i) - 1 : Long.MAX_VALUE;
+                return Math.min(upperBound, max.get());
+            }
+        }
+        return max.get();
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + "@" + Integer.toHexString(System.identityHashCode(this))
+                + "(count=" + getCount()
+                + ",mean=" + getMean()
+                + ",max=" + getMax()
+                + ")";
+    }
+}
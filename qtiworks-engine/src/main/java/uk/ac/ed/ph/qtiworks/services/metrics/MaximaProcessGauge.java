@@ -0,0 +1,136 @@
+/* Copyright (c) 2012-2013, University of Edinburgh.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice, this
+ *   list of conditions and the following disclaimer in the documentation and/or
+ *   other materials provided with the distribution.
+ *
+ * * Neither the name of the University of Edinburgh nor the names of its
+ *   contributors may be used to endorse or promote products derived from this
+ *   software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ *
+ * This software is derived from (and contains code from) QTItools and MathAssessEngine.
+ * QTItools is (c) 2008, University of Southampton.
+ * MathAssessEngine is (c) 2010, University of Edinburgh.
+ */
+package uk.ac.ed.ph.qtiworks.services.metrics;
+
+import uk.ac.ed.ph.qtiworks.QtiWorksLogicException;
+import uk.ac.ed.ph.qtiworks.mathassess.MathAssessExtensionPackage;
+import uk.ac.ed.ph.qtiworks.mathassess.glue.maxima.MaximaProcessMetrics;
+
+import uk.ac.ed.ph.jqtiplus.internal.util.Assert;
+
+/**
+ * {@link Gauge} reading one of the statistics gathered by the {@link MaximaProcessMetrics}
+ * of a {@link MathAssessExtensionPackage}. Values are unavailable until the package's Maxima
+ * process pool has been started.
+ *
+ * @author David McKain
+ */
+public final class MaximaProcessGauge implements Gauge {
+
+    /** Enumerates the statistics that can be read */
+    public static enum Statistic {
+        LAUNCH_COUNT,
+        MEAN_LAUNCH_MILLIS,
+        CALL_COUNT,
+        MEAN_CALL_MILLIS,
+        MAX_CALL_MILLIS,
+        TIMEOUT_COUNT,
+        RESET_COUNT,
+        MEAN_RESET_MILLIS,
+        ;
+    }
+
+    private final MathAssessExtensionPackage mathAssessExtensionPackage;
+    private final Statistic statistic;
+
+    public MaximaProcessGauge(final MathAssessExtensionPackage mathAssessExtensionPackage, final Statistic statistic) {
+        Assert.notNull(mathAssessExtensionPackage, "mathAssessExtensionPackage");
+        Assert.notNull(statistic, "statistic");
+        this.mathAssessExtensionPackage = mathAssessExtensionPackage;
+        this.statistic = statistic;
+    }
+
+    /**
+     * Convenience method that registers a {@link MaximaProcessGauge} for each {@link Statistic}
+     * with the given {@link MetricsRegistry}, named <code>maxima.launchCount</code> etc.
+     */
+    public static void registerAll(final MetricsRegistry metricsRegistry, final MathAssessExtensionPackage mathAssessExtensionPackage) {
+        registerGauge(metricsRegistry, mathAssessExtensionPackage, "maxima.launchCount", Statistic.LAUNCH_COUNT);
+        registerGauge(metricsRegistry, mathAssessExtensionPackage, "maxima.meanLaunchMillis", Statistic.MEAN_LAUNCH_MILLIS);
+        registerGauge(metricsRegistry, mathAssessExtensionPackage, "maxima.callCount", Statistic.CALL_COUNT);
+        registerGauge(metricsRegistry, mathAssessExtensionPackage, "maxima.meanCallMillis", Statistic.MEAN_CALL_MILLIS);
+        registerGauge(metricsRegistry, mathAssessExtensionPackage, "maxima.maxCallMillis", Statistic.MAX_CALL_MILLIS);
+        registerGauge(metricsRegistry, mathAssessExtensionPackage, "maxima.timeoutCount", Statistic.TIMEOUT_COUNT);
+        registerGauge(metricsRegistry, mathAssessExtensionPackage, "maxima.resetCount", Statistic.RESET_COUNT);
+        registerGauge(metricsRegistry, mathAssessExtensionPackage, "maxima.meanResetMillis", Statistic.MEAN_RESET_MILLIS);
+    }
+
+    private static void registerGauge(final MetricsRegistry metricsRegistry, final MathAssessExtensionPackage mathAssessExtensionPackage,
+            final String name, final Statistic statistic) {
+        metricsRegistry.registerGauge(name, new MaximaProcessGauge(mathAssessExtensionPackage, statistic));
+    }
+
+    @Override
+    public Number getValue() {
+        final MaximaProcessMetrics metrics = mathAssessExtensionPackage.getMaximaProcessMetrics();
+        if (metrics==null) {
+            return null;
+        }
+        switch (statistic) {
+            case LAUNCH_COUNT:
+                return Long.valueOf(metrics.getLaunchCount());
+
+            case MEAN_LAUNCH_MILLIS:
+                return Double.valueOf(metrics.getMeanLaunchMillis());
+
+            case CALL_COUNT:
+                return Long.valueOf(metrics.getCallCount());
+
+            case MEAN_CALL_MILLIS:
+                return Double.valueOf(metrics.getMeanCallMillis());
+
+            case MAX_CALL_MILLIS:
+                return Double.valueOf(metrics.getMaxCallMillis());
+
+            case TIMEOUT_COUNT:
+                return Long.valueOf(metrics.getTimeoutCount());
+
+            case RESET_COUNT:
+                return Long.valueOf(metrics.getResetCount());
+
+            case MEAN_RESET_MILLIS:
+                return Double.valueOf(metrics.getMeanResetMillis());
+
+            default:
+                throw new QtiWorksLogicException("Unexpected switch case " + statistic);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + "@" + Integer.toHexString(System.identityHashCode(this))
+                + "(statistic=" + statistic
+                + ")";
+    }
+}
@@ -0,0 +1,282 @@
+/* Copyright (c) 2012-2013, University of Edinburgh.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice, this
+ *   list of conditions and the following disclaimer in the documentation and/or
+ *   other materials provided with the distribution.
+ *
+ * * Neither the name of the University of Edinburgh nor the names of its
+ *   contributors may be used to endorse or promote products derived from this
+ *   software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ *
+ * This software is derived from (and contains code from) QTItools and MathAssessEngine.
+ * QTItools is (c) 2008, University of Southampton.
+ * MathAssessEngine is (c) 2010, University of Edinburgh.
+ */
+package uk.ac.ed.ph.qtiworks.services.metrics;
+
+import uk.ac.ed.ph.jqtiplus.internal.util.Assert;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.management.Attribute;
+import javax.management.AttributeList;
+import javax.management.AttributeNotFoundException;
+import javax.management.DynamicMBean;
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanInfo;
+import javax.management.MBeanOperationInfo;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.ReflectionException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+
+/**
+ * Central registry of the {@link Timer}s, {@link Counter}s and {@link Gauge}s used to monitor
+ * the performance of the main "hot paths" within QTIWorks (loading assessments, running
+ * processing, rendering, storing state, talking to Maxima and sending LTI outcomes).
+ * <p>
+ * Metrics are created on demand by name, and are exposed as a flat sorted snapshot via
+ * {@link #snapshot()}. This is also registered with the platform MBean server under
+ * {@link #OBJECT_NAME} so that it can be viewed with standard JMX tools.
+ * <p>
+ * An instance of this class is safe to use concurrently by multiple threads.
+ *
+ * @author David McKain
+ */
+@Service
+public class MetricsRegistry {
+
+    private static final Logger logger = LoggerFactory.getLogger(MetricsRegistry.class);
+
+    /** Name under which metrics are registered with the platform MBean server */
+    public static final String OBJECT_NAME = "uk.ac.ed.ph.qtiworks:type=Metrics";
+
+    private final ConcurrentMap<String, Timer> timerMap;
+    private final ConcurrentMap<String, Counter> counterMap;
+    private final ConcurrentMap<String, Gauge> gaugeMap;
+
+    /** Name of MBean registered during {@link #init()}, or null if registration didn't happen */
+    private ObjectName registeredObjectName;
+
+    public MetricsRegistry() {
+        this.timerMap = new ConcurrentHashMap<String, Timer>();
+        this.counterMap = new ConcurrentHashMap<String, Counter>();
+        this.gaugeMap = new ConcurrentHashMap<String, Gauge>();
+    }
+
+    @PostConstruct
+    public void init() {
+        try {
+            final ObjectName objectName = new ObjectName(OBJECT_NAME);
+            final MBeanServer mbeanServer = ManagementFactory.getPlatformMBeanServer();
+            mbeanServer.registerMBean(new MetricsMBean(), objectName);
+            registeredObjectName = objectName;
+            logger.info("Registered metrics MBean {}", objectName);
+        }
+        catch (final InstanceAlreadyExistsException e) {
+            logger.warn("Metrics MBean {} is already registered (e.g. by another QTIWorks instance in the same JVM). Metrics will not be available via JMX", OBJECT_NAME);
+        }
+        catch (final Exception e) {
+            logger.warn("Could not register metrics MBean {}. Metrics will not be available via JMX", OBJECT_NAME, e);
+        }
+    }
+
+    @PreDestroy
+    public void destroy() {
+        if (registeredObjectName!=null) {
+            try {
+                ManagementFactory.getPlatformMBeanServer().unregisterMBean(registeredObjectName);
+                logger.info("Unregistered metrics MBean {}", registeredObjectName);
+            }
+            catch (final Exception e) {
+                logger.warn("Could not unregister metrics MBean {}", registeredObjectName, e);
+            }
+            registeredObjectName = null;
+        }
+    }
+
+    //-------------------------------------------------
+
+    /**
+     * Returns the {@link Timer} having the given name, creating it if required.
+     */
+    public Timer timer(final String name) {
+        Assert.notNull(name, "name");
+        Timer result = timerMap.get(name);
+        if (result==null) {
+            final Timer newTimer = new Timer();
+            result = timerMap.putIfAbsent(name, newTimer);
+            if (result==null) {
+                result = newTimer;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns the {@link Counter} having the given name, creating it if required.
+     */
+    public Counter counter(final String name) {
+        Assert.notNull(name, "name");
+        Counter result = counterMap.get(name);
+        if (result==null) {
+            final Counter newCounter = new Counter();
+            result = counterMap.putIfAbsent(name, newCounter);
+            if (result==null) {
+                result = newCounter;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Registers the given {@link Gauge} under the given name, replacing any existing
+     * {@link Gauge} having the same name.
+     */
+    public void registerGauge(final String name, final Gauge gauge) {
+        Assert.notNull(name, "name");
+        Assert.notNull(gauge, "gauge");
+        gaugeMap.put(name, gauge);
+    }
+
+    //-------------------------------------------------
+
+    /**
+     * Returns a snapshot of all current metric values, keyed on name and sorted. Each
+     * {@link Timer} contributes several entries, having names suffixed by
+     * <code>.count</code>, <code>.meanMicros</code>, <code>.maxMicros</code>,
+     * <code>.p50Micros</code>, <code>.p95Micros</code> and <code>.p99Micros</code>.
+     * Gauges whose values are currently unavailable are omitted.
+     */
+    public SortedMap<String, Number> snapshot() {
+        final SortedMap<String, Number> result = new TreeMap<String, Number>();
+        for (final Entry<String, Timer> entry : timerMap.entrySet()) {
+            final String name = entry.getKey();
+            final Histogram histogram = entry.getValue().getHistogram();
+            result.put(name + ".count", Long.valueOf(histogram.getCount()));
+            result.put(name + ".meanMicros", Double.valueOf(histogram.getMean()));
+            result.put(name + ".maxMicros", Long.valueOf(histogram.getMax()));
+            result.put(name + ".p50Micros", Long.valueOf(histogram.getPercentile(50.0)));
+            result.put(name + ".p95Micros", Long.valueOf(histogram.getPercentile(95.0)));
+            result.put(name + ".p99Micros", Long.valueOf(histogram.getPercentile(99.0)));
+        }
+        for (final Entry<String, Counter> entry : counterMap.entrySet()) {
+            result.put(entry.getKey(), Long.valueOf(entry.getValue().getCount()));
+        }
+        for (final Entry<String, Gauge> entry : gaugeMap.entrySet()) {
+            final Number value;
+            try {
+                value = entry.getValue().getValue();
+            }
+            catch (final RuntimeException e) {
+                logger.warn("Gauge {} failed to return a value", entry.getKey(), e);
+                continue;
+            }
+            if (value!=null) {
+                result.put(entry.getKey(), value);
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + "@" + Integer.toHexString(System.identityHashCode(this))
+                + "(timers=" + timerMap.keySet()
+                + ",counters=" + counterMap.keySet()
+                + ",gauges=" + gaugeMap.keySet()
+                + ")";
+    }
+
+    //-------------------------------------------------
+
+    /**
+     * Read-only {@link DynamicMBean} exposing the current {@link #snapshot()}, with one
+     * attribute per entry.
+     */
+    private final class MetricsMBean implements DynamicMBean {
+
+        @Override
+        public Object getAttribute(final String attribute) throws AttributeNotFoundException {
+            final Number value = snapshot().get(attribute);
+            if (value==null) {
+                throw new AttributeNotFoundException("No metric called " + attribute);
+            }
+            return value;
+        }
+
+        @Override
+        public AttributeList getAttributes(final String[] attributes) {
+            final Map<String, Number> snapshot = snapshot();
+            final AttributeList result = new AttributeList();
+            for (final String attribute : attributes) {
+                final Number value = snapshot.get(attribute);
+                if (value!=null) {
+                    result.add(new Attribute(attribute, value));
+                }
+            }
+            return result;
+        }
+
+        @Override
+        public void setAttribute(final Attribute attribute) throws AttributeNotFoundException {
+            throw new AttributeNotFoundException("Metrics are read-only");
+        }
+
+        @Override
+        public AttributeList setAttributes(final AttributeList attributes) {
+            return new AttributeList();
+        }
+
+        @Override
+        public Object invoke(final String actionName, final Object[] params, final String[] signature)
+                throws ReflectionException {
+            throw new ReflectionException(new NoSuchMethodException(actionName), "No operations are supported");
+        }
+
+        @Override
+        public MBeanInfo getMBeanInfo() {
+            final List<MBeanAttributeInfo> attributeInfos = new ArrayList<MBeanAttributeInfo>();
+            for (final Entry<String, Number> entry : snapshot().entrySet()) {
+                attributeInfos.add(new MBeanAttributeInfo(entry.getKey(), entry.getValue().getClass().getName(),
+                        entry.getKey(), true, false, false));
+            }
+            return new MBeanInfo(MetricsRegistry.class.getName(), "QTIWorks performance metrics",
+                    attributeInfos.toArray(new MBeanAttributeInfo[attributeInfos.size()]),
+                    null, new MBeanOperationInfo[0], null);
+        }
+    }
+}
@@ -0,0 +1,129 @@
+/* Copyright (c) 2012-2013, University of Edinburgh.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice, this
+ *   list of conditions and the following disclaimer in the documentation and/or
+ *   other materials provided with the distribution.
+ *
+ * * Neither the name of the University of Edinburgh nor the names of its
+ *   contributors may be used to endorse or promote products derived from this
+ *   software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ *
+ * This software is derived from (and contains code from) QTItools and MathAssessEngine.
+ * QTItools is (c) 2008, University of Southampton.
+ * MathAssessEngine is (c) 2010, University of Edinburgh.
+ */
+package uk.ac.ed.ph.qtiworks.services.metrics;
+
+import uk.ac.ed.ph.jqtiplus.JqtiExtensionManager;
+import uk.ac.ed.ph.jqtiplus.JqtiLifecycleEventType;
+import uk.ac.ed.ph.jqtiplus.JqtiLifecycleListener;
+import uk.ac.ed.ph.jqtiplus.internal.util.Assert;
+
+/**
+ * {@link JqtiLifecycleListener} that times the JQTI+ processing phases (template processing,
+ * response processing and test outcome processing) using {@link Timer}s from a
+ * {@link MetricsRegistry}.
+ * <p>
+ * This should be passed to the {@link JqtiExtensionManager} when it is created.
+ * <p>
+ * Start times are held per thread, which is fine as JQTI+ session controllers are only
+ * ever used by a single thread at a time. (We use a plain {@link ThreadLocal} holding a
+ * <code>long[]</code> here so as not to pin this webapp's ClassLoader to pooled threads.)
+ * <p>
+ * An instance of this class is safe to use concurrently by multiple threads.
+ *
+ * @author David McKain
+ */
+public final class ProcessingMetricsListener implements JqtiLifecycleListener {
+
+    private static final int ITEM_TEMPLATE_PROCESSING = 0;
+    private static final int ITEM_RESPONSE_PROCESSING = 1;
+    private static final int TEST_OUTCOME_PROCESSING = 2;
+
+    private final Timer[] timers;
+    private final ThreadLocal<long[]> startTimesThreadLocal;
+
+    public ProcessingMetricsListener(final MetricsRegistry metricsRegistry) {
+        Assert.notNull(metricsRegistry, "metricsRegistry");
+        this.timers = new Timer[] {
+            metricsRegistry.timer("processing.item.template"),
+            metricsRegistry.timer("processing.item.response"),
+            metricsRegistry.timer("processing.test.outcome"),
+        };
+        this.startTimesThreadLocal = new ThreadLocal<long[]>();
+    }
+
+    @Override
+    public void lifecycleEvent(final Object source, final JqtiLifecycleEventType eventType) {
+        switch (eventType) {
+            case ITEM_TEMPLATE_PROCESSING_STARTING:
+                start(ITEM_TEMPLATE_PROCESSING);
+                break;
+
+            case ITEM_TEMPLATE_PROCESSING_FINISHED:
+                stop(ITEM_TEMPLATE_PROCESSING);
+                break;
+
+            case ITEM_RESPONSE_PROCESSING_STARTING:
+                start(ITEM_RESPONSE_PROCESSING);
+                break;
+
+            case ITEM_RESPONSE_PROCESSING_FINISHED:
+                stop(ITEM_RESPONSE_PROCESSING);
+                break;
+
+            case TEST_OUTCOME_PROCESSING_STARTING:
+                start(TEST_OUTCOME_PROCESSING);
+                break;
+
+            case TEST_OUTCOME_PROCESSING_FINISHED:
+                stop(TEST_OUTCOME_PROCESSING);
+                break;
+
+            default:
+                /* Ignore other events */
+                break;
+        }
+    }
+
+    private void start(final int phase) {
+        long[] startTimes = startTimesThreadLocal.get();
+        if (startTimes==null) {
+            startTimes = new long[timers.length];
+            startTimesThreadLocal.set(startTimes);
+        }
+        startTimes[phase] = timers[phase].start();
+    }
+
+    private void stop(final int phase) {
+        final long[] startTimes = startTimesThreadLocal.get();
+        if (startTimes!=null && startTimes[phase]!=0L) {
+            timers[phase].stop(startTimes[phase]);
+            startTimes[phase] = 0L;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + "@" + Integer.toHexString(System.identityHashCode(this));
+    }
+}
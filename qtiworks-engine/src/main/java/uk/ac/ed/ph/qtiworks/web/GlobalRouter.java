@@ -120,9 +120,25 @@ public final class GlobalRouter {
      * @return within-context session launch URL
      */
     private static String buildSessionStartWithinContextUrl(final long xid, final String xsrfToken, final AssessmentObjectType assessmentObjectType) {
+        return buildSessionBaseWithinContextUrl(xid, assessmentObjectType)
+                + "/" + xsrfToken;
+    }
+
+    /**
+     * Creates the within context URL that all URLs for the {@link CandidateSession} corresponding
+     * to the given {@link CandidateSessionTicket} start with.
+     *
+     * @param candidateSessionTicket ticket for the session
+     * @return within-context session base URL
+     */
+    public static String buildSessionBaseWithinContextUrl(final CandidateSessionTicket candidateSessionTicket) {
+        return buildSessionBaseWithinContextUrl(candidateSessionTicket.getCandidateSessionId(),
+                candidateSessionTicket.getAssessmentObjectType());
+    }
+
+    private static String buildSessionBaseWithinContextUrl(final long xid, final AssessmentObjectType assessmentObjectType) {
         return "/candidate/"
                 + (assessmentObjectType==AssessmentObjectType.ASSESSMENT_ITEM ? "itemsession" : "testsession")
-                + "/" + xid
-                + "/" + xsrfToken;
+                + "/" + xid;
     }
 }
@@ -33,16 +33,23 @@
  */
 package uk.ac.ed.ph.qtiworks.web;
 
+import uk.ac.ed.ph.qtiworks.services.ServiceUtilities;
 import uk.ac.ed.ph.qtiworks.services.domain.OutputStreamer;
 
 import uk.ac.ed.ph.jqtiplus.internal.util.Assert;
 
+import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
 import java.util.Date;
 
 import javax.servlet.ServletOutputStream;
+import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
 import com.google.common.io.ByteStreams;
@@ -54,6 +61,11 @@ import com.google.common.io.ByteStreams;
  * This supports optional caching for resources via entity tags where it is considered safe
  * or sensible to do so.
  * <p>
+ * Data identified via {@link #offerImmutableFingerprint(String)} gets a strong entity tag,
+ * and single HTTP <code>Range</code> requests for it are honoured, which browsers rely on
+ * for seeking within audio and video. Files are sent using the container's
+ * <code>sendfile</code> support (where available) or {@link FileChannel#transferTo(long, long, WritableByteChannel)}.
+ * <p>
  * Developer note: an instance of this class should be instantiated and used once
  * for a given {@link HttpServletResponse}, and then discarded.
  *
@@ -61,22 +73,135 @@ import com.google.common.io.ByteStreams;
  */
 public final class ServletOutputStreamer implements OutputStreamer {
 
+    /* Request attributes used by Tomcat to support sendfile */
+    private static final String SENDFILE_SUPPORT_ATTRIBUTE = "org.apache.tomcat.sendfile.support";
+    private static final String SENDFILE_FILENAME_ATTRIBUTE = "org.apache.tomcat.sendfile.filename";
+    private static final String SENDFILE_START_ATTRIBUTE = "org.apache.tomcat.sendfile.start";
+    private static final String SENDFILE_END_ATTRIBUTE = "org.apache.tomcat.sendfile.end";
+
+    private final HttpServletRequest httpServletRequest;
     private final HttpServletResponse httpServletResponse;
-    private final String etag;
+    private final String requestEtag;
+    private String etag;
+    private boolean immutable;
 
     public ServletOutputStreamer(final HttpServletResponse httpServletResponse, final String etag) {
         Assert.notNull(httpServletResponse, "httpServletResponse");
+        this.httpServletRequest = null;
         this.httpServletResponse = httpServletResponse;
+        this.requestEtag = null;
         this.etag = etag;
+        this.immutable = false;
+    }
+
+    /**
+     * Creates an instance that will honour the <code>If-None-Match</code> header of the given
+     * {@link HttpServletRequest} for data having a fingerprint offered via
+     * {@link #offerFingerprint(String)} or {@link #offerImmutableFingerprint(String)}.
+     */
+    public ServletOutputStreamer(final HttpServletRequest httpServletRequest, final HttpServletResponse httpServletResponse) {
+        Assert.notNull(httpServletRequest, "httpServletRequest");
+        Assert.notNull(httpServletResponse, "httpServletResponse");
+        this.httpServletRequest = httpServletRequest;
+        this.httpServletResponse = httpServletResponse;
+        this.requestEtag = httpServletRequest.getHeader("If-None-Match");
+        this.etag = null;
+        this.immutable = false;
+    }
+
+    @Override
+    public boolean offerFingerprint(final String fingerprint) {
+        Assert.notNull(fingerprint, "fingerprint");
+        return offerEtag(WebUtilities.computeEtag(fingerprint));
+    }
+
+    @Override
+    public boolean offerImmutableFingerprint(final String fingerprint) {
+        Assert.notNull(fingerprint, "fingerprint");
+        this.immutable = true;
+        return offerEtag(WebUtilities.computeStrongEtag(fingerprint));
+    }
+
+    private boolean offerEtag(final String offeredEtag) {
+        this.etag = offeredEtag;
+        if (requestEtag!=null && WebUtilities.etagsMatchWeakly(requestEtag, offeredEtag)) {
+            httpServletResponse.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+            httpServletResponse.setHeader("ETag", offeredEtag);
+            httpServletResponse.setHeader("Cache-Control", "private, must-revalidate");
+            return true;
+        }
+        return false;
     }
 
     @Override
     public void stream(final String contentType, final long contentLength, final Date lastModifiedTime,
             final InputStream resultStream)
             throws IOException {
-        /* Set appropriate headers */
+        final ByteRange byteRange = setHeaders(contentType, contentLength, lastModifiedTime);
+        if (byteRange==ByteRange.UNSATISFIABLE) {
+            return;
+        }
+
+        /* Finally stream data to ServletOutputStream */
+        final ServletOutputStream servletOutputStream = httpServletResponse.getOutputStream();
+        if (byteRange!=null) {
+            ByteStreams.skipFully(resultStream, byteRange.start);
+            ByteStreams.copy(ByteStreams.limit(resultStream, byteRange.getLength()), servletOutputStream);
+        }
+        else {
+            ByteStreams.copy(resultStream, servletOutputStream);
+        }
+    }
+
+    @Override
+    public void streamFile(final String contentType, final File file, final Date lastModifiedTime)
+            throws IOException {
+        final long fileLength = file.length();
+        final ByteRange byteRange = setHeaders(contentType, fileLength, lastModifiedTime);
+        if (byteRange==ByteRange.UNSATISFIABLE) {
+            return;
+        }
+        final long start = byteRange!=null ? byteRange.start : 0L;
+        final long length = byteRange!=null ? byteRange.getLength() : fileLength;
+
+        /* Let the container send immutable files itself if it can. (We can't do this for
+         * other files as they may be deleted as soon as we return.) */
+        if (immutable && httpServletRequest!=null
+                && Boolean.TRUE.equals(httpServletRequest.getAttribute(SENDFILE_SUPPORT_ATTRIBUTE))) {
+            httpServletRequest.setAttribute(SENDFILE_FILENAME_ATTRIBUTE, file.getCanonicalPath());
+            httpServletRequest.setAttribute(SENDFILE_START_ATTRIBUTE, Long.valueOf(start));
+            httpServletRequest.setAttribute(SENDFILE_END_ATTRIBUTE, Long.valueOf(start + length));
+            return;
+        }
+
+        /* Otherwise transfer directly from the FileChannel */
+        final WritableByteChannel outputChannel = Channels.newChannel(httpServletResponse.getOutputStream());
+        FileInputStream fileInputStream = null;
+        try {
+            fileInputStream = new FileInputStream(file);
+            final FileChannel fileChannel = fileInputStream.getChannel();
+            long position = start;
+            final long end = start + length;
+            while (position < end) {
+                final long transferred = fileChannel.transferTo(position, end - position, outputChannel);
+                if (transferred <= 0) {
+                    break; /* (File must have been truncated) */
+                }
+                position += transferred;
+            }
+        }
+        finally {
+            ServiceUtilities.ensureClose(fileInputStream);
+        }
+    }
+
+    /**
+     * Sets up the response status and headers, returning the {@link ByteRange} that should
+     * be sent, {@link ByteRange#UNSATISFIABLE} if nothing should be sent, or null if all
+     * of the data should be sent.
+     */
+    private ByteRange setHeaders(final String contentType, final long contentLength, final Date lastModifiedTime) {
         httpServletResponse.setContentType(contentType);
-        httpServletResponse.setContentLength((int) contentLength); /* Huge files aren't going to happen... */
         if (lastModifiedTime!=null) {
             httpServletResponse.setHeader("Last-Modified", WebUtilities.formatHttpDate(lastModifiedTime));
         }
@@ -90,8 +215,109 @@ public final class ServletOutputStreamer implements OutputStreamer {
             httpServletResponse.setHeader("Cache-Control", "private, no-cache, no-store, max-age=0, must-revalidate");
         }
 
-        /* Finally stream data to ServletOutputStream */
-        final ServletOutputStream servletOutputStream = httpServletResponse.getOutputStream();
-        ByteStreams.copy(resultStream, servletOutputStream);
+        /* Honour Range requests for immutable data */
+        final ByteRange byteRange = decideByteRange(contentLength);
+        if (immutable && contentLength >= 0) {
+            httpServletResponse.setHeader("Accept-Ranges", "bytes");
+        }
+        if (byteRange==ByteRange.UNSATISFIABLE) {
+            httpServletResponse.setStatus(HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE);
+            httpServletResponse.setHeader("Content-Range", "bytes */" + contentLength);
+        }
+        else if (byteRange!=null) {
+            httpServletResponse.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+            httpServletResponse.setHeader("Content-Range", "bytes " + byteRange.start + "-" + byteRange.end + "/" + contentLength);
+            setContentLength(byteRange.getLength());
+        }
+        else if (contentLength >= 0) {
+            setContentLength(contentLength);
+        }
+        return byteRange;
+    }
+
+    private void setContentLength(final long contentLength) {
+        /* (Servlet 2.5 only allows int lengths to be set directly) */
+        httpServletResponse.setHeader("Content-Length", Long.toString(contentLength));
+    }
+
+    private ByteRange decideByteRange(final long contentLength) {
+        if (!immutable || contentLength < 0 || httpServletRequest==null) {
+            return null;
+        }
+        final String rangeHeader = httpServletRequest.getHeader("Range");
+        if (rangeHeader==null) {
+            return null;
+        }
+        /* If-Range needs a strong match, otherwise the whole data must be sent */
+        final String ifRangeHeader = httpServletRequest.getHeader("If-Range");
+        if (ifRangeHeader!=null && !ifRangeHeader.equals(etag)) {
+            return null;
+        }
+        return ByteRange.parse(rangeHeader, contentLength);
+    }
+
+    //-------------------------------------------------
+
+    /**
+     * Represents a single (inclusive) range of bytes requested via the HTTP <code>Range</code> header.
+     */
+    static final class ByteRange {
+
+        /** Special value indicating that the requested range could not be satisfied */
+        static final ByteRange UNSATISFIABLE = new ByteRange(-1L, -1L);
+
+        final long start;
+        final long end;
+
+        ByteRange(final long start, final long end) {
+            this.start = start;
+            this.end = end;
+        }
+
+        long getLength() {
+            return end - start + 1;
+        }
+
+        /**
+         * Parses the given <code>Range</code> header for data of the given length.
+         * Returns null if the header should be ignored (e.g. it is not a single byte
+         * range, or is invalid), in which case all of the data should be sent.
+         */
+        static ByteRange parse(final String rangeHeader, final long contentLength) {
+            final String prefix = "bytes=";
+            if (!rangeHeader.startsWith(prefix) || rangeHeader.indexOf(',')!=-1) {
+                /* (We don't do multiple ranges, which is allowed) */
+                return null;
+            }
+            final String rangeSpec = rangeHeader.substring(prefix.length()).trim();
+            final int dashIndex = rangeSpec.indexOf('-');
+            if (dashIndex==-1) {
+                return null;
+            }
+            final String startString = rangeSpec.substring(0, dashIndex).trim();
+            final String endString = rangeSpec.substring(dashIndex + 1).trim();
+            try {
+                if (startString.isEmpty()) {
+                    /* Suffix range, e.g. "-500" means the last 500 bytes */
+                    final long suffixLength = Long.parseLong(endString);
+                    if (suffixLength <= 0 || contentLength==0) {
+                        return UNSATISFIABLE;
+                    }
+                    return new ByteRange(Math.max(0L, contentLength - suffixLength), contentLength - 1);
+                }
+                final long start = Long.parseLong(startString);
+                final long end = endString.isEmpty() ? Long.MAX_VALUE : Long.parseLong(endString);
+                if (start < 0 || end < start) {
+                    return null;
+                }
+                if (start >= contentLength) {
+                    return UNSATISFIABLE;
+                }
+                return new ByteRange(start, Math.min(end, contentLength - 1));
+            }
+            catch (final NumberFormatException e) {
+                return null;
+            }
+        }
     }
 }
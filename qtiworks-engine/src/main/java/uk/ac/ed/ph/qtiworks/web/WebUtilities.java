@@ -78,4 +78,28 @@ public final class WebUtilities {
         final String digest = ServiceUtilities.computeSha1Digest(fingerprint);
         return "W/\"" + digest + "\""; /* (We'll always use weak etags for now) */
     }
+
+    /**
+     * Computes a strong entity tag for the given fingerprint. Only use this for data that is
+     * guaranteed to be byte-for-byte identical whenever it has the same fingerprint.
+     */
+    public static String computeStrongEtag(final String fingerprint) {
+        final String digest = ServiceUtilities.computeSha1Digest(fingerprint);
+        return "\"" + digest + "\"";
+    }
+
+    /**
+     * Tests whether the given <code>If-None-Match</code> header value matches the given entity tag,
+     * using the weak comparison that HTTP specifies for this header.
+     */
+    public static boolean etagsMatchWeakly(final String ifNoneMatchHeader, final String etag) {
+        final String opaqueTag = etag.replaceFirst("^W/", "");
+        for (final String candidate : ifNoneMatchHeader.split(",")) {
+            final String trimmed = candidate.trim();
+            if ("*".equals(trimmed) || opaqueTag.equals(trimmed.replaceFirst("^W/", ""))) {
+                return true;
+            }
+        }
+        return false;
+    }
 }
\ No newline at end of file
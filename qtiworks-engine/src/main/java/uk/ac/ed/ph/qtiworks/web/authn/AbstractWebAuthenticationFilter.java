@@ -54,10 +54,20 @@ public abstract class AbstractWebAuthenticationFilter extends AbstractWebFilterU
     public final void doWebFilter(final HttpServletRequest httpServletRequest,
             final HttpServletResponse httpServletResponse, final FilterChain filterChain)
             throws IOException, ServletException {
-        final HttpSession httpSession = httpServletRequest.getSession();
+        final HttpSession httpSession = httpServletRequest.getSession(isHttpSessionRequired());
         doFilterAuthentication(httpServletRequest, httpServletResponse, filterChain, httpSession);
     }
 
+    /**
+     * Subclasses may override this to return false if they don't need an {@link HttpSession}
+     * to be created. In this case, the {@link HttpSession} passed to
+     * {@link #doFilterAuthentication(HttpServletRequest, HttpServletResponse, FilterChain, HttpSession)}
+     * will be null if one doesn't already exist.
+     */
+    protected boolean isHttpSessionRequired() {
+        return true;
+    }
+
     protected abstract void doFilterAuthentication(final HttpServletRequest httpServletRequest,
             final HttpServletResponse httpServletResponse, final FilterChain filterChain,
             final HttpSession httpSession)
@@ -34,12 +34,16 @@
 package uk.ac.ed.ph.qtiworks.web.candidate;
 
 import uk.ac.ed.ph.qtiworks.QtiWorksLogicException;
+import uk.ac.ed.ph.qtiworks.config.beans.QtiWorksDeploymentSettings;
 import uk.ac.ed.ph.qtiworks.domain.entities.CandidateSession;
 import uk.ac.ed.ph.qtiworks.domain.entities.User;
 import uk.ac.ed.ph.qtiworks.services.dao.CandidateSessionDao;
 import uk.ac.ed.ph.qtiworks.services.dao.UserDao;
+import uk.ac.ed.ph.qtiworks.web.GlobalRouter;
 import uk.ac.ed.ph.qtiworks.web.authn.AbstractWebAuthenticationFilter;
 
+import uk.ac.ed.ph.jqtiplus.node.AssessmentObjectType;
+
 import java.io.IOException;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
@@ -47,6 +51,7 @@ import java.util.regex.Pattern;
 import javax.servlet.FilterChain;
 import javax.servlet.FilterConfig;
 import javax.servlet.ServletException;
+import javax.servlet.http.Cookie;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import javax.servlet.http.HttpSession;
@@ -60,6 +65,12 @@ import org.springframework.web.context.WebApplicationContext;
  * <p>
  * We use a combination of a {@link CandidateSessionTicket} and an XSRF token to authorise access
  * to a particular {@link CandidateSession}.
+ * <p>
+ * Tickets are normally stored in the {@link HttpSession}. If a signing secret has been configured
+ * (see {@link QtiWorksDeploymentSettings#getCandidateTicketSecret()}) then the ticket is instead
+ * carried in a cookie as a signed token (see {@link SignedCandidateSessionTicketCodec}),
+ * which can be verified by any node without needing the {@link HttpSession}. The XSRF token in
+ * the URL must still match the one inside the (verified) ticket.
  *
  * @author David McKain
  */
@@ -79,14 +90,32 @@ public final class CandidateSessionAuthenticationFilter extends AbstractWebAuthe
      */
     public static final String CANDIDATE_SESSION_CONTEXT_REQUEST_ATTRIBUTE_NAME = "qtiworks.web.authn.candidateSessionContext";
 
+    /**
+     * Pattern for the pathInfo of candidate session requests, which should be of the form
+     * /(item|test)session/{xid}/{xsrfToken}/...
+     */
+    private static final Pattern pathPattern = Pattern.compile("^/(item|test)session/(\\d+)/([A-Za-z0-9]+)(/|$)");
+
     private UserDao userDao;
     private CandidateSessionDao candidateSessionDao;
 
+    /** Codec for signed tickets, or null if tickets are being stored in the HTTP session */
+    private SignedCandidateSessionTicketCodec signedTicketCodec;
+
     @Override
     protected void initWithApplicationContext(final FilterConfig filterConfig, final WebApplicationContext webApplicationContext)
             throws Exception {
         candidateSessionDao = webApplicationContext.getBean(CandidateSessionDao.class);
         userDao = webApplicationContext.getBean(UserDao.class);
+        signedTicketCodec = SignedCandidateSessionTicketCodec.createIfEnabled(webApplicationContext.getBean(QtiWorksDeploymentSettings.class));
+        if (signedTicketCodec!=null) {
+            logger.info("Using signed CandidateSessionTickets via {}", signedTicketCodec);
+        }
+    }
+
+    @Override
+    protected boolean isHttpSessionRequired() {
+        return signedTicketCodec==null;
     }
 
     @Override
@@ -94,17 +123,16 @@ public final class CandidateSessionAuthenticationFilter extends AbstractWebAuthe
             final HttpServletResponse httpServletResponse, final FilterChain filterChain,
             final HttpSession httpSession)
             throws IOException, ServletException {
-        /* Determine which CandidateSession we're authenticating from pathInfo,
-         * which should be of the form /(item|test)session/{xid}/{xsrfToken}/... */
+        /* Determine which CandidateSession we're authenticating from pathInfo */
         final String pathInfo = httpServletRequest.getPathInfo();
-        final Pattern pathPattern = Pattern.compile("^/(?:item|test)session/(\\d+)/([A-Za-z0-9]+)(/|$)");
-        final Matcher pathMatcher = pathPattern.matcher(pathInfo);
+        final Matcher pathMatcher = pathPattern.matcher(pathInfo!=null ? pathInfo : "");
         if (!pathMatcher.find()) {
             logger.warn("Failed regex match on resource path {}", pathInfo);
             httpServletResponse.sendError(HttpServletResponse.SC_BAD_REQUEST);
             return;
         }
-        final String xidString = pathMatcher.group(1);
+        final String sessionType = pathMatcher.group(1);
+        final String xidString = pathMatcher.group(2);
         final long xid;
         try {
             xid = Long.parseLong(xidString);
@@ -115,28 +143,36 @@ public final class CandidateSessionAuthenticationFilter extends AbstractWebAuthe
             httpServletResponse.sendError(HttpServletResponse.SC_BAD_REQUEST);
             return;
         }
-        final String xsrfToken = pathMatcher.group(2);
+        final String xsrfToken = pathMatcher.group(3);
 
-        /* Make sure CandidateSession (still) exists */
-        final CandidateSession candidateSession = candidateSessionDao.findById(xid);
-        if (candidateSession==null) {
-            logger.warn("Failed to look up CandidateSession with ID {}", xid);
-            httpServletResponse.sendError(HttpServletResponse.SC_FORBIDDEN);
-            return;
-        }
-
-        /* The user's ticket for accessing this CandidateSession should have been stored in the HTTP session previously */
-        final CandidateSessionTicket candidateSessionTicket = getCandidateSessionTicketForHttpSession(httpSession, xid);
+        /* Find the user's ticket for accessing this CandidateSession */
+        final CandidateSessionTicket candidateSessionTicket = resolveCandidateSessionTicket(httpServletRequest, httpSession, xid, xsrfToken);
         if (candidateSessionTicket==null) {
-            logger.warn("Failed to retrieve CandidateSessionTicket from HttpSession for CandidateSession {}", xid);
+            logger.warn("Failed to obtain a valid CandidateSessionTicket for CandidateSession {}", xid);
             httpServletResponse.sendError(HttpServletResponse.SC_FORBIDDEN, "Forbidden. You do not have access to this assessment session. Please launch this assessment again.");
             return;
         }
 
-        /* Make sure supplied XSRF token agrees with the one already generated */
+        /* Make sure the supplied XSRF token agrees with the one already generated,
+         * and that the type of session agrees with the ticket */
         if (!candidateSessionTicket.getXsrfToken().equals(xsrfToken)) {
             logger.warn("XSRF Token mismatch on CandidateSession {}", xid);
             httpServletResponse.sendError(HttpServletResponse.SC_FORBIDDEN, "Forbidden. You do not have permission to access to this assessment session. Please launch this assessment again.");
+            return;
+        }
+        final AssessmentObjectType expectedType = "item".equals(sessionType) ? AssessmentObjectType.ASSESSMENT_ITEM : AssessmentObjectType.ASSESSMENT_TEST;
+        if (candidateSessionTicket.getAssessmentObjectType()!=expectedType) {
+            logger.warn("Session type mismatch on CandidateSession {}", xid);
+            httpServletResponse.sendError(HttpServletResponse.SC_FORBIDDEN);
+            return;
+        }
+
+        /* Make sure CandidateSession (still) exists */
+        final CandidateSession candidateSession = candidateSessionDao.findById(xid);
+        if (candidateSession==null) {
+            logger.warn("Failed to look up CandidateSession with ID {}", xid);
+            httpServletResponse.sendError(HttpServletResponse.SC_FORBIDDEN);
+            return;
         }
 
         /* Look up user running this session */
@@ -154,6 +190,39 @@ public final class CandidateSessionAuthenticationFilter extends AbstractWebAuthe
         filterChain.doFilter(httpServletRequest, httpServletResponse);
     }
 
+    /**
+     * Obtains the {@link CandidateSessionTicket} for the {@link CandidateSession} having the given
+     * ID (xid). If signed tickets are enabled, this is decoded from the ticket cookie, preferring
+     * a ticket for the given XSRF token if more than one cookie has been sent. Otherwise
+     * it should have been stored in the HTTP session previously. Returns null if no suitable
+     * ticket could be found.
+     */
+    private CandidateSessionTicket resolveCandidateSessionTicket(final HttpServletRequest httpServletRequest,
+            final HttpSession httpSession, final long xid, final String xsrfToken) {
+        if (signedTicketCodec!=null) {
+            final Cookie[] cookies = httpServletRequest.getCookies();
+            if (cookies!=null) {
+                final long timestamp = System.currentTimeMillis();
+                CandidateSessionTicket result = null;
+                for (final Cookie cookie : cookies) {
+                    if (SignedCandidateSessionTicketCodec.COOKIE_NAME.equals(cookie.getName())) {
+                        final CandidateSessionTicket signedTicket = signedTicketCodec.decode(cookie.getValue(), timestamp);
+                        if (signedTicket!=null && signedTicket.getCandidateSessionId()==xid) {
+                            if (signedTicket.getXsrfToken().equals(xsrfToken)) {
+                                return signedTicket;
+                            }
+                            result = signedTicket;
+                        }
+                    }
+                }
+                if (result!=null) {
+                    return result;
+                }
+            }
+        }
+        return httpSession!=null ? getCandidateSessionTicketForHttpSession(httpSession, xid) : null;
+    }
+
     //-------------------------------------------------
     // CandidateSession authentication at HTTP Session level
 
@@ -162,6 +231,26 @@ public final class CandidateSessionAuthenticationFilter extends AbstractWebAuthe
         httpSession.setAttribute(getCandidateSessionTicketSessionKey(xid), candidateSessionTicket);
     }
 
+    //-------------------------------------------------
+    // CandidateSession authentication using signed tickets
+
+    /**
+     * Sends the browser a cookie carrying the given {@link CandidateSessionTicket} as a signed token,
+     * scoped to the URLs of its {@link CandidateSession}.
+     *
+     * @param httpServletResponse response to add the cookie to
+     * @param contextPath context path of the web application
+     * @param candidateSessionTicket ticket to send
+     * @param signedTicketCodec codec used to sign the ticket
+     */
+    public static void authenticateUserWithSignedTicketCookie(final HttpServletResponse httpServletResponse,
+            final String contextPath, final CandidateSessionTicket candidateSessionTicket,
+            final SignedCandidateSessionTicketCodec signedTicketCodec) {
+        final String cookiePath = contextPath + GlobalRouter.buildSessionBaseWithinContextUrl(candidateSessionTicket);
+        httpServletResponse.addHeader("Set-Cookie",
+                signedTicketCodec.createSetCookieHeader(candidateSessionTicket, cookiePath, System.currentTimeMillis()));
+    }
+
     /**
      * TODO: This is not currently being used. It would be nice to fix this, but access will be revoked anyway
      * once the HTTP session expires.
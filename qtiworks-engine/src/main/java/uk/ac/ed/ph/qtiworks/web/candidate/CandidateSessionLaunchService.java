@@ -34,6 +34,7 @@
 package uk.ac.ed.ph.qtiworks.web.candidate;
 
 import uk.ac.ed.ph.qtiworks.QtiWorksLogicException;
+import uk.ac.ed.ph.qtiworks.config.beans.QtiWorksDeploymentSettings;
 import uk.ac.ed.ph.qtiworks.domain.DomainConstants;
 import uk.ac.ed.ph.qtiworks.domain.DomainEntityNotFoundException;
 import uk.ac.ed.ph.qtiworks.domain.entities.Assessment;
@@ -62,7 +63,9 @@ import java.net.URI;
 import java.net.URISyntaxException;
 import java.util.List;
 
+import javax.annotation.PostConstruct;
 import javax.annotation.Resource;
+import javax.servlet.http.HttpServletResponse;
 import javax.servlet.http.HttpSession;
 
 import org.springframework.stereotype.Service;
@@ -97,13 +100,25 @@ public class CandidateSessionLaunchService {
     @Resource
     private CandidateSessionDao candidateSessionDao;
 
+    @Resource
+    private QtiWorksDeploymentSettings qtiWorksDeploymentSettings;
+
+    /** Codec for signed tickets, or null if tickets are being stored in the HTTP session */
+    private SignedCandidateSessionTicketCodec signedTicketCodec;
+
+    @PostConstruct
+    public void init() {
+        signedTicketCodec = SignedCandidateSessionTicketCodec.createIfEnabled(qtiWorksDeploymentSettings);
+    }
+
     //-------------------------------------------------
     // Anonymous session launching
 
-    public CandidateSessionTicket launchAnonymousCandidateSession(final HttpSession httpSession,
+    public CandidateSessionTicket launchAnonymousCandidateSession(final HttpSession httpSession, final HttpServletResponse httpServletResponse,
             final Delivery delivery, final String sessionExitReturnUrl)
             throws CandidateException {
         Assert.notNull(httpSession, "httpSession");
+        Assert.notNull(httpServletResponse, "httpServletResponse");
         Assert.notNull(delivery, "delivery");
 
         /* In this case the "candidate" should be the user who owns the Delivery, so let's check this here */
@@ -112,17 +127,18 @@ public class CandidateSessionLaunchService {
         if (!assessment.getOwnerUser().equals(candidate)) {
             logAndThrowLaunchException(candidate, delivery, CandidateExceptionReason.LAUNCH_ASSESSMENT_NO_ACCESS);
         }
-        return launchCandidateSession(httpSession, candidate, delivery, true, sessionExitReturnUrl, null, null);
+        return launchCandidateSession(httpSession, httpServletResponse, candidate, delivery, true, sessionExitReturnUrl, null, null);
     }
 
     //-------------------------------------------------
     // Session launching for web services
     // (This uses a slightly different 2-step launch process that avoids cookies.)
 
-    public CandidateSessionTicket launchWebServiceCandidateSession(final HttpSession httpSession,
+    public CandidateSessionTicket launchWebServiceCandidateSession(final HttpSession httpSession, final HttpServletResponse httpServletResponse,
             final long did, final String deliveryToken, final String sessionExitReturnUrl)
             throws CandidateException, DomainEntityNotFoundException {
         Assert.notNull(httpSession, "httpSession");
+        Assert.notNull(httpServletResponse, "httpServletResponse");
 
         /* Look up Delivery and compare with token */
         final Delivery delivery = deliveryDao.requireFindById(did);
@@ -143,7 +159,7 @@ public class CandidateSessionLaunchService {
         }
 
         /* OK then, we can finally launch a new CandidateSession */
-        return launchCandidateSession(httpSession, candidate, delivery, true, sessionExitReturnUrl, null, null);
+        return launchCandidateSession(httpSession, httpServletResponse, candidate, delivery, true, sessionExitReturnUrl, null, null);
     }
 
     /**
@@ -161,14 +177,15 @@ public class CandidateSessionLaunchService {
     //-------------------------------------------------
     // System sample launching
 
-    public CandidateSessionTicket launchSystemSampleSession(final HttpSession httpSession,
+    public CandidateSessionTicket launchSystemSampleSession(final HttpSession httpSession, final HttpServletResponse httpServletResponse,
             final long aid, final String sessionExitReturnUrl)
             throws DomainEntityNotFoundException, CandidateException {
         Assert.notNull(httpSession, "httpSession");
+        Assert.notNull(httpServletResponse, "httpServletResponse");
 
         final User candidate = identityService.assertCurrentThreadUser();
         final Delivery sampleDelivery = lookupSystemSampleDelivery(aid);
-        return launchCandidateSession(httpSession, candidate, sampleDelivery, true, sessionExitReturnUrl, null, null);
+        return launchCandidateSession(httpSession, httpServletResponse, candidate, sampleDelivery, true, sessionExitReturnUrl, null, null);
     }
 
     private Delivery lookupSystemSampleDelivery(final long aid)
@@ -195,12 +212,13 @@ public class CandidateSessionLaunchService {
     //----------------------------------------------------
     // Instructor mode
 
-    public CandidateSessionTicket launchInstructorTrialSession(final HttpSession httpSession,
+    public CandidateSessionTicket launchInstructorTrialSession(final HttpSession httpSession, final HttpServletResponse httpServletResponse,
             final User candidate, final Delivery delivery, final boolean authorMode,
             final String sessionExitReturnUrl)
             throws CandidateException {
         Assert.notNull(httpSession, "httpSession");
-        return launchCandidateSession(httpSession, candidate, delivery, authorMode, sessionExitReturnUrl, null, null);
+        Assert.notNull(httpServletResponse, "httpServletResponse");
+        return launchCandidateSession(httpSession, httpServletResponse, candidate, delivery, authorMode, sessionExitReturnUrl, null, null);
     }
 
     //----------------------------------------------------
@@ -212,11 +230,12 @@ public class CandidateSessionLaunchService {
      * <p>
      * Access controls are checked on the {@link Delivery}.
      */
-    public CandidateSessionTicket launchLinkLevelLtiCandidateSession(final HttpSession httpSession,
+    public CandidateSessionTicket launchLinkLevelLtiCandidateSession(final HttpSession httpSession, final HttpServletResponse httpServletResponse,
             final LtiUser candidate, final String sessionExitReturnUrl,
             final String lisOutcomeServiceUrl, final String lisResultSourcedid)
             throws CandidateException {
         Assert.notNull(httpSession, "httpSession");
+        Assert.notNull(httpServletResponse, "httpServletResponse");
         Assert.notNull(candidate, "candidate");
 
         /* Make sure this is the correct type of user */
@@ -233,17 +252,18 @@ public class CandidateSessionLaunchService {
         }
 
         /* Now launch session */
-        return launchCandidateSession(httpSession, candidate, delivery,
+        return launchCandidateSession(httpSession, httpServletResponse, candidate, delivery,
                 false /* Never use author mode here */,
                 sanitiseReturnUrl(sessionExitReturnUrl) /* Return URL might not be trustworthy */,
                 lisOutcomeServiceUrl, lisResultSourcedid);
     }
 
-    public CandidateSessionTicket launchDomainLevelLtiCandidateSession(final HttpSession httpSession,
+    public CandidateSessionTicket launchDomainLevelLtiCandidateSession(final HttpSession httpSession, final HttpServletResponse httpServletResponse,
             final LtiUser candidate, final LtiResource ltiResource,
             final String sessionExitReturnUrl, final String lisOutcomeServiceUrl, final String lisResultSourcedid)
             throws CandidateException {
         Assert.notNull(httpSession, "httpSession");
+        Assert.notNull(httpServletResponse, "httpServletResponse");
         Assert.notNull(candidate, "candidate");
         Assert.notNull(ltiResource, "ltiResource");
         if (candidate.getLtiLaunchType()!=LtiLaunchType.DOMAIN) {
@@ -262,7 +282,7 @@ public class CandidateSessionLaunchService {
         final boolean authorMode = candidate.getUserRole()==UserRole.INSTRUCTOR;
 
         /* Now launch session */
-        return launchCandidateSession(httpSession, candidate, delivery, authorMode,
+        return launchCandidateSession(httpSession, httpServletResponse, candidate, delivery, authorMode,
                 sanitiseReturnUrl(sessionExitReturnUrl) /* Return URL might not be trustworthy */,
                 lisOutcomeServiceUrl, lisResultSourcedid);
     }
@@ -272,7 +292,7 @@ public class CandidateSessionLaunchService {
     // NB: Caller should have checked that candidate is allowed to launch session before here,
     // and the sessionExitReturnUrl should have been sanitised (if appropriate) beforehand too.
 
-    private CandidateSessionTicket launchCandidateSession(final HttpSession httpSession,
+    private CandidateSessionTicket launchCandidateSession(final HttpSession httpSession, final HttpServletResponse httpServletResponse,
             final User candidate, final Delivery delivery, final boolean authorMode,
             final String sessionExitReturnUrl,
             final String lisOutcomeServiceUrl, final String lisResultSourcedid)
@@ -290,7 +310,14 @@ public class CandidateSessionLaunchService {
                 candidateSession.getId(),
                 delivery.getAssessment().getAssessmentType(),
                 sessionExitReturnUrl);
-        CandidateSessionAuthenticationFilter.authenticateUserForHttpSession(httpSession, candidateSessionTicket);
+        if (signedTicketCodec!=null) {
+            /* Send the ticket as a signed cookie for the session URLs, which will still carry the XSRF token */
+            CandidateSessionAuthenticationFilter.authenticateUserWithSignedTicketCookie(httpServletResponse,
+                    httpSession.getServletContext().getContextPath(), candidateSessionTicket, signedTicketCodec);
+        }
+        else {
+            CandidateSessionAuthenticationFilter.authenticateUserForHttpSession(httpSession, candidateSessionTicket);
+        }
 
         /* Caller should now issue appropriate redirect to session... */
         return candidateSessionTicket;
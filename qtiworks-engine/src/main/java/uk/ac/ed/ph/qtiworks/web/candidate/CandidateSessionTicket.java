@@ -46,6 +46,8 @@ import javax.servlet.http.HttpSession;
 /**
  * This "ticket" is created and stored in the HTTP session and grants access
  * for a particular {@link User} to a particular {@link CandidateSession}.
+ * (Alternatively, it may be carried within a cookie as a signed token
+ * created by {@link SignedCandidateSessionTicketCodec}.)
  * <p>
  * An instance of this will used to create a {@link CandidateSessionContext} for each
  * subsequent HTTP request, which is passed to the candidate service layer.
@@ -0,0 +1,244 @@
+/* Copyright (c) 2012-2013, University of Edinburgh.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice, this
+ *   list of conditions and the following disclaimer in the documentation and/or
+ *   other materials provided with the distribution.
+ *
+ * * Neither the name of the University of Edinburgh nor the names of its
+ *   contributors may be used to endorse or promote products derived from this
+ *   software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ *
+ * This software is derived from (and contains code from) QTItools and MathAssessEngine.
+ * QTItools is (c) 2008, University of Southampton.
+ * MathAssessEngine is (c) 2010, University of Edinburgh.
+ */
+package uk.ac.ed.ph.qtiworks.web.candidate;
+
+import uk.ac.ed.ph.qtiworks.QtiWorksLogicException;
+import uk.ac.ed.ph.qtiworks.config.beans.QtiWorksDeploymentSettings;
+import uk.ac.ed.ph.qtiworks.domain.entities.CandidateSession;
+
+import uk.ac.ed.ph.jqtiplus.internal.util.Assert;
+import uk.ac.ed.ph.jqtiplus.node.AssessmentObjectType;
+
+import java.nio.charset.Charset;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import javax.servlet.http.HttpSession;
+
+import com.google.common.io.BaseEncoding;
+
+/**
+ * Encodes {@link CandidateSessionTicket}s as self-contained, HMAC-signed and expiring tokens,
+ * so that any QTIWorks node sharing the same secret can verify access to a
+ * {@link CandidateSession} without needing to find the ticket in the {@link HttpSession}.
+ * <p>
+ * The resulting token is sent to the browser in an HttpOnly, Secure cookie scoped to the
+ * candidate session URLs (see {@link #createSetCookieHeader(CandidateSessionTicket, String, long)}),
+ * so it never appears in URLs. The URLs continue to carry the ticket's normal random XSRF
+ * token, which is included within the signed data and must match the one in the URL.
+ * <p>
+ * The token only contains characters from the URL-safe Base64 alphabet.
+ * It is made up of the encoded ticket data, followed by the encoded HMAC-SHA256
+ * signature of that data. The ticket data is signed but not encrypted.
+ * <p>
+ * An instance of this class is safe to use concurrently by multiple threads.
+ *
+ * @see CandidateSessionAuthenticationFilter
+ *
+ * @author David McKain
+ */
+public final class SignedCandidateSessionTicketCodec {
+
+    /** Name of the cookie carrying signed tickets */
+    public static final String COOKIE_NAME = "qtiworks-candidate-ticket";
+
+    private static final String HMAC_ALGORITHM = "HmacSHA256";
+    private static final String FORMAT_VERSION = "1";
+    private static final char FIELD_SEPARATOR = '\n';
+    private static final int FIELD_COUNT = 7;
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+    private static final BaseEncoding BASE64URL = BaseEncoding.base64Url().omitPadding();
+
+    /** Length of an encoded signature (32 bytes, encoded without padding) */
+    private static final int ENCODED_SIGNATURE_LENGTH = BASE64URL.encode(new byte[32]).length();
+
+    private final SecretKeySpec secretKey;
+    private final long lifetimeMillis;
+
+    /**
+     * @param secret shared secret used to sign tokens, which must be the same on every node.
+     *   Must not be null or empty.
+     * @param lifetimeMillis how long tokens remain valid after being created, in milliseconds
+     */
+    public SignedCandidateSessionTicketCodec(final String secret, final long lifetimeMillis) {
+        Assert.notNull(secret, "secret");
+        if (secret.isEmpty()) {
+            throw new IllegalArgumentException("Ticket signing secret must not be empty");
+        }
+        if (lifetimeMillis <= 0) {
+            throw new IllegalArgumentException("Ticket lifetime must be positive");
+        }
+        this.secretKey = new SecretKeySpec(secret.getBytes(UTF8), HMAC_ALGORITHM);
+        this.lifetimeMillis = lifetimeMillis;
+
+        /* Check the MAC algorithm is available now rather than on the first request */
+        createMac();
+    }
+
+    /**
+     * Creates a {@link SignedCandidateSessionTicketCodec} using the given deployment settings,
+     * returning null if signed tickets have not been enabled.
+     */
+    public static SignedCandidateSessionTicketCodec createIfEnabled(final QtiWorksDeploymentSettings qtiWorksDeploymentSettings) {
+        final String secret = qtiWorksDeploymentSettings.getCandidateTicketSecret();
+        if (secret==null || secret.isEmpty()) {
+            return null;
+        }
+        return new SignedCandidateSessionTicketCodec(secret, 60L * 1000 * qtiWorksDeploymentSettings.getCandidateTicketLifetime());
+    }
+
+    public long getLifetimeMillis() {
+        return lifetimeMillis;
+    }
+
+    /**
+     * Creates a signed token carrying the given {@link CandidateSessionTicket}, which will
+     * expire after {@link #getLifetimeMillis()}. The ticket's (random) XSRF token is included
+     * within the signed data, so that the token is only usable with URLs carrying that XSRF token.
+     *
+     * @param candidateSessionTicket ticket to encode, which must not be null
+     * @param timestamp current time (in milliseconds since the epoch)
+     */
+    public String encode(final CandidateSessionTicket candidateSessionTicket, final long timestamp) {
+        Assert.notNull(candidateSessionTicket, "candidateSessionTicket");
+        final String sessionExitReturnUrl = candidateSessionTicket.getSessionExitReturnUrl();
+        final String data = new StringBuilder()
+            .append(FORMAT_VERSION).append(FIELD_SEPARATOR)
+            .append(candidateSessionTicket.getXsrfToken()).append(FIELD_SEPARATOR)
+            .append(candidateSessionTicket.getUserId()).append(FIELD_SEPARATOR)
+            .append(candidateSessionTicket.getCandidateSessionId()).append(FIELD_SEPARATOR)
+            .append(candidateSessionTicket.getAssessmentObjectType().name()).append(FIELD_SEPARATOR)
+            .append(timestamp + lifetimeMillis).append(FIELD_SEPARATOR)
+            .append(sessionExitReturnUrl!=null ? sessionExitReturnUrl : "")
+            .toString();
+        final byte[] dataBytes = data.getBytes(UTF8);
+        return BASE64URL.encode(dataBytes) + BASE64URL.encode(sign(dataBytes));
+    }
+
+    /**
+     * Creates the value of a <code>Set-Cookie</code> header carrying a signed token for the given
+     * {@link CandidateSessionTicket}. The cookie is HttpOnly and Secure, is scoped to the given path
+     * and expires along with the token.
+     * <p>
+     * (This builds the header by hand as the Servlet 2.5 {@link javax.servlet.http.Cookie}
+     * class does not support HttpOnly.)
+     *
+     * @param candidateSessionTicket ticket to encode, which must not be null
+     * @param cookiePath path of the candidate session URLs the cookie should be sent to,
+     *   which must not be null
+     * @param timestamp current time (in milliseconds since the epoch)
+     */
+    public String createSetCookieHeader(final CandidateSessionTicket candidateSessionTicket,
+            final String cookiePath, final long timestamp) {
+        Assert.notNull(cookiePath, "cookiePath");
+        return COOKIE_NAME + "=" + encode(candidateSessionTicket, timestamp)
+                + "; Path=" + cookiePath
+                + "; Max-Age=" + (lifetimeMillis / 1000)
+                + "; Secure; HttpOnly";
+    }
+
+    /**
+     * Verifies and decodes a token previously created by {@link #encode(CandidateSessionTicket, long)}
+     * (on this or any other node sharing the same secret).
+     *
+     * @param token token to decode
+     * @param timestamp current time (in milliseconds since the epoch)
+     * @return decoded ticket, or null if the token is malformed, has not been signed with our
+     *   secret, or has expired.
+     */
+    public CandidateSessionTicket decode(final String token, final long timestamp) {
+        if (token==null || token.length() <= ENCODED_SIGNATURE_LENGTH) {
+            return null;
+        }
+        final byte[] dataBytes, signatureBytes;
+        try {
+            final int splitIndex = token.length() - ENCODED_SIGNATURE_LENGTH;
+            dataBytes = BASE64URL.decode(token.substring(0, splitIndex));
+            signatureBytes = BASE64URL.decode(token.substring(splitIndex));
+        }
+        catch (final IllegalArgumentException e) {
+            return null;
+        }
+        if (!MessageDigest.isEqual(signatureBytes, sign(dataBytes))) {
+            return null;
+        }
+
+        /* Signature is good, so data should be well-formed */
+        final String[] fields = new String(dataBytes, UTF8).split(String.valueOf(FIELD_SEPARATOR), FIELD_COUNT);
+        if (fields.length!=FIELD_COUNT || !FORMAT_VERSION.equals(fields[0]) || fields[1].isEmpty()) {
+            return null;
+        }
+        final long userId, candidateSessionId, expiryTime;
+        final AssessmentObjectType assessmentObjectType;
+        try {
+            userId = Long.parseLong(fields[2]);
+            candidateSessionId = Long.parseLong(fields[3]);
+            assessmentObjectType = AssessmentObjectType.valueOf(fields[4]);
+            expiryTime = Long.parseLong(fields[5]);
+        }
+        catch (final IllegalArgumentException e) {
+            return null;
+        }
+        if (timestamp >= expiryTime) {
+            return null;
+        }
+        final String sessionExitReturnUrl = !fields[6].isEmpty() ? fields[6] : null;
+        return new CandidateSessionTicket(fields[1], userId, candidateSessionId, assessmentObjectType, sessionExitReturnUrl);
+    }
+
+    private byte[] sign(final byte[] dataBytes) {
+        return createMac().doFinal(dataBytes);
+    }
+
+    private Mac createMac() {
+        try {
+            final Mac mac = Mac.getInstance(HMAC_ALGORITHM);
+            mac.init(secretKey);
+            return mac;
+        }
+        catch (final GeneralSecurityException e) {
+            throw new QtiWorksLogicException("Could not create " + HMAC_ALGORITHM + " Mac", e);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + "@" + Integer.toHexString(System.identityHashCode(this))
+                + "(lifetimeMillis=" + lifetimeMillis
+                + ")";
+    }
+}
@@ -54,6 +54,7 @@ import uk.ac.ed.ph.jqtiplus.node.test.AssessmentTest;
 import uk.ac.ed.ph.jqtiplus.validation.AssessmentObjectValidationResult;
 
 import javax.annotation.Resource;
+import javax.servlet.http.HttpServletResponse;
 import javax.servlet.http.HttpSession;
 import javax.validation.Valid;
 
@@ -99,7 +100,8 @@ public class AnonymousStandaloneRunner {
     }
 
     @RequestMapping(value="/standalonerunner", method=RequestMethod.POST)
-    public String handleUploadAndRunForm(final HttpSession httpSession, final Model model,
+    public String handleUploadAndRunForm(final HttpSession httpSession, final HttpServletResponse httpServletResponse,
+            final Model model,
             @Valid @ModelAttribute final StandaloneRunCommand command,
             final BindingResult errors) {
         /* Catch any binding errors */
@@ -117,7 +119,7 @@ public class AnonymousStandaloneRunner {
             }
             final Delivery delivery = assessmentManagementService.createDemoDelivery(assessment);
             final String sessionExitReturnUrl = anonymousRouter.buildWithinContextUrl("/standalonerunner");
-            final CandidateSessionTicket candidateSessionTicket = candidateSessionLaunchService.launchAnonymousCandidateSession(httpSession, delivery, sessionExitReturnUrl);
+            final CandidateSessionTicket candidateSessionTicket = candidateSessionLaunchService.launchAnonymousCandidateSession(httpSession, httpServletResponse, delivery, sessionExitReturnUrl);
             return GlobalRouter.buildSessionStartRedirect(candidateSessionTicket);
         }
         catch (final AssessmentPackageDataImportException e) {
@@ -187,7 +187,7 @@ public class SimpleRestRunner {
         try {
             /* Create new candidate session */
             final String sessionExistReturnUrl = "/anonymous/simplerestrunner/exit";
-            final CandidateSessionTicket candidateSessionTicket = candidateSessionLaunchService.launchWebServiceCandidateSession(httpSession, did, deliveryToken, sessionExistReturnUrl);
+            final CandidateSessionTicket candidateSessionTicket = candidateSessionLaunchService.launchWebServiceCandidateSession(httpSession, httpServletResponse, did, deliveryToken, sessionExistReturnUrl);
 
             /* Redirect to candidate dispatcher */
             final String launchUrl = httpServletRequest.getContextPath()
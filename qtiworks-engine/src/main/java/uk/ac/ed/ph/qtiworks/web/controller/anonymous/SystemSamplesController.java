@@ -50,6 +50,7 @@ import java.util.List;
 import java.util.Map;
 
 import javax.annotation.Resource;
+import javax.servlet.http.HttpServletResponse;
 import javax.servlet.http.HttpSession;
 
 import org.springframework.stereotype.Controller;
@@ -97,10 +98,10 @@ public class SystemSamplesController {
      */
     @RequestMapping(value="/samples/{sampleCategoryAnchor}/{aid}", method=RequestMethod.POST)
     public String startItemSession(@PathVariable final String sampleCategoryAnchor, @PathVariable final long aid,
-            final HttpSession httpSession)
+            final HttpSession httpSession, final HttpServletResponse httpServletResponse)
             throws DomainEntityNotFoundException, CandidateException {
         final String sessionExitReturnUrl = anonymousRouter.buildWithinContextUrl("/samples") + "#" + sampleCategoryAnchor;
-        final CandidateSessionTicket candidateSessionTicket = candidateSessionLaunchService.launchSystemSampleSession(httpSession, aid, sessionExitReturnUrl);
+        final CandidateSessionTicket candidateSessionTicket = candidateSessionLaunchService.launchSystemSampleSession(httpSession, httpServletResponse, aid, sessionExitReturnUrl);
         return GlobalRouter.buildSessionStartRedirect(candidateSessionTicket);
     }
 }
@@ -39,7 +39,6 @@ import uk.ac.ed.ph.qtiworks.services.IdentityService;
 import uk.ac.ed.ph.qtiworks.services.candidate.CandidateException;
 import uk.ac.ed.ph.qtiworks.services.candidate.CandidateRenderingService;
 import uk.ac.ed.ph.qtiworks.web.ServletOutputStreamer;
-import uk.ac.ed.ph.qtiworks.web.WebUtilities;
 import uk.ac.ed.ph.qtiworks.web.candidate.CandidateSessionAuthenticationFilter;
 import uk.ac.ed.ph.qtiworks.web.candidate.CandidateSessionContext;
 
@@ -163,17 +162,9 @@ public abstract class CandidateControllerBase {
             @PathVariable final long xid, @PathVariable final String xsrfToken,
             @RequestParam("href") final String fileHref)
             throws IOException, CandidateException {
-        final String fingerprint = "session/" + xid + "/" + xsrfToken + "/file/" + fileHref;
-        final String resourceEtag = WebUtilities.computeEtag(fingerprint);
-        final String requestEtag = httpServletRequest.getHeader("If-None-Match");
-        if (resourceEtag.equals(requestEtag)) {
-            httpServletResponse.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
-        }
-        else {
-            final ServletOutputStreamer outputStreamer = new ServletOutputStreamer(httpServletResponse, resourceEtag);
-            candidateRenderingService.streamAssessmentPackageFile(getCandidateSession(httpServletRequest),
-                    fileHref, outputStreamer);
-        }
+        final ServletOutputStreamer outputStreamer = new ServletOutputStreamer(httpServletRequest, httpServletResponse);
+        candidateRenderingService.streamAssessmentPackageFile(getCandidateSession(httpServletRequest),
+                fileHref, outputStreamer);
     }
 
     //----------------------------------------------------
@@ -185,16 +176,8 @@ public abstract class CandidateControllerBase {
     protected void streamAssessmentSource(final HttpServletRequest httpServletRequest, final HttpServletResponse httpServletResponse,
             final long xid, final String xsrfToken)
             throws IOException, CandidateException {
-        final String fingerprint = "session/" + xid + "/" + xsrfToken + "/source";
-        final String resourceEtag = WebUtilities.computeEtag(fingerprint);
-        final String requestEtag = httpServletRequest.getHeader("If-None-Match");
-        if (resourceEtag.equals(requestEtag)) {
-            httpServletResponse.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
-        }
-        else {
-            final ServletOutputStreamer outputStreamer = new ServletOutputStreamer(httpServletResponse, resourceEtag);
-            candidateRenderingService.streamAssessmentSource(getCandidateSession(httpServletRequest), outputStreamer);
-        }
+        final ServletOutputStreamer outputStreamer = new ServletOutputStreamer(httpServletRequest, httpServletResponse);
+        candidateRenderingService.streamAssessmentSource(getCandidateSession(httpServletRequest), outputStreamer);
     }
 
     /**
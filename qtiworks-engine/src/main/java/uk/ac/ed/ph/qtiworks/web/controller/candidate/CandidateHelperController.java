@@ -36,11 +36,13 @@ package uk.ac.ed.ph.qtiworks.web.controller.candidate;
 import uk.ac.ed.ph.qtiworks.mathassess.XsltStylesheetCacheAdapter;
 import uk.ac.ed.ph.qtiworks.mathassess.glue.AsciiMathHelper;
 import uk.ac.ed.ph.qtiworks.mathassess.glue.AsciiMathInputException;
+import uk.ac.ed.ph.qtiworks.mathassess.glue.AsciiMathUpConversionService;
 
 import uk.ac.ed.ph.jqtiplus.xmlutils.xslt.XsltStylesheetCache;
 
 import java.util.Map;
 
+import javax.annotation.PostConstruct;
 import javax.annotation.Resource;
 
 import org.springframework.http.HttpHeaders;
@@ -62,8 +64,16 @@ public class CandidateHelperController {
     @Resource
     private XsltStylesheetCache stylesheetCache;
 
+    private AsciiMathUpConversionService asciiMathUpConversionService;
+
+    @PostConstruct
+    public void init() {
+        asciiMathUpConversionService = new AsciiMathUpConversionService(new XsltStylesheetCacheAdapter(stylesheetCache));
+    }
+
     /**
-     * Runs the {@link AsciiMathHelper} helper on the given 'input' parameter,
+     * Runs the {@link AsciiMathHelper} helper on the given 'input' parameter (via a shared
+     * {@link AsciiMathUpConversionService}, which caches recent results),
      * expecting to return JSON.
      *
      * Accept: application/json from client expected
@@ -72,8 +82,7 @@ public class CandidateHelperController {
      */
     @RequestMapping(value="/verifyAsciiMath", method=RequestMethod.POST)
     public ResponseEntity<Map<String, String>>  verifyAsciiMath(@RequestParam("input") final String asciiMathInput) {
-        final AsciiMathHelper asciiMathHelper = new AsciiMathHelper(new XsltStylesheetCacheAdapter(stylesheetCache));
-        final Map<String, String> upConvertedAsciiMathInput = asciiMathHelper.upConvertAsciiMathInput(asciiMathInput);
+        final Map<String, String> upConvertedAsciiMathInput = asciiMathUpConversionService.upConvertAsciiMathInput(asciiMathInput);
 
         final HttpHeaders responseHeaders = new HttpHeaders();
         responseHeaders.setCacheControl("private, no-cache, no-store, max-age=0, must-revalidate");
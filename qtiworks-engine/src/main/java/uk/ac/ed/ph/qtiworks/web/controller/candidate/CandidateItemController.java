@@ -118,7 +118,7 @@ public class CandidateItemController extends CandidateControllerBase {
         renderingOptions.setHardResetUrl(sessionBaseUrl + "/reset-hard");
         renderingOptions.setExitUrl(sessionBaseUrl + "/exit");
 
-        final ServletOutputStreamer outputStreamer = new ServletOutputStreamer(httpServletResponse, null /* No caching */);
+        final ServletOutputStreamer outputStreamer = new ServletOutputStreamer(httpServletRequest, httpServletResponse);
         candidateRenderingService.renderCurrentCandidateItemSessionState(candidateSessionContext.getCandidateSession(),
                 renderingOptions, outputStreamer);
     }
@@ -138,7 +138,7 @@ public class CandidateItemController extends CandidateControllerBase {
         final AuthorViewRenderingOptions renderingOptions = new AuthorViewRenderingOptions();
         configureBaseRenderingOptions(sessionBaseUrl, candidateSessionContext, renderingOptions);
 
-        final ServletOutputStreamer outputStreamer = new ServletOutputStreamer(httpServletResponse, null /* No caching */);
+        final ServletOutputStreamer outputStreamer = new ServletOutputStreamer(httpServletRequest, httpServletResponse);
         candidateRenderingService.renderCurrentCandidateItemSessionStateAuthorView(candidateSessionContext.getCandidateSession(),
                 renderingOptions, outputStreamer);
     }
@@ -124,7 +124,7 @@ public class CandidateTestController extends CandidateControllerBase {
         renderingOptions.setAdvanceTestPartUrl(sessionBaseUrl + "/advance-test-part");
         renderingOptions.setExitTestUrl(sessionBaseUrl + "/exit-test");
 
-        final ServletOutputStreamer outputStreamer = new ServletOutputStreamer(httpServletResponse, null /* No caching */);
+        final ServletOutputStreamer outputStreamer = new ServletOutputStreamer(httpServletRequest, httpServletResponse);
         candidateRenderingService.renderCurrentCandidateTestSessionState(candidateSessionContext.getCandidateSession(),
                 renderingOptions, outputStreamer);
     }
@@ -143,7 +143,7 @@ public class CandidateTestController extends CandidateControllerBase {
         final AuthorViewRenderingOptions renderingOptions = new AuthorViewRenderingOptions();
         configureBaseRenderingOptions(sessionBaseUrl, candidateSessionContext, renderingOptions);
 
-        final ServletOutputStreamer outputStreamer = new ServletOutputStreamer(httpServletResponse, null /* No caching */);
+        final ServletOutputStreamer outputStreamer = new ServletOutputStreamer(httpServletRequest, httpServletResponse);
         candidateRenderingService.renderCurrentCandidateTestSessionStateAuthorView(candidateSessionContext.getCandidateSession(),
                 renderingOptions, outputStreamer);
     }
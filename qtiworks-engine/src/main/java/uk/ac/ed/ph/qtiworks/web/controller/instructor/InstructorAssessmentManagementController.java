@@ -67,6 +67,7 @@ import uk.ac.ed.ph.jqtiplus.validation.AssessmentObjectValidationResult;
 import java.util.List;
 
 import javax.annotation.Resource;
+import javax.servlet.http.HttpServletResponse;
 import javax.servlet.http.HttpSession;
 import javax.validation.Valid;
 
@@ -233,30 +234,32 @@ public class InstructorAssessmentManagementController {
     }
 
     @RequestMapping(value="/assessment/{aid}/try", method=RequestMethod.POST)
-    public String tryAssessment(final @PathVariable long aid, final HttpSession httpSession)
+    public String tryAssessment(final @PathVariable long aid, final HttpSession httpSession,
+            final HttpServletResponse httpServletResponse)
             throws PrivilegeException, DomainEntityNotFoundException, CandidateException {
         final Assessment assessment = assessmentManagementService.lookupAssessment(aid);
         final Delivery demoDelivery = assessmentManagementService.createDemoDelivery(assessment);
 
-        return runDelivery(httpSession, aid, demoDelivery, true);
+        return runDelivery(httpSession, httpServletResponse, aid, demoDelivery, true);
     }
 
     @RequestMapping(value="/assessment/{aid}/try/{dsid}", method=RequestMethod.POST)
-    public String tryAssessment(final @PathVariable long aid, final @PathVariable long dsid, final HttpSession httpSession)
+    public String tryAssessment(final @PathVariable long aid, final @PathVariable long dsid, final HttpSession httpSession,
+            final HttpServletResponse httpServletResponse)
             throws PrivilegeException, DomainEntityNotFoundException,
             CandidateException, IllegalManagementOperationException {
         final Assessment assessment = assessmentManagementService.lookupAssessment(aid);
         final DeliverySettings deliverySettings = assessmentManagementService.lookupAndMatchDeliverySettings(dsid, assessment);
         final Delivery demoDelivery = assessmentManagementService.createDemoDelivery(assessment, deliverySettings);
 
-        return runDelivery(httpSession, aid, demoDelivery, true);
+        return runDelivery(httpSession, httpServletResponse, aid, demoDelivery, true);
     }
 
-    private String runDelivery(final HttpSession httpSession, final long aid, final Delivery delivery, final boolean authorMode)
+    private String runDelivery(final HttpSession httpSession, final HttpServletResponse httpServletResponse, final long aid, final Delivery delivery, final boolean authorMode)
             throws CandidateException {
         final User caller = identityService.getCurrentThreadUser();
         final String sessionExitReturnUrl = instructorRouter.buildWithinContextUrl("/assessment/" + aid);
-        final CandidateSessionTicket candidateSessionTicket = candidateSessionLaunchService.launchInstructorTrialSession(httpSession, caller, delivery, authorMode, sessionExitReturnUrl);
+        final CandidateSessionTicket candidateSessionTicket = candidateSessionLaunchService.launchInstructorTrialSession(httpSession, httpServletResponse, caller, delivery, authorMode, sessionExitReturnUrl);
         return GlobalRouter.buildSessionStartRedirect(candidateSessionTicket);
     }
 
@@ -313,12 +316,13 @@ public class InstructorAssessmentManagementController {
 
     /** FIXME: Support trying out with authorMode turned off */
     @RequestMapping(value="/delivery/{did}/try", method=RequestMethod.POST)
-    public String tryDelivery(final @PathVariable long did, final HttpSession httpSession)
+    public String tryDelivery(final @PathVariable long did, final HttpSession httpSession,
+            final HttpServletResponse httpServletResponse)
             throws PrivilegeException, DomainEntityNotFoundException, CandidateException, IllegalManagementOperationException {
         final User caller = identityService.getCurrentThreadUser();
         final Delivery delivery = assessmentManagementService.lookupUserCreatedDelivery(did);
         final String sessionExitReturnUrl = instructorRouter.buildWithinContextUrl("/delivery/" + did);
-        final CandidateSessionTicket candidateSessionTicket = candidateSessionLaunchService.launchInstructorTrialSession(httpSession, caller, delivery, true, sessionExitReturnUrl);
+        final CandidateSessionTicket candidateSessionTicket = candidateSessionLaunchService.launchInstructorTrialSession(httpSession, httpServletResponse, caller, delivery, true, sessionExitReturnUrl);
         return GlobalRouter.buildSessionStartRedirect(candidateSessionTicket);
     }
 
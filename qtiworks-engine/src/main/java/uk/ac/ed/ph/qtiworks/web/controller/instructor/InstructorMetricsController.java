@@ -0,0 +1,78 @@
+/* Copyright (c) 2012-2013, University of Edinburgh.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice, this
+ *   list of conditions and the following disclaimer in the documentation and/or
+ *   other materials provided with the distribution.
+ *
+ * * Neither the name of the University of Edinburgh nor the names of its
+ *   contributors may be used to endorse or promote products derived from this
+ *   software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ *
+ * This software is derived from (and contains code from) QTItools and MathAssessEngine.
+ * QTItools is (c) 2008, University of Southampton.
+ * MathAssessEngine is (c) 2010, University of Edinburgh.
+ */
+package uk.ac.ed.ph.qtiworks.web.controller.instructor;
+
+import uk.ac.ed.ph.qtiworks.services.MetricsService;
+import uk.ac.ed.ph.qtiworks.services.domain.PrivilegeException;
+import uk.ac.ed.ph.qtiworks.services.metrics.MetricsRegistry;
+
+import java.util.Map;
+
+import javax.annotation.Resource;
+
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Controller;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+
+/**
+ * Controller exposing the performance metrics gathered by the {@link MetricsRegistry} as JSON.
+ * This is only available to system administrators, as enforced by the {@link MetricsService}.
+ *
+ * @author David McKain
+ */
+@Controller
+public class InstructorMetricsController {
+
+    @Resource
+    private MetricsService metricsService;
+
+    /**
+     * Returns a snapshot of all current metrics, expecting to return JSON.
+     *
+     * Accept: application/json from client expected
+     */
+    @RequestMapping(value="/metrics", method=RequestMethod.GET)
+    public ResponseEntity<Map<String, Number>> showMetrics() throws PrivilegeException {
+        final Map<String, Number> metrics = metricsService.getMetricsSnapshot();
+
+        final HttpHeaders responseHeaders = new HttpHeaders();
+        responseHeaders.setCacheControl("private, no-cache, no-store, max-age=0, must-revalidate");
+
+        return new ResponseEntity<Map<String, Number>>(metrics, responseHeaders, HttpStatus.OK);
+    }
+
+}
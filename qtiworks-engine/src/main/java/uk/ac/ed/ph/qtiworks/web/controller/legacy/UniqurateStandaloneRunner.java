@@ -148,7 +148,7 @@ public class UniqurateStandaloneRunner {
             throws IOException {
         try {
             final String sessionExitReturnUrl = "/web/anonymous/standalonerunner/exit";
-            final CandidateSessionTicket candidateSessionTicket = candidateSessionLaunchService.launchWebServiceCandidateSession(httpSession, did, token, sessionExitReturnUrl);
+            final CandidateSessionTicket candidateSessionTicket = candidateSessionLaunchService.launchWebServiceCandidateSession(httpSession, httpServletResponse, did, token, sessionExitReturnUrl);
 
             /* Redirect to candidate dispatcher */
             return GlobalRouter.buildSessionStartRedirect(candidateSessionTicket);
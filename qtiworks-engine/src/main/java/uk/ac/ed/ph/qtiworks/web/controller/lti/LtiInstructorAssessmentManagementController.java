@@ -175,7 +175,7 @@ public class LtiInstructorAssessmentManagementController {
         final DeliverySettings theseDeliverySettings = thisDelivery.getDeliverySettings(); /* NB: May be null */
         final Delivery demoDelivery = assessmentManagementService.createDemoDelivery(thisAssessment, theseDeliverySettings);
         final String sessionExitReturnUrl = ltiInstructorRouter.buildWithinContextUrl(""); /* (Back to dashboard) */
-        return runDelivery(httpSession, demoDelivery, true, sessionExitReturnUrl);
+        return runDelivery(httpSession, httpServletResponse, demoDelivery, true, sessionExitReturnUrl);
     }
 
     @RequestMapping(value="/toggle-availability", method=RequestMethod.POST)
@@ -378,30 +378,33 @@ public class LtiInstructorAssessmentManagementController {
     }
 
     @RequestMapping(value="/assessment/{aid}/try", method=RequestMethod.POST)
-    public String tryAssessment(final HttpSession httpSession, final @PathVariable long aid)
+    public String tryAssessment(final HttpSession httpSession, final HttpServletResponse httpServletResponse,
+            final @PathVariable long aid)
             throws PrivilegeException, DomainEntityNotFoundException, CandidateException {
         final Assessment assessment = assessmentManagementService.lookupAssessment(aid);
         final Delivery demoDelivery = assessmentManagementService.createDemoDelivery(assessment);
         final String sessionExitReturnUrl = ltiInstructorRouter.buildWithinContextUrl("/assessment/" + aid);
-        return runDelivery(httpSession, demoDelivery, true, sessionExitReturnUrl);
+        return runDelivery(httpSession, httpServletResponse, demoDelivery, true, sessionExitReturnUrl);
     }
 
     @RequestMapping(value="/assessment/{aid}/try/{dsid}", method=RequestMethod.POST)
-    public String tryAssessment(final HttpSession httpSession, final @PathVariable long aid, final @PathVariable long dsid)
+    public String tryAssessment(final HttpSession httpSession, final HttpServletResponse httpServletResponse,
+            final @PathVariable long aid, final @PathVariable long dsid)
             throws PrivilegeException, DomainEntityNotFoundException,
             CandidateException, IllegalManagementOperationException {
         final Assessment assessment = assessmentManagementService.lookupAssessment(aid);
         final DeliverySettings deliverySettings = assessmentManagementService.lookupAndMatchDeliverySettings(dsid, assessment);
         final Delivery demoDelivery = assessmentManagementService.createDemoDelivery(assessment, deliverySettings);
         final String sessionExitReturnUrl = ltiInstructorRouter.buildWithinContextUrl("/assessment/" + aid);
-        return runDelivery(httpSession, demoDelivery, true, sessionExitReturnUrl);
+        return runDelivery(httpSession, httpServletResponse, demoDelivery, true, sessionExitReturnUrl);
     }
 
-    private String runDelivery(final HttpSession httpSession, final Delivery delivery, final boolean authorMode, final String sessionExitReturnUrl)
+    private String runDelivery(final HttpSession httpSession, final HttpServletResponse httpServletResponse,
+            final Delivery delivery, final boolean authorMode, final String sessionExitReturnUrl)
             throws CandidateException {
         /* FIXME: Need to move the target method up to WS level */
         final User caller = identityService.getCurrentThreadUser();
-        final CandidateSessionTicket candidateSessionTicket = candidateSessionLaunchService.launchInstructorTrialSession(httpSession, caller, delivery, authorMode, sessionExitReturnUrl);
+        final CandidateSessionTicket candidateSessionTicket = candidateSessionLaunchService.launchInstructorTrialSession(httpSession, httpServletResponse, caller, delivery, authorMode, sessionExitReturnUrl);
         return GlobalRouter.buildSessionStartRedirect(candidateSessionTicket);
     }
 
@@ -123,7 +123,7 @@ public class LtiLaunchController {
 
             /* Launch and redirect to session */
             try {
-                final CandidateSessionTicket candidateSessionTicket = candidateSessionLaunchService.launchDomainLevelLtiCandidateSession(httpSession,
+                final CandidateSessionTicket candidateSessionTicket = candidateSessionLaunchService.launchDomainLevelLtiCandidateSession(httpSession, httpServletResponse,
                         ltiUser, ltiResource, returnUrl, lisOutcomeServiceUrl, lisResultSourcedid);
                 return GlobalRouter.buildSessionStartRedirect(candidateSessionTicket);
             }
@@ -157,7 +157,7 @@ public class LtiLaunchController {
 
         /* Launch and redirect to session */
         try {
-            final CandidateSessionTicket candidateSessionTicket = candidateSessionLaunchService.launchLinkLevelLtiCandidateSession(httpSession,
+            final CandidateSessionTicket candidateSessionTicket = candidateSessionLaunchService.launchLinkLevelLtiCandidateSession(httpSession, httpServletResponse,
                     ltiUser, returnUrl, lisOutcomeServiceUrl, lisResultSourcedid);
             return GlobalRouter.buildSessionStartRedirect(candidateSessionTicket);
         }
@@ -0,0 +1,244 @@
+/* Copyright (c) 2012-2013, University of Edinburgh.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice, this
+ *   list of conditions and the following disclaimer in the documentation and/or
+ *   other materials provided with the distribution.
+ *
+ * * Neither the name of the University of Edinburgh nor the names of its
+ *   contributors may be used to endorse or promote products derived from this
+ *   software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ *
+ * This software is derived from (and contains code from) QTItools and MathAssessEngine.
+ * QTItools is (c) 2008, University of Southampton.
+ * MathAssessEngine is (c) 2010, University of Edinburgh.
+ */
+package uk.ac.ed.ph.qtiworks.rendering;
+
+import uk.ac.ed.ph.jqtiplus.xmlutils.locators.ResourceLocator;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.xml.transform.Source;
+import javax.xml.transform.URIResolver;
+import javax.xml.transform.stream.StreamSource;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests the {@link AssessmentSourceCache}
+ *
+ * @author David McKain
+ */
+public class AssessmentSourceCacheTest {
+
+    private static final URI ITEM_URI = URI.create("file:/package/item.xml");
+    private static final URI OTHER_URI = URI.create("file:/package/other.xml");
+    private static final URI BROKEN_URI = URI.create("file:/package/broken.xml");
+    private static final URI MISSING_URI = URI.create("file:/package/missing.xml");
+
+    private RecordingResourceLocator resourceLocator;
+
+    @Before
+    public void setup() {
+        resourceLocator = new RecordingResourceLocator();
+        resourceLocator.addResource(ITEM_URI, "<item/>");
+        resourceLocator.addResource(OTHER_URI, "<other/>");
+        resourceLocator.addResource(BROKEN_URI, "<broken>");
+    }
+
+    //----------------------------------------------------------
+
+    @Test
+    public void testCachedByNamespaceAndUri() {
+        final AssessmentSourceCache cache = new AssessmentSourceCache(10);
+        final Source first = cache.getSourceTree("1", ITEM_URI, resourceLocator);
+        Assert.assertNotNull(first);
+        Assert.assertEquals(ITEM_URI.toString(), first.getSystemId());
+        Assert.assertSame(first, cache.getSourceTree("1", ITEM_URI, resourceLocator));
+        Assert.assertEquals(1, resourceLocator.getFindCount());
+        Assert.assertEquals(1L, cache.getHitCount());
+        Assert.assertEquals(1L, cache.getMissCount());
+
+        /* Same URI in a different namespace, and a different URI in the same namespace */
+        Assert.assertNotSame(first, cache.getSourceTree("2", ITEM_URI, resourceLocator));
+        Assert.assertNotSame(first, cache.getSourceTree("1", OTHER_URI, resourceLocator));
+        Assert.assertEquals(3, resourceLocator.getFindCount());
+        Assert.assertEquals(3, cache.size());
+        resourceLocator.assertAllClosed();
+    }
+
+    @Test
+    public void testSizeLimit() {
+        final AssessmentSourceCache cache = new AssessmentSourceCache(2);
+        cache.getSourceTree("1", ITEM_URI, resourceLocator);
+        cache.getSourceTree("2", ITEM_URI, resourceLocator);
+        cache.getSourceTree("3", ITEM_URI, resourceLocator);
+        Assert.assertEquals(2, cache.size());
+        Assert.assertEquals(3, resourceLocator.getFindCount());
+
+        /* Oldest entry should have been evicted, newest kept */
+        cache.getSourceTree("3", ITEM_URI, resourceLocator);
+        Assert.assertEquals(3, resourceLocator.getFindCount());
+        cache.getSourceTree("1", ITEM_URI, resourceLocator);
+        Assert.assertEquals(4, resourceLocator.getFindCount());
+        Assert.assertEquals(2, cache.size());
+    }
+
+    @Test
+    public void testDisabled() {
+        final AssessmentSourceCache cache = new AssessmentSourceCache(0);
+        Assert.assertFalse(cache.isEnabled());
+        Assert.assertNull(cache.getSourceTree("1", ITEM_URI, resourceLocator));
+        Assert.assertEquals(0, resourceLocator.getFindCount());
+    }
+
+    @Test
+    public void testMissingResource() {
+        final AssessmentSourceCache cache = new AssessmentSourceCache(10);
+        Assert.assertNull(cache.getSourceTree("1", MISSING_URI, resourceLocator));
+        Assert.assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void testUnparseableResourceClosed() {
+        final AssessmentSourceCache cache = new AssessmentSourceCache(10);
+        try {
+            cache.getSourceTree("1", BROKEN_URI, resourceLocator);
+            Assert.fail("Expected QtiWorksRenderingException");
+        }
+        catch (final QtiWorksRenderingException e) {
+            /* Expected */
+        }
+        Assert.assertEquals(0, cache.size());
+        resourceLocator.assertAllClosed();
+    }
+
+    @Test
+    public void testUriResolver() throws Exception {
+        final AssessmentSourceCache cache = new AssessmentSourceCache(10);
+        final RecordingUriResolver delegate = new RecordingUriResolver();
+        final URIResolver uriResolver = cache.createUriResolver("1", resourceLocator, delegate);
+
+        /* Resources found by the locator come from the cache */
+        final Source resolved = uriResolver.resolve("other.xml", ITEM_URI.toString());
+        Assert.assertSame(cache.getSourceTree("1", OTHER_URI, resourceLocator), resolved);
+        Assert.assertEquals(1, resourceLocator.getFindCount());
+        Assert.assertTrue(delegate.getRequests().isEmpty());
+
+        /* Anything else goes to the delegate */
+        Assert.assertSame(delegate.getResult(), uriResolver.resolve("missing.xml", ITEM_URI.toString()));
+        Assert.assertSame(delegate.getResult(), uriResolver.resolve("", ITEM_URI.toString()));
+        Assert.assertSame(delegate.getResult(), uriResolver.resolve("other.xml", null));
+        Assert.assertEquals(3, delegate.getRequests().size());
+        Assert.assertEquals("missing.xml " + ITEM_URI, delegate.getRequests().get(0));
+
+        /* ...unless there isn't one */
+        Assert.assertNull(cache.createUriResolver("1", resourceLocator, null).resolve("missing.xml", ITEM_URI.toString()));
+        resourceLocator.assertAllClosed();
+    }
+
+    //----------------------------------------------------------
+
+    private static final class RecordingResourceLocator implements ResourceLocator {
+
+        private final Map<URI, String> resourceMap = new HashMap<URI, String>();
+        private final List<RecordingInputStream> openedStreams = new ArrayList<RecordingInputStream>();
+
+        public void addResource(final URI systemId, final String xml) {
+            resourceMap.put(systemId, xml);
+        }
+
+        @Override
+        public InputStream findResource(final URI systemId) {
+            final String xml = resourceMap.get(systemId);
+            if (xml==null) {
+                return null;
+            }
+            final RecordingInputStream result;
+            try {
+                result = new RecordingInputStream(xml.getBytes("UTF-8"));
+            }
+            catch (final UnsupportedEncodingException e) {
+                throw new AssertionError(e);
+            }
+            openedStreams.add(result);
+            return result;
+        }
+
+        public int getFindCount() {
+            return openedStreams.size();
+        }
+
+        public void assertAllClosed() {
+            for (final RecordingInputStream inputStream : openedStreams) {
+                Assert.assertTrue(inputStream.isClosed());
+            }
+        }
+    }
+
+    private static final class RecordingInputStream extends ByteArrayInputStream {
+
+        private boolean closed;
+
+        public RecordingInputStream(final byte[] bytes) {
+            super(bytes);
+        }
+
+        @Override
+        public void close() {
+            closed = true;
+        }
+
+        public boolean isClosed() {
+            return closed;
+        }
+    }
+
+    private static final class RecordingUriResolver implements URIResolver {
+
+        private final Source result = new StreamSource();
+        private final List<String> requests = new ArrayList<String>();
+
+        @Override
+        public Source resolve(final String href, final String base) {
+            requests.add(href + " " + base);
+            return result;
+        }
+
+        public Source getResult() {
+            return result;
+        }
+
+        public List<String> getRequests() {
+            return requests;
+        }
+    }
+}
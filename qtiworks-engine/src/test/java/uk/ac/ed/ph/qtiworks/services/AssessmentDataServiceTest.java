@@ -0,0 +1,149 @@
+/* Copyright (c) 2012-2013, University of Edinburgh.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice, this
+ *   list of conditions and the following disclaimer in the documentation and/or
+ *   other materials provided with the distribution.
+ *
+ * * Neither the name of the University of Edinburgh nor the names of its
+ *   contributors may be used to endorse or promote products derived from this
+ *   software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ *
+ * This software is derived from (and contains code from) QTItools and MathAssessEngine.
+ * QTItools is (c) 2008, University of Southampton.
+ * MathAssessEngine is (c) 2010, University of Edinburgh.
+ */
+package uk.ac.ed.ph.qtiworks.services;
+
+import uk.ac.ed.ph.qtiworks.domain.entities.ItemDeliverySettings;
+import uk.ac.ed.ph.qtiworks.domain.entities.TestDeliverySettings;
+import uk.ac.ed.ph.qtiworks.services.domain.DeliverySettingsTemplate;
+import uk.ac.ed.ph.qtiworks.services.domain.ItemDeliverySettingsTemplate;
+import uk.ac.ed.ph.qtiworks.services.domain.TestDeliverySettingsTemplate;
+
+import uk.ac.ed.ph.jqtiplus.notification.NotificationLevel;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.validation.BeanPropertyBindingResult;
+import org.springframework.validation.beanvalidation.LocalValidatorFactoryBean;
+
+/**
+ * Tests the merging of delivery settings to and from their templates in {@link AssessmentDataService}
+ *
+ * @author David McKain
+ */
+public class AssessmentDataServiceTest {
+
+    private AssessmentDataService assessmentDataService;
+
+    @Before
+    public void setup() {
+        assessmentDataService = new AssessmentDataService();
+    }
+
+    @Test
+    public void testItemDeliverySettingsRoundTrip() {
+        final ItemDeliverySettings stored = new ItemDeliverySettings();
+        stored.setTitle("Item settings");
+        stored.setMaxAttempts(3);
+        stored.setNotificationLevel(NotificationLevel.WARNING);
+        stored.setAllowTemplatePooling(Boolean.FALSE);
+
+        final ItemDeliverySettingsTemplate template = new ItemDeliverySettingsTemplate();
+        assessmentDataService.mergeItemDeliverySettings(stored, template);
+        Assert.assertEquals(NotificationLevel.WARNING, template.getNotificationLevel());
+        Assert.assertFalse(template.isAllowTemplatePooling());
+
+        final ItemDeliverySettings updated = new ItemDeliverySettings();
+        assessmentDataService.mergeItemDeliverySettings(template, updated);
+        Assert.assertEquals(NotificationLevel.WARNING, updated.getNotificationLevel());
+        Assert.assertEquals(Boolean.FALSE, updated.getAllowTemplatePooling());
+        Assert.assertEquals("Item settings", updated.getTitle());
+        Assert.assertEquals(Integer.valueOf(3), updated.getMaxAttempts());
+    }
+
+    @Test
+    public void testTestDeliverySettingsRoundTrip() {
+        final TestDeliverySettings stored = new TestDeliverySettings();
+        stored.setTitle("Test settings");
+        stored.setNotificationLevel(NotificationLevel.ERROR);
+
+        final TestDeliverySettingsTemplate template = new TestDeliverySettingsTemplate();
+        assessmentDataService.mergeTestDeliverySettings(stored, template);
+        Assert.assertEquals(NotificationLevel.ERROR, template.getNotificationLevel());
+
+        final TestDeliverySettings updated = new TestDeliverySettings();
+        assessmentDataService.mergeTestDeliverySettings(template, updated);
+        Assert.assertEquals(NotificationLevel.ERROR, updated.getNotificationLevel());
+        Assert.assertEquals("Test settings", updated.getTitle());
+    }
+
+    @Test
+    public void testUnsetLevelShownAsInfo() {
+        final ItemDeliverySettings stored = new ItemDeliverySettings();
+        stored.setTitle("Old settings");
+        final ItemDeliverySettingsTemplate template = new ItemDeliverySettingsTemplate();
+        assessmentDataService.mergeItemDeliverySettings(stored, template);
+        Assert.assertEquals(NotificationLevel.INFO, template.getNotificationLevel());
+    }
+
+    @Test
+    public void testUnsetTemplatePoolingShownAsAllowed() {
+        final ItemDeliverySettings stored = new ItemDeliverySettings();
+        stored.setTitle("Old settings");
+        final ItemDeliverySettingsTemplate template = new ItemDeliverySettingsTemplate();
+        assessmentDataService.mergeItemDeliverySettings(stored, template);
+        Assert.assertTrue(template.isAllowTemplatePooling());
+    }
+
+    @Test
+    public void testDefaultTemplates() {
+        final ItemDeliverySettingsTemplate itemTemplate = assessmentDataService.createItemDeliverySettingsTemplate();
+        Assert.assertEquals(NotificationLevel.INFO, itemTemplate.getNotificationLevel());
+        Assert.assertTrue(itemTemplate.isAllowTemplatePooling());
+        Assert.assertFalse(validate(itemTemplate).hasErrors());
+
+        final TestDeliverySettingsTemplate testTemplate = assessmentDataService.createTestDeliverySettingsTemplate();
+        Assert.assertEquals(NotificationLevel.INFO, testTemplate.getNotificationLevel());
+        Assert.assertFalse(validate(testTemplate).hasErrors());
+    }
+
+    @Test
+    public void testMissingLevelRejected() {
+        /* This is what a submitted form without the level binds to */
+        final TestDeliverySettingsTemplate template = new TestDeliverySettingsTemplate();
+        template.setTitle("Test settings");
+
+        final BeanPropertyBindingResult errors = validate(template);
+        Assert.assertEquals(1, errors.getErrorCount());
+        Assert.assertNotNull(errors.getFieldError("notificationLevel"));
+    }
+
+    private static BeanPropertyBindingResult validate(final DeliverySettingsTemplate template) {
+        final LocalValidatorFactoryBean validator = new LocalValidatorFactoryBean();
+        validator.afterPropertiesSet();
+        final BeanPropertyBindingResult errors = new BeanPropertyBindingResult(template, "template");
+        validator.validate(template, errors);
+        return errors;
+    }
+}
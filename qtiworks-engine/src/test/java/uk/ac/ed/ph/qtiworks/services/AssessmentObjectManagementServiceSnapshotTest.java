@@ -0,0 +1,254 @@
+/* Copyright (c) 2012-2013, University of Edinburgh.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice, this
+ *   list of conditions and the following disclaimer in the documentation and/or
+ *   other materials provided with the distribution.
+ *
+ * * Neither the name of the University of Edinburgh nor the names of its
+ *   contributors may be used to endorse or promote products derived from this
+ *   software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ *
+ * This software is derived from (and contains code from) QTItools and MathAssessEngine.
+ * QTItools is (c) 2008, University of Southampton.
+ * MathAssessEngine is (c) 2010, University of Edinburgh.
+ */
+package uk.ac.ed.ph.qtiworks.services;
+
+import uk.ac.ed.ph.qtiworks.config.beans.QtiWorksDeploymentSettings;
+import uk.ac.ed.ph.qtiworks.domain.entities.AssessmentPackage;
+import uk.ac.ed.ph.qtiworks.services.metrics.MetricsRegistry;
+
+import uk.ac.ed.ph.jqtiplus.JqtiExtensionManager;
+import uk.ac.ed.ph.jqtiplus.JqtiPlus;
+import uk.ac.ed.ph.jqtiplus.node.AssessmentObjectType;
+import uk.ac.ed.ph.jqtiplus.reading.AssessmentObjectXmlLoader;
+import uk.ac.ed.ph.jqtiplus.reading.QtiXmlReader;
+import uk.ac.ed.ph.jqtiplus.resolution.ResolvedAssessmentItem;
+import uk.ac.ed.ph.jqtiplus.resolution.ResolvedAssessmentObject;
+import uk.ac.ed.ph.jqtiplus.state.ItemProcessingMap;
+import uk.ac.ed.ph.jqtiplus.xmlutils.locators.ClassPathResourceLocator;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.net.URI;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.google.common.io.Files;
+
+/**
+ * Tests the writing, reading and invalidation of processing map snapshots within
+ * {@link AssessmentObjectManagementService}
+ *
+ * @author David McKain
+ */
+public class AssessmentObjectManagementServiceSnapshotTest {
+
+    private static final URI ITEM_URI = URI.create("classpath:/uk/ac/ed/ph/qtiworks/samples/ims/choice.xml");
+
+    private File filesystemBase;
+    private QtiWorksDeploymentSettings qtiWorksDeploymentSettings;
+    private FilespaceManager filespaceManager;
+    private AssessmentPackage assessmentPackage;
+    private ResolvedAssessmentItem resolvedAssessmentItem;
+    private int loadCount;
+
+    @Before
+    public void setup() {
+        filesystemBase = Files.createTempDir();
+        qtiWorksDeploymentSettings = new QtiWorksDeploymentSettings();
+        ReflectionTestUtils.setField(qtiWorksDeploymentSettings, "filesystemBase", filesystemBase.getAbsolutePath());
+        ReflectionTestUtils.setField(qtiWorksDeploymentSettings, "snapshotsEnabled", Boolean.TRUE);
+        filespaceManager = new FilespaceManager();
+        ReflectionTestUtils.setField(filespaceManager, "qtiWorksDeploymentSettings", qtiWorksDeploymentSettings);
+        ReflectionTestUtils.setField(filespaceManager, "requestTimestampContext", new RequestTimestampContext());
+        filespaceManager.init();
+
+        final AssessmentObjectXmlLoader assessmentObjectXmlLoader = new AssessmentObjectXmlLoader(new QtiXmlReader(new JqtiExtensionManager()),
+                new ClassPathResourceLocator());
+        resolvedAssessmentItem = assessmentObjectXmlLoader.loadAndResolveAssessmentItem(ITEM_URI);
+        Assert.assertTrue(resolvedAssessmentItem.getRootNodeLookup().wasSuccessful());
+
+        assessmentPackage = new AssessmentPackage();
+        assessmentPackage.setId(Long.valueOf(1L));
+        assessmentPackage.setAssessmentType(AssessmentObjectType.ASSESSMENT_ITEM);
+        assessmentPackage.setValid(true);
+        loadCount = 0;
+    }
+
+    @After
+    public void tearDown() {
+        if (filesystemBase!=null) {
+            ServiceUtilities.recursivelyDelete(filesystemBase);
+        }
+    }
+
+    //----------------------------------------------------------
+
+    @Test
+    public void testSnapshotWrittenAndReused() throws Exception {
+        final ItemProcessingMap original = createService().getItemProcessingMap(assessmentPackage);
+        Assert.assertNotNull(original);
+        Assert.assertEquals(1, loadCount);
+        Assert.assertTrue(getSnapshotFile().isFile());
+        Assert.assertFalse(getTempFile().exists());
+        assertSnapshotHeader(true);
+
+        /* A new service (i.e. after a restart) should use the snapshot rather than the XML */
+        final ItemProcessingMap restored = createService().getItemProcessingMap(assessmentPackage);
+        Assert.assertNotNull(restored);
+        Assert.assertNotSame(original, restored);
+        Assert.assertEquals(1, loadCount);
+        Assert.assertEquals(getItemIdentifier(original), getItemIdentifier(restored));
+        Assert.assertEquals(original.getValidTemplateDeclarationMap().keySet(), restored.getValidTemplateDeclarationMap().keySet());
+        Assert.assertEquals(original.getValidResponseDeclarationMap().keySet(), restored.getValidResponseDeclarationMap().keySet());
+    }
+
+    @Test
+    public void testSnapshotWrittenForImportedObject() throws Exception {
+        createService().cacheResolvedAssessmentObject(assessmentPackage, resolvedAssessmentItem);
+        Assert.assertTrue(getSnapshotFile().isFile());
+        Assert.assertFalse(getTempFile().exists());
+
+        Assert.assertNotNull(createService().getItemProcessingMap(assessmentPackage));
+        Assert.assertEquals(0, loadCount);
+    }
+
+    @Test
+    public void testStaleModelVersionReplaced() throws Exception {
+        final ObjectOutputStream objectOutputStream = new ObjectOutputStream(new FileOutputStream(getSnapshotFile()));
+        try {
+            objectOutputStream.writeUTF(JqtiPlus.MODEL_VERSION + "-old");
+            objectOutputStream.writeBoolean(true);
+            objectOutputStream.writeObject("Not a processing map");
+        }
+        finally {
+            objectOutputStream.close();
+        }
+
+        Assert.assertNotNull(createService().getItemProcessingMap(assessmentPackage));
+        Assert.assertEquals(1, loadCount);
+        assertSnapshotHeader(true);
+    }
+
+    @Test
+    public void testValidityChangeReplaced() throws Exception {
+        createService().getItemProcessingMap(assessmentPackage);
+        Assert.assertEquals(1, loadCount);
+
+        assessmentPackage.setValid(false);
+        Assert.assertNotNull(createService().getItemProcessingMap(assessmentPackage));
+        Assert.assertEquals(2, loadCount);
+        assertSnapshotHeader(false);
+    }
+
+    @Test
+    public void testCorruptSnapshotReplaced() throws Exception {
+        Files.write("This is not a snapshot".getBytes("UTF-8"), getSnapshotFile());
+
+        Assert.assertNotNull(createService().getItemProcessingMap(assessmentPackage));
+        Assert.assertEquals(1, loadCount);
+        assertSnapshotHeader(true);
+    }
+
+    @Test
+    public void testFailedRenameLeavesNoTempFile() throws Exception {
+        /* Block the snapshot with a non-empty directory so that it can be neither deleted nor replaced */
+        final File snapshotFile = getSnapshotFile();
+        Assert.assertTrue(new File(snapshotFile, "blocker").mkdirs());
+
+        Assert.assertNotNull(createService().getItemProcessingMap(assessmentPackage));
+        Assert.assertEquals(1, loadCount);
+        Assert.assertTrue(snapshotFile.isDirectory());
+        Assert.assertFalse(getTempFile().exists());
+    }
+
+    @Test
+    public void testSnapshotsDisabled() throws Exception {
+        ReflectionTestUtils.setField(qtiWorksDeploymentSettings, "snapshotsEnabled", Boolean.FALSE);
+        Assert.assertNotNull(createService().getItemProcessingMap(assessmentPackage));
+        Assert.assertFalse(getSnapshotFile().exists());
+    }
+
+    @Test
+    public void testPurgeDeletesSnapshot() throws Exception {
+        final AssessmentObjectManagementService service = createService();
+        service.getItemProcessingMap(assessmentPackage);
+        Assert.assertTrue(getSnapshotFile().isFile());
+
+        service.purge(assessmentPackage);
+        Assert.assertFalse(getSnapshotFile().exists());
+        Assert.assertNotNull(service.getItemProcessingMap(assessmentPackage));
+        Assert.assertEquals(2, loadCount);
+    }
+
+    //----------------------------------------------------------
+
+    private AssessmentObjectManagementService createService() {
+        final AssessmentPackageFileService assessmentPackageFileService = new AssessmentPackageFileService() {
+            @Override
+            @SuppressWarnings("unchecked")
+            public <E extends ResolvedAssessmentObject<?>> E loadAndResolveAssessmentObject(final AssessmentPackage assessmentPackage) {
+                loadCount++;
+                return (E) resolvedAssessmentItem;
+            }
+        };
+        final AssessmentObjectManagementService result = new AssessmentObjectManagementService();
+        ReflectionTestUtils.setField(result, "qtiWorksDeploymentSettings", qtiWorksDeploymentSettings);
+        ReflectionTestUtils.setField(result, "assessmentPackageFileService", assessmentPackageFileService);
+        ReflectionTestUtils.setField(result, "filespaceManager", filespaceManager);
+        ReflectionTestUtils.setField(result, "metricsRegistry", new MetricsRegistry());
+        result.init();
+        return result;
+    }
+
+    private File getSnapshotFile() {
+        return filespaceManager.getAssessmentPackageSnapshotFile(assessmentPackage);
+    }
+
+    private File getTempFile() {
+        return new File(getSnapshotFile().getPath() + ".tmp");
+    }
+
+    private void assertSnapshotHeader(final boolean expectedValid) throws Exception {
+        final ObjectInputStream objectInputStream = new ObjectInputStream(new FileInputStream(getSnapshotFile()));
+        try {
+            Assert.assertEquals(JqtiPlus.MODEL_VERSION, objectInputStream.readUTF());
+            Assert.assertEquals(expectedValid, objectInputStream.readBoolean());
+            Assert.assertTrue(objectInputStream.readObject() instanceof ItemProcessingMap);
+        }
+        finally {
+            objectInputStream.close();
+        }
+    }
+
+    private static String getItemIdentifier(final ItemProcessingMap itemProcessingMap) {
+        return itemProcessingMap.getResolvedAssessmentItem().getRootNodeLookup().extractAssumingSuccessful().getIdentifier();
+    }
+}
@@ -0,0 +1,202 @@
+/* Copyright (c) 2012-2013, University of Edinburgh.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice, this
+ *   list of conditions and the following disclaimer in the documentation and/or
+ *   other materials provided with the distribution.
+ *
+ * * Neither the name of the University of Edinburgh nor the names of its
+ *   contributors may be used to endorse or promote products derived from this
+ *   software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ *
+ * This software is derived from (and contains code from) QTItools and MathAssessEngine.
+ * QTItools is (c) 2008, University of Southampton.
+ * MathAssessEngine is (c) 2010, University of Edinburgh.
+ */
+package uk.ac.ed.ph.qtiworks.services;
+
+import uk.ac.ed.ph.qtiworks.domain.entities.CandidateEvent;
+import uk.ac.ed.ph.qtiworks.domain.entities.CandidateEventNotification;
+import uk.ac.ed.ph.qtiworks.domain.entities.CandidateSession;
+import uk.ac.ed.ph.qtiworks.domain.entities.Delivery;
+import uk.ac.ed.ph.qtiworks.domain.entities.ItemDeliverySettings;
+import uk.ac.ed.ph.qtiworks.services.dao.CandidateEventNotificationDao;
+
+import uk.ac.ed.ph.jqtiplus.notification.Notification;
+import uk.ac.ed.ph.jqtiplus.notification.NotificationLevel;
+import uk.ac.ed.ph.jqtiplus.notification.NotificationRecorder;
+import uk.ac.ed.ph.jqtiplus.notification.NotificationType;
+
+import java.util.List;
+
+import javax.persistence.EntityManager;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+/**
+ * Tests the recording of {@link CandidateEventNotification}s by {@link CandidateDataService}
+ * against an in-memory HSQLDB database, counting the JDBC round trips made.
+ *
+ * @author David McKain
+ */
+public class CandidateDataServiceNotificationTest {
+
+    private static final String NOTIFICATION_INSERT_PREFIX = "insert into candidate_event_notifications";
+
+    private EmbeddedTestDatabase database;
+    private EntityManager em;
+    private CandidateDataService candidateDataService;
+
+    @Before
+    public void setup() throws Exception {
+        database = new EmbeddedTestDatabase(50);
+
+        /* Notifications will refer to an event that isn't in the DB, so turn off FK checks */
+        database.execute("SET DATABASE REFERENTIAL INTEGRITY FALSE");
+
+        em = database.createEntityManager();
+        final CandidateEventNotificationDao candidateEventNotificationDao = new CandidateEventNotificationDao();
+        EmbeddedTestDatabase.injectEntityManager(candidateEventNotificationDao, em);
+
+        candidateDataService = new CandidateDataService();
+        ReflectionTestUtils.setField(candidateDataService, "candidateEventNotificationDao", candidateEventNotificationDao);
+        database.resetStatementLog();
+    }
+
+    @After
+    public void tearDown() {
+        if (em!=null) {
+            em.close();
+        }
+        if (database!=null) {
+            database.close();
+        }
+    }
+
+    //----------------------------------------------------------
+
+    @Test
+    public void testNotificationsBatched() {
+        final CandidateEvent candidateEvent = createCandidateEvent(null);
+        final NotificationRecorder notificationRecorder = new NotificationRecorder(NotificationLevel.INFO);
+        for (int i=0; i<40; i++) {
+            fireNotification(notificationRecorder, NotificationLevel.WARNING, "Warning " + i);
+        }
+
+        final List<CandidateEventNotification> result = recordNotifications(candidateEvent, notificationRecorder);
+        Assert.assertEquals(40, result.size());
+        Assert.assertEquals(40, candidateEvent.getNotifications().size());
+        Assert.assertEquals(40L, countStoredNotifications());
+        Assert.assertEquals(1, countNotificationInsertRoundTrips());
+    }
+
+    @Test
+    public void testNotificationsDeduplicated() {
+        final CandidateEvent candidateEvent = createCandidateEvent(null);
+        final NotificationRecorder notificationRecorder = new NotificationRecorder(NotificationLevel.INFO);
+        for (int repeat=0; repeat<10; repeat++) {
+            for (int i=0; i<5; i++) {
+                fireNotification(notificationRecorder, NotificationLevel.ERROR, "Error " + i);
+            }
+        }
+        fireNotification(notificationRecorder, NotificationLevel.WARNING, "Error 0");
+
+        final List<CandidateEventNotification> result = recordNotifications(candidateEvent, notificationRecorder);
+        Assert.assertEquals(6, result.size());
+        Assert.assertEquals("Error 0", result.get(0).getMessage());
+        Assert.assertEquals(NotificationLevel.WARNING, result.get(5).getNotificationLevel());
+        Assert.assertEquals(6L, countStoredNotifications());
+        Assert.assertEquals(1, countNotificationInsertRoundTrips());
+    }
+
+    @Test
+    public void testNotificationLevelThreshold() {
+        final CandidateEvent candidateEvent = createCandidateEvent(NotificationLevel.WARNING);
+        final NotificationRecorder notificationRecorder = new NotificationRecorder(NotificationLevel.INFO);
+        for (int i=0; i<100; i++) {
+            fireNotification(notificationRecorder, NotificationLevel.INFO, "Info " + i);
+        }
+        fireNotification(notificationRecorder, NotificationLevel.WARNING, "Warning");
+        fireNotification(notificationRecorder, NotificationLevel.ERROR, "Error");
+
+        final List<CandidateEventNotification> result = recordNotifications(candidateEvent, notificationRecorder);
+        Assert.assertEquals(2, result.size());
+        Assert.assertEquals(2L, countStoredNotifications());
+        Assert.assertEquals(1, countNotificationInsertRoundTrips());
+    }
+
+    @Test
+    public void testNothingRecorded() {
+        final CandidateEvent candidateEvent = createCandidateEvent(NotificationLevel.ERROR);
+        final NotificationRecorder notificationRecorder = new NotificationRecorder(NotificationLevel.INFO);
+        fireNotification(notificationRecorder, NotificationLevel.INFO, "Info");
+        fireNotification(notificationRecorder, NotificationLevel.WARNING, "Warning");
+
+        final List<CandidateEventNotification> result = recordNotifications(candidateEvent, notificationRecorder);
+        Assert.assertTrue(result.isEmpty());
+        Assert.assertEquals(0L, countStoredNotifications());
+        Assert.assertEquals(0, countNotificationInsertRoundTrips());
+    }
+
+    //----------------------------------------------------------
+
+    private List<CandidateEventNotification> recordNotifications(final CandidateEvent candidateEvent,
+            final NotificationRecorder notificationRecorder) {
+        em.getTransaction().begin();
+        final List<CandidateEventNotification> result = candidateDataService.recordNotifications(candidateEvent, notificationRecorder);
+        em.getTransaction().commit();
+        return result;
+    }
+
+    /** Returns the number of times INSERTs into the notifications table were sent to the DB */
+    private int countNotificationInsertRoundTrips() {
+        return database.countExecutedStatements(NOTIFICATION_INSERT_PREFIX);
+    }
+
+    private long countStoredNotifications() {
+        return ((Long) em.createQuery("SELECT COUNT(xn) FROM CandidateEventNotification xn").getSingleResult()).longValue();
+    }
+
+    private static CandidateEvent createCandidateEvent(final NotificationLevel notificationLevel) {
+        final ItemDeliverySettings itemDeliverySettings = new ItemDeliverySettings();
+        itemDeliverySettings.setNotificationLevel(notificationLevel);
+        final Delivery delivery = new Delivery();
+        delivery.setDeliverySettings(itemDeliverySettings);
+        final CandidateSession candidateSession = new CandidateSession();
+        candidateSession.setDelivery(delivery);
+
+        /* (This event is never stored, so make it look detached) */
+        final CandidateEvent candidateEvent = new CandidateEvent();
+        candidateEvent.setId(Long.valueOf(1L));
+        candidateEvent.setCandidateSession(candidateSession);
+        return candidateEvent;
+    }
+
+    private static void fireNotification(final NotificationRecorder notificationRecorder,
+            final NotificationLevel notificationLevel, final String message) {
+        notificationRecorder.onNotification(new Notification(null, null, NotificationType.RUNTIME, notificationLevel, message));
+    }
+
+}
@@ -0,0 +1,293 @@
+/* Copyright (c) 2012-2013, University of Edinburgh.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice, this
+ *   list of conditions and the following disclaimer in the documentation and/or
+ *   other materials provided with the distribution.
+ *
+ * * Neither the name of the University of Edinburgh nor the names of its
+ *   contributors may be used to endorse or promote products derived from this
+ *   software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ *
+ * This software is derived from (and contains code from) QTItools and MathAssessEngine.
+ * QTItools is (c) 2008, University of Southampton.
+ * MathAssessEngine is (c) 2010, University of Edinburgh.
+ */
+package uk.ac.ed.ph.qtiworks.services;
+
+import uk.ac.ed.ph.qtiworks.config.beans.QtiWorksDeploymentSettings;
+import uk.ac.ed.ph.qtiworks.domain.entities.AnonymousUser;
+import uk.ac.ed.ph.qtiworks.domain.entities.Assessment;
+import uk.ac.ed.ph.qtiworks.domain.entities.AssessmentPackage;
+import uk.ac.ed.ph.qtiworks.domain.entities.AssessmentPackageImportType;
+import uk.ac.ed.ph.qtiworks.domain.entities.CandidateEvent;
+import uk.ac.ed.ph.qtiworks.domain.entities.CandidateItemEventType;
+import uk.ac.ed.ph.qtiworks.domain.entities.CandidateSession;
+import uk.ac.ed.ph.qtiworks.domain.entities.Delivery;
+import uk.ac.ed.ph.qtiworks.domain.entities.DeliveryType;
+import uk.ac.ed.ph.qtiworks.services.dao.CandidateEventDao;
+import uk.ac.ed.ph.qtiworks.services.dao.CandidateEventNotificationDao;
+import uk.ac.ed.ph.qtiworks.services.dao.CandidateSessionDao;
+import uk.ac.ed.ph.qtiworks.services.metrics.MetricsRegistry;
+
+import uk.ac.ed.ph.jqtiplus.node.AssessmentObjectType;
+import uk.ac.ed.ph.jqtiplus.state.ItemSessionState;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import javax.persistence.EntityManager;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.google.common.io.Files;
+
+/**
+ * Tests the lookup of the most recent {@link CandidateEvent} within a {@link CandidateSession}
+ * via {@link CandidateDataService}, and checks the indexes supporting candidate event lookups.
+ *
+ * @author David McKain
+ */
+public class CandidateEventLookupTest {
+
+    private EmbeddedTestDatabase database;
+    private EntityManager em;
+    private File filesystemBase;
+    private CandidateEventDao candidateEventDao;
+    private CandidateDataService candidateDataService;
+    private CandidateSession candidateSession;
+
+    @Before
+    public void setup() throws Exception {
+        database = new EmbeddedTestDatabase(50);
+        em = database.createEntityManager();
+
+        candidateEventDao = new CandidateEventDao();
+        final CandidateSessionDao candidateSessionDao = new CandidateSessionDao();
+        final CandidateEventNotificationDao candidateEventNotificationDao = new CandidateEventNotificationDao();
+        EmbeddedTestDatabase.injectEntityManager(candidateEventDao, em);
+        EmbeddedTestDatabase.injectEntityManager(candidateSessionDao, em);
+        EmbeddedTestDatabase.injectEntityManager(candidateEventNotificationDao, em);
+
+        filesystemBase = Files.createTempDir();
+        final QtiWorksDeploymentSettings qtiWorksDeploymentSettings = new QtiWorksDeploymentSettings();
+        ReflectionTestUtils.setField(qtiWorksDeploymentSettings, "filesystemBase", filesystemBase.getAbsolutePath());
+        final RequestTimestampContext requestTimestampContext = new RequestTimestampContext();
+        final FilespaceManager filespaceManager = new FilespaceManager();
+        ReflectionTestUtils.setField(filespaceManager, "qtiWorksDeploymentSettings", qtiWorksDeploymentSettings);
+        ReflectionTestUtils.setField(filespaceManager, "requestTimestampContext", requestTimestampContext);
+        filespaceManager.init();
+
+        candidateDataService = new CandidateDataService();
+        ReflectionTestUtils.setField(candidateDataService, "candidateEventDao", candidateEventDao);
+        ReflectionTestUtils.setField(candidateDataService, "candidateSessionDao", candidateSessionDao);
+        ReflectionTestUtils.setField(candidateDataService, "candidateEventNotificationDao", candidateEventNotificationDao);
+        ReflectionTestUtils.setField(candidateDataService, "filespaceManager", filespaceManager);
+        ReflectionTestUtils.setField(candidateDataService, "requestTimestampContext", requestTimestampContext);
+        ReflectionTestUtils.setField(candidateDataService, "metricsRegistry", new MetricsRegistry());
+
+        candidateSession = createCandidateSession();
+    }
+
+    @After
+    public void tearDown() {
+        if (em!=null) {
+            em.close();
+        }
+        if (database!=null) {
+            database.close();
+        }
+        if (filesystemBase!=null) {
+            ServiceUtilities.recursivelyDelete(filesystemBase);
+        }
+    }
+
+    //----------------------------------------------------------
+
+    @Test
+    public void testLatestEventRecorded() {
+        final CandidateEvent firstEvent = recordItemEvent(CandidateItemEventType.ENTER);
+        Assert.assertEquals(firstEvent.getId(), candidateSession.getLatestXeid());
+
+        final CandidateEvent secondEvent = recordItemEvent(CandidateItemEventType.RESPONSE_VALID);
+        Assert.assertEquals(secondEvent.getId(), candidateSession.getLatestXeid());
+
+        em.clear();
+        final CandidateSession reloadedSession = em.find(CandidateSession.class, candidateSession.getId());
+        Assert.assertEquals(secondEvent.getId(), reloadedSession.getLatestXeid());
+    }
+
+    @Test
+    public void testLatestEventRecordedForDetachedSession() throws Exception {
+        recordItemEvent(CandidateItemEventType.ENTER);
+
+        /* Detach the session, then change it behind its back, as another request might */
+        em.clear();
+        database.execute("UPDATE candidate_sessions SET termination_time = CURRENT_TIMESTAMP WHERE xid = "
+                + candidateSession.getId());
+        Assert.assertNull(candidateSession.getTerminationTime());
+
+        database.resetStatementLog();
+        final CandidateEvent latestEvent = recordItemEvent(CandidateItemEventType.RESPONSE_VALID);
+        Assert.assertEquals(latestEvent.getId(), candidateSession.getLatestXeid());
+
+        /* Check that only the latest event column was written */
+        final List<String> sessionUpdates = new ArrayList<String>();
+        for (final String sql : database.getExecutedStatements()) {
+            if (sql.startsWith("update candidate_sessions")) {
+                sessionUpdates.add(sql);
+            }
+        }
+        Assert.assertEquals(1, sessionUpdates.size());
+        Assert.assertTrue(sessionUpdates.get(0), sessionUpdates.get(0).matches("update candidate_sessions set latest_xeid=\\? where xid=\\?"));
+
+        em.clear();
+        final CandidateSession reloadedSession = em.find(CandidateSession.class, candidateSession.getId());
+        Assert.assertEquals(latestEvent.getId(), reloadedSession.getLatestXeid());
+        Assert.assertNotNull(reloadedSession.getTerminationTime());
+    }
+
+    @Test
+    public void testMostRecentEventUsesPrimaryKey() {
+        recordItemEvent(CandidateItemEventType.ENTER);
+        final CandidateEvent latestEvent = recordItemEvent(CandidateItemEventType.RESPONSE_VALID);
+
+        em.clear();
+        final CandidateSession reloadedSession = em.find(CandidateSession.class, candidateSession.getId());
+        database.resetStatementLog();
+        final CandidateEvent result = candidateDataService.getMostRecentEvent(reloadedSession);
+        Assert.assertEquals(latestEvent.getId(), result.getId());
+        Assert.assertEquals(CandidateItemEventType.RESPONSE_VALID, result.getItemEventType());
+
+        final List<String> statements = database.getExecutedStatements();
+        Assert.assertEquals(1, statements.size());
+        Assert.assertFalse(statements.get(0).contains("order by"));
+    }
+
+    @Test
+    public void testMostRecentEventFallback() throws Exception {
+        recordItemEvent(CandidateItemEventType.ENTER);
+        final CandidateEvent latestEvent = recordItemEvent(CandidateItemEventType.RESPONSE_VALID);
+
+        /* Simulate a session created before latest_xeid was added */
+        database.execute("UPDATE candidate_sessions SET latest_xeid = NULL");
+        em.clear();
+        final CandidateSession reloadedSession = em.find(CandidateSession.class, candidateSession.getId());
+        Assert.assertNull(reloadedSession.getLatestXeid());
+
+        final CandidateEvent result = candidateDataService.getMostRecentEvent(reloadedSession);
+        Assert.assertEquals(latestEvent.getId(), result.getId());
+    }
+
+    @Test
+    public void testNoEvents() {
+        Assert.assertNull(candidateDataService.getMostRecentEvent(candidateSession));
+    }
+
+    @Test
+    public void testIndexesCreated() throws Exception {
+        Assert.assertTrue(database.getIndexNames("candidate_events").contains("candidate_event_sessions"));
+        Assert.assertTrue(database.getIndexNames("candidate_session_outcomes").contains("candidate_session_outcome_sessions"));
+        final List<String> sessionIndexNames = database.getIndexNames("candidate_sessions");
+        Assert.assertTrue(sessionIndexNames.contains("candidate_session_deliveries"));
+        Assert.assertTrue(sessionIndexNames.contains("candidate_session_candidates"));
+        Assert.assertTrue(sessionIndexNames.contains("candidate_session_creation_times"));
+    }
+
+    @Test
+    public void testEventsInSessionUseIndex() throws Exception {
+        /* Capture the SQL Hibernate generates for the CandidateEvent.getForSessionReversed query */
+        database.resetStatementLog();
+        candidateEventDao.getForSessionReversed(candidateSession);
+        final List<String> statements = database.getExecutedStatements();
+        Assert.assertEquals(1, statements.size());
+        final String sql = statements.get(0);
+        Assert.assertTrue(sql, sql.contains("order by"));
+
+        final String plan = database.explainPlan(sql.replace("?", candidateSession.getId().toString()));
+        Assert.assertTrue(plan, plan.contains("candidate_event_sessions"));
+    }
+
+    //----------------------------------------------------------
+
+    private CandidateEvent recordItemEvent(final CandidateItemEventType itemEventType) {
+        em.getTransaction().begin();
+        final CandidateEvent result = candidateDataService.recordCandidateItemEvent(candidateSession,
+                itemEventType, new ItemSessionState());
+        em.getTransaction().commit();
+        return result;
+    }
+
+    private CandidateSession createCandidateSession() {
+        final Date now = new Date();
+        em.getTransaction().begin();
+
+        final AnonymousUser candidate = new AnonymousUser();
+        candidate.setCreationTime(now);
+        candidate.setFirstName("Anonymous");
+        candidate.setLastName("Candidate");
+        candidate.setSessionId("session");
+        em.persist(candidate);
+
+        /* (This follows the order used when importing a new Assessment) */
+        final AssessmentPackage assessmentPackage = new AssessmentPackage();
+        assessmentPackage.setCreationTime(now);
+        assessmentPackage.setImporter(candidate);
+        assessmentPackage.setImportVersion(Long.valueOf(1L));
+        assessmentPackage.setAssessmentType(AssessmentObjectType.ASSESSMENT_ITEM);
+        assessmentPackage.setImportType(AssessmentPackageImportType.STANDALONE_ITEM_XML);
+        assessmentPackage.setAssessmentHref("item.xml");
+        assessmentPackage.setFileName("item.xml");
+        assessmentPackage.setTitle("Item");
+        em.persist(assessmentPackage);
+
+        final Assessment assessment = new Assessment();
+        assessment.setCreationTime(now);
+        assessment.setOwnerUser(candidate);
+        assessment.setAssessmentType(AssessmentObjectType.ASSESSMENT_ITEM);
+        assessment.setSelectedAssessmentPackage(assessmentPackage);
+        assessment.setPackageImportVersion(Long.valueOf(1L));
+        assessmentPackage.setAssessment(assessment);
+        em.persist(assessment);
+
+        final Delivery delivery = new Delivery();
+        delivery.setCreationTime(now);
+        delivery.setAssessment(assessment);
+        delivery.setDeliveryType(DeliveryType.USER_TRANSIENT);
+        delivery.setTitle("Delivery");
+        em.persist(delivery);
+
+        final CandidateSession result = new CandidateSession();
+        result.setCreationTime(now);
+        result.setCandidate(candidate);
+        result.setDelivery(delivery);
+        em.persist(result);
+
+        em.getTransaction().commit();
+        return result;
+    }
+}
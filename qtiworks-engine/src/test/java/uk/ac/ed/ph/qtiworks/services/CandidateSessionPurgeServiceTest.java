@@ -0,0 +1,379 @@
+/* Copyright (c) 2012-2013, University of Edinburgh.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice, this
+ *   list of conditions and the following disclaimer in the documentation and/or
+ *   other materials provided with the distribution.
+ *
+ * * Neither the name of the University of Edinburgh nor the names of its
+ *   contributors may be used to endorse or promote products derived from this
+ *   software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ *
+ * This software is derived from (and contains code from) QTItools and MathAssessEngine.
+ * QTItools is (c) 2008, University of Southampton.
+ * MathAssessEngine is (c) 2010, University of Edinburgh.
+ */
+package uk.ac.ed.ph.qtiworks.services;
+
+import uk.ac.ed.ph.qtiworks.config.beans.QtiWorksDeploymentSettings;
+import uk.ac.ed.ph.qtiworks.domain.entities.AnonymousUser;
+import uk.ac.ed.ph.qtiworks.domain.entities.Assessment;
+import uk.ac.ed.ph.qtiworks.domain.entities.AssessmentPackage;
+import uk.ac.ed.ph.qtiworks.domain.entities.AssessmentPackageImportType;
+import uk.ac.ed.ph.qtiworks.domain.entities.CandidateEvent;
+import uk.ac.ed.ph.qtiworks.domain.entities.CandidateEventNotification;
+import uk.ac.ed.ph.qtiworks.domain.entities.CandidateItemEventType;
+import uk.ac.ed.ph.qtiworks.domain.entities.CandidateResponse;
+import uk.ac.ed.ph.qtiworks.domain.entities.CandidateSession;
+import uk.ac.ed.ph.qtiworks.domain.entities.CandidateSessionOutcome;
+import uk.ac.ed.ph.qtiworks.domain.entities.Delivery;
+import uk.ac.ed.ph.qtiworks.domain.entities.DeliveryType;
+import uk.ac.ed.ph.qtiworks.domain.entities.ResponseLegality;
+import uk.ac.ed.ph.qtiworks.services.dao.CandidateEventDao;
+import uk.ac.ed.ph.qtiworks.services.dao.CandidateEventNotificationDao;
+import uk.ac.ed.ph.qtiworks.services.dao.CandidateFileSubmissionDao;
+import uk.ac.ed.ph.qtiworks.services.dao.CandidateResponseDao;
+import uk.ac.ed.ph.qtiworks.services.dao.CandidateSessionDao;
+import uk.ac.ed.ph.qtiworks.services.dao.CandidateSessionOutcomeDao;
+import uk.ac.ed.ph.qtiworks.services.dao.QueuedLtiOutcomeDao;
+import uk.ac.ed.ph.qtiworks.services.domain.CandidateSessionPurgeReport;
+
+import uk.ac.ed.ph.jqtiplus.node.AssessmentObjectType;
+import uk.ac.ed.ph.jqtiplus.notification.NotificationLevel;
+import uk.ac.ed.ph.jqtiplus.notification.NotificationType;
+import uk.ac.ed.ph.jqtiplus.types.ResponseData.ResponseDataType;
+import uk.ac.ed.ph.jqtiplus.value.BaseType;
+import uk.ac.ed.ph.jqtiplus.value.Cardinality;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+
+import javax.persistence.EntityManager;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import com.google.common.io.Files;
+
+/**
+ * Tests the chunked purging of {@link CandidateSession}s performed by the
+ * {@link CandidateSessionPurgeService} and {@link DataDeletionService#deleteCandidateSessionData(List)}.
+ * <p>
+ * The per-chunk transactions that Spring would create are emulated here, so that we can
+ * check what has been committed after each chunk.
+ *
+ * @author David McKain
+ */
+public class CandidateSessionPurgeServiceTest {
+
+    private static final int CHUNK_SIZE = 3;
+    private static final int SESSION_COUNT = 7;
+
+    private static final String[] SESSION_DATA_TABLES = {
+        "candidate_string_response_items",
+        "candidate_responses",
+        "candidate_event_notifications",
+        "candidate_events",
+        "candidate_session_outcomes",
+        "candidate_sessions",
+    };
+
+    private EmbeddedTestDatabase database;
+    private EntityManager em;
+    private File filesystemBase;
+    private CandidateSessionPurgeService candidateSessionPurgeService;
+    private AnonymousUser candidate;
+    private Delivery purgedDelivery;
+    private Delivery keptDelivery;
+
+    /** xids deleted in each chunk, in order */
+    private List<List<Long>> deletedChunks;
+
+    /** Number of sessions remaining in the DB (as seen by a separate EntityManager) after each chunk */
+    private List<Integer> remainingSessionCounts;
+
+    @Before
+    public void setup() throws Exception {
+        database = new EmbeddedTestDatabase(50);
+        em = database.createEntityManager();
+
+        final CandidateSessionDao candidateSessionDao = new CandidateSessionDao();
+        final CandidateEventDao candidateEventDao = new CandidateEventDao();
+        final CandidateEventNotificationDao candidateEventNotificationDao = new CandidateEventNotificationDao();
+        final CandidateResponseDao candidateResponseDao = new CandidateResponseDao();
+        final CandidateFileSubmissionDao candidateFileSubmissionDao = new CandidateFileSubmissionDao();
+        final CandidateSessionOutcomeDao candidateSessionOutcomeDao = new CandidateSessionOutcomeDao();
+        final QueuedLtiOutcomeDao queuedLtiOutcomeDao = new QueuedLtiOutcomeDao();
+        EmbeddedTestDatabase.injectEntityManager(candidateSessionDao, em);
+        EmbeddedTestDatabase.injectEntityManager(candidateEventDao, em);
+        EmbeddedTestDatabase.injectEntityManager(candidateEventNotificationDao, em);
+        EmbeddedTestDatabase.injectEntityManager(candidateResponseDao, em);
+        EmbeddedTestDatabase.injectEntityManager(candidateFileSubmissionDao, em);
+        EmbeddedTestDatabase.injectEntityManager(candidateSessionOutcomeDao, em);
+        EmbeddedTestDatabase.injectEntityManager(queuedLtiOutcomeDao, em);
+
+        filesystemBase = Files.createTempDir();
+        final QtiWorksDeploymentSettings qtiWorksDeploymentSettings = new QtiWorksDeploymentSettings();
+        ReflectionTestUtils.setField(qtiWorksDeploymentSettings, "filesystemBase", filesystemBase.getAbsolutePath());
+        ReflectionTestUtils.setField(qtiWorksDeploymentSettings, "purgeChunkSize", Integer.valueOf(CHUNK_SIZE));
+        ReflectionTestUtils.setField(qtiWorksDeploymentSettings, "purgeFilesystemThreads", Integer.valueOf(2));
+        final FilespaceManager filespaceManager = new FilespaceManager();
+        ReflectionTestUtils.setField(filespaceManager, "qtiWorksDeploymentSettings", qtiWorksDeploymentSettings);
+        ReflectionTestUtils.setField(filespaceManager, "requestTimestampContext", new RequestTimestampContext());
+        filespaceManager.init();
+
+        deletedChunks = new ArrayList<List<Long>>();
+        remainingSessionCounts = new ArrayList<Integer>();
+        final DataDeletionService dataDeletionService = new DataDeletionService() {
+            @Override
+            public int deleteCandidateSessionData(final List<Long> xids) {
+                /* Emulate the REQUIRES_NEW transaction Spring would create here */
+                final int result;
+                TransactionSynchronizationManager.initSynchronization();
+                try {
+                    em.getTransaction().begin();
+                    result = super.deleteCandidateSessionData(xids);
+                    em.getTransaction().commit();
+                }
+                finally {
+                    for (final TransactionSynchronization synchronization : TransactionSynchronizationManager.getSynchronizations()) {
+                        synchronization.afterCompletion(TransactionSynchronization.STATUS_COMMITTED);
+                    }
+                    TransactionSynchronizationManager.clearSynchronization();
+                }
+                deletedChunks.add(new ArrayList<Long>(xids));
+                remainingSessionCounts.add(Integer.valueOf(countRowsInNewEntityManager("candidate_sessions")));
+                return result;
+            }
+        };
+        ReflectionTestUtils.setField(dataDeletionService, "filespaceManager", filespaceManager);
+        ReflectionTestUtils.setField(dataDeletionService, "candidateSessionDao", candidateSessionDao);
+        ReflectionTestUtils.setField(dataDeletionService, "candidateEventDao", candidateEventDao);
+        ReflectionTestUtils.setField(dataDeletionService, "candidateEventNotificationDao", candidateEventNotificationDao);
+        ReflectionTestUtils.setField(dataDeletionService, "candidateResponseDao", candidateResponseDao);
+        ReflectionTestUtils.setField(dataDeletionService, "candidateFileSubmissionDao", candidateFileSubmissionDao);
+        ReflectionTestUtils.setField(dataDeletionService, "candidateSessionOutcomeDao", candidateSessionOutcomeDao);
+        ReflectionTestUtils.setField(dataDeletionService, "queuedLtiOutcomeDao", queuedLtiOutcomeDao);
+
+        candidateSessionPurgeService = new CandidateSessionPurgeService();
+        ReflectionTestUtils.setField(candidateSessionPurgeService, "qtiWorksDeploymentSettings", qtiWorksDeploymentSettings);
+        ReflectionTestUtils.setField(candidateSessionPurgeService, "dataDeletionService", dataDeletionService);
+        ReflectionTestUtils.setField(candidateSessionPurgeService, "filespaceManager", filespaceManager);
+        ReflectionTestUtils.setField(candidateSessionPurgeService, "candidateSessionDao", candidateSessionDao);
+        candidateSessionPurgeService.init();
+
+        createDeliveries();
+    }
+
+    @After
+    public void tearDown() {
+        if (candidateSessionPurgeService!=null) {
+            candidateSessionPurgeService.destroy();
+        }
+        if (em!=null) {
+            em.close();
+        }
+        if (database!=null) {
+            database.close();
+        }
+        if (filesystemBase!=null) {
+            ServiceUtilities.recursivelyDelete(filesystemBase);
+        }
+    }
+
+    //----------------------------------------------------------
+
+    @Test
+    public void testPurgeDelivery() {
+        final List<Long> purgedXids = new ArrayList<Long>();
+        for (int i=0; i<SESSION_COUNT; i++) {
+            purgedXids.add(createCandidateSessionData(purgedDelivery).getId());
+        }
+        final CandidateSession keptSession = createCandidateSessionData(keptDelivery);
+        em.clear();
+
+        final CandidateSessionPurgeReport report = candidateSessionPurgeService.purgeCandidateSessions(purgedDelivery);
+        Assert.assertEquals(SESSION_COUNT, report.getSessionCount());
+        Assert.assertEquals(3, report.getChunkCount());
+        Assert.assertEquals(0, report.getFilesystemFailureCount());
+
+        /* Chunks should page through the sessions in xid order, committing as they go */
+        Assert.assertEquals(purgedXids.subList(0, 3), deletedChunks.get(0));
+        Assert.assertEquals(purgedXids.subList(3, 6), deletedChunks.get(1));
+        Assert.assertEquals(purgedXids.subList(6, 7), deletedChunks.get(2));
+        Assert.assertEquals(Arrays.asList(Integer.valueOf(5), Integer.valueOf(2), Integer.valueOf(1)), remainingSessionCounts);
+
+        /* Only the data for the other delivery should be left over */
+        em.clear();
+        for (final String table : SESSION_DATA_TABLES) {
+            Assert.assertEquals(table, 1, countRowsInNewEntityManager(table));
+        }
+        Assert.assertNotNull(em.find(CandidateSession.class, keptSession.getId()));
+    }
+
+    @Test
+    public void testPurgeCreatedBefore() {
+        for (int i=0; i<SESSION_COUNT; i++) {
+            createCandidateSessionData(i % 2 == 0 ? purgedDelivery : keptDelivery);
+        }
+        em.clear();
+
+        final CandidateSessionPurgeReport report = candidateSessionPurgeService.purgeCandidateSessionsCreatedBefore(new Date(System.currentTimeMillis() + 60000L));
+        Assert.assertEquals(SESSION_COUNT, report.getSessionCount());
+        Assert.assertEquals(3, report.getChunkCount());
+        for (final String table : SESSION_DATA_TABLES) {
+            Assert.assertEquals(table, 0, countRowsInNewEntityManager(table));
+        }
+    }
+
+    @Test
+    public void testPurgeNothing() {
+        final CandidateSessionPurgeReport report = candidateSessionPurgeService.purgeCandidateSessions(purgedDelivery);
+        Assert.assertEquals(0, report.getSessionCount());
+        Assert.assertEquals(0, report.getChunkCount());
+        Assert.assertTrue(deletedChunks.isEmpty());
+    }
+
+    @Test
+    public void testTransactionPropagation() throws Exception {
+        /* (Chunks must be committed independently, so purges must not be run within an existing transaction) */
+        Assert.assertEquals(Propagation.NEVER, CandidateSessionPurgeService.class.getAnnotation(Transactional.class).propagation());
+        Assert.assertEquals(Propagation.REQUIRES_NEW, DataDeletionService.class.getMethod("deleteCandidateSessionData", List.class)
+                .getAnnotation(Transactional.class).propagation());
+    }
+
+    //----------------------------------------------------------
+
+    private int countRowsInNewEntityManager(final String table) {
+        final EntityManager countEm = database.createEntityManager();
+        try {
+            return ((Number) countEm.createNativeQuery("SELECT COUNT(*) FROM " + table).getSingleResult()).intValue();
+        }
+        finally {
+            countEm.close();
+        }
+    }
+
+    private void createDeliveries() {
+        final Date now = new Date();
+        em.getTransaction().begin();
+
+        candidate = new AnonymousUser();
+        candidate.setCreationTime(now);
+        candidate.setFirstName("Anonymous");
+        candidate.setLastName("Candidate");
+        candidate.setSessionId("session");
+        em.persist(candidate);
+
+        /* (This follows the order used when importing a new Assessment) */
+        final AssessmentPackage assessmentPackage = new AssessmentPackage();
+        assessmentPackage.setCreationTime(now);
+        assessmentPackage.setImporter(candidate);
+        assessmentPackage.setImportVersion(Long.valueOf(1L));
+        assessmentPackage.setAssessmentType(AssessmentObjectType.ASSESSMENT_ITEM);
+        assessmentPackage.setImportType(AssessmentPackageImportType.STANDALONE_ITEM_XML);
+        assessmentPackage.setAssessmentHref("item.xml");
+        assessmentPackage.setFileName("item.xml");
+        assessmentPackage.setTitle("Item");
+        em.persist(assessmentPackage);
+
+        final Assessment assessment = new Assessment();
+        assessment.setCreationTime(now);
+        assessment.setOwnerUser(candidate);
+        assessment.setAssessmentType(AssessmentObjectType.ASSESSMENT_ITEM);
+        assessment.setSelectedAssessmentPackage(assessmentPackage);
+        assessment.setPackageImportVersion(Long.valueOf(1L));
+        assessmentPackage.setAssessment(assessment);
+        em.persist(assessment);
+
+        purgedDelivery = createDelivery(assessment, "Purged", now);
+        keptDelivery = createDelivery(assessment, "Kept", now);
+
+        em.getTransaction().commit();
+    }
+
+    private Delivery createDelivery(final Assessment assessment, final String title, final Date now) {
+        final Delivery result = new Delivery();
+        result.setCreationTime(now);
+        result.setAssessment(assessment);
+        result.setDeliveryType(DeliveryType.USER_TRANSIENT);
+        result.setTitle(title);
+        em.persist(result);
+        return result;
+    }
+
+    /**
+     * Creates a {@link CandidateSession} on the given {@link Delivery}, together with an event,
+     * notification, response and outcome.
+     */
+    private CandidateSession createCandidateSessionData(final Delivery delivery) {
+        final Date now = new Date();
+        em.getTransaction().begin();
+
+        final CandidateSession result = new CandidateSession();
+        result.setCreationTime(now);
+        result.setCandidate(candidate);
+        result.setDelivery(delivery);
+        em.persist(result);
+
+        final CandidateEvent candidateEvent = new CandidateEvent();
+        candidateEvent.setCandidateSession(result);
+        candidateEvent.setTimestamp(now);
+        candidateEvent.setItemEventType(CandidateItemEventType.RESPONSE_VALID);
+        em.persist(candidateEvent);
+
+        final CandidateEventNotification notification = new CandidateEventNotification();
+        notification.setCandidateEvent(candidateEvent);
+        notification.setNotificationType(NotificationType.RUNTIME);
+        notification.setNotificationLevel(NotificationLevel.WARNING);
+        notification.setMessage("Warning");
+        em.persist(notification);
+
+        final CandidateResponse response = new CandidateResponse();
+        response.setCandidateEvent(candidateEvent);
+        response.setResponseIdentifier("RESPONSE");
+        response.setResponseDataType(ResponseDataType.STRING);
+        response.setResponseLegality(ResponseLegality.VALID);
+        response.setStringResponseData(Arrays.asList("ChoiceA"));
+        em.persist(response);
+
+        final CandidateSessionOutcome outcome = new CandidateSessionOutcome();
+        outcome.setCandidateSession(result);
+        outcome.setOutcomeIdentifier("SCORE");
+        outcome.setBaseType(BaseType.FLOAT);
+        outcome.setCardinality(Cardinality.SINGLE);
+        outcome.setStringValue("1.0");
+        em.persist(outcome);
+
+        em.getTransaction().commit();
+        return result;
+    }
+}
@@ -0,0 +1,249 @@
+/* Copyright (c) 2012-2013, University of Edinburgh.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice, this
+ *   list of conditions and the following disclaimer in the documentation and/or
+ *   other materials provided with the distribution.
+ *
+ * * Neither the name of the University of Edinburgh nor the names of its
+ *   contributors may be used to endorse or promote products derived from this
+ *   software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ *
+ * This software is derived from (and contains code from) QTItools and MathAssessEngine.
+ * QTItools is (c) 2008, University of Southampton.
+ * MathAssessEngine is (c) 2010, University of Edinburgh.
+ */
+package uk.ac.ed.ph.qtiworks.services;
+
+import uk.ac.ed.ph.qtiworks.services.dao.GenericDao;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Properties;
+
+import javax.persistence.EntityManager;
+
+import org.hibernate.jpa.HibernatePersistenceProvider;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.orm.jpa.LocalContainerEntityManagerFactoryBean;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.util.ReflectionUtils;
+
+/**
+ * Test helper that creates the QTIWorks schema within a fresh in-memory HSQLDB database
+ * and logs the SQL statements executed against it, so that tests can check how many
+ * round trips are made to the DB.
+ *
+ * @author David McKain
+ */
+public final class EmbeddedTestDatabase {
+
+    private final CountingDataSource dataSource;
+    private final LocalContainerEntityManagerFactoryBean emfBean;
+
+    /** SQL of each statement sent to the DB, in lower case. (Batches are logged once.) */
+    private final List<String> executedStatements;
+
+    public EmbeddedTestDatabase(final int jdbcBatchSize) {
+        this.executedStatements = Collections.synchronizedList(new ArrayList<String>());
+        this.dataSource = new CountingDataSource();
+        dataSource.setDriverClassName("org.hsqldb.jdbc.JDBCDriver");
+        dataSource.setUrl("jdbc:hsqldb:mem:qtiworks" + System.nanoTime());
+        dataSource.setUsername("sa");
+        dataSource.setPassword("");
+
+        final Properties jpaProperties = new Properties();
+        jpaProperties.put("hibernate.dialect", "org.hibernate.dialect.HSQLDialect");
+        jpaProperties.put("hibernate.id.new_generator_mappings", "true");
+        jpaProperties.put("hibernate.hbm2ddl.auto", "create");
+        jpaProperties.put("hibernate.jdbc.batch_size", Integer.toString(jdbcBatchSize));
+        jpaProperties.put("javax.persistence.validation.mode", "none");
+
+        final LocalContainerEntityManagerFactoryBean emf = new LocalContainerEntityManagerFactoryBean();
+        emf.setPersistenceProvider(new HibernatePersistenceProvider());
+        emf.setDataSource(dataSource);
+        emf.setJpaProperties(jpaProperties);
+        emf.setPackagesToScan("uk.ac.ed.ph.qtiworks.domain.entities");
+        emf.afterPropertiesSet();
+        this.emfBean = emf;
+    }
+
+    public EntityManager createEntityManager() {
+        return emfBean.getObject().createEntityManager();
+    }
+
+    public void close() {
+        emfBean.destroy();
+    }
+
+    //----------------------------------------------------------
+
+    public void resetStatementLog() {
+        executedStatements.clear();
+    }
+
+    public List<String> getExecutedStatements() {
+        synchronized (executedStatements) {
+            return new ArrayList<String>(executedStatements);
+        }
+    }
+
+    /** Counts the number of executed statements whose SQL starts with the given prefix (ignoring case) */
+    public int countExecutedStatements(final String sqlPrefix) {
+        final String lowerCasePrefix = sqlPrefix.toLowerCase(Locale.ROOT);
+        int count = 0;
+        for (final String sql : getExecutedStatements()) {
+            if (sql.startsWith(lowerCasePrefix)) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    //----------------------------------------------------------
+
+    /** Executes the given SQL directly, without logging it */
+    public void execute(final String sql) throws SQLException {
+        final Connection connection = dataSource.getTargetConnection();
+        try {
+            final Statement statement = connection.createStatement();
+            statement.execute(sql);
+            statement.close();
+        }
+        finally {
+            connection.close();
+        }
+    }
+
+    /** Returns HSQLDB's query plan for the given SQL, in lower case */
+    public String explainPlan(final String sql) throws SQLException {
+        final StringBuilder planBuilder = new StringBuilder();
+        final Connection connection = dataSource.getTargetConnection();
+        try {
+            final Statement statement = connection.createStatement();
+            final ResultSet resultSet = statement.executeQuery("EXPLAIN PLAN FOR " + sql);
+            while (resultSet.next()) {
+                planBuilder.append(resultSet.getString(1)).append('\n');
+            }
+            statement.close();
+        }
+        finally {
+            connection.close();
+        }
+        return planBuilder.toString().toLowerCase(Locale.ROOT);
+    }
+
+    /** Returns the names of all indexes on the given table, in lower case */
+    public List<String> getIndexNames(final String tableName) throws SQLException {
+        final List<String> result = new ArrayList<String>();
+        final Connection connection = dataSource.getTargetConnection();
+        try {
+            final ResultSet resultSet = connection.getMetaData().getIndexInfo(null, null, tableName.toUpperCase(Locale.ROOT), false, false);
+            while (resultSet.next()) {
+                final String indexName = resultSet.getString("INDEX_NAME").toLowerCase(Locale.ROOT);
+                if (!result.contains(indexName)) {
+                    result.add(indexName);
+                }
+            }
+            resultSet.close();
+        }
+        finally {
+            connection.close();
+        }
+        return result;
+    }
+
+    //----------------------------------------------------------
+
+    /** Wires the given {@link EntityManager} into a DAO, as Spring would */
+    public static void injectEntityManager(final GenericDao<?> dao, final EntityManager em) {
+        ReflectionTestUtils.setField(dao, "em", em);
+        final Field genericDaoEmField = ReflectionUtils.findField(GenericDao.class, "em");
+        ReflectionUtils.makeAccessible(genericDaoEmField);
+        ReflectionUtils.setField(genericDaoEmField, dao, em);
+    }
+
+    //----------------------------------------------------------
+
+    /**
+     * {@link DriverManagerDataSource} wrapping its {@link Connection}s so that we can log
+     * the statements executed on them.
+     */
+    private final class CountingDataSource extends DriverManagerDataSource {
+
+        Connection getTargetConnection() throws SQLException {
+            return super.getConnectionFromDriver(getUsername(), getPassword());
+        }
+
+        @Override
+        protected Connection getConnectionFromDriver(final String username, final String password) throws SQLException {
+            final Connection connection = super.getConnectionFromDriver(username, password);
+            return (Connection) Proxy.newProxyInstance(getClass().getClassLoader(),
+                    new Class<?>[] { Connection.class },
+                    new InvocationHandler() {
+                        @Override
+                        public Object invoke(final Object proxy, final Method method, final Object[] args) throws Throwable {
+                            final Object result = invokeTarget(connection, method, args);
+                            if (method.getName().equals("prepareStatement")) {
+                                return wrapStatement((PreparedStatement) result, args[0].toString());
+                            }
+                            return result;
+                        }
+                    });
+        }
+
+        private PreparedStatement wrapStatement(final PreparedStatement statement, final String sql) {
+            final String lowerCaseSql = sql.trim().toLowerCase(Locale.ROOT);
+            return (PreparedStatement) Proxy.newProxyInstance(getClass().getClassLoader(),
+                    new Class<?>[] { PreparedStatement.class },
+                    new InvocationHandler() {
+                        @Override
+                        public Object invoke(final Object proxy, final Method method, final Object[] args) throws Throwable {
+                            if (method.getName().startsWith("execute")) {
+                                executedStatements.add(lowerCaseSql);
+                            }
+                            return invokeTarget(statement, method, args);
+                        }
+                    });
+        }
+    }
+
+    static Object invokeTarget(final Object target, final Method method, final Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        }
+        catch (final InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+}
@@ -0,0 +1,199 @@
+/* Copyright (c) 2012-2013, University of Edinburgh.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice, this
+ *   list of conditions and the following disclaimer in the documentation and/or
+ *   other materials provided with the distribution.
+ *
+ * * Neither the name of the University of Edinburgh nor the names of its
+ *   contributors may be used to endorse or promote products derived from this
+ *   software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ *
+ * This software is derived from (and contains code from) QTItools and MathAssessEngine.
+ * QTItools is (c) 2008, University of Southampton.
+ * MathAssessEngine is (c) 2010, University of Edinburgh.
+ */
+package uk.ac.ed.ph.qtiworks.services;
+
+import uk.ac.ed.ph.qtiworks.QtiWorksLogicException;
+import uk.ac.ed.ph.qtiworks.config.beans.QtiWorksDeploymentSettings;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import com.google.common.base.Charsets;
+import com.google.common.hash.Hashing;
+import com.google.common.io.Files;
+
+/**
+ * Tests the content-addressed storage within {@link FilespaceManager}
+ *
+ * @author David McKain
+ */
+public class FilespaceManagerBlobTest {
+
+    private File filesystemBase;
+    private FilespaceManager filespaceManager;
+    private int sandboxCounter;
+
+    @Before
+    public void setup() {
+        filesystemBase = Files.createTempDir();
+        final QtiWorksDeploymentSettings qtiWorksDeploymentSettings = new QtiWorksDeploymentSettings();
+        ReflectionTestUtils.setField(qtiWorksDeploymentSettings, "filesystemBase", filesystemBase.getAbsolutePath());
+        filespaceManager = new FilespaceManager();
+        ReflectionTestUtils.setField(filespaceManager, "qtiWorksDeploymentSettings", qtiWorksDeploymentSettings);
+        ReflectionTestUtils.setField(filespaceManager, "requestTimestampContext", new RequestTimestampContext());
+        filespaceManager.init();
+    }
+
+    @After
+    public void tearDown() {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            completeTransaction();
+        }
+        if (filesystemBase!=null) {
+            ServiceUtilities.recursivelyDelete(filesystemBase);
+        }
+    }
+
+    //----------------------------------------------------------
+
+    @Test
+    public void storeNewPackage() throws Exception {
+        final String digest = digest("package");
+        final File sandbox = createSandbox("package");
+
+        final File blobDirectory = filespaceManager.storeAssessmentPackageBlob(sandbox, digest);
+        Assert.assertEquals(filespaceManager.getAssessmentPackageBlobDirectory(digest), blobDirectory);
+        Assert.assertFalse(sandbox.exists());
+        Assert.assertEquals("package", Files.toString(new File(blobDirectory, "qti.xml"), Charsets.UTF_8));
+    }
+
+    @Test
+    public void storeDuplicatePackage() throws Exception {
+        final String digest = digest("package");
+        final File first = filespaceManager.storeAssessmentPackageBlob(createSandbox("package"), digest);
+        final File sandbox = createSandbox("package");
+
+        final File second = filespaceManager.storeAssessmentPackageBlob(sandbox, digest);
+        Assert.assertEquals(first, second);
+        Assert.assertFalse(sandbox.exists());
+    }
+
+    @Test
+    public void deletePackage() throws Exception {
+        final String digest = digest("package");
+        final File blobDirectory = filespaceManager.storeAssessmentPackageBlob(createSandbox("package"), digest);
+
+        Assert.assertTrue(filespaceManager.deleteAssessmentPackageBlob(digest));
+        Assert.assertFalse(blobDirectory.exists());
+    }
+
+    @Test
+    public void storeDuplicateUpload() throws Exception {
+        final String digest = digest("upload");
+        final File first = filespaceManager.storeCandidateUploadBlob(createTempFile("upload"), digest);
+        final File tempFile = createTempFile("upload");
+
+        final File second = filespaceManager.storeCandidateUploadBlob(tempFile, digest);
+        Assert.assertEquals(first, second);
+        Assert.assertFalse(tempFile.exists());
+        Assert.assertEquals("upload", Files.toString(second, Charsets.UTF_8));
+
+        Assert.assertTrue(filespaceManager.deleteCandidateUploadBlob(digest));
+        Assert.assertFalse(second.exists());
+    }
+
+    @Test(expected=QtiWorksLogicException.class)
+    public void badDigest() {
+        filespaceManager.getCandidateUploadBlobFile("../../etc");
+    }
+
+    @Test(expected=QtiWorksLogicException.class)
+    public void lockOutsideTransaction() {
+        filespaceManager.lockContentDigest(digest("upload"));
+    }
+
+    @Test
+    public void lockHeldUntilTransactionCompletes() throws Exception {
+        final String digest = digest("upload");
+        TransactionSynchronizationManager.initSynchronization();
+        filespaceManager.lockContentDigest(digest);
+
+        /* Another transaction wanting the same data has to wait for ours to complete */
+        final AtomicBoolean otherLocked = new AtomicBoolean();
+        final Thread other = new Thread() {
+            @Override
+            public void run() {
+                TransactionSynchronizationManager.initSynchronization();
+                filespaceManager.lockContentDigest(digest);
+                otherLocked.set(true);
+                completeTransaction();
+            }
+        };
+        other.start();
+        other.join(200L);
+        Assert.assertFalse(otherLocked.get());
+
+        /* Locking again within our own transaction is fine */
+        filespaceManager.lockContentDigests(Arrays.asList(digest, digest("package")));
+
+        completeTransaction();
+        other.join(10000L);
+        Assert.assertTrue(otherLocked.get());
+    }
+
+    //----------------------------------------------------------
+
+    private static void completeTransaction() {
+        for (final TransactionSynchronization synchronization : TransactionSynchronizationManager.getSynchronizations()) {
+            synchronization.afterCompletion(TransactionSynchronization.STATUS_COMMITTED);
+        }
+        TransactionSynchronizationManager.clearSynchronization();
+    }
+
+    private static String digest(final String content) {
+        return Hashing.sha256().hashString(content, Charsets.UTF_8).toString();
+    }
+
+    private File createSandbox(final String content) throws Exception {
+        final File sandbox = new File(filesystemBase, "sandbox" + (++sandboxCounter));
+        Assert.assertTrue(sandbox.mkdir());
+        Files.write(content, new File(sandbox, "qti.xml"), Charsets.UTF_8);
+        return sandbox;
+    }
+
+    private File createTempFile(final String content) throws Exception {
+        final File tempFile = filespaceManager.createTempFile();
+        Files.write(content, tempFile, Charsets.UTF_8);
+        return tempFile;
+    }
+}
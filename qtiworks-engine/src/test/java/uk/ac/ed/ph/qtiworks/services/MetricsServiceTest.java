@@ -0,0 +1,100 @@
+/* Copyright (c) 2012-2013, University of Edinburgh.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice, this
+ *   list of conditions and the following disclaimer in the documentation and/or
+ *   other materials provided with the distribution.
+ *
+ * * Neither the name of the University of Edinburgh nor the names of its
+ *   contributors may be used to endorse or promote products derived from this
+ *   software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ *
+ * This software is derived from (and contains code from) QTItools and MathAssessEngine.
+ * QTItools is (c) 2008, University of Southampton.
+ * MathAssessEngine is (c) 2010, University of Edinburgh.
+ */
+package uk.ac.ed.ph.qtiworks.services;
+
+import uk.ac.ed.ph.qtiworks.domain.entities.SystemUser;
+import uk.ac.ed.ph.qtiworks.domain.entities.UserRole;
+import uk.ac.ed.ph.qtiworks.services.domain.Privilege;
+import uk.ac.ed.ph.qtiworks.services.domain.PrivilegeException;
+import uk.ac.ed.ph.qtiworks.services.metrics.MetricsRegistry;
+
+import java.util.SortedMap;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+/**
+ * Tests the authorisation performed by the {@link MetricsService}
+ *
+ * @author David McKain
+ */
+public class MetricsServiceTest {
+
+    private IdentityService identityService;
+    private MetricsService metricsService;
+
+    @Before
+    public void setup() {
+        final MetricsRegistry metricsRegistry = new MetricsRegistry();
+        metricsRegistry.counter("test.counter").increment();
+
+        identityService = new IdentityService();
+        metricsService = new MetricsService();
+        ReflectionTestUtils.setField(metricsService, "identityService", identityService);
+        ReflectionTestUtils.setField(metricsService, "metricsRegistry", metricsRegistry);
+    }
+
+    @Test
+    public void testSysAdmin() throws Exception {
+        identityService.setCurrentThreadUser(createSystemUser(true));
+        final SortedMap<String, Number> snapshot = metricsService.getMetricsSnapshot();
+        Assert.assertEquals(1L, snapshot.get("test.counter").longValue());
+    }
+
+    @Test
+    public void testNotSysAdmin() {
+        identityService.setCurrentThreadUser(createSystemUser(false));
+        try {
+            metricsService.getMetricsSnapshot();
+            Assert.fail("Expected PrivilegeException");
+        }
+        catch (final PrivilegeException e) {
+            Assert.assertEquals(Privilege.VIEW_METRICS, e.getPrivileges().get(0));
+        }
+    }
+
+    @Test(expected=IllegalStateException.class)
+    public void testNoUser() throws Exception {
+        metricsService.getMetricsSnapshot();
+    }
+
+    private static SystemUser createSystemUser(final boolean sysAdmin) {
+        final SystemUser result = new SystemUser(UserRole.INSTRUCTOR);
+        result.setLoginName("user");
+        result.setSysAdmin(sysAdmin);
+        return result;
+    }
+}
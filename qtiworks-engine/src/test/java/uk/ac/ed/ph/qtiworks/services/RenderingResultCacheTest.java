@@ -0,0 +1,122 @@
+/* Copyright (c) 2012-2013, University of Edinburgh.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice, this
+ *   list of conditions and the following disclaimer in the documentation and/or
+ *   other materials provided with the distribution.
+ *
+ * * Neither the name of the University of Edinburgh nor the names of its
+ *   contributors may be used to endorse or promote products derived from this
+ *   software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ *
+ * This software is derived from (and contains code from) QTItools and MathAssessEngine.
+ * QTItools is (c) 2008, University of Southampton.
+ * MathAssessEngine is (c) 2010, University of Edinburgh.
+ */
+package uk.ac.ed.ph.qtiworks.services;
+
+import uk.ac.ed.ph.qtiworks.config.beans.QtiWorksDeploymentSettings;
+import uk.ac.ed.ph.qtiworks.services.RenderingResultCache.CachedRendering;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+/**
+ * Tests the {@link RenderingResultCache}
+ *
+ * @author David McKain
+ */
+public class RenderingResultCacheTest {
+
+    @Test
+    public void testHitAndMiss() {
+        final RenderingResultCache cache = createCache(1);
+        Assert.assertNull(cache.getRendering("a"));
+
+        final CachedRendering rendering = createRendering(100);
+        cache.putRendering("a", rendering);
+        Assert.assertSame(rendering, cache.getRendering("a"));
+        Assert.assertNull(cache.getRendering("b"));
+        Assert.assertEquals(1, cache.getHitCount());
+        Assert.assertEquals(2, cache.getMissCount());
+        Assert.assertEquals(100L, cache.getCurrentBytes());
+    }
+
+    @Test
+    public void testLeastRecentlyUsedEvicted() {
+        final RenderingResultCache cache = createCache(1);
+        cache.putRendering("a", createRendering(400));
+        cache.putRendering("b", createRendering(400));
+
+        /* Touch "a" so that "b" becomes the eldest */
+        Assert.assertNotNull(cache.getRendering("a"));
+        cache.putRendering("c", createRendering(400));
+
+        Assert.assertNotNull(cache.getRendering("a"));
+        Assert.assertNull(cache.getRendering("b"));
+        Assert.assertNotNull(cache.getRendering("c"));
+        Assert.assertEquals(1, cache.getEvictionCount());
+        Assert.assertEquals(800L, cache.getCurrentBytes());
+    }
+
+    @Test
+    public void testReplaceKeepsSizeAccurate() {
+        final RenderingResultCache cache = createCache(1);
+        cache.putRendering("a", createRendering(400));
+        cache.putRendering("a", createRendering(100));
+        Assert.assertEquals(1, cache.size());
+        Assert.assertEquals(100L, cache.getCurrentBytes());
+    }
+
+    @Test
+    public void testOversizedRenderingNotCached() {
+        final RenderingResultCache cache = createCache(1);
+        cache.putRendering("a", createRendering(100));
+        cache.putRendering("big", createRendering(1025));
+        Assert.assertNull(cache.getRendering("big"));
+        Assert.assertNotNull(cache.getRendering("a"));
+    }
+
+    @Test
+    public void testDisabled() {
+        final RenderingResultCache cache = createCache(0);
+        Assert.assertFalse(cache.isEnabled());
+        cache.putRendering("a", createRendering(1));
+        Assert.assertNull(cache.getRendering("a"));
+        Assert.assertEquals(0, cache.size());
+    }
+
+    //----------------------------------------------------------
+
+    static RenderingResultCache createCache(final int sizeKb) {
+        final QtiWorksDeploymentSettings qtiWorksDeploymentSettings = new QtiWorksDeploymentSettings();
+        ReflectionTestUtils.setField(qtiWorksDeploymentSettings, "renderingResultCacheSize", Integer.valueOf(sizeKb));
+        final RenderingResultCache cache = new RenderingResultCache();
+        ReflectionTestUtils.setField(cache, "qtiWorksDeploymentSettings", qtiWorksDeploymentSettings);
+        cache.init();
+        return cache;
+    }
+
+    private static CachedRendering createRendering(final int size) {
+        return new CachedRendering("text/html", new byte[size]);
+    }
+}
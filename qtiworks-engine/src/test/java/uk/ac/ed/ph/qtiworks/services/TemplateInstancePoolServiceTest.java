@@ -0,0 +1,248 @@
+/* Copyright (c) 2012-2013, University of Edinburgh.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice, this
+ *   list of conditions and the following disclaimer in the documentation and/or
+ *   other materials provided with the distribution.
+ *
+ * * Neither the name of the University of Edinburgh nor the names of its
+ *   contributors may be used to endorse or promote products derived from this
+ *   software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ *
+ * This software is derived from (and contains code from) QTItools and MathAssessEngine.
+ * QTItools is (c) 2008, University of Southampton.
+ * MathAssessEngine is (c) 2010, University of Edinburgh.
+ */
+package uk.ac.ed.ph.qtiworks.services;
+
+import uk.ac.ed.ph.qtiworks.config.beans.QtiWorksDeploymentSettings;
+import uk.ac.ed.ph.qtiworks.domain.entities.Delivery;
+import uk.ac.ed.ph.qtiworks.domain.entities.ItemDeliverySettings;
+
+import uk.ac.ed.ph.jqtiplus.JqtiExtensionManager;
+import uk.ac.ed.ph.jqtiplus.reading.AssessmentObjectXmlLoader;
+import uk.ac.ed.ph.jqtiplus.reading.QtiXmlReader;
+import uk.ac.ed.ph.jqtiplus.resolution.ResolvedAssessmentItem;
+import uk.ac.ed.ph.jqtiplus.running.FixedRandomSeedSource;
+import uk.ac.ed.ph.jqtiplus.running.ItemProcessingInitializer;
+import uk.ac.ed.ph.jqtiplus.running.ItemSessionController;
+import uk.ac.ed.ph.jqtiplus.running.ItemSessionControllerSettings;
+import uk.ac.ed.ph.jqtiplus.state.ItemProcessingMap;
+import uk.ac.ed.ph.jqtiplus.state.ItemSessionState;
+import uk.ac.ed.ph.jqtiplus.state.TemplateInstance;
+import uk.ac.ed.ph.jqtiplus.xmlutils.locators.ClassPathResourceLocator;
+
+import java.net.URI;
+import java.util.Collections;
+import java.util.Date;
+import java.util.IdentityHashMap;
+import java.util.Set;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+/**
+ * Tests the {@link TemplateInstancePoolService}
+ *
+ * @author David McKain
+ */
+public class TemplateInstancePoolServiceTest {
+
+    private static final URI ITEM_URI = URI.create("classpath:/uk/ac/ed/ph/qtiworks/samples/ims/template.xml");
+    private static final int POOL_SIZE = 4;
+
+    private JqtiExtensionManager jqtiExtensionManager;
+    private ResolvedAssessmentItem resolvedAssessmentItem;
+    private ItemProcessingMap itemProcessingMap;
+    private TemplateInstancePoolService templateInstancePoolService;
+    private Delivery delivery;
+
+    @Before
+    public void setup() {
+        jqtiExtensionManager = new JqtiExtensionManager();
+        final AssessmentObjectXmlLoader assessmentObjectXmlLoader = new AssessmentObjectXmlLoader(new QtiXmlReader(jqtiExtensionManager),
+                new ClassPathResourceLocator());
+        resolvedAssessmentItem = assessmentObjectXmlLoader.loadAndResolveAssessmentItem(ITEM_URI);
+        Assert.assertTrue(resolvedAssessmentItem.getRootNodeLookup().wasSuccessful());
+        itemProcessingMap = new ItemProcessingInitializer(resolvedAssessmentItem, true).initialize();
+
+        templateInstancePoolService = createTemplateInstancePoolService(POOL_SIZE);
+
+        delivery = new Delivery();
+        delivery.setId(Long.valueOf(1L));
+    }
+
+    @After
+    public void tearDown() {
+        if (templateInstancePoolService!=null) {
+            templateInstancePoolService.destroy();
+        }
+    }
+
+    //----------------------------------------------------------
+
+    @Test
+    public void testDrawAndTopUp() throws Exception {
+        /* First draw finds an empty pool and schedules it to be filled */
+        Assert.assertNull(templateInstancePoolService.drawTemplateInstance(delivery, createItemSessionController(itemProcessingMap)));
+        Assert.assertEquals(1, templateInstancePoolService.getPoolCount());
+        Assert.assertEquals(1, templateInstancePoolService.getMissCount());
+
+        /* Subsequent draws get fresh instances, with the pool being topped up as we go */
+        final Set<TemplateInstance> drawn = Collections.newSetFromMap(new IdentityHashMap<TemplateInstance, Boolean>());
+        for (int i=0; i<3*POOL_SIZE; i++) {
+            Assert.assertTrue(drawn.add(awaitTemplateInstance(createItemSessionController(itemProcessingMap))));
+        }
+        Assert.assertEquals(3*POOL_SIZE, templateInstancePoolService.getHitCount());
+        Assert.assertEquals(1, templateInstancePoolService.getPoolCount());
+    }
+
+    @Test
+    public void testPoolingDisabled() {
+        templateInstancePoolService.destroy();
+        templateInstancePoolService = createTemplateInstancePoolService(0);
+        Assert.assertFalse(templateInstancePoolService.isEnabled());
+        Assert.assertNull(templateInstancePoolService.drawTemplateInstance(delivery, createItemSessionController(itemProcessingMap)));
+        Assert.assertEquals(0, templateInstancePoolService.getPoolCount());
+        Assert.assertEquals(0, templateInstancePoolService.getMissCount());
+    }
+
+    @Test
+    public void testPoolingDisallowedForDelivery() throws Exception {
+        awaitTemplateInstance(createItemSessionController(itemProcessingMap));
+        final ItemDeliverySettings itemDeliverySettings = new ItemDeliverySettings();
+        delivery.setDeliverySettings(itemDeliverySettings);
+
+        /* Unset means allowed */
+        Assert.assertNotNull(awaitTemplateInstance(createItemSessionController(itemProcessingMap)));
+
+        /* Turning it off stops draws and discards the existing pool */
+        itemDeliverySettings.setAllowTemplatePooling(Boolean.FALSE);
+        final int missCount = templateInstancePoolService.getMissCount();
+        Assert.assertNull(templateInstancePoolService.drawTemplateInstance(delivery, createItemSessionController(itemProcessingMap)));
+        Assert.assertEquals(0, templateInstancePoolService.getPoolCount());
+        Assert.assertEquals(missCount, templateInstancePoolService.getMissCount());
+    }
+
+    @Test
+    public void testPoolDiscardedWhenItemChanges() throws Exception {
+        final TemplateInstance original = awaitTemplateInstance(createItemSessionController(itemProcessingMap));
+        Assert.assertNotNull(original);
+
+        /* New ItemProcessingMap (e.g. after a new package upload) gets a new (empty) pool */
+        final ItemProcessingMap newItemProcessingMap = new ItemProcessingInitializer(resolvedAssessmentItem, true).initialize();
+        Assert.assertNull(templateInstancePoolService.drawTemplateInstance(delivery, createItemSessionController(newItemProcessingMap)));
+        Assert.assertEquals(1, templateInstancePoolService.getPoolCount());
+        Assert.assertNotNull(awaitTemplateInstance(createItemSessionController(newItemProcessingMap)));
+    }
+
+    @Test
+    public void testPoolDiscardedWhenTemplateProcessingLimitChanges() throws Exception {
+        awaitTemplateInstance(createItemSessionController(itemProcessingMap));
+
+        final ItemSessionControllerSettings itemSessionControllerSettings = new ItemSessionControllerSettings();
+        itemSessionControllerSettings.setTemplateProcessingLimit(itemSessionControllerSettings.getTemplateProcessingLimit() + 1);
+        final ItemSessionController itemSessionController = new ItemSessionController(jqtiExtensionManager,
+                itemSessionControllerSettings, itemProcessingMap, new ItemSessionState());
+        Assert.assertNull(templateInstancePoolService.drawTemplateInstance(delivery, itemSessionController));
+        Assert.assertEquals(1, templateInstancePoolService.getPoolCount());
+    }
+
+    @Test
+    public void testPurge() throws Exception {
+        awaitTemplateInstance(createItemSessionController(itemProcessingMap));
+        Assert.assertEquals(1, templateInstancePoolService.getPoolCount());
+
+        templateInstancePoolService.purge(delivery);
+        Assert.assertEquals(0, templateInstancePoolService.getPoolCount());
+        Assert.assertNull(templateInstancePoolService.drawTemplateInstance(delivery, createItemSessionController(itemProcessingMap)));
+    }
+
+    @Test
+    public void testPooledSessionReplays() throws Exception {
+        for (int i=0; i<2*POOL_SIZE; i++) {
+            /* Start a new session the way CandidateItemDeliveryService does */
+            final Date timestamp = new Date();
+            final ItemSessionController itemSessionController = createItemSessionController(new ItemSessionControllerSettings());
+            itemSessionController.initialize(timestamp);
+            final TemplateInstance templateInstance = awaitTemplateInstance(itemSessionController);
+            itemSessionController.applyTemplateInstance(timestamp, templateInstance);
+            final ItemSessionState pooledState = itemSessionController.getItemSessionState();
+            Assert.assertEquals(templateInstance.getRandomSeed(), pooledState.getRandomSeed());
+
+            /* Then replay it using only its recorded seed */
+            final ItemSessionControllerSettings replaySettings = new ItemSessionControllerSettings();
+            replaySettings.setRandomSeedSource(new FixedRandomSeedSource(pooledState.getRandomSeed().longValue()));
+            final ItemSessionController replayController = createItemSessionController(replaySettings);
+            replayController.initialize(timestamp);
+            replayController.performTemplateProcessing(timestamp);
+            final ItemSessionState replayState = replayController.getItemSessionState();
+
+            Assert.assertEquals(pooledState.getRandomSeed(), replayState.getRandomSeed());
+            Assert.assertEquals(pooledState.getTemplateValues(), replayState.getTemplateValues());
+            Assert.assertEquals(pooledState.getShuffledInteractionChoiceOrders(), replayState.getShuffledInteractionChoiceOrders());
+        }
+    }
+
+    //----------------------------------------------------------
+
+    private TemplateInstancePoolService createTemplateInstancePoolService(final int poolSize) {
+        final QtiWorksDeploymentSettings qtiWorksDeploymentSettings = new QtiWorksDeploymentSettings();
+        ReflectionTestUtils.setField(qtiWorksDeploymentSettings, "templatePoolSize", Integer.valueOf(poolSize));
+        ReflectionTestUtils.setField(qtiWorksDeploymentSettings, "templatePoolThreads", Integer.valueOf(1));
+        final TemplateInstancePoolService result = new TemplateInstancePoolService();
+        ReflectionTestUtils.setField(result, "qtiWorksDeploymentSettings", qtiWorksDeploymentSettings);
+        ReflectionTestUtils.setField(result, "jqtiExtensionManager", jqtiExtensionManager);
+        result.init();
+        return result;
+    }
+
+    private ItemSessionController createItemSessionController(final ItemProcessingMap sessionItemProcessingMap) {
+        final ItemSessionController result = new ItemSessionController(jqtiExtensionManager, new ItemSessionControllerSettings(),
+                sessionItemProcessingMap, new ItemSessionState());
+        result.initialize(new Date());
+        return result;
+    }
+
+    private ItemSessionController createItemSessionController(final ItemSessionControllerSettings itemSessionControllerSettings) {
+        return new ItemSessionController(jqtiExtensionManager, itemSessionControllerSettings,
+                itemProcessingMap, new ItemSessionState());
+    }
+
+    /**
+     * Draws a {@link TemplateInstance} for the given {@link ItemSessionController}, waiting
+     * for the pool to be filled if required.
+     */
+    private TemplateInstance awaitTemplateInstance(final ItemSessionController itemSessionController) throws InterruptedException {
+        final long deadline = System.currentTimeMillis() + 10000L;
+        TemplateInstance result;
+        while ((result = templateInstancePoolService.drawTemplateInstance(delivery, itemSessionController))==null) {
+            if (System.currentTimeMillis() > deadline) {
+                Assert.fail("Template instance pool was not filled");
+            }
+            Thread.sleep(10L);
+        }
+        return result;
+    }
+}
@@ -0,0 +1,341 @@
+/* Copyright (c) 2012-2013, University of Edinburgh.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice, this
+ *   list of conditions and the following disclaimer in the documentation and/or
+ *   other materials provided with the distribution.
+ *
+ * * Neither the name of the University of Edinburgh nor the names of its
+ *   contributors may be used to endorse or promote products derived from this
+ *   software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ *
+ * This software is derived from (and contains code from) QTItools and MathAssessEngine.
+ * QTItools is (c) 2008, University of Southampton.
+ * MathAssessEngine is (c) 2010, University of Edinburgh.
+ */
+package uk.ac.ed.ph.qtiworks.services.audit;
+
+import uk.ac.ed.ph.qtiworks.services.audit.AuditRecordDispatcher.AuditRecordSink;
+import uk.ac.ed.ph.qtiworks.services.audit.AuditRecordDispatcher.OverflowPolicy;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests the {@link AuditRecordDispatcher} and {@link AuditRecord} formatting
+ *
+ * @author David McKain
+ */
+public class AuditRecordDispatcherTest {
+
+    private static final int PRODUCER_COUNT = 8;
+    private static final int RECORDS_PER_PRODUCER = 5000;
+
+    @Test
+    public void testNoRecordsLostUnderConcurrentLoad() throws Exception {
+        final CollectingSink sink = new CollectingSink();
+        final AuditRecordDispatcher dispatcher = new AuditRecordDispatcher(16, 4, OverflowPolicy.BLOCK, sink);
+        dispatcher.start();
+        runProducers(dispatcher);
+        dispatcher.shutdown();
+
+        Assert.assertEquals(PRODUCER_COUNT * RECORDS_PER_PRODUCER, sink.getRecords().size());
+        Assert.assertEquals(PRODUCER_COUNT * RECORDS_PER_PRODUCER, dispatcher.getWrittenCount());
+        Assert.assertEquals(0L, dispatcher.getDroppedCount());
+        assertSessionOrdering(sink.getRecords());
+    }
+
+    @Test
+    public void testDiscardAccountsForEveryRecord() throws Exception {
+        final CollectingSink sink = new CollectingSink();
+        final AuditRecordDispatcher dispatcher = new AuditRecordDispatcher(4, 2, OverflowPolicy.DISCARD, sink);
+        dispatcher.start();
+        runProducers(dispatcher);
+        dispatcher.shutdown();
+
+        final long total = PRODUCER_COUNT * RECORDS_PER_PRODUCER;
+        Assert.assertEquals(total, dispatcher.getWrittenCount() + dispatcher.getDroppedCount());
+        int written = 0;
+        for (final AuditRecord record : sink.getRecords()) {
+            if (!record.getLoggerName().equals(AuditRecordDispatcher.DROPPED_RECORDS_LOGGER_NAME)) {
+                written++;
+            }
+        }
+        Assert.assertEquals(dispatcher.getWrittenCount(), written);
+    }
+
+    @Test
+    public void testFlushAndShutdown() throws Exception {
+        final CollectingSink sink = new CollectingSink();
+        final AuditRecordDispatcher dispatcher = new AuditRecordDispatcher(1024, 256, OverflowPolicy.BLOCK, sink);
+        dispatcher.start();
+        for (int i=0; i<100; i++) {
+            dispatcher.dispatch(createRecord(0, i));
+        }
+        Assert.assertTrue(dispatcher.flush(10, TimeUnit.SECONDS));
+        Assert.assertEquals(100, sink.getRecords().size());
+
+        for (int i=100; i<200; i++) {
+            dispatcher.dispatch(createRecord(0, i));
+        }
+        dispatcher.shutdown();
+        Assert.assertEquals(200, sink.getRecords().size());
+        Assert.assertEquals(0, dispatcher.getPendingCount());
+
+        /* Records dispatched after shutdown are written synchronously */
+        dispatcher.dispatch(createRecord(0, 200));
+        Assert.assertEquals(201, sink.getRecords().size());
+        assertSessionOrdering(sink.getRecords());
+    }
+
+    @Test
+    public void testSynchronous() {
+        final CollectingSink sink = new CollectingSink();
+        final AuditRecordDispatcher dispatcher = new AuditRecordDispatcher(0, 1, OverflowPolicy.BLOCK, sink);
+        Assert.assertFalse(dispatcher.isAsynchronous());
+        dispatcher.start();
+        dispatcher.dispatch(createRecord(0, 0));
+        Assert.assertEquals(1, sink.getRecords().size());
+        dispatcher.shutdown();
+    }
+
+    @Test
+    public void testInterruptedBlockingDispatchWaitsForWriter() throws Exception {
+        final GatedSink sink = new GatedSink();
+        final AuditRecordDispatcher dispatcher = new AuditRecordDispatcher(1, 1, OverflowPolicy.BLOCK, sink);
+        dispatcher.start();
+
+        /* Hold the writer inside the sink with record 0, and fill the buffer with record 1 */
+        dispatcher.dispatch(createRecord(0, 0));
+        Assert.assertTrue(sink.entered.await(10, TimeUnit.SECONDS));
+        dispatcher.dispatch(createRecord(0, 1));
+
+        /* Record 2 now has to wait for space, and gets interrupted while doing so */
+        final AtomicBoolean interruptRestored = new AtomicBoolean();
+        final Thread producer = new Thread() {
+            @Override
+            public void run() {
+                dispatcher.dispatch(createRecord(0, 2));
+                interruptRestored.set(Thread.currentThread().isInterrupted());
+            }
+        };
+        producer.start();
+        waitUntilWaiting(producer);
+        producer.interrupt();
+
+        /* Producer must not write anything itself while the writer is still busy */
+        producer.join(200L);
+        Assert.assertTrue(producer.isAlive());
+        sink.gate.countDown();
+        producer.join(10000L);
+        Assert.assertFalse(producer.isAlive());
+        Assert.assertTrue(interruptRestored.get());
+        dispatcher.shutdown();
+
+        Assert.assertFalse(sink.overlapped.get());
+        Assert.assertEquals(3, sink.getRecords().size());
+        assertSessionOrdering(sink.getRecords());
+    }
+
+    @Test
+    public void testInterruptedWriterFallsBackToSynchronous() throws Exception {
+        final CollectingSink sink = new CollectingSink() {
+            @Override
+            public synchronized void write(final List<AuditRecord> batch) {
+                super.write(batch);
+                Thread.currentThread().interrupt();
+            }
+        };
+        final AuditRecordDispatcher dispatcher = new AuditRecordDispatcher(16, 4, OverflowPolicy.BLOCK, sink);
+        dispatcher.start();
+
+        /* Writing record 0 interrupts the writer thread, which then stops */
+        dispatcher.dispatch(createRecord(0, 0));
+        dispatcher.dispatch(createRecord(0, 1));
+        final long deadline = System.currentTimeMillis() + 10000L;
+        while (sink.getRecords().size() < 2 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        Assert.assertEquals(2, sink.getRecords().size());
+
+        /* Nothing is now left in the buffer, and new records get written straight away */
+        dispatcher.dispatch(createRecord(0, 2));
+        Assert.assertTrue(Thread.interrupted());
+        Assert.assertEquals(3, sink.getRecords().size());
+        Assert.assertEquals(0, dispatcher.getPendingCount());
+        dispatcher.shutdown();
+        assertSessionOrdering(sink.getRecords());
+    }
+
+    @Test
+    public void testDroppedRecordsNotedOnce() throws Exception {
+        final GatedSink sink = new GatedSink();
+        final AuditRecordDispatcher dispatcher = new AuditRecordDispatcher(1, 1, OverflowPolicy.DISCARD, sink);
+        dispatcher.start();
+
+        dispatcher.dispatch(createRecord(0, 0));
+        Assert.assertTrue(sink.entered.await(10, TimeUnit.SECONDS));
+        dispatcher.dispatch(createRecord(0, 1));
+        dispatcher.dispatch(createRecord(0, 2));
+        dispatcher.dispatch(createRecord(0, 3));
+        Assert.assertEquals(2L, dispatcher.getDroppedCount());
+
+        sink.gate.countDown();
+        Assert.assertTrue(dispatcher.flush(10, TimeUnit.SECONDS));
+        dispatcher.dispatch(createRecord(0, 4));
+        dispatcher.shutdown();
+
+        final List<AuditRecord> notes = new ArrayList<AuditRecord>();
+        for (final AuditRecord record : sink.getRecords()) {
+            if (record.getLoggerName().equals(AuditRecordDispatcher.DROPPED_RECORDS_LOGGER_NAME)) {
+                notes.add(record);
+            }
+        }
+        Assert.assertEquals(1, notes.size());
+        Assert.assertEquals(Long.valueOf(2L), notes.get(0).getValue(1));
+        Assert.assertEquals(3L, dispatcher.getWrittenCount());
+    }
+
+    @Test
+    public void testFormatMessage() {
+        final AuditRecord record = new AuditRecord("test")
+            .add("user", "fred")
+            .add("xid", Long.valueOf(12))
+            .add("did", null)
+            .add("message", "Created \"thing\" a=b\nc\\d")
+            .add("empty", "");
+        final String message = record.formatMessage();
+        Assert.assertTrue(message.startsWith("time="));
+        Assert.assertTrue(message.endsWith(" user=fred xid=12 did=null message=\"Created \\\"thing\\\" a=b\\nc\\\\d\" empty=\"\""));
+    }
+
+    //----------------------------------------------------------
+
+    private static void runProducers(final AuditRecordDispatcher dispatcher) throws InterruptedException {
+        final CountDownLatch startLatch = new CountDownLatch(1);
+        final List<Thread> producers = new ArrayList<Thread>();
+        for (int p=0; p<PRODUCER_COUNT; p++) {
+            final int sessionId = p;
+            final Thread producer = new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        startLatch.await();
+                    }
+                    catch (final InterruptedException e) {
+                        return;
+                    }
+                    for (int i=0; i<RECORDS_PER_PRODUCER; i++) {
+                        dispatcher.dispatch(createRecord(sessionId, i));
+                    }
+                }
+            };
+            producers.add(producer);
+            producer.start();
+        }
+        startLatch.countDown();
+        for (final Thread producer : producers) {
+            producer.join();
+        }
+    }
+
+    private static void waitUntilWaiting(final Thread thread) throws InterruptedException {
+        final long deadline = System.currentTimeMillis() + 10000L;
+        while (thread.getState()!=Thread.State.WAITING && thread.getState()!=Thread.State.TIMED_WAITING
+                && System.currentTimeMillis() < deadline) {
+            Thread.sleep(1);
+        }
+        Assert.assertTrue(thread.isAlive());
+    }
+
+    private static AuditRecord createRecord(final int sessionId, final int sequence) {
+        return new AuditRecord("test")
+            .add("xid", Integer.valueOf(sessionId))
+            .add("seq", Integer.valueOf(sequence));
+    }
+
+    /** Checks that the records for each session arrived in the order they were dispatched */
+    private static void assertSessionOrdering(final List<AuditRecord> records) {
+        final Map<Object, Integer> lastSequences = new HashMap<Object, Integer>();
+        for (final AuditRecord record : records) {
+            final Object sessionId = record.getValue(0);
+            final int sequence = ((Integer) record.getValue(1)).intValue();
+            final Integer lastSequence = lastSequences.get(sessionId);
+            Assert.assertEquals(lastSequence!=null ? lastSequence.intValue() + 1 : 0, sequence);
+            lastSequences.put(sessionId, Integer.valueOf(sequence));
+        }
+    }
+
+    private static class CollectingSink implements AuditRecordSink {
+
+        private final List<AuditRecord> records = new ArrayList<AuditRecord>();
+
+        @Override
+        public synchronized void write(final List<AuditRecord> batch) {
+            records.addAll(batch);
+        }
+
+        public synchronized List<AuditRecord> getRecords() {
+            return new ArrayList<AuditRecord>(records);
+        }
+    }
+
+    /**
+     * Sink that holds the first write until the gate is opened, and notes whether
+     * it was ever called by more than one thread at once.
+     */
+    private static final class GatedSink extends CollectingSink {
+
+        final CountDownLatch entered = new CountDownLatch(1);
+        final CountDownLatch gate = new CountDownLatch(1);
+        final AtomicBoolean overlapped = new AtomicBoolean();
+        private final AtomicInteger activeWriters = new AtomicInteger();
+
+        @Override
+        public void write(final List<AuditRecord> batch) {
+            if (activeWriters.incrementAndGet() > 1) {
+                overlapped.set(true);
+            }
+            try {
+                if (entered.getCount() > 0) {
+                    entered.countDown();
+                    gate.await(10, TimeUnit.SECONDS);
+                }
+                super.write(batch);
+            }
+            catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            finally {
+                activeWriters.decrementAndGet();
+            }
+        }
+    }
+}
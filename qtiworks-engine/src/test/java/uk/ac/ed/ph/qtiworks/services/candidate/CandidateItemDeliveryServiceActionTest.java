@@ -0,0 +1,291 @@
+/* Copyright (c) 2012-2013, University of Edinburgh.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice, this
+ *   list of conditions and the following disclaimer in the documentation and/or
+ *   other materials provided with the distribution.
+ *
+ * * Neither the name of the University of Edinburgh nor the names of its
+ *   contributors may be used to endorse or promote products derived from this
+ *   software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ *
+ * This software is derived from (and contains code from) QTItools and MathAssessEngine.
+ * QTItools is (c) 2008, University of Southampton.
+ * MathAssessEngine is (c) 2010, University of Edinburgh.
+ */
+package uk.ac.ed.ph.qtiworks.services.candidate;
+
+import uk.ac.ed.ph.qtiworks.config.beans.QtiWorksDeploymentSettings;
+import uk.ac.ed.ph.qtiworks.domain.entities.AnonymousUser;
+import uk.ac.ed.ph.qtiworks.domain.entities.Assessment;
+import uk.ac.ed.ph.qtiworks.domain.entities.AssessmentPackage;
+import uk.ac.ed.ph.qtiworks.domain.entities.AssessmentPackageImportType;
+import uk.ac.ed.ph.qtiworks.domain.entities.CandidateItemEventType;
+import uk.ac.ed.ph.qtiworks.domain.entities.CandidateSession;
+import uk.ac.ed.ph.qtiworks.domain.entities.Delivery;
+import uk.ac.ed.ph.qtiworks.domain.entities.DeliveryType;
+import uk.ac.ed.ph.qtiworks.services.CandidateAuditLogger;
+import uk.ac.ed.ph.qtiworks.services.CandidateDataService;
+import uk.ac.ed.ph.qtiworks.services.EmbeddedTestDatabase;
+import uk.ac.ed.ph.qtiworks.services.FilespaceManager;
+import uk.ac.ed.ph.qtiworks.services.RequestTimestampContext;
+import uk.ac.ed.ph.qtiworks.services.ServiceUtilities;
+import uk.ac.ed.ph.qtiworks.services.audit.AuditRecordDispatcher;
+import uk.ac.ed.ph.qtiworks.services.audit.AuditRecordDispatcher.OverflowPolicy;
+import uk.ac.ed.ph.qtiworks.services.dao.CandidateEventDao;
+import uk.ac.ed.ph.qtiworks.services.dao.CandidateEventNotificationDao;
+import uk.ac.ed.ph.qtiworks.services.dao.CandidateSessionDao;
+import uk.ac.ed.ph.qtiworks.services.metrics.MetricsRegistry;
+
+import uk.ac.ed.ph.jqtiplus.node.AssessmentObjectType;
+import uk.ac.ed.ph.jqtiplus.state.ItemSessionState;
+
+import java.io.File;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+import javax.persistence.EntityManager;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionSynchronizationUtils;
+
+import com.google.common.io.Files;
+
+/**
+ * Tests that {@link CandidateItemDeliveryService} performs actions on the {@link CandidateSession}
+ * as it stands once the session has become free, rather than on the (possibly stale) instance
+ * passed in by the caller.
+ *
+ * @see CandidateSessionActionCoordinator
+ *
+ * @author David McKain
+ */
+public class CandidateItemDeliveryServiceActionTest {
+
+    private EmbeddedTestDatabase database;
+    private EntityManager em;
+    private File filesystemBase;
+    private CandidateSessionActionCoordinator candidateSessionActionCoordinator;
+    private CandidateItemDeliveryService candidateItemDeliveryService;
+    private CandidateSession staleSession;
+
+    @Before
+    public void setup() throws Exception {
+        database = new EmbeddedTestDatabase(50);
+        em = database.createEntityManager();
+
+        final CandidateEventDao candidateEventDao = new CandidateEventDao();
+        final CandidateSessionDao candidateSessionDao = new CandidateSessionDao();
+        final CandidateEventNotificationDao candidateEventNotificationDao = new CandidateEventNotificationDao();
+        EmbeddedTestDatabase.injectEntityManager(candidateEventDao, em);
+        EmbeddedTestDatabase.injectEntityManager(candidateSessionDao, em);
+        EmbeddedTestDatabase.injectEntityManager(candidateEventNotificationDao, em);
+
+        filesystemBase = Files.createTempDir();
+        final QtiWorksDeploymentSettings qtiWorksDeploymentSettings = new QtiWorksDeploymentSettings();
+        ReflectionTestUtils.setField(qtiWorksDeploymentSettings, "filesystemBase", filesystemBase.getAbsolutePath());
+        final RequestTimestampContext requestTimestampContext = new RequestTimestampContext();
+        final FilespaceManager filespaceManager = new FilespaceManager();
+        ReflectionTestUtils.setField(filespaceManager, "qtiWorksDeploymentSettings", qtiWorksDeploymentSettings);
+        ReflectionTestUtils.setField(filespaceManager, "requestTimestampContext", requestTimestampContext);
+        filespaceManager.init();
+
+        final CandidateDataService candidateDataService = new CandidateDataService();
+        ReflectionTestUtils.setField(candidateDataService, "candidateEventDao", candidateEventDao);
+        ReflectionTestUtils.setField(candidateDataService, "candidateSessionDao", candidateSessionDao);
+        ReflectionTestUtils.setField(candidateDataService, "candidateEventNotificationDao", candidateEventNotificationDao);
+        ReflectionTestUtils.setField(candidateDataService, "filespaceManager", filespaceManager);
+        ReflectionTestUtils.setField(candidateDataService, "requestTimestampContext", requestTimestampContext);
+        ReflectionTestUtils.setField(candidateDataService, "metricsRegistry", new MetricsRegistry());
+
+        final CandidateAuditLogger candidateAuditLogger = new CandidateAuditLogger();
+        ReflectionTestUtils.setField(candidateAuditLogger, "auditRecordDispatcher",
+                new AuditRecordDispatcher(0, 1, OverflowPolicy.BLOCK, AuditRecordDispatcher.SLF4J_SINK));
+
+        candidateSessionActionCoordinator = new CandidateSessionActionCoordinator(4, 10000L);
+        candidateItemDeliveryService = new CandidateItemDeliveryService();
+        ReflectionTestUtils.setField(candidateItemDeliveryService, "candidateAuditLogger", candidateAuditLogger);
+        ReflectionTestUtils.setField(candidateItemDeliveryService, "candidateDataService", candidateDataService);
+        ReflectionTestUtils.setField(candidateItemDeliveryService, "candidateSessionDao", candidateSessionDao);
+        ReflectionTestUtils.setField(candidateItemDeliveryService, "requestTimestampContext", requestTimestampContext);
+        ReflectionTestUtils.setField(candidateItemDeliveryService, "candidateSessionActionCoordinator", candidateSessionActionCoordinator);
+
+        /* Create an entered session, then detach it as if it had been looked up by an earlier request */
+        final CandidateSession candidateSession = createCandidateSession();
+        em.getTransaction().begin();
+        candidateDataService.recordCandidateItemEvent(candidateSession, CandidateItemEventType.ENTER, new ItemSessionState());
+        em.getTransaction().commit();
+        em.clear();
+        staleSession = candidateSession;
+
+        /* Then terminate it behind its back, as another action might */
+        database.execute("UPDATE candidate_sessions SET termination_time = CURRENT_TIMESTAMP WHERE xid = "
+                + staleSession.getId());
+    }
+
+    @After
+    public void tearDown() {
+        if (em!=null) {
+            em.close();
+        }
+        if (database!=null) {
+            database.close();
+        }
+        if (filesystemBase!=null) {
+            ServiceUtilities.recursivelyDelete(filesystemBase);
+        }
+    }
+
+    //----------------------------------------------------------
+
+    @Test
+    public void testActionPerformedOnReloadedSession() throws Exception {
+        Assert.assertFalse(staleSession.isTerminated());
+        beginTransaction();
+        try {
+            candidateItemDeliveryService.enterOrReenterCandidateSession(staleSession);
+            Assert.fail("Action should have seen that the session has been terminated");
+        }
+        catch (final CandidateException e) {
+            Assert.assertEquals(CandidateExceptionReason.SESSION_IS_TERMINATED, e.getCandidateExceptionReason());
+        }
+        finally {
+            completeTransaction();
+        }
+    }
+
+    @Test
+    public void testCoalescedActionReturnsReloadedSession() throws Exception {
+        /* Start an identical action on this Thread and hold it open */
+        TransactionSynchronizationManager.initSynchronization();
+        Assert.assertTrue(candidateSessionActionCoordinator.beginAction(staleSession.getId().longValue(), "enter"));
+
+        /* Then perform the action via the service on another Thread, which will be coalesced */
+        final AtomicReference<Object> resultHolder = new AtomicReference<Object>();
+        final Thread thread = new Thread() {
+            @Override
+            public void run() {
+                beginTransaction();
+                try {
+                    resultHolder.set(candidateItemDeliveryService.enterOrReenterCandidateSession(staleSession));
+                }
+                catch (final Exception e) {
+                    resultHolder.set(e);
+                }
+                finally {
+                    completeTransaction();
+                }
+            }
+        };
+        thread.start();
+        final long deadline = System.currentTimeMillis() + 10000L;
+        while (thread.getState()!=Thread.State.TIMED_WAITING) {
+            if (System.currentTimeMillis() > deadline) {
+                Assert.fail("Service call did not wait for the identical action");
+            }
+            Thread.yield();
+        }
+        completeSynchronization();
+        thread.join();
+
+        final Object result = resultHolder.get();
+        Assert.assertTrue(String.valueOf(result), result instanceof CandidateSession);
+        final CandidateSession resultSession = (CandidateSession) result;
+        Assert.assertNotSame(staleSession, resultSession);
+        Assert.assertEquals(staleSession.getId(), resultSession.getId());
+        Assert.assertTrue(resultSession.isTerminated());
+    }
+
+    //----------------------------------------------------------
+
+    /** Simulates the start of a service transaction */
+    private void beginTransaction() {
+        em.getTransaction().begin();
+        TransactionSynchronizationManager.initSynchronization();
+    }
+
+    /** Simulates the (successful) end of a service transaction */
+    private void completeTransaction() {
+        em.getTransaction().commit();
+        completeSynchronization();
+    }
+
+    private static void completeSynchronization() {
+        final List<TransactionSynchronization> synchronizations = TransactionSynchronizationManager.getSynchronizations();
+        TransactionSynchronizationManager.clearSynchronization();
+        TransactionSynchronizationUtils.invokeAfterCompletion(synchronizations, TransactionSynchronization.STATUS_COMMITTED);
+    }
+
+    private CandidateSession createCandidateSession() {
+        final Date now = new Date();
+        em.getTransaction().begin();
+
+        final AnonymousUser candidate = new AnonymousUser();
+        candidate.setCreationTime(now);
+        candidate.setFirstName("Anonymous");
+        candidate.setLastName("Candidate");
+        candidate.setSessionId("session");
+        em.persist(candidate);
+
+        final AssessmentPackage assessmentPackage = new AssessmentPackage();
+        assessmentPackage.setCreationTime(now);
+        assessmentPackage.setImporter(candidate);
+        assessmentPackage.setImportVersion(Long.valueOf(1L));
+        assessmentPackage.setAssessmentType(AssessmentObjectType.ASSESSMENT_ITEM);
+        assessmentPackage.setImportType(AssessmentPackageImportType.STANDALONE_ITEM_XML);
+        assessmentPackage.setAssessmentHref("item.xml");
+        assessmentPackage.setFileName("item.xml");
+        assessmentPackage.setTitle("Item");
+        em.persist(assessmentPackage);
+
+        final Assessment assessment = new Assessment();
+        assessment.setCreationTime(now);
+        assessment.setOwnerUser(candidate);
+        assessment.setAssessmentType(AssessmentObjectType.ASSESSMENT_ITEM);
+        assessment.setSelectedAssessmentPackage(assessmentPackage);
+        assessment.setPackageImportVersion(Long.valueOf(1L));
+        assessmentPackage.setAssessment(assessment);
+        em.persist(assessment);
+
+        final Delivery delivery = new Delivery();
+        delivery.setCreationTime(now);
+        delivery.setAssessment(assessment);
+        delivery.setDeliveryType(DeliveryType.USER_TRANSIENT);
+        delivery.setTitle("Delivery");
+        em.persist(delivery);
+
+        final CandidateSession result = new CandidateSession();
+        result.setCreationTime(now);
+        result.setCandidate(candidate);
+        result.setDelivery(delivery);
+        em.persist(result);
+
+        em.getTransaction().commit();
+        return result;
+    }
+}
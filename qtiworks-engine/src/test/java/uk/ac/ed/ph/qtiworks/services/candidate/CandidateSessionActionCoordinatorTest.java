@@ -0,0 +1,267 @@
+/* Copyright (c) 2012-2013, University of Edinburgh.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice, this
+ *   list of conditions and the following disclaimer in the documentation and/or
+ *   other materials provided with the distribution.
+ *
+ * * Neither the name of the University of Edinburgh nor the names of its
+ *   contributors may be used to endorse or promote products derived from this
+ *   software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ *
+ * This software is derived from (and contains code from) QTItools and MathAssessEngine.
+ * QTItools is (c) 2008, University of Southampton.
+ * MathAssessEngine is (c) 2010, University of Edinburgh.
+ */
+package uk.ac.ed.ph.qtiworks.services.candidate;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionSynchronizationUtils;
+
+/**
+ * Tests the {@link CandidateSessionActionCoordinator}, simulating the transaction
+ * boundaries of the candidate delivery services.
+ *
+ * @author David McKain
+ */
+public class CandidateSessionActionCoordinatorTest {
+
+    private static final int THREAD_COUNT = 8;
+
+    private CandidateSessionActionCoordinator coordinator;
+    private ExecutorService executorService;
+    private AtomicInteger eventCounter;
+    private AtomicInteger concurrentActionCounter;
+    private AtomicInteger maxConcurrentActions;
+
+    @Before
+    public void setup() {
+        coordinator = new CandidateSessionActionCoordinator(4, 10000L);
+        executorService = Executors.newFixedThreadPool(THREAD_COUNT);
+        eventCounter = new AtomicInteger();
+        concurrentActionCounter = new AtomicInteger();
+        maxConcurrentActions = new AtomicInteger();
+    }
+
+    @After
+    public void teardown() {
+        executorService.shutdownNow();
+    }
+
+    @Test
+    public void testIdenticalActionsCoalesced() throws Exception {
+        /* Start the first action and hold it open */
+        final CountDownLatch performingLatch = new CountDownLatch(1);
+        final CountDownLatch releaseLatch = new CountDownLatch(1);
+        final Future<Boolean> firstResult = executorService.submit(new Callable<Boolean>() {
+            @Override
+            public Boolean call() throws Exception {
+                return Boolean.valueOf(runAction(1L, "submit", true, performingLatch, releaseLatch));
+            }
+        });
+        performingLatch.await();
+
+        /* Send identical actions, waiting until they are all blocked on the first one */
+        final List<Thread> threads = new ArrayList<Thread>();
+        final AtomicInteger performedCount = new AtomicInteger();
+        for (int i=1; i<THREAD_COUNT; i++) {
+            final Thread thread = new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        if (runAction(1L, "submit", true, null, null)) {
+                            performedCount.incrementAndGet();
+                        }
+                    }
+                    catch (final Exception e) {
+                        throw new RuntimeException(e);
+                    }
+                }
+            };
+            thread.start();
+            threads.add(thread);
+        }
+        for (final Thread thread : threads) {
+            awaitTimedWaiting(thread);
+        }
+
+        /* Then let the first action complete */
+        releaseLatch.countDown();
+        Assert.assertTrue(firstResult.get().booleanValue());
+        for (final Thread thread : threads) {
+            thread.join();
+        }
+        Assert.assertEquals(0, performedCount.get());
+        Assert.assertEquals(1, eventCounter.get());
+    }
+
+    @Test
+    public void testDifferentActionsSerialised() throws Exception {
+        final List<Future<Boolean>> results = submitActions(THREAD_COUNT, 1L, true, true);
+        for (final Future<Boolean> result : results) {
+            Assert.assertTrue(result.get().booleanValue());
+        }
+        Assert.assertEquals(THREAD_COUNT, eventCounter.get());
+        Assert.assertEquals(1, maxConcurrentActions.get());
+    }
+
+    @Test
+    public void testFailedActionNotCoalesced() throws Exception {
+        final List<Future<Boolean>> results = submitActions(THREAD_COUNT, 1L, false, false);
+        for (final Future<Boolean> result : results) {
+            Assert.assertTrue(result.get().booleanValue());
+        }
+        Assert.assertEquals(THREAD_COUNT, eventCounter.get());
+        Assert.assertEquals(1, maxConcurrentActions.get());
+    }
+
+    @Test
+    public void testSequentialIdenticalActionsNotCoalesced() throws Exception {
+        Assert.assertTrue(runAction(1L, "submit", true, null, null));
+        Assert.assertTrue(runAction(1L, "submit", true, null, null));
+        Assert.assertEquals(2, eventCounter.get());
+    }
+
+    @Test(expected=TimeoutException.class)
+    public void testTimeout() throws Throwable {
+        final CandidateSessionActionCoordinator impatientCoordinator = new CandidateSessionActionCoordinator(4, 100L);
+        final CountDownLatch lockedLatch = new CountDownLatch(1);
+        final CountDownLatch releaseLatch = new CountDownLatch(1);
+        executorService.submit(new Callable<Boolean>() {
+            @Override
+            public Boolean call() throws Exception {
+                TransactionSynchronizationManager.initSynchronization();
+                impatientCoordinator.beginAction(1L, "slow");
+                lockedLatch.countDown();
+                releaseLatch.await();
+                completeTransaction(true);
+                return Boolean.TRUE;
+            }
+        });
+        lockedLatch.await();
+        TransactionSynchronizationManager.initSynchronization();
+        try {
+            impatientCoordinator.beginAction(1L, "other");
+        }
+        finally {
+            TransactionSynchronizationManager.clearSynchronization();
+            releaseLatch.countDown();
+        }
+    }
+
+    //----------------------------------------------------
+
+    private List<Future<Boolean>> submitActions(final int count, final long xid,
+            final boolean distinctFingerprints, final boolean commit) {
+        final CountDownLatch startLatch = new CountDownLatch(1);
+        final List<Future<Boolean>> results = new ArrayList<Future<Boolean>>();
+        for (int i=0; i<count; i++) {
+            final String fingerprint = distinctFingerprints ? "submit" + i : "submit";
+            results.add(executorService.submit(new Callable<Boolean>() {
+                @Override
+                public Boolean call() throws Exception {
+                    startLatch.await();
+                    return Boolean.valueOf(runAction(xid, fingerprint, commit, null, null));
+                }
+            }));
+        }
+        startLatch.countDown();
+        return results;
+    }
+
+    /**
+     * Simulates a transactional service method that records an event, returning whether
+     * the action was actually performed. If latches are given, the action signals the first
+     * once it is being performed and then waits for the second before completing.
+     */
+    private boolean runAction(final long xid, final String fingerprint, final boolean commit,
+            final CountDownLatch performingLatch, final CountDownLatch releaseLatch)
+            throws Exception {
+        TransactionSynchronizationManager.initSynchronization();
+        final boolean performed;
+        try {
+            performed = coordinator.beginAction(xid, fingerprint);
+            if (performed) {
+                final int concurrent = concurrentActionCounter.incrementAndGet();
+                updateMax(concurrent);
+                if (performingLatch!=null) {
+                    performingLatch.countDown();
+                    releaseLatch.await();
+                }
+                else {
+                    Thread.yield();
+                }
+                eventCounter.incrementAndGet();
+                concurrentActionCounter.decrementAndGet();
+            }
+        }
+        finally {
+            completeTransaction(commit);
+        }
+        return performed;
+    }
+
+    /**
+     * Waits until the given Thread is blocked in a timed wait, which is what
+     * {@link CandidateSessionActionCoordinator#beginAction(long, String)} does while
+     * waiting for an identical action.
+     */
+    private static void awaitTimedWaiting(final Thread thread) {
+        final long deadline = System.currentTimeMillis() + 10000L;
+        while (thread.getState()!=Thread.State.TIMED_WAITING) {
+            if (System.currentTimeMillis() > deadline) {
+                Assert.fail("Thread " + thread + " did not start waiting");
+            }
+            Thread.yield();
+        }
+    }
+
+    private void updateMax(final int value) {
+        int current;
+        while ((current = maxConcurrentActions.get()) < value) {
+            if (maxConcurrentActions.compareAndSet(current, value)) {
+                break;
+            }
+        }
+    }
+
+    private static void completeTransaction(final boolean commit) {
+        final List<TransactionSynchronization> synchronizations = TransactionSynchronizationManager.getSynchronizations();
+        TransactionSynchronizationManager.clearSynchronization();
+        TransactionSynchronizationUtils.invokeAfterCompletion(synchronizations,
+                commit ? TransactionSynchronization.STATUS_COMMITTED : TransactionSynchronization.STATUS_ROLLED_BACK);
+    }
+}
@@ -0,0 +1,153 @@
+/* Copyright (c) 2012-2013, University of Edinburgh.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice, this
+ *   list of conditions and the following disclaimer in the documentation and/or
+ *   other materials provided with the distribution.
+ *
+ * * Neither the name of the University of Edinburgh nor the names of its
+ *   contributors may be used to endorse or promote products derived from this
+ *   software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ *
+ * This software is derived from (and contains code from) QTItools and MathAssessEngine.
+ * QTItools is (c) 2008, University of Southampton.
+ * MathAssessEngine is (c) 2010, University of Edinburgh.
+ */
+package uk.ac.ed.ph.qtiworks.services.metrics;
+
+import uk.ac.ed.ph.qtiworks.mathassess.glue.maxima.CasCallListener.CasCallType;
+
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+
+import javax.management.ObjectName;
+import javax.management.ReflectionException;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests the {@link Histogram}, {@link MetricsRegistry} and {@link CasCallMetricsListener} classes
+ *
+ * @author David McKain
+ */
+public class HistogramTest {
+
+    @Test
+    public void testEmpty() {
+        final Histogram histogram = new Histogram();
+        Assert.assertEquals(0L, histogram.getCount());
+        Assert.assertEquals(0.0, histogram.getMean(), 0.0);
+        Assert.assertEquals(0L, histogram.getPercentile(99.0));
+    }
+
+    @Test
+    public void testCountMeanMax() {
+        final Histogram histogram = new Histogram();
+        histogram.record(10);
+        histogram.record(20);
+        histogram.record(30);
+        Assert.assertEquals(3L, histogram.getCount());
+        Assert.assertEquals(60L, histogram.getTotal());
+        Assert.assertEquals(20.0, histogram.getMean(), 0.0);
+        Assert.assertEquals(30L, histogram.getMax());
+    }
+
+    @Test
+    public void testPercentilesWithinFactorOfTwo() {
+        final Histogram histogram = new Histogram();
+        for (int i=1; i<=1000; i++) {
+            histogram.record(i);
+        }
+        final long p50 = histogram.getPercentile(50.0);
+        Assert.assertTrue(p50 >= 500L && p50 < 1000L);
+        final long p99 = histogram.getPercentile(99.0);
+        Assert.assertTrue(p99 >= 990L && p99 <= 1000L);
+        Assert.assertEquals(1000L, histogram.getPercentile(100.0));
+    }
+
+    @Test
+    public void testNegativeTreatedAsZero() {
+        final Histogram histogram = new Histogram();
+        histogram.record(-5);
+        Assert.assertEquals(1L, histogram.getCount());
+        Assert.assertEquals(0L, histogram.getMax());
+    }
+
+    @Test
+    public void testRegistrySnapshot() {
+        final MetricsRegistry registry = new MetricsRegistry();
+        registry.timer("t").recordNanos(5000L);
+        registry.counter("c").increment();
+        registry.registerGauge("g", new Gauge() {
+            @Override
+            public Number getValue() {
+                return Integer.valueOf(42);
+            }
+        });
+        registry.registerGauge("unavailable", new Gauge() {
+            @Override
+            public Number getValue() {
+                return null;
+            }
+        });
+        Assert.assertSame(registry.timer("t"), registry.timer("t"));
+
+        final Map<String, Number> snapshot = registry.snapshot();
+        Assert.assertEquals(Long.valueOf(1L), snapshot.get("t.count"));
+        Assert.assertEquals(Long.valueOf(5L), snapshot.get("t.maxMicros"));
+        Assert.assertEquals(Long.valueOf(1L), snapshot.get("c"));
+        Assert.assertEquals(Integer.valueOf(42), snapshot.get("g"));
+        Assert.assertFalse(snapshot.containsKey("unavailable"));
+    }
+
+    @Test
+    public void testCasCallMetricsListener() {
+        final MetricsRegistry registry = new MetricsRegistry();
+        final CasCallMetricsListener listener = new CasCallMetricsListener(registry);
+        listener.casCallCompleted(CasCallType.CAS_COMPARE, 2000L);
+        listener.casCallCompleted(CasCallType.CAS_COMPARE, 4000L);
+        listener.casCallCompleted(CasCallType.SCRIPT_RULE, 1000L);
+
+        final Map<String, Number> snapshot = registry.snapshot();
+        Assert.assertEquals(Long.valueOf(2L), snapshot.get("maxima.cas.casCompare.count"));
+        Assert.assertEquals(Long.valueOf(4L), snapshot.get("maxima.cas.casCompare.maxMicros"));
+        Assert.assertEquals(Long.valueOf(1L), snapshot.get("maxima.cas.scriptRule.count"));
+        Assert.assertEquals(Long.valueOf(0L), snapshot.get("maxima.cas.casProcess.count"));
+    }
+
+    @Test
+    public void testMBeanOperationsRejected() throws Exception {
+        final MetricsRegistry registry = new MetricsRegistry();
+        registry.init();
+        try {
+            ManagementFactory.getPlatformMBeanServer().invoke(new ObjectName(MetricsRegistry.OBJECT_NAME),
+                    "reset", new Object[0], new String[0]);
+            Assert.fail("Expected ReflectionException");
+        }
+        catch (final ReflectionException e) {
+            Assert.assertTrue(e.getTargetException() instanceof NoSuchMethodException);
+        }
+        finally {
+            registry.destroy();
+        }
+    }
+}
@@ -0,0 +1,159 @@
+/* Copyright (c) 2012-2013, University of Edinburgh.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice, this
+ *   list of conditions and the following disclaimer in the documentation and/or
+ *   other materials provided with the distribution.
+ *
+ * * Neither the name of the University of Edinburgh nor the names of its
+ *   contributors may be used to endorse or promote products derived from this
+ *   software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ *
+ * This software is derived from (and contains code from) QTItools and MathAssessEngine.
+ * QTItools is (c) 2008, University of Southampton.
+ * MathAssessEngine is (c) 2010, University of Edinburgh.
+ */
+package uk.ac.ed.ph.qtiworks.testutils;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.servlet.http.Cookie;
+import javax.servlet.http.HttpServletRequest;
+
+/**
+ * Trivial stand-in for an {@link HttpServletRequest}, supporting headers, cookies, attributes
+ * and the request path. (Spring's mock request needs a newer Servlet API than we build against.)
+ * Any other methods return null, 0 or false.
+ *
+ * @author David McKain
+ */
+public final class StubHttpServletRequest implements InvocationHandler {
+
+    private final String method;
+    private final String requestUri;
+    private final Map<String, String> headers;
+    private final Map<String, Object> attributes;
+    private final Map<String, String> parameters;
+    private final List<Cookie> cookies;
+    private boolean secure;
+
+    public StubHttpServletRequest(final String method, final String requestUri) {
+        this.method = method;
+        this.requestUri = requestUri;
+        this.headers = new HashMap<String, String>();
+        this.attributes = new HashMap<String, Object>();
+        this.parameters = new HashMap<String, String>();
+        this.cookies = new ArrayList<Cookie>();
+    }
+
+    public StubHttpServletRequest setHeader(final String name, final String value) {
+        headers.put(name.toLowerCase(), value);
+        return this;
+    }
+
+    public StubHttpServletRequest setParameter(final String name, final String value) {
+        parameters.put(name, value);
+        return this;
+    }
+
+    public StubHttpServletRequest addCookie(final Cookie cookie) {
+        cookies.add(cookie);
+        return this;
+    }
+
+    public StubHttpServletRequest setSecure(final boolean secure) {
+        this.secure = secure;
+        return this;
+    }
+
+    public Map<String, Object> getAttributes() {
+        return attributes;
+    }
+
+    public HttpServletRequest asRequest() {
+        return (HttpServletRequest) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class<?>[] { HttpServletRequest.class }, this);
+    }
+
+    @Override
+    public Object invoke(final Object proxy, final Method invokedMethod, final Object[] args) {
+        final String name = invokedMethod.getName();
+        if (name.equals("getMethod")) {
+            return method;
+        }
+        else if (name.equals("getRequestURI") || name.equals("getPathInfo")) {
+            return requestUri;
+        }
+        else if (name.equals("getContextPath") || name.equals("getServletPath")) {
+            return "";
+        }
+        else if (name.equals("getHeader")) {
+            return headers.get(((String) args[0]).toLowerCase());
+        }
+        else if (name.equals("getParameter")) {
+            return parameters.get(args[0]);
+        }
+        else if (name.equals("getCookies")) {
+            return cookies.isEmpty() ? null : cookies.toArray(new Cookie[cookies.size()]);
+        }
+        else if (name.equals("getAttribute")) {
+            return attributes.get(args[0]);
+        }
+        else if (name.equals("setAttribute")) {
+            attributes.put((String) args[0], args[1]);
+            return null;
+        }
+        else if (name.equals("removeAttribute")) {
+            attributes.remove(args[0]);
+            return null;
+        }
+        else if (name.equals("getAttributeNames")) {
+            return Collections.enumeration(attributes.keySet());
+        }
+        else if (name.equals("isSecure")) {
+            return Boolean.valueOf(secure);
+        }
+        else if (name.equals("toString")) {
+            return "StubHttpServletRequest(" + method + " " + requestUri + ")";
+        }
+        return defaultValue(invokedMethod.getReturnType());
+    }
+
+    static Object defaultValue(final Class<?> returnType) {
+        if (returnType==boolean.class) {
+            return Boolean.FALSE;
+        }
+        else if (returnType==int.class) {
+            return Integer.valueOf(0);
+        }
+        else if (returnType==long.class) {
+            return Long.valueOf(0L);
+        }
+        return null;
+    }
+}
@@ -0,0 +1,146 @@
+/* Copyright (c) 2012-2013, University of Edinburgh.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice, this
+ *   list of conditions and the following disclaimer in the documentation and/or
+ *   other materials provided with the distribution.
+ *
+ * * Neither the name of the University of Edinburgh nor the names of its
+ *   contributors may be used to endorse or promote products derived from this
+ *   software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ *
+ * This software is derived from (and contains code from) QTItools and MathAssessEngine.
+ * QTItools is (c) 2008, University of Southampton.
+ * MathAssessEngine is (c) 2010, University of Edinburgh.
+ */
+package uk.ac.ed.ph.qtiworks.testutils;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.servlet.ServletOutputStream;
+import javax.servlet.http.Cookie;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * Trivial stand-in for an {@link HttpServletResponse}, recording the status, headers, cookies
+ * and data sent. Any other methods return null, 0 or false.
+ *
+ * @author David McKain
+ */
+public final class StubHttpServletResponse implements InvocationHandler {
+
+    private final Map<String, String> headers;
+    private final List<Cookie> cookies;
+    private final ByteArrayOutputStream outputStream;
+    private int status;
+    private String redirectUrl;
+
+    public StubHttpServletResponse() {
+        this.headers = new HashMap<String, String>();
+        this.cookies = new ArrayList<Cookie>();
+        this.outputStream = new ByteArrayOutputStream();
+        this.status = HttpServletResponse.SC_OK;
+    }
+
+    public int getStatus() {
+        return status;
+    }
+
+    public String getHeader(final String name) {
+        return headers.get(name.toLowerCase());
+    }
+
+    public List<Cookie> getCookies() {
+        return cookies;
+    }
+
+    public Cookie getCookie(final String name) {
+        for (final Cookie cookie : cookies) {
+            if (cookie.getName().equals(name)) {
+                return cookie;
+            }
+        }
+        return null;
+    }
+
+    public String getRedirectUrl() {
+        return redirectUrl;
+    }
+
+    public byte[] getData() {
+        return outputStream.toByteArray();
+    }
+
+    public HttpServletResponse asResponse() {
+        return (HttpServletResponse) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class<?>[] { HttpServletResponse.class }, this);
+    }
+
+    @Override
+    public Object invoke(final Object proxy, final Method method, final Object[] args) {
+        final String name = method.getName();
+        if (name.equals("setStatus") || name.equals("sendError")) {
+            status = ((Integer) args[0]).intValue();
+            return null;
+        }
+        else if (name.equals("setHeader") || name.equals("addHeader")) {
+            headers.put(((String) args[0]).toLowerCase(), (String) args[1]);
+            return null;
+        }
+        else if (name.equals("setContentType")) {
+            headers.put("content-type", (String) args[0]);
+            return null;
+        }
+        else if (name.equals("setContentLength")) {
+            headers.put("content-length", args[0].toString());
+            return null;
+        }
+        else if (name.equals("addCookie")) {
+            cookies.add((Cookie) args[0]);
+            return null;
+        }
+        else if (name.equals("sendRedirect")) {
+            status = HttpServletResponse.SC_MOVED_TEMPORARILY;
+            redirectUrl = (String) args[0];
+            return null;
+        }
+        else if (name.equals("getOutputStream")) {
+            return new ServletOutputStream() {
+                @Override
+                public void write(final int b) throws IOException {
+                    outputStream.write(b);
+                }
+            };
+        }
+        else if (name.equals("toString")) {
+            return "StubHttpServletResponse(" + status + ")";
+        }
+        return StubHttpServletRequest.defaultValue(method.getReturnType());
+    }
+}
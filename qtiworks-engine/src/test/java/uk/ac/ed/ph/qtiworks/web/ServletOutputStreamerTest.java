@@ -0,0 +1,234 @@
+/* Copyright (c) 2012-2013, University of Edinburgh.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice, this
+ *   list of conditions and the following disclaimer in the documentation and/or
+ *   other materials provided with the distribution.
+ *
+ * * Neither the name of the University of Edinburgh nor the names of its
+ *   contributors may be used to endorse or promote products derived from this
+ *   software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ *
+ * This software is derived from (and contains code from) QTItools and MathAssessEngine.
+ * QTItools is (c) 2008, University of Southampton.
+ * MathAssessEngine is (c) 2010, University of Edinburgh.
+ */
+package uk.ac.ed.ph.qtiworks.web;
+
+import uk.ac.ed.ph.qtiworks.testutils.StubHttpServletRequest;
+import uk.ac.ed.ph.qtiworks.testutils.StubHttpServletResponse;
+import uk.ac.ed.ph.qtiworks.web.ServletOutputStreamer.ByteRange;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+
+import javax.servlet.http.HttpServletResponse;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.io.Files;
+
+/**
+ * Tests the HTTP <code>Range</code> support within {@link ServletOutputStreamer}
+ *
+ * @author David McKain
+ */
+public class ServletOutputStreamerTest {
+
+    private static final long LENGTH = 1000L;
+    private static final String FINGERPRINT = "package/1/file.mp3";
+
+    private byte[] data;
+    private File file;
+
+    @Before
+    public void setup() throws IOException {
+        data = new byte[(int) LENGTH];
+        for (int i=0; i<data.length; i++) {
+            data[i] = (byte) i;
+        }
+        file = File.createTempFile("servletOutputStreamerTest", ".dat");
+        Files.write(data, file);
+    }
+
+    @After
+    public void tearDown() {
+        if (file!=null) {
+            file.delete();
+        }
+    }
+
+    //----------------------------------------------------------
+    // Parsing
+
+    @Test
+    public void testParseClosedRange() {
+        assertRange(0L, 499L, ByteRange.parse("bytes=0-499", LENGTH));
+        assertRange(500L, 999L, ByteRange.parse("bytes=500-5000", LENGTH));
+    }
+
+    @Test
+    public void testParseSuffixRange() {
+        assertRange(500L, 999L, ByteRange.parse("bytes=-500", LENGTH));
+        assertRange(0L, 999L, ByteRange.parse("bytes=-5000", LENGTH));
+    }
+
+    @Test
+    public void testParseOpenEndedRange() {
+        assertRange(500L, 999L, ByteRange.parse("bytes=500-", LENGTH));
+        assertRange(999L, 999L, ByteRange.parse("bytes=999-", LENGTH));
+    }
+
+    @Test
+    public void testParseUnsatisfiable() {
+        Assert.assertSame(ByteRange.UNSATISFIABLE, ByteRange.parse("bytes=1000-", LENGTH));
+        Assert.assertSame(ByteRange.UNSATISFIABLE, ByteRange.parse("bytes=2000-3000", LENGTH));
+        Assert.assertSame(ByteRange.UNSATISFIABLE, ByteRange.parse("bytes=-0", LENGTH));
+        Assert.assertSame(ByteRange.UNSATISFIABLE, ByteRange.parse("bytes=-10", 0L));
+    }
+
+    @Test
+    public void testParseIgnored() {
+        Assert.assertNull(ByteRange.parse("bytes=0-99,200-299", LENGTH));
+        Assert.assertNull(ByteRange.parse("items=0-99", LENGTH));
+        Assert.assertNull(ByteRange.parse("bytes=99", LENGTH));
+        Assert.assertNull(ByteRange.parse("bytes=500-100", LENGTH));
+        Assert.assertNull(ByteRange.parse("bytes=a-b", LENGTH));
+        Assert.assertNull(ByteRange.parse("bytes=-", LENGTH));
+    }
+
+    //----------------------------------------------------------
+    // Responses
+
+    @Test
+    public void testSuffixRangeResponse() throws IOException {
+        final StubHttpServletResponse response = streamFile("bytes=-500", null);
+        Assert.assertEquals(HttpServletResponse.SC_PARTIAL_CONTENT, response.getStatus());
+        Assert.assertEquals("bytes 500-999/1000", response.getHeader("Content-Range"));
+        Assert.assertEquals("500", response.getHeader("Content-Length"));
+        assertData(500, 500, response.getData());
+    }
+
+    @Test
+    public void testOpenEndedRangeResponse() throws IOException {
+        final StubHttpServletResponse response = stream("bytes=500-", null);
+        Assert.assertEquals(HttpServletResponse.SC_PARTIAL_CONTENT, response.getStatus());
+        Assert.assertEquals("bytes 500-999/1000", response.getHeader("Content-Range"));
+        assertData(500, 500, response.getData());
+    }
+
+    @Test
+    public void testUnsatisfiableResponse() throws IOException {
+        final StubHttpServletResponse response = streamFile("bytes=1000-1999", null);
+        Assert.assertEquals(HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE, response.getStatus());
+        Assert.assertEquals("bytes */1000", response.getHeader("Content-Range"));
+        Assert.assertEquals(0, response.getData().length);
+    }
+
+    @Test
+    public void testMultiRangeSendsEverything() throws IOException {
+        assertFullResponse(streamFile("bytes=0-99,200-299", null));
+    }
+
+    @Test
+    public void testMalformedRangeSendsEverything() throws IOException {
+        assertFullResponse(stream("bytes=garbage", null));
+        assertFullResponse(stream("lines=1-2", null));
+    }
+
+    @Test
+    public void testIfRangeMismatchSendsEverything() throws IOException {
+        assertFullResponse(streamFile("bytes=0-99", "\"stale\""));
+    }
+
+    @Test
+    public void testIfRangeMatch() throws IOException {
+        final StubHttpServletResponse response = streamFile("bytes=0-99", WebUtilities.computeStrongEtag(FINGERPRINT));
+        Assert.assertEquals(HttpServletResponse.SC_PARTIAL_CONTENT, response.getStatus());
+        assertData(0, 100, response.getData());
+    }
+
+    @Test
+    public void testRangeIgnoredForMutableData() throws IOException {
+        final StubHttpServletRequest request = new StubHttpServletRequest("GET", "/file").setHeader("Range", "bytes=0-99");
+        final StubHttpServletResponse response = new StubHttpServletResponse();
+        final ServletOutputStreamer outputStreamer = new ServletOutputStreamer(request.asRequest(), response.asResponse());
+        outputStreamer.offerFingerprint(FINGERPRINT);
+        outputStreamer.stream("audio/mpeg", LENGTH, null, new ByteArrayInputStream(data));
+        Assert.assertEquals(HttpServletResponse.SC_OK, response.getStatus());
+        Assert.assertNull(response.getHeader("Accept-Ranges"));
+        assertData(0, data.length, response.getData());
+    }
+
+    //----------------------------------------------------------
+
+    private StubHttpServletResponse stream(final String range, final String ifRange) throws IOException {
+        final StubHttpServletResponse response = new StubHttpServletResponse();
+        final ServletOutputStreamer outputStreamer = createImmutableStreamer(range, ifRange, response);
+        outputStreamer.stream("audio/mpeg", LENGTH, null, new ByteArrayInputStream(data));
+        return response;
+    }
+
+    private StubHttpServletResponse streamFile(final String range, final String ifRange) throws IOException {
+        final StubHttpServletResponse response = new StubHttpServletResponse();
+        final ServletOutputStreamer outputStreamer = createImmutableStreamer(range, ifRange, response);
+        outputStreamer.streamFile("audio/mpeg", file, null);
+        return response;
+    }
+
+    private ServletOutputStreamer createImmutableStreamer(final String range, final String ifRange,
+            final StubHttpServletResponse response) {
+        final StubHttpServletRequest request = new StubHttpServletRequest("GET", "/file");
+        request.setHeader("Range", range);
+        if (ifRange!=null) {
+            request.setHeader("If-Range", ifRange);
+        }
+        final ServletOutputStreamer outputStreamer = new ServletOutputStreamer(request.asRequest(), response.asResponse());
+        Assert.assertFalse(outputStreamer.offerImmutableFingerprint(FINGERPRINT));
+        return outputStreamer;
+    }
+
+    private void assertFullResponse(final StubHttpServletResponse response) {
+        Assert.assertEquals(HttpServletResponse.SC_OK, response.getStatus());
+        Assert.assertNull(response.getHeader("Content-Range"));
+        Assert.assertEquals("bytes", response.getHeader("Accept-Ranges"));
+        Assert.assertEquals("1000", response.getHeader("Content-Length"));
+        assertData(0, data.length, response.getData());
+    }
+
+    private void assertData(final int start, final int length, final byte[] actual) {
+        Assert.assertEquals(length, actual.length);
+        for (int i=0; i<length; i++) {
+            Assert.assertEquals(data[start + i], actual[i]);
+        }
+    }
+
+    private static void assertRange(final long expectedStart, final long expectedEnd, final ByteRange byteRange) {
+        Assert.assertNotNull(byteRange);
+        Assert.assertNotSame(ByteRange.UNSATISFIABLE, byteRange);
+        Assert.assertEquals(expectedStart, byteRange.start);
+        Assert.assertEquals(expectedEnd, byteRange.end);
+    }
+}
@@ -0,0 +1,91 @@
+/* Copyright (c) 2012-2013, University of Edinburgh.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice, this
+ *   list of conditions and the following disclaimer in the documentation and/or
+ *   other materials provided with the distribution.
+ *
+ * * Neither the name of the University of Edinburgh nor the names of its
+ *   contributors may be used to endorse or promote products derived from this
+ *   software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ *
+ * This software is derived from (and contains code from) QTItools and MathAssessEngine.
+ * QTItools is (c) 2008, University of Southampton.
+ * MathAssessEngine is (c) 2010, University of Edinburgh.
+ */
+package uk.ac.ed.ph.qtiworks.web;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests the entity tag helpers in {@link WebUtilities}
+ *
+ * @author David McKain
+ */
+public class WebUtilitiesTest {
+
+    private static final String STRONG_ETAG = WebUtilities.computeStrongEtag("fingerprint");
+    private static final String WEAK_ETAG = WebUtilities.computeEtag("fingerprint");
+
+    @Test
+    public void testEtagForms() {
+        Assert.assertTrue(STRONG_ETAG.startsWith("\"") && STRONG_ETAG.endsWith("\""));
+        Assert.assertEquals("W/" + STRONG_ETAG, WEAK_ETAG);
+    }
+
+    @Test
+    public void testStrongMatchesStrong() {
+        Assert.assertTrue(WebUtilities.etagsMatchWeakly(STRONG_ETAG, STRONG_ETAG));
+    }
+
+    @Test
+    public void testWeakMatchesStrong() {
+        Assert.assertTrue(WebUtilities.etagsMatchWeakly(WEAK_ETAG, STRONG_ETAG));
+        Assert.assertTrue(WebUtilities.etagsMatchWeakly(STRONG_ETAG, WEAK_ETAG));
+        Assert.assertTrue(WebUtilities.etagsMatchWeakly(WEAK_ETAG, WEAK_ETAG));
+    }
+
+    @Test
+    public void testDifferentTagsDoNotMatch() {
+        Assert.assertFalse(WebUtilities.etagsMatchWeakly(WebUtilities.computeStrongEtag("other"), STRONG_ETAG));
+        Assert.assertFalse(WebUtilities.etagsMatchWeakly("W/\"other\"", WEAK_ETAG));
+    }
+
+    @Test
+    public void testList() {
+        Assert.assertTrue(WebUtilities.etagsMatchWeakly("\"a\", W/\"b\"," + WEAK_ETAG, STRONG_ETAG));
+        Assert.assertTrue(WebUtilities.etagsMatchWeakly("\"a\" , " + STRONG_ETAG + " ,W/\"b\"", WEAK_ETAG));
+        Assert.assertFalse(WebUtilities.etagsMatchWeakly("\"a\", W/\"b\"", STRONG_ETAG));
+    }
+
+    @Test
+    public void testWildcard() {
+        Assert.assertTrue(WebUtilities.etagsMatchWeakly("*", STRONG_ETAG));
+        Assert.assertTrue(WebUtilities.etagsMatchWeakly("\"a\", *", WEAK_ETAG));
+    }
+
+    @Test
+    public void testUnquotedTagDoesNotMatch() {
+        final String unquoted = STRONG_ETAG.substring(1, STRONG_ETAG.length() - 1);
+        Assert.assertFalse(WebUtilities.etagsMatchWeakly(unquoted, STRONG_ETAG));
+    }
+}
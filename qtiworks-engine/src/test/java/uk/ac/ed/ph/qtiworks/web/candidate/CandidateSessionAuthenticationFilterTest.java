@@ -0,0 +1,277 @@
+/* Copyright (c) 2012-2013, University of Edinburgh.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice, this
+ *   list of conditions and the following disclaimer in the documentation and/or
+ *   other materials provided with the distribution.
+ *
+ * * Neither the name of the University of Edinburgh nor the names of its
+ *   contributors may be used to endorse or promote products derived from this
+ *   software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ *
+ * This software is derived from (and contains code from) QTItools and MathAssessEngine.
+ * QTItools is (c) 2008, University of Southampton.
+ * MathAssessEngine is (c) 2010, University of Edinburgh.
+ */
+package uk.ac.ed.ph.qtiworks.web.candidate;
+
+import uk.ac.ed.ph.qtiworks.domain.entities.AnonymousUser;
+import uk.ac.ed.ph.qtiworks.domain.entities.CandidateSession;
+import uk.ac.ed.ph.qtiworks.domain.entities.User;
+import uk.ac.ed.ph.qtiworks.services.dao.CandidateSessionDao;
+import uk.ac.ed.ph.qtiworks.services.dao.UserDao;
+import uk.ac.ed.ph.qtiworks.testutils.StubHttpServletRequest;
+import uk.ac.ed.ph.qtiworks.testutils.StubHttpServletResponse;
+
+import uk.ac.ed.ph.jqtiplus.node.AssessmentObjectType;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.http.Cookie;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpSession;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+/**
+ * Tests the {@link CandidateSessionAuthenticationFilter}, simulating several nodes (each with
+ * its own filter instance) that share the same signing secret but no {@link HttpSession}s.
+ *
+ * @author David McKain
+ */
+public class CandidateSessionAuthenticationFilterTest {
+
+    private static final String SECRET = "correct horse battery staple";
+    private static final long LIFETIME = 60L * 60 * 1000;
+    private static final String CONTEXT_PATH = "/qtiworks";
+    private static final long XID = 1234L;
+    private static final long USER_ID = 42L;
+    private static final String XSRF_TOKEN = "abcDEF123";
+
+    private CandidateSessionAuthenticationFilter issuingNode;
+    private CandidateSessionAuthenticationFilter verifyingNode;
+    private CandidateSessionTicket ticket;
+    private RecordingFilterChain filterChain;
+
+    @Before
+    public void setup() {
+        issuingNode = createFilter(new SignedCandidateSessionTicketCodec(SECRET, LIFETIME));
+        verifyingNode = createFilter(new SignedCandidateSessionTicketCodec(SECRET, LIFETIME));
+        ticket = new CandidateSessionTicket(XSRF_TOKEN, USER_ID, XID, AssessmentObjectType.ASSESSMENT_ITEM,
+                "https://vle.example.com/return");
+        filterChain = new RecordingFilterChain();
+    }
+
+    //----------------------------------------------------------
+
+    @Test
+    public void testCookieScopedToSession() {
+        final String setCookieHeader = issueTicket(issuingNode, ticket);
+        Assert.assertTrue(setCookieHeader.startsWith(SignedCandidateSessionTicketCodec.COOKIE_NAME + "="));
+        Assert.assertTrue(setCookieHeader.contains("; Path=/qtiworks/candidate/itemsession/1234;"));
+        Assert.assertTrue(setCookieHeader.contains("; Secure"));
+        Assert.assertTrue(setCookieHeader.contains("; HttpOnly"));
+        Assert.assertFalse(setCookieHeader.contains(XSRF_TOKEN));
+    }
+
+    @Test
+    public void testTicketFromAnotherNodeAccepted() throws Exception {
+        final StubHttpServletResponse response = doFilter(verifyingNode, "/itemsession/1234/" + XSRF_TOKEN + "/render",
+                cookieFor(issueTicket(issuingNode, ticket)));
+        Assert.assertEquals(HttpServletResponse.SC_OK, response.getStatus());
+        Assert.assertNotNull(filterChain.request);
+        final CandidateSessionContext candidateSessionContext = CandidateSessionAuthenticationFilter.requireCurrentRequestCandidateSessionContext(
+                (HttpServletRequest) filterChain.request);
+        Assert.assertEquals(Long.valueOf(XID), candidateSessionContext.getCandidateSession().getId());
+        Assert.assertEquals("https://vle.example.com/return", candidateSessionContext.getSessionExitReturnUrl());
+    }
+
+    @Test
+    public void testNoCookieRejected() throws Exception {
+        assertForbidden(doFilter(verifyingNode, "/itemsession/1234/" + XSRF_TOKEN + "/render"));
+    }
+
+    @Test
+    public void testXsrfTokenMismatchRejected() throws Exception {
+        assertForbidden(doFilter(verifyingNode, "/itemsession/1234/xyz789/render",
+                cookieFor(issueTicket(issuingNode, ticket))));
+    }
+
+    @Test
+    public void testSessionTypeMismatchRejected() throws Exception {
+        assertForbidden(doFilter(verifyingNode, "/testsession/1234/" + XSRF_TOKEN + "/render",
+                cookieFor(issueTicket(issuingNode, ticket))));
+    }
+
+    @Test
+    public void testOtherSessionTicketRejected() throws Exception {
+        final CandidateSessionTicket otherTicket = new CandidateSessionTicket(XSRF_TOKEN, USER_ID, XID + 1,
+                AssessmentObjectType.ASSESSMENT_ITEM, null);
+        assertForbidden(doFilter(verifyingNode, "/itemsession/1234/" + XSRF_TOKEN + "/render",
+                cookieFor(issueTicket(issuingNode, otherTicket))));
+    }
+
+    @Test
+    public void testMatchingCookieSelected() throws Exception {
+        /* Browser sends an older ticket for the same session as well as the current one */
+        final CandidateSessionTicket olderTicket = new CandidateSessionTicket("older456", USER_ID, XID,
+                AssessmentObjectType.ASSESSMENT_ITEM, null);
+        final StubHttpServletResponse response = doFilter(verifyingNode, "/itemsession/1234/" + XSRF_TOKEN + "/render",
+                cookieFor(issueTicket(issuingNode, olderTicket)),
+                cookieFor(issueTicket(issuingNode, ticket)));
+        Assert.assertEquals(HttpServletResponse.SC_OK, response.getStatus());
+        Assert.assertNotNull(filterChain.request);
+    }
+
+    @Test
+    public void testExpiredTicketRejected() throws Exception {
+        final SignedCandidateSessionTicketCodec codec = new SignedCandidateSessionTicketCodec(SECRET, LIFETIME);
+        final String setCookieHeader = codec.createSetCookieHeader(ticket, "/", System.currentTimeMillis() - LIFETIME - 1000L);
+        assertForbidden(doFilter(verifyingNode, "/itemsession/1234/" + XSRF_TOKEN + "/render",
+                cookieFor(setCookieHeader)));
+    }
+
+    @Test
+    public void testTicketSignedWithOtherSecretRejected() throws Exception {
+        final CandidateSessionAuthenticationFilter rogueNode = createFilter(new SignedCandidateSessionTicketCodec("some other secret", LIFETIME));
+        assertForbidden(doFilter(verifyingNode, "/itemsession/1234/" + XSRF_TOKEN + "/render",
+                cookieFor(issueTicket(rogueNode, ticket))));
+    }
+
+    @Test
+    public void testHttpSessionFallback() throws Exception {
+        final CandidateSessionAuthenticationFilter httpSessionNode = createFilter(null);
+        final HttpSession httpSession = createHttpSession();
+        CandidateSessionAuthenticationFilter.authenticateUserForHttpSession(httpSession, ticket);
+
+        final StubHttpServletRequest request = new StubHttpServletRequest("GET", "/itemsession/1234/" + XSRF_TOKEN + "/render");
+        final StubHttpServletResponse response = new StubHttpServletResponse();
+        httpSessionNode.doFilterAuthentication(request.asRequest(), response.asResponse(), filterChain, httpSession);
+        Assert.assertEquals(HttpServletResponse.SC_OK, response.getStatus());
+        Assert.assertNotNull(filterChain.request);
+
+        /* Other nodes don't see the HttpSession */
+        filterChain = new RecordingFilterChain();
+        assertForbidden(doFilter(verifyingNode, "/itemsession/1234/" + XSRF_TOKEN + "/render"));
+    }
+
+    //----------------------------------------------------------
+
+    private void assertForbidden(final StubHttpServletResponse response) {
+        Assert.assertEquals(HttpServletResponse.SC_FORBIDDEN, response.getStatus());
+        Assert.assertNull(filterChain.request);
+    }
+
+    private StubHttpServletResponse doFilter(final CandidateSessionAuthenticationFilter filter, final String pathInfo,
+            final Cookie... cookies) throws Exception {
+        final StubHttpServletRequest request = new StubHttpServletRequest("GET", pathInfo);
+        for (final Cookie cookie : cookies) {
+            request.addCookie(cookie);
+        }
+        final StubHttpServletResponse response = new StubHttpServletResponse();
+        filter.doWebFilter(request.asRequest(), response.asResponse(), filterChain);
+        return response;
+    }
+
+    /**
+     * Issues the given ticket in the same way as {@link CandidateSessionLaunchService}, using the
+     * given node's codec, returning the resulting Set-Cookie header.
+     */
+    private static String issueTicket(final CandidateSessionAuthenticationFilter node, final CandidateSessionTicket candidateSessionTicket) {
+        final StubHttpServletResponse response = new StubHttpServletResponse();
+        CandidateSessionAuthenticationFilter.authenticateUserWithSignedTicketCookie(response.asResponse(), CONTEXT_PATH,
+                candidateSessionTicket, (SignedCandidateSessionTicketCodec) ReflectionTestUtils.getField(node, "signedTicketCodec"));
+        final String result = response.getHeader("Set-Cookie");
+        Assert.assertNotNull(result);
+        return result;
+    }
+
+    /**
+     * Creates the {@link Cookie} that a browser would send back after receiving the given Set-Cookie header.
+     */
+    private static Cookie cookieFor(final String setCookieHeader) {
+        final String nameValue = setCookieHeader.substring(0, setCookieHeader.indexOf(';'));
+        final int equalsIndex = nameValue.indexOf('=');
+        return new Cookie(nameValue.substring(0, equalsIndex), nameValue.substring(equalsIndex + 1));
+    }
+
+    private static CandidateSessionAuthenticationFilter createFilter(final SignedCandidateSessionTicketCodec signedTicketCodec) {
+        final User user = new AnonymousUser();
+        user.setId(Long.valueOf(USER_ID));
+        final CandidateSession candidateSession = new CandidateSession();
+        candidateSession.setId(Long.valueOf(XID));
+
+        final CandidateSessionAuthenticationFilter result = new CandidateSessionAuthenticationFilter();
+        ReflectionTestUtils.setField(result, "userDao", new UserDao() {
+            @Override
+            public User findById(final long id) {
+                return id==USER_ID ? user : null;
+            }
+        });
+        ReflectionTestUtils.setField(result, "candidateSessionDao", new CandidateSessionDao() {
+            @Override
+            public CandidateSession findById(final long id) {
+                return id==XID ? candidateSession : null;
+            }
+        });
+        ReflectionTestUtils.setField(result, "signedTicketCodec", signedTicketCodec);
+        return result;
+    }
+
+    private static HttpSession createHttpSession() {
+        final Map<String, Object> attributes = new HashMap<String, Object>();
+        return (HttpSession) Proxy.newProxyInstance(CandidateSessionAuthenticationFilterTest.class.getClassLoader(),
+                new Class<?>[] { HttpSession.class }, new InvocationHandler() {
+                    @Override
+                    public Object invoke(final Object proxy, final Method method, final Object[] args) {
+                        if (method.getName().equals("setAttribute")) {
+                            attributes.put((String) args[0], args[1]);
+                        }
+                        else if (method.getName().equals("getAttribute")) {
+                            return attributes.get(args[0]);
+                        }
+                        return null;
+                    }
+                });
+    }
+
+    /** {@link FilterChain} recording the request it was invoked with */
+    private static final class RecordingFilterChain implements FilterChain {
+
+        ServletRequest request;
+
+        @Override
+        public void doFilter(final ServletRequest servletRequest, final ServletResponse servletResponse) {
+            this.request = servletRequest;
+        }
+    }
+}
@@ -0,0 +1,172 @@
+/* Copyright (c) 2012-2013, University of Edinburgh.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice, this
+ *   list of conditions and the following disclaimer in the documentation and/or
+ *   other materials provided with the distribution.
+ *
+ * * Neither the name of the University of Edinburgh nor the names of its
+ *   contributors may be used to endorse or promote products derived from this
+ *   software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ *
+ * This software is derived from (and contains code from) QTItools and MathAssessEngine.
+ * QTItools is (c) 2008, University of Southampton.
+ * MathAssessEngine is (c) 2010, University of Edinburgh.
+ */
+package uk.ac.ed.ph.qtiworks.web.candidate;
+
+import uk.ac.ed.ph.jqtiplus.node.AssessmentObjectType;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests the {@link SignedCandidateSessionTicketCodec}, simulating a number of QTIWorks nodes
+ * (each with its own codec instance) sharing the same secret behind a load balancer.
+ *
+ * @author David McKain
+ */
+public class SignedCandidateSessionTicketCodecTest {
+
+    private static final String SECRET = "correct horse battery staple";
+    private static final long LIFETIME = 60L * 60 * 1000;
+    private static final long NOW = 1500000000000L;
+    private static final int NODE_COUNT = 4;
+
+    private List<SignedCandidateSessionTicketCodec> nodes;
+    private CandidateSessionTicket ticket;
+
+    @Before
+    public void setup() {
+        nodes = new ArrayList<SignedCandidateSessionTicketCodec>();
+        for (int i=0; i<NODE_COUNT; i++) {
+            nodes.add(new SignedCandidateSessionTicketCodec(SECRET, LIFETIME));
+        }
+        ticket = new CandidateSessionTicket("abcDEF123", 42L, 1234L, AssessmentObjectType.ASSESSMENT_TEST,
+                "https://vle.example.com/return?x=1&y=2");
+    }
+
+    @Test
+    public void testAnyNodeVerifiesTicketIssuedByAnother() {
+        for (final SignedCandidateSessionTicketCodec issuer : nodes) {
+            final String token = issuer.encode(ticket, NOW);
+            for (final SignedCandidateSessionTicketCodec verifier : nodes) {
+                final CandidateSessionTicket decoded = verifier.decode(token, NOW + 1000L);
+                Assert.assertNotNull(decoded);
+                Assert.assertEquals("abcDEF123", decoded.getXsrfToken());
+                Assert.assertEquals(42L, decoded.getUserId());
+                Assert.assertEquals(1234L, decoded.getCandidateSessionId());
+                Assert.assertEquals(AssessmentObjectType.ASSESSMENT_TEST, decoded.getAssessmentObjectType());
+                Assert.assertEquals("https://vle.example.com/return?x=1&y=2", decoded.getSessionExitReturnUrl());
+            }
+        }
+    }
+
+    @Test
+    public void testTokenIsUrlSafe() {
+        final String token = nodes.get(0).encode(ticket, NOW);
+        Assert.assertTrue(token.matches("[A-Za-z0-9_-]+"));
+    }
+
+    @Test
+    public void testNullExitUrl() {
+        final CandidateSessionTicket noExitTicket = new CandidateSessionTicket("abc", 1L, 2L, AssessmentObjectType.ASSESSMENT_ITEM, null);
+        final CandidateSessionTicket decoded = nodes.get(1).decode(nodes.get(0).encode(noExitTicket, NOW), NOW);
+        Assert.assertNotNull(decoded);
+        Assert.assertNull(decoded.getSessionExitReturnUrl());
+        Assert.assertEquals(AssessmentObjectType.ASSESSMENT_ITEM, decoded.getAssessmentObjectType());
+    }
+
+    @Test
+    public void testDifferentTokensForDifferentXsrfTokens() {
+        final CandidateSessionTicket otherTicket = new CandidateSessionTicket("xyz789", 42L, 1234L, AssessmentObjectType.ASSESSMENT_TEST,
+                ticket.getSessionExitReturnUrl());
+        Assert.assertFalse(nodes.get(0).encode(ticket, NOW).equals(nodes.get(0).encode(otherTicket, NOW)));
+    }
+
+    @Test
+    public void testExpired() {
+        final String token = nodes.get(0).encode(ticket, NOW);
+        Assert.assertNotNull(nodes.get(1).decode(token, NOW + LIFETIME - 1));
+        Assert.assertNull(nodes.get(1).decode(token, NOW + LIFETIME));
+    }
+
+    @Test
+    public void testRejectedByNodeWithDifferentSecret() {
+        final String token = nodes.get(0).encode(ticket, NOW);
+        final SignedCandidateSessionTicketCodec rogueNode = new SignedCandidateSessionTicketCodec("some other secret", LIFETIME);
+        Assert.assertNull(rogueNode.decode(token, NOW));
+    }
+
+    @Test
+    public void testTamperedTokensRejected() {
+        final String token = nodes.get(0).encode(ticket, NOW);
+        for (int i=0; i<token.length(); i++) {
+            final char replacement = token.charAt(i)=='A' ? 'B' : 'A';
+            final String tampered = token.substring(0, i) + replacement + token.substring(i+1);
+            Assert.assertNull("Tampering at index " + i + " was not detected", nodes.get(2).decode(tampered, NOW));
+        }
+    }
+
+    @Test
+    public void testForgedTicketRejected() {
+        /* Re-sign a ticket for another session using a different secret and then splice the data */
+        final CandidateSessionTicket forgedTicket = new CandidateSessionTicket("abcDEF123", 42L, 9999L, AssessmentObjectType.ASSESSMENT_TEST, null);
+        final String forgedToken = new SignedCandidateSessionTicketCodec("guess", LIFETIME).encode(forgedTicket, NOW);
+        Assert.assertNull(nodes.get(3).decode(forgedToken, NOW));
+    }
+
+    @Test
+    public void testSetCookieHeader() {
+        final String header = nodes.get(0).createSetCookieHeader(ticket, "/qtiworks/candidate/testsession/1234", NOW);
+        final String[] parts = header.split("; ");
+        Assert.assertEquals(5, parts.length);
+        Assert.assertTrue(parts[0].startsWith(SignedCandidateSessionTicketCodec.COOKIE_NAME + "="));
+        Assert.assertEquals("Path=/qtiworks/candidate/testsession/1234", parts[1]);
+        Assert.assertEquals("Max-Age=" + (LIFETIME / 1000), parts[2]);
+        Assert.assertEquals("Secure", parts[3]);
+        Assert.assertEquals("HttpOnly", parts[4]);
+
+        final String token = parts[0].substring(SignedCandidateSessionTicketCodec.COOKIE_NAME.length() + 1);
+        final CandidateSessionTicket decoded = nodes.get(1).decode(token, NOW);
+        Assert.assertNotNull(decoded);
+        Assert.assertEquals("abcDEF123", decoded.getXsrfToken());
+        Assert.assertEquals(1234L, decoded.getCandidateSessionId());
+    }
+
+    @Test
+    public void testGarbageRejected() {
+        final SignedCandidateSessionTicketCodec node = nodes.get(0);
+        Assert.assertNull(node.decode(null, NOW));
+        Assert.assertNull(node.decode("", NOW));
+        Assert.assertNull(node.decode("abcdefghijklmnopqrstuvwxyzABCDEF", NOW)); /* (Normal random XSRF token) */
+        Assert.assertNull(node.decode("!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!", NOW));
+    }
+
+    @Test(expected=IllegalArgumentException.class)
+    public void testEmptySecret() {
+        new SignedCandidateSessionTicketCodec("", LIFETIME);
+    }
+}
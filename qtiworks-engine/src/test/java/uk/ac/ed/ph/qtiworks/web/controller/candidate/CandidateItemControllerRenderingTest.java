@@ -0,0 +1,342 @@
+/* Copyright (c) 2012-2013, University of Edinburgh.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice, this
+ *   list of conditions and the following disclaimer in the documentation and/or
+ *   other materials provided with the distribution.
+ *
+ * * Neither the name of the University of Edinburgh nor the names of its
+ *   contributors may be used to endorse or promote products derived from this
+ *   software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ *
+ * This software is derived from (and contains code from) QTItools and MathAssessEngine.
+ * QTItools is (c) 2008, University of Southampton.
+ * MathAssessEngine is (c) 2010, University of Edinburgh.
+ */
+package uk.ac.ed.ph.qtiworks.web.controller.candidate;
+
+import uk.ac.ed.ph.qtiworks.config.beans.QtiWorksDeploymentSettings;
+import uk.ac.ed.ph.qtiworks.domain.entities.AnonymousUser;
+import uk.ac.ed.ph.qtiworks.domain.entities.Assessment;
+import uk.ac.ed.ph.qtiworks.domain.entities.AssessmentPackage;
+import uk.ac.ed.ph.qtiworks.domain.entities.CandidateEvent;
+import uk.ac.ed.ph.qtiworks.domain.entities.CandidateEventNotification;
+import uk.ac.ed.ph.qtiworks.domain.entities.CandidateItemEventType;
+import uk.ac.ed.ph.qtiworks.domain.entities.CandidateSession;
+import uk.ac.ed.ph.qtiworks.domain.entities.Delivery;
+import uk.ac.ed.ph.qtiworks.domain.entities.DeliverySettings;
+import uk.ac.ed.ph.qtiworks.domain.entities.ItemDeliverySettings;
+import uk.ac.ed.ph.qtiworks.domain.entities.User;
+import uk.ac.ed.ph.qtiworks.rendering.AssessmentRenderer;
+import uk.ac.ed.ph.qtiworks.rendering.ItemRenderingRequest;
+import uk.ac.ed.ph.qtiworks.services.AssessmentDataService;
+import uk.ac.ed.ph.qtiworks.services.AssessmentPackageFileService;
+import uk.ac.ed.ph.qtiworks.services.CandidateAuditLogger;
+import uk.ac.ed.ph.qtiworks.services.CandidateDataService;
+import uk.ac.ed.ph.qtiworks.services.FilespaceManager;
+import uk.ac.ed.ph.qtiworks.services.RenderingResultCache;
+import uk.ac.ed.ph.qtiworks.services.RequestTimestampContext;
+import uk.ac.ed.ph.qtiworks.services.ServiceUtilities;
+import uk.ac.ed.ph.qtiworks.services.candidate.CandidateRenderingService;
+import uk.ac.ed.ph.qtiworks.testutils.StubHttpServletRequest;
+import uk.ac.ed.ph.qtiworks.testutils.StubHttpServletResponse;
+import uk.ac.ed.ph.qtiworks.web.candidate.CandidateSessionAuthenticationFilter;
+import uk.ac.ed.ph.qtiworks.web.candidate.CandidateSessionContext;
+
+import uk.ac.ed.ph.jqtiplus.node.AssessmentObjectType;
+import uk.ac.ed.ph.jqtiplus.state.ItemSessionState;
+import uk.ac.ed.ph.jqtiplus.xmlutils.locators.ResourceLocator;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.URI;
+import java.util.Date;
+import java.util.List;
+
+import javax.servlet.http.HttpServletResponse;
+import javax.xml.transform.Result;
+import javax.xml.transform.stream.StreamResult;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.beans.BeanUtils;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.google.common.io.Files;
+
+/**
+ * Tests the caching of immutable renderings performed via the {@link CandidateItemController},
+ * namely the {@link RenderingResultCache} and conditional GET support. The rendering layer
+ * and data services are replaced by simple stand-ins.
+ *
+ * @author David McKain
+ */
+public class CandidateItemControllerRenderingTest {
+
+    private File filesystemBase;
+    private CandidateItemController candidateItemController;
+    private RenderingResultCache renderingResultCache;
+    private StubCandidateDataService candidateDataService;
+    private CountingAssessmentRenderer assessmentRenderer;
+    private CandidateSession candidateSession;
+
+    @Before
+    public void setup() {
+        filesystemBase = Files.createTempDir();
+        final QtiWorksDeploymentSettings qtiWorksDeploymentSettings = new QtiWorksDeploymentSettings();
+        ReflectionTestUtils.setField(qtiWorksDeploymentSettings, "filesystemBase", filesystemBase.getAbsolutePath());
+        ReflectionTestUtils.setField(qtiWorksDeploymentSettings, "renderingResultCacheSize", Integer.valueOf(1024));
+        final RequestTimestampContext requestTimestampContext = new RequestTimestampContext();
+        requestTimestampContext.setCurrentRequestTimestamp(new Date());
+
+        final FilespaceManager filespaceManager = new FilespaceManager();
+        ReflectionTestUtils.setField(filespaceManager, "qtiWorksDeploymentSettings", qtiWorksDeploymentSettings);
+        ReflectionTestUtils.setField(filespaceManager, "requestTimestampContext", requestTimestampContext);
+        filespaceManager.init();
+
+        renderingResultCache = new RenderingResultCache();
+        ReflectionTestUtils.setField(renderingResultCache, "qtiWorksDeploymentSettings", qtiWorksDeploymentSettings);
+        renderingResultCache.init();
+
+        candidateSession = createCandidateSession();
+        candidateDataService = new StubCandidateDataService();
+        assessmentRenderer = new CountingAssessmentRenderer();
+
+        final CandidateRenderingService candidateRenderingService = new CandidateRenderingService();
+        ReflectionTestUtils.setField(candidateRenderingService, "candidateDataService", candidateDataService);
+        ReflectionTestUtils.setField(candidateRenderingService, "assessmentDataService", new StubAssessmentDataService(candidateSession));
+        ReflectionTestUtils.setField(candidateRenderingService, "assessmentPackageFileService", new StubAssessmentPackageFileService());
+        ReflectionTestUtils.setField(candidateRenderingService, "assessmentRenderer", assessmentRenderer);
+        ReflectionTestUtils.setField(candidateRenderingService, "candidateAuditLogger", new SilentCandidateAuditLogger());
+        ReflectionTestUtils.setField(candidateRenderingService, "filespaceManager", filespaceManager);
+        ReflectionTestUtils.setField(candidateRenderingService, "renderingResultCache", renderingResultCache);
+        ReflectionTestUtils.setField(candidateRenderingService, "requestTimestampContext", requestTimestampContext);
+
+        candidateItemController = new CandidateItemController();
+        ReflectionTestUtils.setField(candidateItemController, "candidateRenderingService", candidateRenderingService);
+    }
+
+    @After
+    public void tearDown() {
+        if (filesystemBase!=null) {
+            ServiceUtilities.recursivelyDelete(filesystemBase);
+        }
+    }
+
+    //----------------------------------------------------------
+
+    @Test
+    public void testEndedItemRenderedOnce() throws Exception {
+        candidateDataService.recordEvent(1L, CandidateItemEventType.END, true);
+
+        final StubHttpServletResponse first = render(null);
+        final StubHttpServletResponse second = render(null);
+
+        Assert.assertEquals(1, assessmentRenderer.getRenderCount());
+        Assert.assertEquals(1, renderingResultCache.getHitCount());
+        Assert.assertEquals(HttpServletResponse.SC_OK, second.getStatus());
+        Assert.assertEquals("rendering 1", new String(second.getData(), "UTF-8"));
+        Assert.assertNotNull(first.getHeader("ETag"));
+        Assert.assertEquals(first.getHeader("ETag"), second.getHeader("ETag"));
+    }
+
+    @Test
+    public void testNewEventInvalidatesRendering() throws Exception {
+        candidateDataService.recordEvent(1L, CandidateItemEventType.END, true);
+        final StubHttpServletResponse before = render(null);
+
+        candidateDataService.recordEvent(2L, CandidateItemEventType.SOLUTION, true);
+        final StubHttpServletResponse after = render(before.getHeader("ETag"));
+
+        Assert.assertEquals(2, assessmentRenderer.getRenderCount());
+        Assert.assertEquals(HttpServletResponse.SC_OK, after.getStatus());
+        Assert.assertEquals("rendering 2", new String(after.getData(), "UTF-8"));
+        Assert.assertFalse(before.getHeader("ETag").equals(after.getHeader("ETag")));
+    }
+
+    @Test
+    public void testConditionalGetNotModified() throws Exception {
+        candidateDataService.recordEvent(1L, CandidateItemEventType.END, true);
+        final String etag = render(null).getHeader("ETag");
+
+        /* Clear the cache to show that 304s don't need it */
+        renderingResultCache.clear();
+        final StubHttpServletResponse response = render(etag);
+
+        Assert.assertEquals(HttpServletResponse.SC_NOT_MODIFIED, response.getStatus());
+        Assert.assertEquals(etag, response.getHeader("ETag"));
+        Assert.assertEquals(0, response.getData().length);
+        Assert.assertEquals(1, assessmentRenderer.getRenderCount());
+    }
+
+    @Test
+    public void testMutableRenderingNeverCached() throws Exception {
+        /* (Use a suspended session, which can be rendered without running the item) */
+        candidateDataService.recordEvent(1L, CandidateItemEventType.RESPONSE_VALID, false);
+
+        final StubHttpServletResponse first = render(null);
+        render(first.getHeader("ETag"));
+
+        Assert.assertNull(first.getHeader("ETag"));
+        Assert.assertEquals(2, assessmentRenderer.getRenderCount());
+        Assert.assertEquals(0, renderingResultCache.size());
+    }
+
+    //----------------------------------------------------------
+
+    private StubHttpServletResponse render(final String ifNoneMatch) throws Exception {
+        final StubHttpServletRequest request = new StubHttpServletRequest("GET", "/itemsession/1/token/render");
+        if (ifNoneMatch!=null) {
+            request.setHeader("If-None-Match", ifNoneMatch);
+        }
+        request.getAttributes().put(CandidateSessionAuthenticationFilter.CANDIDATE_SESSION_CONTEXT_REQUEST_ATTRIBUTE_NAME,
+                BeanUtils.instantiateClass(CandidateSessionContext.class.getDeclaredConstructor(CandidateSession.class, String.class),
+                        candidateSession, null));
+        final StubHttpServletResponse response = new StubHttpServletResponse();
+        candidateItemController.renderCurrentItemSessionState(request.asRequest(), 1L, "token", response.asResponse());
+        return response;
+    }
+
+    private static CandidateSession createCandidateSession() {
+        final AnonymousUser candidate = new AnonymousUser();
+        candidate.setId(Long.valueOf(1L));
+        final AssessmentPackage assessmentPackage = new AssessmentPackage();
+        assessmentPackage.setId(Long.valueOf(1L));
+        final Assessment assessment = new Assessment();
+        assessment.setId(Long.valueOf(1L));
+        assessment.setAssessmentType(AssessmentObjectType.ASSESSMENT_ITEM);
+        assessment.setSelectedAssessmentPackage(assessmentPackage);
+        final ItemDeliverySettings itemDeliverySettings = new ItemDeliverySettings();
+        itemDeliverySettings.setId(Long.valueOf(1L));
+        itemDeliverySettings.setVersion(Long.valueOf(1L));
+        final Delivery delivery = new Delivery();
+        delivery.setId(Long.valueOf(1L));
+        delivery.setAssessment(assessment);
+        delivery.setDeliverySettings(itemDeliverySettings);
+        final CandidateSession candidateSession = new CandidateSession();
+        candidateSession.setId(Long.valueOf(1L));
+        candidateSession.setCandidate(candidate);
+        candidateSession.setDelivery(delivery);
+        return candidateSession;
+    }
+
+    //----------------------------------------------------------
+
+    /** Stand-in for {@link CandidateDataService} holding the latest event and state in memory */
+    private final class StubCandidateDataService extends CandidateDataService {
+
+        private CandidateEvent latestEvent;
+        private ItemSessionState itemSessionState;
+
+        void recordEvent(final long xeid, final CandidateItemEventType itemEventType, final boolean ended) {
+            final Date timestamp = new Date();
+            latestEvent = new CandidateEvent();
+            latestEvent.setId(Long.valueOf(xeid));
+            latestEvent.setCandidateSession(candidateSession);
+            latestEvent.setItemEventType(itemEventType);
+            latestEvent.setTimestamp(timestamp);
+            itemSessionState = new ItemSessionState();
+            itemSessionState.setEntryTime(timestamp);
+            if (ended) {
+                itemSessionState.setEndTime(timestamp);
+            }
+            else {
+                itemSessionState.setSuspendTime(timestamp);
+            }
+        }
+
+        @Override
+        public CandidateEvent getMostRecentEvent(final CandidateSession session) {
+            return latestEvent;
+        }
+
+        @Override
+        public ItemSessionState loadItemSessionState(final CandidateEvent candidateEvent) {
+            return itemSessionState;
+        }
+    }
+
+    private static final class StubAssessmentDataService extends AssessmentDataService {
+
+        private final CandidateSession candidateSession;
+
+        StubAssessmentDataService(final CandidateSession candidateSession) {
+            this.candidateSession = candidateSession;
+        }
+
+        @Override
+        public AssessmentPackage ensureSelectedAssessmentPackage(final Delivery delivery) {
+            return delivery.getAssessment().getSelectedAssessmentPackage();
+        }
+
+        @Override
+        public DeliverySettings getEffectiveDeliverySettings(final User candidate, final Delivery delivery) {
+            return candidateSession.getDelivery().getDeliverySettings();
+        }
+    }
+
+    private static final class StubAssessmentPackageFileService extends AssessmentPackageFileService {
+
+        @Override
+        public ResourceLocator createResolvingResourceLocator(final AssessmentPackage assessmentPackage) {
+            return null;
+        }
+
+        @Override
+        public URI createAssessmentObjectUri(final AssessmentPackage assessmentPackage) {
+            return URI.create("file:/item.xml");
+        }
+    }
+
+    /** Stand-in for the {@link AssessmentRenderer} that numbers each rendering it performs */
+    private static final class CountingAssessmentRenderer extends AssessmentRenderer {
+
+        private int renderCount;
+
+        int getRenderCount() {
+            return renderCount;
+        }
+
+        @Override
+        public void renderItem(final ItemRenderingRequest request,
+                final List<CandidateEventNotification> notifications, final Result result) {
+            renderCount++;
+            final OutputStream outputStream = ((StreamResult) result).getOutputStream();
+            try {
+                outputStream.write(("rendering " + renderCount).getBytes("UTF-8"));
+            }
+            catch (final IOException e) {
+                throw new AssertionError(e);
+            }
+        }
+    }
+
+    private static final class SilentCandidateAuditLogger extends CandidateAuditLogger {
+
+        @Override
+        public void logItemRendering(final CandidateEvent candidateEvent) {
+            /* (Not tested here) */
+        }
+    }
+}
@@ -0,0 +1,26 @@
+-- Schema update preparation script for migrating from
+-- QTIWorks Engine 1.0-beta13 to 1.0-beta14.
+--
+-- This script is written for PostgreSQL only.
+--
+-- How to apply this update:
+--
+-- (1) Run the PostgreSQL client utility (psql) on your QTIWorks
+--     database.
+--
+-- (2) Invoke:
+--     \i /path/to/beta13-to-beta14.sql
+--
+-- (3) Then run the *updateSchema* action in the QTIWorks engine
+--     manager to complete the schema update. This will create the
+--     new indexes on candidate_events, candidate_sessions and
+--     candidate_session_outcomes.
+--
+-- ************************************************************
+
+-- Record the latest event in each candidate session, so that it
+-- can be looked up by primary key
+ALTER TABLE candidate_sessions ADD COLUMN latest_xeid BIGINT;
+UPDATE candidate_sessions x SET latest_xeid = (
+  SELECT MAX(xe.xeid) FROM candidate_events xe WHERE xe.xid = x.xid
+);
@@ -42,6 +42,7 @@ import uk.ac.ed.ph.jqtiplus.node.expression.operator.UnsupportedCustomOperator;
 import uk.ac.ed.ph.jqtiplus.node.item.interaction.CustomInteraction;
 import uk.ac.ed.ph.jqtiplus.node.item.interaction.UnsupportedCustomInteraction;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
@@ -64,6 +65,7 @@ public final class JqtiExtensionManager {
     private static final Logger logger = LoggerFactory.getLogger(JqtiExtensionManager.class);
 
     private final List<JqtiExtensionPackage<?>> jqtiExtensionPackages;
+    private final List<JqtiLifecycleListener> lifecycleListeners;
     private final Map<String, ExtensionNamespaceInfo> extensionNamepaceInfoMap;
 
     public JqtiExtensionManager(final JqtiExtensionPackage<?>... jqtiExtensionPackages) {
@@ -71,7 +73,20 @@ public final class JqtiExtensionManager {
     }
 
     public JqtiExtensionManager(final List<JqtiExtensionPackage<?>> jqtiExtensionPackages) {
+        this(jqtiExtensionPackages, null);
+    }
+
+    /**
+     * Creates a manager for the given {@link JqtiExtensionPackage}s, which will also pass all
+     * lifecycle events on to the given (optional) {@link JqtiLifecycleListener}s. This is
+     * useful for things like gathering timing statistics.
+     */
+    public JqtiExtensionManager(final List<JqtiExtensionPackage<?>> jqtiExtensionPackages,
+            final List<? extends JqtiLifecycleListener> lifecycleListeners) {
         this.jqtiExtensionPackages = ObjectUtilities.unmodifiableList(jqtiExtensionPackages);
+        this.lifecycleListeners = lifecycleListeners!=null
+                ? ObjectUtilities.unmodifiableList(new ArrayList<JqtiLifecycleListener>(lifecycleListeners))
+                : Collections.<JqtiLifecycleListener>emptyList();
         this.extensionNamepaceInfoMap = ObjectUtilities.unmodifiableMap(buildExtensionNamespaceInfoMap());
     }
 
@@ -79,6 +94,10 @@ public final class JqtiExtensionManager {
         return jqtiExtensionPackages;
     }
 
+    public List<JqtiLifecycleListener> getLifecycleListeners() {
+        return lifecycleListeners;
+    }
+
     public Map<String, ExtensionNamespaceInfo> getExtensionNamepaceInfoMap() {
         return extensionNamepaceInfoMap;
     }
@@ -134,14 +153,25 @@ public final class JqtiExtensionManager {
     }
 
     /**
-     * Fires off a lifecycle event to all registered extension packages.
+     * Fires off a lifecycle event to all registered extension packages, followed by any
+     * additional {@link JqtiLifecycleListener}s, in the order they were registered.
      * <p>
-     * This should only be used INTERNALLY.
+     * This is called by JQTI+ itself around template, response and outcome processing
+     * (e.g. by {@link uk.ac.ed.ph.jqtiplus.running.ItemSessionController}), but may also be
+     * called by other code that drives these processes itself. The given source should be the
+     * Object doing the processing, and STARTING events should always be followed by the
+     * corresponding FINISHED event (e.g. in a finally block) so that listeners can pair them up.
+     * <p>
+     * Any {@link RuntimeException} thrown by a package or listener is passed back to the
+     * caller, and the remaining packages and listeners will not be notified.
      */
-    private void fireJqtiLifecycleEvent(final Object source, final JqtiLifecycleEventType eventType) {
+    public void fireJqtiLifecycleEvent(final Object source, final JqtiLifecycleEventType eventType) {
         for (final JqtiExtensionPackage<?> jqtiExtensionPackage : jqtiExtensionPackages) {
             jqtiExtensionPackage.lifecycleEvent(source, eventType);
         }
+        for (final JqtiLifecycleListener lifecycleListener : lifecycleListeners) {
+            lifecycleListener.lifecycleEvent(source, eventType);
+        }
     }
 
     //---------------------------------------------------------------------
@@ -234,6 +264,7 @@ public final class JqtiExtensionManager {
     public String toString() {
         return getClass().getSimpleName() + "@" + Integer.toHexString(System.identityHashCode(this))
                 + "(extensionPackages=" + jqtiExtensionPackages
+                + ",lifecycleListeners=" + lifecycleListeners
                 + ")";
     }
 
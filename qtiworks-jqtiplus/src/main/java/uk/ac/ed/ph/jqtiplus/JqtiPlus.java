@@ -36,6 +36,8 @@ package uk.ac.ed.ph.jqtiplus;
 import uk.ac.ed.ph.jqtiplus.node.item.template.processing.TemplateConstraint;
 import uk.ac.ed.ph.jqtiplus.running.ItemSessionControllerSettings;
 import uk.ac.ed.ph.jqtiplus.running.TestSessionControllerSettings;
+import uk.ac.ed.ph.jqtiplus.state.ItemProcessingMap;
+import uk.ac.ed.ph.jqtiplus.state.TestProcessingMap;
 
 /**
  * JQTI+ constants and definitions
@@ -49,6 +51,15 @@ public final class JqtiPlus {
 
     public static final String TOOL_VERSION = "1.0";
 
+    /**
+     * Version of the JQTI+ object model, as far as serialized copies of it are concerned.
+     * <p>
+     * This MUST be changed whenever changes to the node classes, {@link ItemProcessingMap}
+     * or {@link TestProcessingMap} mean that previously serialized instances of these should
+     * no longer be used.
+     */
+    public static final String MODEL_VERSION = TOOL_VERSION + "-4";
+
     /**
      * Default number of tries for running template processing rules before giving
      * up and using default values.
@@ -45,9 +45,11 @@ import uk.ac.ed.ph.jqtiplus.reading.QtiXmlInterpretationException;
 import uk.ac.ed.ph.jqtiplus.reading.QtiXmlReader;
 import uk.ac.ed.ph.jqtiplus.resolution.ResolvedAssessmentItem;
 import uk.ac.ed.ph.jqtiplus.resolution.ResolvedAssessmentTest;
+import uk.ac.ed.ph.jqtiplus.running.FixedRandomSeedSource;
 import uk.ac.ed.ph.jqtiplus.running.ItemProcessingInitializer;
 import uk.ac.ed.ph.jqtiplus.running.ItemSessionController;
 import uk.ac.ed.ph.jqtiplus.running.ItemSessionControllerSettings;
+import uk.ac.ed.ph.jqtiplus.running.RandomSeedSource;
 import uk.ac.ed.ph.jqtiplus.running.TestPlanner;
 import uk.ac.ed.ph.jqtiplus.running.TestProcessingInitializer;
 import uk.ac.ed.ph.jqtiplus.running.TestSessionController;
@@ -279,7 +281,39 @@ public final class SimpleJqtiFacade {
      * @return A {@link TestPlanner}, which can be used to compute the {@link TestPlan}.
      */
     public TestPlanner createTestPlanner(final TestProcessingMap testProcessingMap) {
-        return new TestPlanner(testProcessingMap);
+        return createTestPlanner(new TestSessionControllerSettings(), testProcessingMap);
+    }
+
+    /**
+     * Variant of {@link #createTestPlanner(TestProcessingMap)} that takes the seed for
+     * selection and ordering from the {@link RandomSeedSource} in the given
+     * {@link TestSessionControllerSettings}. Use a {@link FixedRandomSeedSource} here to get
+     * reproducible {@link TestPlan}s.
+     *
+     * @param testSessionControllerSettings {@link TestSessionControllerSettings} that will
+     *   be used to run the test, which must not be null
+     * @param testProcessingMap {@link TestProcessingMap} for the test being run
+     *
+     * @return A {@link TestPlanner}, which can be used to compute the {@link TestPlan}.
+     */
+    public TestPlanner createTestPlanner(final TestSessionControllerSettings testSessionControllerSettings,
+            final TestProcessingMap testProcessingMap) {
+        Assert.notNull(testSessionControllerSettings, "testSessionControllerSettings");
+        return new TestPlanner(testProcessingMap, testSessionControllerSettings.getRandomSeedSource().nextSeed());
+    }
+
+    /**
+     * Variant of {@link #createTestPlanner(TestProcessingMap)} using the given seed for
+     * selection and ordering. Use this to recreate a {@link TestPlan} using the seed
+     * recorded in {@link TestPlan#getRandomSeed()}.
+     *
+     * @param testProcessingMap {@link TestProcessingMap} for the test being run
+     * @param randomSeed seed to use
+     *
+     * @return A {@link TestPlanner}, which can be used to compute the {@link TestPlan}.
+     */
+    public TestPlanner createTestPlanner(final TestProcessingMap testProcessingMap, final long randomSeed) {
+        return new TestPlanner(testProcessingMap, randomSeed);
     }
 
     /**
@@ -33,6 +33,8 @@
  */
 package uk.ac.ed.ph.jqtiplus.exception;
 
+import uk.ac.ed.ph.jqtiplus.running.compiled.ProcessingSignal;
+
 /**
  * This exception is thrown if something requires any processing
  * (template, response, outcome) needs to be immediately stopped
@@ -40,6 +42,13 @@ package uk.ac.ed.ph.jqtiplus.exception;
  * Whilst normally it would be bad to use an exception for flow
  * control, this particular use is quite exceptional, and would
  * be very difficult to achieve in any other manner.
+ * <p>
+ * As these interrupts are part of normal processing (and may be thrown
+ * many times when retrying template processing), they do not record
+ * a stack trace, and the preallocated {@link #EXIT_INTERRUPT} and
+ * {@link TemplateProcessingInterrupt} instances should be thrown rather
+ * than creating new ones. (Compiled processing avoids exceptions
+ * altogether; see {@link ProcessingSignal}.)
  *
  * @author Jonathon Hare
  */
@@ -47,4 +56,15 @@ public class QtiProcessingInterrupt extends JqtiException {
 
     private static final long serialVersionUID = -3235593970976829701L;
 
+    /** Shared interrupt for immediately exiting response or outcome processing */
+    public static final QtiProcessingInterrupt EXIT_INTERRUPT = new QtiProcessingInterrupt();
+
+    /**
+     * Interrupts are used for flow control, so we don't bother filling in the
+     * (expensive and unused) stack trace.
+     */
+    @Override
+    public Throwable fillInStackTrace() {
+        return this;
+    }
 }
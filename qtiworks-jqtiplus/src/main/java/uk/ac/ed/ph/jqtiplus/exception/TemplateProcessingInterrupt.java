@@ -39,7 +39,10 @@ import uk.ac.ed.ph.jqtiplus.node.item.template.processing.TemplateConstraint;
 /**
  * Interrupt exception thrown to stop the normal flow of template processing, which
  * happens if {@link ExitTemplate} is encountered or if a {@link TemplateConstraint} fails.
- * 
+ * <p>
+ * Use the preallocated {@link #EXIT_TEMPLATE_INTERRUPT} and
+ * {@link #TEMPLATE_CONSTRAINT_FAILURE_INTERRUPT} instances rather than creating new ones.
+ *
  * @author David McKain
  */
 public final class TemplateProcessingInterrupt extends QtiProcessingInterrupt {
@@ -51,6 +54,12 @@ public final class TemplateProcessingInterrupt extends QtiProcessingInterrupt {
         TEMPLATE_CONSTRAINT_FAILURE, ;
     }
 
+    /** Shared interrupt thrown by {@link ExitTemplate} */
+    public static final TemplateProcessingInterrupt EXIT_TEMPLATE_INTERRUPT = new TemplateProcessingInterrupt(InterruptType.EXIT_TEMPLATE);
+
+    /** Shared interrupt thrown by a failed {@link TemplateConstraint} */
+    public static final TemplateProcessingInterrupt TEMPLATE_CONSTRAINT_FAILURE_INTERRUPT = new TemplateProcessingInterrupt(InterruptType.TEMPLATE_CONSTRAINT_FAILURE);
+
     private final InterruptType interruptType;
 
     public TemplateProcessingInterrupt(InterruptType interruptType) {
@@ -33,7 +33,6 @@
  */
 package uk.ac.ed.ph.jqtiplus.group;
 
-import uk.ac.ed.ph.jqtiplus.internal.util.ObjectUtilities;
 import uk.ac.ed.ph.jqtiplus.node.QtiNode;
 
 import java.util.Set;
@@ -47,6 +46,10 @@ public abstract class ComplexNodeGroup<P extends QtiNode, C extends QtiNode> ext
 
     private static final long serialVersionUID = 903238011893494959L;
 
+    /**
+     * Supported QTI classes. This is expected to be an unmodifiable, Serializable Set shared by
+     * all groups of the same kind, such as those built by the various "Type" enumerations.
+     */
     private final Set<String> supportedQtiClasses;
 
     /** Constructor supporting an arbitrary number of children */
@@ -57,7 +60,7 @@ public abstract class ComplexNodeGroup<P extends QtiNode, C extends QtiNode> ext
     public ComplexNodeGroup(final P parent, final String name, final Set<String> supportedQtiClasses,
             final int minimum, final Integer maximum) {
         super(parent, name, minimum, maximum);
-        this.supportedQtiClasses = ObjectUtilities.unmodifiableSet(supportedQtiClasses);
+        this.supportedQtiClasses = supportedQtiClasses;
     }
 
     @Override
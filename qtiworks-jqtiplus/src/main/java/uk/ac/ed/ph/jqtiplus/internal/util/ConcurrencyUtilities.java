@@ -0,0 +1,98 @@
+/* Copyright (c) 2012-2013, University of Edinburgh.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice, this
+ *   list of conditions and the following disclaimer in the documentation and/or
+ *   other materials provided with the distribution.
+ *
+ * * Neither the name of the University of Edinburgh nor the names of its
+ *   contributors may be used to endorse or promote products derived from this
+ *   software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ *
+ * This software is derived from (and contains code from) QTItools and MathAssessEngine.
+ * QTItools is (c) 2008, University of Southampton.
+ * MathAssessEngine is (c) 2010, University of Edinburgh.
+ */
+package uk.ac.ed.ph.jqtiplus.internal.util;
+
+import uk.ac.ed.ph.jqtiplus.exception.QtiLogicException;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Some helpers for running tasks on an {@link ExecutorService} and collecting the results
+ * in a predictable order.
+ *
+ * @author David McKain
+ */
+public final class ConcurrencyUtilities {
+
+    /**
+     * Runs the given tasks using the given {@link ExecutorService}, returning their results
+     * in the same order as the tasks.
+     * <p>
+     * Any {@link RuntimeException} or {@link Error} thrown by a task is rethrown here (after
+     * cancelling the remaining tasks), so the caller sees the same behaviour as if the tasks
+     * had been run in turn.
+     */
+    public static <T> List<T> invokeAllInOrder(final ExecutorService executorService, final List<? extends Callable<T>> tasks) {
+        Assert.notNull(executorService, "executorService");
+        Assert.notNull(tasks, "tasks");
+        final List<Future<T>> futures = new ArrayList<Future<T>>(tasks.size());
+        for (final Callable<T> task : tasks) {
+            futures.add(executorService.submit(task));
+        }
+        final List<T> results = new ArrayList<T>(tasks.size());
+        try {
+            for (final Future<T> future : futures) {
+                results.add(future.get());
+            }
+        }
+        catch (final InterruptedException e) {
+            cancelAll(futures);
+            Thread.currentThread().interrupt();
+            throw new QtiLogicException("Interrupted while waiting for tasks to complete", e);
+        }
+        catch (final ExecutionException e) {
+            cancelAll(futures);
+            final Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            else if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new QtiLogicException("Unexpected checked Exception thrown by task", cause);
+        }
+        return results;
+    }
+
+    private static void cancelAll(final List<? extends Future<?>> futures) {
+        for (final Future<?> future : futures) {
+            future.cancel(true);
+        }
+    }
+}
@@ -87,6 +87,15 @@ public final class ObjectUtilities {
         return result;
     }
 
+    /**
+     * Returns an unmodifiable copy of the given Set. Unlike {@link #unmodifiableSet(Set)},
+     * the result is always {@link java.io.Serializable}, so this is suitable for wrapping
+     * things like the key Sets of static lookup Maps.
+     */
+    public static <T> Set<T> unmodifiableSetCopy(final Set<T> input) {
+        return Collections.unmodifiableSet(new HashSet<T>(input));
+    }
+
     public static <K,V> Map<K,V> unmodifiableMap(final Map<K,V> input) {
         Map<K,V> result;
         if (input!=null && !input.isEmpty()) {
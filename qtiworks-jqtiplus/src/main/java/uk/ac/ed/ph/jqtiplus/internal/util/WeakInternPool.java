@@ -0,0 +1,125 @@
+/* Copyright (c) 2012-2013, University of Edinburgh.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice, this
+ *   list of conditions and the following disclaimer in the documentation and/or
+ *   other materials provided with the distribution.
+ *
+ * * Neither the name of the University of Edinburgh nor the names of its
+ *   contributors may be used to endorse or promote products derived from this
+ *   software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ *
+ * This software is derived from (and contains code from) QTItools and MathAssessEngine.
+ * QTItools is (c) 2008, University of Southampton.
+ * MathAssessEngine is (c) 2010, University of Edinburgh.
+ */
+package uk.ac.ed.ph.jqtiplus.internal.util;
+
+import java.lang.ref.WeakReference;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * Bounded pool of canonical instances of small immutable value Objects, keyed on some
+ * natural key (typically a String held by the value itself).
+ * <p>
+ * Both keys and values are only weakly referenced, so entries disappear once the value is
+ * no longer in use elsewhere. (For this to work, the key should be reachable from the value,
+ * and not the other way round.) Once the pool is full, new values are simply not pooled,
+ * so callers always get a usable result.
+ * <p>
+ * The pool is split into stripes to reduce lock contention.
+ * <p>
+ * This is safe for use by multiple threads.
+ *
+ * @param <K> type of key
+ * @param <V> type of pooled value
+ *
+ * @author David McKain
+ */
+public final class WeakInternPool<K, V> {
+
+    private static final int STRIPE_COUNT = 16;
+
+    private final int maxStripeSize;
+    private final Map<K, WeakReference<V>>[] stripes;
+
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    public WeakInternPool(final int maxSize) {
+        if (maxSize < 0) {
+            throw new IllegalArgumentException("maxSize must not be negative");
+        }
+        this.maxStripeSize = (maxSize + STRIPE_COUNT - 1) / STRIPE_COUNT;
+        this.stripes = new Map[STRIPE_COUNT];
+        for (int i=0; i<STRIPE_COUNT; i++) {
+            stripes[i] = new WeakHashMap<K, WeakReference<V>>();
+        }
+    }
+
+    /**
+     * Returns the pooled value for the given key, or null if there is no such value.
+     */
+    public V get(final K key) {
+        final Map<K, WeakReference<V>> stripe = stripeFor(key);
+        synchronized (stripe) {
+            final WeakReference<V> reference = stripe.get(key);
+            return reference!=null ? reference.get() : null;
+        }
+    }
+
+    /**
+     * Returns the pooled value for the given key if there is one, otherwise pools and returns
+     * the given value (provided there is room).
+     */
+    public V intern(final K key, final V value) {
+        final Map<K, WeakReference<V>> stripe = stripeFor(key);
+        synchronized (stripe) {
+            final WeakReference<V> reference = stripe.get(key);
+            final V existing = reference!=null ? reference.get() : null;
+            if (existing!=null) {
+                return existing;
+            }
+            if (reference!=null || stripe.size() < maxStripeSize) {
+                stripe.put(key, new WeakReference<V>(value));
+            }
+            return value;
+        }
+    }
+
+    /**
+     * Returns the (approximate) number of values currently pooled.
+     */
+    public int size() {
+        int result = 0;
+        for (final Map<K, WeakReference<V>> stripe : stripes) {
+            synchronized (stripe) {
+                result += stripe.size();
+            }
+        }
+        return result;
+    }
+
+    private Map<K, WeakReference<V>> stripeFor(final K key) {
+        int hash = key.hashCode();
+        hash ^= (hash >>> 16);
+        return stripes[(hash ^ (hash >>> 4)) & (STRIPE_COUNT - 1)];
+    }
+}
@@ -35,6 +35,7 @@ package uk.ac.ed.ph.jqtiplus.node.content;
 
 import uk.ac.ed.ph.jqtiplus.exception.QtiIllegalChildException;
 import uk.ac.ed.ph.jqtiplus.exception.QtiLogicException;
+import uk.ac.ed.ph.jqtiplus.internal.util.ObjectUtilities;
 import uk.ac.ed.ph.jqtiplus.node.AbstractNode;
 import uk.ac.ed.ph.jqtiplus.node.QtiNode;
 import uk.ac.ed.ph.jqtiplus.node.content.basic.Block;
@@ -1127,6 +1128,28 @@ public enum ContentType {
 
     private static Map<String, ContentType> interactionTypes;
 
+    private static Set<String> contentQtiClassNames;
+
+    private static Set<String> blockQtiClassNames;
+
+    private static Set<String> flowQtiClassNames;
+
+    private static Set<String> inlineQtiClassNames;
+
+    private static Set<String> objectFlowQtiClassNames;
+
+    private static Set<String> inlineStaticQtiClassNames;
+
+    private static Set<String> flowStaticQtiClassNames;
+
+    private static Set<String> textOrVariableQtiClassNames;
+
+    private static Set<String> blockStaticQtiClassNames;
+
+    private static Set<String> gapChoiceQtiClassNames;
+
+    private static Set<String> interactionQtiClassNames;
+
     static {
         contentTypes = new HashMap<String, ContentType>();
         for (final ContentType type : ContentType.values()) {
@@ -1202,6 +1225,18 @@ public enum ContentType {
                 interactionTypes.put(type.qtiClassName, type);
             }
         }
+
+        contentQtiClassNames = ObjectUtilities.unmodifiableSetCopy(contentTypes.keySet());
+        blockQtiClassNames = ObjectUtilities.unmodifiableSetCopy(blockTypes.keySet());
+        flowQtiClassNames = ObjectUtilities.unmodifiableSetCopy(flowTypes.keySet());
+        inlineQtiClassNames = ObjectUtilities.unmodifiableSetCopy(inlineTypes.keySet());
+        objectFlowQtiClassNames = ObjectUtilities.unmodifiableSetCopy(objectFlowTypes.keySet());
+        inlineStaticQtiClassNames = ObjectUtilities.unmodifiableSetCopy(inlineStaticTypes.keySet());
+        flowStaticQtiClassNames = ObjectUtilities.unmodifiableSetCopy(flowStaticTypes.keySet());
+        textOrVariableQtiClassNames = ObjectUtilities.unmodifiableSetCopy(textOrVariableTypes.keySet());
+        blockStaticQtiClassNames = ObjectUtilities.unmodifiableSetCopy(blockStaticTypes.keySet());
+        gapChoiceQtiClassNames = ObjectUtilities.unmodifiableSetCopy(gapChoiceTypes.keySet());
+        interactionQtiClassNames = ObjectUtilities.unmodifiableSetCopy(interactionTypes.keySet());
     }
 
     /**
@@ -1335,47 +1370,47 @@ public enum ContentType {
     }
 
     public static Set<String> getQtiClassNames() {
-        return contentTypes.keySet();
+        return contentQtiClassNames;
     }
 
     public static Set<String> getBlockQtiClassNames() {
-        return blockTypes.keySet();
+        return blockQtiClassNames;
     }
 
     public static Set<String> getFlowQtiClassNames() {
-        return flowTypes.keySet();
+        return flowQtiClassNames;
     }
 
     public static Set<String> getInlineQtiClassNames() {
-        return inlineTypes.keySet();
+        return inlineQtiClassNames;
     }
 
     public static Set<String> getObjectFlowQtiClassNames() {
-        return objectFlowTypes.keySet();
+        return objectFlowQtiClassNames;
     }
 
     public static Set<String> getInlineStaticQtiClassNames() {
-        return inlineStaticTypes.keySet();
+        return inlineStaticQtiClassNames;
     }
 
     public static Set<String> getFlowStaticQtiClassNames() {
-        return flowStaticTypes.keySet();
+        return flowStaticQtiClassNames;
     }
 
     public static Set<String> getTextOrVariableQtiClassNames() {
-        return textOrVariableTypes.keySet();
+        return textOrVariableQtiClassNames;
     }
 
     public static Set<String> getBlockStaticQtiClassNames() {
-        return blockStaticTypes.keySet();
+        return blockStaticQtiClassNames;
     }
 
     public static Set<String> getGapChoiceQtiClassNames() {
-        return gapChoiceTypes.keySet();
+        return gapChoiceQtiClassNames;
     }
 
     public static Set<String> getInteractionTypeQtiClassNames() {
-        return interactionTypes.keySet();
+        return interactionQtiClassNames;
     }
 
     /**
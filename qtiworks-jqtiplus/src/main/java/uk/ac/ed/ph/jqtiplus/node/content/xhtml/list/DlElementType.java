@@ -34,6 +34,7 @@
 package uk.ac.ed.ph.jqtiplus.node.content.xhtml.list;
 
 import uk.ac.ed.ph.jqtiplus.exception.QtiIllegalChildException;
+import uk.ac.ed.ph.jqtiplus.internal.util.ObjectUtilities;
 import uk.ac.ed.ph.jqtiplus.node.content.BodyElement;
 
 import java.util.HashMap;
@@ -69,12 +70,16 @@ public enum DlElementType {
 
     private static Map<String, DlElementType> dlElementTypes;
 
+    private static Set<String> dlElementQtiClassNames;
+
     static {
         dlElementTypes = new HashMap<String, DlElementType>();
 
         for (final DlElementType dlElementType : DlElementType.values()) {
             dlElementTypes.put(dlElementType.dlElementType, dlElementType);
         }
+
+        dlElementQtiClassNames = ObjectUtilities.unmodifiableSetCopy(dlElementTypes.keySet());
     }
 
     private String dlElementType;
@@ -116,7 +121,7 @@ public enum DlElementType {
     }
 
     public static Set<String> getQtiClassNames() {
-        return dlElementTypes.keySet();
+        return dlElementQtiClassNames;
     }
 
     /**
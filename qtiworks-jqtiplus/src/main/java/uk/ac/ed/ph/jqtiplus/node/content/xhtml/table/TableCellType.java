@@ -34,6 +34,7 @@
 package uk.ac.ed.ph.jqtiplus.node.content.xhtml.table;
 
 import uk.ac.ed.ph.jqtiplus.exception.QtiIllegalChildException;
+import uk.ac.ed.ph.jqtiplus.internal.util.ObjectUtilities;
 
 import java.util.HashMap;
 import java.util.Map;
@@ -68,12 +69,16 @@ public enum TableCellType {
 
     private static Map<String, TableCellType> tableCellTypes;
 
+    private static Set<String> tableCellQtiClassNames;
+
     static {
         tableCellTypes = new HashMap<String, TableCellType>();
 
         for (final TableCellType tableCellType : TableCellType.values()) {
             tableCellTypes.put(tableCellType.tableCellType, tableCellType);
         }
+
+        tableCellQtiClassNames = ObjectUtilities.unmodifiableSetCopy(tableCellTypes.keySet());
     }
 
     private String tableCellType;
@@ -132,6 +137,6 @@ public enum TableCellType {
     }
 
     public static Set<String> getQtiClassNames() {
-        return tableCellTypes.keySet();
+        return tableCellQtiClassNames;
     }
 }
@@ -34,6 +34,7 @@
 package uk.ac.ed.ph.jqtiplus.node.expression;
 
 import uk.ac.ed.ph.jqtiplus.running.ProcessingContext;
+import uk.ac.ed.ph.jqtiplus.running.compiled.ProcessingCompiler;
 import uk.ac.ed.ph.jqtiplus.value.Value;
 
 
@@ -69,4 +70,17 @@ public abstract class AbstractFunctionalExpression extends AbstractExpression {
      * @return result of evaluation, which must not be null
      */
     protected abstract Value evaluateValidSelf(ProcessingContext context, Value[] childValues, int depth);
+
+    /**
+     * Evaluates this expression using child values that have already been computed by the
+     * caller. This is used by {@link ProcessingCompiler}, which evaluates the children itself
+     * and only does so when the subject item or test is known to be valid.
+     *
+     * @param childValues values of the child expressions, in document order
+     *
+     * @return result of evaluation, which must not be null
+     */
+    public final Value evaluateValidSelf(final ProcessingContext context, final Value[] childValues) {
+        return evaluateValidSelf(context, childValues, 0);
+    }
 }
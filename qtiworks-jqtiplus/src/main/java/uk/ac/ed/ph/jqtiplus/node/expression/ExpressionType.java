@@ -35,6 +35,7 @@ package uk.ac.ed.ph.jqtiplus.node.expression;
 
 import uk.ac.ed.ph.jqtiplus.exception.QtiIllegalChildException;
 import uk.ac.ed.ph.jqtiplus.exception.QtiLogicException;
+import uk.ac.ed.ph.jqtiplus.internal.util.ObjectUtilities;
 import uk.ac.ed.ph.jqtiplus.node.expression.general.BaseValue;
 import uk.ac.ed.ph.jqtiplus.node.expression.general.Correct;
 import uk.ac.ed.ph.jqtiplus.node.expression.general.Default;
@@ -1254,11 +1255,15 @@ public enum ExpressionType {
 
     private static Map<String, ExpressionType> expressionTypes;
 
+    private static Set<String> expressionQtiClassNames;
+
     static {
         expressionTypes = new HashMap<String, ExpressionType>();
         for (final ExpressionType expressionType : ExpressionType.values()) {
             expressionTypes.put(expressionType.expressionType, expressionType);
         }
+
+        expressionQtiClassNames = ObjectUtilities.unmodifiableSetCopy(expressionTypes.keySet());
     }
 
     private final String expressionType;
@@ -1382,7 +1387,7 @@ public enum ExpressionType {
     }
 
     public static Set<String> getQtiClassNames() {
-        return expressionTypes.keySet();
+        return expressionQtiClassNames;
     }
 
     /**
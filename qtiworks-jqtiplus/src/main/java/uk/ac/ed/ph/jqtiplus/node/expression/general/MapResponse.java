@@ -36,9 +36,11 @@ package uk.ac.ed.ph.jqtiplus.node.expression.general;
 import uk.ac.ed.ph.jqtiplus.attribute.value.IdentifierAttribute;
 import uk.ac.ed.ph.jqtiplus.node.expression.AbstractFunctionalExpression;
 import uk.ac.ed.ph.jqtiplus.node.expression.ExpressionParent;
+import uk.ac.ed.ph.jqtiplus.node.item.response.declaration.MappingIndex;
 import uk.ac.ed.ph.jqtiplus.node.item.response.declaration.ResponseDeclaration;
 import uk.ac.ed.ph.jqtiplus.node.shared.VariableDeclaration;
 import uk.ac.ed.ph.jqtiplus.node.shared.VariableType;
+import uk.ac.ed.ph.jqtiplus.running.ItemProcessingContext;
 import uk.ac.ed.ph.jqtiplus.running.ProcessingContext;
 import uk.ac.ed.ph.jqtiplus.types.Identifier;
 import uk.ac.ed.ph.jqtiplus.validation.ValidationContext;
@@ -110,6 +112,13 @@ public final class MapResponse extends AbstractFunctionalExpression {
         final ResponseDeclaration responseDeclaration = (ResponseDeclaration) context.ensureVariableDeclaration(referenceIdentifier, VariableType.RESPONSE);
         final Value responseValue = context.evaluateVariableValue(referenceIdentifier, VariableType.RESPONSE);
 
+        /* Use precomputed index if available */
+        if (context instanceof ItemProcessingContext) {
+            final MappingIndex mappingIndex = ((ItemProcessingContext) context).getItemProcessingMap().getMappingIndex(referenceIdentifier);
+            if (mappingIndex!=null) {
+                return responseDeclaration.getMapping().computeTargetValue(responseValue, mappingIndex);
+            }
+        }
         return responseDeclaration.getMapping().computeTargetValue(responseValue);
     }
 }
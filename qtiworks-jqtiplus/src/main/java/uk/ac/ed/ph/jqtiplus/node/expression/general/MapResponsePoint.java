@@ -36,9 +36,11 @@ package uk.ac.ed.ph.jqtiplus.node.expression.general;
 import uk.ac.ed.ph.jqtiplus.attribute.value.IdentifierAttribute;
 import uk.ac.ed.ph.jqtiplus.node.expression.AbstractFunctionalExpression;
 import uk.ac.ed.ph.jqtiplus.node.expression.ExpressionParent;
+import uk.ac.ed.ph.jqtiplus.node.item.response.declaration.AreaMappingIndex;
 import uk.ac.ed.ph.jqtiplus.node.item.response.declaration.ResponseDeclaration;
 import uk.ac.ed.ph.jqtiplus.node.shared.VariableDeclaration;
 import uk.ac.ed.ph.jqtiplus.node.shared.VariableType;
+import uk.ac.ed.ph.jqtiplus.running.ItemProcessingContext;
 import uk.ac.ed.ph.jqtiplus.running.ProcessingContext;
 import uk.ac.ed.ph.jqtiplus.types.Identifier;
 import uk.ac.ed.ph.jqtiplus.validation.ValidationContext;
@@ -105,6 +107,13 @@ public final class MapResponsePoint extends AbstractFunctionalExpression {
         final ResponseDeclaration responseDeclaration = (ResponseDeclaration) context.ensureVariableDeclaration(responseIdentifier, VariableType.RESPONSE);
         final Value responseValue = context.evaluateVariableValue(responseIdentifier, VariableType.RESPONSE);
 
+        /* Use precomputed index if available */
+        if (context instanceof ItemProcessingContext) {
+            final AreaMappingIndex areaMappingIndex = ((ItemProcessingContext) context).getItemProcessingMap().getAreaMappingIndex(responseIdentifier);
+            if (areaMappingIndex!=null) {
+                return responseDeclaration.getAreaMapping().getTargetValue(responseValue, areaMappingIndex);
+            }
+        }
         return responseDeclaration.getAreaMapping().getTargetValue(responseValue);
     }
 }
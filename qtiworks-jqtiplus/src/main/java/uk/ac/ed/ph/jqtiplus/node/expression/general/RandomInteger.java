@@ -156,6 +156,6 @@ public class RandomInteger extends AbstractFunctionalExpression {
         final int randomNumber = randomGenerator.nextInt((max - min) / step + 1);
         final int randomInteger = min + randomNumber * step;
 
-        return new IntegerValue(randomInteger);
+        return IntegerValue.valueOf(randomInteger);
     }
 }
@@ -0,0 +1,153 @@
+/* Copyright (c) 2012-2013, University of Edinburgh.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice, this
+ *   list of conditions and the following disclaimer in the documentation and/or
+ *   other materials provided with the distribution.
+ *
+ * * Neither the name of the University of Edinburgh nor the names of its
+ *   contributors may be used to endorse or promote products derived from this
+ *   software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ *
+ * This software is derived from (and contains code from) QTItools and MathAssessEngine.
+ * QTItools is (c) 2008, University of Southampton.
+ * MathAssessEngine is (c) 2010, University of Edinburgh.
+ */
+package uk.ac.ed.ph.jqtiplus.node.expression.operator;
+
+import uk.ac.ed.ph.jqtiplus.internal.util.ObjectUtilities;
+import uk.ac.ed.ph.jqtiplus.value.PointValue;
+
+import java.io.Serializable;
+import java.util.List;
+
+/**
+ * Immutable pairing of a {@link Shape} and its coordinates, together with a precomputed
+ * bounding box used to reject points quickly before calling {@link Shape#isInside(int[], PointValue)}.
+ * <p>
+ * The bounding box is only used for shapes where {@link Shape#isInside(int[], PointValue)} can
+ * never return true outside it. {@link Shape#POLY} is deliberately not bounded, as its angle
+ * summing algorithm can (harmlessly but observably) report points collinear with an edge as being
+ * inside, and we want results to be identical to calling {@link Shape#isInside(int[], PointValue)}
+ * directly. Similarly, shapes with the wrong number of coordinates are left unbounded so that
+ * they fail in exactly the same way.
+ * <p>
+ * Usage: an instance of this class can be safely used by multiple Threads.
+ *
+ * @author David McKain
+ */
+public final class BoundedShape implements Serializable {
+
+    private static final long serialVersionUID = -2920356154935717036L;
+
+    private final Shape shape;
+    private final int[] coords;
+    private final boolean bounded;
+    private final int minX;
+    private final int minY;
+    private final int maxX;
+    private final int maxY;
+
+    public BoundedShape(final Shape shape, final List<Integer> coordinates) {
+        this(shape, convertCoordinates(coordinates));
+    }
+
+    public BoundedShape(final Shape shape, final int[] coords) {
+        this.shape = shape;
+        this.coords = coords;
+        if (shape==Shape.RECT && coords.length==4) {
+            this.bounded = true;
+            this.minX = coords[0];
+            this.minY = coords[1];
+            this.maxX = coords[2];
+            this.maxY = coords[3];
+        }
+        else if (shape==Shape.CIRCLE && coords.length==3) {
+            final int radius = Math.abs(coords[2]);
+            this.bounded = true;
+            this.minX = coords[0] - radius;
+            this.minY = coords[1] - radius;
+            this.maxX = coords[0] + radius;
+            this.maxY = coords[1] + radius;
+        }
+        else if (shape==Shape.ELLIPSE && coords.length==4) {
+            final int hRadius = Math.abs(coords[2]);
+            final int vRadius = Math.abs(coords[3]);
+            this.bounded = true;
+            this.minX = coords[0] - hRadius;
+            this.minY = coords[1] - vRadius;
+            this.maxX = coords[0] + hRadius;
+            this.maxY = coords[1] + vRadius;
+        }
+        else {
+            this.bounded = false;
+            this.minX = Integer.MIN_VALUE;
+            this.minY = Integer.MIN_VALUE;
+            this.maxX = Integer.MAX_VALUE;
+            this.maxY = Integer.MAX_VALUE;
+        }
+    }
+
+    public Shape getShape() {
+        return shape;
+    }
+
+    public boolean isBounded() {
+        return bounded;
+    }
+
+    /**
+     * Returns true if the given point is inside this shape, giving exactly the same result
+     * as {@link Shape#isInside(int[], PointValue)}.
+     */
+    public boolean isInside(final PointValue point) {
+        if (bounded) {
+            final int x = point.horizontalValue();
+            final int y = point.verticalValue();
+            if (x < minX || x > maxX || y < minY || y > maxY) {
+                return false;
+            }
+        }
+        return shape.isInside(coords, point);
+    }
+
+    /**
+     * Converts list of coordinates to array of coordinates.
+     *
+     * @param coords list of coordinates
+     * @return array of coordinates
+     */
+    public static int[] convertCoordinates(final List<Integer> coords) {
+        if (coords==null) {
+            return new int[0];
+        }
+        final int[] result = new int[coords.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = coords.get(i).intValue();
+        }
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return ObjectUtilities.beanToString(this);
+    }
+}
@@ -68,6 +68,6 @@ public final class ContainerSize extends AbstractSimpleFunctionalExpression {
         }
 
         final int size = ((ListValue) childValues[0]).size();
-        return new IntegerValue(size);
+        return IntegerValue.valueOf(size);
     }
 }
@@ -92,6 +92,6 @@ public final class Gcd extends AbstractSimpleFunctionalExpression {
                 }
             }
         }
-        return runningGcd!=null ? new IntegerValue(runningGcd.intValue()) : IntegerValue.ZERO;
+        return runningGcd!=null ? IntegerValue.valueOf(runningGcd.intValue()) : IntegerValue.ZERO;
     }
 }
@@ -103,7 +103,7 @@ public final class Inside extends AbstractSimpleFunctionalExpression {
         super.validateThis(context);
         if (getShape() != null) {
             getShape().validateCoords(context, getAttributes().getCoordsAttribute(ATTR_COORDINATES_NAME),
-                   convertCoordinates(getCoordinates()));
+                   BoundedShape.convertCoordinates(getCoordinates()));
         }
     }
 
@@ -115,17 +115,17 @@ public final class Inside extends AbstractSimpleFunctionalExpression {
 
         boolean result = false;
 
-        final int[] coords = convertCoordinates(getCoordinates());
+        final BoundedShape boundedShape = new BoundedShape(getShape(), getCoordinates());
 
         if (childValues[0].getCardinality().isSingle()) {
             final PointValue point = (PointValue) childValues[0];
-            result = getShape().isInside(coords, point);
+            result = boundedShape.isInside(point);
         }
         else {
             final ListValue list = (ListValue) childValues[0];
             for (int i = 0; i < list.size(); i++) {
                 final PointValue point = (PointValue) list.get(i);
-                if (getShape().isInside(coords, point)) {
+                if (boundedShape.isInside(point)) {
                     result = true;
                     break;
                 }
@@ -134,19 +134,4 @@ public final class Inside extends AbstractSimpleFunctionalExpression {
 
         return BooleanValue.valueOf(result);
     }
-
-    /**
-     * Converts list of coordinates to array of coordinates.
-     *
-     * @param coords list of coordinates
-     * @return array of coordinates
-     */
-    private int[] convertCoordinates(final List<Integer> coords) {
-        final int[] result = new int[coords.size()];
-        for (int i = 0; i < result.length; i++) {
-            result[i] = coords.get(i).intValue();
-        }
-
-        return result;
-    }
 }
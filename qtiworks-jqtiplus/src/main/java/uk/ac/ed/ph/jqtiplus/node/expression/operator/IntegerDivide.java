@@ -75,6 +75,6 @@ public final class IntegerDivide extends AbstractSimpleFunctionalExpression {
 
         final int result = (int) Math.floor(firstNumber / (double) secondNumber);
 
-        return new IntegerValue(result);
+        return IntegerValue.valueOf(result);
     }
 }
@@ -78,6 +78,6 @@ public final class IntegerModulus extends AbstractSimpleFunctionalExpression {
 
         final int result = firstNumber - division * secondNumber;
 
-        return new IntegerValue(result);
+        return IntegerValue.valueOf(result);
     }
 }
@@ -92,7 +92,7 @@ public final class Lcm extends AbstractSimpleFunctionalExpression {
                 }
             }
         }
-        return new IntegerValue(runningLcm.intValue());
+        return IntegerValue.valueOf(runningLcm.intValue());
     }
 
     private static BigInteger lcm(final BigInteger a, final BigInteger b) {
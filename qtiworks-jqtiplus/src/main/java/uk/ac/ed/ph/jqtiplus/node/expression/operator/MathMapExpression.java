@@ -87,7 +87,7 @@ public abstract class MathMapExpression extends AbstractSimpleFunctionalExpressi
             }
         }
 
-        return baseType.isInteger() ? new IntegerValue((int) running) : new FloatValue(running);
+        return baseType.isInteger() ? IntegerValue.valueOf((int) running) : new FloatValue(running);
     }
 
     /** Subclasses should return the initial running "total" to use */
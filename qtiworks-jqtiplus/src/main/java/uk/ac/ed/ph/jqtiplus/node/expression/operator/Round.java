@@ -69,6 +69,6 @@ public final class Round extends AbstractSimpleFunctionalExpression {
         }
 
         final double number = ((FloatValue) childValues[0]).doubleValue();
-        return new IntegerValue((int) Math.round(number));
+        return IntegerValue.valueOf((int) Math.round(number));
     }
 }
@@ -80,7 +80,7 @@ public class Subtract extends AbstractSimpleFunctionalExpression {
 
         Value result;
         if (firstNumber.getBaseType().isInteger() && secondNumber.getBaseType().isInteger()) {
-            result = new IntegerValue(firstNumber.intValue() - secondNumber.intValue());
+            result = IntegerValue.valueOf(firstNumber.intValue() - secondNumber.intValue());
         }
         else {
             result = new FloatValue(firstNumber.doubleValue() - secondNumber.doubleValue());
@@ -76,6 +76,6 @@ public final class Truncate extends AbstractSimpleFunctionalExpression {
         else {
             result = (int) Math.ceil(number);
         }
-        return new IntegerValue(result);
+        return IntegerValue.valueOf(result);
     }
 }
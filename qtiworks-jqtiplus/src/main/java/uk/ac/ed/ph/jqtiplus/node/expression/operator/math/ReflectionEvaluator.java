@@ -69,7 +69,7 @@ final class ReflectionEvaluator implements MathOperatorEvaluator {
             final Class<?> mathClass = Class.forName("java.lang.Math");
             final Method method = mathClass.getMethod(methodName, Double.TYPE);
             final double result = ((Double) method.invoke(mathClass, Double.valueOf(arguments[0]))).doubleValue();
-            return wantInteger ? new IntegerValue((int) result) : new FloatValue(result);
+            return wantInteger ? IntegerValue.valueOf((int) result) : new FloatValue(result);
         }
         catch (final Exception e) {
             throw new QtiLogicException("Unexpected error evaluating math operator", e);
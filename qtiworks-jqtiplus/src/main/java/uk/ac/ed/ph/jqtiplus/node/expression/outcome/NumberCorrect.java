@@ -73,6 +73,6 @@ public final class NumberCorrect extends ItemSubset {
                 correctCount++;
             }
         }
-        return new IntegerValue(correctCount);
+        return IntegerValue.valueOf(correctCount);
     }
 }
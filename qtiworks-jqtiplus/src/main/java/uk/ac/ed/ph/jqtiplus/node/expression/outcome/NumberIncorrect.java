@@ -74,6 +74,6 @@ public final class NumberIncorrect extends ItemSubset {
                 incorrectCount++;
             }
         }
-        return new IntegerValue(incorrectCount);
+        return IntegerValue.valueOf(incorrectCount);
     }
 }
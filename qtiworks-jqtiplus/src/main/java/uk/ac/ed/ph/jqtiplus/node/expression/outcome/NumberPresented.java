@@ -73,6 +73,6 @@ public final class NumberPresented extends ItemSubset {
                 presentedCount++;
             }
         }
-        return new IntegerValue(presentedCount);
+        return IntegerValue.valueOf(presentedCount);
     }
 }
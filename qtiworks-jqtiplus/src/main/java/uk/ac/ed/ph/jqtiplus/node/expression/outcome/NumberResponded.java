@@ -74,6 +74,6 @@ public final class NumberResponded extends ItemSubset {
                 respondedCount++;
             }
         }
-        return new IntegerValue(respondedCount);
+        return IntegerValue.valueOf(respondedCount);
     }
 }
@@ -65,6 +65,6 @@ public final class NumberSelected extends ItemSubset {
 
     @Override
     protected Value handleSubset(final TestProcessingContext testProcessingContext, final List<TestPlanNode> matchedTestPlanNodes) {
-        return new IntegerValue(matchedTestPlanNodes.size());
+        return IntegerValue.valueOf(matchedTestPlanNodes.size());
     }
 }
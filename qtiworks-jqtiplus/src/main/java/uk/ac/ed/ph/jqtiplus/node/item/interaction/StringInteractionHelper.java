@@ -84,15 +84,15 @@ public final class StringInteractionHelper {
             recordBuilder.put(StringInteraction.KEY_INTEGER_VALUE_NAME, IntegerValue.parseString(responseStringAfterExp, base));
         }
 
-        recordBuilder.put(StringInteraction.KEY_LEFT_DIGITS_NAME, new IntegerValue(leftPart.length()));
-        recordBuilder.put(StringInteraction.KEY_RIGHT_DIGITS_NAME, new IntegerValue(rightPart.length()));
+        recordBuilder.put(StringInteraction.KEY_LEFT_DIGITS_NAME, IntegerValue.valueOf(leftPart.length()));
+        recordBuilder.put(StringInteraction.KEY_RIGHT_DIGITS_NAME, IntegerValue.valueOf(rightPart.length()));
 
         if (exponentIndicator != null) {
             int frac = rightPart.length();
             if (exponentPart.length() > 0) {
                 frac -= Integer.parseInt(exponentPart);
             }
-            recordBuilder.put(StringInteraction.KEY_NDP_NAME, new IntegerValue(frac));
+            recordBuilder.put(StringInteraction.KEY_NDP_NAME, IntegerValue.valueOf(frac));
         }
         else {
             recordBuilder.put(StringInteraction.KEY_NDP_NAME, IntegerValue.parseString(rightPart.isEmpty() ? "0" : rightPart));
@@ -100,7 +100,7 @@ public final class StringInteractionHelper {
 
         int nsf = (leftPart.isEmpty()) ? 0 : new Integer(leftPart).toString().length();
         nsf += rightPart.length();
-        recordBuilder.put(StringInteraction.KEY_NSF_NAME, new IntegerValue(nsf));
+        recordBuilder.put(StringInteraction.KEY_NSF_NAME, IntegerValue.valueOf(nsf));
 
         if (exponentIndicator != null) {
             recordBuilder.put(StringInteraction.KEY_EXPONENT_NAME, IntegerValue.parseString(exponentPart.isEmpty() ? "0" : exponentPart));
@@ -35,6 +35,7 @@ package uk.ac.ed.ph.jqtiplus.node.item.response.declaration;
 
 import uk.ac.ed.ph.jqtiplus.attribute.value.FloatAttribute;
 import uk.ac.ed.ph.jqtiplus.group.item.response.declaration.AreaMapEntryGroup;
+import uk.ac.ed.ph.jqtiplus.internal.util.Assert;
 import uk.ac.ed.ph.jqtiplus.node.AbstractNode;
 import uk.ac.ed.ph.jqtiplus.node.expression.general.MapResponsePoint;
 import uk.ac.ed.ph.jqtiplus.validation.ValidationContext;
@@ -150,6 +151,19 @@ public final class AreaMapping extends AbstractNode {
      * @return target value for given source value
      */
     public FloatValue getTargetValue(final Value sourceValue) {
+        return getTargetValue(sourceValue, new AreaMappingIndex(this));
+    }
+
+    /**
+     * Gets target value for given source value, using the given precomputed {@link AreaMappingIndex}
+     * to test points against each area.
+     *
+     * @param sourceValue given source value
+     * @param areaMappingIndex index built from this {@link AreaMapping}, which must not be null
+     * @return target value for given source value
+     */
+    public FloatValue getTargetValue(final Value sourceValue, final AreaMappingIndex areaMappingIndex) {
+        Assert.notNull(areaMappingIndex, "areaMappingIndex");
         if (sourceValue != null) {
             /*
              * The transformation is similar to mapResponse except that
@@ -161,10 +175,9 @@ public final class AreaMapping extends AbstractNode {
              */
             final ResponseDeclaration parent = getParent();
             if (parent.hasCardinality(Cardinality.SINGLE)) {
-                for (final AreaMapEntry entry : getAreaMapEntries()) {
-                    if (entry.getShape().isInside(convertCoordinates(entry.getCoordinates()), (PointValue) sourceValue)) {
-                        return new FloatValue(applyConstraints(entry.getMappedValue()));
-                    }
+                final int position = areaMappingIndex.findFirstArea((PointValue) sourceValue);
+                if (position!=-1) {
+                    return new FloatValue(applyConstraints(areaMappingIndex.getMappedValue(position)));
                 }
             }
             else {
@@ -172,12 +185,12 @@ public final class AreaMapping extends AbstractNode {
                 final ListValue sourceListValue = (ListValue) sourceValue;
                 final List<SingleValue> values = new ArrayList<SingleValue>(sourceListValue.getAll());
 
-                for (final AreaMapEntry entry : getAreaMapEntries()) {
+                for (int position = 0; position < areaMappingIndex.size(); position++) {
                     boolean allow = true;
                     for (int i = 0; i < sourceListValue.size(); i++) {
-                        if (entry.getShape().isInside(convertCoordinates(entry.getCoordinates()), (PointValue) sourceListValue.get(i))) {
+                        if (areaMappingIndex.isInside(position, (PointValue) sourceListValue.get(i))) {
                             if (allow) {
-                                sum += entry.getMappedValue();
+                                sum += areaMappingIndex.getMappedValue(position);
                                 allow = false;
                             }
                             values.remove(sourceListValue.get(i));
@@ -193,21 +206,6 @@ public final class AreaMapping extends AbstractNode {
         return new FloatValue(applyConstraints(getDefaultValue()));
     }
 
-    /**
-     * Converts list of coordinates to array of coordinates.
-     *
-     * @param coords list of coordinates
-     * @return array of coordinates
-     */
-    private int[] convertCoordinates(final List<Integer> coords) {
-        final int[] result = new int[coords.size()];
-        for (int i = 0; i < result.length; i++) {
-            result[i] = coords.get(i).intValue();
-        }
-
-        return result;
-    }
-
     private double applyConstraints(final double value) {
         double result = value;
         final Double lowerBound = getLowerBound();
@@ -0,0 +1,113 @@
+/* Copyright (c) 2012-2013, University of Edinburgh.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice, this
+ *   list of conditions and the following disclaimer in the documentation and/or
+ *   other materials provided with the distribution.
+ *
+ * * Neither the name of the University of Edinburgh nor the names of its
+ *   contributors may be used to endorse or promote products derived from this
+ *   software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ *
+ * This software is derived from (and contains code from) QTItools and MathAssessEngine.
+ * QTItools is (c) 2008, University of Southampton.
+ * MathAssessEngine is (c) 2010, University of Edinburgh.
+ */
+package uk.ac.ed.ph.jqtiplus.node.item.response.declaration;
+
+import uk.ac.ed.ph.jqtiplus.internal.util.Assert;
+import uk.ac.ed.ph.jqtiplus.internal.util.ObjectUtilities;
+import uk.ac.ed.ph.jqtiplus.node.expression.operator.BoundedShape;
+import uk.ac.ed.ph.jqtiplus.state.ItemProcessingMap;
+import uk.ac.ed.ph.jqtiplus.value.PointValue;
+
+import java.io.Serializable;
+import java.util.List;
+
+/**
+ * Precomputed form of the {@link AreaMapEntry}s within an {@link AreaMapping}, holding the
+ * converted coordinates and bounding box of each area so that most areas can be rejected
+ * without doing the full {@link uk.ac.ed.ph.jqtiplus.node.expression.operator.Shape} test.
+ * <p>
+ * Areas are kept in document order, so the first matching area is still the one used
+ * when mapping single points.
+ * <p>
+ * Instances are built once per (valid) {@link ResponseDeclaration} and kept within the
+ * {@link ItemProcessingMap}, so must not be used if the underlying {@link AreaMapping} is
+ * subsequently modified.
+ * <p>
+ * Usage: an instance of this class can be safely used by multiple Threads.
+ *
+ * @see AreaMapping#getTargetValue(uk.ac.ed.ph.jqtiplus.value.Value, AreaMappingIndex)
+ *
+ * @author David McKain
+ */
+public final class AreaMappingIndex implements Serializable {
+
+    private static final long serialVersionUID = -6447780424853391404L;
+
+    private final AreaMapEntry[] areaMapEntries;
+    private final BoundedShape[] areas;
+
+    public AreaMappingIndex(final AreaMapping areaMapping) {
+        Assert.notNull(areaMapping, "areaMapping");
+        final List<AreaMapEntry> areaMapEntryList = areaMapping.getAreaMapEntries();
+        this.areaMapEntries = areaMapEntryList.toArray(new AreaMapEntry[areaMapEntryList.size()]);
+        this.areas = new BoundedShape[areaMapEntries.length];
+        for (int i=0; i<areas.length; i++) {
+            final AreaMapEntry areaMapEntry = areaMapEntries[i];
+            areas[i] = new BoundedShape(areaMapEntry.getShape(), areaMapEntry.getCoordinates());
+        }
+    }
+
+    public int size() {
+        return areas.length;
+    }
+
+    public double getMappedValue(final int position) {
+        return areaMapEntries[position].getMappedValue();
+    }
+
+    /**
+     * Returns whether the given point is inside the area at the given position.
+     */
+    public boolean isInside(final int position, final PointValue point) {
+        return areas[position].isInside(point);
+    }
+
+    /**
+     * Returns the position of the first area containing the given point, or -1 if
+     * no area contains it.
+     */
+    public int findFirstArea(final PointValue point) {
+        for (int i=0; i<areas.length; i++) {
+            if (areas[i].isInside(point)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    @Override
+    public String toString() {
+        return ObjectUtilities.beanToString(this);
+    }
+}
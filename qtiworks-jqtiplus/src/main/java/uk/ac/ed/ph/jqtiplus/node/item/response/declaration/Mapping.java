@@ -35,6 +35,7 @@ package uk.ac.ed.ph.jqtiplus.node.item.response.declaration;
 
 import uk.ac.ed.ph.jqtiplus.attribute.value.FloatAttribute;
 import uk.ac.ed.ph.jqtiplus.group.item.response.declaration.MapEntryGroup;
+import uk.ac.ed.ph.jqtiplus.internal.util.Assert;
 import uk.ac.ed.ph.jqtiplus.node.AbstractNode;
 import uk.ac.ed.ph.jqtiplus.node.expression.general.MapResponse;
 import uk.ac.ed.ph.jqtiplus.validation.ValidationContext;
@@ -162,11 +163,25 @@ public final class Mapping extends AbstractNode {
      * @return target value for given source value
      */
     public FloatValue computeTargetValue(final Value sourceValue) {
+        return computeTargetValue(sourceValue, new MappingIndex(this));
+    }
+
+    /**
+     * Gets target value for given source value, using the given precomputed {@link MappingIndex}
+     * to look up each value.
+     *
+     * @param sourceValue given source value
+     * @param mappingIndex index built from this {@link Mapping}, which must not be null
+     * @return target value for given source value
+     */
+    public FloatValue computeTargetValue(final Value sourceValue, final MappingIndex mappingIndex) {
+        Assert.notNull(mappingIndex, "mappingIndex");
+        final double defaultValue = getDefaultValue();
         if (!sourceValue.isNull()) {
             final ResponseDeclaration responseDeclaration = getParent();
             if (responseDeclaration.hasCardinality(Cardinality.SINGLE)) {
                 /* Single cardinality => take mapped value, using default if nothing specified */
-                return new FloatValue(applyConstraints(mapSingleValue((SingleValue) sourceValue)));
+                return new FloatValue(applyConstraints(mappingIndex.lookup((SingleValue) sourceValue, defaultValue)));
             }
             else if (responseDeclaration.getCardinality().isList()) {
                 /* Multiple cardinality => sum mapped values of unique items in container */
@@ -174,35 +189,12 @@ public final class Mapping extends AbstractNode {
                 final ListValue sourceListValue = (ListValue) sourceValue;
                 final Set<SingleValue> uniqueValues = new HashSet<SingleValue>(sourceListValue.getAll());
                 for (final SingleValue value : uniqueValues) {
-                    sum += mapSingleValue(value);
+                    sum += mappingIndex.lookup(value, defaultValue);
                 }
                 return new FloatValue(applyConstraints(sum));
             }
         }
-        return new FloatValue(applyConstraints(getDefaultValue()));
-    }
-
-    private double mapSingleValue(final SingleValue value) {
-        double result = getDefaultValue();
-        for (final MapEntry entry : getMapEntries()) {
-            if (entryCompare(entry, value)) {
-                result = entry.getMappedValue();
-                break;
-            }
-        }
-        return result;
-    }
-
-    private boolean entryCompare(final MapEntry mapEntry, final SingleValue value) {
-        boolean result;
-        final SingleValue mapKey = mapEntry.getMapKey();
-        if (mapEntry.getCaseSensitive()) {
-            result = mapKey.equals(value);
-        }
-        else {
-            result = mapKey.toQtiString().equalsIgnoreCase(value.toQtiString());
-        }
-        return result;
+        return new FloatValue(applyConstraints(defaultValue));
     }
 
     private double applyConstraints(final double value) {
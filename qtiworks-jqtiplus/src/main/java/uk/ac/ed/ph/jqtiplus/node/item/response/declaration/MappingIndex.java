@@ -0,0 +1,149 @@
+/* Copyright (c) 2012-2013, University of Edinburgh.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice, this
+ *   list of conditions and the following disclaimer in the documentation and/or
+ *   other materials provided with the distribution.
+ *
+ * * Neither the name of the University of Edinburgh nor the names of its
+ *   contributors may be used to endorse or promote products derived from this
+ *   software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ *
+ * This software is derived from (and contains code from) QTItools and MathAssessEngine.
+ * QTItools is (c) 2008, University of Southampton.
+ * MathAssessEngine is (c) 2010, University of Edinburgh.
+ */
+package uk.ac.ed.ph.jqtiplus.node.item.response.declaration;
+
+import uk.ac.ed.ph.jqtiplus.internal.util.Assert;
+import uk.ac.ed.ph.jqtiplus.internal.util.ObjectUtilities;
+import uk.ac.ed.ph.jqtiplus.state.ItemProcessingMap;
+import uk.ac.ed.ph.jqtiplus.value.SingleValue;
+
+import java.io.Serializable;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Hashed lookup table for the {@link MapEntry}s within a {@link Mapping}, used to avoid
+ * scanning every entry for each response value being mapped.
+ * <p>
+ * Lookups give exactly the same result as scanning the entries in document order: the first
+ * entry whose key matches wins, where case sensitive entries match on {@link SingleValue#equals(Object)}
+ * and case insensitive entries match on {@link String#equalsIgnoreCase(String)} of the QTI
+ * string forms.
+ * <p>
+ * Instances are built once per (valid) {@link ResponseDeclaration} and kept within the
+ * {@link ItemProcessingMap}, so must not be used if the underlying {@link Mapping} is subsequently
+ * modified.
+ * <p>
+ * Usage: an instance of this class can be safely used by multiple Threads.
+ *
+ * @see Mapping#computeTargetValue(uk.ac.ed.ph.jqtiplus.value.Value, MappingIndex)
+ *
+ * @author David McKain
+ */
+public final class MappingIndex implements Serializable {
+
+    private static final long serialVersionUID = 4043893155366998045L;
+
+    /** Maps keys of case sensitive entries to the position of the first entry having that key */
+    private final Map<SingleValue, Integer> caseSensitivePositionMap;
+
+    /** Maps folded keys of case insensitive entries to the position of the first entry having that key */
+    private final Map<String, Integer> caseInsensitivePositionMap;
+
+    /** All entries, in document order */
+    private final MapEntry[] mapEntries;
+
+    public MappingIndex(final Mapping mapping) {
+        Assert.notNull(mapping, "mapping");
+        final List<MapEntry> mapEntryList = mapping.getMapEntries();
+        this.caseSensitivePositionMap = new HashMap<SingleValue, Integer>();
+        this.caseInsensitivePositionMap = new HashMap<String, Integer>();
+        this.mapEntries = mapEntryList.toArray(new MapEntry[mapEntryList.size()]);
+        for (int i=0; i<mapEntries.length; i++) {
+            final MapEntry mapEntry = mapEntries[i];
+            final SingleValue mapKey = mapEntry.getMapKey();
+            if (mapKey==null) {
+                /* (Invalid, so will never match) */
+                continue;
+            }
+            final Integer position = Integer.valueOf(i);
+            if (mapEntry.getCaseSensitive()) {
+                if (!caseSensitivePositionMap.containsKey(mapKey)) {
+                    caseSensitivePositionMap.put(mapKey, position);
+                }
+            }
+            else {
+                final String foldedKey = foldCase(mapKey.toQtiString());
+                if (!caseInsensitivePositionMap.containsKey(foldedKey)) {
+                    caseInsensitivePositionMap.put(foldedKey, position);
+                }
+            }
+        }
+    }
+
+    public int size() {
+        return mapEntries.length;
+    }
+
+    /**
+     * Looks up the mapped value for the given {@link SingleValue}, returning the given
+     * default value if no entry matches.
+     */
+    public double lookup(final SingleValue value, final double defaultValue) {
+        int position = Integer.MAX_VALUE;
+        if (!caseSensitivePositionMap.isEmpty()) {
+            final Integer caseSensitivePosition = caseSensitivePositionMap.get(value);
+            if (caseSensitivePosition!=null) {
+                position = caseSensitivePosition.intValue();
+            }
+        }
+        if (!caseInsensitivePositionMap.isEmpty()) {
+            final Integer caseInsensitivePosition = caseInsensitivePositionMap.get(foldCase(value.toQtiString()));
+            if (caseInsensitivePosition!=null) {
+                position = Math.min(position, caseInsensitivePosition.intValue());
+            }
+        }
+        return position!=Integer.MAX_VALUE ? mapEntries[position].getMappedValue() : defaultValue;
+    }
+
+    /**
+     * Folds the given String so that two Strings fold to the same result if and only if
+     * they are equal according to {@link String#equalsIgnoreCase(String)}, which compares
+     * each character after converting to upper case and then lower case.
+     */
+    static String foldCase(final String string) {
+        final int length = string.length();
+        final char[] folded = new char[length];
+        for (int i=0; i<length; i++) {
+            folded[i] = Character.toLowerCase(Character.toUpperCase(string.charAt(i)));
+        }
+        return new String(folded);
+    }
+
+    @Override
+    public String toString() {
+        return ObjectUtilities.beanToString(this);
+    }
+}
@@ -55,6 +55,6 @@ public final class ExitResponse extends ResponseRule {
 
     @Override
     public void evaluate(final ItemProcessingContext context) throws QtiProcessingInterrupt {
-        throw new QtiProcessingInterrupt();
+        throw QtiProcessingInterrupt.EXIT_INTERRUPT;
     }
 }
@@ -34,6 +34,7 @@
 package uk.ac.ed.ph.jqtiplus.node.item.response.processing;
 
 import uk.ac.ed.ph.jqtiplus.exception.QtiIllegalChildException;
+import uk.ac.ed.ph.jqtiplus.internal.util.ObjectUtilities;
 import uk.ac.ed.ph.jqtiplus.node.QtiNode;
 
 import java.util.HashMap;
@@ -117,12 +118,16 @@ public enum ResponseRuleType {
 
     private static Map<String, ResponseRuleType> responseRuleTypes;
 
+    private static Set<String> responseRuleQtiClassNames;
+
     static {
         responseRuleTypes = new HashMap<String, ResponseRuleType>();
 
         for (final ResponseRuleType responseRuleType : ResponseRuleType.values()) {
             responseRuleTypes.put(responseRuleType.responseRuleType, responseRuleType);
         }
+
+        responseRuleQtiClassNames = ObjectUtilities.unmodifiableSetCopy(responseRuleTypes.keySet());
     }
 
     private String responseRuleType;
@@ -162,6 +167,6 @@ public enum ResponseRuleType {
     }
 
     public static Set<String> getQtiClassNames() {
-        return responseRuleTypes.keySet();
+        return responseRuleQtiClassNames;
     }
 }
@@ -34,7 +34,6 @@
 package uk.ac.ed.ph.jqtiplus.node.item.template.processing;
 
 import uk.ac.ed.ph.jqtiplus.exception.TemplateProcessingInterrupt;
-import uk.ac.ed.ph.jqtiplus.exception.TemplateProcessingInterrupt.InterruptType;
 import uk.ac.ed.ph.jqtiplus.node.QtiNode;
 import uk.ac.ed.ph.jqtiplus.running.ItemProcessingContext;
 
@@ -56,6 +55,6 @@ public final class ExitTemplate extends TemplateRule {
 
     @Override
     public void evaluate(final ItemProcessingContext context) throws TemplateProcessingInterrupt {
-        throw new TemplateProcessingInterrupt(InterruptType.EXIT_TEMPLATE);
+        throw TemplateProcessingInterrupt.EXIT_TEMPLATE_INTERRUPT;
     }
 }
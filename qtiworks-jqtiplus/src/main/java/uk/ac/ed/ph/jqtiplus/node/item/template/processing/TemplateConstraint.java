@@ -34,7 +34,6 @@
 package uk.ac.ed.ph.jqtiplus.node.item.template.processing;
 
 import uk.ac.ed.ph.jqtiplus.exception.TemplateProcessingInterrupt;
-import uk.ac.ed.ph.jqtiplus.exception.TemplateProcessingInterrupt.InterruptType;
 import uk.ac.ed.ph.jqtiplus.group.expression.ExpressionGroup;
 import uk.ac.ed.ph.jqtiplus.node.expression.AbstractExpression;
 import uk.ac.ed.ph.jqtiplus.node.expression.Expression;
@@ -97,7 +96,7 @@ public final class TemplateConstraint extends TemplateProcessingRule implements
     public void evaluate(final ItemProcessingContext context) throws TemplateProcessingInterrupt {
         final Value value = getExpression().evaluate(context);
         if (value.isNull() || !((BooleanValue) value).booleanValue()) {
-            throw new TemplateProcessingInterrupt(InterruptType.TEMPLATE_CONSTRAINT_FAILURE);
+            throw TemplateProcessingInterrupt.TEMPLATE_CONSTRAINT_FAILURE_INTERRUPT;
         }
     }
 }
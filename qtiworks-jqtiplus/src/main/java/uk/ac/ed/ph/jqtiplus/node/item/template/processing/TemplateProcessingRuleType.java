@@ -34,6 +34,7 @@
 package uk.ac.ed.ph.jqtiplus.node.item.template.processing;
 
 import uk.ac.ed.ph.jqtiplus.exception.QtiIllegalChildException;
+import uk.ac.ed.ph.jqtiplus.internal.util.ObjectUtilities;
 
 import java.util.HashMap;
 import java.util.Map;
@@ -127,11 +128,15 @@ public enum TemplateProcessingRuleType {
 
     private static Map<String, TemplateProcessingRuleType> templateRuleTypes;
 
+    private static Set<String> templateRuleQtiClassNames;
+
     static {
         templateRuleTypes = new HashMap<String, TemplateProcessingRuleType>();
         for (final TemplateProcessingRuleType templateRuleType : TemplateProcessingRuleType.values()) {
             templateRuleTypes.put(templateRuleType.templateProcessingRuleType, templateRuleType);
         }
+
+        templateRuleQtiClassNames = ObjectUtilities.unmodifiableSetCopy(templateRuleTypes.keySet());
     }
 
     private String templateProcessingRuleType;
@@ -171,6 +176,6 @@ public enum TemplateProcessingRuleType {
     }
 
     public static Set<String> getQtiClassNames() {
-        return templateRuleTypes.keySet();
+        return templateRuleQtiClassNames;
     }
 }
@@ -34,6 +34,7 @@
 package uk.ac.ed.ph.jqtiplus.node.item.template.processing;
 
 import uk.ac.ed.ph.jqtiplus.exception.QtiIllegalChildException;
+import uk.ac.ed.ph.jqtiplus.internal.util.ObjectUtilities;
 import uk.ac.ed.ph.jqtiplus.node.QtiNode;
 
 import java.util.HashMap;
@@ -115,12 +116,16 @@ public enum TemplateRuleType {
 
     private static Map<String, TemplateRuleType> templateRuleTypes;
 
+    private static Set<String> templateRuleQtiClassNames;
+
     static {
         templateRuleTypes = new HashMap<String, TemplateRuleType>();
 
         for (final TemplateRuleType templateRuleType : TemplateRuleType.values()) {
             templateRuleTypes.put(templateRuleType.templateRuleType, templateRuleType);
         }
+
+        templateRuleQtiClassNames = ObjectUtilities.unmodifiableSetCopy(templateRuleTypes.keySet());
     }
 
     private String templateRuleType;
@@ -160,6 +165,6 @@ public enum TemplateRuleType {
     }
 
     public static Set<String> getQtiClassNames() {
-        return templateRuleTypes.keySet();
+        return templateRuleQtiClassNames;
     }
 }
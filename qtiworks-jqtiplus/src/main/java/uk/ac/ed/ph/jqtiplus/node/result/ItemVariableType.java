@@ -34,6 +34,7 @@
 package uk.ac.ed.ph.jqtiplus.node.result;
 
 import uk.ac.ed.ph.jqtiplus.exception.QtiParseException;
+import uk.ac.ed.ph.jqtiplus.internal.util.ObjectUtilities;
 
 import java.util.HashMap;
 import java.util.Map;
@@ -72,12 +73,16 @@ public enum ItemVariableType {
 
     private static Map<String, ItemVariableType> itemVariableTypes;
 
+    private static Set<String> itemVariableQtiClassNames;
+
     static {
         itemVariableTypes = new HashMap<String, ItemVariableType>();
 
         for (final ItemVariableType itemVariableType : ItemVariableType.values()) {
             itemVariableTypes.put(itemVariableType.itemVariableType, itemVariableType);
         }
+
+        itemVariableQtiClassNames = ObjectUtilities.unmodifiableSetCopy(itemVariableTypes.keySet());
     }
 
     private String itemVariableType;
@@ -117,6 +122,6 @@ public enum ItemVariableType {
     }
 
     public static Set<String> getQtiClassNames() {
-        return itemVariableTypes.keySet();
+        return itemVariableQtiClassNames;
     }
 }
@@ -58,6 +58,6 @@ public final class ExitTest extends OutcomeRule {
 
     @Override
     public void evaluate(final TestProcessingContext context) throws QtiProcessingInterrupt {
-        throw new QtiProcessingInterrupt();
+        throw QtiProcessingInterrupt.EXIT_INTERRUPT;
     }
 }
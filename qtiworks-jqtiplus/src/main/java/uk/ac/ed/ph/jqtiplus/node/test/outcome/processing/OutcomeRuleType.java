@@ -34,6 +34,7 @@
 package uk.ac.ed.ph.jqtiplus.node.test.outcome.processing;
 
 import uk.ac.ed.ph.jqtiplus.exception.QtiIllegalChildException;
+import uk.ac.ed.ph.jqtiplus.internal.util.ObjectUtilities;
 import uk.ac.ed.ph.jqtiplus.node.QtiNode;
 
 import java.util.HashMap;
@@ -116,12 +117,16 @@ public enum OutcomeRuleType {
 
     private static Map<String, OutcomeRuleType> outcomeRuleTypes;
 
+    private static Set<String> outcomeRuleQtiClassNames;
+
     static {
         outcomeRuleTypes = new HashMap<String, OutcomeRuleType>();
 
         for (final OutcomeRuleType outcomeRuleType : OutcomeRuleType.values()) {
             outcomeRuleTypes.put(outcomeRuleType.outcomeRuleType, outcomeRuleType);
         }
+
+        outcomeRuleQtiClassNames = ObjectUtilities.unmodifiableSetCopy(outcomeRuleTypes.keySet());
     }
 
     private String outcomeRuleType;
@@ -161,6 +166,6 @@ public enum OutcomeRuleType {
     }
 
     public static Set<String> getQtiClassNames() {
-        return outcomeRuleTypes.keySet();
+        return outcomeRuleQtiClassNames;
     }
 }
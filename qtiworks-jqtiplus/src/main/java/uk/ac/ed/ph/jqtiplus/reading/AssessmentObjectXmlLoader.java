@@ -44,12 +44,16 @@ import uk.ac.ed.ph.jqtiplus.validation.TestValidationResult;
 import uk.ac.ed.ph.jqtiplus.xmlutils.locators.ResourceLocator;
 
 import java.net.URI;
+import java.util.concurrent.ExecutorService;
 
 /**
  * Convenient facade for loading, resolving and validating {@link AssessmentItem}s
  * and {@link AssessmentTest}s from XML using a {@link QtiXmlReader} for the low
  * level XML parsing and a {@link ResourceLocator} for locating and finding the
  * required XML resources.
+ * <p>
+ * An {@link ExecutorService} may optionally be provided, in which case the items referenced
+ * by an {@link AssessmentTest} will be resolved and validated in parallel.
  *
  * @see QtiXmlReader
  * @see ResourceLocator
@@ -60,10 +64,17 @@ public final class AssessmentObjectXmlLoader {
 
     private final QtiXmlReader qtiXmlReader;
     private final ResourceLocator inputResourceLocator;
+    private final ExecutorService executorService;
 
     public AssessmentObjectXmlLoader(final QtiXmlReader qtiXmlReader, final ResourceLocator inputResourceLocator) {
+        this(qtiXmlReader, inputResourceLocator, null);
+    }
+
+    public AssessmentObjectXmlLoader(final QtiXmlReader qtiXmlReader, final ResourceLocator inputResourceLocator,
+            final ExecutorService executorService) {
         this.qtiXmlReader = qtiXmlReader;
         this.inputResourceLocator = inputResourceLocator;
+        this.executorService = executorService;
     }
 
     public QtiXmlReader getQtiXmlReader() {
@@ -74,19 +85,23 @@ public final class AssessmentObjectXmlLoader {
         return inputResourceLocator;
     }
 
+    public ExecutorService getExecutorService() {
+        return executorService;
+    }
+
     //-------------------------------------------------------------------
     // AssessmentItem resolution & validation
 
     public ResolvedAssessmentItem loadAndResolveAssessmentItem(final URI systemId) {
         final QtiObjectReader qtiObjectReader = qtiXmlReader.createQtiObjectReader(inputResourceLocator, false);
-        final AssessmentObjectResolver assessmentObjectResolver = new AssessmentObjectResolver(qtiObjectReader);
+        final AssessmentObjectResolver assessmentObjectResolver = new AssessmentObjectResolver(qtiObjectReader, executorService);
         return assessmentObjectResolver.resolveAssessmentItem(systemId);
     }
 
     public ItemValidationResult loadResolveAndValidateItem(final URI systemId) {
         final QtiObjectReader qtiObjectReader = qtiXmlReader.createQtiObjectReader(inputResourceLocator, true);
-        final ResolvedAssessmentItem resolvedAssessmentItem = new AssessmentObjectResolver(qtiObjectReader).resolveAssessmentItem(systemId);
-        final AssessmentObjectValidator assessmentObjectValidator = new AssessmentObjectValidator(qtiObjectReader.getJqtiExtensionManager());
+        final ResolvedAssessmentItem resolvedAssessmentItem = new AssessmentObjectResolver(qtiObjectReader, executorService).resolveAssessmentItem(systemId);
+        final AssessmentObjectValidator assessmentObjectValidator = new AssessmentObjectValidator(qtiObjectReader.getJqtiExtensionManager(), executorService);
         return assessmentObjectValidator.validateItem(resolvedAssessmentItem);
     }
 
@@ -95,14 +110,14 @@ public final class AssessmentObjectXmlLoader {
 
     public ResolvedAssessmentTest loadAndResolveAssessmentTest(final URI systemId) {
         final QtiObjectReader qtiObjectReader = qtiXmlReader.createQtiObjectReader(inputResourceLocator, false);
-        final AssessmentObjectResolver assessmentObjectResolver = new AssessmentObjectResolver(qtiObjectReader);
+        final AssessmentObjectResolver assessmentObjectResolver = new AssessmentObjectResolver(qtiObjectReader, executorService);
         return assessmentObjectResolver.resolveAssessmentTest(systemId);
     }
 
     public TestValidationResult loadResolveAndValidateTest(final URI systemId) {
         final QtiObjectReader qtiObjectReader = qtiXmlReader.createQtiObjectReader(inputResourceLocator, true);
-        final ResolvedAssessmentTest resolvedAssessmentTest = new AssessmentObjectResolver(qtiObjectReader).resolveAssessmentTest(systemId);
-        final AssessmentObjectValidator assessmentObjectValidator = new AssessmentObjectValidator(qtiObjectReader.getJqtiExtensionManager());
+        final ResolvedAssessmentTest resolvedAssessmentTest = new AssessmentObjectResolver(qtiObjectReader, executorService).resolveAssessmentTest(systemId);
+        final AssessmentObjectValidator assessmentObjectValidator = new AssessmentObjectValidator(qtiObjectReader.getJqtiExtensionManager(), executorService);
         return assessmentObjectValidator.validateTest(resolvedAssessmentTest);
     }
 
@@ -113,6 +128,7 @@ public final class AssessmentObjectXmlLoader {
         return getClass().getSimpleName() + "@" + Integer.toHexString(System.identityHashCode(this))
                 + "(qtiXmlReader=" + qtiXmlReader
                 + ",inputResourceLocator=" + inputResourceLocator
+                + ",executorService=" + executorService
                 + ")";
     }
 }
@@ -33,6 +33,7 @@
  */
 package uk.ac.ed.ph.jqtiplus.resolution;
 
+import uk.ac.ed.ph.jqtiplus.internal.util.ConcurrencyUtilities;
 import uk.ac.ed.ph.jqtiplus.node.RootNode;
 import uk.ac.ed.ph.jqtiplus.node.item.AssessmentItem;
 import uk.ac.ed.ph.jqtiplus.node.item.response.processing.ResponseProcessing;
@@ -46,6 +47,8 @@ import java.util.ArrayList;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -57,6 +60,11 @@ import org.slf4j.LoggerFactory;
  * <p>
  * This provides a rich {@link ResolvedAssessmentItem} or {@link ResolvedAssessmentTest}
  * which is useful for the running/delivery of assessments.
+ * <p>
+ * If an {@link ExecutorService} is provided, then the items referenced by an
+ * {@link AssessmentTest} will be resolved in parallel using it. The resulting
+ * {@link ResolvedAssessmentTest} is the same as would be obtained by resolving each item
+ * in turn. (The {@link RootNodeProvider} must be safe to use from multiple threads in this case.)
  *
  * @author David McKain
  */
@@ -65,9 +73,19 @@ public final class AssessmentObjectResolver {
     private static final Logger logger = LoggerFactory.getLogger(AssessmentObjectResolver.class);
 
     private final RootNodeProvider rootNodeProvider;
+    private final ExecutorService executorService;
 
     public AssessmentObjectResolver(final RootNodeProvider rootNodeProvider) {
+        this(rootNodeProvider, null);
+    }
+
+    public AssessmentObjectResolver(final RootNodeProvider rootNodeProvider, final ExecutorService executorService) {
         this.rootNodeProvider = rootNodeProvider;
+        this.executorService = executorService;
+    }
+
+    public ExecutorService getExecutorService() {
+        return executorService;
     }
 
     //-------------------------------------------------------------------
@@ -175,8 +193,26 @@ public final class AssessmentObjectResolver {
             }
 
             /* Resolve each unique item */
-            for (final URI itemSystemId : itemRefsBySystemIdMap.keySet()) {
-                resolvedAssessmentItemMap.put(itemSystemId, resolveAssessmentItem(itemSystemId, cachedResourceProvider));
+            if (executorService!=null && itemRefsBySystemIdMap.size() > 1) {
+                final List<Callable<ResolvedAssessmentItem>> itemResolutionTasks = new ArrayList<Callable<ResolvedAssessmentItem>>();
+                for (final URI itemSystemId : itemRefsBySystemIdMap.keySet()) {
+                    itemResolutionTasks.add(new Callable<ResolvedAssessmentItem>() {
+                        @Override
+                        public ResolvedAssessmentItem call() {
+                            return resolveAssessmentItem(itemSystemId, cachedResourceProvider);
+                        }
+                    });
+                }
+                final List<ResolvedAssessmentItem> resolvedAssessmentItems = ConcurrencyUtilities.invokeAllInOrder(executorService, itemResolutionTasks);
+                int i = 0;
+                for (final URI itemSystemId : itemRefsBySystemIdMap.keySet()) {
+                    resolvedAssessmentItemMap.put(itemSystemId, resolvedAssessmentItems.get(i++));
+                }
+            }
+            else {
+                for (final URI itemSystemId : itemRefsBySystemIdMap.keySet()) {
+                    resolvedAssessmentItemMap.put(itemSystemId, resolveAssessmentItem(itemSystemId, cachedResourceProvider));
+                }
             }
         }
         return new ResolvedAssessmentTest(testLookup, assessmentItemRefs,
@@ -197,6 +233,7 @@ public final class AssessmentObjectResolver {
     public String toString() {
         return getClass().getSimpleName() + "@" + Integer.toHexString(System.identityHashCode(this))
                 + "(rootNodeProvider=" + rootNodeProvider
+                + ",executorService=" + executorService
                 + ")";
     }
 }
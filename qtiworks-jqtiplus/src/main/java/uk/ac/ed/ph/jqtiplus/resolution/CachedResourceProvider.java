@@ -42,8 +42,9 @@ import uk.ac.ed.ph.jqtiplus.provision.RootNodeHolder;
 import uk.ac.ed.ph.jqtiplus.provision.RootNodeProvider;
 
 import java.net.URI;
-import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -51,6 +52,9 @@ import org.slf4j.LoggerFactory;
 /**
  * Helper class that caches the results of calls to {@link AssessmentObjectResolver} during
  * resolution so that we only need to build once.
+ * <p>
+ * This is safe to use from multiple threads. If two threads look up the same resource at
+ * the same time then it may be built twice, but both will end up using the same result.
  *
  * @author David McKain
  */
@@ -59,11 +63,11 @@ final class CachedResourceProvider {
     private static final Logger logger = LoggerFactory.getLogger(CachedResourceProvider.class);
 
     private final RootNodeProvider rootNodeProvider;
-    private final Map<URI, RootNodeLookup<?>> cacheData;
+    private final ConcurrentMap<URI, RootNodeLookup<?>> cacheData;
 
     public CachedResourceProvider(final RootNodeProvider rootNodeProvider) {
         this.rootNodeProvider = rootNodeProvider;
-        this.cacheData = new HashMap<URI, RootNodeLookup<?>>();
+        this.cacheData = new ConcurrentHashMap<URI, RootNodeLookup<?>>();
     }
 
     public RootNodeProvider getRootNodeProvider() {
@@ -94,7 +98,11 @@ final class CachedResourceProvider {
             catch (final ResourceNotFoundException e) {
                 frozenResult = new RootNodeLookup<E>(systemId, resultClass, e);
             }
-            cacheData.put(systemId, frozenResult);
+            final RootNodeLookup<E> existingResult = (RootNodeLookup<E>) cacheData.putIfAbsent(systemId, frozenResult);
+            if (existingResult!=null) {
+                /* Another thread got there first, so use its result */
+                frozenResult = existingResult;
+            }
             logger.debug("Resource cache miss for key {} stored {}", systemId, frozenResult);
         }
         return frozenResult;
@@ -0,0 +1,92 @@
+/* Copyright (c) 2012-2013, University of Edinburgh.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice, this
+ *   list of conditions and the following disclaimer in the documentation and/or
+ *   other materials provided with the distribution.
+ *
+ * * Neither the name of the University of Edinburgh nor the names of its
+ *   contributors may be used to endorse or promote products derived from this
+ *   software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ *
+ * This software is derived from (and contains code from) QTItools and MathAssessEngine.
+ * QTItools is (c) 2008, University of Southampton.
+ * MathAssessEngine is (c) 2010, University of Edinburgh.
+ */
+package uk.ac.ed.ph.jqtiplus.running;
+
+/**
+ * {@link RandomSeedSource} that always returns the same seed. Use this to replay a
+ * session using a seed recorded in an earlier session state, or to get reproducible
+ * behaviour in tests.
+ *
+ * @author David McKain
+ */
+public final class FixedRandomSeedSource implements RandomSeedSource {
+
+    private static final long serialVersionUID = 7011372837296417094L;
+
+    private final long seed;
+
+    public FixedRandomSeedSource(final long seed) {
+        this.seed = seed;
+    }
+
+    /**
+     * Derives a new seed from the given one for use by the sub-component identified by
+     * the given discriminator. The result is deterministic, and different discriminators
+     * give (in practice) unrelated seeds, so that separate {@link java.util.Random}s created
+     * from them do not produce correlated sequences.
+     */
+    public static long deriveSeed(final long seed, final String discriminator) {
+        long z = seed + 0x9E3779B97F4A7C15L * (discriminator.hashCode() + 1L);
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    public long getSeed() {
+        return seed;
+    }
+
+    @Override
+    public long nextSeed() {
+        return seed;
+    }
+
+    @Override
+    public boolean equals(final Object obj) {
+        if (!(obj instanceof FixedRandomSeedSource)) {
+            return false;
+        }
+        return seed==((FixedRandomSeedSource) obj).seed;
+    }
+
+    @Override
+    public int hashCode() {
+        return (int) (seed ^ (seed >>> 32));
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + "(seed=" + seed + ")";
+    }
+}
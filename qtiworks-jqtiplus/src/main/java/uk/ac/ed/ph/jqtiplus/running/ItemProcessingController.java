@@ -79,6 +79,7 @@ public class ItemProcessingController extends ItemValidationController implement
 
     private Long randomSeed;
     private Random randomGenerator;
+    private int randomGeneratorNumAttempts;
 
     public ItemProcessingController(final JqtiExtensionManager jqtiExtensionManager,
             final ItemProcessingMap itemProcessingMap, final ItemSessionState itemSessionState) {
@@ -88,9 +89,15 @@ public class ItemProcessingController extends ItemValidationController implement
         this.itemProcessingMap = itemProcessingMap;
         this.itemSessionState = itemSessionState;
         this.randomSeed = null;
+        itemSessionState.bindVariableSlotLayouts(itemProcessingMap);
         this.randomGenerator = null;
     }
 
+    @Override
+    public ItemProcessingMap getItemProcessingMap() {
+        return itemProcessingMap;
+    }
+
     @Override
     public ItemSessionState getItemSessionState() {
         return itemSessionState;
@@ -112,14 +119,39 @@ public class ItemProcessingController extends ItemValidationController implement
         this.randomGenerator = null;
     }
 
+    /**
+     * Returns the {@link Random} used during template processing and other processing.
+     * This is seeded using the explicitly set seed, if provided, falling back to a seed
+     * derived from the one recorded in the {@link ItemSessionState} when the session was
+     * initialized and the current number of attempts. (So template processing and each
+     * attempt's response processing get their own reproducible sequences, rather than
+     * every attempt repeating the same one.)
+     */
     @Override
     public Random getRandomGenerator() {
-        if (randomGenerator==null) {
+        if (randomSeed==null && itemSessionState.getRandomSeed()!=null) {
+            final int numAttempts = itemSessionState.getNumAttempts();
+            if (randomGenerator==null || randomGeneratorNumAttempts!=numAttempts) {
+                randomGenerator = new Random(FixedRandomSeedSource.deriveSeed(itemSessionState.getRandomSeed().longValue(),
+                        "processing:" + numAttempts));
+                randomGeneratorNumAttempts = numAttempts;
+            }
+        }
+        else if (randomGenerator==null) {
             randomGenerator = randomSeed!=null ? new Random(randomSeed) : new Random();
         }
         return randomGenerator;
     }
 
+    /**
+     * Discards the current {@link Random}, so that a new one will be created the next time
+     * {@link #getRandomGenerator()} is called. This should be called when the seed recorded
+     * in the {@link ItemSessionState} changes.
+     */
+    protected void resetRandomGenerator() {
+        this.randomGenerator = null;
+    }
+
     //-------------------------------------------------------------------
     // Interaction binding callbacks
 
@@ -185,6 +217,25 @@ public class ItemProcessingController extends ItemValidationController implement
     @Override
     public final Value evaluateVariableValue(final VariableDeclaration variableDeclaration) {
         Assert.notNull(variableDeclaration);
+        final int slot = itemProcessingMap.getVariableSlot(variableDeclaration);
+        if (slot>=0 && itemSessionState.isBoundToVariableSlotLayouts(itemProcessingMap)) {
+            /* Valid non-reserved variable, so go straight to its slot */
+            final Value result;
+            if (variableDeclaration instanceof TemplateDeclaration) {
+                result = itemSessionState.getTemplateSlotValue(slot);
+            }
+            else if (variableDeclaration instanceof ResponseDeclaration) {
+                result = itemSessionState.getResponseSlotValue(slot);
+            }
+            else {
+                result = itemSessionState.getOutcomeSlotValue(slot);
+            }
+            if (result==null) {
+                throw new QtiCandidateStateException("ItemSessionState lookup of variable " + variableDeclaration.getIdentifier()
+                        + " returned NULL, indicating state is not in sync");
+            }
+            return result;
+        }
         return evaluateVariableValue(variableDeclaration.getIdentifier());
     }
 
@@ -280,7 +331,19 @@ public class ItemProcessingController extends ItemValidationController implement
             }
         }
         else {
-            if (variableDeclaration instanceof TemplateDeclaration) {
+            final int slot = itemProcessingMap.getVariableSlot(variableDeclaration);
+            if (slot>=0 && itemSessionState.isBoundToVariableSlotLayouts(itemProcessingMap)) {
+                if (variableDeclaration instanceof TemplateDeclaration) {
+                    itemSessionState.setTemplateSlotValue(slot, value);
+                }
+                else if (variableDeclaration instanceof ResponseDeclaration) {
+                    itemSessionState.setResponseSlotValue(slot, value);
+                }
+                else {
+                    itemSessionState.setOutcomeSlotValue(slot, value);
+                }
+            }
+            else if (variableDeclaration instanceof TemplateDeclaration) {
                 itemSessionState.setTemplateValue(identifier, value);
             }
             else if (variableDeclaration instanceof ResponseDeclaration) {
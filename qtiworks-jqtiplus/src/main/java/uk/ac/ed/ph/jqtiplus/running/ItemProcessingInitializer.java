@@ -37,10 +37,15 @@ import uk.ac.ed.ph.jqtiplus.QtiConstants;
 import uk.ac.ed.ph.jqtiplus.node.item.AssessmentItem;
 import uk.ac.ed.ph.jqtiplus.node.item.interaction.Interaction;
 import uk.ac.ed.ph.jqtiplus.node.item.response.declaration.ResponseDeclaration;
+import uk.ac.ed.ph.jqtiplus.node.item.response.processing.ResponseProcessing;
 import uk.ac.ed.ph.jqtiplus.node.item.template.declaration.TemplateDeclaration;
+import uk.ac.ed.ph.jqtiplus.node.item.template.processing.TemplateProcessing;
 import uk.ac.ed.ph.jqtiplus.node.outcome.declaration.OutcomeDeclaration;
 import uk.ac.ed.ph.jqtiplus.node.shared.VariableDeclaration;
 import uk.ac.ed.ph.jqtiplus.resolution.ResolvedAssessmentItem;
+import uk.ac.ed.ph.jqtiplus.resolution.RootNodeLookup;
+import uk.ac.ed.ph.jqtiplus.running.compiled.CompiledProcessing;
+import uk.ac.ed.ph.jqtiplus.running.compiled.ProcessingCompiler;
 import uk.ac.ed.ph.jqtiplus.state.ItemProcessingMap;
 import uk.ac.ed.ph.jqtiplus.types.Identifier;
 import uk.ac.ed.ph.jqtiplus.validation.ItemValidationResult;
@@ -108,9 +113,38 @@ public final class ItemProcessingInitializer {
         /* Record all interactions */
         final List<Interaction> interactions = item.getItemBody().findInteractions();
 
+        /* Compile processing rules if the item is valid (as compiled rules skip validity checks) */
+        CompiledProcessing compiledTemplateProcessing = null;
+        CompiledProcessing compiledResponseProcessing = null;
+        if (isValid) {
+            final ProcessingCompiler processingCompiler = ProcessingCompiler.forItem(validTemplateDeclarationMapBuilder,
+                    validResponseDeclarationMapBuilder, validOutcomeDeclarationMapBuilder);
+            final TemplateProcessing templateProcessing = item.getTemplateProcessing();
+            if (templateProcessing!=null) {
+                compiledTemplateProcessing = processingCompiler.compileTemplateProcessing(templateProcessing);
+            }
+            final ResponseProcessing responseProcessing = resolveResponseProcessing(item);
+            if (responseProcessing!=null) {
+                compiledResponseProcessing = processingCompiler.compileResponseProcessing(responseProcessing);
+            }
+        }
+
         /* That's it! */
         return new ItemProcessingMap(resolvedAssessmentItem, isValid, interactions,
-                validTemplateDeclarationMapBuilder, validResponseDeclarationMapBuilder, validOutcomeDeclarationMapBuilder);
+                validTemplateDeclarationMapBuilder, validResponseDeclarationMapBuilder, validOutcomeDeclarationMapBuilder,
+                compiledTemplateProcessing, compiledResponseProcessing);
+    }
+
+    /**
+     * Works out which {@link ResponseProcessing} will be used for the given item, using the same
+     * logic as {@link ItemSessionController#performResponseProcessing(java.util.Date)}.
+     */
+    private ResponseProcessing resolveResponseProcessing(final AssessmentItem item) {
+        final RootNodeLookup<ResponseProcessing> resolvedResponseProcessingTemplateLookup = resolvedAssessmentItem.getResolvedResponseProcessingTemplateLookup();
+        if (resolvedResponseProcessingTemplateLookup!=null) {
+            return resolvedResponseProcessingTemplateLookup.extractIfSuccessful();
+        }
+        return item.getResponseProcessing();
     }
 
     private void doTemplateVariable(final TemplateDeclaration declaration) {
@@ -34,7 +34,6 @@
 package uk.ac.ed.ph.jqtiplus.running;
 
 import uk.ac.ed.ph.jqtiplus.JqtiExtensionManager;
-import uk.ac.ed.ph.jqtiplus.JqtiExtensionPackage;
 import uk.ac.ed.ph.jqtiplus.JqtiLifecycleEventType;
 import uk.ac.ed.ph.jqtiplus.QtiConstants;
 import uk.ac.ed.ph.jqtiplus.exception.QtiCandidateStateException;
@@ -68,8 +67,11 @@ import uk.ac.ed.ph.jqtiplus.node.shared.VariableType;
 import uk.ac.ed.ph.jqtiplus.node.shared.declaration.DefaultValue;
 import uk.ac.ed.ph.jqtiplus.node.test.TemplateDefault;
 import uk.ac.ed.ph.jqtiplus.resolution.RootNodeLookup;
+import uk.ac.ed.ph.jqtiplus.running.compiled.CompiledProcessing;
+import uk.ac.ed.ph.jqtiplus.running.compiled.ProcessingSignal;
 import uk.ac.ed.ph.jqtiplus.state.ItemProcessingMap;
 import uk.ac.ed.ph.jqtiplus.state.ItemSessionState;
+import uk.ac.ed.ph.jqtiplus.state.TemplateInstance;
 import uk.ac.ed.ph.jqtiplus.types.Identifier;
 import uk.ac.ed.ph.jqtiplus.types.ResponseData;
 import uk.ac.ed.ph.jqtiplus.value.BooleanValue;
@@ -87,6 +89,7 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.Random;
 import java.util.Set;
 
 import org.slf4j.Logger;
@@ -102,6 +105,7 @@ import org.slf4j.LoggerFactory;
  *
  * {@link #initialize(Date)}
  * {@link #performTemplateProcessing(Date)} or {@link #performTemplateProcessing(Date, List)}
+ * (or {@link #applyTemplateInstance(Date, TemplateInstance)} with a pre-computed {@link TemplateInstance})
  * {@link #enterItem(Date)}
  * {@link #touchDuration(Date)} (call before rendering to update duration)
  * {@link #bindResponses(Date, Map)}
@@ -146,9 +150,7 @@ public final class ItemSessionController extends ItemProcessingController implem
     //-------------------------------------------------------------------
 
     private void fireJqtiLifecycleEvent(final JqtiLifecycleEventType eventType) {
-        for (final JqtiExtensionPackage<?> jqtiExtensionPackage : jqtiExtensionManager.getExtensionPackages()) {
-            jqtiExtensionPackage.lifecycleEvent(this, eventType);
-        }
+        jqtiExtensionManager.fireJqtiLifecycleEvent(this, eventType);
     }
 
     //-------------------------------------------------------------------
@@ -166,6 +168,9 @@ public final class ItemSessionController extends ItemProcessingController implem
      * Postconditions: All explicitly-defined variables are reset to their default values.
      *   Built-in variables are set to initial values. Interaction shuffle orders will
      *   have been chosen. {@link ItemSessionState#isInitialized()} will return true.
+     *   {@link ItemSessionState#getRandomSeed()} will return the seed used for randomisation,
+     *   which is the explicitly set seed if provided, otherwise the next seed from the
+     *   {@link RandomSeedSource} in the {@link ItemSessionControllerSettings}.
      *
      * @param timestamp timestamp for this event, which must not be null
      */
@@ -181,8 +186,9 @@ public final class ItemSessionController extends ItemProcessingController implem
         itemSessionState.setSessionStatus(SessionStatus.INITIAL);
         itemSessionState.setInitialized(true);
 
-        /* Shuffle interactions */
-        shuffleInteractions();
+        /* Choose and record seed for randomisation within this session */
+        final long seed = getRandomSeed()!=null ? getRandomSeed().longValue() : itemSessionControllerSettings.getRandomSeedSource().nextSeed();
+        applyRandomSeed(seed);
 
         /* Update closed status. (This normally won't do anything, but a pathological
          * question might have completionStatus having a default value of completed!
@@ -190,15 +196,28 @@ public final class ItemSessionController extends ItemProcessingController implem
         updateClosedStatus(timestamp);
     }
 
-    private void shuffleInteractions() {
+    /**
+     * Records the given seed in the {@link ItemSessionState} and (re)chooses interaction
+     * shuffle orders using it.
+     */
+    private void applyRandomSeed(final long seed) {
+        itemSessionState.setRandomSeed(Long.valueOf(seed));
+        resetRandomGenerator();
+
+        /* Shuffle interactions */
+        shuffleInteractions(new Random(FixedRandomSeedSource.deriveSeed(seed, "shuffle")));
+    }
+
+    private void shuffleInteractions(final Random random) {
         for (final Interaction interaction : itemProcessingMap.getInteractions()) {
             if (interaction instanceof Shuffleable<?>) {
-                shuffleInteraction((Shuffleable<?>) interaction, interaction.getResponseIdentifier());
+                shuffleInteraction((Shuffleable<?>) interaction, interaction.getResponseIdentifier(), random);
             }
         }
     }
 
-    private <C extends Choice> void shuffleInteraction(final Shuffleable<C> interaction, final Identifier responseIdentfier) {
+    private <C extends Choice> void shuffleInteraction(final Shuffleable<C> interaction, final Identifier responseIdentfier,
+            final Random random) {
         if (interaction.getShuffle()) {
             final List<List<C>> choiceLists = interaction.computeShuffleableChoices();
             final List<Identifier> choiceIdentifiers = new ArrayList<Identifier>();
@@ -214,7 +233,7 @@ public final class ItemSessionController extends ItemProcessingController implem
                 }
 
                 /* Perform shuffle */
-                Collections.shuffle(shuffleableChoiceIdentifiers);
+                Collections.shuffle(shuffleableChoiceIdentifiers, random);
 
                 /* Then merge fixed identifiers back in */
                 for (int i = 0, sortedIndex = 0; i < choiceList.size(); i++) {
@@ -356,7 +375,17 @@ public final class ItemSessionController extends ItemProcessingController implem
             return true;
         }
 
-        /* Perform templateProcessing. */
+        /* Perform templateProcessing, using compiled rules if available */
+        final CompiledProcessing compiledTemplateProcessing = itemProcessingMap.getCompiledTemplateProcessing();
+        if (compiledTemplateProcessing!=null && itemSessionControllerSettings.isCompiledProcessingEnabled()) {
+            logger.trace("Executing compiled template processing rules");
+            final ProcessingSignal signal = compiledTemplateProcessing.execute(this);
+            if (signal==ProcessingSignal.TEMPLATE_CONSTRAINT_FAILURE) {
+                logger.trace("Template processing interrupted by failed templateConstraint");
+                return false;
+            }
+            return true;
+        }
         final TemplateProcessing templateProcessing = item.getTemplateProcessing();
         if (templateProcessing != null) {
             logger.trace("Evaluating template processing rules");
@@ -385,6 +414,80 @@ public final class ItemSessionController extends ItemProcessingController implem
         return true;
     }
 
+    /**
+     * Captures the results of the most recent template processing run on this item session
+     * as an immutable {@link TemplateInstance}, which may later be used by
+     * {@link #applyTemplateInstance(Date, TemplateInstance)} on another session for the same item.
+     * <p>
+     * Precondition: {@link ItemSessionState} must have been initialized.
+     *
+     * @see #applyTemplateInstance(Date, TemplateInstance)
+     */
+    public TemplateInstance captureTemplateInstance() {
+        assertItemInitialized();
+        return new TemplateInstance(itemSessionState.getTemplateValues(),
+                itemSessionState.getOverriddenResponseDefaultValues(),
+                itemSessionState.getOverriddenOutcomeDefaultValues(),
+                itemSessionState.getOverriddenCorrectResponseValues(),
+                itemSessionState.getRandomSeed());
+    }
+
+    /**
+     * Alternative to {@link #performTemplateProcessing(Date)} that sets template variables
+     * (and any response/outcome defaults and correct responses overridden by template rules)
+     * from a pre-computed {@link TemplateInstance} instead of running template processing,
+     * then resets Response and Outcome variables to their default values.
+     * <p>
+     * If the {@link TemplateInstance} records a random seed then this replaces the one chosen
+     * when this session was initialized (and interaction shuffle orders are chosen again using it),
+     * so that the seed recorded in the {@link ItemSessionState} will reproduce this session.
+     * <p>
+     * Precondition: {@link ItemSessionState} must have been initialized. Candidate
+     *   must not have entered the item.
+     * <p>
+     * Postcondition: Template variables will be initialized. Response and Outcome
+     *   variables will be reset to their default values.
+     *
+     * @param timestamp timestamp for this event, which must not be null
+     * @param templateInstance {@link TemplateInstance} to use, which must not be null and
+     *   should have been captured from a session on the same item.
+     *
+     * @see #captureTemplateInstance()
+     */
+    public void applyTemplateInstance(final Date timestamp, final TemplateInstance templateInstance) {
+        Assert.notNull(timestamp);
+        Assert.notNull(templateInstance, "templateInstance");
+        assertItemNotEntered();
+        logger.debug("Applying pre-computed template instance to item {}", item.getSystemId());
+
+        if (templateInstance.getRandomSeed()!=null) {
+            applyRandomSeed(templateInstance.getRandomSeed().longValue());
+        }
+
+        fireJqtiLifecycleEvent(JqtiLifecycleEventType.ITEM_TEMPLATE_PROCESSING_STARTING);
+        try {
+            initTemplateVariables();
+            for (final Entry<Identifier, Value> entry : templateInstance.getTemplateValues().entrySet()) {
+                itemSessionState.setTemplateValue(entry.getKey(), entry.getValue());
+            }
+            for (final Entry<Identifier, Value> entry : templateInstance.getOverriddenResponseDefaultValues().entrySet()) {
+                itemSessionState.setOverriddenResponseDefaultValue(entry.getKey(), entry.getValue());
+            }
+            for (final Entry<Identifier, Value> entry : templateInstance.getOverriddenOutcomeDefaultValues().entrySet()) {
+                itemSessionState.setOverriddenOutcomeDefaultValue(entry.getKey(), entry.getValue());
+            }
+            for (final Entry<Identifier, Value> entry : templateInstance.getOverriddenCorrectResponseValues().entrySet()) {
+                itemSessionState.setOverriddenCorrectResponseValue(entry.getKey(), entry.getValue());
+            }
+
+            /* Reset OVs and RVs session */
+            resetOutcomeAndResponseVariables();
+            updateClosedStatus(timestamp);
+        }
+        finally {
+            fireJqtiLifecycleEvent(JqtiLifecycleEventType.ITEM_TEMPLATE_PROCESSING_FINISHED);
+        }
+    }
 
     //-------------------------------------------------------------------
     // Entry, Update, Reset and Exit
@@ -848,8 +951,12 @@ public final class ItemSessionController extends ItemProcessingController implem
                 responseProcessing = item.getResponseProcessing();
             }
 
-            /* Invoke response processing */
-            if (responseProcessing!=null) {
+            /* Invoke response processing, using compiled rules if available */
+            final CompiledProcessing compiledResponseProcessing = itemProcessingMap.getCompiledResponseProcessing();
+            if (compiledResponseProcessing!=null && itemSessionControllerSettings.isCompiledProcessingEnabled()) {
+                compiledResponseProcessing.execute(this);
+            }
+            else if (responseProcessing!=null) {
                 responseProcessing.evaluate(this);
             }
             else {
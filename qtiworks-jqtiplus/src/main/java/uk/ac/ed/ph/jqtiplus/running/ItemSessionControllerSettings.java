@@ -36,6 +36,7 @@ package uk.ac.ed.ph.jqtiplus.running;
 import uk.ac.ed.ph.jqtiplus.JqtiPlus;
 import uk.ac.ed.ph.jqtiplus.internal.util.ObjectUtilities;
 import uk.ac.ed.ph.jqtiplus.node.test.ItemSessionControl;
+import uk.ac.ed.ph.jqtiplus.running.compiled.ProcessingCompiler;
 
 import java.io.Serializable;
 
@@ -61,15 +62,36 @@ public class ItemSessionControllerSettings implements Serializable {
      */
     private int maxAttempts;
 
+    /**
+     * Whether to use the compiled forms of processing rules where available, rather than
+     * interpreting the node tree directly. (Compiled rules are only created for valid
+     * items and tests.)
+     *
+     * @see ProcessingCompiler
+     */
+    private boolean compiledProcessingEnabled;
+
+    /**
+     * Source of the seeds used for randomisation (e.g. shuffling and selection).
+     * Set this to a {@link FixedRandomSeedSource} to get reproducible behaviour.
+     *
+     * @see RandomSeedSource
+     */
+    private RandomSeedSource randomSeedSource;
+
     public ItemSessionControllerSettings() {
         this.templateProcessingLimit = JqtiPlus.DEFAULT_TEMPLATE_PROCESSING_LIMIT;
         this.maxAttempts = 0;
+        this.compiledProcessingEnabled = true;
+        this.randomSeedSource = SystemRandomSeedSource.INSTANCE;
     }
 
     /** (Copy constructor) */
     public ItemSessionControllerSettings(final ItemSessionControllerSettings template) {
         this.templateProcessingLimit = template.templateProcessingLimit;
         this.maxAttempts = template.maxAttempts;
+        this.compiledProcessingEnabled = template.compiledProcessingEnabled;
+        this.randomSeedSource = template.randomSeedSource;
     }
 
 
@@ -92,6 +114,24 @@ public class ItemSessionControllerSettings implements Serializable {
     }
 
 
+    public boolean isCompiledProcessingEnabled() {
+        return compiledProcessingEnabled;
+    }
+
+    public void setCompiledProcessingEnabled(final boolean compiledProcessingEnabled) {
+        this.compiledProcessingEnabled = compiledProcessingEnabled;
+    }
+
+
+    public RandomSeedSource getRandomSeedSource() {
+        return randomSeedSource;
+    }
+
+    public void setRandomSeedSource(final RandomSeedSource randomSeedSource) {
+        this.randomSeedSource = randomSeedSource;
+    }
+
+
     @Override
     public String toString() {
         return ObjectUtilities.beanToString(this);
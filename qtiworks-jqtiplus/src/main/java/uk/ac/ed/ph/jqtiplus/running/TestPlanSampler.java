@@ -0,0 +1,105 @@
+/* Copyright (c) 2012-2013, University of Edinburgh.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice, this
+ *   list of conditions and the following disclaimer in the documentation and/or
+ *   other materials provided with the distribution.
+ *
+ * * Neither the name of the University of Edinburgh nor the names of its
+ *   contributors may be used to endorse or promote products derived from this
+ *   software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ *
+ * This software is derived from (and contains code from) QTItools and MathAssessEngine.
+ * QTItools is (c) 2008, University of Southampton.
+ * MathAssessEngine is (c) 2010, University of Edinburgh.
+ */
+package uk.ac.ed.ph.jqtiplus.running;
+
+import uk.ac.ed.ph.jqtiplus.internal.util.Assert;
+import uk.ac.ed.ph.jqtiplus.node.test.Selection;
+import uk.ac.ed.ph.jqtiplus.state.TestPlan;
+import uk.ac.ed.ph.jqtiplus.state.TestPlanNode;
+import uk.ac.ed.ph.jqtiplus.state.TestProcessingMap;
+import uk.ac.ed.ph.jqtiplus.types.Identifier;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Offline helper for generating {@link TestPlan}s for a given {@link TestProcessingMap}
+ * from explicit seeds, without creating any session state.
+ * <p>
+ * This is intended for checking how {@link Selection} and ordering rules behave over many
+ * plans, e.g. to verify that selection is evenly distributed. Each plan is generated using
+ * a fresh {@link TestPlanner}, so any runtime notifications are discarded.
+ * <p>
+ * Usage: an instance of this class is stateless and may be used by multiple threads.
+ *
+ * @author David McKain
+ */
+public final class TestPlanSampler {
+
+    private final TestProcessingMap testProcessingMap;
+
+    public TestPlanSampler(final TestProcessingMap testProcessingMap) {
+        Assert.notNull(testProcessingMap, "testProcessingMap");
+        this.testProcessingMap = testProcessingMap;
+    }
+
+    public TestProcessingMap getTestProcessingMap() {
+        return testProcessingMap;
+    }
+
+    /**
+     * Generates the {@link TestPlan} that a {@link TestPlanner} would create with the given seed.
+     */
+    public TestPlan generateTestPlan(final long randomSeed) {
+        return new TestPlanner(testProcessingMap, randomSeed).generateTestPlan();
+    }
+
+    /**
+     * Generates <code>sampleCount</code> {@link TestPlan}s using the consecutive seeds
+     * <code>firstSeed</code>, <code>firstSeed+1</code>, ... and returns the total number
+     * of {@link TestPlanNode}s created for each {@link Identifier} across all of them.
+     * <p>
+     * Dividing a count by <code>sampleCount</code> gives the mean number of times the
+     * corresponding part was selected per plan.
+     *
+     * @param firstSeed seed for the first plan
+     * @param sampleCount number of plans to generate, which must not be negative
+     */
+    public Map<Identifier, Integer> computeSelectionCounts(final long firstSeed, final int sampleCount) {
+        if (sampleCount < 0) {
+            throw new IllegalArgumentException("sampleCount must not be negative");
+        }
+        final Map<Identifier, Integer> result = new LinkedHashMap<Identifier, Integer>();
+        for (int i=0; i<sampleCount; i++) {
+            final List<TestPlanNode> testPlanNodes = generateTestPlan(firstSeed + i).getTestPlanNodeList();
+            for (int j=1; j<testPlanNodes.size(); j++) { /* (Skip root Node) */
+                final Identifier identifier = testPlanNodes.get(j).getIdentifier();
+                final Integer count = result.get(identifier);
+                result.put(identifier, Integer.valueOf(count!=null ? count.intValue() + 1 : 1));
+            }
+        }
+        return result;
+    }
+}
@@ -71,9 +71,15 @@ import org.slf4j.LoggerFactory;
  * This class generates a {@link TestPlan} for the given {@link AssessmentTest}.
  * <p>
  * This is the first step in delivering a test to a candidate.
+ * <p>
+ * All selection and ordering is driven by a single {@link Random} created from a seed,
+ * which is recorded in the resulting {@link TestPlan}. Creating a new {@link TestPlanner}
+ * with the same seed will therefore generate an identical {@link TestPlan}.
  *
  * Usage: use once and discard; not thread safe.
  *
+ * @see TestPlanSampler
+ *
  * @author David McKain
  */
 public final class TestPlanner extends ListenerNotificationFirer {
@@ -138,9 +144,30 @@ public final class TestPlanner extends ListenerNotificationFirer {
      */
     private final Map<Identifier, List<TestPlanNode>> testPlanNodesByIdentifierMapBuilder;
 
+    /** Seed used for the {@link #random} */
+    private final long randomSeed;
+
+    /** Source of randomness for selection and ordering */
+    private final Random random;
+
     private boolean hasRun;
 
+    /**
+     * Creates a {@link TestPlanner} using a seed chosen by the {@link SystemRandomSeedSource}.
+     */
     public TestPlanner(final TestProcessingMap testProcessingMap) {
+        this(testProcessingMap, SystemRandomSeedSource.INSTANCE.nextSeed());
+    }
+
+    /**
+     * Creates a {@link TestPlanner} using the given seed for selection and ordering.
+     * <p>
+     * (The seed is mixed before use, as {@link Random}s created from nearby seeds
+     * produce correlated initial values.)
+     */
+    public TestPlanner(final TestProcessingMap testProcessingMap, final long randomSeed) {
+        this.randomSeed = randomSeed;
+        this.random = new Random(FixedRandomSeedSource.deriveSeed(randomSeed, "testPlan"));
         this.testProcessingMap = testProcessingMap;
         this.resolvedAssessmentTest = testProcessingMap.getResolvedAssessmentTest();
         this.test = resolvedAssessmentTest.getTestLookup().extractIfSuccessful();
@@ -152,6 +179,10 @@ public final class TestPlanner extends ListenerNotificationFirer {
         this.hasRun = false;
     }
 
+    public long getRandomSeed() {
+        return randomSeed;
+    }
+
     public TestPlan generateTestPlan() {
         if (test==null) {
             throw new IllegalStateException("Test lookup did not succeed, so test cannot be run");
@@ -174,7 +205,8 @@ public final class TestPlanner extends ListenerNotificationFirer {
         }
 
         /* Finally we build a TestPlan from all of the data we've gathered */
-        final TestPlan result = new TestPlan(testPlanRootNode, testPlanNodeListBuilder, testPlanNodesByKeyMapBuilder, testPlanNodesByIdentifierMapBuilder);
+        final TestPlan result = new TestPlan(testPlanRootNode, testPlanNodeListBuilder, testPlanNodesByKeyMapBuilder, testPlanNodesByIdentifierMapBuilder,
+                Long.valueOf(randomSeed));
         logger.debug("Computed test plan for test {} is {}", test.getIdentifier(), result);
         return result;
     }
@@ -359,7 +391,6 @@ public final class TestPlanner extends ListenerNotificationFirer {
         /* Now decide how many selections to make from remaining children */
         final int remainingSelections = requestedSelections - requiredChildCount;
         if (remainingSelections > 0) {
-            final Random random = new Random(System.currentTimeMillis());
             if (selection.getWithReplacement()) {
                 /* Selection with replacement */
                 for (int i=0; i<remainingSelections; i++) {
@@ -424,7 +455,7 @@ public final class TestPlanner extends ListenerNotificationFirer {
         }
 
         /* Perform shuffle */
-        Collections.shuffle(toShuffle);
+        Collections.shuffle(toShuffle, random);
 
         /* Merge the shuffled items in */
         final List<BuildTreeNode> afterShuffle = new ArrayList<BuildTreeNode>();
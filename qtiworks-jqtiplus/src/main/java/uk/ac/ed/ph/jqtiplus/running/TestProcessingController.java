@@ -190,6 +190,18 @@ public class TestProcessingController extends TestValidationController implement
         final ItemSessionControllerSettings itemSessionControllerSettings = new ItemSessionControllerSettings();
         itemSessionControllerSettings.setTemplateProcessingLimit(testSessionControllerSettings.getTemplateProcessingLimit());
         itemSessionControllerSettings.setMaxAttempts(effectiveItemSessionControl.getMaxAttempts());
+        itemSessionControllerSettings.setCompiledProcessingEnabled(testSessionControllerSettings.isCompiledProcessingEnabled());
+
+        /* Derive the item's seed from the TestPlan's seed, if recorded, so that replaying the
+         * plan also replays each item's shuffling */
+        final Long testPlanSeed = testSessionState.getTestPlan().getRandomSeed();
+        if (testPlanSeed!=null) {
+            itemSessionControllerSettings.setRandomSeedSource(new FixedRandomSeedSource(
+                    FixedRandomSeedSource.deriveSeed(testPlanSeed.longValue(), itemRefNode.getKey().toString())));
+        }
+        else {
+            itemSessionControllerSettings.setRandomSeedSource(testSessionControllerSettings.getRandomSeedSource());
+        }
 
         /* Create controller and forward any notifications it generates */
         final TestPlanNodeKey key = itemRefNode.getKey();
@@ -43,9 +43,12 @@ import uk.ac.ed.ph.jqtiplus.node.test.AssessmentTest;
 import uk.ac.ed.ph.jqtiplus.node.test.ItemSessionControl;
 import uk.ac.ed.ph.jqtiplus.node.test.SectionPart;
 import uk.ac.ed.ph.jqtiplus.node.test.TestPart;
+import uk.ac.ed.ph.jqtiplus.node.test.outcome.processing.OutcomeProcessing;
 import uk.ac.ed.ph.jqtiplus.resolution.ResolvedAssessmentItem;
 import uk.ac.ed.ph.jqtiplus.resolution.ResolvedAssessmentTest;
 import uk.ac.ed.ph.jqtiplus.resolution.RootNodeLookup;
+import uk.ac.ed.ph.jqtiplus.running.compiled.CompiledProcessing;
+import uk.ac.ed.ph.jqtiplus.running.compiled.ProcessingCompiler;
 import uk.ac.ed.ph.jqtiplus.state.EffectiveItemSessionControl;
 import uk.ac.ed.ph.jqtiplus.state.ItemProcessingMap;
 import uk.ac.ed.ph.jqtiplus.state.TestProcessingMap;
@@ -152,10 +155,17 @@ public final class TestProcessingInitializer {
 
         }
 
+        /* Compile outcome processing if the test is valid (as compiled rules skip validity checks) */
+        CompiledProcessing compiledOutcomeProcessing = null;
+        final OutcomeProcessing outcomeProcessing = test.getOutcomeProcessing();
+        if (isTestValid && outcomeProcessing!=null) {
+            compiledOutcomeProcessing = ProcessingCompiler.forTest(outcomeDeclarationMapBuilder).compileOutcomeProcessing(outcomeProcessing);
+        }
+
         /* That's it! */
         return new TestProcessingMap(resolvedAssessmentTest, isTestValid,
                 abstractParts, effectiveItemSessionControlMap, outcomeDeclarationMapBuilder,
-                durationResponseDeclaration, itemProcessingMapBuilder);
+                durationResponseDeclaration, itemProcessingMapBuilder, compiledOutcomeProcessing);
     }
 
     private void doOutcomeVariable(final OutcomeDeclaration declaration) {
@@ -34,7 +34,6 @@
 package uk.ac.ed.ph.jqtiplus.running;
 
 import uk.ac.ed.ph.jqtiplus.JqtiExtensionManager;
-import uk.ac.ed.ph.jqtiplus.JqtiExtensionPackage;
 import uk.ac.ed.ph.jqtiplus.JqtiLifecycleEventType;
 import uk.ac.ed.ph.jqtiplus.exception.QtiCandidateStateException;
 import uk.ac.ed.ph.jqtiplus.exception.QtiLogicException;
@@ -60,6 +59,7 @@ import uk.ac.ed.ph.jqtiplus.node.test.SubmissionMode;
 import uk.ac.ed.ph.jqtiplus.node.test.TemplateDefault;
 import uk.ac.ed.ph.jqtiplus.node.test.TestPart;
 import uk.ac.ed.ph.jqtiplus.node.test.outcome.processing.OutcomeProcessing;
+import uk.ac.ed.ph.jqtiplus.running.compiled.CompiledProcessing;
 import uk.ac.ed.ph.jqtiplus.state.AssessmentSectionSessionState;
 import uk.ac.ed.ph.jqtiplus.state.ControlObjectSessionState;
 import uk.ac.ed.ph.jqtiplus.state.EffectiveItemSessionControl;
@@ -149,9 +149,7 @@ public final class TestSessionController extends TestProcessingController {
     //-------------------------------------------------------------------
 
     private void fireLifecycleEvent(final JqtiLifecycleEventType eventType) {
-        for (final JqtiExtensionPackage<?> extensionPackage : jqtiExtensionManager.getExtensionPackages()) {
-            extensionPackage.lifecycleEvent(this, eventType);
-        }
+        jqtiExtensionManager.fireJqtiLifecycleEvent(this, eventType);
     }
 
     //-------------------------------------------------------------------
@@ -1550,8 +1548,12 @@ public final class TestSessionController extends TestProcessingController {
         try {
             resetOutcomeVariables();
 
+            final CompiledProcessing compiledOutcomeProcessing = testProcessingMap.getCompiledOutcomeProcessing();
             final OutcomeProcessing outcomeProcessing = getSubjectTest().getOutcomeProcessing();
-            if (outcomeProcessing != null) {
+            if (compiledOutcomeProcessing!=null && testSessionControllerSettings.isCompiledProcessingEnabled()) {
+                compiledOutcomeProcessing.execute(this);
+            }
+            else if (outcomeProcessing != null) {
                 outcomeProcessing.evaluate(this);
             }
         }
@@ -35,6 +35,7 @@ package uk.ac.ed.ph.jqtiplus.running;
 
 import uk.ac.ed.ph.jqtiplus.JqtiPlus;
 import uk.ac.ed.ph.jqtiplus.internal.util.ObjectUtilities;
+import uk.ac.ed.ph.jqtiplus.running.compiled.ProcessingCompiler;
 
 import java.io.Serializable;
 
@@ -53,13 +54,34 @@ public class TestSessionControllerSettings implements Serializable {
      */
     private int templateProcessingLimit;
 
+    /**
+     * Whether to use the compiled forms of processing rules where available, rather than
+     * interpreting the node tree directly. (Compiled rules are only created for valid
+     * items and tests.)
+     *
+     * @see ProcessingCompiler
+     */
+    private boolean compiledProcessingEnabled;
+
+    /**
+     * Source of the seeds used for randomisation (e.g. shuffling and selection).
+     * Set this to a {@link FixedRandomSeedSource} to get reproducible behaviour.
+     *
+     * @see RandomSeedSource
+     */
+    private RandomSeedSource randomSeedSource;
+
     public TestSessionControllerSettings() {
         this.templateProcessingLimit = JqtiPlus.DEFAULT_TEMPLATE_PROCESSING_LIMIT;
+        this.compiledProcessingEnabled = true;
+        this.randomSeedSource = SystemRandomSeedSource.INSTANCE;
     }
 
     /** (Copy constructor) */
     public TestSessionControllerSettings(final TestSessionControllerSettings template) {
         this.templateProcessingLimit = template.templateProcessingLimit;
+        this.compiledProcessingEnabled = template.compiledProcessingEnabled;
+        this.randomSeedSource = template.randomSeedSource;
     }
 
 
@@ -73,6 +95,24 @@ public class TestSessionControllerSettings implements Serializable {
     }
 
 
+    public boolean isCompiledProcessingEnabled() {
+        return compiledProcessingEnabled;
+    }
+
+    public void setCompiledProcessingEnabled(final boolean compiledProcessingEnabled) {
+        this.compiledProcessingEnabled = compiledProcessingEnabled;
+    }
+
+
+    public RandomSeedSource getRandomSeedSource() {
+        return randomSeedSource;
+    }
+
+    public void setRandomSeedSource(final RandomSeedSource randomSeedSource) {
+        this.randomSeedSource = randomSeedSource;
+    }
+
+
     @Override
     public String toString() {
         return ObjectUtilities.beanToString(this);
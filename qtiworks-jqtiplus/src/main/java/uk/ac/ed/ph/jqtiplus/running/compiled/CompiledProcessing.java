@@ -0,0 +1,91 @@
+/* Copyright (c) 2012-2013, University of Edinburgh.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice, this
+ *   list of conditions and the following disclaimer in the documentation and/or
+ *   other materials provided with the distribution.
+ *
+ * * Neither the name of the University of Edinburgh nor the names of its
+ *   contributors may be used to endorse or promote products derived from this
+ *   software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ *
+ * This software is derived from (and contains code from) QTITools and MathAssessEngine.
+ * QTITools is (c) 2008, University of Southampton.
+ * MathAssessEngine is (c) 2010, University of Edinburgh.
+ */
+package uk.ac.ed.ph.jqtiplus.running.compiled;
+
+import uk.ac.ed.ph.jqtiplus.internal.util.Assert;
+import uk.ac.ed.ph.jqtiplus.node.QtiNode;
+import uk.ac.ed.ph.jqtiplus.running.ProcessingContext;
+
+import java.io.Serializable;
+
+/**
+ * Compiled form of a <code>responseProcessing</code>, <code>templateProcessing</code> or
+ * <code>outcomeProcessing</code> rule tree, created by {@link ProcessingCompiler}.
+ * <p>
+ * Usage: an instance of this class can be safely used by multiple Threads.
+ *
+ * @author David McKain
+ */
+public final class CompiledProcessing implements Serializable {
+
+    private static final long serialVersionUID = -5471870478421318853L;
+
+    private final QtiNode source;
+    private final CompiledRule[] rules;
+
+    CompiledProcessing(final QtiNode source, final CompiledRule[] rules) {
+        this.source = source;
+        this.rules = rules;
+    }
+
+    /** Returns the processing {@link QtiNode} that was compiled to create this */
+    public QtiNode getSource() {
+        return source;
+    }
+
+    /** Returns the number of top-level rules, after any processing fragments have been inlined */
+    public int getRuleCount() {
+        return rules.length;
+    }
+
+    /**
+     * Executes the compiled rules in order, stopping early if one of them
+     * signals that processing should finish.
+     *
+     * @return {@link ProcessingSignal} from the last rule executed, which will
+     *   be {@link ProcessingSignal#CONTINUE} if all rules were executed.
+     */
+    public ProcessingSignal execute(final ProcessingContext context) {
+        Assert.notNull(context, "context");
+        return ProcessingCompiler.executeRules(rules, context);
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + "@" + Integer.toHexString(System.identityHashCode(this))
+                + "(source=" + source
+                + ",ruleCount=" + rules.length
+                + ")";
+    }
+}
@@ -0,0 +1,633 @@
+/* Copyright (c) 2012-2013, University of Edinburgh.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice, this
+ *   list of conditions and the following disclaimer in the documentation and/or
+ *   other materials provided with the distribution.
+ *
+ * * Neither the name of the University of Edinburgh nor the names of its
+ *   contributors may be used to endorse or promote products derived from this
+ *   software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ *
+ * This software is derived from (and contains code from) QTITools and MathAssessEngine.
+ * QTITools is (c) 2008, University of Southampton.
+ * MathAssessEngine is (c) 2010, University of Edinburgh.
+ */
+package uk.ac.ed.ph.jqtiplus.running.compiled;
+
+import uk.ac.ed.ph.jqtiplus.exception.QtiLogicException;
+import uk.ac.ed.ph.jqtiplus.exception.QtiProcessingInterrupt;
+import uk.ac.ed.ph.jqtiplus.exception.TemplateProcessingInterrupt;
+import uk.ac.ed.ph.jqtiplus.internal.util.Assert;
+import uk.ac.ed.ph.jqtiplus.node.expression.AbstractFunctionalExpression;
+import uk.ac.ed.ph.jqtiplus.node.expression.Expression;
+import uk.ac.ed.ph.jqtiplus.node.expression.general.BaseValue;
+import uk.ac.ed.ph.jqtiplus.node.expression.general.Null;
+import uk.ac.ed.ph.jqtiplus.node.expression.general.Variable;
+import uk.ac.ed.ph.jqtiplus.node.item.response.declaration.ResponseDeclaration;
+import uk.ac.ed.ph.jqtiplus.node.item.response.processing.ExitResponse;
+import uk.ac.ed.ph.jqtiplus.node.item.response.processing.ResponseCondition;
+import uk.ac.ed.ph.jqtiplus.node.item.response.processing.ResponseConditionExpressionChild;
+import uk.ac.ed.ph.jqtiplus.node.item.response.processing.ResponseElse;
+import uk.ac.ed.ph.jqtiplus.node.item.response.processing.ResponseProcessing;
+import uk.ac.ed.ph.jqtiplus.node.item.response.processing.ResponseProcessingFragment;
+import uk.ac.ed.ph.jqtiplus.node.item.response.processing.ResponseRule;
+import uk.ac.ed.ph.jqtiplus.node.item.template.declaration.TemplateDeclaration;
+import uk.ac.ed.ph.jqtiplus.node.item.template.processing.ExitTemplate;
+import uk.ac.ed.ph.jqtiplus.node.item.template.processing.SetTemplateValue;
+import uk.ac.ed.ph.jqtiplus.node.item.template.processing.TemplateCondition;
+import uk.ac.ed.ph.jqtiplus.node.item.template.processing.TemplateConditionExpressionChild;
+import uk.ac.ed.ph.jqtiplus.node.item.template.processing.TemplateConstraint;
+import uk.ac.ed.ph.jqtiplus.node.item.template.processing.TemplateElse;
+import uk.ac.ed.ph.jqtiplus.node.item.template.processing.TemplateProcessing;
+import uk.ac.ed.ph.jqtiplus.node.item.template.processing.TemplateProcessingRule;
+import uk.ac.ed.ph.jqtiplus.node.outcome.declaration.OutcomeDeclaration;
+import uk.ac.ed.ph.jqtiplus.node.shared.VariableDeclaration;
+import uk.ac.ed.ph.jqtiplus.node.test.outcome.processing.ExitTest;
+import uk.ac.ed.ph.jqtiplus.node.test.outcome.processing.OutcomeCondition;
+import uk.ac.ed.ph.jqtiplus.node.test.outcome.processing.OutcomeConditionExpressionChild;
+import uk.ac.ed.ph.jqtiplus.node.test.outcome.processing.OutcomeElse;
+import uk.ac.ed.ph.jqtiplus.node.test.outcome.processing.OutcomeProcessing;
+import uk.ac.ed.ph.jqtiplus.node.test.outcome.processing.OutcomeProcessingFragment;
+import uk.ac.ed.ph.jqtiplus.node.test.outcome.processing.OutcomeRule;
+import uk.ac.ed.ph.jqtiplus.running.ItemProcessingContext;
+import uk.ac.ed.ph.jqtiplus.running.ProcessingContext;
+import uk.ac.ed.ph.jqtiplus.running.TestProcessingContext;
+import uk.ac.ed.ph.jqtiplus.types.Identifier;
+import uk.ac.ed.ph.jqtiplus.value.BooleanValue;
+import uk.ac.ed.ph.jqtiplus.value.NullValue;
+import uk.ac.ed.ph.jqtiplus.value.Value;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compiles <code>responseProcessing</code>, <code>templateProcessing</code> and
+ * <code>outcomeProcessing</code> rule trees into {@link CompiledProcessing} plans.
+ * <p>
+ * A compiled plan evaluates to the same results as the interpreted node tree, but
+ * resolves everything it can up front: processing fragments are inlined, constants
+ * and variable identifiers are bound once, the {@link VariableDeclaration}s referenced by
+ * item <code>variable</code> expressions and targeted by <code>setOutcomeValue</code> and
+ * <code>setTemplateValue</code> are looked up once,
+ * and child expressions are held in plain arrays rather than being looked up via
+ * the node groups on each evaluation. Per-node validity checks are skipped entirely,
+ * so plans must only be created for items and tests that are known to be valid.
+ * <p>
+ * Rules and expressions that have no compiled form (e.g. <code>lookupOutcomeValue</code>
+ * or expressions that don't extend {@link AbstractFunctionalExpression}) are delegated
+ * to the interpreter, so any valid rule tree can be compiled.
+ * <p>
+ * Usage: an instance of this class can be safely used by multiple Threads.
+ *
+ * @see CompiledProcessing
+ *
+ * @author David McKain
+ */
+public final class ProcessingCompiler {
+
+    private static final Value[] NO_CHILD_VALUES = new Value[0];
+
+    private final boolean subjectIsItem;
+    private final Map<Identifier, TemplateDeclaration> templateDeclarationMap;
+    private final Map<Identifier, ResponseDeclaration> responseDeclarationMap;
+    private final Map<Identifier, OutcomeDeclaration> outcomeDeclarationMap;
+
+    private ProcessingCompiler(final boolean subjectIsItem,
+            final Map<Identifier, TemplateDeclaration> templateDeclarationMap,
+            final Map<Identifier, ResponseDeclaration> responseDeclarationMap,
+            final Map<Identifier, OutcomeDeclaration> outcomeDeclarationMap) {
+        this.subjectIsItem = subjectIsItem;
+        this.templateDeclarationMap = templateDeclarationMap;
+        this.responseDeclarationMap = responseDeclarationMap;
+        this.outcomeDeclarationMap = outcomeDeclarationMap;
+    }
+
+    /**
+     * Creates a compiler for the processing rules in a valid item.
+     *
+     * @param validTemplateDeclarationMap map of valid template declarations in the item
+     * @param validResponseDeclarationMap map of valid response declarations in the item
+     * @param validOutcomeDeclarationMap map of valid outcome declarations in the item
+     */
+    public static ProcessingCompiler forItem(final Map<Identifier, TemplateDeclaration> validTemplateDeclarationMap,
+            final Map<Identifier, ResponseDeclaration> validResponseDeclarationMap,
+            final Map<Identifier, OutcomeDeclaration> validOutcomeDeclarationMap) {
+        Assert.notNull(validTemplateDeclarationMap, "validTemplateDeclarationMap");
+        Assert.notNull(validResponseDeclarationMap, "validResponseDeclarationMap");
+        Assert.notNull(validOutcomeDeclarationMap, "validOutcomeDeclarationMap");
+        return new ProcessingCompiler(true, validTemplateDeclarationMap, validResponseDeclarationMap, validOutcomeDeclarationMap);
+    }
+
+    /**
+     * Creates a compiler for the outcome processing rules in a valid test.
+     *
+     * @param validOutcomeDeclarationMap map of valid outcome declarations in the test
+     */
+    public static ProcessingCompiler forTest(final Map<Identifier, OutcomeDeclaration> validOutcomeDeclarationMap) {
+        Assert.notNull(validOutcomeDeclarationMap, "validOutcomeDeclarationMap");
+        return new ProcessingCompiler(false, Collections.<Identifier, TemplateDeclaration>emptyMap(),
+                Collections.<Identifier, ResponseDeclaration>emptyMap(), validOutcomeDeclarationMap);
+    }
+
+    //-------------------------------------------------------------------
+    // Rule compilation
+
+    public CompiledProcessing compileResponseProcessing(final ResponseProcessing responseProcessing) {
+        Assert.notNull(responseProcessing, "responseProcessing");
+        return new CompiledProcessing(responseProcessing, compileResponseRules(responseProcessing.getResponseRules()));
+    }
+
+    public CompiledProcessing compileTemplateProcessing(final TemplateProcessing templateProcessing) {
+        Assert.notNull(templateProcessing, "templateProcessing");
+        return new CompiledProcessing(templateProcessing, compileTemplateRules(templateProcessing.getTemplateProcessingRules()));
+    }
+
+    public CompiledProcessing compileOutcomeProcessing(final OutcomeProcessing outcomeProcessing) {
+        Assert.notNull(outcomeProcessing, "outcomeProcessing");
+        return new CompiledProcessing(outcomeProcessing, compileOutcomeRules(outcomeProcessing.getOutcomeRules()));
+    }
+
+    private CompiledRule[] compileResponseRules(final List<? extends ResponseRule> responseRules) {
+        final List<CompiledRule> result = new ArrayList<CompiledRule>(responseRules.size());
+        for (final ResponseRule responseRule : responseRules) {
+            if (responseRule instanceof ResponseProcessingFragment) {
+                /* Inline fragments, as they simply run their rules in sequence */
+                result.addAll(toList(compileResponseRules(((ResponseProcessingFragment) responseRule).getResponseRules())));
+            }
+            else {
+                result.add(compileResponseRule(responseRule));
+            }
+        }
+        return result.toArray(new CompiledRule[result.size()]);
+    }
+
+    private CompiledRule compileResponseRule(final ResponseRule responseRule) {
+        if (responseRule instanceof ResponseCondition) {
+            final ResponseCondition responseCondition = (ResponseCondition) responseRule;
+            final ConditionRuleBuilder builder = new ConditionRuleBuilder();
+            addResponseBranch(builder, responseCondition.getResponseIf());
+            for (final ResponseConditionExpressionChild responseElseIf : responseCondition.getResponseElseIfs()) {
+                addResponseBranch(builder, responseElseIf);
+            }
+            final ResponseElse responseElse = responseCondition.getResponseElse();
+            if (responseElse!=null) {
+                builder.addBranch(null, compileResponseRules(responseElse.getResponseRules()));
+            }
+            return builder.build();
+        }
+        else if (responseRule instanceof uk.ac.ed.ph.jqtiplus.node.item.response.processing.SetOutcomeValue) {
+            final uk.ac.ed.ph.jqtiplus.node.item.response.processing.SetOutcomeValue setOutcomeValue = (uk.ac.ed.ph.jqtiplus.node.item.response.processing.SetOutcomeValue) responseRule;
+            final OutcomeDeclaration outcomeDeclaration = outcomeDeclarationMap.get(setOutcomeValue.getIdentifier());
+            if (outcomeDeclaration!=null) {
+                return new SetVariableRule(outcomeDeclaration, compileExpression(setOutcomeValue.getExpression()));
+            }
+        }
+        else if (responseRule instanceof ExitResponse) {
+            return ExitRule.INSTANCE;
+        }
+        return new InterpretedResponseRule(responseRule);
+    }
+
+    private void addResponseBranch(final ConditionRuleBuilder builder, final ResponseConditionExpressionChild child) {
+        builder.addBranch(compileExpression(child.getExpression()), compileResponseRules(child.getResponseRules()));
+    }
+
+    private CompiledRule[] compileTemplateRules(final List<? extends TemplateProcessingRule> templateRules) {
+        final CompiledRule[] result = new CompiledRule[templateRules.size()];
+        for (int i=0; i<result.length; i++) {
+            result[i] = compileTemplateRule(templateRules.get(i));
+        }
+        return result;
+    }
+
+    private CompiledRule compileTemplateRule(final TemplateProcessingRule templateRule) {
+        if (templateRule instanceof TemplateCondition) {
+            final TemplateCondition templateCondition = (TemplateCondition) templateRule;
+            final ConditionRuleBuilder builder = new ConditionRuleBuilder();
+            addTemplateBranch(builder, templateCondition.getTemplateIf());
+            for (final TemplateConditionExpressionChild templateElseIf : templateCondition.getTemplateElseIfs()) {
+                addTemplateBranch(builder, templateElseIf);
+            }
+            final TemplateElse templateElse = templateCondition.getTemplateElse();
+            if (templateElse!=null) {
+                builder.addBranch(null, compileTemplateRules(templateElse.getTemplateRules()));
+            }
+            return builder.build();
+        }
+        else if (templateRule instanceof SetTemplateValue) {
+            final SetTemplateValue setTemplateValue = (SetTemplateValue) templateRule;
+            final TemplateDeclaration templateDeclaration = templateDeclarationMap.get(setTemplateValue.getIdentifier());
+            if (templateDeclaration!=null) {
+                return new SetVariableRule(templateDeclaration, compileExpression(setTemplateValue.getExpression()));
+            }
+        }
+        else if (templateRule instanceof TemplateConstraint) {
+            return new TemplateConstraintRule(compileExpression(((TemplateConstraint) templateRule).getExpression()));
+        }
+        else if (templateRule instanceof ExitTemplate) {
+            return ExitRule.INSTANCE;
+        }
+        return new InterpretedTemplateRule(templateRule);
+    }
+
+    private void addTemplateBranch(final ConditionRuleBuilder builder, final TemplateConditionExpressionChild child) {
+        builder.addBranch(compileExpression(child.getExpression()), compileTemplateRules(child.getTemplateRules()));
+    }
+
+    private CompiledRule[] compileOutcomeRules(final List<? extends OutcomeRule> outcomeRules) {
+        final List<CompiledRule> result = new ArrayList<CompiledRule>(outcomeRules.size());
+        for (final OutcomeRule outcomeRule : outcomeRules) {
+            if (outcomeRule instanceof OutcomeProcessingFragment) {
+                /* Inline fragments, as they simply run their rules in sequence */
+                result.addAll(toList(compileOutcomeRules(((OutcomeProcessingFragment) outcomeRule).getOutcomeRules())));
+            }
+            else {
+                result.add(compileOutcomeRule(outcomeRule));
+            }
+        }
+        return result.toArray(new CompiledRule[result.size()]);
+    }
+
+    private CompiledRule compileOutcomeRule(final OutcomeRule outcomeRule) {
+        if (outcomeRule instanceof OutcomeCondition) {
+            final OutcomeCondition outcomeCondition = (OutcomeCondition) outcomeRule;
+            final ConditionRuleBuilder builder = new ConditionRuleBuilder();
+            addOutcomeBranch(builder, outcomeCondition.getOutcomeIf());
+            for (final OutcomeConditionExpressionChild outcomeElseIf : outcomeCondition.getOutcomeElseIfs()) {
+                addOutcomeBranch(builder, outcomeElseIf);
+            }
+            final OutcomeElse outcomeElse = outcomeCondition.getOutcomeElse();
+            if (outcomeElse!=null) {
+                builder.addBranch(null, compileOutcomeRules(outcomeElse.getOutcomeRules()));
+            }
+            return builder.build();
+        }
+        else if (outcomeRule instanceof uk.ac.ed.ph.jqtiplus.node.test.outcome.processing.SetOutcomeValue) {
+            final uk.ac.ed.ph.jqtiplus.node.test.outcome.processing.SetOutcomeValue setOutcomeValue = (uk.ac.ed.ph.jqtiplus.node.test.outcome.processing.SetOutcomeValue) outcomeRule;
+            final OutcomeDeclaration outcomeDeclaration = outcomeDeclarationMap.get(setOutcomeValue.getIdentifier());
+            if (outcomeDeclaration!=null) {
+                return new SetVariableRule(outcomeDeclaration, compileExpression(setOutcomeValue.getExpression()));
+            }
+        }
+        else if (outcomeRule instanceof ExitTest) {
+            return ExitRule.INSTANCE;
+        }
+        return new InterpretedOutcomeRule(outcomeRule);
+    }
+
+    private void addOutcomeBranch(final ConditionRuleBuilder builder, final OutcomeConditionExpressionChild child) {
+        builder.addBranch(compileExpression(child.getExpression()), compileOutcomeRules(child.getOutcomeRules()));
+    }
+
+    private static List<CompiledRule> toList(final CompiledRule[] rules) {
+        final List<CompiledRule> result = new ArrayList<CompiledRule>(rules.length);
+        Collections.addAll(result, rules);
+        return result;
+    }
+
+    //-------------------------------------------------------------------
+    // Expression compilation
+
+    /**
+     * Compiles the given {@link Expression} (and its descendants).
+     */
+    public CompiledExpression compileExpression(final Expression expression) {
+        Assert.notNull(expression, "expression");
+        if (expression instanceof BaseValue) {
+            return new ConstantExpression(((BaseValue) expression).getSingleValue());
+        }
+        else if (expression instanceof Null) {
+            return new ConstantExpression(NullValue.INSTANCE);
+        }
+        else if (subjectIsItem && expression instanceof Variable) {
+            /* (Within items, variable references are always local so can be bound now) */
+            final Identifier identifier = Identifier.assumedLegal(((Variable) expression).getIdentifier().toString());
+            final VariableDeclaration variableDeclaration = lookupItemVariableDeclaration(identifier);
+            if (variableDeclaration!=null) {
+                return new ItemDeclaredVariableExpression(variableDeclaration);
+            }
+            return new ItemVariableExpression(identifier);
+        }
+        else if (expression instanceof AbstractFunctionalExpression) {
+            final List<Expression> children = expression.getExpressions();
+            final CompiledExpression[] compiledChildren = new CompiledExpression[children.size()];
+            for (int i=0; i<compiledChildren.length; i++) {
+                compiledChildren[i] = compileExpression(children.get(i));
+            }
+            return new FunctionalExpression((AbstractFunctionalExpression) expression, compiledChildren);
+        }
+        return new InterpretedExpression(expression);
+    }
+
+    /**
+     * Looks up the item variable declaration having the given {@link Identifier}, checking
+     * types in the same order as an {@link ItemProcessingContext} does when evaluating a variable.
+     */
+    private VariableDeclaration lookupItemVariableDeclaration(final Identifier identifier) {
+        VariableDeclaration result = templateDeclarationMap.get(identifier);
+        if (result==null) {
+            result = outcomeDeclarationMap.get(identifier);
+            if (result==null) {
+                result = responseDeclarationMap.get(identifier);
+            }
+        }
+        return result;
+    }
+
+    //-------------------------------------------------------------------
+    // Execution helpers
+
+    static ProcessingSignal executeRules(final CompiledRule[] rules, final ProcessingContext context) {
+        for (final CompiledRule rule : rules) {
+            final ProcessingSignal signal = rule.execute(context);
+            if (signal!=ProcessingSignal.CONTINUE) {
+                return signal;
+            }
+        }
+        return ProcessingSignal.CONTINUE;
+    }
+
+    static boolean isTrue(final Value value) {
+        return !value.isNull() && ((BooleanValue) value).booleanValue();
+    }
+
+    //-------------------------------------------------------------------
+    // Compiled expressions
+
+    private static final class ConstantExpression implements CompiledExpression {
+
+        private static final long serialVersionUID = 3356287290145012409L;
+
+        private final Value value;
+
+        public ConstantExpression(final Value value) {
+            this.value = value;
+        }
+
+        @Override
+        public Value evaluate(final ProcessingContext context) {
+            return value;
+        }
+    }
+
+    private static final class ItemVariableExpression implements CompiledExpression {
+
+        private static final long serialVersionUID = -2591442963470286214L;
+
+        private final Identifier identifier;
+
+        public ItemVariableExpression(final Identifier identifier) {
+            this.identifier = identifier;
+        }
+
+        @Override
+        public Value evaluate(final ProcessingContext context) {
+            return context.evaluateVariableValue(identifier);
+        }
+    }
+
+    private static final class ItemDeclaredVariableExpression implements CompiledExpression {
+
+        private static final long serialVersionUID = 4839512085066224318L;
+
+        private final VariableDeclaration variableDeclaration;
+
+        public ItemDeclaredVariableExpression(final VariableDeclaration variableDeclaration) {
+            this.variableDeclaration = variableDeclaration;
+        }
+
+        @Override
+        public Value evaluate(final ProcessingContext context) {
+            return context.evaluateVariableValue(variableDeclaration);
+        }
+    }
+
+    private static final class FunctionalExpression implements CompiledExpression {
+
+        private static final long serialVersionUID = 7908214035812957245L;
+
+        private final AbstractFunctionalExpression expression;
+        private final CompiledExpression[] children;
+
+        public FunctionalExpression(final AbstractFunctionalExpression expression, final CompiledExpression[] children) {
+            this.expression = expression;
+            this.children = children;
+        }
+
+        @Override
+        public Value evaluate(final ProcessingContext context) {
+            final Value[] childValues = children.length > 0 ? new Value[children.length] : NO_CHILD_VALUES;
+            for (int i=0; i<children.length; i++) {
+                childValues[i] = children[i].evaluate(context);
+            }
+            return expression.evaluateValidSelf(context, childValues);
+        }
+    }
+
+    private static final class InterpretedExpression implements CompiledExpression {
+
+        private static final long serialVersionUID = 4093587290541265783L;
+
+        private final Expression expression;
+
+        public InterpretedExpression(final Expression expression) {
+            this.expression = expression;
+        }
+
+        @Override
+        public Value evaluate(final ProcessingContext context) {
+            return expression.evaluate(context);
+        }
+    }
+
+    //-------------------------------------------------------------------
+    // Compiled rules
+
+    private static final class ConditionRuleBuilder {
+
+        private final List<CompiledExpression> conditions = new ArrayList<CompiledExpression>();
+        private final List<CompiledRule[]> branches = new ArrayList<CompiledRule[]>();
+
+        /** Adds a branch. A null condition denotes the final <code>else</code> branch */
+        public void addBranch(final CompiledExpression condition, final CompiledRule[] rules) {
+            conditions.add(condition);
+            branches.add(rules);
+        }
+
+        public ConditionRule build() {
+            return new ConditionRule(conditions.toArray(new CompiledExpression[conditions.size()]),
+                    branches.toArray(new CompiledRule[branches.size()][]));
+        }
+    }
+
+    private static final class ConditionRule implements CompiledRule {
+
+        private static final long serialVersionUID = -1880283938960406311L;
+
+        private final CompiledExpression[] conditions;
+        private final CompiledRule[][] branches;
+
+        public ConditionRule(final CompiledExpression[] conditions, final CompiledRule[][] branches) {
+            this.conditions = conditions;
+            this.branches = branches;
+        }
+
+        @Override
+        public ProcessingSignal execute(final ProcessingContext context) {
+            for (int i=0; i<conditions.length; i++) {
+                final CompiledExpression condition = conditions[i];
+                if (condition==null || isTrue(condition.evaluate(context))) {
+                    return executeRules(branches[i], context);
+                }
+            }
+            return ProcessingSignal.CONTINUE;
+        }
+    }
+
+    private static final class SetVariableRule implements CompiledRule {
+
+        private static final long serialVersionUID = 6245232519908424946L;
+
+        private final VariableDeclaration variableDeclaration;
+        private final CompiledExpression expression;
+
+        public SetVariableRule(final VariableDeclaration variableDeclaration, final CompiledExpression expression) {
+            this.variableDeclaration = variableDeclaration;
+            this.expression = expression;
+        }
+
+        @Override
+        public ProcessingSignal execute(final ProcessingContext context) {
+            context.setVariableValue(variableDeclaration, expression.evaluate(context));
+            return ProcessingSignal.CONTINUE;
+        }
+    }
+
+    private static final class TemplateConstraintRule implements CompiledRule {
+
+        private static final long serialVersionUID = -8208736567962096263L;
+
+        private final CompiledExpression expression;
+
+        public TemplateConstraintRule(final CompiledExpression expression) {
+            this.expression = expression;
+        }
+
+        @Override
+        public ProcessingSignal execute(final ProcessingContext context) {
+            return isTrue(expression.evaluate(context)) ? ProcessingSignal.CONTINUE : ProcessingSignal.TEMPLATE_CONSTRAINT_FAILURE;
+        }
+    }
+
+    private static final class ExitRule implements CompiledRule {
+
+        private static final long serialVersionUID = 2620364566186339563L;
+
+        static final ExitRule INSTANCE = new ExitRule();
+
+        @Override
+        public ProcessingSignal execute(final ProcessingContext context) {
+            return ProcessingSignal.EXIT;
+        }
+
+        private Object readResolve() {
+            return INSTANCE;
+        }
+    }
+
+    private static final class InterpretedResponseRule implements CompiledRule {
+
+        private static final long serialVersionUID = -4437426617372520442L;
+
+        private final ResponseRule responseRule;
+
+        public InterpretedResponseRule(final ResponseRule responseRule) {
+            this.responseRule = responseRule;
+        }
+
+        @Override
+        public ProcessingSignal execute(final ProcessingContext context) {
+            try {
+                responseRule.evaluate((ItemProcessingContext) context);
+                return ProcessingSignal.CONTINUE;
+            }
+            catch (final QtiProcessingInterrupt e) {
+                return ProcessingSignal.EXIT;
+            }
+        }
+    }
+
+    private static final class InterpretedTemplateRule implements CompiledRule {
+
+        private static final long serialVersionUID = 1758239364931004788L;
+
+        private final TemplateProcessingRule templateRule;
+
+        public InterpretedTemplateRule(final TemplateProcessingRule templateRule) {
+            this.templateRule = templateRule;
+        }
+
+        @Override
+        public ProcessingSignal execute(final ProcessingContext context) {
+            try {
+                templateRule.evaluate((ItemProcessingContext) context);
+                return ProcessingSignal.CONTINUE;
+            }
+            catch (final TemplateProcessingInterrupt e) {
+                switch (e.getInterruptType()) {
+                    case EXIT_TEMPLATE:
+                        return ProcessingSignal.EXIT;
+
+                    case TEMPLATE_CONSTRAINT_FAILURE:
+                        return ProcessingSignal.TEMPLATE_CONSTRAINT_FAILURE;
+
+                    default:
+                        throw new QtiLogicException("Unexpected switch case: " + e.getInterruptType());
+                }
+            }
+        }
+    }
+
+    private static final class InterpretedOutcomeRule implements CompiledRule {
+
+        private static final long serialVersionUID = -3019868451946233637L;
+
+        private final OutcomeRule outcomeRule;
+
+        public InterpretedOutcomeRule(final OutcomeRule outcomeRule) {
+            this.outcomeRule = outcomeRule;
+        }
+
+        @Override
+        public ProcessingSignal execute(final ProcessingContext context) {
+            try {
+                outcomeRule.evaluate((TestProcessingContext) context);
+                return ProcessingSignal.CONTINUE;
+            }
+            catch (final QtiProcessingInterrupt e) {
+                return ProcessingSignal.EXIT;
+            }
+        }
+    }
+}
@@ -36,11 +36,17 @@ package uk.ac.ed.ph.jqtiplus.state;
 import uk.ac.ed.ph.jqtiplus.internal.util.ObjectUtilities;
 import uk.ac.ed.ph.jqtiplus.node.item.AssessmentItem;
 import uk.ac.ed.ph.jqtiplus.node.item.interaction.Interaction;
+import uk.ac.ed.ph.jqtiplus.node.item.response.declaration.AreaMapping;
+import uk.ac.ed.ph.jqtiplus.node.item.response.declaration.AreaMappingIndex;
+import uk.ac.ed.ph.jqtiplus.node.item.response.declaration.Mapping;
+import uk.ac.ed.ph.jqtiplus.node.item.response.declaration.MappingIndex;
 import uk.ac.ed.ph.jqtiplus.node.item.response.declaration.ResponseDeclaration;
 import uk.ac.ed.ph.jqtiplus.node.item.template.declaration.TemplateDeclaration;
 import uk.ac.ed.ph.jqtiplus.node.outcome.declaration.OutcomeDeclaration;
+import uk.ac.ed.ph.jqtiplus.node.shared.VariableDeclaration;
 import uk.ac.ed.ph.jqtiplus.resolution.ResolvedAssessmentItem;
 import uk.ac.ed.ph.jqtiplus.running.ItemProcessingInitializer;
+import uk.ac.ed.ph.jqtiplus.running.compiled.CompiledProcessing;
 import uk.ac.ed.ph.jqtiplus.types.Identifier;
 
 import java.io.Serializable;
@@ -48,9 +54,11 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Map.Entry;
 import java.util.Set;
 
 /**
@@ -74,14 +82,26 @@ public final class ItemProcessingMap implements Serializable {
     private final Map<Identifier, TemplateDeclaration> validTemplateDeclarationMap;
     private final Map<Identifier, ResponseDeclaration> validResponseDeclarationMap;
     private final Map<Identifier, OutcomeDeclaration> validOutcomeDeclarationMap;
+    private final CompiledProcessing compiledTemplateProcessing;
+    private final CompiledProcessing compiledResponseProcessing;
+    private final Map<Identifier, MappingIndex> mappingIndexMap;
+    private final Map<Identifier, AreaMappingIndex> areaMappingIndexMap;
+    private final VariableSlotLayout templateSlotLayout;
+    private final VariableSlotLayout responseSlotLayout;
+    private final VariableSlotLayout outcomeSlotLayout;
+    private final Map<VariableDeclaration, Integer> variableSlotMap;
 
     public ItemProcessingMap(final ResolvedAssessmentItem resolvedAssessmentItem, final boolean isValid,
             final List<Interaction> interactionsBuilder,
             final LinkedHashMap<Identifier, TemplateDeclaration> validTemplateDeclarationMapBuilder,
             final Map<Identifier, ResponseDeclaration> validResponseDeclarationMapBuilder,
-            final Map<Identifier, OutcomeDeclaration> validOutcomeDeclarationMapBuilder) {
+            final Map<Identifier, OutcomeDeclaration> validOutcomeDeclarationMapBuilder,
+            final CompiledProcessing compiledTemplateProcessing,
+            final CompiledProcessing compiledResponseProcessing) {
         this.resolvedAssessmentItem = resolvedAssessmentItem;
         this.isValid = isValid;
+        this.compiledTemplateProcessing = compiledTemplateProcessing;
+        this.compiledResponseProcessing = compiledResponseProcessing;
 
         /* Record interactions and build helper map */
         this.interactions = Collections.unmodifiableList(new ArrayList<Interaction>(interactionsBuilder));
@@ -102,6 +122,54 @@ public final class ItemProcessingMap implements Serializable {
         variableIdentifierSetBuilder.addAll(validResponseDeclarationMap.keySet());
         variableIdentifierSetBuilder.addAll(validOutcomeDeclarationMap.keySet());
         this.validVariableIdentifierSet = Collections.unmodifiableSet(variableIdentifierSetBuilder);
+
+        /* Assign slots to the variables set when an ItemSessionState is initialized, in the same order */
+        this.templateSlotLayout = new VariableSlotLayout(validTemplateDeclarationMap.keySet());
+        this.responseSlotLayout = createSlotLayout(validResponseDeclarationMap.keySet());
+        this.outcomeSlotLayout = createSlotLayout(validOutcomeDeclarationMap.keySet());
+
+        /* Resolve the slot of each valid declaration now so that processing need not look them up */
+        final Map<VariableDeclaration, Integer> variableSlotMapBuilder = new IdentityHashMap<VariableDeclaration, Integer>();
+        addVariableSlots(variableSlotMapBuilder, validTemplateDeclarationMap, templateSlotLayout);
+        addVariableSlots(variableSlotMapBuilder, validResponseDeclarationMap, responseSlotLayout);
+        addVariableSlots(variableSlotMapBuilder, validOutcomeDeclarationMap, outcomeSlotLayout);
+        this.variableSlotMap = Collections.unmodifiableMap(variableSlotMapBuilder);
+
+        /* Index mappings of valid response declarations */
+        final Map<Identifier, MappingIndex> mappingIndexMapBuilder = new HashMap<Identifier, MappingIndex>();
+        final Map<Identifier, AreaMappingIndex> areaMappingIndexMapBuilder = new HashMap<Identifier, AreaMappingIndex>();
+        for (final Entry<Identifier, ResponseDeclaration> entry : validResponseDeclarationMap.entrySet()) {
+            final Mapping mapping = entry.getValue().getMapping();
+            if (mapping!=null) {
+                mappingIndexMapBuilder.put(entry.getKey(), new MappingIndex(mapping));
+            }
+            final AreaMapping areaMapping = entry.getValue().getAreaMapping();
+            if (areaMapping!=null) {
+                areaMappingIndexMapBuilder.put(entry.getKey(), new AreaMappingIndex(areaMapping));
+            }
+        }
+        this.mappingIndexMap = Collections.unmodifiableMap(mappingIndexMapBuilder);
+        this.areaMappingIndexMap = Collections.unmodifiableMap(areaMappingIndexMapBuilder);
+    }
+
+    private static VariableSlotLayout createSlotLayout(final Set<Identifier> declaredIdentifiers) {
+        final List<Identifier> slotIdentifiers = new ArrayList<Identifier>(declaredIdentifiers.size());
+        for (final Identifier identifier : declaredIdentifiers) {
+            if (!VariableDeclaration.isReservedIdentifier(identifier)) {
+                slotIdentifiers.add(identifier);
+            }
+        }
+        return new VariableSlotLayout(slotIdentifiers);
+    }
+
+    private static void addVariableSlots(final Map<VariableDeclaration, Integer> variableSlotMapBuilder,
+            final Map<Identifier, ? extends VariableDeclaration> declarationMap, final VariableSlotLayout slotLayout) {
+        for (final VariableDeclaration declaration : declarationMap.values()) {
+            final int slot = slotLayout.getSlot(declaration.getIdentifier());
+            if (slot>=0) {
+                variableSlotMapBuilder.put(declaration, Integer.valueOf(slot));
+            }
+        }
     }
 
     public boolean isValid() {
@@ -132,6 +200,63 @@ public final class ItemProcessingMap implements Serializable {
         return validOutcomeDeclarationMap;
     }
 
+    /**
+     * Returns the compiled form of the item's <code>templateProcessing</code>, or null if
+     * the item has no template processing or is not valid.
+     */
+    public CompiledProcessing getCompiledTemplateProcessing() {
+        return compiledTemplateProcessing;
+    }
+
+    /**
+     * Returns the compiled form of the <code>responseProcessing</code> that will be used for
+     * this item (taking into account any resolved template), or null if no usable response
+     * processing exists or the item is not valid.
+     */
+    public CompiledProcessing getCompiledResponseProcessing() {
+        return compiledResponseProcessing;
+    }
+
+    /**
+     * Returns the precomputed {@link MappingIndex} for the <code>mapping</code> of the valid
+     * {@link ResponseDeclaration} having the given {@link Identifier}, or null if there is no
+     * such declaration or it has no <code>mapping</code>.
+     */
+    public MappingIndex getMappingIndex(final Identifier responseIdentifier) {
+        return mappingIndexMap.get(responseIdentifier);
+    }
+
+    /**
+     * Returns the precomputed {@link AreaMappingIndex} for the <code>areaMapping</code> of the valid
+     * {@link ResponseDeclaration} having the given {@link Identifier}, or null if there is no
+     * such declaration or it has no <code>areaMapping</code>.
+     */
+    public AreaMappingIndex getAreaMappingIndex(final Identifier responseIdentifier) {
+        return areaMappingIndexMap.get(responseIdentifier);
+    }
+
+    public VariableSlotLayout getTemplateSlotLayout() {
+        return templateSlotLayout;
+    }
+
+    public VariableSlotLayout getResponseSlotLayout() {
+        return responseSlotLayout;
+    }
+
+    public VariableSlotLayout getOutcomeSlotLayout() {
+        return outcomeSlotLayout;
+    }
+
+    /**
+     * Returns the slot assigned to the given {@link VariableDeclaration} within the
+     * {@link VariableSlotLayout} for its type, or -1 if it is not a valid declaration in this item
+     * or has no slot (as is the case for the reserved variables).
+     */
+    public int getVariableSlot(final VariableDeclaration variableDeclaration) {
+        final Integer result = variableSlotMap.get(variableDeclaration);
+        return result!=null ? result.intValue() : -1;
+    }
+
     public List<Interaction> getInteractions() {
         return interactions;
     }
@@ -90,8 +90,11 @@ public final class ItemSessionState extends AbstractPartSessionState implements
 
     /**
      * Map of template values, keyed on Identifier.
+     * <p>
+     * (This and the other variable value maps store declared variables in slots once
+     * {@link #bindVariableSlotLayouts(ItemProcessingMap)} has been called.)
      */
-    private final Map<Identifier, Value> templateValues;
+    private final VariableSlotMap<Value> templateValues;
 
     /**
      * Map of (committed) response values, keyed on Identifier.
@@ -99,7 +102,7 @@ public final class ItemSessionState extends AbstractPartSessionState implements
      * This does not include the implicit <code>duration</code>
      * and <code>numAttempts</code> variables.
      */
-    private final Map<Identifier, Value> responseValues;
+    private final VariableSlotMap<Value> responseValues;
 
     /**
      * Map of outcome values, keyed on Identifier.
@@ -107,7 +110,7 @@ public final class ItemSessionState extends AbstractPartSessionState implements
      * This does not include the implicit <code>completionStatus</code>
      * variable.
      */
-    private final Map<Identifier, Value> outcomeValues;
+    private final VariableSlotMap<Value> outcomeValues;
 
     private final Map<Identifier, ResponseData> rawResponseDataMap;
     private final Set<Identifier> unboundResponseIdentifiers;
@@ -132,12 +135,19 @@ public final class ItemSessionState extends AbstractPartSessionState implements
     private Date suspendTime;
     private String candidateComment;
 
+    /**
+     * Seed used to initialise randomisation (e.g. shuffling) within this session, recorded
+     * so that the session can be replayed exactly. Null if the session has not been initialized,
+     * or if it was created before seeds were recorded.
+     */
+    private Long randomSeed;
+
     public ItemSessionState() {
         super();
         this.shuffledInteractionChoiceOrders = new HashMap<Identifier, List<Identifier>>();
-        this.templateValues = new HashMap<Identifier, Value>();
-        this.responseValues = new HashMap<Identifier, Value>();
-        this.outcomeValues = new HashMap<Identifier, Value>();
+        this.templateValues = new VariableSlotMap<Value>();
+        this.responseValues = new VariableSlotMap<Value>();
+        this.outcomeValues = new VariableSlotMap<Value>();
         this.rawResponseDataMap = new HashMap<Identifier, ResponseData>();
         this.unboundResponseIdentifiers = new HashSet<Identifier>();
         this.invalidResponseIdentifiers = new HashSet<Identifier>();
@@ -151,6 +161,7 @@ public final class ItemSessionState extends AbstractPartSessionState implements
         this.responded = false;
         this.suspendTime = null;
         this.candidateComment = null;
+        this.randomSeed = null;
         resetBuiltinVariables();
     }
 
@@ -176,9 +187,37 @@ public final class ItemSessionState extends AbstractPartSessionState implements
         this.responded = false;
         this.suspendTime = null;
         this.candidateComment = null;
+        this.randomSeed = null;
         resetBuiltinVariables();
     }
 
+    /**
+     * Switches the template, response and outcome values over to the compact slot-based
+     * storage described by the {@link VariableSlotLayout}s in the given {@link ItemProcessingMap}.
+     * Existing values are kept. This does not change the behaviour of this state in any way.
+     * <p>
+     * This is called automatically when an {@link ItemSessionController} is created for this
+     * state.
+     */
+    public void bindVariableSlotLayouts(final ItemProcessingMap itemProcessingMap) {
+        Assert.notNull(itemProcessingMap, "itemProcessingMap");
+        templateValues.bindLayout(itemProcessingMap.getTemplateSlotLayout());
+        responseValues.bindLayout(itemProcessingMap.getResponseSlotLayout());
+        outcomeValues.bindLayout(itemProcessingMap.getOutcomeSlotLayout());
+    }
+
+    /**
+     * Returns whether the template, response and outcome values are currently stored using the
+     * {@link VariableSlotLayout}s in the given {@link ItemProcessingMap}, which must be the case
+     * before any of the slot-indexed accessors (e.g. {@link #getTemplateSlotValue(int)}) are used.
+     */
+    public boolean isBoundToVariableSlotLayouts(final ItemProcessingMap itemProcessingMap) {
+        Assert.notNull(itemProcessingMap, "itemProcessingMap");
+        return templateValues.getLayout()==itemProcessingMap.getTemplateSlotLayout()
+                && responseValues.getLayout()==itemProcessingMap.getResponseSlotLayout()
+                && outcomeValues.getLayout()==itemProcessingMap.getOutcomeSlotLayout();
+    }
+
     public void resetBuiltinVariables() {
         resetDuration();
         setNumAttempts(0);
@@ -283,6 +322,15 @@ public final class ItemSessionState extends AbstractPartSessionState implements
         this.candidateComment = candidateComment;
     }
 
+
+    public Long getRandomSeed() {
+        return randomSeed;
+    }
+
+    public void setRandomSeed(final Long randomSeed) {
+        this.randomSeed = randomSeed;
+    }
+
     //----------------------------------------------------------------
     // Built-in variable manipulation
 
@@ -314,7 +362,7 @@ public final class ItemSessionState extends AbstractPartSessionState implements
 
     @ObjectDumperOptions(DumpMode.IGNORE)
     public IntegerValue getNumAttemptsValue() {
-        return new IntegerValue(numAttempts);
+        return IntegerValue.valueOf(numAttempts);
     }
 
 
@@ -498,6 +546,15 @@ public final class ItemSessionState extends AbstractPartSessionState implements
         setTemplateValue(templateDeclaration.getIdentifier(), value);
     }
 
+    public Value getTemplateSlotValue(final int slot) {
+        return templateValues.getSlotValue(slot);
+    }
+
+    public void setTemplateSlotValue(final int slot, final Value value) {
+        Assert.notNull(value);
+        templateValues.putSlotValue(slot, value);
+    }
+
     public Map<Identifier, Value> getTemplateValues() {
         return Collections.unmodifiableMap(templateValues);
     }
@@ -637,6 +694,15 @@ public final class ItemSessionState extends AbstractPartSessionState implements
         setResponseValue(interaction.getResponseIdentifier(), value);
     }
 
+    public Value getResponseSlotValue(final int slot) {
+        return responseValues.getSlotValue(slot);
+    }
+
+    public void setResponseSlotValue(final int slot, final Value value) {
+        Assert.notNull(value);
+        responseValues.putSlotValue(slot, value);
+    }
+
     /**
      * NB: This does not include the <code>numAttempts</code>
      * and <code>duration</code> response values.
@@ -668,6 +734,15 @@ public final class ItemSessionState extends AbstractPartSessionState implements
         setOutcomeValue(outcomeDeclaration.getIdentifier(), value);
     }
 
+    public Value getOutcomeSlotValue(final int slot) {
+        return outcomeValues.getSlotValue(slot);
+    }
+
+    public void setOutcomeSlotValue(final int slot, final Value value) {
+        Assert.notNull(value);
+        outcomeValues.putSlotValue(slot, value);
+    }
+
     /**
      * NB: This does not include the <code>completionStatus</code> value.
      */
@@ -691,6 +766,7 @@ public final class ItemSessionState extends AbstractPartSessionState implements
                 && ObjectUtilities.nullSafeEquals(completionStatus, other.completionStatus)
                 && ObjectUtilities.nullSafeEquals(sessionStatus, other.sessionStatus)
                 && ObjectUtilities.nullSafeEquals(candidateComment, other.candidateComment)
+                && ObjectUtilities.nullSafeEquals(randomSeed, other.randomSeed)
                 && shuffledInteractionChoiceOrders.equals(other.shuffledInteractionChoiceOrders)
                 && rawResponseDataMap.equals(other.rawResponseDataMap)
                 && unboundResponseIdentifiers.equals(other.unboundResponseIdentifiers)
@@ -717,6 +793,7 @@ public final class ItemSessionState extends AbstractPartSessionState implements
                 responded,
                 suspendTime,
                 candidateComment,
+                randomSeed,
                 shuffledInteractionChoiceOrders,
                 rawResponseDataMap,
                 unboundResponseIdentifiers,
@@ -750,6 +827,7 @@ public final class ItemSessionState extends AbstractPartSessionState implements
                 + ",responded=" + responded
                 + ",suspendTime=" + suspendTime
                 + ",candidateComment=" + candidateComment
+                + ",randomSeed=" + randomSeed
                 + ",shuffledInteractionChoiceOrders=" + shuffledInteractionChoiceOrders
                 + ",overriddenTemplateDefaultValues=" + overriddenTemplateDefaultValues
                 + ",overriddenResponseDefaultValues=" + overriddenResponseDefaultValues
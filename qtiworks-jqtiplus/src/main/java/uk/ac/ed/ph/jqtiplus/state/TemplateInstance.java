@@ -0,0 +1,116 @@
+/* Copyright (c) 2012-2013, University of Edinburgh.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice, this
+ *   list of conditions and the following disclaimer in the documentation and/or
+ *   other materials provided with the distribution.
+ *
+ * * Neither the name of the University of Edinburgh nor the names of its
+ *   contributors may be used to endorse or promote products derived from this
+ *   software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ *
+ * This software is derived from (and contains code from) QTITools and MathAssessEngine.
+ * QTITools is (c) 2008, University of Southampton.
+ * MathAssessEngine is (c) 2010, University of Edinburgh.
+ */
+package uk.ac.ed.ph.jqtiplus.state;
+
+import uk.ac.ed.ph.jqtiplus.internal.util.Assert;
+import uk.ac.ed.ph.jqtiplus.internal.util.ObjectUtilities;
+import uk.ac.ed.ph.jqtiplus.node.item.template.processing.TemplateProcessing;
+import uk.ac.ed.ph.jqtiplus.running.ItemSessionController;
+import uk.ac.ed.ph.jqtiplus.types.Identifier;
+import uk.ac.ed.ph.jqtiplus.value.Value;
+
+import java.io.Serializable;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Immutable snapshot of the parts of an {@link ItemSessionState} determined by a single
+ * run of {@link TemplateProcessing}, i.e. the values of the template variables plus any
+ * response/outcome default values and correct responses overridden by template rules.
+ * The random seed of the session it was captured from is also kept, so that sessions using
+ * this instance record a seed that will reproduce it.
+ * <p>
+ * These can be generated in advance (e.g. in a background pool) via
+ * {@link ItemSessionController#captureTemplateInstance()} and later used instead of
+ * running template processing by {@link ItemSessionController#applyTemplateInstance(java.util.Date, TemplateInstance)}.
+ * <p>
+ * This is safe to share across threads.
+ *
+ * @author David McKain
+ */
+public final class TemplateInstance implements Serializable {
+
+    private static final long serialVersionUID = -6162957374418224501L;
+
+    private final Map<Identifier, Value> templateValues;
+    private final Map<Identifier, Value> overriddenResponseDefaultValues;
+    private final Map<Identifier, Value> overriddenOutcomeDefaultValues;
+    private final Map<Identifier, Value> overriddenCorrectResponseValues;
+    private final Long randomSeed;
+
+    public TemplateInstance(final Map<Identifier, Value> templateValues,
+            final Map<Identifier, Value> overriddenResponseDefaultValues,
+            final Map<Identifier, Value> overriddenOutcomeDefaultValues,
+            final Map<Identifier, Value> overriddenCorrectResponseValues,
+            final Long randomSeed) {
+        Assert.notNull(templateValues, "templateValues");
+        Assert.notNull(overriddenResponseDefaultValues, "overriddenResponseDefaultValues");
+        Assert.notNull(overriddenOutcomeDefaultValues, "overriddenOutcomeDefaultValues");
+        Assert.notNull(overriddenCorrectResponseValues, "overriddenCorrectResponseValues");
+        this.templateValues = Collections.unmodifiableMap(new HashMap<Identifier, Value>(templateValues));
+        this.overriddenResponseDefaultValues = Collections.unmodifiableMap(new HashMap<Identifier, Value>(overriddenResponseDefaultValues));
+        this.overriddenOutcomeDefaultValues = Collections.unmodifiableMap(new HashMap<Identifier, Value>(overriddenOutcomeDefaultValues));
+        this.overriddenCorrectResponseValues = Collections.unmodifiableMap(new HashMap<Identifier, Value>(overriddenCorrectResponseValues));
+        this.randomSeed = randomSeed;
+    }
+
+    public Map<Identifier, Value> getTemplateValues() {
+        return templateValues;
+    }
+
+    public Map<Identifier, Value> getOverriddenResponseDefaultValues() {
+        return overriddenResponseDefaultValues;
+    }
+
+    public Map<Identifier, Value> getOverriddenOutcomeDefaultValues() {
+        return overriddenOutcomeDefaultValues;
+    }
+
+    public Map<Identifier, Value> getOverriddenCorrectResponseValues() {
+        return overriddenCorrectResponseValues;
+    }
+
+    /**
+     * Returns the random seed recorded by the session this was captured from, which may be null.
+     */
+    public Long getRandomSeed() {
+        return randomSeed;
+    }
+
+    @Override
+    public String toString() {
+        return ObjectUtilities.beanToString(this);
+    }
+}
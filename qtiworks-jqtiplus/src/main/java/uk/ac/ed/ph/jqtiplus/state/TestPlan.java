@@ -36,6 +36,7 @@ package uk.ac.ed.ph.jqtiplus.state;
 import uk.ac.ed.ph.jqtiplus.internal.util.Assert;
 import uk.ac.ed.ph.jqtiplus.internal.util.DumpMode;
 import uk.ac.ed.ph.jqtiplus.internal.util.ObjectDumperOptions;
+import uk.ac.ed.ph.jqtiplus.internal.util.ObjectUtilities;
 import uk.ac.ed.ph.jqtiplus.node.test.AbstractPart;
 import uk.ac.ed.ph.jqtiplus.node.test.AssessmentItemRef;
 import uk.ac.ed.ph.jqtiplus.node.test.AssessmentTest;
@@ -106,13 +107,27 @@ public final class TestPlan implements Serializable {
      */
     private final Map<Identifier, List<TestPlanNode>> testPlanNodesByIdentifierMap;
 
+    /**
+     * Seed used by the {@link TestPlanner} when performing selection and ordering, which
+     * is also used to derive the seeds for each item session. Passing this back to
+     * the {@link TestPlanner} will recreate this plan exactly.
+     * <p>
+     * This may be null for plans created before seeds were recorded.
+     */
+    private final Long randomSeed;
+
+    public TestPlan(final TestPlanNode testPlanRootNode) {
+        this(testPlanRootNode, null);
+    }
+
     /**
      * This general constructor is used by {@link TestPlanXmlMarshaller}. It performs a depth-first
      * search starting at the given root node.
      */
-    public TestPlan(final TestPlanNode testPlanRootNode) {
+    public TestPlan(final TestPlanNode testPlanRootNode, final Long randomSeed) {
         /* Do depth-first search */
         this.testPlanRootNode = testPlanRootNode;
+        this.randomSeed = randomSeed;
         this.testPlanNodeList = testPlanRootNode.searchDescendantsOrSelf();
 
         /* Need to populate testPlanNodesByIdentifier */
@@ -142,13 +157,19 @@ public final class TestPlan implements Serializable {
      */
     public TestPlan(final TestPlanNode testPlanRootNode, final List<TestPlanNode> testPlanNodeList,
             final Map<TestPlanNodeKey, TestPlanNode> testPlanNodesByKeyMap,
-            final Map<Identifier, List<TestPlanNode>> testPlanNodesByIdentifierMap) {
+            final Map<Identifier, List<TestPlanNode>> testPlanNodesByIdentifierMap,
+            final Long randomSeed) {
         this.testPlanRootNode = testPlanRootNode;
+        this.randomSeed = randomSeed;
         this.testPlanNodeList = Collections.unmodifiableList(testPlanNodeList);
         this.testPlanNodesByKeyMap = Collections.unmodifiableMap(testPlanNodesByKeyMap);
         this.testPlanNodesByIdentifierMap = Collections.unmodifiableMap(testPlanNodesByIdentifierMap);
     }
 
+    public Long getRandomSeed() {
+        return randomSeed;
+    }
+
     public TestPlanNode getTestPlanRootNode() {
         return testPlanRootNode;
     }
@@ -296,6 +317,7 @@ public final class TestPlan implements Serializable {
     public String toString() {
         return getClass().getSimpleName() + "@" + Integer.toHexString(System.identityHashCode(this))
                 + "(testPlanRootNode=" + testPlanRootNode
+                + ",randomSeed=" + randomSeed
                 + ")";
     }
 
@@ -306,7 +328,8 @@ public final class TestPlan implements Serializable {
         }
         final TestPlan other = (TestPlan) obj;
         return testPlanRootNode.equals(other.testPlanRootNode)
-                && testPlanNodeList.equals(other.testPlanNodeList);
+                && testPlanNodeList.equals(other.testPlanNodeList)
+                && ObjectUtilities.nullSafeEquals(randomSeed, other.randomSeed);
     }
 
     @Override
@@ -35,6 +35,7 @@ package uk.ac.ed.ph.jqtiplus.state;
 
 import uk.ac.ed.ph.jqtiplus.exception.QtiParseException;
 import uk.ac.ed.ph.jqtiplus.internal.util.Assert;
+import uk.ac.ed.ph.jqtiplus.internal.util.WeakInternPool;
 import uk.ac.ed.ph.jqtiplus.node.test.AbstractPart;
 import uk.ac.ed.ph.jqtiplus.node.test.AssessmentTest;
 import uk.ac.ed.ph.jqtiplus.types.Identifier;
@@ -50,6 +51,10 @@ import java.util.regex.Pattern;
  * This is a composite of the {@link Identifier} and global position of the corresponding
  * {@link AbstractPart} in the original test, plus the instance number for this {@link AbstractPart}
  * (taking into account selection with replacement).
+ * <p>
+ * Keys parsed via {@link #fromString(String)} (e.g. when unmarshalling state) are interned
+ * in a bounded weak pool, so repeated parsing of the same key is cheap and returns a shared
+ * instance.
  *
  * @see AbstractPart
  * @see TestPlan
@@ -79,6 +84,11 @@ public final class TestPlanNodeKey implements Serializable {
 
     private static final Pattern keyPattern = Pattern.compile("(.+?):(\\d+):(\\d+)");
 
+    /** Maximum number of {@link TestPlanNodeKey}s to keep in {@link #internPool} */
+    public static final int INTERN_POOL_MAX_SIZE = 100000;
+
+    private static final WeakInternPool<String, TestPlanNodeKey> internPool = new WeakInternPool<String, TestPlanNodeKey>(INTERN_POOL_MAX_SIZE);
+
     public TestPlanNodeKey(final Identifier identifier, final int abstractPartGlobalIndex, final int instanceNumber) {
         this.identifier = identifier;
         this.abstractPartGlobalIndex = abstractPartGlobalIndex;
@@ -88,6 +98,10 @@ public final class TestPlanNodeKey implements Serializable {
 
     public static TestPlanNodeKey fromString(final String string) {
         Assert.notNull(string);
+        final TestPlanNodeKey pooled = internPool.get(string);
+        if (pooled!=null) {
+            return pooled;
+        }
         final Matcher matcher = keyPattern.matcher(string);
         if (!matcher.matches()) {
             throw new IllegalArgumentException(TestPlanNodeKey.class.getSimpleName() + " did not follow the expected pattern");
@@ -109,7 +123,13 @@ public final class TestPlanNodeKey implements Serializable {
             throw new IllegalArgumentException("Expected instance number " + instanceNumber + " in " + string + " to be strictly positive");
         }
 
-        return new TestPlanNodeKey(identifier, abstractPartGlobalIndex, instanceNumber);
+        final TestPlanNodeKey created = new TestPlanNodeKey(identifier, abstractPartGlobalIndex, instanceNumber);
+        return internPool.intern(created.stringRepresentation, created);
+    }
+
+    /** Ensures deserialized instances are interned */
+    private Object readResolve() {
+        return internPool.intern(stringRepresentation, this);
     }
 
     public Identifier getIdentifier() {
@@ -136,6 +156,9 @@ public final class TestPlanNodeKey implements Serializable {
 
     @Override
     public boolean equals(final Object obj) {
+        if (this==obj) {
+            return true;
+        }
         if (!(obj instanceof TestPlanNodeKey)) {
             return false;
         }
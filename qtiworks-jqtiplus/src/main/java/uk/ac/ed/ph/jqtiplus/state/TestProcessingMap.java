@@ -43,6 +43,7 @@ import uk.ac.ed.ph.jqtiplus.node.test.AssessmentItemRef;
 import uk.ac.ed.ph.jqtiplus.node.test.AssessmentTest;
 import uk.ac.ed.ph.jqtiplus.resolution.ResolvedAssessmentTest;
 import uk.ac.ed.ph.jqtiplus.running.TestProcessingInitializer;
+import uk.ac.ed.ph.jqtiplus.running.compiled.CompiledProcessing;
 import uk.ac.ed.ph.jqtiplus.state.TestPlanNode.TestNodeType;
 import uk.ac.ed.ph.jqtiplus.types.Identifier;
 
@@ -86,15 +87,19 @@ public final class TestProcessingMap implements Serializable {
      */
     private final Map<URI, ItemProcessingMap> itemProcessingMapMap;
 
+    private final CompiledProcessing compiledOutcomeProcessing;
+
     public TestProcessingMap(final ResolvedAssessmentTest resolvedAssessmentTest, final boolean isValid,
             final List<AbstractPart> abstractPartListBuilder,
             final Map<AbstractPart, EffectiveItemSessionControl> effectiveItemSessionControlMap,
             final Map<Identifier, OutcomeDeclaration> outcomeDeclarationMapBuilder,
             final ResponseDeclaration durationResponseDeclaration,
-            final Map<URI, ItemProcessingMap> itemProcessingMapMapBuilder) {
+            final Map<URI, ItemProcessingMap> itemProcessingMapMapBuilder,
+            final CompiledProcessing compiledOutcomeProcessing) {
         this.resolvedAssessmentTest = resolvedAssessmentTest;
         this.durationResponseDeclaration = durationResponseDeclaration;
         this.isValid = isValid;
+        this.compiledOutcomeProcessing = compiledOutcomeProcessing;
 
         /* Record AbstractParts */
         this.abstractPartList = Collections.unmodifiableList(abstractPartListBuilder);
@@ -144,6 +149,14 @@ public final class TestProcessingMap implements Serializable {
         return validOutcomeDeclarationMap;
     }
 
+    /**
+     * Returns the compiled form of the test's <code>outcomeProcessing</code>, or null if
+     * the test has no outcome processing or is not valid.
+     */
+    public CompiledProcessing getCompiledOutcomeProcessing() {
+        return compiledOutcomeProcessing;
+    }
+
     public ResponseDeclaration getDurationResponseDeclaration() {
         return durationResponseDeclaration;
     }
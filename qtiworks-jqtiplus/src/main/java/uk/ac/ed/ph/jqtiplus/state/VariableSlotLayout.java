@@ -0,0 +1,130 @@
+/* Copyright (c) 2012-2013, University of Edinburgh.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice, this
+ *   list of conditions and the following disclaimer in the documentation and/or
+ *   other materials provided with the distribution.
+ *
+ * * Neither the name of the University of Edinburgh nor the names of its
+ *   contributors may be used to endorse or promote products derived from this
+ *   software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ *
+ * This software is derived from (and contains code from) QTItools and MathAssessEngine.
+ * QTItools is (c) 2008, University of Southampton.
+ * MathAssessEngine is (c) 2010, University of Edinburgh.
+ */
+package uk.ac.ed.ph.jqtiplus.state;
+
+import uk.ac.ed.ph.jqtiplus.internal.util.Assert;
+import uk.ac.ed.ph.jqtiplus.types.Identifier;
+
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Assigns a fixed slot index to each variable of a particular type (template, response or
+ * outcome) declared in an item. This is computed once in the {@link ItemProcessingMap} and
+ * shared by all {@link ItemSessionState}s for that item, which can then store their values
+ * in flat arrays rather than in their own {@link HashMap}s.
+ * <p>
+ * The layout also records the order in which a {@link HashMap} would iterate over these
+ * variables if they had been added in slot order, so that the slot-based storage keeps
+ * the same iteration order (and hence the same marshalled XML) as before.
+ * <p>
+ * An instance of this class is immutable and safe for use by multiple threads.
+ *
+ * @see ItemProcessingMap
+ * @see ItemSessionState
+ *
+ * @author David McKain
+ */
+public final class VariableSlotLayout implements Serializable {
+
+    private static final long serialVersionUID = 3164874862624838532L;
+
+    /** Layout with no slots, used for states that are not (yet) attached to an item */
+    public static final VariableSlotLayout EMPTY = new VariableSlotLayout(Collections.<Identifier>emptyList());
+
+    /** {@link Identifier} for each slot */
+    private final Identifier[] identifiers;
+
+    /** Slot index for each {@link Identifier} */
+    private final Map<Identifier, Integer> slotMap;
+
+    /** Slot indices in {@link HashMap} iteration order */
+    private final int[] iterationOrder;
+
+    public VariableSlotLayout(final Collection<Identifier> identifiers) {
+        Assert.notNull(identifiers, "identifiers");
+        this.identifiers = identifiers.toArray(new Identifier[identifiers.size()]);
+        final Map<Identifier, Integer> slotMapBuilder = new HashMap<Identifier, Integer>();
+        for (int i=0; i<this.identifiers.length; i++) {
+            if (slotMapBuilder.put(this.identifiers[i], Integer.valueOf(i))!=null) {
+                throw new IllegalArgumentException("Duplicate identifier " + this.identifiers[i]);
+            }
+        }
+        this.slotMap = slotMapBuilder;
+
+        /* (Since slotMapBuilder was filled in slot order, its iteration order is exactly the order
+         * a HashMap of values filled in slot order would have) */
+        this.iterationOrder = new int[this.identifiers.length];
+        int position = 0;
+        for (final Integer slot : slotMapBuilder.values()) {
+            iterationOrder[position++] = slot.intValue();
+        }
+    }
+
+    public int size() {
+        return identifiers.length;
+    }
+
+    /**
+     * Returns the slot index for the given {@link Identifier}, or -1 if it does not have a slot.
+     */
+    public int getSlot(final Object identifier) {
+        final Integer result = slotMap.get(identifier);
+        return result!=null ? result.intValue() : -1;
+    }
+
+    public Identifier getIdentifier(final int slot) {
+        return identifiers[slot];
+    }
+
+    public List<Identifier> getIdentifiers() {
+        return Collections.unmodifiableList(Arrays.asList(identifiers));
+    }
+
+    int getSlotInIterationOrder(final int position) {
+        return iterationOrder[position];
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + "@" + Integer.toHexString(System.identityHashCode(this))
+                + "(identifiers=" + Arrays.toString(identifiers)
+                + ")";
+    }
+}
@@ -0,0 +1,259 @@
+/* Copyright (c) 2012-2013, University of Edinburgh.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice, this
+ *   list of conditions and the following disclaimer in the documentation and/or
+ *   other materials provided with the distribution.
+ *
+ * * Neither the name of the University of Edinburgh nor the names of its
+ *   contributors may be used to endorse or promote products derived from this
+ *   software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ *
+ * This software is derived from (and contains code from) QTItools and MathAssessEngine.
+ * QTItools is (c) 2008, University of Southampton.
+ * MathAssessEngine is (c) 2010, University of Edinburgh.
+ */
+package uk.ac.ed.ph.jqtiplus.state;
+
+import uk.ac.ed.ph.jqtiplus.internal.util.Assert;
+import uk.ac.ed.ph.jqtiplus.types.Identifier;
+
+import java.io.Serializable;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * {@link Map} of variable values that stores the variables described by a
+ * {@link VariableSlotLayout} in a flat array, falling back to a {@link HashMap} for any
+ * other variables. (The fallback is used before the owning {@link ItemSessionState} has
+ * been attached to an item, e.g. straight after unmarshalling.)
+ * <p>
+ * Null values are not supported, matching how {@link ItemSessionState} uses these maps.
+ *
+ * @param <V> type of value stored
+ *
+ * @author David McKain
+ */
+final class VariableSlotMap<V> extends AbstractMap<Identifier, V> implements Serializable {
+
+    private static final long serialVersionUID = -1860346709768298870L;
+
+    private VariableSlotLayout layout;
+    private Object[] slotValues;
+    private int slotValueCount;
+    private HashMap<Identifier, V> overflowMap;
+
+    public VariableSlotMap() {
+        this.layout = VariableSlotLayout.EMPTY;
+        this.slotValues = new Object[0];
+        this.slotValueCount = 0;
+        this.overflowMap = null;
+    }
+
+    public VariableSlotLayout getLayout() {
+        return layout;
+    }
+
+    /**
+     * Switches to the given {@link VariableSlotLayout}, moving any existing values
+     * into their new slots.
+     */
+    public void bindLayout(final VariableSlotLayout newLayout) {
+        Assert.notNull(newLayout, "newLayout");
+        if (newLayout==layout) {
+            return;
+        }
+        final Map<Identifier, V> existing = new HashMap<Identifier, V>(this);
+        this.layout = newLayout;
+        this.slotValues = new Object[newLayout.size()];
+        this.slotValueCount = 0;
+        this.overflowMap = null;
+        for (final Entry<Identifier, V> entry : existing.entrySet()) {
+            put(entry.getKey(), entry.getValue());
+        }
+    }
+
+    @Override
+    public int size() {
+        return slotValueCount + (overflowMap!=null ? overflowMap.size() : 0);
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return size()==0;
+    }
+
+    @Override
+    public boolean containsKey(final Object key) {
+        return get(key)!=null;
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public V get(final Object key) {
+        final int slot = layout.getSlot(key);
+        if (slot>=0) {
+            return (V) slotValues[slot];
+        }
+        return overflowMap!=null ? overflowMap.get(key) : null;
+    }
+
+    @Override
+    public V put(final Identifier key, final V value) {
+        Assert.notNull(key, "key");
+        Assert.notNull(value, "value");
+        final int slot = layout.getSlot(key);
+        if (slot>=0) {
+            return putSlotValue(slot, value);
+        }
+        if (overflowMap==null) {
+            overflowMap = new HashMap<Identifier, V>();
+        }
+        return overflowMap.put(key, value);
+    }
+
+    /**
+     * Returns the value in the given slot of the current {@link VariableSlotLayout},
+     * or null if that slot is empty.
+     */
+    @SuppressWarnings("unchecked")
+    public V getSlotValue(final int slot) {
+        return (V) slotValues[slot];
+    }
+
+    /**
+     * Puts the given value into the given slot of the current {@link VariableSlotLayout},
+     * returning the value previously in that slot (or null).
+     */
+    @SuppressWarnings("unchecked")
+    public V putSlotValue(final int slot, final V value) {
+        Assert.notNull(value, "value");
+        final V result = (V) slotValues[slot];
+        if (result==null) {
+            slotValueCount++;
+        }
+        slotValues[slot] = value;
+        return result;
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public V remove(final Object key) {
+        final int slot = layout.getSlot(key);
+        if (slot>=0) {
+            final V result = (V) slotValues[slot];
+            if (result!=null) {
+                slotValueCount--;
+                slotValues[slot] = null;
+            }
+            return result;
+        }
+        return overflowMap!=null ? overflowMap.remove(key) : null;
+    }
+
+    @Override
+    public void clear() {
+        Arrays.fill(slotValues, null);
+        slotValueCount = 0;
+        overflowMap = null;
+    }
+
+    @Override
+    public Set<Entry<Identifier, V>> entrySet() {
+        return new AbstractSet<Entry<Identifier, V>>() {
+
+            @Override
+            public Iterator<Entry<Identifier, V>> iterator() {
+                return new EntryIterator();
+            }
+
+            @Override
+            public int size() {
+                return VariableSlotMap.this.size();
+            }
+        };
+    }
+
+    /**
+     * Iterates over the slots in {@link HashMap} order, followed by any overflow entries.
+     * (Removal is not supported.)
+     */
+    private final class EntryIterator implements Iterator<Entry<Identifier, V>> {
+
+        private int position;
+        private int nextSlot;
+        private Iterator<Entry<Identifier, V>> overflowIterator;
+
+        EntryIterator() {
+            this.position = 0;
+            this.nextSlot = findNextSlot();
+        }
+
+        private int findNextSlot() {
+            while (position < slotValues.length) {
+                final int slot = layout.getSlotInIterationOrder(position++);
+                if (slotValues[slot]!=null) {
+                    return slot;
+                }
+            }
+            return -1;
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (nextSlot>=0) {
+                return true;
+            }
+            if (overflowIterator==null) {
+                if (overflowMap==null) {
+                    return false;
+                }
+                overflowIterator = overflowMap.entrySet().iterator();
+            }
+            return overflowIterator.hasNext();
+        }
+
+        @SuppressWarnings("unchecked")
+        @Override
+        public Entry<Identifier, V> next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            if (nextSlot>=0) {
+                final int slot = nextSlot;
+                nextSlot = findNextSlot();
+                return new SimpleImmutableEntry<Identifier, V>(layout.getIdentifier(slot), (V) slotValues[slot]);
+            }
+            return overflowIterator.next();
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
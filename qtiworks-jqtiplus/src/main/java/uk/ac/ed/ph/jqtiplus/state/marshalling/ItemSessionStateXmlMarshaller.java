@@ -78,6 +78,7 @@ public final class ItemSessionStateXmlMarshaller {
         element.setAttribute("initialized", StringUtilities.toTrueFalse(itemSessionState.isInitialized()));
         element.setAttribute("responded", StringUtilities.toTrueFalse(itemSessionState.isResponded()));
         XmlMarshallerCore.maybeAddDateAttribute(element, "suspendTime", itemSessionState.getSuspendTime());
+        XmlMarshallerCore.maybeAddLongAttribute(element, "randomSeed", itemSessionState.getRandomSeed());
         final SessionStatus sessionStatus = itemSessionState.getSessionStatus();
         if (sessionStatus!=null) {
             element.setAttribute("sessionStatus", sessionStatus.toQtiString());
@@ -167,6 +168,7 @@ public final class ItemSessionStateXmlMarshaller {
         result.setInitialized(XmlMarshallerCore.parseOptionalBooleanAttribute(element, "initialized", false));
         result.setResponded(XmlMarshallerCore.parseOptionalBooleanAttribute(element, "responded", false));
         result.setSuspendTime(XmlMarshallerCore.parseOptionalDateAttribute(element, "suspendTime"));
+        result.setRandomSeed(XmlMarshallerCore.parseOptionalLongAttribute(element, "randomSeed"));
         result.setUnboundResponseIdentifiers(parseOptionalIdentifierAttributeList(element, "unboundResponseIdentifiers"));
         result.setInvalidResponseIdentifiers(parseOptionalIdentifierAttributeList(element, "invalidResponseIdentifiers"));
         result.setNumAttempts(XmlMarshallerCore.parseOptionalIntegerAttribute(element, "numAttempts", 0));
@@ -68,6 +68,7 @@ public final class TestPlanXmlMarshaller {
 
     public static void appendTestPlan(final Node documentOrElement, final TestPlan testPlan) {
         final Element element = XmlMarshallerCore.appendElement(documentOrElement, "testPlan");
+        XmlMarshallerCore.maybeAddLongAttribute(element, "randomSeed", testPlan.getRandomSeed());
 
         final TestPlanNode rootNode = testPlan.getTestPlanRootNode();
         for (final TestPlanNode testPlanNode : rootNode.getChildren()) {
@@ -120,11 +121,12 @@ public final class TestPlanXmlMarshaller {
 
     public static TestPlan unmarshal(final Element element) {
         XmlMarshallerCore.expectThisElement(element, "testPlan");
+        final Long randomSeed = XmlMarshallerCore.parseOptionalLongAttribute(element, "randomSeed");
 
         final TestPlanNode rootNode = TestPlanNode.createRoot();
         expectTestPlanNodeChildren(element, rootNode);
 
-        return new TestPlan(rootNode);
+        return new TestPlan(rootNode, randomSeed);
     }
 
     private static void expectTestPlanNodeChildren(final Element element, final TestPlanNode targetOwner) {
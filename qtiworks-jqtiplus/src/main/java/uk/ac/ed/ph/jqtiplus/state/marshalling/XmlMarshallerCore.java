@@ -117,6 +117,12 @@ public final class XmlMarshallerCore {
         }
     }
 
+    static void maybeAddLongAttribute(final Element element, final String attributeName, final Long value) {
+        if (value!=null) {
+            element.setAttribute(attributeName, value.toString());
+        }
+    }
+
     static void maybeAddIdentifierListAttribute(final Element element, final String attributeName, final Collection<Identifier> values) {
         if (!values.isEmpty()) {
             element.setAttribute(attributeName, StringUtilities.join(values, " "));
@@ -309,6 +315,10 @@ public final class XmlMarshallerCore {
         }
     }
 
+    static Long parseOptionalLongAttribute(final Element element, final String attrName) {
+        return element.hasAttribute(attrName) ? Long.valueOf(parseOptionalLongAttribute(element, attrName, 0L)) : null;
+    }
+
     static String parseOptionalStringAttribute(final Element element, final String attrName) {
         return element.hasAttribute(attrName) ? element.getAttribute(attrName) : null;
     }
@@ -35,6 +35,7 @@ package uk.ac.ed.ph.jqtiplus.types;
 
 import uk.ac.ed.ph.jqtiplus.exception.QtiParseException;
 import uk.ac.ed.ph.jqtiplus.internal.util.Assert;
+import uk.ac.ed.ph.jqtiplus.internal.util.WeakInternPool;
 
 import java.io.Serializable;
 
@@ -45,6 +46,10 @@ import java.io.Serializable;
  * should be used in the small number of cases where these characters are allowed.
  * <p>
  * CombiningChars and Extenders are not currently supported!
+ * <p>
+ * Instances are interned in a bounded weak pool, so identifiers created by the readers
+ * and state unmarshallers are normally shared and can be compared by identity. Equality
+ * still falls back to comparing values, so this is purely an optimisation.
  *
  * @see ComplexReferenceIdentifier
  *
@@ -54,6 +59,11 @@ public final class Identifier implements Serializable, Comparable<Identifier> {
 
     private static final long serialVersionUID = 1842878881636384148L;
 
+    /** Maximum number of {@link Identifier}s to keep in {@link #internPool} */
+    public static final int INTERN_POOL_MAX_SIZE = 100000;
+
+    private static final WeakInternPool<String, Identifier> internPool = new WeakInternPool<String, Identifier>(INTERN_POOL_MAX_SIZE);
+
     private final String value;
 
     /**
@@ -65,7 +75,7 @@ public final class Identifier implements Serializable, Comparable<Identifier> {
      */
     public static Identifier parseString(final String value) {
         verifyIdentifier(value);
-        return new Identifier(value);
+        return intern(value);
     }
 
     /**
@@ -74,13 +84,27 @@ public final class Identifier implements Serializable, Comparable<Identifier> {
      * defined in the QTI specification.
      */
     public static Identifier assumedLegal(final String value) {
-        return new Identifier(value);
+        return intern(value);
+    }
+
+    private static Identifier intern(final String value) {
+        final Identifier pooled = internPool.get(value);
+        if (pooled!=null) {
+            return pooled;
+        }
+        final Identifier created = new Identifier(value);
+        return internPool.intern(created.value, created);
     }
 
     private Identifier(final String value) {
         this.value = value;
     }
 
+    /** Ensures deserialized instances are interned too */
+    private Object readResolve() {
+        return intern(value);
+    }
+
     @Override
     public String toString() {
         return value;
@@ -93,6 +117,9 @@ public final class Identifier implements Serializable, Comparable<Identifier> {
 
     @Override
     public boolean equals(final Object obj) {
+        if (this==obj) {
+            return true;
+        }
         if (!(obj instanceof Identifier)) {
             return false;
         }
@@ -62,7 +62,7 @@ public final class IntegerOrVariableRef implements Serializable {
      * Creates a new integerOrVariableRef holding the given constant integer value
      */
     public IntegerOrVariableRef(final int constantIntegerValue) {
-        this.constantIntegerValue = new IntegerValue(constantIntegerValue);
+        this.constantIntegerValue = IntegerValue.valueOf(constantIntegerValue);
         this.variableReferenceValue = null;
         this.serializedValue = Integer.toString(constantIntegerValue);
     }
@@ -35,6 +35,7 @@ package uk.ac.ed.ph.jqtiplus.validation;
 
 import uk.ac.ed.ph.jqtiplus.JqtiExtensionManager;
 import uk.ac.ed.ph.jqtiplus.internal.util.Assert;
+import uk.ac.ed.ph.jqtiplus.internal.util.ConcurrencyUtilities;
 import uk.ac.ed.ph.jqtiplus.node.item.AssessmentItem;
 import uk.ac.ed.ph.jqtiplus.node.item.response.processing.ResponseProcessing;
 import uk.ac.ed.ph.jqtiplus.node.test.AssessmentItemRef;
@@ -48,8 +49,12 @@ import uk.ac.ed.ph.jqtiplus.resolution.ResolvedAssessmentTest;
 import uk.ac.ed.ph.jqtiplus.resolution.RootNodeLookup;
 
 import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
 import java.util.Map.Entry;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -59,6 +64,10 @@ import org.slf4j.LoggerFactory;
  * <p>
  * You won't normally want to use this on its own. See {@link AssessmentObjectXmlLoader} for a more
  * end-to-end solution.
+ * <p>
+ * If an {@link ExecutorService} is provided, then the items referenced by an {@link AssessmentTest}
+ * will be validated in parallel using it. The resulting {@link TestValidationResult} (including the
+ * order of its {@link Notification}s) is the same as would be obtained by validating each item in turn.
  *
  * @see AssessmentObjectXmlLoader
  *
@@ -69,9 +78,19 @@ public final class AssessmentObjectValidator {
     private static final Logger logger = LoggerFactory.getLogger(AssessmentObjectValidator.class);
 
     private final JqtiExtensionManager jqtiExtensionManager;
+    private final ExecutorService executorService;
 
     public AssessmentObjectValidator(final JqtiExtensionManager jqtiExtensionManager) {
+        this(jqtiExtensionManager, null);
+    }
+
+    public AssessmentObjectValidator(final JqtiExtensionManager jqtiExtensionManager, final ExecutorService executorService) {
         this.jqtiExtensionManager = jqtiExtensionManager;
+        this.executorService = executorService;
+    }
+
+    public ExecutorService getExecutorService() {
+        return executorService;
     }
 
     public ItemValidationResult validateItem(final ResolvedAssessmentItem resolvedAssessmentItem) {
@@ -103,6 +122,8 @@ public final class AssessmentObjectValidator {
         final AssessmentTest test = resolvedAssessmentTest.getTestLookup().extractIfSuccessful();
         if (test!=null) {
             /* Validate each unique item first */
+            final List<ItemValidationResult> itemValidationResults = validateItems(resolvedAssessmentTest.getResolvedAssessmentItemBySystemIdMap().values());
+            int itemIndex = 0;
             for (final Entry<URI, ResolvedAssessmentItem> entry : resolvedAssessmentTest.getResolvedAssessmentItemBySystemIdMap().entrySet()) {
                 final URI itemSystemId = entry.getKey();
                 final ResolvedAssessmentItem resolvedAssessmentItem = entry.getValue();
@@ -125,7 +146,7 @@ public final class AssessmentObjectValidator {
                 }
                 final String itemReferenceDescription = itemReferenceBuilder.toString();
 
-                final ItemValidationResult itemValidationResult = validateItem(resolvedAssessmentItem);
+                final ItemValidationResult itemValidationResult = itemValidationResults.get(itemIndex++);
                 result.addItemValidationResult(itemValidationResult);
                 if (resolvedAssessmentItem.getItemLookup().wasSuccessful()) {
                     if (itemValidationResult.hasModelValidationErrors()) {
@@ -158,12 +179,33 @@ public final class AssessmentObjectValidator {
         return result;
     }
 
+    private List<ItemValidationResult> validateItems(final Collection<ResolvedAssessmentItem> resolvedAssessmentItems) {
+        if (executorService!=null && resolvedAssessmentItems.size() > 1) {
+            final List<Callable<ItemValidationResult>> itemValidationTasks = new ArrayList<Callable<ItemValidationResult>>(resolvedAssessmentItems.size());
+            for (final ResolvedAssessmentItem resolvedAssessmentItem : resolvedAssessmentItems) {
+                itemValidationTasks.add(new Callable<ItemValidationResult>() {
+                    @Override
+                    public ItemValidationResult call() {
+                        return validateItem(resolvedAssessmentItem);
+                    }
+                });
+            }
+            return ConcurrencyUtilities.invokeAllInOrder(executorService, itemValidationTasks);
+        }
+        final List<ItemValidationResult> result = new ArrayList<ItemValidationResult>(resolvedAssessmentItems.size());
+        for (final ResolvedAssessmentItem resolvedAssessmentItem : resolvedAssessmentItems) {
+            result.add(validateItem(resolvedAssessmentItem));
+        }
+        return result;
+    }
+
     //-------------------------------------------------------------------
 
     @Override
     public String toString() {
         return getClass().getSimpleName() + "@" + Integer.toHexString(System.identityHashCode(this))
                 + "(jqtiExtensionManager=" + jqtiExtensionManager
+                + ",executorService=" + executorService
                 + ")";
     }
 }
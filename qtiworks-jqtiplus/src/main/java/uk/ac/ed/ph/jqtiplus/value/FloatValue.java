@@ -107,7 +107,8 @@ public final class FloatValue extends NumberValue {
 
     @Override
     public int hashCode() {
-        return Double.valueOf(doubleValue).hashCode();
+        /* (Normalise -0.0 so that this is consistent with equals()) */
+        return doubleValue==0.0 ? 0 : Double.valueOf(doubleValue).hashCode();
     }
 
     @Override
@@ -54,14 +54,41 @@ public final class IntegerValue extends NumberValue {
 
     private static final long serialVersionUID = -2229184387480773991L;
 
-    public static final IntegerValue ZERO = new IntegerValue(0);
+    /** Smallest value held in the cache used by {@link #valueOf(int)} */
+    private static final int CACHE_LOW = -128;
+
+    /** Largest value held in the cache used by {@link #valueOf(int)} */
+    private static final int CACHE_HIGH = 1024;
+
+    private static final IntegerValue[] cache;
+
+    static {
+        cache = new IntegerValue[CACHE_HIGH - CACHE_LOW + 1];
+        for (int i=0; i<cache.length; i++) {
+            cache[i] = new IntegerValue(CACHE_LOW + i);
+        }
+    }
+
+    public static final IntegerValue ZERO = valueOf(0);
+
+    /**
+     * Returns an {@link IntegerValue} for the given int, using a shared instance for small
+     * values. This should be used in preference to the constructor when creating lots of
+     * values, e.g. when evaluating expressions.
+     */
+    public static IntegerValue valueOf(final int value) {
+        if (value >= CACHE_LOW && value <= CACHE_HIGH) {
+            return cache[value - CACHE_LOW];
+        }
+        return new IntegerValue(value);
+    }
 
     public static IntegerValue parseString(final String value) {
-        return new IntegerValue(DataTypeBinder.parseInteger(value));
+        return valueOf(DataTypeBinder.parseInteger(value));
     }
 
     public static IntegerValue parseString(final String value, final int radix) {
-        return new IntegerValue(DataTypeBinder.parseInteger(value, radix));
+        return valueOf(DataTypeBinder.parseInteger(value, radix));
     }
 
     private final int intValue;
@@ -39,8 +39,10 @@ import uk.ac.ed.ph.jqtiplus.internal.util.Assert;
 import uk.ac.ed.ph.jqtiplus.internal.util.ObjectUtilities;
 
 import java.util.Collection;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 
 /**
  * Superclass for multiple and ordered containers.
@@ -50,6 +52,10 @@ import java.util.List;
  * In JQTI+, these values are now immutable. Subclasses now use factory methods instead of
  * constructors, and empty containers (which are treated as NULL) now generate {@link NullValue}
  * instances rather than instances of this class.
+ * <p>
+ * Membership tests ({@link #contains(SingleValue)} and {@link #count(SingleValue)}) on containers
+ * having more than {@link #INDEX_THRESHOLD} values use a hash index of the values, which is
+ * built lazily on first use. Smaller containers are simply scanned.
  *
  * @author David McKain
  * @author Jiri Kajaba (original version)
@@ -58,9 +64,18 @@ public abstract class ListValue extends ContainerValue implements Iterable<Singl
 
     private static final long serialVersionUID = 4655949258467611295L;
 
+    /** Size above which membership tests use a hash index rather than a linear scan */
+    public static final int INDEX_THRESHOLD = 8;
+
     /** Container for single values. */
     protected final SingleValue[] container;
 
+    /**
+     * Lazily-built index of the number of occurrences of each value in large containers.
+     * (This is safe to build concurrently, as these values are immutable.)
+     */
+    private transient volatile Map<SingleValue, Integer> countIndex;
+
     protected ListValue(final SingleValue value) {
         container = new SingleValue[1];
         container[0] = value;
@@ -151,6 +166,9 @@ public abstract class ListValue extends ContainerValue implements Iterable<Singl
      * @return true if this container contains given <code>SingleValue</code>; false otherwise
      */
     public final boolean contains(final SingleValue testValue) {
+        if (container.length > INDEX_THRESHOLD) {
+            return getCountIndex().containsKey(testValue);
+        }
         for (final SingleValue singleValue : container) {
             if (singleValue.equals(testValue)) {
                 return true;
@@ -166,6 +184,10 @@ public abstract class ListValue extends ContainerValue implements Iterable<Singl
      * @return number of occurrences of given <code>SingleValue</code>
      */
     public final int count(final SingleValue testValue) {
+        if (container.length > INDEX_THRESHOLD) {
+            final Integer count = getCountIndex().get(testValue);
+            return count!=null ? count.intValue() : 0;
+        }
         int count = 0;
         for (final SingleValue singleValue : container) {
             if (singleValue.equals(testValue)) {
@@ -175,6 +197,23 @@ public abstract class ListValue extends ContainerValue implements Iterable<Singl
         return count;
     }
 
+    /**
+     * Returns the number of occurrences of each distinct value in this container, building
+     * this if required.
+     */
+    protected final Map<SingleValue, Integer> getCountIndex() {
+        Map<SingleValue, Integer> result = countIndex;
+        if (result==null) {
+            result = new HashMap<SingleValue, Integer>(container.length * 2);
+            for (final SingleValue singleValue : container) {
+                final Integer existing = result.get(singleValue);
+                result.put(singleValue, Integer.valueOf(existing!=null ? existing.intValue() + 1 : 1));
+            }
+            countIndex = result;
+        }
+        return result;
+    }
+
     /**
      * This outputs this value in the format used when describing ordered and multiple
      * cardinalities, i.e.
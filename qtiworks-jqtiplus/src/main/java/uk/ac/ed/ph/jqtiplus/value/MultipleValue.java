@@ -36,6 +36,8 @@ package uk.ac.ed.ph.jqtiplus.value;
 import uk.ac.ed.ph.jqtiplus.internal.util.Assert;
 
 import java.util.Collection;
+import java.util.Map;
+import java.util.Map.Entry;
 
 /**
  * Implementation of a non-NULL multiple container.
@@ -95,6 +97,17 @@ public final class MultipleValue extends ListValue {
      * @return true if this container contains given <code>MultipleValue</code>; false otherwise
      */
     public boolean contains(final MultipleValue multipleValue) {
+        if (multipleValue.container.length > INDEX_THRESHOLD || container.length > INDEX_THRESHOLD) {
+            /* Compare occurrence counts of each distinct value using the hash indices */
+            final Map<SingleValue, Integer> thisCountIndex = getCountIndex();
+            for (final Entry<SingleValue, Integer> entry : multipleValue.getCountIndex().entrySet()) {
+                final Integer thisCount = thisCountIndex.get(entry.getKey());
+                if (thisCount==null || entry.getValue().intValue() > thisCount.intValue()) {
+                    return false;
+                }
+            }
+            return true;
+        }
         for (final SingleValue singleValue : multipleValue.container) {
             if (multipleValue.count(singleValue) > count(singleValue)) {
                 return false;
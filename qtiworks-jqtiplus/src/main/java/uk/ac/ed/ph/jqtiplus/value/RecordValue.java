@@ -34,28 +34,39 @@
 package uk.ac.ed.ph.jqtiplus.value;
 
 import uk.ac.ed.ph.jqtiplus.internal.util.Assert;
+import uk.ac.ed.ph.jqtiplus.internal.util.ObjectUtilities;
 import uk.ac.ed.ph.jqtiplus.types.Identifier;
 
+import java.util.AbstractMap.SimpleImmutableEntry;
+import java.util.AbstractSet;
 import java.util.Arrays;
 import java.util.Collection;
-import java.util.Collections;
 import java.util.Iterator;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.NoSuchElementException;
 import java.util.Set;
 import java.util.TreeMap;
 
 /**
  * Represents a non-NULL record value.
+ * <p>
+ * Records are typically very small, so the fields are stored compactly in a pair of arrays
+ * sorted by {@link Identifier}, rather than in a {@link Map}. Iteration order is by
+ * {@link Identifier}.
  *
  * @author Jiri Kajaba
  * @author David McKain (revised)
  */
 public final class RecordValue extends ContainerValue {
 
-    private static final long serialVersionUID = -8055629924489632630L;
+    private static final long serialVersionUID = 4139658225427367035L;
 
-    private final TreeMap<Identifier, SingleValue> container;
+    /** Field identifiers, in ascending order */
+    private final Identifier[] keys;
+
+    /** Field values, in the same order as {@link #keys} */
+    private final SingleValue[] values;
 
     public static NullValue emptyRecord() {
         return NullValue.INSTANCE;
@@ -82,13 +93,21 @@ public final class RecordValue extends ContainerValue {
     }
 
     private RecordValue(final Identifier identifier, final SingleValue value) {
-        container = new TreeMap<Identifier, SingleValue>();
-        container.put(identifier, value);
+        this.keys = new Identifier[] { identifier };
+        this.values = new SingleValue[] { value };
     }
 
-    private RecordValue(final Map<Identifier, SingleValue> values) {
-        container = new TreeMap<Identifier, SingleValue>();
-        container.putAll(values);
+    private RecordValue(final Map<Identifier, SingleValue> valueMap) {
+        /* (Sort the incoming fields by key) */
+        final TreeMap<Identifier, SingleValue> sortedMap = new TreeMap<Identifier, SingleValue>(valueMap);
+        this.keys = new Identifier[sortedMap.size()];
+        this.values = new SingleValue[sortedMap.size()];
+        int i = 0;
+        for (final Entry<Identifier, SingleValue> entry : sortedMap.entrySet()) {
+            keys[i] = entry.getKey();
+            values[i] = entry.getValue();
+            i++;
+        }
     }
 
     @Override
@@ -103,14 +122,22 @@ public final class RecordValue extends ContainerValue {
 
     @Override
     public int size() {
-        return container.size();
+        return keys.length;
+    }
+
+    private int indexOf(final Object identifier) {
+        if (!(identifier instanceof Identifier)) {
+            return -1;
+        }
+        final int index = Arrays.binarySearch(keys, identifier);
+        return index >= 0 ? index : -1;
     }
 
     /**
      * Returns whether this record contains a value corresponding to the given {@link Identifier}.
      */
     public boolean contains(final Identifier identifier) {
-        return container.containsKey(identifier);
+        return indexOf(identifier) >= 0;
     }
 
     /**
@@ -120,14 +147,20 @@ public final class RecordValue extends ContainerValue {
      * @see #contains(Identifier)
      */
     public SingleValue get(final Identifier identifier) {
-        return container.get(identifier);
+        final int index = indexOf(identifier);
+        return index >= 0 ? values[index] : null;
     }
 
     /**
      * Returns true if this container contains any <code>SingleValue</code> with given <code>BaseType</code> or false otherwise.
      */
     public boolean containsBaseType(final BaseType baseType) {
-        return containsBaseType(new BaseType[] { baseType });
+        for (final SingleValue value : values) {
+            if (value.getBaseType()==baseType) {
+                return true;
+            }
+        }
+        return false;
     }
 
     /**
@@ -137,12 +170,11 @@ public final class RecordValue extends ContainerValue {
      * @return true if this container contains any <code>SingleValue</code> with any given <code>BaseType</code>s or false otherwise
      */
     public boolean containsBaseType(final BaseType[] baseTypes) {
-        for (final SingleValue value : container.values()) {
-            if (Arrays.asList(baseTypes).contains(value.getBaseType())) {
+        for (final BaseType baseType : baseTypes) {
+            if (containsBaseType(baseType)) {
                 return true;
             }
         }
-
         return false;
     }
 
@@ -150,18 +182,65 @@ public final class RecordValue extends ContainerValue {
      * Returns a view of the keys contained in this container.
      */
     public Set<Identifier> keySet() {
-        return Collections.unmodifiableSet(container.keySet());
+        return new AbstractSet<Identifier>() {
+            @Override
+            public Iterator<Identifier> iterator() {
+                return ObjectUtilities.createView(keys).iterator();
+            }
+
+            @Override
+            public boolean contains(final Object object) {
+                return indexOf(object) >= 0;
+            }
+
+            @Override
+            public int size() {
+                return keys.length;
+            }
+        };
     }
 
     /**
      * Returns a view of the values contained in this container.
      */
     public Collection<SingleValue> values() {
-        return Collections.unmodifiableCollection(container.values());
+        return ObjectUtilities.createView(values);
     }
 
     public Set<Entry<Identifier, SingleValue>> entrySet() {
-        return Collections.unmodifiableSet(container.entrySet());
+        return new AbstractSet<Entry<Identifier, SingleValue>>() {
+            @Override
+            public Iterator<Entry<Identifier, SingleValue>> iterator() {
+                return new Iterator<Entry<Identifier, SingleValue>>() {
+                    private int index = 0;
+
+                    @Override
+                    public boolean hasNext() {
+                        return index < keys.length;
+                    }
+
+                    @Override
+                    public Entry<Identifier, SingleValue> next() {
+                        if (index >= keys.length) {
+                            throw new NoSuchElementException();
+                        }
+                        final Entry<Identifier, SingleValue> result = new SimpleImmutableEntry<Identifier, SingleValue>(keys[index], values[index]);
+                        index++;
+                        return result;
+                    }
+
+                    @Override
+                    public void remove() {
+                        throw new UnsupportedOperationException();
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                return keys.length;
+            }
+        };
     }
 
     @Override
@@ -171,12 +250,17 @@ public final class RecordValue extends ContainerValue {
         }
 
         final RecordValue other = (RecordValue) object;
-        return container.equals(other.container);
+        return Arrays.equals(keys, other.keys) && Arrays.equals(values, other.values);
     }
 
     @Override
     public int hashCode() {
-        return container.hashCode();
+        /* (Same as Map.hashCode(), which was used when this was backed by a Map) */
+        int result = 0;
+        for (int i=0; i<keys.length; i++) {
+            result += keys[i].hashCode() ^ values[i].hashCode();
+        }
+        return result;
     }
 
     /**
@@ -192,16 +276,12 @@ public final class RecordValue extends ContainerValue {
     @Override
     public final String toQtiString() {
         final StringBuilder stringBuilder = new StringBuilder("{\n");
-        final Iterator<Entry<Identifier, SingleValue>> iterator = container.entrySet().iterator();
-        while (iterator.hasNext()) {
-            final Entry<Identifier, SingleValue> entry = iterator.next();
-            final Identifier key = entry.getKey();
-            final SingleValue value = entry.getValue();
+        for (int i=0; i<keys.length; i++) {
             stringBuilder.append("  ")
-                .append(key.toString())
+                .append(keys[i].toString())
                 .append(": ")
-                .append(value.toQtiString());
-            if (iterator.hasNext()) {
+                .append(values[i].toQtiString());
+            if (i<keys.length-1) {
                 stringBuilder.append(',');
             }
             stringBuilder.append('\n');
@@ -35,6 +35,7 @@ package uk.ac.ed.ph.jqtiplus.xmlutils.locators;
 
 import java.io.InputStream;
 import java.net.URI;
+import java.net.URL;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -80,13 +81,29 @@ public final class ClassPathResourceLocator implements ResourceLocator {
 
     @Override
     public InputStream findResource(final URI systemId) {
+        final String resourcePath = getResourcePath(systemId);
+        return resourcePath!=null ? loadResource(systemId, resourcePath) : null;
+    }
+
+    /**
+     * Returns a {@link URL} for the ClassPath resource having the given System ID, or null if
+     * no such resource exists.
+     * <p>
+     * This is useful when the caller wants to find out more about the resource (e.g. its length)
+     * before reading it.
+     */
+    public URL findResourceUrl(final URI systemId) {
+        final String resourcePath = getResourcePath(systemId);
+        return resourcePath!=null ? getClass().getClassLoader().getResource(resourcePath) : null;
+    }
+
+    private String getResourcePath(final URI systemId) {
         final String scheme = systemId.getScheme();
-        InputStream result = null;
+        String result = null;
         if (CLASSPATH_SCHEME_NAME.equals(scheme)) {
             final String systemIdAfterScheme = systemId.toString().substring(CLASSPATH_SCHEME_NAME.length());
             if (systemIdAfterScheme.startsWith(":/")) {
-                final String resultingPath = basePath != null ? basePath + systemIdAfterScheme.substring(1) : systemIdAfterScheme.substring(2);
-                result = loadResource(systemId, resultingPath);
+                result = basePath != null ? basePath + systemIdAfterScheme.substring(1) : systemIdAfterScheme.substring(2);
             }
             else {
                 logger.trace("ClassPath URI must be of the form {}:/path", CLASSPATH_SCHEME_NAME);
@@ -51,6 +51,7 @@ import javax.xml.transform.Templates;
 import javax.xml.transform.Transformer;
 import javax.xml.transform.TransformerConfigurationException;
 import javax.xml.transform.TransformerFactory;
+import javax.xml.transform.URIResolver;
 import javax.xml.transform.sax.SAXTransformerFactory;
 import javax.xml.transform.sax.TransformerHandler;
 import javax.xml.transform.stream.StreamSource;
@@ -74,6 +75,7 @@ public final class XsltStylesheetManager {
     private final XsltStylesheetCache xsltStylesheetCache;
     private final ResourceLocator xsltResourceLocator;
     private final XsltResourceResolver xsltResourceResolver;
+    private final SAXTransformerFactory sharedTransformerFactory;
 
     /**
      * Creates a new {@link XsltStylesheetManager} using the given {@link ResourceLocator}
@@ -95,10 +97,40 @@ public final class XsltStylesheetManager {
      * @param xsltStylesheetCache optional {@link XsltStylesheetCache} for caching compiled stylesheets
      */
     public XsltStylesheetManager(final ResourceLocator xsltResourceLocator, final XsltStylesheetCache xsltStylesheetCache) {
+        this(xsltResourceLocator, xsltStylesheetCache, null);
+    }
+
+    /**
+     * Creates a new {@link XsltStylesheetManager} with the specified {@link XsltStylesheetCache}
+     * and custom {@link ResourceLocator} for locating your own XSLT resources, which will compile
+     * and instantiate all stylesheets using the given {@link TransformerFactory}.
+     * <p>
+     * Using a single {@link TransformerFactory} means that all stylesheets share the same
+     * processor configuration. (Saxon requires this if you want to pass source trees that
+     * you have built yourself to your stylesheets.) The {@link TransformerFactory} must support
+     * {@link SAXTransformerFactory#FEATURE} and be safe to use from multiple threads. Its
+     * {@link URIResolver} will be replaced with one that uses the given xsltResourceLocator.
+     *
+     * @param xsltResourceLocator {@link ResourceLocator} to be used for reading XSLT resources,
+     *   which must not be null.
+     * @param xsltStylesheetCache optional {@link XsltStylesheetCache} for caching compiled stylesheets
+     * @param transformerFactory optional {@link TransformerFactory} to use. If null, a new
+     *   {@link TransformerFactory} will be created each time one is required.
+     */
+    public XsltStylesheetManager(final ResourceLocator xsltResourceLocator, final XsltStylesheetCache xsltStylesheetCache,
+            final TransformerFactory transformerFactory) {
         Assert.notNull(xsltResourceLocator, "xsltResourceLocator");
         this.xsltResourceLocator = xsltResourceLocator;
         this.xsltStylesheetCache = xsltStylesheetCache;
         this.xsltResourceResolver = new XsltResourceResolver(xsltResourceLocator);
+        if (transformerFactory!=null) {
+            XsltFactoryUtilities.requireFeature(transformerFactory, SAXTransformerFactory.FEATURE);
+            transformerFactory.setURIResolver(xsltResourceResolver);
+            this.sharedTransformerFactory = (SAXTransformerFactory) transformerFactory;
+        }
+        else {
+            this.sharedTransformerFactory = null;
+        }
     }
 
     /**
@@ -373,6 +405,10 @@ public final class XsltStylesheetManager {
     //----------------------------------------------------------
 
     private TransformerFactory getTransformerFactory() {
+        if (sharedTransformerFactory!=null) {
+            return sharedTransformerFactory;
+        }
+
         /* Choose appropriate TransformerFactory implementation */
         final TransformerFactory transformerFactory = XsltFactoryUtilities.createJAXPTransformerFactory();
 
@@ -382,6 +418,10 @@ public final class XsltStylesheetManager {
     }
 
     private SAXTransformerFactory getSaxTransformerFactory() {
+        if (sharedTransformerFactory!=null) {
+            return sharedTransformerFactory;
+        }
+
         /* Choose appropriate TransformerFactory implementation */
         final TransformerFactory transformerFactory = XsltFactoryUtilities.createJAXPTransformerFactory();
         XsltFactoryUtilities.requireFeature(transformerFactory, SAXTransformerFactory.FEATURE);
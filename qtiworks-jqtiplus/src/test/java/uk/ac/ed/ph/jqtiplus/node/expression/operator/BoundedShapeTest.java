@@ -0,0 +1,113 @@
+/* Copyright (c) 2012-2013, University of Edinburgh.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice, this
+ *   list of conditions and the following disclaimer in the documentation and/or
+ *   other materials provided with the distribution.
+ *
+ * * Neither the name of the University of Edinburgh nor the names of its
+ *   contributors may be used to endorse or promote products derived from this
+ *   software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ *
+ * This software is derived from (and contains code from) QTItools and MathAssessEngine.
+ * QTItools is (c) 2008, University of Southampton.
+ * MathAssessEngine is (c) 2010, University of Edinburgh.
+ */
+package uk.ac.ed.ph.jqtiplus.node.expression.operator;
+
+import uk.ac.ed.ph.jqtiplus.value.PointValue;
+
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests that {@link BoundedShape} gives exactly the same results as {@link Shape#isInside(int[], PointValue)}
+ *
+ * @author David McKain
+ */
+public class BoundedShapeTest {
+
+    private static final int TRIALS = 500;
+    private static final int EXTENT = 40;
+
+    @Test
+    public void testRect() {
+        checkRandomShapes(Shape.RECT, 4);
+    }
+
+    @Test
+    public void testCircle() {
+        checkRandomShapes(Shape.CIRCLE, 3);
+    }
+
+    @Test
+    public void testEllipse() {
+        checkRandomShapes(Shape.ELLIPSE, 4);
+    }
+
+    @Test
+    public void testPoly() {
+        checkRandomShapes(Shape.POLY, 8);
+        Assert.assertFalse(new BoundedShape(Shape.POLY, new int[] { 0, 0, 10, 0, 10, 10 }).isBounded());
+    }
+
+    @Test
+    public void testDefault() {
+        checkRandomShapes(Shape.DEFAULT, 0);
+        Assert.assertFalse(new BoundedShape(Shape.DEFAULT, new int[0]).isBounded());
+    }
+
+    @Test
+    public void testBounded() {
+        final BoundedShape rect = new BoundedShape(Shape.RECT, new int[] { 10, 10, 20, 20 });
+        Assert.assertTrue(rect.isBounded());
+        Assert.assertTrue(rect.isInside(new PointValue(10, 20)));
+        Assert.assertFalse(rect.isInside(new PointValue(21, 20)));
+
+        /* Wrong number of coordinates are left to fail in the usual way */
+        Assert.assertFalse(new BoundedShape(Shape.CIRCLE, new int[] { 1, 2 }).isBounded());
+    }
+
+    private void checkRandomShapes(final Shape shape, final int coordsLength) {
+        final Random random = new Random(coordsLength * 31L + shape.ordinal());
+        for (int trial=0; trial<TRIALS; trial++) {
+            final int[] coords = new int[coordsLength];
+            for (int i=0; i<coordsLength; i++) {
+                coords[i] = random.nextInt(EXTENT);
+            }
+            if (shape==Shape.RECT) {
+                /* (Make valid rectangles most of the time) */
+                if (random.nextInt(10)!=0) {
+                    coords[2] = coords[0] + random.nextInt(EXTENT);
+                    coords[3] = coords[1] + random.nextInt(EXTENT);
+                }
+            }
+            final BoundedShape boundedShape = new BoundedShape(shape, coords);
+            for (int j=0; j<20; j++) {
+                final PointValue point = new PointValue(random.nextInt(2 * EXTENT) - EXTENT / 2, random.nextInt(2 * EXTENT) - EXTENT / 2);
+                Assert.assertEquals(shape + " " + point, Boolean.valueOf(shape.isInside(coords, point)),
+                        Boolean.valueOf(boundedShape.isInside(point)));
+            }
+        }
+    }
+}
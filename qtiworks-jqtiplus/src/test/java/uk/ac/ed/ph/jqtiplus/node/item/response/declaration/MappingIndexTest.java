@@ -0,0 +1,125 @@
+/* Copyright (c) 2012-2013, University of Edinburgh.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice, this
+ *   list of conditions and the following disclaimer in the documentation and/or
+ *   other materials provided with the distribution.
+ *
+ * * Neither the name of the University of Edinburgh nor the names of its
+ *   contributors may be used to endorse or promote products derived from this
+ *   software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ *
+ * This software is derived from (and contains code from) QTItools and MathAssessEngine.
+ * QTItools is (c) 2008, University of Southampton.
+ * MathAssessEngine is (c) 2010, University of Edinburgh.
+ */
+package uk.ac.ed.ph.jqtiplus.node.item.response.declaration;
+
+import uk.ac.ed.ph.jqtiplus.node.item.AssessmentItem;
+import uk.ac.ed.ph.jqtiplus.testutils.UnitTestHelper;
+import uk.ac.ed.ph.jqtiplus.types.Identifier;
+import uk.ac.ed.ph.jqtiplus.value.BaseType;
+import uk.ac.ed.ph.jqtiplus.value.Cardinality;
+import uk.ac.ed.ph.jqtiplus.value.FloatValue;
+import uk.ac.ed.ph.jqtiplus.value.MultipleValue;
+import uk.ac.ed.ph.jqtiplus.value.StringValue;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests the {@link MappingIndex} class, in particular its handling of
+ * case insensitive <code>mapEntry</code>s.
+ *
+ * @author David McKain
+ */
+public class MappingIndexTest {
+
+    private static final double DEFAULT_VALUE = -1.0;
+
+    private Mapping mapping;
+
+    @Before
+    public void setup() {
+        final AssessmentItem item = UnitTestHelper.resolveUnitTestAssessmentItem("item/mapResponse/MapResponse-Single.xml")
+                .getRootNodeLookup().extractAssumingSuccessful();
+        final ResponseDeclaration responseDeclaration = item.getResponseDeclaration(Identifier.assumedLegal("RESPONSE"));
+        responseDeclaration.setBaseType(BaseType.STRING);
+        mapping = responseDeclaration.getMapping();
+        mapping.getMapEntries().clear();
+        addMapEntry("apple", false, 1.0);
+        addMapEntry("Apple", true, 2.0);
+        addMapEntry("banana", true, 3.0);
+        addMapEntry("BANANA", false, 4.0);
+        addMapEntry("banana", true, 5.0);
+        addMapEntry("i", false, 6.0);
+    }
+
+    private void addMapEntry(final String key, final boolean caseSensitive, final double mappedValue) {
+        final MapEntry mapEntry = new MapEntry(mapping);
+        mapEntry.setMapKey(new StringValue(key));
+        mapEntry.setCaseSensitive(Boolean.valueOf(caseSensitive));
+        mapEntry.setMappedValue(Double.valueOf(mappedValue));
+        mapping.getMapEntries().add(mapEntry);
+    }
+
+    @Test
+    public void testFirstMatchingEntryWins() {
+        final MappingIndex mappingIndex = new MappingIndex(mapping);
+        Assert.assertEquals(6, mappingIndex.size());
+        Assert.assertEquals(1.0, lookup(mappingIndex, "apple"), 0.0);
+        Assert.assertEquals(1.0, lookup(mappingIndex, "Apple"), 0.0);
+        Assert.assertEquals(1.0, lookup(mappingIndex, "APPLE"), 0.0);
+        Assert.assertEquals(3.0, lookup(mappingIndex, "banana"), 0.0);
+        Assert.assertEquals(4.0, lookup(mappingIndex, "Banana"), 0.0);
+        Assert.assertEquals(DEFAULT_VALUE, lookup(mappingIndex, "cherry"), 0.0);
+    }
+
+    @Test
+    public void testCaseFoldingMatchesEqualsIgnoreCase() {
+        final String[] strings = { "i", "I", "ı", "İ", "ss", "ß", "SS", "Σ", "σ", "ς", "k", "K" };
+        for (final String s1 : strings) {
+            for (final String s2 : strings) {
+                Assert.assertEquals(s1 + " vs " + s2, Boolean.valueOf(s1.equalsIgnoreCase(s2)),
+                        Boolean.valueOf(MappingIndex.foldCase(s1).equals(MappingIndex.foldCase(s2))));
+            }
+        }
+        final MappingIndex mappingIndex = new MappingIndex(mapping);
+        Assert.assertEquals(6.0, lookup(mappingIndex, "ı"), 0.0);
+    }
+
+    @Test
+    public void testComputeTargetValue() {
+        final MappingIndex mappingIndex = new MappingIndex(mapping);
+        Assert.assertEquals(new FloatValue(3.0), mapping.computeTargetValue(new StringValue("banana"), mappingIndex));
+        Assert.assertEquals(new FloatValue(mapping.getDefaultValue()), mapping.computeTargetValue(new StringValue("cherry"), mappingIndex));
+
+        /* Also check for list values, where unique values are summed (1 + 1 + 4 - 1) */
+        mapping.getParent().setCardinality(Cardinality.MULTIPLE);
+        Assert.assertEquals(new FloatValue(5.0), mapping.computeTargetValue(MultipleValue.createMultipleValue(
+                new StringValue("apple"), new StringValue("APPLE"), new StringValue("Banana"), new StringValue("cherry")), mappingIndex));
+    }
+
+    private static double lookup(final MappingIndex mappingIndex, final String value) {
+        return mappingIndex.lookup(new StringValue(value), DEFAULT_VALUE);
+    }
+}
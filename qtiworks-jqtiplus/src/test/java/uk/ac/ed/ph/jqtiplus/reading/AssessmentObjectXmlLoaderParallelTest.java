@@ -0,0 +1,138 @@
+/* Copyright (c) 2012-2013, University of Edinburgh.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice, this
+ *   list of conditions and the following disclaimer in the documentation and/or
+ *   other materials provided with the distribution.
+ *
+ * * Neither the name of the University of Edinburgh nor the names of its
+ *   contributors may be used to endorse or promote products derived from this
+ *   software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ *
+ * This software is derived from (and contains code from) QTItools and MathAssessEngine.
+ * QTItools is (c) 2008, University of Southampton.
+ * MathAssessEngine is (c) 2010, University of Edinburgh.
+ */
+package uk.ac.ed.ph.jqtiplus.reading;
+
+import uk.ac.ed.ph.jqtiplus.notification.Notification;
+import uk.ac.ed.ph.jqtiplus.resolution.ResolvedAssessmentItem;
+import uk.ac.ed.ph.jqtiplus.resolution.ResolvedAssessmentTest;
+import uk.ac.ed.ph.jqtiplus.testutils.UnitTestHelper;
+import uk.ac.ed.ph.jqtiplus.validation.ItemValidationResult;
+import uk.ac.ed.ph.jqtiplus.validation.TestValidationResult;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map.Entry;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+import org.junit.runners.Parameterized.Parameters;
+
+/**
+ * Checks that resolving and validating tests in parallel using
+ * {@link AssessmentObjectXmlLoader} gives the same results as doing so sequentially.
+ *
+ * @author David McKain
+ */
+@RunWith(Parameterized.class)
+public final class AssessmentObjectXmlLoaderParallelTest {
+
+    @Parameters
+    public static Collection<Object[]> data() {
+        return Arrays.asList(new Object[][] {
+                { "running/test-nonlinear.xml" },
+                { "running/test-linear-branchRule.xml" },
+                { "running/test-linear-preCondition.xml" },
+        });
+    }
+
+    private final String testFilePath;
+    private ExecutorService executorService;
+
+    public AssessmentObjectXmlLoaderParallelTest(final String testFilePath) {
+        this.testFilePath = testFilePath;
+    }
+
+    @Before
+    public void before() {
+        executorService = Executors.newFixedThreadPool(4);
+    }
+
+    @After
+    public void after() {
+        executorService.shutdownNow();
+    }
+
+    @Test
+    public void testResolution() {
+        final URI testFileUri = UnitTestHelper.createTestResourceUri(testFilePath);
+        final ResolvedAssessmentTest sequential = createLoader(null).loadAndResolveAssessmentTest(testFileUri);
+        final ResolvedAssessmentTest parallel = createLoader(executorService).loadAndResolveAssessmentTest(testFileUri);
+
+        Assert.assertEquals(new ArrayList<URI>(sequential.getResolvedAssessmentItemBySystemIdMap().keySet()),
+                new ArrayList<URI>(parallel.getResolvedAssessmentItemBySystemIdMap().keySet()));
+        for (final Entry<URI, ResolvedAssessmentItem> entry : parallel.getResolvedAssessmentItemBySystemIdMap().entrySet()) {
+            final ResolvedAssessmentItem sequentialItem = sequential.getResolvedAssessmentItemBySystemIdMap().get(entry.getKey());
+            Assert.assertEquals(sequentialItem.getItemLookup().wasSuccessful(), entry.getValue().getItemLookup().wasSuccessful());
+        }
+    }
+
+    @Test
+    public void testValidation() {
+        final URI testFileUri = UnitTestHelper.createTestResourceUri(testFilePath);
+        final TestValidationResult sequential = createLoader(null).loadResolveAndValidateTest(testFileUri);
+        final TestValidationResult parallel = createLoader(executorService).loadResolveAndValidateTest(testFileUri);
+
+        Assert.assertEquals(describe(sequential.getNotifications()), describe(parallel.getNotifications()));
+        Assert.assertEquals(sequential.getItemValidationResults().size(), parallel.getItemValidationResults().size());
+        for (int i=0; i<sequential.getItemValidationResults().size(); i++) {
+            final ItemValidationResult sequentialItemResult = sequential.getItemValidationResults().get(i);
+            final ItemValidationResult parallelItemResult = parallel.getItemValidationResults().get(i);
+            Assert.assertEquals(sequentialItemResult.getResolvedAssessmentItem().getItemLookup().getSystemId(),
+                    parallelItemResult.getResolvedAssessmentItem().getItemLookup().getSystemId());
+            Assert.assertEquals(describe(sequentialItemResult.getNotifications()), describe(parallelItemResult.getNotifications()));
+        }
+    }
+
+    private static AssessmentObjectXmlLoader createLoader(final ExecutorService executorService) {
+        return new AssessmentObjectXmlLoader(UnitTestHelper.createUnitTestQtiXmlReader(),
+                UnitTestHelper.createTestFileResourceLocator(), executorService);
+    }
+
+    private static List<String> describe(final List<Notification> notifications) {
+        final List<String> result = new ArrayList<String>();
+        for (final Notification notification : notifications) {
+            result.add(notification.getNotificationLevel() + ":" + notification.getNotificationType() + ":" + notification.getMessage());
+        }
+        return result;
+    }
+}
@@ -43,6 +43,7 @@ import uk.ac.ed.ph.jqtiplus.internal.util.ObjectDumper;
 import uk.ac.ed.ph.jqtiplus.internal.util.ObjectUtilities;
 import uk.ac.ed.ph.jqtiplus.node.result.SessionStatus;
 import uk.ac.ed.ph.jqtiplus.state.ItemSessionState;
+import uk.ac.ed.ph.jqtiplus.state.TemplateInstance;
 import uk.ac.ed.ph.jqtiplus.state.marshalling.ItemSessionStateXmlMarshaller;
 import uk.ac.ed.ph.jqtiplus.testutils.UnitTestHelper;
 import uk.ac.ed.ph.jqtiplus.types.FileResponseData;
@@ -177,6 +178,42 @@ public final class ChoiceItemRunningTest {
 
     //-------------------------------------------------------
 
+    @Test
+    public void testApplyTemplateInstance() {
+        /* Capture TP results from a separate session on the same item */
+        final ItemSessionController sourceController = UnitTestHelper.loadUnitTestAssessmentItemForControl(TEST_FILE_PATH, true);
+        sourceController.initialize(initTimestamp);
+        sourceController.performTemplateProcessing(initTimestamp);
+        final TemplateInstance templateInstance = sourceController.captureTemplateInstance();
+        assertEquals(BooleanValue.TRUE, templateInstance.getTemplateValues().get(TP_DONE));
+
+        itemSessionController.applyTemplateInstance(templateProcessingTimestamp, templateInstance);
+
+        assertItemNotEntered();
+        assertEquals(SessionStatus.INITIAL, itemSessionState.getSessionStatus());
+        assertTrue(itemSessionState.isInitialized());
+        assertTemplateProcessingDone();
+        assertNoUncommittedResponseValue();
+        assertChoiceResponseValue(null);
+        assertResponseProcessingNotDone();
+        assertScore(0.0);
+    }
+
+    @Test(expected=QtiCandidateStateException.class)
+    public void testApplyTemplateInstanceAfterEntry() {
+        itemSessionController.performTemplateProcessing(templateProcessingTimestamp);
+        final TemplateInstance templateInstance = itemSessionController.captureTemplateInstance();
+        itemSessionController.enterItem(entryTimestamp);
+        itemSessionController.applyTemplateInstance(entryTimestamp, templateInstance);
+    }
+
+    @Test(expected=IllegalArgumentException.class)
+    public void testApplyTemplateInstanceNull() {
+        itemSessionController.applyTemplateInstance(templateProcessingTimestamp, null);
+    }
+
+    //-------------------------------------------------------
+
     @Test
     public void testEntryIntoItem() {
         itemSessionController.performTemplateProcessing(templateProcessingTimestamp);
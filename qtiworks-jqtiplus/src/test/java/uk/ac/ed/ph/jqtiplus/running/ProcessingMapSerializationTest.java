@@ -0,0 +1,116 @@
+/* Copyright (c) 2012-2013, University of Edinburgh.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice, this
+ *   list of conditions and the following disclaimer in the documentation and/or
+ *   other materials provided with the distribution.
+ *
+ * * Neither the name of the University of Edinburgh nor the names of its
+ *   contributors may be used to endorse or promote products derived from this
+ *   software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ *
+ * This software is derived from (and contains code from) QTITools and MathAssessEngine.
+ * QTITools is (c) 2008, University of Southampton.
+ * MathAssessEngine is (c) 2010, University of Edinburgh.
+ */
+package uk.ac.ed.ph.jqtiplus.running;
+
+import uk.ac.ed.ph.jqtiplus.resolution.ResolvedAssessmentItem;
+import uk.ac.ed.ph.jqtiplus.resolution.ResolvedAssessmentTest;
+import uk.ac.ed.ph.jqtiplus.state.ItemProcessingMap;
+import uk.ac.ed.ph.jqtiplus.state.ItemSessionState;
+import uk.ac.ed.ph.jqtiplus.state.TestPlan;
+import uk.ac.ed.ph.jqtiplus.state.TestProcessingMap;
+import uk.ac.ed.ph.jqtiplus.testutils.UnitTestHelper;
+import uk.ac.ed.ph.jqtiplus.types.Identifier;
+import uk.ac.ed.ph.jqtiplus.types.ResponseData;
+import uk.ac.ed.ph.jqtiplus.types.StringResponseData;
+import uk.ac.ed.ph.jqtiplus.value.FloatValue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Checks that {@link ItemProcessingMap} and {@link TestProcessingMap} survive Java
+ * serialization and can still be used to run sessions afterwards.
+ *
+ * @author David McKain
+ */
+public final class ProcessingMapSerializationTest {
+
+    @Test
+    public void testItemProcessingMap() throws Exception {
+        final ResolvedAssessmentItem resolvedAssessmentItem = UnitTestHelper.resolveUnitTestAssessmentItem(ChoiceItemRunningTest.TEST_FILE_PATH);
+        final ItemProcessingMap itemProcessingMap = new ItemProcessingInitializer(resolvedAssessmentItem, true).initialize();
+        final ItemProcessingMap deserialized = roundTrip(itemProcessingMap);
+
+        final ItemSessionController itemSessionController = new ItemSessionController(UnitTestHelper.createJqtiExtensionManager(),
+                new ItemSessionControllerSettings(), deserialized, new ItemSessionState());
+        final Date timestamp = new Date();
+        itemSessionController.initialize(timestamp);
+        itemSessionController.performTemplateProcessing(timestamp);
+        itemSessionController.enterItem(timestamp);
+
+        final Map<Identifier, ResponseData> responseMap = new HashMap<Identifier, ResponseData>();
+        responseMap.put(ChoiceItemRunningTest.RESPONSE, new StringResponseData("ChoiceA"));
+        itemSessionController.bindResponses(timestamp, responseMap);
+        itemSessionController.commitResponses(timestamp);
+        itemSessionController.performResponseProcessing(timestamp);
+
+        Assert.assertEquals(new FloatValue(1.0), itemSessionController.getItemSessionState().getOutcomeValue(Identifier.assumedLegal("SCORE")));
+    }
+
+    @Test
+    public void testTestProcessingMap() throws Exception {
+        final ResolvedAssessmentTest resolvedAssessmentTest = UnitTestHelper.resolveUnitTestAssessmentTest("running/simple-nonlinear-individual.xml");
+        final TestProcessingMap testProcessingMap = new TestProcessingInitializer(resolvedAssessmentTest, true).initialize();
+        final TestProcessingMap deserialized = roundTrip(testProcessingMap);
+
+        final TestPlan originalPlan = new TestPlanner(testProcessingMap).generateTestPlan();
+        final TestPlan deserializedPlan = new TestPlanner(deserialized).generateTestPlan();
+        Assert.assertEquals(originalPlan.debugStructure(), deserializedPlan.debugStructure());
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <E> E roundTrip(final E object) throws IOException, ClassNotFoundException {
+        final ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream();
+        final ObjectOutputStream objectOutputStream = new ObjectOutputStream(byteArrayOutputStream);
+        objectOutputStream.writeObject(object);
+        objectOutputStream.close();
+
+        final ObjectInputStream objectInputStream = new ObjectInputStream(new ByteArrayInputStream(byteArrayOutputStream.toByteArray()));
+        try {
+            return (E) objectInputStream.readObject();
+        }
+        finally {
+            objectInputStream.close();
+        }
+    }
+}
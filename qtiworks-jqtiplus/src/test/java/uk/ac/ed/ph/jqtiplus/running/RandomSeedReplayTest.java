@@ -0,0 +1,281 @@
+/* Copyright (c) 2012-2013, University of Edinburgh.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice, this
+ *   list of conditions and the following disclaimer in the documentation and/or
+ *   other materials provided with the distribution.
+ *
+ * * Neither the name of the University of Edinburgh nor the names of its
+ *   contributors may be used to endorse or promote products derived from this
+ *   software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ *
+ * This software is derived from (and contains code from) QTItools and MathAssessEngine.
+ * QTItools is (c) 2008, University of Southampton.
+ * MathAssessEngine is (c) 2010, University of Edinburgh.
+ */
+package uk.ac.ed.ph.jqtiplus.running;
+
+import uk.ac.ed.ph.jqtiplus.SimpleJqtiFacade;
+import uk.ac.ed.ph.jqtiplus.resolution.ResolvedAssessmentItem;
+import uk.ac.ed.ph.jqtiplus.resolution.ResolvedAssessmentTest;
+import uk.ac.ed.ph.jqtiplus.state.ItemProcessingMap;
+import uk.ac.ed.ph.jqtiplus.state.ItemSessionState;
+import uk.ac.ed.ph.jqtiplus.state.TestPlan;
+import uk.ac.ed.ph.jqtiplus.state.TestPlanNode;
+import uk.ac.ed.ph.jqtiplus.state.TestPlanNode.TestNodeType;
+import uk.ac.ed.ph.jqtiplus.state.TestProcessingMap;
+import uk.ac.ed.ph.jqtiplus.state.TestSessionState;
+import uk.ac.ed.ph.jqtiplus.state.marshalling.ItemSessionStateXmlMarshaller;
+import uk.ac.ed.ph.jqtiplus.state.marshalling.TestPlanXmlMarshaller;
+import uk.ac.ed.ph.jqtiplus.testutils.UnitTestHelper;
+import uk.ac.ed.ph.jqtiplus.types.Identifier;
+import uk.ac.ed.ph.jqtiplus.types.ResponseData;
+import uk.ac.ed.ph.jqtiplus.types.StringResponseData;
+import uk.ac.ed.ph.jqtiplus.value.Value;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Checks that {@link TestPlan}s and interaction shuffle orders can be replayed exactly
+ * using the seeds recorded in the resulting state.
+ *
+ * @author David McKain
+ */
+public final class RandomSeedReplayTest {
+
+    public static final String ITEM_FILE_PATH = "running/choice-shuffle.xml";
+    public static final String TEST_FILE_PATH = "running/test-selection-ordering.xml";
+    public static final String RP_ITEM_FILE_PATH = "running/random-response-processing.xml";
+
+    private static final Identifier RESPONSE = Identifier.assumedLegal("RESPONSE");
+    private static final Identifier RANDOM = Identifier.assumedLegal("RANDOM");
+
+    private ItemProcessingMap itemProcessingMap;
+    private TestProcessingMap testProcessingMap;
+
+    @Before
+    public void setup() {
+        final ResolvedAssessmentItem resolvedAssessmentItem = UnitTestHelper.resolveUnitTestAssessmentItem(ITEM_FILE_PATH);
+        itemProcessingMap = new ItemProcessingInitializer(resolvedAssessmentItem, true).initialize();
+        final ResolvedAssessmentTest resolvedAssessmentTest = UnitTestHelper.resolveUnitTestAssessmentTest(TEST_FILE_PATH);
+        testProcessingMap = new TestProcessingInitializer(resolvedAssessmentTest, true).initialize();
+    }
+
+    @Test
+    public void testSameSeedGivesSamePlan() {
+        for (long seed=0; seed<50; seed++) {
+            final TestPlan first = new TestPlanner(testProcessingMap, seed).generateTestPlan();
+            final TestPlan second = new TestPlanner(testProcessingMap, seed).generateTestPlan();
+            Assert.assertEquals(first, second);
+            Assert.assertEquals(first.debugStructure(), second.debugStructure());
+            Assert.assertEquals(Long.valueOf(seed), first.getRandomSeed());
+        }
+    }
+
+    @Test
+    public void testFixedSeedSourceGivesSamePlan() {
+        final SimpleJqtiFacade simpleJqtiFacade = new SimpleJqtiFacade(UnitTestHelper.createJqtiExtensionManager());
+        final TestSessionControllerSettings settings = new TestSessionControllerSettings();
+        settings.setRandomSeedSource(new FixedRandomSeedSource(99L));
+
+        final TestPlan first = simpleJqtiFacade.createTestPlanner(settings, testProcessingMap).generateTestPlan();
+        final TestPlan second = simpleJqtiFacade.createTestPlanner(settings, testProcessingMap).generateTestPlan();
+        Assert.assertEquals(first, second);
+        Assert.assertEquals(first.debugStructure(), second.debugStructure());
+        Assert.assertEquals(Long.valueOf(99L), first.getRandomSeed());
+    }
+
+    @Test
+    public void testRecordedSeedReplaysPlan() {
+        final TestPlan original = new TestPlanner(testProcessingMap).generateTestPlan();
+        Assert.assertNotNull(original.getRandomSeed());
+
+        final TestPlan replayed = new TestPlanner(testProcessingMap, original.getRandomSeed().longValue()).generateTestPlan();
+        Assert.assertEquals(original, replayed);
+    }
+
+    @Test
+    public void testSeedsVaryPlans() {
+        final Set<String> structures = new HashSet<String>();
+        for (long seed=0; seed<50; seed++) {
+            structures.add(new TestPlanner(testProcessingMap, seed).generateTestPlan().debugStructure());
+        }
+        Assert.assertTrue(structures.size() > 1);
+    }
+
+    @Test
+    public void testTestPlanMarshallingKeepsSeed() {
+        final TestPlan testPlan = new TestPlanner(testProcessingMap, 1234L).generateTestPlan();
+        final TestPlan unmarshalled = TestPlanXmlMarshaller.unmarshal(TestPlanXmlMarshaller.marshal(testPlan).getDocumentElement());
+        Assert.assertEquals(testPlan, unmarshalled);
+    }
+
+    @Test
+    public void testSelectionCounts() {
+        final int sampleCount = 6000;
+        final TestPlanSampler testPlanSampler = new TestPlanSampler(testProcessingMap);
+        final Map<Identifier, Integer> counts = testPlanSampler.computeSelectionCounts(0L, sampleCount);
+
+        /* Every plan contains the testPart, both sections and all 4 of the "o" items, plus 3 of the 6 "i" items */
+        Assert.assertEquals(Integer.valueOf(sampleCount), counts.get(Identifier.assumedLegal("p")));
+        Assert.assertEquals(Integer.valueOf(sampleCount), counts.get(Identifier.assumedLegal("o")));
+        Assert.assertEquals(Integer.valueOf(sampleCount), counts.get(Identifier.assumedLegal("s")));
+        for (int i=1; i<=4; i++) {
+            Assert.assertEquals(Integer.valueOf(sampleCount), counts.get(Identifier.assumedLegal("o" + i)));
+        }
+        int itemSelections = 0;
+        for (int i=1; i<=6; i++) {
+            final Integer count = counts.get(Identifier.assumedLegal("i" + i));
+            Assert.assertNotNull(count);
+            /* Expect around 3000 each. This is deterministic for the fixed seeds used here */
+            Assert.assertTrue("Item i" + i + " selected " + count + " times", count.intValue() > 2800 && count.intValue() < 3200);
+            itemSelections += count.intValue();
+        }
+        Assert.assertEquals(3 * sampleCount, itemSelections);
+
+        /* Each "o" item should also be equally likely to be shuffled into first place, which
+         * won't happen if plans generated from consecutive seeds are correlated */
+        final Map<Identifier, Integer> firstCounts = new HashMap<Identifier, Integer>();
+        for (int i=0; i<sampleCount; i++) {
+            final TestPlan testPlan = testPlanSampler.generateTestPlan(i);
+            final Identifier firstItem = testPlan.searchNodes(TestNodeType.ASSESSMENT_ITEM_REF).get(0).getIdentifier();
+            final Integer count = firstCounts.get(firstItem);
+            firstCounts.put(firstItem, Integer.valueOf(count!=null ? count.intValue() + 1 : 1));
+        }
+        for (int i=1; i<=4; i++) {
+            final Integer count = firstCounts.get(Identifier.assumedLegal("o" + i));
+            Assert.assertNotNull(count);
+            /* Expect around 1500 each */
+            Assert.assertTrue("Item o" + i + " placed first " + count + " times", count.intValue() > 1350 && count.intValue() < 1650);
+        }
+    }
+
+    @Test
+    public void testSameSeedGivesSameShuffle() {
+        final ItemSessionControllerSettings settings = new ItemSessionControllerSettings();
+        settings.setRandomSeedSource(new FixedRandomSeedSource(42L));
+
+        final List<Identifier> first = initializeItem(settings).getShuffledInteractionChoiceOrder(RESPONSE);
+        final List<Identifier> second = initializeItem(settings).getShuffledInteractionChoiceOrder(RESPONSE);
+        Assert.assertEquals(first, second);
+        Assert.assertEquals(Identifier.assumedLegal("ChoiceF"), first.get(5));
+    }
+
+    @Test
+    public void testRecordedSeedReplaysShuffle() {
+        final ItemSessionState original = initializeItem(new ItemSessionControllerSettings());
+        final Long seed = original.getRandomSeed();
+        Assert.assertNotNull(seed);
+
+        /* Check seed survives marshalling */
+        final ItemSessionState unmarshalled = ItemSessionStateXmlMarshaller.unmarshal(ItemSessionStateXmlMarshaller.marshal(original).getDocumentElement());
+        Assert.assertEquals(seed, unmarshalled.getRandomSeed());
+
+        final ItemSessionControllerSettings settings = new ItemSessionControllerSettings();
+        settings.setRandomSeedSource(new FixedRandomSeedSource(seed.longValue()));
+        final ItemSessionState replayed = initializeItem(settings);
+        Assert.assertEquals(original.getShuffledInteractionChoiceOrders(), replayed.getShuffledInteractionChoiceOrders());
+    }
+
+    @Test
+    public void testItemSeedsDerivedFromTestPlan() {
+        final List<List<Identifier>> first = initializeTestItems(777L);
+        final List<List<Identifier>> second = initializeTestItems(777L);
+        Assert.assertEquals(first, second);
+    }
+
+    @Test
+    public void testResponseProcessingVariesPerAttempt() {
+        final List<Value> first = performAttempts(555L, 2);
+        Assert.assertFalse(first.get(0).equals(first.get(1)));
+
+        /* Replaying with the same seed gives the same values for each attempt */
+        Assert.assertEquals(first, performAttempts(555L, 2));
+    }
+
+    //-------------------------------------------------------------------
+
+    /**
+     * Runs the given number of attempts on the RP test item, using a new {@link ItemSessionController}
+     * for each one as the engine does, and returns the resulting values of the RANDOM outcome.
+     */
+    private List<Value> performAttempts(final long seed, final int attemptCount) {
+        final ResolvedAssessmentItem resolvedAssessmentItem = UnitTestHelper.resolveUnitTestAssessmentItem(RP_ITEM_FILE_PATH);
+        final ItemProcessingMap rpItemProcessingMap = new ItemProcessingInitializer(resolvedAssessmentItem, true).initialize();
+        final ItemSessionControllerSettings settings = new ItemSessionControllerSettings();
+        settings.setRandomSeedSource(new FixedRandomSeedSource(seed));
+        final ItemSessionState itemSessionState = new ItemSessionState();
+        final Date timestamp = new Date();
+
+        ItemSessionController itemSessionController = new ItemSessionController(UnitTestHelper.createJqtiExtensionManager(),
+                settings, rpItemProcessingMap, itemSessionState);
+        itemSessionController.initialize(timestamp);
+        itemSessionController.performTemplateProcessing(timestamp);
+        itemSessionController.enterItem(timestamp);
+
+        final List<Value> result = new ArrayList<Value>();
+        final Map<Identifier, ResponseData> responseMap = new HashMap<Identifier, ResponseData>();
+        responseMap.put(RESPONSE, new StringResponseData("ChoiceA"));
+        for (int i=0; i<attemptCount; i++) {
+            itemSessionController = new ItemSessionController(UnitTestHelper.createJqtiExtensionManager(),
+                    settings, rpItemProcessingMap, itemSessionState);
+            itemSessionController.bindResponses(timestamp, responseMap);
+            itemSessionController.commitResponses(timestamp);
+            itemSessionController.performResponseProcessing(timestamp);
+            result.add(itemSessionState.getOutcomeValue(RANDOM));
+        }
+        return result;
+    }
+
+    private ItemSessionState initializeItem(final ItemSessionControllerSettings settings) {
+        final ItemSessionState itemSessionState = new ItemSessionState();
+        final ItemSessionController itemSessionController = new ItemSessionController(UnitTestHelper.createJqtiExtensionManager(),
+                settings, itemProcessingMap, itemSessionState);
+        itemSessionController.initialize(new Date());
+        return itemSessionState;
+    }
+
+    private List<List<Identifier>> initializeTestItems(final long seed) {
+        final TestPlan testPlan = new TestPlanner(testProcessingMap, seed).generateTestPlan();
+        final TestSessionState testSessionState = new TestSessionState(testPlan);
+        final TestSessionController testSessionController = new TestSessionController(UnitTestHelper.createJqtiExtensionManager(),
+                new TestSessionControllerSettings(), testProcessingMap, testSessionState);
+        testSessionController.initialize(new Date());
+
+        final List<List<Identifier>> result = new ArrayList<List<Identifier>>();
+        for (final TestPlanNode itemRefNode : testPlan.searchNodes(TestNodeType.ASSESSMENT_ITEM_REF)) {
+            final ItemSessionState itemSessionState = testSessionState.getItemSessionStates().get(itemRefNode.getKey());
+            Assert.assertNotNull(itemSessionState.getRandomSeed());
+            result.add(itemSessionState.getShuffledInteractionChoiceOrder(RESPONSE));
+        }
+        return result;
+    }
+}
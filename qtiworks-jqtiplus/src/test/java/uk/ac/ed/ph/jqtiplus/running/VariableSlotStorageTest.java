@@ -0,0 +1,195 @@
+/* Copyright (c) 2012-2013, University of Edinburgh.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice, this
+ *   list of conditions and the following disclaimer in the documentation and/or
+ *   other materials provided with the distribution.
+ *
+ * * Neither the name of the University of Edinburgh nor the names of its
+ *   contributors may be used to endorse or promote products derived from this
+ *   software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ *
+ * This software is derived from (and contains code from) QTItools and MathAssessEngine.
+ * QTItools is (c) 2008, University of Southampton.
+ * MathAssessEngine is (c) 2010, University of Edinburgh.
+ */
+package uk.ac.ed.ph.jqtiplus.running;
+
+import uk.ac.ed.ph.jqtiplus.node.outcome.declaration.OutcomeDeclaration;
+import uk.ac.ed.ph.jqtiplus.state.ItemProcessingMap;
+import uk.ac.ed.ph.jqtiplus.state.ItemSessionState;
+import uk.ac.ed.ph.jqtiplus.state.VariableSlotLayout;
+import uk.ac.ed.ph.jqtiplus.state.marshalling.ItemSessionStateXmlMarshaller;
+import uk.ac.ed.ph.jqtiplus.testutils.UnitTestHelper;
+import uk.ac.ed.ph.jqtiplus.types.Identifier;
+import uk.ac.ed.ph.jqtiplus.value.BooleanValue;
+import uk.ac.ed.ph.jqtiplus.value.FloatValue;
+import uk.ac.ed.ph.jqtiplus.value.Value;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+
+/**
+ * Tests the slot-based storage of variable values in {@link ItemSessionState}
+ *
+ * @see VariableSlotLayout
+ *
+ * @author David McKain
+ */
+public final class VariableSlotStorageTest {
+
+    private static final Identifier SCORE = Identifier.assumedLegal("SCORE");
+    private static final Identifier RP_DONE = Identifier.assumedLegal("RP_DONE");
+
+    private ItemSessionController itemSessionController;
+    private ItemProcessingMap itemProcessingMap;
+    private ItemSessionState itemSessionState;
+
+    @Before
+    public void setup() {
+        itemSessionController = UnitTestHelper.loadUnitTestAssessmentItemForControl(ChoiceItemRunningTest.TEST_FILE_PATH, true);
+        itemProcessingMap = itemSessionController.getItemProcessingMap();
+        itemSessionState = itemSessionController.getItemSessionState();
+        final Date timestamp = new Date();
+        itemSessionController.initialize(timestamp);
+        itemSessionController.performTemplateProcessing(timestamp);
+    }
+
+    @Test
+    public void testLayouts() {
+        Assert.assertEquals(Arrays.asList(RP_DONE, SCORE), itemProcessingMap.getOutcomeSlotLayout().getIdentifiers());
+        Assert.assertEquals(1, itemProcessingMap.getOutcomeSlotLayout().getSlot(SCORE));
+        Assert.assertEquals(-1, itemProcessingMap.getOutcomeSlotLayout().getSlot(Identifier.assumedLegal("completionStatus")));
+        Assert.assertEquals(-1, itemProcessingMap.getResponseSlotLayout().getSlot(Identifier.assumedLegal("duration")));
+    }
+
+    @Test
+    public void testDeclarationSlots() {
+        final OutcomeDeclaration scoreDeclaration = itemProcessingMap.getValidOutcomeDeclarationMap().get(SCORE);
+        Assert.assertEquals(1, itemProcessingMap.getVariableSlot(scoreDeclaration));
+        Assert.assertEquals(-1, itemProcessingMap.getVariableSlot(itemProcessingMap.getValidOutcomeDeclarationMap()
+                .get(Identifier.assumedLegal("completionStatus"))));
+        Assert.assertEquals(-1, itemProcessingMap.getVariableSlot(new OutcomeDeclaration(null)));
+    }
+
+    @Test
+    public void testSlotAccessors() {
+        Assert.assertTrue(itemSessionState.isBoundToVariableSlotLayouts(itemProcessingMap));
+        final OutcomeDeclaration scoreDeclaration = itemProcessingMap.getValidOutcomeDeclarationMap().get(SCORE);
+        final int slot = itemProcessingMap.getVariableSlot(scoreDeclaration);
+
+        itemSessionController.setVariableValue(scoreDeclaration, new FloatValue(1.0));
+        Assert.assertEquals(new FloatValue(1.0), itemSessionState.getOutcomeSlotValue(slot));
+        Assert.assertEquals(new FloatValue(1.0), itemSessionState.getOutcomeValue(SCORE));
+
+        itemSessionState.setOutcomeSlotValue(slot, new FloatValue(2.0));
+        Assert.assertEquals(new FloatValue(2.0), itemSessionController.evaluateVariableValue(scoreDeclaration));
+        Assert.assertEquals(new FloatValue(2.0), itemSessionState.getOutcomeValues().get(SCORE));
+        Assert.assertEquals(2, itemSessionState.getOutcomeValues().size());
+    }
+
+    @Test
+    public void testDeclarationLookupWhenBoundElsewhere() {
+        /* If the state gets bound to another item's layouts, lookups must go via identifiers */
+        final ItemSessionController otherController = UnitTestHelper.loadUnitTestAssessmentItemForControl(ChoiceItemRunningTest.TEST_FILE_PATH, true);
+        itemSessionState.bindVariableSlotLayouts(otherController.getItemProcessingMap());
+        Assert.assertFalse(itemSessionState.isBoundToVariableSlotLayouts(itemProcessingMap));
+
+        final OutcomeDeclaration scoreDeclaration = itemProcessingMap.getValidOutcomeDeclarationMap().get(SCORE);
+        itemSessionController.setVariableValue(scoreDeclaration, new FloatValue(3.0));
+        Assert.assertEquals(new FloatValue(3.0), itemSessionState.getOutcomeValue(SCORE));
+        Assert.assertEquals(new FloatValue(3.0), itemSessionController.evaluateVariableValue(scoreDeclaration));
+    }
+
+    @Test
+    public void testMapView() {
+        final Map<Identifier, Value> expected = new HashMap<Identifier, Value>();
+        expected.put(RP_DONE, BooleanValue.FALSE);
+        expected.put(SCORE, new FloatValue(0.0));
+        Assert.assertEquals(expected, itemSessionState.getOutcomeValues());
+        Assert.assertEquals(expected.hashCode(), itemSessionState.getOutcomeValues().hashCode());
+
+        itemSessionState.setOutcomeValue(SCORE, new FloatValue(1.0));
+        Assert.assertEquals(new FloatValue(1.0), itemSessionState.getOutcomeValue(SCORE));
+        Assert.assertEquals(2, itemSessionState.getOutcomeValues().size());
+
+        /* Undeclared variables still work */
+        final Identifier extra = Identifier.assumedLegal("EXTRA");
+        itemSessionState.setOutcomeValue(extra, new FloatValue(2.0));
+        Assert.assertEquals(new FloatValue(2.0), itemSessionState.getOutcomeValue(extra));
+        Assert.assertEquals(3, itemSessionState.getOutcomeValues().size());
+        Assert.assertTrue(itemSessionState.getOutcomeValues().containsKey(extra));
+    }
+
+    @Test
+    public void testIterationOrderMatchesHashMap() {
+        /* Values should come out in the same order as from a HashMap filled in declaration order */
+        final Map<Identifier, Value> hashMap = new HashMap<Identifier, Value>();
+        for (final Identifier identifier : itemProcessingMap.getOutcomeSlotLayout().getIdentifiers()) {
+            hashMap.put(identifier, itemSessionState.getOutcomeValue(identifier));
+        }
+        Assert.assertEquals(new ArrayList<Identifier>(hashMap.keySet()),
+                new ArrayList<Identifier>(itemSessionState.getOutcomeValues().keySet()));
+    }
+
+    @Test
+    public void testMarshallingUnchangedByBinding() {
+        final Element marshalled = ItemSessionStateXmlMarshaller.marshal(itemSessionState).getDocumentElement();
+
+        /* Unmarshalled state uses HashMaps until bound */
+        final ItemSessionState unmarshalled = ItemSessionStateXmlMarshaller.unmarshal(marshalled);
+        Assert.assertEquals(itemSessionState, unmarshalled);
+        Assert.assertEquals(itemSessionState.hashCode(), unmarshalled.hashCode());
+        Assert.assertEquals(describeChildren(marshalled), describeChildren(ItemSessionStateXmlMarshaller.marshal(unmarshalled).getDocumentElement()));
+
+        unmarshalled.bindVariableSlotLayouts(itemProcessingMap);
+        Assert.assertEquals(itemSessionState, unmarshalled);
+        Assert.assertEquals(describeChildren(marshalled), describeChildren(ItemSessionStateXmlMarshaller.marshal(unmarshalled).getDocumentElement()));
+    }
+
+    @Test
+    public void testReset() {
+        itemSessionState.reset();
+        Assert.assertTrue(itemSessionState.getOutcomeValues().isEmpty());
+        Assert.assertNull(itemSessionState.getOutcomeValue(SCORE));
+        Assert.assertEquals(new ItemSessionState().getOutcomeValues(), itemSessionState.getOutcomeValues());
+    }
+
+    private static List<String> describeChildren(final Element element) {
+        final List<String> result = new ArrayList<String>();
+        for (Node child = element.getFirstChild(); child!=null; child = child.getNextSibling()) {
+            if (child instanceof Element) {
+                result.add(child.getLocalName() + ":" + ((Element) child).getAttribute("identifier"));
+            }
+        }
+        return result;
+    }
+}
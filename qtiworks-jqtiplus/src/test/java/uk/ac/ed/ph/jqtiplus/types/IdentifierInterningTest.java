@@ -0,0 +1,112 @@
+/* Copyright (c) 2012-2013, University of Edinburgh.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice, this
+ *   list of conditions and the following disclaimer in the documentation and/or
+ *   other materials provided with the distribution.
+ *
+ * * Neither the name of the University of Edinburgh nor the names of its
+ *   contributors may be used to endorse or promote products derived from this
+ *   software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ *
+ * This software is derived from (and contains code from) QTItools and MathAssessEngine.
+ * QTItools is (c) 2008, University of Southampton.
+ * MathAssessEngine is (c) 2010, University of Edinburgh.
+ */
+package uk.ac.ed.ph.jqtiplus.types;
+
+import uk.ac.ed.ph.jqtiplus.internal.util.WeakInternPool;
+import uk.ac.ed.ph.jqtiplus.state.TestPlanNodeKey;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests interning of {@link Identifier}s and {@link TestPlanNodeKey}s.
+ *
+ * @author David McKain
+ */
+public class IdentifierInterningTest {
+
+    @Test
+    public void testParseStringInterns() {
+        final Identifier first = Identifier.parseString(new String("interned"));
+        final Identifier second = Identifier.parseString(new String("interned"));
+        Assert.assertSame(first, second);
+        Assert.assertSame(first, Identifier.assumedLegal("interned"));
+    }
+
+    @Test
+    public void testSerializationInterns() throws Exception {
+        final Identifier identifier = Identifier.parseString("serialized");
+        Assert.assertSame(identifier, roundTrip(identifier));
+    }
+
+    @Test
+    public void testTestPlanNodeKeyInterns() throws Exception {
+        final TestPlanNodeKey first = TestPlanNodeKey.fromString(new String("i1:3:1"));
+        final TestPlanNodeKey second = TestPlanNodeKey.fromString(new String("i1:3:1"));
+        Assert.assertSame(first, second);
+        Assert.assertSame(first.getIdentifier(), Identifier.parseString("i1"));
+        Assert.assertSame(first, roundTrip(first));
+        Assert.assertEquals(first, new TestPlanNodeKey(Identifier.parseString("i1"), 3, 1));
+    }
+
+    @Test(expected=IllegalArgumentException.class)
+    public void testTestPlanNodeKeyStillChecked() {
+        TestPlanNodeKey.fromString("i1:3:0");
+    }
+
+    @Test
+    public void testPoolBounded() {
+        final WeakInternPool<String, Object> pool = new WeakInternPool<String, Object>(0);
+        final String key = "key";
+        final Object value = new Object();
+        Assert.assertSame(value, pool.intern(key, value));
+        Assert.assertNull(pool.get(key));
+        Assert.assertEquals(0, pool.size());
+    }
+
+    @Test
+    public void testPoolReturnsExisting() {
+        final WeakInternPool<String, Object> pool = new WeakInternPool<String, Object>(100);
+        final String key = "key";
+        final Object value = new Object();
+        Assert.assertSame(value, pool.intern(key, value));
+        Assert.assertSame(value, pool.intern(key, new Object()));
+        Assert.assertSame(value, pool.get(key));
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <E> E roundTrip(final E object) throws Exception {
+        final ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream();
+        final ObjectOutputStream objectOutputStream = new ObjectOutputStream(byteArrayOutputStream);
+        objectOutputStream.writeObject(object);
+        objectOutputStream.close();
+        final ObjectInputStream objectInputStream = new ObjectInputStream(new ByteArrayInputStream(byteArrayOutputStream.toByteArray()));
+        return (E) objectInputStream.readObject();
+    }
+}
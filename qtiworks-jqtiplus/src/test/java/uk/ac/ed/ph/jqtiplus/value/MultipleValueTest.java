@@ -56,6 +56,13 @@ public class MultipleValueTest extends ValueTest {
 
     private static final Value MULTIPLE_4__1_2_3_4;
 
+    /* (These are larger than ListValue.INDEX_THRESHOLD so are compared using count indices) */
+    private static final Value MULTIPLE_5__1_TO_12;
+
+    private static final Value MULTIPLE_6__12_TO_1;
+
+    private static final Value MULTIPLE_7__1_TO_11_1;
+
     static {
         // MULTIPLE_1__1_2_3
         MULTIPLE_1__1_2_3 = MultipleValue.createMultipleValue(
@@ -81,6 +88,19 @@ public class MultipleValueTest extends ValueTest {
                 new IntegerValue(2),
                 new IntegerValue(3),
                 new IntegerValue(4));
+
+        // MULTIPLE_5__1_TO_12, MULTIPLE_6__12_TO_1, MULTIPLE_7__1_TO_11_1
+        final IntegerValue[] ascending = new IntegerValue[12];
+        final IntegerValue[] descending = new IntegerValue[12];
+        final IntegerValue[] repeated = new IntegerValue[12];
+        for (int i=0; i<12; i++) {
+            ascending[i] = new IntegerValue(i+1);
+            descending[i] = new IntegerValue(12-i);
+            repeated[i] = new IntegerValue(i<11 ? i+1 : 1);
+        }
+        MULTIPLE_5__1_TO_12 = MultipleValue.createMultipleValue(ascending);
+        MULTIPLE_6__12_TO_1 = MultipleValue.createMultipleValue(descending);
+        MULTIPLE_7__1_TO_11_1 = MultipleValue.createMultipleValue(repeated);
     }
 
     /**
@@ -137,6 +157,9 @@ public class MultipleValueTest extends ValueTest {
                 {true, MULTIPLE_1__1_2_3, MULTIPLE_2__1_2_3},
                 {true, MULTIPLE_1__1_2_3, MULTIPLE_3__3_2_1},
                 {false, MULTIPLE_1__1_2_3, MULTIPLE_4__1_2_3_4},
+                {true, MULTIPLE_5__1_TO_12, MULTIPLE_6__12_TO_1},
+                {false, MULTIPLE_5__1_TO_12, MULTIPLE_7__1_TO_11_1},
+                {false, MULTIPLE_4__1_2_3_4, MULTIPLE_5__1_TO_12},
                 // OrderedValue
                 {true, MultipleValue.emptyValue(), OrderedValue.emptyValue()},
                 {false, MultipleValue.emptyValue(), OrderedValue.createOrderedValue(new IntegerValue(1))},
@@ -58,7 +58,8 @@ import org.w3c.dom.Element;
  * process on it, creating a {@link MathsContentInputValueWrapper} that can be picked apart
  * as required.
  * <p>
- * An instance of this class is NOT thread-safe
+ * An instance of this class is NOT thread-safe. Use {@link AsciiMathUpConversionService} if
+ * you need to share up-conversion between threads.
  *
  * <h2>Usage Notes</h2>
  *
@@ -0,0 +1,208 @@
+/* Copyright (c) 2012-2013, University of Edinburgh.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice, this
+ *   list of conditions and the following disclaimer in the documentation and/or
+ *   other materials provided with the distribution.
+ *
+ * * Neither the name of the University of Edinburgh nor the names of its
+ *   contributors may be used to endorse or promote products derived from this
+ *   software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ *
+ * This software is derived from (and contains code from) QTItools and MathAssessEngine.
+ * QTItools is (c) 2008, University of Southampton.
+ * MathAssessEngine is (c) 2010, University of Edinburgh.
+ */
+package uk.ac.ed.ph.qtiworks.mathassess.glue;
+
+import uk.ac.ed.ph.qtiworks.mathassess.glue.types.MathsContentInputValueWrapper;
+
+import uk.ac.ed.ph.snuggletex.internal.util.ConstraintUtilities;
+import uk.ac.ed.ph.snuggletex.utilities.StylesheetCache;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Thread-safe front end to {@link AsciiMathHelper} that remembers the results of recent
+ * up-conversions, so that ASCIIMath input that has been seen before (e.g. a candidate
+ * resubmitting the same answer, or many candidates typing the same thing) does not have
+ * to be parsed and up-converted again.
+ * <p>
+ * Input is trimmed before being up-converted, and results are cached (in LRU fashion)
+ * using the trimmed input as key. Inputs that cause the up-conversion process to fail are
+ * cached too.
+ * <p>
+ * As {@link AsciiMathHelper} is not thread-safe, a pool of these is kept so that they (and
+ * the underlying parser and stylesheets) can be reused by different threads.
+ * <p>
+ * Results returned by this class are shared between callers and must not be modified.
+ *
+ * @author David McKain
+ */
+public final class AsciiMathUpConversionService {
+
+    /** Default maximum number of results to cache */
+    public static final int DEFAULT_CACHE_SIZE = 1000;
+
+    private final StylesheetCache stylesheetCache;
+    private final int cacheSize;
+    private final Queue<AsciiMathHelper> idleHelpers;
+    private final Map<String, Object> mathsContentCache;
+    private final Map<String, Object> upConversionCache;
+
+    public AsciiMathUpConversionService(final StylesheetCache stylesheetCache) {
+        this(stylesheetCache, DEFAULT_CACHE_SIZE);
+    }
+
+    /**
+     * Creates a new service, caching up to the given number of results of each kind.
+     * Set this to zero or less to disable caching.
+     */
+    public AsciiMathUpConversionService(final StylesheetCache stylesheetCache, final int cacheSize) {
+        ConstraintUtilities.ensureNotNull(stylesheetCache, "stylesheetCache");
+        this.stylesheetCache = stylesheetCache;
+        this.cacheSize = cacheSize;
+        this.idleHelpers = new ConcurrentLinkedQueue<AsciiMathHelper>();
+        this.mathsContentCache = createCache(cacheSize);
+        this.upConversionCache = createCache(cacheSize);
+    }
+
+    private static Map<String, Object> createCache(final int cacheSize) {
+        return Collections.synchronizedMap(new LinkedHashMap<String, Object>(16, 0.75f, true) {
+
+            private static final long serialVersionUID = 6097296787373183420L;
+
+            @Override
+            protected boolean removeEldestEntry(final Map.Entry<String, Object> eldest) {
+                return size() > cacheSize;
+            }
+        });
+    }
+
+    public int getCacheSize() {
+        return cacheSize;
+    }
+
+    //-----------------------------------------------------------------
+
+    /**
+     * Cached version of {@link AsciiMathHelper#createMathsContentFromAsciiMath(String)}.
+     * The resulting {@link MathsContentInputValueWrapper} is shared and must not be modified.
+     *
+     * @param asciiMathInput raw input entered into the ASCIIMathML box (e.g. '4sin x'),
+     *   which will be trimmed.
+     *
+     * @throws IllegalArgumentException if the ASCIIMath input is null
+     * @throws AsciiMathInputException if the up-conversion process fails unexpectedly
+     *   on the ASCIIMath input
+     */
+    public MathsContentInputValueWrapper createMathsContentFromAsciiMath(final String asciiMathInput) {
+        ConstraintUtilities.ensureNotNull(asciiMathInput, "asciiMathInput");
+        final String trimmedInput = asciiMathInput.trim();
+        Object result = mathsContentCache.get(trimmedInput);
+        if (result==null) {
+            final AsciiMathHelper helper = borrowHelper();
+            try {
+                result = helper.createMathsContentFromAsciiMath(trimmedInput);
+            }
+            catch (final AsciiMathInputException e) {
+                result = e;
+            }
+            finally {
+                returnHelper(helper);
+            }
+            mathsContentCache.put(trimmedInput, result);
+        }
+        return (MathsContentInputValueWrapper) checkResult(result);
+    }
+
+    /**
+     * Cached version of {@link AsciiMathHelper#upConvertAsciiMathInput(String)}.
+     * The resulting {@link Map} is unmodifiable.
+     *
+     * @param asciiMathInput raw input entered into the ASCIIMathML box (e.g. '4sin x'),
+     *   which will be trimmed.
+     *
+     * @throws IllegalArgumentException if the ASCIIMath input is null
+     * @throws AsciiMathInputException if the up-conversion process fails unexpectedly
+     *   on the ASCIIMath input
+     */
+    @SuppressWarnings("unchecked")
+    public Map<String, String> upConvertAsciiMathInput(final String asciiMathInput) {
+        ConstraintUtilities.ensureNotNull(asciiMathInput, "asciiMathInput");
+        final String trimmedInput = asciiMathInput.trim();
+        Object result = upConversionCache.get(trimmedInput);
+        if (result==null) {
+            final AsciiMathHelper helper = borrowHelper();
+            try {
+                result = Collections.unmodifiableMap(helper.upConvertAsciiMathInput(trimmedInput));
+            }
+            catch (final AsciiMathInputException e) {
+                result = e;
+            }
+            finally {
+                returnHelper(helper);
+            }
+            upConversionCache.put(trimmedInput, result);
+        }
+        return (Map<String, String>) checkResult(result);
+    }
+
+    public void clear() {
+        mathsContentCache.clear();
+        upConversionCache.clear();
+    }
+
+    //-----------------------------------------------------------------
+
+    private static Object checkResult(final Object result) {
+        if (result instanceof AsciiMathInputException) {
+            /* (Throw a new Exception so that the stack trace makes sense) */
+            throw new AsciiMathInputException(((AsciiMathInputException) result).getAsciiMathInput());
+        }
+        return result;
+    }
+
+    private AsciiMathHelper borrowHelper() {
+        final AsciiMathHelper helper = idleHelpers.poll();
+        return helper!=null ? helper : new AsciiMathHelper(stylesheetCache);
+    }
+
+    private void returnHelper(final AsciiMathHelper helper) {
+        idleHelpers.offer(helper);
+    }
+
+    //-----------------------------------------------------------------
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + "@" + Integer.toHexString(System.identityHashCode(this))
+                + "(cacheSize=" + cacheSize
+                + ",mathsContentCacheSize=" + mathsContentCache.size()
+                + ",upConversionCacheSize=" + upConversionCache.size()
+                + ",idleHelpers=" + idleHelpers.size()
+                + ")";
+    }
+}
@@ -0,0 +1,284 @@
+/* Copyright (c) 2012-2013, University of Edinburgh.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice, this
+ *   list of conditions and the following disclaimer in the documentation and/or
+ *   other materials provided with the distribution.
+ *
+ * * Neither the name of the University of Edinburgh nor the names of its
+ *   contributors may be used to endorse or promote products derived from this
+ *   software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ *
+ * This software is derived from (and contains code from) QTItools and MathAssessEngine.
+ * QTItools is (c) 2008, University of Southampton.
+ * MathAssessEngine is (c) 2010, University of Edinburgh.
+ */
+package uk.ac.ed.ph.qtiworks.mathassess.glue.maxima;
+
+import uk.ac.ed.ph.qtiworks.mathassess.glue.MathAssessCasException;
+
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+import org.w3c.dom.Document;
+
+/**
+ * Size-bounded memo cache for the results of CAS evaluations performed by {@link QtiMaximaProcess}
+ * on behalf of <tt>CasCompare</tt>, <tt>CasCondition</tt> and <tt>CasProcess</tt>.
+ * <p>
+ * Entries are keyed on the Maxima code (after substitution of the normalised Maxima forms of
+ * any argument values), the simplification flag and a fingerprint of the state of the Maxima
+ * process (i.e. the variables passed into it and the <tt>ScriptRule</tt> code run within it
+ * since it was last reset). Code that looks as if it might use randomness or change the
+ * state of the Maxima process is never memoised (see {@link #isMemoisable(String)}), and nothing
+ * is memoised once randomness has been used to change that state.
+ * <p>
+ * Up-converted MathML {@link Document}s are copied when stored and when retrieved, so callers
+ * can do what they like with the results they get back.
+ *
+ * <h2>Usage</h2>
+ * <ul>
+ *   <li>An instance of this class is safe to use concurrently by multiple threads.</li>
+ *   <li>Setting a maximum size of zero (or less) disables caching altogether.</li>
+ * </ul>
+ *
+ * @author David McKain
+ */
+public final class CasResultCache {
+
+    /** Default maximum number of results to keep */
+    public static final int DEFAULT_MAX_SIZE = 10000;
+
+    /** Matches Maxima code that might not give the same result each time it is run */
+    private static final Pattern NONDETERMINISTIC_CODE_PATTERN = Pattern.compile(
+            "random|_time\\b|\\b(?:gensym|timedate)\\b",
+            Pattern.CASE_INSENSITIVE);
+
+    /**
+     * Matches Maxima code that might change the state of the Maxima process (e.g. via assignments
+     * or function definitions). This deliberately errs on the side of caution.
+     */
+    private static final Pattern STATE_CHANGING_CODE_PATTERN = Pattern.compile(
+            ":|\\b(?:kill|load|batch|batchload|declare|assume|forget|define|remvalue|remfunction)\\b",
+            Pattern.CASE_INSENSITIVE);
+
+    /** Fingerprint of a freshly initialised (or reset) Maxima process */
+    public static final String INITIAL_STATE_FINGERPRINT = "";
+
+    private final int maxSize;
+    private final Map<String, Object> resultMap;
+    private long hitCount;
+    private long missCount;
+    private long skipCount;
+
+    public CasResultCache() {
+        this(DEFAULT_MAX_SIZE);
+    }
+
+    public CasResultCache(final int maxSize) {
+        this.maxSize = maxSize;
+        this.resultMap = new LinkedHashMap<String, Object>(16, 0.75f, true) {
+
+            private static final long serialVersionUID = -3409004468442543236L;
+
+            @Override
+            protected boolean removeEldestEntry(final Map.Entry<String, Object> eldest) {
+                return size() > CasResultCache.this.maxSize;
+            }
+        };
+    }
+
+    //----------------------------------------------------
+
+    public boolean isEnabled() {
+        return maxSize > 0;
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    public synchronized int size() {
+        return resultMap.size();
+    }
+
+    public synchronized long getHitCount() {
+        return hitCount;
+    }
+
+    public synchronized long getMissCount() {
+        return missCount;
+    }
+
+    /**
+     * Returns the number of evaluations that could not be memoised, e.g. because they might
+     * have used randomness.
+     */
+    public synchronized long getSkipCount() {
+        return skipCount;
+    }
+
+    /**
+     * Returns the proportion of memoisable lookups that were satisfied from this cache,
+     * or 0 if no lookups have been made yet.
+     */
+    public synchronized double getHitRate() {
+        final long lookups = hitCount + missCount;
+        return lookups > 0 ? (double) hitCount / lookups : 0.0;
+    }
+
+    public synchronized void clear() {
+        resultMap.clear();
+    }
+
+    //----------------------------------------------------
+
+    /**
+     * Tests whether the given Maxima code can safely be memoised, i.e. it appears to give the
+     * same result whenever it is run in the same state and does not change that state.
+     */
+    public static boolean isMemoisable(final String maximaCode) {
+        return !NONDETERMINISTIC_CODE_PATTERN.matcher(maximaCode).find()
+                && !STATE_CHANGING_CODE_PATTERN.matcher(maximaCode).find();
+    }
+
+    /**
+     * Computes the fingerprint for the state of a Maxima process that had the given fingerprint
+     * and then had the given (state-changing) input applied to it.
+     *
+     * @param stateFingerprint fingerprint of the state before the change, null if unknown
+     * @param stateChange Maxima input that changed the state
+     *
+     * @return fingerprint of the new state, or null if it is unknown (e.g. if the change
+     *   might have involved randomness)
+     */
+    public static String computeStateFingerprint(final String stateFingerprint, final String stateChange) {
+        if (stateFingerprint==null || NONDETERMINISTIC_CODE_PATTERN.matcher(stateChange).find()) {
+            return null;
+        }
+        try {
+            final MessageDigest digest = MessageDigest.getInstance("SHA-1");
+            digest.update(stateFingerprint.getBytes("UTF-8"));
+            digest.update((byte) '\n');
+            digest.update(stateChange.getBytes("UTF-8"));
+            final StringBuilder result = new StringBuilder();
+            for (final byte b : digest.digest()) {
+                result.append(Character.forDigit((b >> 4) & 0xf, 16))
+                    .append(Character.forDigit(b & 0xf, 16));
+            }
+            return result.toString();
+        }
+        catch (final NoSuchAlgorithmException e) {
+            throw new MathAssessCasException("Unexpected failure computing SHA-1 digest", e);
+        }
+        catch (final UnsupportedEncodingException e) {
+            throw new MathAssessCasException("Unexpected failure computing SHA-1 digest", e);
+        }
+    }
+
+    /**
+     * Creates a key for looking up the result of the given evaluation, returning null (and
+     * recording this) if the result should not be memoised.
+     *
+     * @param resultKind distinguishes the different kinds of result (e.g. string or MathML output)
+     * @param stateFingerprint fingerprint of the state of the Maxima process, null if unknown
+     * @param simplify whether simplification will be used during the evaluation
+     * @param maximaCode code that determines whether the evaluation is memoisable
+     * @param maximaInput full input to be evaluated (i.e. the code with any arguments substituted in)
+     */
+    public String createKey(final String resultKind, final String stateFingerprint, final boolean simplify,
+            final String maximaCode, final String maximaInput) {
+        if (!isEnabled()) {
+            return null;
+        }
+        if (stateFingerprint==null || !isMemoisable(maximaCode)) {
+            synchronized (this) {
+                skipCount++;
+            }
+            return null;
+        }
+        return resultKind + '\u0000' + simplify + '\u0000' + stateFingerprint + '\u0000' + maximaInput;
+    }
+
+    //----------------------------------------------------
+
+    public String getStringOutput(final String key) {
+        return (String) lookup(key);
+    }
+
+    public void putStringOutput(final String key, final String stringOutput) {
+        store(key, stringOutput);
+    }
+
+    /**
+     * Returns a copy of the up-converted MathML {@link Document} stored with the given key,
+     * or null if nothing has been stored.
+     */
+    public Document getUpconvertedDocument(final String key) {
+        final Document cached = (Document) lookup(key);
+        if (cached==null) {
+            return null;
+        }
+        /* (DOM implementations aren't guaranteed to be thread-safe, even for reading) */
+        synchronized (cached) {
+            return (Document) cached.cloneNode(true);
+        }
+    }
+
+    /**
+     * Stores a copy of the given up-converted MathML {@link Document}.
+     */
+    public void putUpconvertedDocument(final String key, final Document upconvertedDocument) {
+        store(key, upconvertedDocument.cloneNode(true));
+    }
+
+    private synchronized Object lookup(final String key) {
+        final Object result = resultMap.get(key);
+        if (result!=null) {
+            hitCount++;
+        }
+        else {
+            missCount++;
+        }
+        return result;
+    }
+
+    private synchronized void store(final String key, final Object value) {
+        resultMap.put(key, value);
+    }
+
+    //----------------------------------------------------
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + "@" + Integer.toHexString(System.identityHashCode(this))
+                + "(maxSize=" + maxSize
+                + ",size=" + size()
+                + ",hitCount=" + getHitCount()
+                + ",missCount=" + getMissCount()
+                + ",skipCount=" + getSkipCount()
+                + ")";
+    }
+}
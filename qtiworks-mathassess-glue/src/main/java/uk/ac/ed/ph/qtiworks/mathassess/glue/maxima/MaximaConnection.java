@@ -0,0 +1,81 @@
+/* Copyright (c) 2012-2013, University of Edinburgh.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice, this
+ *   list of conditions and the following disclaimer in the documentation and/or
+ *   other materials provided with the distribution.
+ *
+ * * Neither the name of the University of Edinburgh nor the names of its
+ *   contributors may be used to endorse or promote products derived from this
+ *   software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ *
+ * This software is derived from (and contains code from) QTItools and MathAssessEngine.
+ * QTItools is (c) 2008, University of Southampton.
+ * MathAssessEngine is (c) 2010, University of Edinburgh.
+ */
+package uk.ac.ed.ph.qtiworks.mathassess.glue.maxima;
+
+import uk.ac.ed.ph.jacomax.MaximaProcessTerminatedException;
+import uk.ac.ed.ph.jacomax.MaximaTimeoutException;
+
+/**
+ * Encapsulates the raw interactive connection to a running Maxima process used by a
+ * {@link QtiMaximaProcess}.
+ * <p>
+ * This is normally implemented by {@link JacomaxMaximaConnection}. Having this level of
+ * indirection allows process management (e.g. pooling) to be exercised without requiring
+ * Maxima to be installed.
+ *
+ * @see MaximaConnectionFactory
+ *
+ * @author David McKain
+ */
+public interface MaximaConnection {
+
+    /**
+     * Sends the given input to Maxima and returns its (raw) output.
+     *
+     * @throws MaximaTimeoutException
+     * @throws MaximaProcessTerminatedException
+     */
+    String executeCall(String maximaInput) throws MaximaTimeoutException;
+
+    /**
+     * Sends the given input to Maxima, discarding its output.
+     *
+     * @throws MaximaTimeoutException
+     * @throws MaximaProcessTerminatedException
+     */
+    void executeCallDiscardOutput(String maximaInput) throws MaximaTimeoutException;
+
+    /**
+     * Resets Maxima back to (approximately) the state it was in when the connection was opened.
+     *
+     * @throws MaximaTimeoutException
+     * @throws MaximaProcessTerminatedException
+     */
+    void softReset() throws MaximaTimeoutException;
+
+    boolean isTerminated();
+
+    void terminate();
+
+}
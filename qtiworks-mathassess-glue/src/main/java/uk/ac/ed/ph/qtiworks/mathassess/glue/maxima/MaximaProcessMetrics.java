@@ -0,0 +1,163 @@
+/* Copyright (c) 2012-2013, University of Edinburgh.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice, this
+ *   list of conditions and the following disclaimer in the documentation and/or
+ *   other materials provided with the distribution.
+ *
+ * * Neither the name of the University of Edinburgh nor the names of its
+ *   contributors may be used to endorse or promote products derived from this
+ *   software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ *
+ * This software is derived from (and contains code from) QTItools and MathAssessEngine.
+ * QTItools is (c) 2008, University of Southampton.
+ * MathAssessEngine is (c) 2010, University of Edinburgh.
+ */
+package uk.ac.ed.ph.qtiworks.mathassess.glue.maxima;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Records simple timing statistics for one or more {@link QtiMaximaProcess}es: how long they
+ * took to launch, how long each round-trip to Maxima took, and how often they were reset.
+ * <p>
+ * Metrics may optionally have a parent, to which everything recorded here will also be
+ * passed. (This is used to aggregate metrics over a pool of processes.)
+ * <p>
+ * This is thread-safe.
+ *
+ * @author David McKain
+ */
+public final class MaximaProcessMetrics {
+
+    private final MaximaProcessMetrics parent;
+
+    private long launchCount;
+    private long totalLaunchNanos;
+    private long callCount;
+    private long totalCallNanos;
+    private long maxCallNanos;
+    private long timeoutCount;
+    private long resetCount;
+    private long totalResetNanos;
+
+    public MaximaProcessMetrics() {
+        this(null);
+    }
+
+    public MaximaProcessMetrics(final MaximaProcessMetrics parent) {
+        this.parent = parent;
+    }
+
+    public MaximaProcessMetrics getParent() {
+        return parent;
+    }
+
+    //----------------------------------------------------
+
+    public void recordLaunch(final long durationNanos) {
+        synchronized (this) {
+            launchCount++;
+            totalLaunchNanos += durationNanos;
+        }
+        if (parent!=null) {
+            parent.recordLaunch(durationNanos);
+        }
+    }
+
+    public void recordCall(final long durationNanos, final boolean timedOut) {
+        synchronized (this) {
+            callCount++;
+            totalCallNanos += durationNanos;
+            maxCallNanos = Math.max(maxCallNanos, durationNanos);
+            if (timedOut) {
+                timeoutCount++;
+            }
+        }
+        if (parent!=null) {
+            parent.recordCall(durationNanos, timedOut);
+        }
+    }
+
+    public void recordReset(final long durationNanos) {
+        synchronized (this) {
+            resetCount++;
+            totalResetNanos += durationNanos;
+        }
+        if (parent!=null) {
+            parent.recordReset(durationNanos);
+        }
+    }
+
+    //----------------------------------------------------
+
+    public synchronized long getLaunchCount() {
+        return launchCount;
+    }
+
+    public synchronized double getMeanLaunchMillis() {
+        return meanMillis(totalLaunchNanos, launchCount);
+    }
+
+    public synchronized long getCallCount() {
+        return callCount;
+    }
+
+    public synchronized double getMeanCallMillis() {
+        return meanMillis(totalCallNanos, callCount);
+    }
+
+    public synchronized double getMaxCallMillis() {
+        return meanMillis(maxCallNanos, 1);
+    }
+
+    public synchronized long getTimeoutCount() {
+        return timeoutCount;
+    }
+
+    public synchronized long getResetCount() {
+        return resetCount;
+    }
+
+    public synchronized double getMeanResetMillis() {
+        return meanMillis(totalResetNanos, resetCount);
+    }
+
+    private static double meanMillis(final long totalNanos, final long count) {
+        return count > 0 ? (double) totalNanos / count / TimeUnit.MILLISECONDS.toNanos(1) : 0.0;
+    }
+
+    //----------------------------------------------------
+
+    @Override
+    public synchronized String toString() {
+        return getClass().getSimpleName() + "@" + Integer.toHexString(System.identityHashCode(this))
+                + "(launchCount=" + launchCount
+                + ",meanLaunchMillis=" + getMeanLaunchMillis()
+                + ",callCount=" + callCount
+                + ",meanCallMillis=" + getMeanCallMillis()
+                + ",maxCallMillis=" + getMaxCallMillis()
+                + ",timeoutCount=" + timeoutCount
+                + ",resetCount=" + resetCount
+                + ",meanResetMillis=" + getMeanResetMillis()
+                + ")";
+    }
+}
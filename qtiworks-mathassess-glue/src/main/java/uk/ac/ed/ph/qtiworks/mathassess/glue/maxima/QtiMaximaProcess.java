@@ -36,6 +36,7 @@ package uk.ac.ed.ph.qtiworks.mathassess.glue.maxima;
 import uk.ac.ed.ph.qtiworks.mathassess.glue.MathAssessBadCasCodeException;
 import uk.ac.ed.ph.qtiworks.mathassess.glue.MathAssessCasException;
 import uk.ac.ed.ph.qtiworks.mathassess.glue.MathsContentTooComplexException;
+import uk.ac.ed.ph.qtiworks.mathassess.glue.maxima.CasCallListener.CasCallType;
 import uk.ac.ed.ph.qtiworks.mathassess.glue.types.BooleanValueWrapper;
 import uk.ac.ed.ph.qtiworks.mathassess.glue.types.MathsContentOutputValueWrapper;
 import uk.ac.ed.ph.qtiworks.mathassess.glue.types.MathsContentValueWrapper;
@@ -57,6 +58,7 @@ import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Map.Entry;
 import java.util.regex.Pattern;
 
 import org.slf4j.Logger;
@@ -95,6 +97,18 @@ import org.w3c.dom.NodeList;
  *   <li>
  *     For examples, see the examples package or the test suite.
  *   </li>
+ *   <li>
+ *     A shared {@link CasResultCache} may be set to memoise the results of <tt>CasCompare</tt>,
+ *     <tt>CasCondition</tt> and <tt>CasProcess</tt> evaluations. To make this safe, this class
+ *     keeps track of how the state of the Maxima process has changed since it was last reset.
+ *     Obtaining the underlying {@link MaximaConnection} therefore disables memoisation
+ *     until the next reset, as the state might then be changed behind our back.
+ *   </li>
+ *   <li>
+ *     The time taken by each round-trip to Maxima is recorded in this process'
+ *     {@link MaximaProcessMetrics}. An optional {@link CasCallListener} may also be set to be
+ *     told how long the CAS work for each MathAssess operator took.
+ *   </li>
  * </ul>
  *
  * FIXME: Add constraints from the spec on which types of values can be passed to CasCompare/CasCondition
@@ -112,7 +126,7 @@ public final class QtiMaximaProcess {
     public static final String MAXIMA_SYNTEQUAL_CODE = "is(is($1=$2)=true)";
 
     /** Underlying Raw Maxima Session */
-    private final MaximaInteractiveProcess maximaInteractiveProcess;
+    private final MaximaConnection maximaConnection;
 
     /** Helper to up-convert Maxima MathML output */
     private final MaximaMathmlUpConverter maximaMathmlUpConverter;
@@ -120,14 +134,76 @@ public final class QtiMaximaProcess {
     /** Maxima Data Binding helper */
     private final MaximaDataBinder maximaDataBinder;
 
+    /** Optional memo cache for CAS results, shared between processes */
+    private CasResultCache casResultCache;
+
+    /**
+     * Fingerprint of the changes made to the state of the Maxima process since it was last reset,
+     * used when memoising CAS results. This will be null if the state is unknown.
+     */
+    private String stateFingerprint;
+
+    /** Timing statistics for this process */
+    private MaximaProcessMetrics metrics;
+
+    /** Optional listener told about the CAS work done by this process */
+    private CasCallListener casCallListener;
+
     public QtiMaximaProcess(final MaximaInteractiveProcess maximaInteractiveProcess, final StylesheetCache stylesheetCache) {
-        this.maximaInteractiveProcess = maximaInteractiveProcess;
+        this(new JacomaxMaximaConnection(maximaInteractiveProcess), stylesheetCache);
+    }
+
+    public QtiMaximaProcess(final MaximaConnection maximaConnection, final StylesheetCache stylesheetCache) {
+        Assert.notNull(maximaConnection, "maximaConnection");
+        this.maximaConnection = maximaConnection;
         this.maximaMathmlUpConverter = new MaximaMathmlUpConverter(stylesheetCache);
         this.maximaDataBinder = new MaximaDataBinder();
+        this.casResultCache = null;
+        this.stateFingerprint = null;
+        this.metrics = new MaximaProcessMetrics();
+        this.casCallListener = null;
+    }
+
+    public MaximaConnection getMaximaConnection() {
+        /* (Caller might change the state, so we can no longer memoise anything) */
+        stateFingerprint = null;
+        return maximaConnection;
     }
 
+    /**
+     * Returns the underlying {@link MaximaInteractiveProcess}, or null if this process
+     * is not using a {@link JacomaxMaximaConnection}.
+     */
     public MaximaInteractiveProcess getMaximaInteractiveProcess() {
-        return maximaInteractiveProcess;
+        final MaximaConnection connection = getMaximaConnection();
+        return connection instanceof JacomaxMaximaConnection
+                ? ((JacomaxMaximaConnection) connection).getMaximaInteractiveProcess()
+                : null;
+    }
+
+    public MaximaProcessMetrics getMetrics() {
+        return metrics;
+    }
+
+    public void setMetrics(final MaximaProcessMetrics metrics) {
+        Assert.notNull(metrics, "metrics");
+        this.metrics = metrics;
+    }
+
+    public CasResultCache getCasResultCache() {
+        return casResultCache;
+    }
+
+    public void setCasResultCache(final CasResultCache casResultCache) {
+        this.casResultCache = casResultCache;
+    }
+
+    public CasCallListener getCasCallListener() {
+        return casCallListener;
+    }
+
+    public void setCasCallListener(final CasCallListener casCallListener) {
+        this.casCallListener = casCallListener;
     }
 
     //------------------------------------------------
@@ -137,7 +213,8 @@ public final class QtiMaximaProcess {
         logger.debug("Initialising new QtiMaximaProcess");
         try {
             /* Load the MathML module */
-            maximaInteractiveProcess.executeCallDiscardOutput("load(mathml)$");
+            callMaximaDiscardOutput("load(mathml)$");
+            stateFingerprint = CasResultCache.INITIAL_STATE_FINGERPRINT;
         }
         catch (final Exception e) {
             throw new MathAssessCasException("Failed to start and fully initialise Maxima process for use with MathAssess QTI", e);
@@ -145,15 +222,19 @@ public final class QtiMaximaProcess {
     }
 
     public boolean isTerminated() {
-        return maximaInteractiveProcess.isTerminated();
+        return maximaConnection.isTerminated();
     }
 
     public void terminate() {
-        maximaInteractiveProcess.terminate();
+        maximaConnection.terminate();
     }
 
     public void reset() throws MaximaTimeoutException {
-        maximaInteractiveProcess.softReset();
+        stateFingerprint = null;
+        final long startTime = System.nanoTime();
+        maximaConnection.softReset();
+        metrics.recordReset(System.nanoTime() - startTime);
+        stateFingerprint = CasResultCache.INITIAL_STATE_FINGERPRINT;
     }
 
     /**
@@ -164,7 +245,7 @@ public final class QtiMaximaProcess {
     public void setRandomState() {
         logger.trace("Setting new random state based on System clock time");
         try {
-            maximaInteractiveProcess.executeCallDiscardOutput("set_random_state(make_random_state(" + System.currentTimeMillis() + "))$");
+            callMaximaDiscardOutput("set_random_state(make_random_state(" + System.currentTimeMillis() + "))$");
         }
         catch (final Exception e) {
             throw new MathAssessCasException("Failed to set a new random state", e);
@@ -189,33 +270,68 @@ public final class QtiMaximaProcess {
      */
     public void passQtiVariableToMaxima(final String variableIdentifier, final ValueWrapper valueWrapper) {
         logger.debug("passQTIVariableToMaxima: var={}, value={}", variableIdentifier, valueWrapper);
+        final String maximaInput = createPassVariableInput(variableIdentifier, valueWrapper);
+        try {
+            executeStateChange(maximaInput);
+        }
+        catch (final MaximaTimeoutException e) {
+            /* This shouldn't happen here! */
+            throw new MathAssessCasException("Unexpected timeout when passing Maxima variable "
+                    + variableIdentifier + " using input " + maximaInput, e);
+        }
+    }
+
+    /**
+     * Assigns each of the given {@link ValueWrapper}s to the corresponding QTI variables within
+     * Maxima, using a single round-trip to Maxima. This is equivalent to (but faster than)
+     * calling {@link #passQtiVariableToMaxima(String, ValueWrapper)} for each variable in turn.
+     *
+     * @param valueWrapperMap Map of QTI variable identifier to {@link ValueWrapper}, which
+     *   must not be null. Variables are passed in the iteration order of this Map.
+     *
+     * @throws IllegalArgumentException if any of the given values is null or
+     *   is a {@link MathsContentValueWrapper} with a missing maximaInput field.
+     * @throws MaximaProcessTerminatedException
+     */
+    public void passQtiVariablesToMaxima(final Map<String, ? extends ValueWrapper> valueWrapperMap) {
+        Assert.notNull(valueWrapperMap, "valueWrapperMap");
+        logger.debug("passQtiVariablesToMaxima: values={}", valueWrapperMap);
+        if (valueWrapperMap.isEmpty()) {
+            return;
+        }
+        final StringBuilder maximaInputBuilder = new StringBuilder();
+        for (final Entry<String, ? extends ValueWrapper> entry : valueWrapperMap.entrySet()) {
+            if (maximaInputBuilder.length() > 0) {
+                maximaInputBuilder.append(' ');
+            }
+            maximaInputBuilder.append(createPassVariableInput(entry.getKey(), entry.getValue()));
+        }
+        final String maximaInput = maximaInputBuilder.toString();
+        try {
+            executeStateChange(maximaInput);
+        }
+        catch (final MaximaTimeoutException e) {
+            /* This shouldn't happen here! */
+            throw new MathAssessCasException("Unexpected timeout when passing Maxima variables "
+                    + valueWrapperMap.keySet() + " using input " + maximaInput, e);
+        }
+    }
+
+    /**
+     * Creates the Maxima input required to assign the given value to the given QTI variable,
+     * clearing it if the value is null.
+     */
+    private String createPassVariableInput(final String variableIdentifier, final ValueWrapper valueWrapper) {
         checkVariableIdentifier(variableIdentifier);
         Assert.notNull(valueWrapper, "valueWrapper");
         if (valueWrapper==null || valueWrapper.isNull()) {
             /* Nullify variable using kill() */
-            try {
-                maximaInteractiveProcess.executeCallDiscardOutput("kill(" + variableIdentifier  + ")$");
-            }
-            catch (final MaximaTimeoutException e) {
-                /* This shouldn't happen here! */
-                throw new MathAssessCasException("Unexpected timeout while killing Maxima variable "
-                        + variableIdentifier, e);
-            }
-        }
-        else {
-            /* Convert the QTI value to an appropriate Maxima expression */
-            final String maximaValue = maximaDataBinder.toMaximaExpression(valueWrapper);
-
-            /* Then do the appropriate Maxima call, with no simplification */
-            try {
-                maximaInteractiveProcess.executeCallDiscardOutput("simp:false$ " + variableIdentifier + ": " + maximaValue + "$");
-            }
-            catch (final MaximaTimeoutException e) {
-                /* This shouldn't happen here! */
-                throw new MathAssessCasException("Unexpected timeout when setting Maxima variable "
-                        + variableIdentifier + " to value " + maximaValue, e);
-            }
+            return "kill(" + variableIdentifier  + ")$";
         }
+        /* Convert the QTI value to an appropriate Maxima expression, doing the assignment
+         * with no simplification */
+        final String maximaValue = maximaDataBinder.toMaximaExpression(valueWrapper);
+        return "simp:false$ " + variableIdentifier + ": " + maximaValue + "$";
     }
 
     //------------------------------------------------
@@ -351,7 +467,7 @@ public final class QtiMaximaProcess {
 
         /* Now do call, with simplification set as required */
         final String maximaInput = "simp:" + simplify + "$ string(" + withoutTerminator + ");";
-        final String maximaOutput = maximaInteractiveProcess.executeCall(maximaInput);
+        final String maximaOutput = executeCall(withoutTerminator, maximaInput);
 
         /* Decompose the output */
         final String result = MaximaOutputUtilities.parseSingleLinearOutputResult(maximaOutput);
@@ -408,6 +524,12 @@ public final class QtiMaximaProcess {
         final MathsContentOutputValueWrapper result = doExecuteMathOutput(maximaExpression, simplify);
 
         /* Fail fast if any up-conversion failures were found */
+        return ensureUpConverted(maximaExpression, result);
+    }
+
+    private MathsContentOutputValueWrapper ensureUpConverted(final String maximaExpression,
+            final MathsContentOutputValueWrapper result)
+            throws MathsContentTooComplexException {
         final List<UpConversionFailure> upConversionFailures = result.getUpConversionFailures();
         if (upConversionFailures!=null && !upConversionFailures.isEmpty()) {
             logger.debug("MathsContent output from Maxima expression " + maximaExpression
@@ -421,6 +543,14 @@ public final class QtiMaximaProcess {
 
     private MathsContentOutputValueWrapper doExecuteMathOutput(final String maximaExpression, final boolean simplify)
             throws MaximaTimeoutException {
+        final Document upconvertedDocument = doExecuteUpconvertedMathOutput(maximaExpression, simplify);
+
+        /* Create appropriate wrapper */
+        return WrapperUtilities.createFromUpconvertedMaximaOutput(upconvertedDocument);
+    }
+
+    private Document doExecuteUpconvertedMathOutput(final String maximaExpression, final boolean simplify)
+            throws MaximaTimeoutException {
         /* Chop off any trailing terminator */
         String resultingExpression = stripTrailingTerminator(maximaExpression);
 
@@ -430,13 +560,69 @@ public final class QtiMaximaProcess {
         /* Then execute and up-convert the results.
          * (Note that mathml() outputs its result to STDOUT)
          */
-        final String rawMaximaMathMLOutput = maximaInteractiveProcess.executeCall(resultingExpression).trim();
+        final String rawMaximaMathMLOutput = executeCall(maximaExpression, resultingExpression).trim();
 
-        /* Up-convert the raw MathML and create appropriate wrapper */
-        final Document upconvertedDocument = maximaMathmlUpConverter.upconvertRawMaximaMathML(rawMaximaMathMLOutput);
+        /* Up-convert the raw MathML */
+        return maximaMathmlUpConverter.upconvertRawMaximaMathML(rawMaximaMathMLOutput);
+    }
 
-        /* Create appropriate wrapper */
-        return WrapperUtilities.createFromUpconvertedMaximaOutput(upconvertedDocument);
+    /**
+     * Executes the given Maxima input, which was built from the given expression, keeping track
+     * of whether this might have changed the state of the Maxima process.
+     */
+    private String executeCall(final String maximaExpression, final String maximaInput)
+            throws MaximaTimeoutException {
+        final String stateFingerprintAfterCall = CasResultCache.isMemoisable(maximaExpression) ? stateFingerprint : null;
+        stateFingerprint = null;
+        final String result = callMaxima(maximaInput);
+        stateFingerprint = stateFingerprintAfterCall;
+        return result;
+    }
+
+    /**
+     * Executes the given Maxima input, which is expected to change the state of the Maxima
+     * process, discarding its output.
+     */
+    private void executeStateChange(final String maximaInput)
+            throws MaximaTimeoutException {
+        final String newStateFingerprint = CasResultCache.computeStateFingerprint(stateFingerprint, maximaInput);
+        stateFingerprint = null;
+        callMaximaDiscardOutput(maximaInput);
+        stateFingerprint = newStateFingerprint;
+    }
+
+    /** Performs a (timed) round-trip to Maxima */
+    private String callMaxima(final String maximaInput)
+            throws MaximaTimeoutException {
+        final long startTime = System.nanoTime();
+        boolean timedOut = false;
+        try {
+            return maximaConnection.executeCall(maximaInput);
+        }
+        catch (final MaximaTimeoutException e) {
+            timedOut = true;
+            throw e;
+        }
+        finally {
+            metrics.recordCall(System.nanoTime() - startTime, timedOut);
+        }
+    }
+
+    /** Performs a (timed) round-trip to Maxima, discarding its output */
+    private void callMaximaDiscardOutput(final String maximaInput)
+            throws MaximaTimeoutException {
+        final long startTime = System.nanoTime();
+        boolean timedOut = false;
+        try {
+            maximaConnection.executeCallDiscardOutput(maximaInput);
+        }
+        catch (final MaximaTimeoutException e) {
+            timedOut = true;
+            throw e;
+        }
+        finally {
+            metrics.recordCall(System.nanoTime() - startTime, timedOut);
+        }
     }
 
     //------------------------------------------------
@@ -457,7 +643,13 @@ public final class QtiMaximaProcess {
         Assert.notNull(maximaCode, "maximaCode");
         logger.debug("executeScriptRule: code={}, simp={}", maximaCode, simplify);
         ConstraintUtilities.ensureNotNull(maximaCode, "maximaCode");
-        maximaInteractiveProcess.executeCallDiscardOutput("simp:" + simplify + "$ " + maximaCode);
+        final long startTime = System.nanoTime();
+        try {
+            executeStateChange("simp:" + simplify + "$ " + maximaCode);
+        }
+        finally {
+            fireCasCallCompleted(CasCallType.SCRIPT_RULE, startTime);
+        }
     }
 
     /**
@@ -490,16 +682,22 @@ public final class QtiMaximaProcess {
         }
         Assert.notNull(maximaCode, "maximaCode");
         Assert.notNull(resultClass, "resultClass");
+        final long startTime = System.nanoTime();
         V result;
-
-        /* What we do here depends on whether we are returning a MathsContent variable or not. */
-        if (MathsContentValueWrapper.class.isAssignableFrom(resultClass)) {
-            /* Get result as MathML */
-            result = (V) executeMathOutput(maximaCode, simplify);
+        try {
+            /* What we do here depends on whether we are returning a MathsContent variable or not. */
+            if (MathsContentValueWrapper.class.isAssignableFrom(resultClass)) {
+                /* Get result as MathML */
+                result = (V) executeMemoisedMathOutput(maximaCode, simplify);
+            }
+            else {
+                /* Get result using string() */
+                final String stringOutput = executeMemoisedStringOutput(maximaCode, maximaCode, simplify);
+                result = ensureParseStringOutput(maximaCode, stringOutput, resultClass);
+            }
         }
-        else {
-            /* Get result using string() */
-            result = executeStringOutput(maximaCode, simplify, resultClass);
+        finally {
+            fireCasCallCompleted(CasCallType.CAS_PROCESS, startTime);
         }
         return result;
     }
@@ -531,7 +729,13 @@ public final class QtiMaximaProcess {
     public boolean executeCasCompare(final String comparisonCode, final boolean simplify,
             final ValueOrVariableWrapper arg1, final ValueOrVariableWrapper arg2)
             throws MaximaTimeoutException {
-        return executeCasCondition(comparisonCode, simplify, arg1, arg2);
+        final long startTime = System.nanoTime();
+        try {
+            return doExecuteCasCondition(comparisonCode, simplify, arg1, arg2);
+        }
+        finally {
+            fireCasCallCompleted(CasCallType.CAS_COMPARE, startTime);
+        }
     }
 
     /**
@@ -556,6 +760,18 @@ public final class QtiMaximaProcess {
     public boolean executeCasCondition(final String comparisonCode, final boolean simplify,
             final ValueOrVariableWrapper... arguments)
             throws MaximaTimeoutException {
+        final long startTime = System.nanoTime();
+        try {
+            return doExecuteCasCondition(comparisonCode, simplify, arguments);
+        }
+        finally {
+            fireCasCallCompleted(CasCallType.CAS_CONDITION, startTime);
+        }
+    }
+
+    private boolean doExecuteCasCondition(final String comparisonCode, final boolean simplify,
+            final ValueOrVariableWrapper... arguments)
+            throws MaximaTimeoutException {
         Assert.notNull(comparisonCode, "comparisonCode");
 
         /* Get maxima forms of the input values and perform substitutions */
@@ -583,7 +799,8 @@ public final class QtiMaximaProcess {
          */
         BooleanValueWrapper compareResult;
         try {
-            compareResult = executeStringOutput(maximaInput, simplify, BooleanValueWrapper.class);
+            final String stringOutput = executeMemoisedStringOutput(comparisonCode, maximaInput, simplify);
+            compareResult = ensureParseStringOutput(maximaInput, stringOutput, BooleanValueWrapper.class);
         }
         catch (final QtiMaximaTypeConversionException e) {
             throw new MathAssessBadCasCodeException("Maxima call '" + maximaInput + "' did not return a boolean", maximaInput,
@@ -599,6 +816,69 @@ public final class QtiMaximaProcess {
         return result;
     }
 
+    private void fireCasCallCompleted(final CasCallType casCallType, final long startTime) {
+        if (casCallListener!=null) {
+            casCallListener.casCallCompleted(casCallType, System.nanoTime() - startTime);
+        }
+    }
+
+    //------------------------------------------------
+    // Memoisation of CAS results
+
+    /**
+     * Like {@link #executeStringOutput(String, boolean)}, but uses the {@link CasResultCache}
+     * (if set) to memoise the result.
+     *
+     * @param maximaCode code that was used to build the maximaInput, used to decide whether
+     *   the result can be memoised
+     * @param maximaInput full Maxima expression to be evaluated
+     */
+    private String executeMemoisedStringOutput(final String maximaCode, final String maximaInput, final boolean simplify)
+            throws MaximaTimeoutException {
+        final String cacheKey = createCacheKey("string", maximaCode, maximaInput, simplify);
+        if (cacheKey!=null) {
+            final String cached = casResultCache.getStringOutput(cacheKey);
+            if (cached!=null) {
+                logger.trace("Memoised string output for {}", maximaInput);
+                return cached;
+            }
+        }
+        final String result = executeStringOutput(maximaInput, simplify);
+        if (cacheKey!=null) {
+            casResultCache.putStringOutput(cacheKey, result);
+        }
+        return result;
+    }
+
+    /**
+     * Like {@link #executeMathOutput(String, boolean)}, but uses the {@link CasResultCache}
+     * (if set) to memoise the up-converted MathML.
+     */
+    private MathsContentOutputValueWrapper executeMemoisedMathOutput(final String maximaExpression, final boolean simplify)
+            throws MaximaTimeoutException, MathsContentTooComplexException {
+        final String cacheKey = createCacheKey("math", maximaExpression, maximaExpression, simplify);
+        if (cacheKey==null) {
+            return executeMathOutput(maximaExpression, simplify);
+        }
+        Document upconvertedDocument = casResultCache.getUpconvertedDocument(cacheKey);
+        if (upconvertedDocument!=null) {
+            logger.trace("Memoised MathML output for {}", maximaExpression);
+        }
+        else {
+            upconvertedDocument = doExecuteUpconvertedMathOutput(maximaExpression, simplify);
+            casResultCache.putUpconvertedDocument(cacheKey, upconvertedDocument);
+        }
+        final MathsContentOutputValueWrapper result = WrapperUtilities.createFromUpconvertedMaximaOutput(upconvertedDocument);
+        return ensureUpConverted(maximaExpression, result);
+    }
+
+    private String createCacheKey(final String resultKind, final String maximaCode, final String maximaInput, final boolean simplify) {
+        if (casResultCache==null) {
+            return null;
+        }
+        return casResultCache.createKey(resultKind, stateFingerprint, simplify, maximaCode, maximaInput);
+    }
+
     //------------------------------------------------
     // Helpers
 
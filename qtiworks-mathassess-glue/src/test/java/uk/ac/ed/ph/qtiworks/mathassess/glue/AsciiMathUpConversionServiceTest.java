@@ -0,0 +1,135 @@
+/* Copyright (c) 2012-2013, University of Edinburgh.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice, this
+ *   list of conditions and the following disclaimer in the documentation and/or
+ *   other materials provided with the distribution.
+ *
+ * * Neither the name of the University of Edinburgh nor the names of its
+ *   contributors may be used to endorse or promote products derived from this
+ *   software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ *
+ * This software is derived from (and contains code from) QTItools and MathAssessEngine.
+ * QTItools is (c) 2008, University of Southampton.
+ * MathAssessEngine is (c) 2010, University of Edinburgh.
+ */
+package uk.ac.ed.ph.qtiworks.mathassess.glue;
+
+import uk.ac.ed.ph.qtiworks.mathassess.glue.types.MathsContentInputValueWrapper;
+
+import uk.ac.ed.ph.snuggletex.utilities.SimpleStylesheetCache;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests for {@link AsciiMathUpConversionService}. (These don't need Maxima to be installed.)
+ *
+ * @author David McKain
+ */
+public class AsciiMathUpConversionServiceTest {
+
+    private static final String[] INPUTS = { "2x", "sin x", "x^2+1", "(a+b)/c" };
+
+    private AsciiMathUpConversionService service;
+
+    @Before
+    public void setup() {
+        service = new AsciiMathUpConversionService(new SimpleStylesheetCache());
+    }
+
+    @Test
+    public void testMathsContentCached() {
+        final MathsContentInputValueWrapper result1 = service.createMathsContentFromAsciiMath("2x");
+        final MathsContentInputValueWrapper result2 = service.createMathsContentFromAsciiMath("  2x ");
+        Assert.assertEquals("2x", result1.getAsciiMathInput());
+        Assert.assertSame(result1, result2);
+        Assert.assertNotSame(result1, service.createMathsContentFromAsciiMath("2y"));
+    }
+
+    @Test
+    public void testMathsContentMatchesHelper() {
+        final AsciiMathHelper helper = new AsciiMathHelper();
+        for (final String input : INPUTS) {
+            final MathsContentInputValueWrapper expected = helper.createMathsContentFromAsciiMath(input);
+            final MathsContentInputValueWrapper actual = service.createMathsContentFromAsciiMath(input);
+            Assert.assertEquals(expected.getMaximaInput(), actual.getMaximaInput());
+            Assert.assertEquals(expected.getPMathML(), actual.getPMathML());
+            Assert.assertEquals(expected.getCMathML(), actual.getCMathML());
+        }
+    }
+
+    @Test
+    public void testUpConversionCached() {
+        final Map<String, String> result1 = service.upConvertAsciiMathInput("x^2");
+        final Map<String, String> result2 = service.upConvertAsciiMathInput("x^2 ");
+        Assert.assertSame(result1, result2);
+        Assert.assertTrue(result1.containsKey("maxima"));
+    }
+
+    @Test(expected=UnsupportedOperationException.class)
+    public void testUpConversionUnmodifiable() {
+        service.upConvertAsciiMathInput("x").clear();
+    }
+
+    @Test
+    public void testCacheDisabled() {
+        final AsciiMathUpConversionService uncachedService = new AsciiMathUpConversionService(new SimpleStylesheetCache(), 0);
+        final MathsContentInputValueWrapper result1 = uncachedService.createMathsContentFromAsciiMath("2x");
+        final MathsContentInputValueWrapper result2 = uncachedService.createMathsContentFromAsciiMath("2x");
+        Assert.assertNotSame(result1, result2);
+        Assert.assertEquals(result1.getMaximaInput(), result2.getMaximaInput());
+    }
+
+    @Test
+    public void testConcurrentUse() throws Exception {
+        final ExecutorService executorService = Executors.newFixedThreadPool(4);
+        try {
+            final List<Future<String>> futures = new ArrayList<Future<String>>();
+            for (int i=0; i<40; i++) {
+                final String input = INPUTS[i % INPUTS.length];
+                futures.add(executorService.submit(new Callable<String>() {
+                    @Override
+                    public String call() {
+                        return service.createMathsContentFromAsciiMath(input).getMaximaInput();
+                    }
+                }));
+            }
+            final AsciiMathHelper helper = new AsciiMathHelper();
+            for (int i=0; i<futures.size(); i++) {
+                final String expected = helper.createMathsContentFromAsciiMath(INPUTS[i % INPUTS.length]).getMaximaInput();
+                Assert.assertEquals(expected, futures.get(i).get());
+            }
+        }
+        finally {
+            executorService.shutdown();
+        }
+    }
+}
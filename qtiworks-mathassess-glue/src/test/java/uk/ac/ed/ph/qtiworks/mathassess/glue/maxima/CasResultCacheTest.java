@@ -0,0 +1,274 @@
+/* Copyright (c) 2012-2013, University of Edinburgh.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice, this
+ *   list of conditions and the following disclaimer in the documentation and/or
+ *   other materials provided with the distribution.
+ *
+ * * Neither the name of the University of Edinburgh nor the names of its
+ *   contributors may be used to endorse or promote products derived from this
+ *   software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ *
+ * This software is derived from (and contains code from) QTItools and MathAssessEngine.
+ * QTItools is (c) 2008, University of Southampton.
+ * MathAssessEngine is (c) 2010, University of Edinburgh.
+ */
+package uk.ac.ed.ph.qtiworks.mathassess.glue.maxima;
+
+import uk.ac.ed.ph.qtiworks.mathassess.glue.types.IntegerValueWrapper;
+
+import uk.ac.ed.ph.snuggletex.utilities.SimpleStylesheetCache;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.w3c.dom.Document;
+
+/**
+ * Tests for {@link CasResultCache}, including its use by {@link QtiMaximaProcess}.
+ * (These don't need Maxima to be installed.)
+ *
+ * @author David McKain
+ */
+public class CasResultCacheTest {
+
+    private static final String STATE = CasResultCache.INITIAL_STATE_FINGERPRINT;
+
+    @Test
+    public void testHitAndMiss() {
+        final CasResultCache cache = new CasResultCache(10);
+        final String key = cache.createKey("string", STATE, false, "diff(x^2,x)", "diff(x^2,x)");
+        Assert.assertNotNull(key);
+        Assert.assertNull(cache.getStringOutput(key));
+        cache.putStringOutput(key, "2*x");
+        Assert.assertEquals("2*x", cache.getStringOutput(key));
+        Assert.assertEquals(1, cache.getHitCount());
+        Assert.assertEquals(1, cache.getMissCount());
+        Assert.assertEquals(0.5, cache.getHitRate(), 1.0E-9);
+    }
+
+    @Test
+    public void testKeyDependsOnInputs() {
+        final CasResultCache cache = new CasResultCache(10);
+        final String key = cache.createKey("string", STATE, false, "x+x", "x+x");
+        Assert.assertFalse(key.equals(cache.createKey("string", STATE, true, "x+x", "x+x")));
+        Assert.assertFalse(key.equals(cache.createKey("math", STATE, false, "x+x", "x+x")));
+        Assert.assertFalse(key.equals(cache.createKey("string", STATE, false, "x+x", "x+x+1")));
+        Assert.assertFalse(key.equals(cache.createKey("string",
+                CasResultCache.computeStateFingerprint(STATE, "a: 1$"), false, "x+x", "x+x")));
+    }
+
+    @Test
+    public void testLruBound() {
+        final CasResultCache cache = new CasResultCache(2);
+        final String key1 = cache.createKey("string", STATE, false, "1", "1");
+        final String key2 = cache.createKey("string", STATE, false, "2", "2");
+        final String key3 = cache.createKey("string", STATE, false, "3", "3");
+        cache.putStringOutput(key1, "1");
+        cache.putStringOutput(key2, "2");
+        cache.getStringOutput(key1); /* (Makes key2 the least recently used) */
+        cache.putStringOutput(key3, "3");
+        Assert.assertEquals(2, cache.size());
+        Assert.assertEquals("1", cache.getStringOutput(key1));
+        Assert.assertNull(cache.getStringOutput(key2));
+        Assert.assertEquals("3", cache.getStringOutput(key3));
+    }
+
+    @Test
+    public void testDisabled() {
+        final CasResultCache cache = new CasResultCache(0);
+        Assert.assertFalse(cache.isEnabled());
+        Assert.assertNull(cache.createKey("string", STATE, false, "1", "1"));
+    }
+
+    @Test
+    public void testNotMemoisable() {
+        final CasResultCache cache = new CasResultCache(10);
+        Assert.assertNull(cache.createKey("string", STATE, false, "random(10)", "random(10)"));
+        Assert.assertNull(cache.createKey("string", STATE, false, "a: 2", "a: 2"));
+        Assert.assertNull(cache.createKey("string", STATE, false, "kill(all)", "kill(all)"));
+        Assert.assertNull(cache.createKey("string", STATE, false, "elapsed_real_time()", "elapsed_real_time()"));
+        Assert.assertNull(cache.createKey("string", null, false, "1+1", "1+1"));
+        Assert.assertEquals(5, cache.getSkipCount());
+        Assert.assertEquals(0, cache.getMissCount());
+    }
+
+    @Test
+    public void testStateFingerprint() {
+        final String state1 = CasResultCache.computeStateFingerprint(STATE, "a: 1$");
+        Assert.assertNotNull(state1);
+        Assert.assertEquals(state1, CasResultCache.computeStateFingerprint(STATE, "a: 1$"));
+        Assert.assertFalse(state1.equals(CasResultCache.computeStateFingerprint(STATE, "a: 2$")));
+        Assert.assertFalse(state1.equals(CasResultCache.computeStateFingerprint(state1, "a: 1$")));
+        Assert.assertNull(CasResultCache.computeStateFingerprint(state1, "a: random(10)$"));
+        Assert.assertNull(CasResultCache.computeStateFingerprint(null, "a: 1$"));
+    }
+
+    @Test
+    public void testDocumentsAreCopied() throws Exception {
+        final CasResultCache cache = new CasResultCache(10);
+        final String key = cache.createKey("math", STATE, false, "x", "x");
+        final Document document = DocumentBuilderFactory.newInstance().newDocumentBuilder().newDocument();
+        document.appendChild(document.createElement("math"));
+        cache.putUpconvertedDocument(key, document);
+        document.getDocumentElement().setAttribute("changed", "true");
+
+        final Document result1 = cache.getUpconvertedDocument(key);
+        Assert.assertEquals("math", result1.getDocumentElement().getTagName());
+        Assert.assertFalse(result1.getDocumentElement().hasAttribute("changed"));
+        result1.getDocumentElement().setAttribute("changed", "true");
+        Assert.assertFalse(cache.getUpconvertedDocument(key).getDocumentElement().hasAttribute("changed"));
+    }
+
+    //---------------------------------------------------------
+    // Memoisation within QtiMaximaProcess
+
+    @Test
+    public void testRepeatedCasConditionMemoised() throws Exception {
+        final FakeMaximaConnection connection = new FakeMaximaConnection("true");
+        final QtiMaximaProcess process = createProcess(connection, new CasResultCache(10));
+
+        Assert.assertTrue(process.executeCasCondition("is($1 > 1)", false, new IntegerValueWrapper(2)));
+        Assert.assertTrue(process.executeCasCondition("is($1 > 1)", false, new IntegerValueWrapper(2)));
+        Assert.assertTrue(process.executeCasCompare(QtiMaximaProcess.MAXIMA_EQUAL_CODE, false,
+                new IntegerValueWrapper(1), new IntegerValueWrapper(1)));
+        Assert.assertTrue(process.executeCasCompare(QtiMaximaProcess.MAXIMA_EQUAL_CODE, false,
+                new IntegerValueWrapper(1), new IntegerValueWrapper(1)));
+        Assert.assertEquals(2, connection.calls.size());
+        Assert.assertEquals(2, process.getCasResultCache().getHitCount());
+    }
+
+    @Test
+    public void testDistinctCasConditionsNotMemoised() throws Exception {
+        final FakeMaximaConnection connection = new FakeMaximaConnection("true");
+        final QtiMaximaProcess process = createProcess(connection, new CasResultCache(10));
+
+        process.executeCasCondition("is($1 > 1)", false, new IntegerValueWrapper(2));
+        process.executeCasCondition("is($1 > 1)", false, new IntegerValueWrapper(3));
+        process.executeCasCondition("is($1 > 1)", true, new IntegerValueWrapper(3));
+        process.executeCasCondition("is($1 >= 1)", true, new IntegerValueWrapper(3));
+        Assert.assertEquals(4, connection.calls.size());
+        Assert.assertEquals(0, process.getCasResultCache().getHitCount());
+    }
+
+    @Test
+    public void testRepeatedCasProcessMemoised() throws Exception {
+        final FakeMaximaConnection connection = new FakeMaximaConnection("4");
+        final QtiMaximaProcess process = createProcess(connection, new CasResultCache(10));
+
+        final IntegerValueWrapper result1 = process.executeCasProcess("2+2", true, IntegerValueWrapper.class);
+        final IntegerValueWrapper result2 = process.executeCasProcess("2+2", true, IntegerValueWrapper.class);
+        Assert.assertEquals(Integer.valueOf(4), result1.getValue());
+        Assert.assertEquals(Integer.valueOf(4), result2.getValue());
+        Assert.assertEquals(1, connection.calls.size());
+
+        process.executeCasProcess("2+2", false, IntegerValueWrapper.class);
+        process.executeCasProcess("1+3", true, IntegerValueWrapper.class);
+        Assert.assertEquals(3, connection.calls.size());
+    }
+
+    @Test
+    public void testStateChangeInvalidatesMemo() throws Exception {
+        final FakeMaximaConnection connection = new FakeMaximaConnection("true");
+        final QtiMaximaProcess process = createProcess(connection, new CasResultCache(10));
+
+        process.executeCasCondition("is(a > 1)", false);
+        process.executeScriptRule("a: 0", false);
+        process.executeCasCondition("is(a > 1)", false);
+        Assert.assertEquals(2, connection.calls.size());
+
+        /* Resetting gets us back to the initial state, so the first result can be reused */
+        process.reset();
+        process.executeCasCondition("is(a > 1)", false);
+        Assert.assertEquals(2, connection.calls.size());
+    }
+
+    @Test
+    public void testNonDeterministicCallsNotMemoised() throws Exception {
+        final FakeMaximaConnection connection = new FakeMaximaConnection("3");
+        final QtiMaximaProcess process = createProcess(connection, new CasResultCache(10));
+
+        process.executeCasProcess("random(10)", true, IntegerValueWrapper.class);
+        process.executeCasProcess("random(10)", true, IntegerValueWrapper.class);
+        Assert.assertEquals(2, connection.calls.size());
+    }
+
+    @Test
+    public void testNoCache() throws Exception {
+        final FakeMaximaConnection connection = new FakeMaximaConnection("true");
+        final QtiMaximaProcess process = createProcess(connection, null);
+
+        process.executeCasCondition("is($1 > 1)", false, new IntegerValueWrapper(2));
+        process.executeCasCondition("is($1 > 1)", false, new IntegerValueWrapper(2));
+        Assert.assertEquals(2, connection.calls.size());
+    }
+
+    private static QtiMaximaProcess createProcess(final FakeMaximaConnection connection, final CasResultCache casResultCache) {
+        final QtiMaximaProcess process = new QtiMaximaProcess(connection, new SimpleStylesheetCache());
+        process.setCasResultCache(casResultCache);
+        process.init();
+        return process;
+    }
+
+    /**
+     * Fake {@link MaximaConnection} giving the same <tt>string()</tt> output to every call,
+     * recording the calls made to it.
+     */
+    private static final class FakeMaximaConnection implements MaximaConnection {
+
+        final String output;
+        final List<String> calls = new ArrayList<String>();
+
+        FakeMaximaConnection(final String output) {
+            this.output = output;
+        }
+
+        @Override
+        public String executeCall(final String maximaInput) {
+            calls.add(maximaInput);
+            return "(%o" + calls.size() + ") " + output;
+        }
+
+        @Override
+        public void executeCallDiscardOutput(final String maximaInput) {
+            /* (State changes are not counted as calls) */
+        }
+
+        @Override
+        public void softReset() {
+            /* (Nothing to do) */
+        }
+
+        @Override
+        public boolean isTerminated() {
+            return false;
+        }
+
+        @Override
+        public void terminate() {
+            /* (Nothing to do) */
+        }
+    }
+}
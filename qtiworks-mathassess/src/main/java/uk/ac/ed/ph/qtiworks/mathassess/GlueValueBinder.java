@@ -154,7 +154,7 @@ public final class GlueValueBinder {
     }
 
     private static IntegerValue casToJqti(final IntegerValueWrapper value) {
-        return new IntegerValue(value.getValue().intValue());
+        return IntegerValue.valueOf(value.getValue().intValue());
     }
 
     private static FloatValue casToJqti(final FloatValueWrapper value) {
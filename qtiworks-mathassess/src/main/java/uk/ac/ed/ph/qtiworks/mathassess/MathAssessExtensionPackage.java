@@ -37,7 +37,11 @@ import static uk.ac.ed.ph.qtiworks.mathassess.MathAssessConstants.MATHASSESS_DEF
 import static uk.ac.ed.ph.qtiworks.mathassess.MathAssessConstants.MATHASSESS_NAMESPACE_URI;
 import static uk.ac.ed.ph.qtiworks.mathassess.MathAssessConstants.MATHASSESS_SCHEMA_LOCATION;
 
+import uk.ac.ed.ph.qtiworks.mathassess.glue.AsciiMathUpConversionService;
+import uk.ac.ed.ph.qtiworks.mathassess.glue.maxima.CasCallListener;
+import uk.ac.ed.ph.qtiworks.mathassess.glue.maxima.CasResultCache;
 import uk.ac.ed.ph.qtiworks.mathassess.glue.maxima.MaximaLaunchHelper;
+import uk.ac.ed.ph.qtiworks.mathassess.glue.maxima.MaximaProcessMetrics;
 import uk.ac.ed.ph.qtiworks.mathassess.glue.maxima.QtiMaximaProcess;
 import uk.ac.ed.ph.qtiworks.mathassess.pooling.QtiMaximaProcessPoolManager;
 
@@ -71,6 +75,9 @@ import org.slf4j.LoggerFactory;
  * up the package of MathAssess QTI extensions.
  * <p>
  * Note the lifecycle {@link #startMaximaPool()} and {@link #closeMaximaPool()} methods here.
+ * The Maxima process pool is created (and pre-warmed) on receipt of the
+ * {@link JqtiLifecycleEventType#MANAGER_INITIALISED} event, so any changes to its sizing
+ * must be made before then.
  *
  * @author David McKain
  */
@@ -86,12 +93,28 @@ public final class MathAssessExtensionPackage implements JqtiExtensionPackage<Ma
     private final StylesheetCache snuggleStylesheetCache;
     private final Set<String> customOperatorClasses;
     private final Set<String> customInteractionClasses;
+    private final CasResultCache casResultCache;
+    private final AsciiMathUpConversionService asciiMathUpConversionService;
 
+    private int maximaPoolMaxSize;
+    private int maximaPoolMinIdle;
+    private long maximaPoolMaxWaitMillis;
+    private CasCallListener casCallListener;
     private QtiMaximaProcessPoolManager qtiMaximaProcessPoolManager;
 
     public MathAssessExtensionPackage(final XsltStylesheetCache xsltStylesheetCache) {
+        this(xsltStylesheetCache, CasResultCache.DEFAULT_MAX_SIZE);
+    }
+
+    /**
+     * Creates a new package, memoising up to the given number of deterministic CAS results.
+     * Set this to zero or less to disable memoisation.
+     */
+    public MathAssessExtensionPackage(final XsltStylesheetCache xsltStylesheetCache, final int casResultCacheSize) {
         this.xsltStylesheetCache = xsltStylesheetCache;
+        this.casResultCache = casResultCacheSize > 0 ? new CasResultCache(casResultCacheSize) : null;
         this.snuggleStylesheetCache = new XsltStylesheetCacheAdapter(xsltStylesheetCache);
+        this.asciiMathUpConversionService = new AsciiMathUpConversionService(snuggleStylesheetCache);
 
         /* Build up namespace info */
         final ExtensionNamespaceInfo extensionNamespaceInfo = new ExtensionNamespaceInfo(MATHASSESS_NAMESPACE_URI, MATHASSESS_SCHEMA_LOCATION, MATHASSESS_DEFAULT_NAMESPACE_PREFIX);
@@ -112,6 +135,11 @@ public final class MathAssessExtensionPackage implements JqtiExtensionPackage<Ma
 
         /* Create ThreadLocal for communicating with maxima */
         this.sessionThreadLocal = new ThreadLocal<QtiMaximaProcess>();
+
+        /* Set default pool sizing */
+        this.maximaPoolMaxSize = QtiMaximaProcessPoolManager.DEFAULT_MAX_SIZE;
+        this.maximaPoolMinIdle = QtiMaximaProcessPoolManager.DEFAULT_MIN_IDLE;
+        this.maximaPoolMaxWaitMillis = QtiMaximaProcessPoolManager.DEFAULT_MAX_WAIT_MILLIS;
     }
 
     public StylesheetCache getStylesheetCache() {
@@ -122,6 +150,63 @@ public final class MathAssessExtensionPackage implements JqtiExtensionPackage<Ma
         return xsltStylesheetCache;
     }
 
+    public AsciiMathUpConversionService getAsciiMathUpConversionService() {
+        return asciiMathUpConversionService;
+    }
+
+    /** Returns the memo cache for CAS results, or null if memoisation has been disabled */
+    public CasResultCache getCasResultCache() {
+        return casResultCache;
+    }
+
+
+    public int getMaximaPoolMaxSize() {
+        return maximaPoolMaxSize;
+    }
+
+    public void setMaximaPoolMaxSize(final int maximaPoolMaxSize) {
+        this.maximaPoolMaxSize = maximaPoolMaxSize;
+    }
+
+
+    public int getMaximaPoolMinIdle() {
+        return maximaPoolMinIdle;
+    }
+
+    public void setMaximaPoolMinIdle(final int maximaPoolMinIdle) {
+        this.maximaPoolMinIdle = maximaPoolMinIdle;
+    }
+
+
+    public long getMaximaPoolMaxWaitMillis() {
+        return maximaPoolMaxWaitMillis;
+    }
+
+    public void setMaximaPoolMaxWaitMillis(final long maximaPoolMaxWaitMillis) {
+        this.maximaPoolMaxWaitMillis = maximaPoolMaxWaitMillis;
+    }
+
+
+    public CasCallListener getCasCallListener() {
+        return casCallListener;
+    }
+
+    /**
+     * Sets an optional {@link CasCallListener} to be told about the CAS work done by each
+     * Maxima process. This must be set before the Maxima process pool is started.
+     */
+    public void setCasCallListener(final CasCallListener casCallListener) {
+        this.casCallListener = casCallListener;
+    }
+
+    /**
+     * Returns timing statistics for the Maxima processes used by this package, or null if
+     * the Maxima process pool is not running.
+     */
+    public MaximaProcessMetrics getMaximaProcessMetrics() {
+        return qtiMaximaProcessPoolManager != null ? qtiMaximaProcessPoolManager.getMetrics() : null;
+    }
+
     @Override
     public String getDisplayName() {
         return DISPLAY_NAME;
@@ -210,6 +295,11 @@ public final class MathAssessExtensionPackage implements JqtiExtensionPackage<Ma
             qtiMaximaProcessPoolManager = new QtiMaximaProcessPoolManager();
             qtiMaximaProcessPoolManager.setMaximaConfiguration(maximaConfiguration);
             qtiMaximaProcessPoolManager.setStylesheetCache(snuggleStylesheetCache);
+            qtiMaximaProcessPoolManager.setCasResultCache(casResultCache);
+            qtiMaximaProcessPoolManager.setCasCallListener(casCallListener);
+            qtiMaximaProcessPoolManager.setMaxSize(maximaPoolMaxSize);
+            qtiMaximaProcessPoolManager.setMinIdle(maximaPoolMinIdle);
+            qtiMaximaProcessPoolManager.setMaxWaitMillis(maximaPoolMaxWaitMillis);
             qtiMaximaProcessPoolManager.init();
 
             logger.info("MathAssessExtensionPackage successfully initiated using {} to handle communication with Maxima for MathAssess extensions", QtiMaximaProcessPoolManager.class.getSimpleName());
@@ -224,6 +314,9 @@ public final class MathAssessExtensionPackage implements JqtiExtensionPackage<Ma
     private void closeMaximaPool() {
         if (qtiMaximaProcessPoolManager != null) {
             logger.info("Closing {}", qtiMaximaProcessPoolManager);
+            if (casResultCache != null) {
+                logger.info("Final CAS result cache statistics: {}", casResultCache);
+            }
             try {
                 qtiMaximaProcessPoolManager.shutdown();
             }
@@ -270,6 +363,7 @@ public final class MathAssessExtensionPackage implements JqtiExtensionPackage<Ma
                 + ",stylesheetCache=" + xsltStylesheetCache
                 + ",sessionThreadLocal=" + sessionThreadLocal
                 + ",qtiMaximaProcessPoolManager=" + qtiMaximaProcessPoolManager
+                + ",casResultCache=" + casResultCache
                 + ")";
     }
 }
@@ -55,7 +55,10 @@ import uk.ac.ed.ph.jqtiplus.value.NullValue;
 import uk.ac.ed.ph.jqtiplus.value.Value;
 
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -174,33 +177,58 @@ public abstract class MathAssessOperator extends CustomOperator<MathAssessExtens
     }
 
     protected void passVariablesToMaxima(final QtiMaximaProcess qtiMaximaProcess, final ItemProcessingContext context) {
-        /* Pass variables to Maxima */
+        /* Pass variables to Maxima, doing this in a single round-trip if possible */
         logger.trace("Passing variables to maxima");
+        final Map<String, ValueWrapper> valueWrapperMap = new LinkedHashMap<String, ValueWrapper>();
         for (final VariableDeclaration declaration : getAllCASReadableVariableDeclarations()) {
-            passVariableToMaxima(qtiMaximaProcess, context, declaration);
+            final ValueWrapper valueWrapper = wrapVariableValue(context, declaration);
+            if (valueWrapper != null) {
+                valueWrapperMap.put(declaration.getIdentifier().toString(), valueWrapper);
+            }
+        }
+        try {
+            qtiMaximaProcess.passQtiVariablesToMaxima(valueWrapperMap);
+        }
+        catch (final RuntimeException e) {
+            /* Fall back to passing each variable in turn, so that problems can be reported individually */
+            logger.debug("Failed to pass variables to Maxima in a single call - passing each in turn", e);
+            for (final Entry<String, ValueWrapper> entry : valueWrapperMap.entrySet()) {
+                passValueWrapperToMaxima(qtiMaximaProcess, context, entry.getKey(), entry.getValue());
+            }
         }
     }
 
     protected void passVariableToMaxima(final QtiMaximaProcess qtiMaximaProcess, final ItemProcessingContext context,
             final VariableDeclaration declaration) {
+        final ValueWrapper valueWrapper = wrapVariableValue(context, declaration);
+        if (valueWrapper != null) {
+            passValueWrapperToMaxima(qtiMaximaProcess, context, declaration.getIdentifier().toString(), valueWrapper);
+        }
+    }
+
+    private ValueWrapper wrapVariableValue(final ItemProcessingContext context, final VariableDeclaration declaration) {
         final Value value = context.evaluateVariableValue(declaration);
 
         /* NB: Depending on when this is run, some values (e.g. response values) will not have been initialised, so value could be null */
-        if (value != null) {
-            final ValueWrapper valueWrapper = GlueValueBinder.jqtiToCas(value);
-            if (valueWrapper != null) {
-                try {
-                    qtiMaximaProcess.passQtiVariableToMaxima(declaration.getIdentifier().toString(), valueWrapper);
-                }
-                catch (final RuntimeException e) {
-                    context.fireRuntimeError(this, "An unexpected problem occurred when attempting to pass the Variable "
-                            + declaration.getIdentifier() + " to Maxima");
-                }
-            }
-            else {
-                context.fireRuntimeInfo(this, "Variable " + declaration.getIdentifier()
-                        + " is not of a type supported by the MathAssess extensions so has not been passed to Maxima");
-            }
+        if (value == null) {
+            return null;
+        }
+        final ValueWrapper valueWrapper = GlueValueBinder.jqtiToCas(value);
+        if (valueWrapper == null) {
+            context.fireRuntimeInfo(this, "Variable " + declaration.getIdentifier()
+                    + " is not of a type supported by the MathAssess extensions so has not been passed to Maxima");
+        }
+        return valueWrapper;
+    }
+
+    private void passValueWrapperToMaxima(final QtiMaximaProcess qtiMaximaProcess, final ItemProcessingContext context,
+            final String variableIdentifier, final ValueWrapper valueWrapper) {
+        try {
+            qtiMaximaProcess.passQtiVariableToMaxima(variableIdentifier, valueWrapper);
+        }
+        catch (final RuntimeException e) {
+            context.fireRuntimeError(this, "An unexpected problem occurred when attempting to pass the Variable "
+                    + variableIdentifier + " to Maxima");
         }
     }
 
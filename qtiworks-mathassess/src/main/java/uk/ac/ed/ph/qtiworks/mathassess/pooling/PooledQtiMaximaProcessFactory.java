@@ -33,13 +33,15 @@
  */
 package uk.ac.ed.ph.qtiworks.mathassess.pooling;
 
+import uk.ac.ed.ph.qtiworks.mathassess.glue.maxima.CasCallListener;
+import uk.ac.ed.ph.qtiworks.mathassess.glue.maxima.CasResultCache;
+import uk.ac.ed.ph.qtiworks.mathassess.glue.maxima.MaximaConnection;
+import uk.ac.ed.ph.qtiworks.mathassess.glue.maxima.MaximaConnectionFactory;
+import uk.ac.ed.ph.qtiworks.mathassess.glue.maxima.MaximaProcessMetrics;
 import uk.ac.ed.ph.qtiworks.mathassess.glue.maxima.QtiMaximaProcess;
 
 import uk.ac.ed.ph.jqtiplus.internal.util.Assert;
 
-import uk.ac.ed.ph.jacomax.MaximaConfiguration;
-import uk.ac.ed.ph.jacomax.MaximaInteractiveProcess;
-import uk.ac.ed.ph.jacomax.MaximaProcessLauncher;
 import uk.ac.ed.ph.snuggletex.utilities.StylesheetCache;
 
 import org.apache.commons.pool2.PooledObject;
@@ -58,9 +60,10 @@ final class PooledQtiMaximaProcessFactory implements PooledObjectFactory<QtiMaxi
     private static final Logger logger = LoggerFactory.getLogger(PooledQtiMaximaProcessFactory.class);
 
     private StylesheetCache stylesheetCache;
-    private MaximaConfiguration maximaConfiguration;
-
-    private MaximaProcessLauncher maximaProcessLauncher;
+    private MaximaConnectionFactory maximaConnectionFactory;
+    private CasResultCache casResultCache;
+    private CasCallListener casCallListener;
+    private MaximaProcessMetrics metrics;
 
     public StylesheetCache getStylesheetCache() {
         return stylesheetCache;
@@ -71,28 +74,60 @@ final class PooledQtiMaximaProcessFactory implements PooledObjectFactory<QtiMaxi
     }
 
 
-    public MaximaConfiguration getMaximaConfiguration() {
-        return maximaConfiguration;
+    public MaximaConnectionFactory getMaximaConnectionFactory() {
+        return maximaConnectionFactory;
+    }
+
+    public void setMaximaConnectionFactory(final MaximaConnectionFactory maximaConnectionFactory) {
+        this.maximaConnectionFactory = maximaConnectionFactory;
+    }
+
+
+    public CasResultCache getCasResultCache() {
+        return casResultCache;
+    }
+
+    public void setCasResultCache(final CasResultCache casResultCache) {
+        this.casResultCache = casResultCache;
+    }
+
+
+    public CasCallListener getCasCallListener() {
+        return casCallListener;
+    }
+
+    public void setCasCallListener(final CasCallListener casCallListener) {
+        this.casCallListener = casCallListener;
+    }
+
+
+    public MaximaProcessMetrics getMetrics() {
+        return metrics;
     }
 
-    public void setMaximaConfiguration(final MaximaConfiguration maximaConfiguration) {
-        this.maximaConfiguration = maximaConfiguration;
+    public void setMetrics(final MaximaProcessMetrics metrics) {
+        this.metrics = metrics;
     }
 
     //---------------------------------------------------------
 
     public void init() {
-        Assert.notNull(maximaConfiguration, "maximaConfiguration");
+        Assert.notNull(maximaConnectionFactory, "maximaConnectionFactory");
         Assert.notNull(stylesheetCache, "stylesheetCache");
-        maximaProcessLauncher = new MaximaProcessLauncher(maximaConfiguration);
+        Assert.notNull(metrics, "metrics");
     }
 
     @Override
     public PooledObject<QtiMaximaProcess> makeObject() {
         logger.debug("Creating new pooled Maxima process");
-        final MaximaInteractiveProcess maximaInteractiveProcess = maximaProcessLauncher.launchInteractiveProcess();
-        final QtiMaximaProcess process = new QtiMaximaProcess(maximaInteractiveProcess, stylesheetCache);
+        final long startTime = System.nanoTime();
+        final MaximaConnection maximaConnection = maximaConnectionFactory.openConnection();
+        final QtiMaximaProcess process = new QtiMaximaProcess(maximaConnection, stylesheetCache);
+        process.setCasResultCache(casResultCache);
+        process.setCasCallListener(casCallListener);
+        process.setMetrics(new MaximaProcessMetrics(metrics));
         process.init();
+        process.getMetrics().recordLaunch(System.nanoTime() - startTime);
         return new DefaultPooledObject<QtiMaximaProcess>(process);
     }
 
@@ -34,6 +34,11 @@
 package uk.ac.ed.ph.qtiworks.mathassess.pooling;
 
 import uk.ac.ed.ph.qtiworks.mathassess.glue.MathAssessCasException;
+import uk.ac.ed.ph.qtiworks.mathassess.glue.maxima.CasCallListener;
+import uk.ac.ed.ph.qtiworks.mathassess.glue.maxima.CasResultCache;
+import uk.ac.ed.ph.qtiworks.mathassess.glue.maxima.JacomaxMaximaConnectionFactory;
+import uk.ac.ed.ph.qtiworks.mathassess.glue.maxima.MaximaConnectionFactory;
+import uk.ac.ed.ph.qtiworks.mathassess.glue.maxima.MaximaProcessMetrics;
 import uk.ac.ed.ph.qtiworks.mathassess.glue.maxima.QtiMaximaProcess;
 import uk.ac.ed.ph.qtiworks.mathassess.glue.maxima.QtiMaximaProcessManager;
 
@@ -42,6 +47,9 @@ import uk.ac.ed.ph.jqtiplus.internal.util.Assert;
 import uk.ac.ed.ph.jacomax.MaximaConfiguration;
 import uk.ac.ed.ph.snuggletex.utilities.StylesheetCache;
 
+import java.util.NoSuchElementException;
+import java.util.concurrent.TimeUnit;
+
 import org.apache.commons.pool2.impl.GenericObjectPool;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -50,6 +58,15 @@ import org.slf4j.LoggerFactory;
  * Implementation of {@link QtiMaximaProcessManager} that pools running Maxima processes
  * for increased performance.
  * <p>
+ * The pool holds at most {@link #getMaxSize()} processes. {@link #init()} pre-launches
+ * {@link #getMinIdle()} processes so that the first requests don't pay the cost of starting
+ * Maxima, and the pool is periodically topped back up to this level. Requests for a process
+ * will wait for at most {@link #getMaxWaitMillis()} if the pool is exhausted.
+ * <p>
+ * By default, processes are launched using Jacomax, as configured by
+ * {@link #setMaximaConfiguration(MaximaConfiguration)}. An alternative
+ * {@link MaximaConnectionFactory} may be set instead, e.g. for testing.
+ * <p>
  * (This is implemented as a POJO with {@link #init()} and {@link #shutdown()} lifecycle methods.)
  *
  * @author David McKain
@@ -58,11 +75,40 @@ public final class QtiMaximaProcessPoolManager implements QtiMaximaProcessManage
 
     private static final Logger logger = LoggerFactory.getLogger(QtiMaximaProcessPoolManager.class);
 
+    /** Default maximum number of processes in the pool */
+    public static final int DEFAULT_MAX_SIZE = 8;
+
+    /** Default number of idle processes to keep ready in the pool */
+    public static final int DEFAULT_MIN_IDLE = 0;
+
+    /** Default time to wait for a process when the pool is exhausted */
+    public static final long DEFAULT_MAX_WAIT_MILLIS = TimeUnit.SECONDS.toMillis(30);
+
+    /** Interval between checks that the pool holds enough idle processes */
+    private static final long MIN_IDLE_CHECK_INTERVAL_MILLIS = TimeUnit.MINUTES.toMillis(1);
+
+    /** Idle time after which a process above the minimum idle count will be terminated */
+    private static final long EXCESS_IDLE_EVICTION_MILLIS = TimeUnit.MINUTES.toMillis(30);
+
     private StylesheetCache stylesheetCache;
     private MaximaConfiguration maximaConfiguration;
+    private MaximaConnectionFactory maximaConnectionFactory;
+    private CasResultCache casResultCache;
+    private CasCallListener casCallListener;
+    private int maxSize;
+    private int minIdle;
+    private long maxWaitMillis;
 
+    private final MaximaProcessMetrics metrics;
     private GenericObjectPool<QtiMaximaProcess> qtiMaximaProcessPool;
 
+    public QtiMaximaProcessPoolManager() {
+        this.maxSize = DEFAULT_MAX_SIZE;
+        this.minIdle = DEFAULT_MIN_IDLE;
+        this.maxWaitMillis = DEFAULT_MAX_WAIT_MILLIS;
+        this.metrics = new MaximaProcessMetrics();
+    }
+
     public StylesheetCache getStylesheetCache() {
         return stylesheetCache;
     }
@@ -80,24 +126,135 @@ public final class QtiMaximaProcessPoolManager implements QtiMaximaProcessManage
         this.maximaConfiguration = maximaConfiguration;
     }
 
+
+    public MaximaConnectionFactory getMaximaConnectionFactory() {
+        return maximaConnectionFactory;
+    }
+
+    public void setMaximaConnectionFactory(final MaximaConnectionFactory maximaConnectionFactory) {
+        this.maximaConnectionFactory = maximaConnectionFactory;
+    }
+
+
+    public CasResultCache getCasResultCache() {
+        return casResultCache;
+    }
+
+    public void setCasResultCache(final CasResultCache casResultCache) {
+        this.casResultCache = casResultCache;
+    }
+
+
+    public CasCallListener getCasCallListener() {
+        return casCallListener;
+    }
+
+    public void setCasCallListener(final CasCallListener casCallListener) {
+        this.casCallListener = casCallListener;
+    }
+
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    public void setMaxSize(final int maxSize) {
+        this.maxSize = maxSize;
+    }
+
+
+    public int getMinIdle() {
+        return minIdle;
+    }
+
+    public void setMinIdle(final int minIdle) {
+        this.minIdle = minIdle;
+    }
+
+
+    public long getMaxWaitMillis() {
+        return maxWaitMillis;
+    }
+
+    /**
+     * Sets the maximum time to wait for a process when the pool is exhausted. A negative
+     * value means wait indefinitely.
+     */
+    public void setMaxWaitMillis(final long maxWaitMillis) {
+        this.maxWaitMillis = maxWaitMillis;
+    }
+
+
+    /** Returns timing statistics aggregated over all processes created by this pool */
+    public MaximaProcessMetrics getMetrics() {
+        return metrics;
+    }
+
+    public int getNumActive() {
+        return qtiMaximaProcessPool!=null ? qtiMaximaProcessPool.getNumActive() : 0;
+    }
+
+    public int getNumIdle() {
+        return qtiMaximaProcessPool!=null ? qtiMaximaProcessPool.getNumIdle() : 0;
+    }
+
     //---------------------------------------------------------
 
     public void init() {
-        Assert.notNull(maximaConfiguration, "maximaConfiguration");
         Assert.notNull(stylesheetCache, "stylesheetCache");
+        if (maxSize <= 0) {
+            throw new IllegalStateException("maxSize must be positive");
+        }
+        if (maximaConnectionFactory==null) {
+            Assert.notNull(maximaConfiguration, "maximaConfiguration");
+            maximaConnectionFactory = new JacomaxMaximaConnectionFactory(maximaConfiguration);
+        }
         final PooledQtiMaximaProcessFactory factory = new PooledQtiMaximaProcessFactory();
-        factory.setMaximaConfiguration(maximaConfiguration);
+        factory.setMaximaConnectionFactory(maximaConnectionFactory);
         factory.setStylesheetCache(stylesheetCache);
+        factory.setCasResultCache(casResultCache);
+        factory.setCasCallListener(casCallListener);
+        factory.setMetrics(metrics);
         factory.init();
 
-        logger.info("Creating QtiMaximaProcess Object pool");
+        logger.info("Creating QtiMaximaProcess Object pool with maxSize={}, minIdle={}, maxWaitMillis={}",
+                maxSize, minIdle, maxWaitMillis);
         qtiMaximaProcessPool = new GenericObjectPool<QtiMaximaProcess>(factory);
         qtiMaximaProcessPool.setTestOnBorrow(true);
         qtiMaximaProcessPool.setTestOnReturn(true);
+        qtiMaximaProcessPool.setMaxTotal(maxSize);
+        qtiMaximaProcessPool.setMaxIdle(maxSize);
+        qtiMaximaProcessPool.setBlockWhenExhausted(true);
+        qtiMaximaProcessPool.setMaxWaitMillis(maxWaitMillis);
+        if (minIdle > 0) {
+            qtiMaximaProcessPool.setMinIdle(Math.min(minIdle, maxSize));
+            qtiMaximaProcessPool.setTimeBetweenEvictionRunsMillis(MIN_IDLE_CHECK_INTERVAL_MILLIS);
+            qtiMaximaProcessPool.setMinEvictableIdleTimeMillis(-1);
+            qtiMaximaProcessPool.setSoftMinEvictableIdleTimeMillis(EXCESS_IDLE_EVICTION_MILLIS);
+            prewarm();
+        }
+    }
+
+    /**
+     * Launches processes until the pool holds the minimum number of idle processes.
+     * A failure here is logged but otherwise ignored, as processes will also be launched
+     * on demand.
+     */
+    private void prewarm() {
+        logger.info("Pre-launching {} Maxima process(es)", qtiMaximaProcessPool.getMinIdle());
+        final long startTime = System.currentTimeMillis();
+        try {
+            qtiMaximaProcessPool.preparePool();
+            logger.info("Pre-launched {} Maxima process(es) in {}ms", qtiMaximaProcessPool.getNumIdle(),
+                    System.currentTimeMillis() - startTime);
+        }
+        catch (final Exception e) {
+            logger.warn("Failed to pre-launch Maxima processes. These will be launched on demand instead", e);
+        }
     }
 
     public void shutdown() {
-        logger.info("Closing QtiMaximaProcess Object pool");
+        logger.info("Closing QtiMaximaProcess Object pool. Final metrics were {}", metrics);
         try {
             qtiMaximaProcessPool.close();
         }
@@ -113,6 +270,10 @@ public final class QtiMaximaProcessPoolManager implements QtiMaximaProcessManage
         try {
             return qtiMaximaProcessPool.borrowObject();
         }
+        catch (final NoSuchElementException e) {
+            throw new MathAssessCasException("Timed out after " + maxWaitMillis
+                    + "ms waiting for a QtiMaximaProcess from pool", e);
+        }
         catch (final Exception e) {
             throw new MathAssessCasException("Could not obtain QtiMaximaProcess from pool", e);
         }
@@ -127,4 +288,18 @@ public final class QtiMaximaProcessPoolManager implements QtiMaximaProcessManage
             throw new MathAssessCasException("Could not return QtiMaximaProcess to pool", e);
         }
     }
+
+    //---------------------------------------------------------
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + "@" + Integer.toHexString(System.identityHashCode(this))
+                + "(maxSize=" + maxSize
+                + ",minIdle=" + minIdle
+                + ",maxWaitMillis=" + maxWaitMillis
+                + ",numActive=" + getNumActive()
+                + ",numIdle=" + getNumIdle()
+                + ",metrics=" + metrics
+                + ")";
+    }
 }
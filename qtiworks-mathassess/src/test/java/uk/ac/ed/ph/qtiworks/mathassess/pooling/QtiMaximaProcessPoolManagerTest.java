@@ -0,0 +1,220 @@
+/* Copyright (c) 2012-2013, University of Edinburgh.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice, this
+ *   list of conditions and the following disclaimer in the documentation and/or
+ *   other materials provided with the distribution.
+ *
+ * * Neither the name of the University of Edinburgh nor the names of its
+ *   contributors may be used to endorse or promote products derived from this
+ *   software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ *
+ * This software is derived from (and contains code from) QTItools and MathAssessEngine.
+ * QTItools is (c) 2008, University of Southampton.
+ * MathAssessEngine is (c) 2010, University of Edinburgh.
+ */
+package uk.ac.ed.ph.qtiworks.mathassess.pooling;
+
+import uk.ac.ed.ph.qtiworks.mathassess.glue.MathAssessCasException;
+import uk.ac.ed.ph.qtiworks.mathassess.glue.maxima.CasCallListener;
+import uk.ac.ed.ph.qtiworks.mathassess.glue.maxima.MaximaConnection;
+import uk.ac.ed.ph.qtiworks.mathassess.glue.maxima.MaximaConnectionFactory;
+import uk.ac.ed.ph.qtiworks.mathassess.glue.maxima.QtiMaximaProcess;
+import uk.ac.ed.ph.qtiworks.mathassess.glue.types.IntegerValueWrapper;
+import uk.ac.ed.ph.qtiworks.mathassess.glue.types.NullValueWrapper;
+import uk.ac.ed.ph.qtiworks.mathassess.glue.types.ValueWrapper;
+
+import uk.ac.ed.ph.snuggletex.utilities.SimpleStylesheetCache;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests the {@link QtiMaximaProcessPoolManager} using fake {@link MaximaConnection}s, so
+ * that Maxima does not need to be installed.
+ *
+ * @author David McKain
+ */
+public class QtiMaximaProcessPoolManagerTest {
+
+    private FakeMaximaConnectionFactory connectionFactory;
+    private QtiMaximaProcessPoolManager manager;
+
+    @Before
+    public void setup() {
+        connectionFactory = new FakeMaximaConnectionFactory();
+        manager = new QtiMaximaProcessPoolManager();
+        manager.setMaximaConnectionFactory(connectionFactory);
+        manager.setStylesheetCache(new SimpleStylesheetCache());
+    }
+
+    @After
+    public void teardown() {
+        manager.shutdown();
+    }
+
+    @Test
+    public void testPrewarm() {
+        manager.setMinIdle(2);
+        manager.init();
+        Assert.assertEquals(2, connectionFactory.connections.size());
+        Assert.assertEquals(2, manager.getNumIdle());
+        Assert.assertEquals(2, manager.getMetrics().getLaunchCount());
+
+        /* Obtaining a process should not launch another one */
+        final QtiMaximaProcess process = manager.obtainProcess();
+        Assert.assertEquals(2, connectionFactory.connections.size());
+        manager.returnProcess(process);
+    }
+
+    @Test
+    public void testNoPrewarm() {
+        manager.init();
+        Assert.assertEquals(0, connectionFactory.connections.size());
+        Assert.assertEquals(0, manager.getNumIdle());
+    }
+
+    @Test
+    public void testReuseAndReset() {
+        manager.init();
+        final QtiMaximaProcess process1 = manager.obtainProcess();
+        manager.returnProcess(process1);
+        final QtiMaximaProcess process2 = manager.obtainProcess();
+        manager.returnProcess(process2);
+
+        Assert.assertSame(process1, process2);
+        Assert.assertEquals(1, connectionFactory.connections.size());
+        Assert.assertEquals(2, connectionFactory.connections.get(0).resetCount);
+        Assert.assertEquals(2, manager.getMetrics().getResetCount());
+        Assert.assertEquals(2, process1.getMetrics().getResetCount());
+    }
+
+    @Test(expected=MathAssessCasException.class)
+    public void testBorrowTimeout() {
+        manager.setMaxSize(1);
+        manager.setMaxWaitMillis(50);
+        manager.init();
+        manager.obtainProcess();
+        manager.obtainProcess();
+    }
+
+    @Test
+    public void testBatchedVariablePassing() {
+        manager.init();
+        final QtiMaximaProcess process = manager.obtainProcess();
+        final FakeMaximaConnection connection = connectionFactory.connections.get(0);
+        final long callCountBefore = process.getMetrics().getCallCount();
+        final int inputCountBefore = connection.inputs.size();
+
+        final Map<String, ValueWrapper> valueWrapperMap = new LinkedHashMap<String, ValueWrapper>();
+        valueWrapperMap.put("a", new IntegerValueWrapper(1));
+        valueWrapperMap.put("b", new IntegerValueWrapper(2));
+        valueWrapperMap.put("c", NullValueWrapper.INSTANCE);
+        process.passQtiVariablesToMaxima(valueWrapperMap);
+
+        Assert.assertEquals(callCountBefore + 1, process.getMetrics().getCallCount());
+        Assert.assertEquals(inputCountBefore + 1, connection.inputs.size());
+        final String input = connection.inputs.get(inputCountBefore);
+        Assert.assertTrue(input.contains("a: 1$"));
+        Assert.assertTrue(input.contains("b: 2$"));
+        Assert.assertTrue(input.contains("kill(c)$"));
+        manager.returnProcess(process);
+    }
+
+    @Test
+    public void testCasCallListener() throws Exception {
+        final List<CasCallListener.CasCallType> casCallTypes = new ArrayList<CasCallListener.CasCallType>();
+        manager.setCasCallListener(new CasCallListener() {
+            @Override
+            public synchronized void casCallCompleted(final CasCallType casCallType, final long durationNanos) {
+                Assert.assertTrue(durationNanos >= 0L);
+                casCallTypes.add(casCallType);
+            }
+        });
+        manager.init();
+        final QtiMaximaProcess process = manager.obtainProcess();
+        Assert.assertSame(manager.getCasCallListener(), process.getCasCallListener());
+        Assert.assertTrue(casCallTypes.isEmpty());
+
+        /* (Pooling housekeeping and variable passing are not CAS work) */
+        process.passQtiVariableToMaxima("a", new IntegerValueWrapper(1));
+        Assert.assertTrue(casCallTypes.isEmpty());
+
+        process.executeScriptRule("b: a+1", true);
+        Assert.assertEquals(1, casCallTypes.size());
+        Assert.assertEquals(CasCallListener.CasCallType.SCRIPT_RULE, casCallTypes.get(0));
+        manager.returnProcess(process);
+    }
+
+    //---------------------------------------------------------
+
+    private static final class FakeMaximaConnectionFactory implements MaximaConnectionFactory {
+
+        final List<FakeMaximaConnection> connections = new ArrayList<FakeMaximaConnection>();
+
+        @Override
+        public synchronized MaximaConnection openConnection() {
+            final FakeMaximaConnection connection = new FakeMaximaConnection();
+            connections.add(connection);
+            return connection;
+        }
+    }
+
+    private static final class FakeMaximaConnection implements MaximaConnection {
+
+        final List<String> inputs = new ArrayList<String>();
+        int resetCount;
+        boolean terminated;
+
+        @Override
+        public String executeCall(final String maximaInput) {
+            inputs.add(maximaInput);
+            return "";
+        }
+
+        @Override
+        public void executeCallDiscardOutput(final String maximaInput) {
+            inputs.add(maximaInput);
+        }
+
+        @Override
+        public void softReset() {
+            resetCount++;
+        }
+
+        @Override
+        public boolean isTerminated() {
+            return terminated;
+        }
+
+        @Override
+        public void terminate() {
+            terminated = true;
+        }
+    }
+}
@@ -0,0 +1,263 @@
+/* Copyright (c) 2012-2013, University of Edinburgh.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice, this
+ *   list of conditions and the following disclaimer in the documentation and/or
+ *   other materials provided with the distribution.
+ *
+ * * Neither the name of the University of Edinburgh nor the names of its
+ *   contributors may be used to endorse or promote products derived from this
+ *   software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ *
+ * This software is derived from (and contains code from) QTItools and MathAssessEngine.
+ * QTItools is (c) 2008, University of Southampton.
+ * MathAssessEngine is (c) 2010, University of Edinburgh.
+ */
+package uk.ac.ed.ph.qtiworks.test.integration;
+
+import uk.ac.ed.ph.qtiworks.samples.LanguageSampleSet;
+import uk.ac.ed.ph.qtiworks.samples.MathAssessSampleSet;
+import uk.ac.ed.ph.qtiworks.samples.QtiSampleAssessment;
+import uk.ac.ed.ph.qtiworks.samples.QtiSampleAssessment.Feature;
+import uk.ac.ed.ph.qtiworks.samples.QtiworksRegressionSampleSet;
+import uk.ac.ed.ph.qtiworks.samples.StandardQtiSampleSet;
+import uk.ac.ed.ph.qtiworks.samples.StompSampleSet;
+import uk.ac.ed.ph.qtiworks.samples.TestImplementationSampleSet;
+import uk.ac.ed.ph.qtiworks.samples.UpmcSampleSet;
+import uk.ac.ed.ph.qtiworks.test.utils.TestUtils;
+
+import uk.ac.ed.ph.jqtiplus.exception.QtiLogicException;
+import uk.ac.ed.ph.jqtiplus.node.item.response.declaration.ResponseDeclaration;
+import uk.ac.ed.ph.jqtiplus.node.test.NavigationMode;
+import uk.ac.ed.ph.jqtiplus.node.test.outcome.processing.OutcomeProcessing;
+import uk.ac.ed.ph.jqtiplus.running.ItemProcessingController;
+import uk.ac.ed.ph.jqtiplus.running.ItemProcessingInitializer;
+import uk.ac.ed.ph.jqtiplus.running.ItemSessionController;
+import uk.ac.ed.ph.jqtiplus.running.ItemSessionControllerSettings;
+import uk.ac.ed.ph.jqtiplus.running.TestPlanner;
+import uk.ac.ed.ph.jqtiplus.running.TestProcessingInitializer;
+import uk.ac.ed.ph.jqtiplus.running.TestSessionController;
+import uk.ac.ed.ph.jqtiplus.running.TestSessionControllerSettings;
+import uk.ac.ed.ph.jqtiplus.running.compiled.CompiledProcessing;
+import uk.ac.ed.ph.jqtiplus.state.ItemProcessingMap;
+import uk.ac.ed.ph.jqtiplus.state.ItemSessionState;
+import uk.ac.ed.ph.jqtiplus.state.TestPlan;
+import uk.ac.ed.ph.jqtiplus.state.TestPlanNode;
+import uk.ac.ed.ph.jqtiplus.state.TestPlanNode.TestNodeType;
+import uk.ac.ed.ph.jqtiplus.state.TestProcessingMap;
+import uk.ac.ed.ph.jqtiplus.state.TestSessionState;
+import uk.ac.ed.ph.jqtiplus.types.Identifier;
+import uk.ac.ed.ph.jqtiplus.types.ResponseData;
+import uk.ac.ed.ph.jqtiplus.types.StringResponseData;
+import uk.ac.ed.ph.jqtiplus.validation.ItemValidationResult;
+import uk.ac.ed.ph.jqtiplus.validation.TestValidationResult;
+import uk.ac.ed.ph.jqtiplus.value.ListValue;
+import uk.ac.ed.ph.jqtiplus.value.SingleValue;
+import uk.ac.ed.ph.jqtiplus.value.Value;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+import org.junit.runners.Parameterized.Parameters;
+
+/**
+ * Integration test that checks that compiled template, response and outcome processing
+ * produces exactly the same results as the interpreted node tree on each sample.
+ * <p>
+ * Items are run twice from scratch (with the same random seed and timestamps), once in each
+ * mode, and the variables in the resulting {@link ItemSessionState}s compared. Tests are run once, after which
+ * outcome processing is performed in each mode on the same state and the resulting outcome
+ * values compared.
+ *
+ * @author David McKain
+ */
+@RunWith(Parameterized.class)
+public class CompiledProcessingSampleTests extends AbstractIntegrationTest {
+
+    private static final long RANDOM_SEED = 20130418L;
+
+    @Parameters
+    public static Collection<Object[]> data() {
+        return TestUtils.makeTestParameters(
+                StandardQtiSampleSet.instance().withoutFeatures(Feature.NOT_SCHEMA_VALID),
+                MathAssessSampleSet.instance().withoutFeatures(Feature.NOT_SCHEMA_VALID),
+                UpmcSampleSet.instance().withoutFeatures(Feature.NOT_SCHEMA_VALID),
+                StompSampleSet.instance().withoutFeatures(Feature.NOT_SCHEMA_VALID),
+                LanguageSampleSet.instance().withoutFeatures(Feature.NOT_SCHEMA_VALID),
+                TestImplementationSampleSet.instance().withoutFeatures(Feature.NOT_SCHEMA_VALID),
+                QtiworksRegressionSampleSet.instance().withoutFeatures(Feature.NOT_SCHEMA_VALID)
+        );
+    }
+
+    public CompiledProcessingSampleTests(final QtiSampleAssessment qtiSampleAssessment) {
+        super(qtiSampleAssessment);
+    }
+
+    @Test
+    public void test() throws Exception {
+        switch (qtiSampleAssessment.getType()) {
+            case ASSESSMENT_ITEM:
+                testItem();
+                break;
+
+            case ASSESSMENT_TEST:
+                testTest();
+                break;
+
+            default:
+                throw new QtiLogicException("Unexpected switch case " + qtiSampleAssessment.getType());
+        }
+    }
+
+    //-------------------------------------------------------------------
+
+    private void testItem() {
+        final ItemValidationResult itemValidationResult = createSampleAssessmentXmlLoader().loadResolveAndValidateItem(sampleResourceUri);
+        final ItemProcessingMap itemProcessingMap = new ItemProcessingInitializer(itemValidationResult).initialize();
+        if (!itemProcessingMap.isValid()) {
+            /* Invalid items are never compiled */
+            Assert.assertNull(itemProcessingMap.getCompiledTemplateProcessing());
+            Assert.assertNull(itemProcessingMap.getCompiledResponseProcessing());
+            return;
+        }
+
+        final ItemSessionState interpretedState = runItem(itemProcessingMap, false);
+        final ItemSessionState compiledState = runItem(itemProcessingMap, true);
+        /* (Interaction shuffling is not seeded, so we compare variables rather than whole states) */
+        Assert.assertEquals(interpretedState.getTemplateValues(), compiledState.getTemplateValues());
+        Assert.assertEquals(interpretedState.getResponseValues(), compiledState.getResponseValues());
+        Assert.assertEquals(interpretedState.getOutcomeValues(), compiledState.getOutcomeValues());
+        Assert.assertEquals(interpretedState.getSessionStatus(), compiledState.getSessionStatus());
+        Assert.assertEquals(interpretedState.isEnded(), compiledState.isEnded());
+    }
+
+    private ItemSessionState runItem(final ItemProcessingMap itemProcessingMap, final boolean compiled) {
+        final ItemSessionControllerSettings itemSessionControllerSettings = new ItemSessionControllerSettings();
+        itemSessionControllerSettings.setCompiledProcessingEnabled(compiled);
+        final ItemSessionState itemSessionState = new ItemSessionState();
+        final ItemSessionController itemSessionController = new ItemSessionController(jqtiExtensionManager,
+                itemSessionControllerSettings, itemProcessingMap, itemSessionState);
+        itemSessionController.setRandomSeed(Long.valueOf(RANDOM_SEED));
+
+        final Date timestamp = new Date(0L);
+        itemSessionController.initialize(timestamp);
+        itemSessionController.performTemplateProcessing(timestamp);
+        itemSessionController.enterItem(timestamp);
+
+        /* Do RP once with no responses, then again with the correct responses */
+        itemSessionController.performResponseProcessing(timestamp);
+        if (!itemSessionState.isEnded()) {
+            itemSessionController.bindResponses(timestamp, buildCorrectResponseMap(itemSessionController, itemProcessingMap));
+            itemSessionController.commitResponses(timestamp);
+            itemSessionController.performResponseProcessing(timestamp);
+        }
+        return itemSessionState;
+    }
+
+    //-------------------------------------------------------------------
+
+    private void testTest() {
+        final TestValidationResult testValidationResult = createSampleAssessmentXmlLoader().loadResolveAndValidateTest(sampleResourceUri);
+        final TestProcessingMap testProcessingMap = new TestProcessingInitializer(testValidationResult).initialize();
+        final CompiledProcessing compiledOutcomeProcessing = testProcessingMap.getCompiledOutcomeProcessing();
+        final OutcomeProcessing outcomeProcessing = testValidationResult.getResolvedAssessmentTest()
+                .getTestLookup().extractAssumingSuccessful().getOutcomeProcessing();
+        if (!testProcessingMap.isValid() || outcomeProcessing==null) {
+            Assert.assertNull(compiledOutcomeProcessing);
+            return;
+        }
+
+        /* Run through the first testPart, submitting correct responses wherever possible if nonlinear */
+        final TestPlan testPlan = new TestPlanner(testProcessingMap).generateTestPlan();
+        final TestSessionState testSessionState = new TestSessionState(testPlan);
+        final TestSessionControllerSettings testSessionControllerSettings = new TestSessionControllerSettings();
+        testSessionControllerSettings.setCompiledProcessingEnabled(false);
+        final TestSessionController testSessionController = new TestSessionController(jqtiExtensionManager,
+                testSessionControllerSettings, testProcessingMap, testSessionState);
+        final Date timestamp = new Date(0L);
+        testSessionController.initialize(timestamp);
+        testSessionController.enterTest(timestamp);
+        final TestPlanNode testPartNode = testSessionController.enterNextAvailableTestPart(timestamp);
+        if (testPartNode!=null && testSessionController.getCurrentTestPart().getNavigationMode()==NavigationMode.NONLINEAR) {
+            for (final TestPlanNode itemRefNode : testPartNode.searchDescendants(TestNodeType.ASSESSMENT_ITEM_REF)) {
+                if (testSessionController.maySelectItemNonlinear(itemRefNode.getKey())) {
+                    testSessionController.selectItemNonlinear(timestamp, itemRefNode.getKey());
+                    if (testSessionController.maySubmitResponsesToCurrentItem()) {
+                        final ItemProcessingMap itemProcessingMap = testProcessingMap.resolveItemProcessingMap(itemRefNode);
+                        final ItemProcessingController itemProcessingController = new ItemProcessingController(jqtiExtensionManager,
+                                itemProcessingMap, testSessionState.getItemSessionStates().get(itemRefNode.getKey()));
+                        testSessionController.handleResponsesToCurrentItem(timestamp,
+                                buildCorrectResponseMap(itemProcessingController, itemProcessingMap));
+                    }
+                }
+            }
+            if (testSessionController.mayEndCurrentTestPart()) {
+                testSessionController.endCurrentTestPart(timestamp);
+            }
+        }
+
+        /* Now do OP on the resulting state in each mode and compare */
+        final Map<Identifier, Value> initialOutcomeValues = new HashMap<Identifier, Value>(testSessionState.getOutcomeValues());
+        outcomeProcessing.evaluate(testSessionController);
+        final Map<Identifier, Value> interpretedOutcomeValues = new HashMap<Identifier, Value>(testSessionState.getOutcomeValues());
+
+        for (final Entry<Identifier, Value> entry : initialOutcomeValues.entrySet()) {
+            testSessionState.setOutcomeValue(entry.getKey(), entry.getValue());
+        }
+        compiledOutcomeProcessing.execute(testSessionController);
+        Assert.assertEquals(interpretedOutcomeValues, testSessionState.getOutcomeValues());
+    }
+
+    //-------------------------------------------------------------------
+
+    private static Map<Identifier, ResponseData> buildCorrectResponseMap(final ItemProcessingController itemProcessingController,
+            final ItemProcessingMap itemProcessingMap) {
+        final Map<Identifier, ResponseData> result = new LinkedHashMap<Identifier, ResponseData>();
+        for (final ResponseDeclaration responseDeclaration : itemProcessingMap.getValidResponseDeclarationMap().values()) {
+            if (!itemProcessingMap.getInteractionByResponseIdentifierMap().containsKey(responseDeclaration.getIdentifier())) {
+                /* (Skip built-in variables and responses not bound to interactions) */
+                continue;
+            }
+            final Value correctResponse = itemProcessingController.computeCorrectResponse(responseDeclaration);
+            final List<String> stringData = new ArrayList<String>();
+            if (correctResponse instanceof SingleValue) {
+                stringData.add(correctResponse.toQtiString());
+            }
+            else if (correctResponse instanceof ListValue) {
+                for (final SingleValue singleValue : (ListValue) correctResponse) {
+                    stringData.add(singleValue.toQtiString());
+                }
+            }
+            result.put(responseDeclaration.getIdentifier(), new StringResponseData(stringData));
+        }
+        return result;
+    }
+}
@@ -0,0 +1,293 @@
+/* Copyright (c) 2012-2013, University of Edinburgh.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice, this
+ *   list of conditions and the following disclaimer in the documentation and/or
+ *   other materials provided with the distribution.
+ *
+ * * Neither the name of the University of Edinburgh nor the names of its
+ *   contributors may be used to endorse or promote products derived from this
+ *   software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ *
+ * This software is derived from (and contains code from) QTItools and MathAssessEngine.
+ * QTItools is (c) 2008, University of Southampton.
+ * MathAssessEngine is (c) 2010, University of Edinburgh.
+ */
+package uk.ac.ed.ph.qtiworks.test.integration;
+
+import uk.ac.ed.ph.qtiworks.samples.LanguageSampleSet;
+import uk.ac.ed.ph.qtiworks.samples.MathAssessSampleSet;
+import uk.ac.ed.ph.qtiworks.samples.QtiSampleAssessment;
+import uk.ac.ed.ph.qtiworks.samples.QtiSampleAssessment.Feature;
+import uk.ac.ed.ph.qtiworks.samples.QtiworksRegressionSampleSet;
+import uk.ac.ed.ph.qtiworks.samples.StandardQtiSampleSet;
+import uk.ac.ed.ph.qtiworks.samples.StompSampleSet;
+import uk.ac.ed.ph.qtiworks.samples.TestImplementationSampleSet;
+import uk.ac.ed.ph.qtiworks.samples.UpmcSampleSet;
+import uk.ac.ed.ph.qtiworks.test.utils.TestUtils;
+
+import uk.ac.ed.ph.jqtiplus.node.AssessmentObjectType;
+import uk.ac.ed.ph.jqtiplus.node.item.response.declaration.AreaMapEntry;
+import uk.ac.ed.ph.jqtiplus.node.item.response.declaration.AreaMapping;
+import uk.ac.ed.ph.jqtiplus.node.item.response.declaration.AreaMappingIndex;
+import uk.ac.ed.ph.jqtiplus.node.item.response.declaration.MapEntry;
+import uk.ac.ed.ph.jqtiplus.node.item.response.declaration.Mapping;
+import uk.ac.ed.ph.jqtiplus.node.item.response.declaration.MappingIndex;
+import uk.ac.ed.ph.jqtiplus.node.item.response.declaration.ResponseDeclaration;
+import uk.ac.ed.ph.jqtiplus.running.ItemProcessingInitializer;
+import uk.ac.ed.ph.jqtiplus.state.ItemProcessingMap;
+import uk.ac.ed.ph.jqtiplus.types.Identifier;
+import uk.ac.ed.ph.jqtiplus.validation.ItemValidationResult;
+import uk.ac.ed.ph.jqtiplus.value.BaseType;
+import uk.ac.ed.ph.jqtiplus.value.Cardinality;
+import uk.ac.ed.ph.jqtiplus.value.FloatValue;
+import uk.ac.ed.ph.jqtiplus.value.ListValue;
+import uk.ac.ed.ph.jqtiplus.value.MultipleValue;
+import uk.ac.ed.ph.jqtiplus.value.PointValue;
+import uk.ac.ed.ph.jqtiplus.value.SingleValue;
+import uk.ac.ed.ph.jqtiplus.value.StringValue;
+import uk.ac.ed.ph.jqtiplus.value.Value;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map.Entry;
+import java.util.Set;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+import org.junit.runners.Parameterized.Parameters;
+
+/**
+ * Integration test that checks that the {@link MappingIndex} and {@link AreaMappingIndex} built for
+ * each sample item give exactly the same results as a straightforward scan of the
+ * <code>mapEntry</code> and <code>areaMapEntry</code> elements.
+ *
+ * @author David McKain
+ */
+@RunWith(Parameterized.class)
+public class ResponseMappingSampleTests extends AbstractIntegrationTest {
+
+    /** Number of grid steps taken across each axis when probing areaMappings */
+    private static final int AREA_PROBE_STEPS = 50;
+
+    @Parameters
+    public static Collection<Object[]> data() {
+        return TestUtils.makeTestParameters(
+                StandardQtiSampleSet.instance().withoutFeatures(Feature.NOT_SCHEMA_VALID),
+                MathAssessSampleSet.instance().withoutFeatures(Feature.NOT_SCHEMA_VALID),
+                UpmcSampleSet.instance().withoutFeatures(Feature.NOT_SCHEMA_VALID),
+                StompSampleSet.instance().withoutFeatures(Feature.NOT_SCHEMA_VALID),
+                LanguageSampleSet.instance().withoutFeatures(Feature.NOT_SCHEMA_VALID),
+                TestImplementationSampleSet.instance().withoutFeatures(Feature.NOT_SCHEMA_VALID),
+                QtiworksRegressionSampleSet.instance().withoutFeatures(Feature.NOT_SCHEMA_VALID)
+        );
+    }
+
+    public ResponseMappingSampleTests(final QtiSampleAssessment qtiSampleAssessment) {
+        super(qtiSampleAssessment);
+    }
+
+    @Test
+    public void test() {
+        if (qtiSampleAssessment.getType()!=AssessmentObjectType.ASSESSMENT_ITEM) {
+            return;
+        }
+        final ItemValidationResult itemValidationResult = createSampleAssessmentXmlLoader().loadResolveAndValidateItem(sampleResourceUri);
+        final ItemProcessingMap itemProcessingMap = new ItemProcessingInitializer(itemValidationResult).initialize();
+        for (final Entry<Identifier, ResponseDeclaration> entry : itemProcessingMap.getValidResponseDeclarationMap().entrySet()) {
+            final ResponseDeclaration responseDeclaration = entry.getValue();
+            final Mapping mapping = responseDeclaration.getMapping();
+            if (mapping!=null) {
+                checkMapping(mapping, itemProcessingMap.getMappingIndex(entry.getKey()));
+            }
+            final AreaMapping areaMapping = responseDeclaration.getAreaMapping();
+            if (areaMapping!=null) {
+                checkAreaMapping(areaMapping, itemProcessingMap.getAreaMappingIndex(entry.getKey()));
+            }
+        }
+    }
+
+    //-------------------------------------------------------------------
+
+    private void checkMapping(final Mapping mapping, final MappingIndex mappingIndex) {
+        Assert.assertNotNull(mappingIndex);
+        final ResponseDeclaration responseDeclaration = mapping.getParent();
+
+        /* Probe with each key, plus case variants for strings */
+        final List<SingleValue> probes = new ArrayList<SingleValue>();
+        for (final MapEntry mapEntry : mapping.getMapEntries()) {
+            final SingleValue mapKey = mapEntry.getMapKey();
+            probes.add(mapKey);
+            if (responseDeclaration.hasBaseType(BaseType.STRING)) {
+                probes.add(new StringValue(mapKey.toQtiString().toUpperCase()));
+                probes.add(new StringValue(mapKey.toQtiString().toLowerCase()));
+            }
+        }
+        if (responseDeclaration.hasBaseType(BaseType.STRING)) {
+            probes.add(new StringValue("(no such key)"));
+        }
+
+        if (responseDeclaration.hasCardinality(Cardinality.SINGLE)) {
+            for (final SingleValue probe : probes) {
+                assertMappingEquals(mapping, mappingIndex, probe);
+            }
+        }
+        else if (responseDeclaration.getCardinality().isList() && !probes.isEmpty()) {
+            for (final SingleValue probe : probes) {
+                assertMappingEquals(mapping, mappingIndex, MultipleValue.createMultipleValue(probe));
+            }
+            assertMappingEquals(mapping, mappingIndex, MultipleValue.createMultipleValue(probes));
+        }
+    }
+
+    private void assertMappingEquals(final Mapping mapping, final MappingIndex mappingIndex, final Value value) {
+        Assert.assertEquals("Mapping of " + value.toQtiString(),
+                scanMapping(mapping, value), mapping.computeTargetValue(value, mappingIndex));
+    }
+
+    private void checkAreaMapping(final AreaMapping areaMapping, final AreaMappingIndex areaMappingIndex) {
+        Assert.assertNotNull(areaMappingIndex);
+
+        /* Probe points on a grid covering all areas, plus a margin */
+        int maxCoordinate = 0;
+        for (final AreaMapEntry areaMapEntry : areaMapping.getAreaMapEntries()) {
+            for (final Integer coordinate : areaMapEntry.getCoordinates()) {
+                maxCoordinate = Math.max(maxCoordinate, coordinate.intValue());
+            }
+        }
+        final int extent = maxCoordinate + 10;
+        final int step = Math.max(1, extent / AREA_PROBE_STEPS);
+        final List<PointValue> probes = new ArrayList<PointValue>();
+        for (int x=-step; x<=extent; x+=step) {
+            for (int y=-step; y<=extent; y+=step) {
+                probes.add(new PointValue(x, y));
+            }
+        }
+
+        if (areaMapping.getParent().hasCardinality(Cardinality.SINGLE)) {
+            for (final PointValue probe : probes) {
+                assertAreaMappingEquals(areaMapping, areaMappingIndex, probe);
+            }
+        }
+        else {
+            for (int i=0; i<probes.size(); i++) {
+                final List<PointValue> pair = new ArrayList<PointValue>();
+                pair.add(probes.get(i));
+                pair.add(probes.get((i * 7) % probes.size()));
+                assertAreaMappingEquals(areaMapping, areaMappingIndex, MultipleValue.createMultipleValue(pair));
+            }
+            assertAreaMappingEquals(areaMapping, areaMappingIndex, MultipleValue.createMultipleValue(probes));
+        }
+    }
+
+    private void assertAreaMappingEquals(final AreaMapping areaMapping, final AreaMappingIndex areaMappingIndex, final Value value) {
+        Assert.assertEquals("Area mapping of " + value.toQtiString(),
+                scanAreaMapping(areaMapping, value), areaMapping.getTargetValue(value, areaMappingIndex));
+    }
+
+    //-------------------------------------------------------------------
+    // Reference implementations, which scan all entries in turn
+
+    private static FloatValue scanMapping(final Mapping mapping, final Value sourceValue) {
+        if (!sourceValue.isNull()) {
+            final ResponseDeclaration responseDeclaration = mapping.getParent();
+            if (responseDeclaration.hasCardinality(Cardinality.SINGLE)) {
+                return new FloatValue(applyConstraints(mapping.getLowerBound(), mapping.getUpperBound(),
+                        scanMapSingleValue(mapping, (SingleValue) sourceValue)));
+            }
+            else if (responseDeclaration.getCardinality().isList()) {
+                double sum = 0.0;
+                final Set<SingleValue> uniqueValues = new HashSet<SingleValue>(((ListValue) sourceValue).getAll());
+                for (final SingleValue value : uniqueValues) {
+                    sum += scanMapSingleValue(mapping, value);
+                }
+                return new FloatValue(applyConstraints(mapping.getLowerBound(), mapping.getUpperBound(), sum));
+            }
+        }
+        return new FloatValue(applyConstraints(mapping.getLowerBound(), mapping.getUpperBound(), mapping.getDefaultValue()));
+    }
+
+    private static double scanMapSingleValue(final Mapping mapping, final SingleValue value) {
+        for (final MapEntry mapEntry : mapping.getMapEntries()) {
+            final SingleValue mapKey = mapEntry.getMapKey();
+            final boolean matches = mapEntry.getCaseSensitive()
+                    ? mapKey.equals(value)
+                    : mapKey.toQtiString().equalsIgnoreCase(value.toQtiString());
+            if (matches) {
+                return mapEntry.getMappedValue();
+            }
+        }
+        return mapping.getDefaultValue();
+    }
+
+    private static FloatValue scanAreaMapping(final AreaMapping areaMapping, final Value sourceValue) {
+        final Double lowerBound = areaMapping.getLowerBound();
+        final Double upperBound = areaMapping.getUpperBound();
+        if (areaMapping.getParent().hasCardinality(Cardinality.SINGLE)) {
+            for (final AreaMapEntry entry : areaMapping.getAreaMapEntries()) {
+                if (entry.getShape().isInside(toArray(entry.getCoordinates()), (PointValue) sourceValue)) {
+                    return new FloatValue(applyConstraints(lowerBound, upperBound, entry.getMappedValue()));
+                }
+            }
+            return new FloatValue(applyConstraints(lowerBound, upperBound, areaMapping.getDefaultValue()));
+        }
+        double sum = 0.0;
+        final ListValue sourceListValue = (ListValue) sourceValue;
+        final List<SingleValue> values = new ArrayList<SingleValue>(sourceListValue.getAll());
+        for (final AreaMapEntry entry : areaMapping.getAreaMapEntries()) {
+            boolean allow = true;
+            for (int i = 0; i < sourceListValue.size(); i++) {
+                if (entry.getShape().isInside(toArray(entry.getCoordinates()), (PointValue) sourceListValue.get(i))) {
+                    if (allow) {
+                        sum += entry.getMappedValue();
+                        allow = false;
+                    }
+                    values.remove(sourceListValue.get(i));
+                }
+            }
+        }
+        sum += areaMapping.getDefaultValue() * values.size();
+        return new FloatValue(applyConstraints(lowerBound, upperBound, sum));
+    }
+
+    private static double applyConstraints(final Double lowerBound, final Double upperBound, final double value) {
+        double result = value;
+        if (lowerBound != null) {
+            result = Math.max(result, lowerBound.doubleValue());
+        }
+        if (upperBound != null) {
+            result = Math.min(result, upperBound.doubleValue());
+        }
+        return result;
+    }
+
+    private static int[] toArray(final List<Integer> coordinates) {
+        final int[] result = new int[coordinates.size()];
+        for (int i=0; i<result.length; i++) {
+            result[i] = coordinates.get(i).intValue();
+        }
+        return result;
+    }
+}